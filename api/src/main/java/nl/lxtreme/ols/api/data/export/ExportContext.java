@@ -0,0 +1,266 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.data.export;
+
+
+import java.io.*;
+
+import javax.swing.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.task.*;
+
+
+/**
+ * Describes what a {@link StreamingExporter} should export: the time range and
+ * channels of interest, and where to report its progress to.
+ * <p>
+ * An export is cancelled by interrupting the thread it runs on.
+ * </p>
+ */
+public final class ExportContext
+{
+  // VARIABLES
+
+  private final DataSet dataSet;
+  private final JComponent component;
+  private final long startTime;
+  private final long endTime;
+  private final int channelMask;
+  private final TaskProgressListener progressListener;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ExportContext} instance for exporting all enabled
+   * channels of all captured data.
+   * 
+   * @param aDataSet
+   *          the data set to export, cannot be <code>null</code>;
+   * @param aComponent
+   *          the Swing UI component that is being exported, cannot be
+   *          <code>null</code>.
+   */
+  public ExportContext( final DataSet aDataSet, final JComponent aComponent )
+  {
+    this( aDataSet, aComponent, getFirstTimestamp( aDataSet ), getLastTimestamp( aDataSet ),
+        getEnabledChannelMask( aDataSet ), null );
+  }
+
+  /**
+   * Creates a new {@link ExportContext} instance.
+   * 
+   * @param aDataSet
+   *          the data set to export, cannot be <code>null</code>;
+   * @param aComponent
+   *          the Swing UI component that is being exported, cannot be
+   *          <code>null</code>;
+   * @param aStartTime
+   *          the first time stamp to export;
+   * @param aEndTime
+   *          the last time stamp to export (inclusive), >= aStartTime;
+   * @param aChannelMask
+   *          the bit mask of the channels to export;
+   * @param aProgressListener
+   *          the listener to report the progress of the export to, can be
+   *          <code>null</code>.
+   */
+  public ExportContext( final DataSet aDataSet, final JComponent aComponent, final long aStartTime,
+      final long aEndTime, final int aChannelMask, final TaskProgressListener aProgressListener )
+  {
+    if ( aDataSet == null )
+    {
+      throw new IllegalArgumentException( "DataSet cannot be null!" );
+    }
+    if ( aEndTime < aStartTime )
+    {
+      throw new IllegalArgumentException( "End time cannot be before start time!" );
+    }
+
+    this.dataSet = aDataSet;
+    this.component = aComponent;
+    this.startTime = aStartTime;
+    this.endTime = aEndTime;
+    this.channelMask = aChannelMask;
+    this.progressListener = aProgressListener;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the mask of the channels of all captured data that are enabled.
+   * 
+   * @param aDataSet
+   *          the data set to get the enabled channels of, cannot be
+   *          <code>null</code>.
+   * @return a channel mask.
+   */
+  public static int getEnabledChannelMask( final DataSet aDataSet )
+  {
+    final AcquisitionResult capturedData = aDataSet.getCapturedData();
+    final int channels = capturedData.getChannels();
+    final int mask = ( channels >= 32 ) ? -1 : ( ( 1 << channels ) - 1 );
+    return capturedData.getEnabledChannels() & mask;
+  }
+
+  /**
+   * Returns the first time stamp of all captured data.
+   * 
+   * @param aDataSet
+   *          the data set to get the first time stamp of, cannot be
+   *          <code>null</code>.
+   * @return a time stamp.
+   */
+  public static long getFirstTimestamp( final DataSet aDataSet )
+  {
+    final long[] timestamps = aDataSet.getCapturedData().getTimestamps();
+    return ( timestamps.length == 0 ) ? 0L : timestamps[0];
+  }
+
+  /**
+   * Returns the last time stamp of all captured data, which is at least its
+   * absolute length.
+   * 
+   * @param aDataSet
+   *          the data set to get the last time stamp of, cannot be
+   *          <code>null</code>.
+   * @return a time stamp.
+   */
+  public static long getLastTimestamp( final DataSet aDataSet )
+  {
+    final AcquisitionResult capturedData = aDataSet.getCapturedData();
+    final long[] timestamps = capturedData.getTimestamps();
+    final long last = ( timestamps.length == 0 ) ? 0L : timestamps[timestamps.length - 1];
+    return Math.max( last, capturedData.getAbsoluteLength() );
+  }
+
+  /**
+   * Throws an exception if this export is cancelled.
+   * 
+   * @throws InterruptedIOException
+   *           in case this export is cancelled.
+   */
+  public void checkCancelled() throws InterruptedIOException
+  {
+    if ( isCancelled() )
+    {
+      throw new InterruptedIOException( "Export cancelled!" );
+    }
+  }
+
+  /**
+   * Creates a reader that produces all samples to export, including those in
+   * which none of the exported channels change.
+   * 
+   * @return a new transition reader, never <code>null</code>.
+   */
+  public TransitionReader createSampleReader()
+  {
+    return new TransitionReader( this, this.dataSet.getCapturedData(), false /* aTransitionsOnly */);
+  }
+
+  /**
+   * Creates a reader that produces the transitions to export.
+   * 
+   * @return a new transition reader, never <code>null</code>.
+   */
+  public TransitionReader createTransitionReader()
+  {
+    return new TransitionReader( this, this.dataSet.getCapturedData(), true /* aTransitionsOnly */);
+  }
+
+  /**
+   * Returns the mask of the channels to export.
+   * 
+   * @return a channel mask.
+   */
+  public int getChannelMask()
+  {
+    return this.channelMask;
+  }
+
+  /**
+   * Returns the Swing UI component that is being exported, for example the
+   * scroll pane in which the diagram is shown.
+   * 
+   * @return a component, can be <code>null</code> if not available.
+   */
+  public JComponent getComponent()
+  {
+    return this.component;
+  }
+
+  /**
+   * Returns the data set to export.
+   * 
+   * @return the data set, never <code>null</code>.
+   */
+  public DataSet getDataSet()
+  {
+    return this.dataSet;
+  }
+
+  /**
+   * Returns the last time stamp to export.
+   * 
+   * @return the end time, inclusive.
+   */
+  public long getEndTime()
+  {
+    return this.endTime;
+  }
+
+  /**
+   * Returns the first time stamp to export.
+   * 
+   * @return the start time.
+   */
+  public long getStartTime()
+  {
+    return this.startTime;
+  }
+
+  /**
+   * Returns whether or not this export is cancelled.
+   * 
+   * @return <code>true</code> if the export should stop, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isCancelled()
+  {
+    return Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Reports the progress of this export.
+   * 
+   * @param aPercentage
+   *          the progress of the export, in percent (0..100).
+   */
+  public void setProgress( final int aPercentage )
+  {
+    if ( this.progressListener != null )
+    {
+      this.progressListener.setProgress( aPercentage );
+    }
+  }
+}
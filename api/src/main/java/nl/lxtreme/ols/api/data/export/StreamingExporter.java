@@ -0,0 +1,52 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.data.export;
+
+
+import java.io.*;
+
+
+/**
+ * Provides an exporter that exports a time range and a selection of channels,
+ * reading the data to export in chunks through a {@link TransitionReader}.
+ * <p>
+ * Streaming exporters are run as background task; they should report their
+ * progress and stop when cancelled, both through their {@link ExportContext}.
+ * </p>
+ */
+public interface StreamingExporter extends Exporter
+{
+  // METHODS
+
+  /**
+   * Exports the data described by the given context to the given stream.
+   * 
+   * @param aContext
+   *          the export context describing what to export, cannot be
+   *          <code>null</code>;
+   * @param aStream
+   *          the output stream to write the export to, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems, or when the export is cancelled.
+   */
+  void export( final ExportContext aContext, final OutputStream aStream ) throws IOException;
+}
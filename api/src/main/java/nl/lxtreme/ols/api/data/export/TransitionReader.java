@@ -0,0 +1,215 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.data.export;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+
+
+/**
+ * Produces the transitions of an export in chunks.
+ * <p>
+ * Only the channels in the channel mask of the export are retained. Either all
+ * samples of the export range are produced, or only the samples in which the
+ * exported channels change. The first
+ * transition of the first chunk always denotes the state at the start of the
+ * export range. Each chunk consists of newly allocated arrays, so a chunk can
+ * safely be handed off to another thread.
+ * </p>
+ */
+public final class TransitionReader
+{
+  // CONSTANTS
+
+  /** The maximum number of transitions in a single chunk. */
+  public static final int CHUNK_SIZE = 65536;
+
+  // VARIABLES
+
+  private final ExportContext context;
+  private final int[] values;
+  private final long[] timestamps;
+  private final int mask;
+  private final boolean transitionsOnly;
+  private final int firstIndex;
+  private final int lastIndex;
+
+  private int index;
+  private int lastValue;
+
+  private int[] chunkValues;
+  private long[] chunkTimestamps;
+  private int chunkSize;
+  private long chunkEnd;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link TransitionReader} instance.
+   * 
+   * @param aContext
+   *          the context of the export;
+   * @param aCapturedData
+   *          the data to read;
+   * @param aTransitionsOnly
+   *          <code>true</code> to produce only the samples in which the
+   *          exported channels change, <code>false</code> to produce all
+   *          samples.
+   */
+  TransitionReader( final ExportContext aContext, final AcquisitionResult aCapturedData,
+      final boolean aTransitionsOnly )
+  {
+    this.context = aContext;
+    this.values = aCapturedData.getValues();
+    this.timestamps = aCapturedData.getTimestamps();
+    this.mask = aContext.getChannelMask();
+    this.transitionsOnly = aTransitionsOnly;
+
+    this.firstIndex = getSampleIndex( this.timestamps, aContext.getStartTime() );
+    this.lastIndex = ( this.values.length == 0 ) ? -1 : getSampleIndex( this.timestamps, aContext.getEndTime() );
+
+    this.index = this.firstIndex;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the index of the sample that is in effect at the given time.
+   */
+  private static int getSampleIndex( final long[] aTimestamps, final long aTime )
+  {
+    int idx = Arrays.binarySearch( aTimestamps, aTime );
+    if ( idx < 0 )
+    {
+      idx = -( idx + 1 ) - 1;
+    }
+    return Math.max( 0, idx );
+  }
+
+  /**
+   * Returns the (exclusive) time up to which the last transition of the
+   * current chunk holds.
+   * 
+   * @return the time stamp of the first transition of the next chunk, or the
+   *         end time of the export plus one for the last chunk.
+   */
+  public long getChunkEnd()
+  {
+    return this.chunkEnd;
+  }
+
+  /**
+   * Returns the number of transitions in the current chunk.
+   * 
+   * @return a transition count, > 0.
+   */
+  public int getCount()
+  {
+    return this.chunkSize;
+  }
+
+  /**
+   * Returns the time stamps of the current chunk.
+   * 
+   * @return the time stamps, of which only the first {@link #getCount()} are
+   *         valid, never <code>null</code>.
+   */
+  public long[] getTimestamps()
+  {
+    return this.chunkTimestamps;
+  }
+
+  /**
+   * Returns the (masked) values of the current chunk.
+   * 
+   * @return the values, of which only the first {@link #getCount()} are valid,
+   *         never <code>null</code>.
+   */
+  public int[] getValues()
+  {
+    return this.chunkValues;
+  }
+
+  /**
+   * Advances to the next chunk of transitions.
+   * 
+   * @return <code>true</code> if a next chunk is available, <code>false</code>
+   *         if all transitions are read.
+   * @throws IOException
+   *           in case the export is cancelled.
+   */
+  public boolean next() throws IOException
+  {
+    this.context.checkCancelled();
+
+    if ( this.index > this.lastIndex )
+    {
+      return false;
+    }
+
+    final int size = Math.min( CHUNK_SIZE, ( this.lastIndex - this.index ) + 1 );
+    final int[] newValues = new int[size];
+    final long[] newTimestamps = new long[size];
+
+    int count = 0;
+    if ( this.index == this.firstIndex )
+    {
+      // The first transition denotes the state at the start of the range...
+      this.lastValue = this.values[this.index++] & this.mask;
+      newValues[count] = this.lastValue;
+      newTimestamps[count] = this.context.getStartTime();
+      count++;
+    }
+    while ( ( this.index <= this.lastIndex ) && ( count < size ) )
+    {
+      final int value = this.values[this.index] & this.mask;
+      if ( !this.transitionsOnly || ( value != this.lastValue ) )
+      {
+        newValues[count] = value;
+        newTimestamps[count] = this.timestamps[this.index];
+        count++;
+
+        this.lastValue = value;
+      }
+      this.index++;
+    }
+    // Skip all samples that are no transitions, to determine where this chunk
+    // ends...
+    while ( this.transitionsOnly && ( this.index <= this.lastIndex )
+        && ( ( this.values[this.index] & this.mask ) == this.lastValue ) )
+    {
+      this.index++;
+    }
+
+    this.chunkValues = newValues;
+    this.chunkTimestamps = newTimestamps;
+    this.chunkSize = count;
+    this.chunkEnd = ( this.index <= this.lastIndex ) ? this.timestamps[this.index] : ( this.context.getEndTime() + 1L );
+
+    final long total = ( this.lastIndex - this.firstIndex ) + 1L;
+    this.context.setProgress( ( int )( ( ( this.index - this.firstIndex ) * 100L ) / total ) );
+
+    return true;
+  }
+}
@@ -24,6 +24,8 @@ package nl.lxtreme.ols.api.data.project;
 import java.beans.*;
 import java.io.*;
 
+import nl.lxtreme.ols.api.task.*;
+
 
 /**
  * Provides a way of loading and storing projects.
@@ -46,6 +48,44 @@ public interface ProjectManager
    */
   public Project createNewProject();
 
+  /**
+   * Creates a task that recovers the project of a previous session that was
+   * not properly shut down, using its autosave journal. The recovered project
+   * becomes the current project and is marked as changed.
+   * 
+   * @return a task that recovers the project, never <code>null</code>.
+   * @see #hasRecoverableProject()
+   */
+  public Task<Void> createRecoverProjectTask();
+
+  /**
+   * Creates a task that stores the current project under the given name to the
+   * given file, allowing it to be run in the background.
+   * <p>
+   * The project is snapshotted when this method is called, so it should be
+   * called on the EDT. The snapshot is written to a temporary file, that only
+   * replaces the given file when it is completely written. Only then, the
+   * current project takes the given name and file, and is marked as no longer
+   * changed, unless it was modified in the meantime.
+   * </p>
+   * <p>
+   * The returned task can be cancelled by interrupting the thread it runs in,
+   * in which case it fails with an {@link InterruptedIOException}, leaving the
+   * given file untouched.
+   * </p>
+   * 
+   * @param aName
+   *          the name of the project to store, can be <code>null</code>;
+   * @param aFile
+   *          the file to write the project to, cannot be <code>null</code>;
+   * @param aProgressListener
+   *          the (optional) progress listener to report the progress of the
+   *          save to, can be <code>null</code>.
+   * @return a task that saves the project, never <code>null</code>.
+   */
+  public Task<Void> createSaveProjectTask( final String aName, final File aFile,
+      final TaskProgressListener aProgressListener );
+
   /**
    * Creates a temporary project, useful for loading data files.
    * 
@@ -55,6 +95,13 @@ public interface ProjectManager
   @Deprecated
   public Project createTemporaryProject();
 
+  /**
+   * Discards the recoverable project of a previous session, if any.
+   * 
+   * @see #hasRecoverableProject()
+   */
+  public void discardRecoverableProject();
+
   /**
    * Returns the current project.
    * 
@@ -62,6 +109,15 @@ public interface ProjectManager
    */
   public Project getCurrentProject();
 
+  /**
+   * Returns whether the autosave journal of a previous session, that was not
+   * properly shut down, is available.
+   * 
+   * @return <code>true</code> if there is a project to recover,
+   *         <code>false</code> otherwise.
+   */
+  public boolean hasRecoverableProject();
+
   /**
    * Loads a project from the given input stream.
    * 
@@ -0,0 +1,167 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.util;
+
+
+/**
+ * Formats numbers as decimal ASCII digits straight into character or byte
+ * arrays, without creating any intermediary strings.
+ * <p>
+ * This is the single implementation of the decimal formatting used by all
+ * writers of large amounts of (numeric) data, such as the OLS data file and
+ * the CSV and VCD exports.
+ * </p>
+ */
+public final class DecimalFormatter
+{
+  // CONSTANTS
+
+  /** The maximum number of characters a formatted long can take. */
+  public static final int MAX_LENGTH = 20;
+
+  private static final String LONG_MIN_VALUE = Long.toString( Long.MIN_VALUE );
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link DecimalFormatter} instance, never used.
+   */
+  private DecimalFormatter()
+  {
+    // Nop
+  }
+
+  // METHODS
+
+  /**
+   * Formats the given value as decimal number, equivalent to
+   * <tt>Long.toString(aValue)</tt>, into the given byte array.
+   * 
+   * @param aValue
+   *          the value to format;
+   * @param aBuffer
+   *          the byte array to format the value into, cannot be
+   *          <code>null</code>;
+   * @param aOffset
+   *          the index at which the first digit (or sign) is placed, there
+   *          should be room for at least {@link #MAX_LENGTH} bytes.
+   * @return the number of bytes written, > 0.
+   */
+  public static int format( final long aValue, final byte[] aBuffer, final int aOffset )
+  {
+    if ( aValue == Long.MIN_VALUE )
+    {
+      // Cannot be negated...
+      for ( int i = 0; i < LONG_MIN_VALUE.length(); i++ )
+      {
+        aBuffer[aOffset + i] = ( byte )LONG_MIN_VALUE.charAt( i );
+      }
+      return LONG_MIN_VALUE.length();
+    }
+
+    int pos = aOffset;
+    long value = aValue;
+    if ( value < 0L )
+    {
+      aBuffer[pos++] = '-';
+      value = -value;
+    }
+
+    final int end = pos + getDigitCount( value );
+
+    int idx = end;
+    do
+    {
+      final long q = value / 10L;
+      aBuffer[--idx] = ( byte )( '0' + ( int )( value - ( q * 10L ) ) );
+      value = q;
+    }
+    while ( value != 0L );
+
+    return end - aOffset;
+  }
+
+  /**
+   * Formats the given value as decimal number, equivalent to
+   * <tt>Long.toString(aValue)</tt>, into the given character array.
+   * 
+   * @param aValue
+   *          the value to format;
+   * @param aBuffer
+   *          the character array to format the value into, cannot be
+   *          <code>null</code>;
+   * @param aOffset
+   *          the index at which the first digit (or sign) is placed, there
+   *          should be room for at least {@link #MAX_LENGTH} characters.
+   * @return the number of characters written, > 0.
+   */
+  public static int format( final long aValue, final char[] aBuffer, final int aOffset )
+  {
+    if ( aValue == Long.MIN_VALUE )
+    {
+      // Cannot be negated...
+      LONG_MIN_VALUE.getChars( 0, LONG_MIN_VALUE.length(), aBuffer, aOffset );
+      return LONG_MIN_VALUE.length();
+    }
+
+    int pos = aOffset;
+    long value = aValue;
+    if ( value < 0L )
+    {
+      aBuffer[pos++] = '-';
+      value = -value;
+    }
+
+    final int end = pos + getDigitCount( value );
+
+    int idx = end;
+    do
+    {
+      final long q = value / 10L;
+      aBuffer[--idx] = ( char )( '0' + ( int )( value - ( q * 10L ) ) );
+      value = q;
+    }
+    while ( value != 0L );
+
+    return end - aOffset;
+  }
+
+  /**
+   * Returns the number of decimal digits needed to represent the given value.
+   * 
+   * @param aValue
+   *          the value to determine the number of digits for, >= 0.
+   * @return a digit count, >= 1.
+   */
+  private static int getDigitCount( final long aValue )
+  {
+    long limit = 10L;
+    for ( int i = 1; i < 19; i++ )
+    {
+      if ( aValue < limit )
+      {
+        return i;
+      }
+      limit *= 10L;
+    }
+    return 19;
+  }
+}
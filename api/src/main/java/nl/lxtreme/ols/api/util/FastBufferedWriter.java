@@ -0,0 +1,271 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.util;
+
+
+import java.io.*;
+
+
+/**
+ * Provides a buffered writer that is capable of formatting numbers directly
+ * into its internal buffer, without creating any intermediary strings.
+ * <p>
+ * This writer is intended for writing large amounts of (numeric) data, such as
+ * sample data, as fast as possible. Its internal buffer is only written to the
+ * underlying writer when it is full, or when this writer is flushed.
+ * </p>
+ * <p>
+ * Instances of this class are <b>not</b> thread-safe!
+ * </p>
+ */
+public class FastBufferedWriter extends Writer
+{
+  // CONSTANTS
+
+  /** The default buffer size, in characters. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  private static final char[] LINE_SEPARATOR = System.getProperty( "line.separator", "\n" ).toCharArray();
+
+  // VARIABLES
+
+  private final Writer out;
+  private final char[] buffer;
+
+  private int pos;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link FastBufferedWriter} instance with a default buffer
+   * size.
+   *
+   * @param aWriter
+   *          the writer to write to, cannot be <code>null</code>.
+   */
+  public FastBufferedWriter( final Writer aWriter )
+  {
+    this( aWriter, DEFAULT_BUFFER_SIZE );
+  }
+
+  /**
+   * Creates a new {@link FastBufferedWriter} instance.
+   *
+   * @param aWriter
+   *          the writer to write to, cannot be <code>null</code>;
+   * @param aBufferSize
+   *          the size of the internal buffer, in characters, >= 64.
+   */
+  public FastBufferedWriter( final Writer aWriter, final int aBufferSize )
+  {
+    if ( aWriter == null )
+    {
+      throw new IllegalArgumentException( "Writer cannot be null!" );
+    }
+    if ( aBufferSize < 64 )
+    {
+      throw new IllegalArgumentException( "Buffer size should be at least 64 characters!" );
+    }
+
+    this.out = aWriter;
+    this.buffer = new char[aBufferSize];
+    this.pos = 0;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      flushBuffer();
+    }
+    finally
+    {
+      this.out.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void flush() throws IOException
+  {
+    flushBuffer();
+    this.out.flush();
+  }
+
+  /**
+   * Writes a platform-specific line separator.
+   *
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void newLine() throws IOException
+  {
+    write( LINE_SEPARATOR, 0, LINE_SEPARATOR.length );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final char[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( aLength >= this.buffer.length )
+    {
+      // Large block: write it directly, without copying it into our buffer...
+      flushBuffer();
+      this.out.write( aBuffer, aOffset, aLength );
+      return;
+    }
+
+    ensureCapacity( aLength );
+    System.arraycopy( aBuffer, aOffset, this.buffer, this.pos, aLength );
+    this.pos += aLength;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final int aChar ) throws IOException
+  {
+    ensureCapacity( 1 );
+    this.buffer[this.pos++] = ( char )aChar;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final String aString ) throws IOException
+  {
+    write( aString, 0, aString.length() );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final String aString, final int aOffset, final int aLength ) throws IOException
+  {
+    int offset = aOffset;
+    int remaining = aLength;
+    while ( remaining > 0 )
+    {
+      if ( this.pos == this.buffer.length )
+      {
+        flushBuffer();
+      }
+
+      final int count = Math.min( remaining, this.buffer.length - this.pos );
+      aString.getChars( offset, offset + count, this.buffer, this.pos );
+      this.pos += count;
+
+      offset += count;
+      remaining -= count;
+    }
+  }
+
+  /**
+   * Writes the given value as decimal number, equivalent to
+   * <tt>String.format("%d", aValue)</tt>.
+   *
+   * @param aValue
+   *          the value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeDecimal( final long aValue ) throws IOException
+  {
+    ensureCapacity( DecimalFormatter.MAX_LENGTH );
+    this.pos += DecimalFormatter.format( aValue, this.buffer, this.pos );
+  }
+
+  /**
+   * Writes the given value as (unsigned) hexadecimal number with lower case
+   * digits, equivalent to <tt>String.format("%0<i>N</i>x", aValue)</tt>, with
+   * <i>N</i> the given minimal number of digits.
+   *
+   * @param aValue
+   *          the value to write;
+   * @param aMinDigits
+   *          the minimal number of digits to write, the value is left-padded
+   *          with zeros if needed.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeHex( final int aValue, final int aMinDigits ) throws IOException
+  {
+    final int significant = Math.max( 1, ( 35 - Integer.numberOfLeadingZeros( aValue ) ) >> 2 );
+    final int digits = Math.min( 8, Math.max( aMinDigits, significant ) );
+
+    ensureCapacity( digits );
+
+    int value = aValue;
+    for ( int idx = this.pos + digits - 1; idx >= this.pos; idx-- )
+    {
+      this.buffer[idx] = HEX_DIGITS[value & 0x0F];
+      value >>>= 4;
+    }
+
+    this.pos += digits;
+  }
+
+  /**
+   * Ensures there is room for at least the given number of characters in our
+   * buffer, flushing it if necessary.
+   *
+   * @param aCount
+   *          the number of characters that are to be written.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void ensureCapacity( final int aCount ) throws IOException
+  {
+    if ( ( this.pos + aCount ) > this.buffer.length )
+    {
+      flushBuffer();
+    }
+  }
+
+  /**
+   * Writes the contents of our buffer to the underlying writer.
+   *
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void flushBuffer() throws IOException
+  {
+    if ( this.pos > 0 )
+    {
+      this.out.write( this.buffer, 0, this.pos );
+      this.pos = 0;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.util;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link DecimalFormatter}.
+ */
+public class DecimalFormatterTest
+{
+  // CONSTANTS
+
+  private static final long[] VALUES = { 0L, 1L, -1L, 9L, 10L, -10L, 99L, 100L, 999999999L, 1000000000L,
+      Integer.MAX_VALUE, Integer.MIN_VALUE, 999999999999999999L, 1000000000000000000L, -1000000000000000000L,
+      Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1L };
+
+  // METHODS
+
+  /**
+   * Tests that values are formatted into byte arrays like
+   * {@link Long#toString(long)} does, at the given offset only.
+   */
+  @Test
+  public void testFormatBytesOk()
+  {
+    final byte[] buffer = new byte[3 + DecimalFormatter.MAX_LENGTH];
+    for ( long value : getValues() )
+    {
+      Arrays.fill( buffer, ( byte )'x' );
+
+      final int length = DecimalFormatter.format( value, buffer, 3 );
+
+      final String expected = Long.toString( value );
+      assertEquals( expected.length(), length );
+      assertEquals( "xxx" + expected, new String( buffer, 0, 3 + length ) );
+      for ( int i = 3 + length; i < buffer.length; i++ )
+      {
+        assertEquals( 'x', buffer[i] );
+      }
+    }
+  }
+
+  /**
+   * Tests that values are formatted into character arrays like
+   * {@link Long#toString(long)} does, at the given offset only.
+   */
+  @Test
+  public void testFormatCharsOk()
+  {
+    final char[] buffer = new char[3 + DecimalFormatter.MAX_LENGTH];
+    for ( long value : getValues() )
+    {
+      Arrays.fill( buffer, 'x' );
+
+      final int length = DecimalFormatter.format( value, buffer, 3 );
+
+      final String expected = Long.toString( value );
+      assertEquals( expected.length(), length );
+      assertEquals( "xxx" + expected, new String( buffer, 0, 3 + length ) );
+      for ( int i = 3 + length; i < buffer.length; i++ )
+      {
+        assertEquals( 'x', buffer[i] );
+      }
+    }
+  }
+
+  /**
+   * Returns the boundary values along with a number of random values of all
+   * magnitudes.
+   */
+  private List<Long> getValues()
+  {
+    final List<Long> result = new ArrayList<Long>();
+    for ( long value : VALUES )
+    {
+      result.add( Long.valueOf( value ) );
+    }
+
+    final Random random = new Random( 30L );
+    for ( int i = 0; i < 1000; i++ )
+    {
+      result.add( Long.valueOf( random.nextLong() >> random.nextInt( 64 ) ) );
+    }
+    return result;
+  }
+}
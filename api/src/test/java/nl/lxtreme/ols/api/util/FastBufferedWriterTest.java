@@ -0,0 +1,106 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.api.util;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link FastBufferedWriter}.
+ */
+public class FastBufferedWriterTest
+{
+  // METHODS
+
+  /**
+   * Test method for {@link FastBufferedWriter#writeDecimal(long)}.
+   */
+  @Test
+  public void testWriteDecimal() throws IOException
+  {
+    final long[] values = { 0L, 1L, 9L, 10L, 99L, 100L, 12345678L, -1L, -10L, 999999999999999999L,
+        1000000000000000000L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1L };
+
+    for ( long value : values )
+    {
+      final StringWriter sw = new StringWriter();
+      final FastBufferedWriter writer = new FastBufferedWriter( sw );
+      writer.writeDecimal( value );
+      writer.flush();
+
+      assertEquals( Long.toString( value ), sw.toString() );
+    }
+  }
+
+  /**
+   * Test method for {@link FastBufferedWriter#writeHex(int, int)}.
+   */
+  @Test
+  public void testWriteHex() throws IOException
+  {
+    final int[] values = { 0, 1, 0xf, 0x10, 0xabcdef, 0x7fffffff, -1, Integer.MIN_VALUE, 0x12345678 };
+
+    for ( int value : values )
+    {
+      for ( int digits = 0; digits <= 8; digits++ )
+      {
+        final StringWriter sw = new StringWriter();
+        final FastBufferedWriter writer = new FastBufferedWriter( sw );
+        writer.writeHex( value, digits );
+        writer.flush();
+
+        final String format = ( digits == 0 ) ? "%x" : "%0" + digits + "x";
+        assertEquals( String.format( format, Integer.valueOf( value ) ), sw.toString() );
+      }
+    }
+  }
+
+  /**
+   * Tests that writing more data than fits in the buffer is written correctly.
+   */
+  @Test
+  public void testWriteMoreThanBufferSize() throws IOException
+  {
+    final StringWriter sw = new StringWriter();
+    final FastBufferedWriter writer = new FastBufferedWriter( sw, 64 );
+
+    final StringBuilder expected = new StringBuilder();
+    for ( int i = 0; i < 1000; i++ )
+    {
+      writer.writeHex( i, 8 );
+      writer.write( '@' );
+      writer.writeDecimal( i * 1000L );
+      writer.write( "\n" );
+
+      expected.append( String.format( "%08x@%d\n", Integer.valueOf( i ), Long.valueOf( i * 1000L ) ) );
+    }
+    writer.write( expected.toString() );
+    writer.flush();
+
+    expected.append( expected.toString() );
+    assertEquals( expected.toString(), sw.toString() );
+  }
+}
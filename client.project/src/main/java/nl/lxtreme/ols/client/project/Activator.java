@@ -21,9 +21,13 @@
 package nl.lxtreme.ols.client.project;
 
 
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.data.export.*;
 import nl.lxtreme.ols.api.data.project.*;
+import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.client.project.impl.*;
 import nl.lxtreme.ols.util.*;
+import nl.lxtreme.ols.util.osgi.*;
 
 import org.apache.felix.dm.*;
 import org.osgi.framework.*;
@@ -35,6 +39,45 @@ import org.osgi.service.log.*;
  */
 public class Activator extends DependencyActivatorBase
 {
+  // INNER TYPES
+
+  static class ExporterBundleAdapter extends GenericBundleAdapter<Exporter>
+  {
+    /**
+     * Creates a new {@link ExporterBundleAdapter} instance.
+     */
+    public ExporterBundleAdapter()
+    {
+      super( Exporter.class, OLS_EXPORTER_CLASS_KEY );
+    }
+  }
+
+  @SuppressWarnings( "rawtypes" )
+  static class ToolBundleAdapter extends GenericBundleAdapter<Tool>
+  {
+    /**
+     * Creates a new {@link ToolBundleAdapter} instance.
+     */
+    public ToolBundleAdapter()
+    {
+      super( Tool.class, OLS_TOOL_CLASS_KEY );
+    }
+  }
+
+  // CONSTANTS
+
+  private static final String OLS_TOOL_MAGIC_KEY = "OLS-Tool";
+  private static final String OLS_TOOL_MAGIC_VALUE = "1.0";
+  private static final String OLS_TOOL_CLASS_KEY = "OLS-ToolClass";
+  private static final String TOOL_BUNDLE_FILTER = String.format( "(&(%s=%s)(%s=*))", OLS_TOOL_MAGIC_KEY,
+      OLS_TOOL_MAGIC_VALUE, OLS_TOOL_CLASS_KEY );
+
+  private static final String OLS_EXPORTER_MAGIC_KEY = "OLS-Exporter";
+  private static final String OLS_EXPORTER_MAGIC_VALUE = "1.0";
+  private static final String OLS_EXPORTER_CLASS_KEY = "OLS-ExporterClass";
+  private static final String EXPORTER_BUNDLE_FILTER = String.format( "(&(%s=%s)(%s=*))", OLS_EXPORTER_MAGIC_KEY,
+      OLS_EXPORTER_MAGIC_VALUE, OLS_EXPORTER_CLASS_KEY );
+
   // METHODS
 
   /**
@@ -52,6 +95,13 @@ public class Activator extends DependencyActivatorBase
   @Override
   public void init( final BundleContext aContext, final DependencyManager aManager ) throws Exception
   {
+    final BatchProcessor batchProcessor = BatchProcessor.create( aContext );
+    if ( batchProcessor != null )
+    {
+      initBatchMode( aManager, batchProcessor );
+      return;
+    }
+
     // Project manager...
     aManager.add( //
         createComponent() //
@@ -63,9 +113,13 @@ public class Activator extends DependencyActivatorBase
             ) //
         );
 
+    // The project manager journals all annotations for crash recovery...
+    final String[] interfaces = new String[] { ProjectManager.class.getName(),
+        AnnotationListener.class.getName() };
+
     aManager.add( //
         createComponent() //
-            .setInterface( ProjectManager.class.getName(), null ) //
+            .setInterface( interfaces, null ) //
             .setImplementation( new ProjectManagerImpl() ) //
             .add( createServiceDependency() //
                 .setService( HostProperties.class ) //
@@ -77,4 +131,33 @@ public class Activator extends DependencyActivatorBase
             ) //
         );
   }
+
+  /**
+   * Registers the headless batch processor instead of the project manager. As
+   * the client is not started in batch mode, the tools and exporters are
+   * registered from their bundle headers here.
+   */
+  private void initBatchMode( final DependencyManager aManager, final BatchProcessor aBatchProcessor )
+  {
+    aManager.add( createBundleAdapterService( Bundle.ACTIVE, TOOL_BUNDLE_FILTER, true /* propagate */) //
+        .setImplementation( ToolBundleAdapter.class ) );
+
+    aManager.add( createBundleAdapterService( Bundle.ACTIVE, EXPORTER_BUNDLE_FILTER, true /* propagate */) //
+        .setImplementation( ExporterBundleAdapter.class ) );
+
+    aManager.add( //
+        createComponent() //
+            .setImplementation( aBatchProcessor ) //
+            .add( createServiceDependency() //
+                .setService( Tool.class ) //
+                .setCallbacks( "addTool", "removeTool" ) //
+                .setRequired( false ) //
+            ) //
+            .add( createServiceDependency() //
+                .setService( Exporter.class ) //
+                .setCallbacks( "addExporter", "removeExporter" ) //
+                .setRequired( false ) //
+            ) //
+        );
+  }
 }
@@ -0,0 +1,995 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.client.project.impl;
+
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.data.export.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.util.*;
+
+import org.osgi.framework.*;
+
+
+/**
+ * Provides a headless batch processor that loads a (large) number of data and
+ * project files, runs the configured tools on them and exports them with the
+ * configured exporter.
+ * <p>
+ * The batch processor is configured through framework properties, see
+ * {@link #create(BundleContext)}. Files are processed in parallel on a bounded
+ * thread pool; after all files are processed, a summary is printed and the
+ * framework is stopped.
+ * </p>
+ * <p>
+ * The annotations yielded by the tools are written to a CSV file per input
+ * file, named after the input file with the suffix
+ * {@value #ANNOTATIONS_SUFFIX}. The exit code of the batch run is stored in the
+ * system property {@value #BATCH_EXIT_CODE}: zero if all files are processed,
+ * {@value #EXIT_FILES_FAILED} if one or more files failed to process, or
+ * {@value #EXIT_BATCH_FAILED} if the batch run itself failed.
+ * </p>
+ */
+public class BatchProcessor
+{
+  // INNER TYPES
+
+  /**
+   * Provides a tool context that covers all samples of a data set.
+   */
+  static final class BatchToolContext implements ToolContext
+  {
+    // VARIABLES
+
+    private final DataSet dataSet;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link BatchToolContext} instance.
+     */
+    BatchToolContext( final DataSet aDataSet )
+    {
+      this.dataSet = aDataSet;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannels()
+    {
+      return getData().getChannels();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor getCursor( final int aIndex )
+    {
+      return this.dataSet.getCursor( aIndex );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AcquisitionResult getData()
+    {
+      return this.dataSet.getCapturedData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEnabledChannels()
+    {
+      return getData().getEnabledChannels();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndSampleIndex()
+    {
+      return Math.max( 0, getData().getValues().length - 1 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLength()
+    {
+      return getEndSampleIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStartSampleIndex()
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * Writes the annotations a tool yields to a CSV file, one annotation per
+   * line, without retaining them.
+   */
+  static final class AnnotationWriter implements AnnotationListener, ToolProgressListener
+  {
+    // VARIABLES
+
+    private final Writer writer;
+    private final String toolName;
+
+    private int count;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link AnnotationWriter} instance.
+     */
+    AnnotationWriter( final Writer aWriter, final String aToolName )
+    {
+      this.writer = aWriter;
+      this.toolName = aToolName;
+    }
+
+    // METHODS
+
+    /**
+     * Quotes the given value for use in a CSV file.
+     */
+    static String quote( final Object aValue )
+    {
+      final String value = String.valueOf( aValue );
+      return "\"" + value.replace( "\"", "\"\"" ) + "\"";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations()
+    {
+      // Nothing to do...
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations( final int aChannelIdx )
+    {
+      // Nothing to do...
+    }
+
+    /**
+     * Returns the number of annotations written so far.
+     */
+    synchronized int getCount()
+    {
+      return this.count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onAnnotation( final Annotation<?> aAnnotation )
+    {
+      final StringBuilder sb = new StringBuilder();
+      sb.append( quote( this.toolName ) ).append( ',' ).append( aAnnotation.getChannel() ).append( ',' );
+      if ( aAnnotation instanceof DataAnnotation )
+      {
+        final DataAnnotation<?> annotation = ( DataAnnotation<?> )aAnnotation;
+        sb.append( annotation.getStartTimestamp() ).append( ',' ).append( annotation.getEndTimestamp() );
+      }
+      else
+      {
+        sb.append( ',' );
+      }
+      sb.append( ',' ).append( quote( aAnnotation.getAnnotation() ) ).append( '\n' );
+
+      try
+      {
+        this.writer.write( sb.toString() );
+        this.count++;
+      }
+      catch ( IOException exception )
+      {
+        // Annotation listeners cannot throw checked exceptions...
+        throw new RuntimeException( "Failed to write annotation!", exception );
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setProgress( final int aPercentage )
+    {
+      // Nothing to do...
+    }
+  }
+
+  /**
+   * Processes a single input file.
+   */
+  final class FileTask implements Callable<Long>
+  {
+    // VARIABLES
+
+    private final File file;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link FileTask} instance.
+     */
+    FileTask( final File aFile )
+    {
+      this.file = aFile;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long call() throws Exception
+    {
+      final DataSet dataSet = read( this.file );
+      if ( dataSet.getCapturedData() == null )
+      {
+        throw new IOException( "No captured data in " + this.file );
+      }
+
+      if ( !BatchProcessor.this.selectedTools.isEmpty() )
+      {
+        runTools( dataSet, this.file );
+      }
+
+      if ( BatchProcessor.this.selectedExporter != null )
+      {
+        export( dataSet, this.file );
+      }
+
+      return Long.valueOf( this.file.length() );
+    }
+  }
+
+  // CONSTANTS
+
+  /** The framework property with the files and/or directories to process. */
+  public static final String BATCH_INPUT = "nl.lxtreme.ols.batch.input";
+  /** The framework property with the directory to write the exports to. */
+  public static final String BATCH_OUTPUT = "nl.lxtreme.ols.batch.output";
+  /** The framework property with the name of the exporter to use. */
+  public static final String BATCH_EXPORTER = "nl.lxtreme.ols.batch.exporter";
+  /** The framework property with the names of the tools to run. */
+  public static final String BATCH_TOOLS = "nl.lxtreme.ols.batch.tools";
+  /** The framework property with the number of files to process in parallel. */
+  public static final String BATCH_THREADS = "nl.lxtreme.ols.batch.threads";
+  /**
+   * The framework property with the tool settings, in the format of a
+   * properties file.
+   */
+  public static final String BATCH_SETTINGS = "nl.lxtreme.ols.batch.settings";
+  /** The system property the exit code of the batch run is stored in. */
+  public static final String BATCH_EXIT_CODE = "nl.lxtreme.ols.batch.exitCode";
+
+  /** The exit code denoting that one or more files failed to process. */
+  static final int EXIT_FILES_FAILED = 1;
+  /** The exit code denoting that the batch run itself failed. */
+  static final int EXIT_BATCH_FAILED = 2;
+
+  private static final Logger LOG = Logger.getLogger( BatchProcessor.class.getName() );
+
+  private static final String OLS_FILE_EXTENSION = "ols";
+  private static final String OLS_PROJECT_EXTENSION = "olp";
+  private static final String ANNOTATIONS_SUFFIX = ".annotations.csv";
+
+  /** The time to wait for the configured tools and exporter to appear. */
+  private static final long SERVICE_TIMEOUT = 30000L;
+
+  // VARIABLES
+
+  private final List<File> inputs;
+  private final File outputDir;
+  private final String exporterName;
+  private final List<String> toolNames;
+  private final Properties toolSettings;
+  private final int threads;
+
+  private final List<Exporter> exporters;
+  @SuppressWarnings( "rawtypes" )
+  private final List<Tool> tools;
+  private final AtomicLong annotationCount;
+  private final ProjectManagerImpl projectReader;
+
+  private volatile BundleContext context; // injected
+  private volatile Exporter selectedExporter;
+  @SuppressWarnings( "rawtypes" )
+  private volatile List<Tool> selectedTools;
+  private volatile Thread worker;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BatchProcessor} instance.
+   *
+   * @param aInputs
+   *          the files and/or directories to process, cannot be
+   *          <code>null</code>;
+   * @param aOutputDir
+   *          the directory to write the exports to, or <code>null</code> to
+   *          write them next to the input files;
+   * @param aExporterName
+   *          the name of the exporter to use, or <code>null</code> to not
+   *          export anything;
+   * @param aToolNames
+   *          the names of the tools to run, cannot be <code>null</code>;
+   * @param aToolSettings
+   *          the settings of the tools to run, cannot be <code>null</code>.
+   *          Each setting is applied to the tool task by means of its setter,
+   *          for example, "rxdIndex" calls <tt>setRxdIndex</tt>. A setting can
+   *          be restricted to a single tool by prefixing it with the name of
+   *          the tool and a dot, for example, "uart.rxdIndex";
+   * @param aThreads
+   *          the number of files to process in parallel, > 0.
+   */
+  public BatchProcessor( final List<File> aInputs, final File aOutputDir, final String aExporterName,
+      final List<String> aToolNames, final Properties aToolSettings, final int aThreads )
+  {
+    if ( aThreads < 1 )
+    {
+      throw new IllegalArgumentException( "Number of threads should be positive!" );
+    }
+
+    this.inputs = aInputs;
+    this.outputDir = aOutputDir;
+    this.exporterName = aExporterName;
+    this.toolNames = aToolNames;
+    this.toolSettings = aToolSettings;
+    this.threads = aThreads;
+
+    this.exporters = new ArrayList<Exporter>();
+    this.tools = new ArrayList<Tool>();
+    this.annotationCount = new AtomicLong();
+    // Only used to read projects, its journal is never started...
+    this.projectReader = new ProjectManagerImpl();
+  }
+
+  // METHODS
+
+  /**
+   * Creates a batch processor from the framework properties of the given
+   * bundle context.
+   *
+   * @param aContext
+   *          the bundle context to get the framework properties from, cannot
+   *          be <code>null</code>.
+   * @return a batch processor, or <code>null</code> if the framework is not
+   *         started in batch mode.
+   * @throws IOException
+   *           in case the tool settings could not be read.
+   */
+  public static BatchProcessor create( final BundleContext aContext ) throws IOException
+  {
+    final String input = aContext.getProperty( BATCH_INPUT );
+    if ( ( input == null ) || "".equals( input.trim() ) )
+    {
+      return null;
+    }
+
+    final List<File> inputs = new ArrayList<File>();
+    for ( String path : split( input ) )
+    {
+      inputs.add( new File( path ) );
+    }
+
+    final String output = aContext.getProperty( BATCH_OUTPUT );
+    final String exporter = aContext.getProperty( BATCH_EXPORTER );
+    final String tools = aContext.getProperty( BATCH_TOOLS );
+    final String threads = aContext.getProperty( BATCH_THREADS );
+    final String settings = aContext.getProperty( BATCH_SETTINGS );
+
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    if ( ( threads != null ) && !"".equals( threads.trim() ) )
+    {
+      threadCount = Integer.parseInt( threads.trim() );
+    }
+
+    final Properties toolSettings = new Properties();
+    if ( settings != null )
+    {
+      toolSettings.load( new StringReader( settings ) );
+    }
+
+    return new BatchProcessor( inputs, ( output == null ) ? null : new File( output ), exporter, split( tools ),
+        toolSettings, threadCount );
+  }
+
+  /**
+   * Returns whether the given (display) name matches the given requested name.
+   * Names are matched case-insensitively, ignoring any trailing ellipsis; a
+   * requested name may also be a prefix of the display name, for example,
+   * "uart" matches "UART analyser ...".
+   */
+  static boolean matches( final String aName, final String aRequested )
+  {
+    final String name = normalize( aName );
+    final String requested = normalize( aRequested );
+    return !"".equals( requested ) && name.startsWith( requested );
+  }
+
+  /**
+   * Converts the given textual value to the given (parameter) type.
+   */
+  private static Object convert( final Class<?> aType, final String aValue ) throws IOException
+  {
+    final String value = aValue.trim();
+    try
+    {
+      if ( ( aType == Integer.TYPE ) || ( aType == Integer.class ) )
+      {
+        return Integer.decode( value );
+      }
+      else if ( ( aType == Long.TYPE ) || ( aType == Long.class ) )
+      {
+        return Long.decode( value );
+      }
+      else if ( ( aType == Double.TYPE ) || ( aType == Double.class ) )
+      {
+        return Double.valueOf( value );
+      }
+      else if ( ( aType == Boolean.TYPE ) || ( aType == Boolean.class ) )
+      {
+        return Boolean.valueOf( value );
+      }
+      else if ( aType == String.class )
+      {
+        return aValue;
+      }
+      else if ( aType.isEnum() )
+      {
+        for ( Object constant : aType.getEnumConstants() )
+        {
+          if ( ( ( Enum<?> )constant ).name().equalsIgnoreCase( value ) )
+          {
+            return constant;
+          }
+        }
+        throw new IOException( "Invalid value: " + aValue + ", expected one of "
+            + Arrays.toString( aType.getEnumConstants() ) );
+      }
+    }
+    catch ( NumberFormatException exception )
+    {
+      throw new IOException( "Invalid number: " + aValue );
+    }
+    throw new IOException( "Unsupported setting type: " + aType.getName() );
+  }
+
+  /**
+   * Returns the public setter for the given property, matching its name
+   * case-insensitively.
+   */
+  private static Method findSetter( final Class<?> aType, final String aProperty )
+  {
+    final String name = "set" + aProperty;
+    for ( Method method : aType.getMethods() )
+    {
+      if ( method.getName().equalsIgnoreCase( name ) && ( method.getParameterTypes().length == 1 ) )
+      {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Normalizes a name for matching purposes.
+   */
+  private static String normalize( final String aName )
+  {
+    String result = ( aName == null ) ? "" : aName.trim().toLowerCase( Locale.ENGLISH );
+    if ( result.endsWith( "..." ) )
+    {
+      result = result.substring( 0, result.length() - 3 ).trim();
+    }
+    return result;
+  }
+
+  /**
+   * Splits the given list of values on the platform's path separator.
+   */
+  private static List<String> split( final String aValue )
+  {
+    final List<String> result = new ArrayList<String>();
+    if ( aValue != null )
+    {
+      for ( String value : aValue.split( File.pathSeparator ) )
+      {
+        if ( !"".equals( value.trim() ) )
+        {
+          result.add( value.trim() );
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Called by the dependency manager when an exporter service becomes
+   * available.
+   */
+  public void addExporter( final Exporter aExporter )
+  {
+    synchronized ( this )
+    {
+      this.exporters.add( aExporter );
+      notifyAll();
+    }
+  }
+
+  /**
+   * Called by the dependency manager when a tool service becomes available.
+   */
+  @SuppressWarnings( "rawtypes" )
+  public void addTool( final Tool aTool )
+  {
+    synchronized ( this )
+    {
+      this.tools.add( aTool );
+      notifyAll();
+    }
+  }
+
+  /**
+   * Processes all input files, waiting until all of them are processed.
+   *
+   * @return the number of files that failed to process, >= 0.
+   * @throws InterruptedException
+   *           in case the processing was interrupted.
+   * @throws IOException
+   *           in case the configured tools or exporter are not available.
+   */
+  public int process() throws InterruptedException, IOException
+  {
+    resolveServices();
+
+    final List<File> files = new ArrayList<File>();
+    for ( File input : this.inputs )
+    {
+      collectFiles( input, files );
+    }
+
+    final long startTime = System.nanoTime();
+    long byteCount = 0L;
+    int failures = 0;
+
+    final ExecutorService executor = Executors.newFixedThreadPool( this.threads );
+    try
+    {
+      final List<Future<Long>> results = new ArrayList<Future<Long>>( files.size() );
+      for ( File file : files )
+      {
+        results.add( executor.submit( new FileTask( file ) ) );
+      }
+
+      for ( int i = 0; i < results.size(); i++ )
+      {
+        try
+        {
+          byteCount += results.get( i ).get().longValue();
+        }
+        catch ( ExecutionException exception )
+        {
+          failures++;
+
+          final Throwable cause = exception.getCause();
+          System.err.println( files.get( i ) + ": " + cause );
+          LOG.log( Level.FINE, "Processing of " + files.get( i ) + " failed!", cause );
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    final double seconds = Math.max( 1.0e-3, ( System.nanoTime() - startTime ) / 1.0e9 );
+    System.out.printf( "Processed %d files (%d failed) in %.1f s: %.1f files/s, %.1f MB/s, %d annotations.%n",
+        Integer.valueOf( files.size() ), Integer.valueOf( failures ), Double.valueOf( seconds ),
+        Double.valueOf( files.size() / seconds ), Double.valueOf( byteCount / ( seconds * 1024.0 * 1024.0 ) ),
+        Long.valueOf( this.annotationCount.get() ) );
+
+    return failures;
+  }
+
+  /**
+   * Called by the dependency manager when an exporter service is removed.
+   */
+  public void removeExporter( final Exporter aExporter )
+  {
+    synchronized ( this )
+    {
+      this.exporters.remove( aExporter );
+    }
+  }
+
+  /**
+   * Called by the dependency manager when a tool service is removed.
+   */
+  @SuppressWarnings( "rawtypes" )
+  public void removeTool( final Tool aTool )
+  {
+    synchronized ( this )
+    {
+      this.tools.remove( aTool );
+    }
+  }
+
+  /**
+   * Called by the dependency manager when this component is started.
+   */
+  public void start()
+  {
+    this.worker = new Thread( "OLS batch processor" )
+    {
+      @Override
+      public void run()
+      {
+        int exitCode = EXIT_BATCH_FAILED;
+        try
+        {
+          exitCode = ( process() > 0 ) ? EXIT_FILES_FAILED : 0;
+        }
+        catch ( InterruptedException exception )
+        {
+          return;
+        }
+        catch ( Exception exception )
+        {
+          System.err.println( "Batch processing failed: " + exception.getMessage() );
+          LOG.log( Level.FINE, "Batch processing failed!", exception );
+        }
+
+        // Picked up by the runner once the framework is stopped...
+        System.setProperty( BATCH_EXIT_CODE, Integer.toString( exitCode ) );
+
+        stopFramework();
+      }
+    };
+    this.worker.start();
+  }
+
+  /**
+   * Called by the dependency manager when this component is stopped.
+   */
+  public void stop()
+  {
+    final Thread thread = this.worker;
+    if ( ( thread != null ) && ( thread != Thread.currentThread() ) )
+    {
+      thread.interrupt();
+    }
+    this.worker = null;
+  }
+
+  /**
+   * Adds the given file, or all data and project files in the given directory,
+   * to the given list of files.
+   */
+  private void collectFiles( final File aInput, final List<File> aFiles ) throws IOException
+  {
+    if ( aInput.isDirectory() )
+    {
+      final File[] entries = aInput.listFiles();
+      if ( entries != null )
+      {
+        Arrays.sort( entries );
+        for ( File entry : entries )
+        {
+          final String name = entry.getName().toLowerCase( Locale.ENGLISH );
+          if ( entry.isFile()
+              && ( name.endsWith( "." + OLS_FILE_EXTENSION ) || name.endsWith( "." + OLS_PROJECT_EXTENSION ) ) )
+          {
+            aFiles.add( entry );
+          }
+        }
+      }
+    }
+    else if ( aInput.isFile() )
+    {
+      aFiles.add( aInput );
+    }
+    else
+    {
+      throw new FileNotFoundException( "No such file or directory: " + aInput );
+    }
+  }
+
+  /**
+   * Applies the tool settings to the given tool task.
+   */
+  @SuppressWarnings( "rawtypes" )
+  private void configure( final Tool aTool, final ToolTask<?> aTask ) throws IOException
+  {
+    for ( String key : this.toolSettings.stringPropertyNames() )
+    {
+      final int dot = key.lastIndexOf( '.' );
+      final String property = key.substring( dot + 1 );
+      final boolean qualified = dot > 0;
+      if ( qualified && !matches( aTool.getName(), key.substring( 0, dot ) ) )
+      {
+        // Setting of another tool...
+        continue;
+      }
+
+      final Method setter = findSetter( aTask.getClass(), property );
+      if ( setter == null )
+      {
+        if ( qualified )
+        {
+          throw new IOException( "No such setting for " + aTool.getName() + ": " + property );
+        }
+        // Unqualified settings only apply to the tools that know them...
+        continue;
+      }
+
+      final Object value = convert( setter.getParameterTypes()[0], this.toolSettings.getProperty( key ) );
+      try
+      {
+        setter.invoke( aTask, value );
+      }
+      catch ( InvocationTargetException exception )
+      {
+        throw new IOException( "Invalid setting " + key + ": " + exception.getCause().getMessage() );
+      }
+      catch ( IllegalAccessException exception )
+      {
+        throw new IOException( "Cannot apply setting " + key + "!" );
+      }
+    }
+  }
+
+  /**
+   * Exports the given data set, read from the given file, with the selected
+   * exporter.
+   */
+  private void export( final DataSet aDataSet, final File aFile ) throws IOException
+  {
+    final Exporter exporter = this.selectedExporter;
+
+    final String[] extensions = exporter.getFilenameExtentions();
+    final String extension = ( extensions.length > 0 ) ? extensions[0] : "out";
+    final File output = getOutputFile( aFile, "." + extension );
+
+    final OutputStream out = new BufferedOutputStream( new FileOutputStream( output ) );
+    try
+    {
+      if ( exporter instanceof StreamingExporter )
+      {
+        ( ( StreamingExporter )exporter ).export( new ExportContext( aDataSet, null ), out );
+      }
+      else
+      {
+        exporter.export( aDataSet, null, out );
+      }
+      out.flush();
+    }
+    finally
+    {
+      HostUtils.closeResource( out );
+    }
+  }
+
+  /**
+   * Returns the output file for the given input file, by replacing its
+   * extension with the given suffix.
+   */
+  private File getOutputFile( final File aFile, final String aSuffix )
+  {
+    String name = HostUtils.stripFileExtension( aFile, OLS_FILE_EXTENSION, OLS_PROJECT_EXTENSION );
+    if ( "".equals( name ) )
+    {
+      name = aFile.getName();
+    }
+
+    final File dir = ( this.outputDir != null ) ? this.outputDir : aFile.getAbsoluteFile().getParentFile();
+    return new File( dir, name + aSuffix );
+  }
+
+  /**
+   * Reads the given data or project file.
+   */
+  private DataSet read( final File aFile ) throws IOException
+  {
+    final InputStream in = new FileInputStream( aFile );
+    try
+    {
+      if ( aFile.getName().toLowerCase( Locale.ENGLISH ).endsWith( "." + OLS_PROJECT_EXTENSION ) )
+      {
+        final ProjectImpl project = new ProjectImpl();
+        this.projectReader.readProject( project, in );
+        return project.getDataSet();
+      }
+
+      return OlsDataHelper.read( new InputStreamReader( new BufferedInputStream( in ) ) );
+    }
+    finally
+    {
+      HostUtils.closeResource( in );
+    }
+  }
+
+  /**
+   * Waits until the configured exporter and tools are available, and selects
+   * them.
+   */
+  @SuppressWarnings( "rawtypes" )
+  private void resolveServices() throws InterruptedException, IOException
+  {
+    final long deadline = System.currentTimeMillis() + SERVICE_TIMEOUT;
+
+    synchronized ( this )
+    {
+      while ( true )
+      {
+        Exporter exporter = null;
+        if ( this.exporterName != null )
+        {
+          for ( Exporter candidate : this.exporters )
+          {
+            if ( matches( candidate.getName(), this.exporterName ) )
+            {
+              exporter = candidate;
+              break;
+            }
+          }
+        }
+
+        final List<Tool> selected = new ArrayList<Tool>();
+        final List<String> missing = new ArrayList<String>();
+        for ( String toolName : this.toolNames )
+        {
+          Tool tool = null;
+          for ( Tool candidate : this.tools )
+          {
+            if ( matches( candidate.getName(), toolName ) )
+            {
+              tool = candidate;
+              break;
+            }
+          }
+
+          if ( tool != null )
+          {
+            selected.add( tool );
+          }
+          else
+          {
+            missing.add( toolName );
+          }
+        }
+
+        if ( ( this.exporterName != null ) && ( exporter == null ) )
+        {
+          missing.add( this.exporterName );
+        }
+
+        if ( missing.isEmpty() )
+        {
+          this.selectedExporter = exporter;
+          this.selectedTools = selected;
+          return;
+        }
+
+        final long timeout = deadline - System.currentTimeMillis();
+        if ( timeout <= 0L )
+        {
+          throw new IOException( "No such tool(s) or exporter: " + missing );
+        }
+        wait( timeout );
+      }
+    }
+  }
+
+  /**
+   * Runs the selected tools on the given data set, read from the given file,
+   * and writes their annotations to a single CSV file.
+   */
+  @SuppressWarnings( "rawtypes" )
+  private void runTools( final DataSet aDataSet, final File aFile ) throws Exception
+  {
+    final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( getOutputFile( aFile,
+        ANNOTATIONS_SUFFIX ) ), "UTF-8" ) );
+    try
+    {
+      writer.write( "\"tool\",\"channel\",\"start\",\"end\",\"annotation\"\n" );
+
+      for ( Tool tool : this.selectedTools )
+      {
+        final AnnotationWriter listener = new AnnotationWriter( writer, tool.getName() );
+
+        final ToolTask<?> task = tool.createToolTask( new BatchToolContext( aDataSet ), listener, listener );
+        configure( tool, task );
+        task.call();
+
+        this.annotationCount.addAndGet( listener.getCount() );
+        LOG.log( Level.FINE, "{0}: {1} yielded {2} annotations.", new Object[] { aFile, tool.getName(),
+            Integer.valueOf( listener.getCount() ) } );
+      }
+
+      writer.flush();
+    }
+    finally
+    {
+      HostUtils.closeResource( writer );
+    }
+  }
+
+  /**
+   * Stops the OSGi framework, which ends the batch run.
+   */
+  private void stopFramework()
+  {
+    final BundleContext bc = this.context;
+    if ( bc == null )
+    {
+      return;
+    }
+
+    try
+    {
+      bc.getBundle( 0 ).stop();
+    }
+    catch ( BundleException exception )
+    {
+      LOG.log( Level.WARNING, "Failed to stop framework!", exception );
+    }
+    catch ( IllegalStateException exception )
+    {
+      // Ignore, our bundle context is no longer valid...
+    }
+  }
+}
@@ -51,6 +51,8 @@ public final class ChannelImpl implements Channel
   private final List<Annotation<?>> annotations;
   private final PropertyChangeSupport propertyChangeSupport;
 
+  private volatile PersistedAnnotations persistedAnnotations;
+
   // CONSTRUCTORS
 
   /**
@@ -77,7 +79,17 @@ public final class ChannelImpl implements Channel
     this.enabled = aChannel.isEnabled();
 
     this.annotations = new CopyOnWriteArrayList<Annotation<?>>();
-    if ( aRetainAnnotation )
+    if ( aRetainAnnotation && ( aChannel instanceof ChannelImpl ) )
+    {
+      // Do not decode any persisted annotations only for copying them...
+      final ChannelImpl source = ( ChannelImpl )aChannel;
+      synchronized ( source )
+      {
+        this.persistedAnnotations = source.persistedAnnotations;
+        this.annotations.addAll( source.annotations );
+      }
+    }
+    else if ( aRetainAnnotation )
     {
       this.annotations.addAll( aChannel.getAnnotations() );
     }
@@ -116,6 +128,8 @@ public final class ChannelImpl implements Channel
   {
     if ( aAnnotation instanceof DataAnnotation )
     {
+      restorePersistedAnnotations();
+
       this.annotations.add( aAnnotation );
     }
     else
@@ -141,6 +155,7 @@ public final class ChannelImpl implements Channel
   @Override
   public void clearAnnotations()
   {
+    this.persistedAnnotations = null;
     this.annotations.clear();
   }
 
@@ -183,6 +198,8 @@ public final class ChannelImpl implements Channel
   @Override
   public Collection<Annotation<?>> getAnnotations()
   {
+    restorePersistedAnnotations();
+
     return Collections.unmodifiableCollection( this.annotations );
   }
 
@@ -288,6 +305,18 @@ public final class ChannelImpl implements Channel
     return this.index + ": " + getLabel();
   }
 
+  /**
+   * Sets the persisted annotations of this channel, which are restored upon
+   * first access of the annotations of this channel.
+   * 
+   * @param aAnnotations
+   *          the persisted annotations to restore, can be <code>null</code>.
+   */
+  final void setPersistedAnnotations( final PersistedAnnotations aAnnotations )
+  {
+    this.persistedAnnotations = aAnnotations;
+  }
+
   /**
    * Crafts a default channel name for use when a channel has no label set.
    * 
@@ -297,4 +326,25 @@ public final class ChannelImpl implements Channel
   {
     return String.format( "%s-%d", "Channel", Integer.valueOf( getIndex() ) );
   }
+
+  /**
+   * Restores the persisted annotations of this channel, if not already done.
+   */
+  private void restorePersistedAnnotations()
+  {
+    if ( this.persistedAnnotations == null )
+    {
+      return;
+    }
+
+    synchronized ( this )
+    {
+      final PersistedAnnotations persisted = this.persistedAnnotations;
+      if ( persisted != null )
+      {
+        this.persistedAnnotations = null;
+        this.annotations.addAll( 0, persisted.getAnnotations( this.index ) );
+      }
+    }
+  }
 }
@@ -64,6 +64,32 @@ public class DataSetImpl implements PropertyChangeListener, DataSet, ProjectProp
     this.cursors = createCursors( Ols.MAX_CURSORS, aOld.getCursors() );
   }
 
+  /**
+   * Creates a new {@link DataSetImpl} instance as copy of a given data set,
+   * including the annotations of its channels.
+   * 
+   * @param aSource
+   *          the data set to copy, cannot be <code>null</code>.
+   */
+  DataSetImpl( final DataSet aSource )
+  {
+    this.propertyChangeSupport = new PropertyChangeSupport( this );
+
+    this.capturedData = aSource.getCapturedData();
+    this.cursorsEnabled = aSource.isCursorsEnabled();
+
+    final Channel[] sourceChannels = aSource.getChannels();
+    this.channels = new Channel[sourceChannels.length];
+    for ( int i = 0; i < sourceChannels.length; i++ )
+    {
+      if ( sourceChannels[i] != null )
+      {
+        this.channels[i] = new ChannelImpl( sourceChannels[i], true /* aRetainAnnotations */);
+      }
+    }
+    this.cursors = createCursors( Ols.MAX_CURSORS, aSource.getCursors() );
+  }
+
   /**
    * Creates a new {@link DataSetImpl} instance.
    */
@@ -209,6 +235,32 @@ public class DataSetImpl implements PropertyChangeListener, DataSet, ProjectProp
     }
   }
 
+  /**
+   * Restores the given persisted annotations to the channels of this data set.
+   * <p>
+   * In case the persisted annotations do not belong to the captured data of
+   * this data set, they are discarded.
+   * </p>
+   * 
+   * @param aAnnotations
+   *          the persisted annotations to restore, can be <code>null</code>.
+   */
+  final void restoreAnnotations( final PersistedAnnotations aAnnotations )
+  {
+    if ( ( aAnnotations == null ) || !aAnnotations.isValidFor( this.capturedData ) )
+    {
+      return;
+    }
+
+    for ( Channel channel : this.channels )
+    {
+      if ( ( channel instanceof ChannelImpl ) && aAnnotations.hasAnnotations( channel.getIndex() ) )
+      {
+        ( ( ChannelImpl )channel ).setPersistedAnnotations( aAnnotations );
+      }
+    }
+  }
+
   /**
    * Creates an array of a given number of channels.
    * 
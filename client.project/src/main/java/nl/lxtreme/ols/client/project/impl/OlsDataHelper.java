@@ -30,6 +30,8 @@ import java.util.regex.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.task.*;
+import nl.lxtreme.ols.api.util.*;
 
 
 /**
@@ -45,6 +47,8 @@ public final class OlsDataHelper
   private static final Pattern OLS_INSTRUCTION_PATTERN = Pattern.compile( "^;([^:]+):\\s+([^\r\n]+)$" );
   /** The regular expression used to parse an (OLS-datafile) data value. */
   private static final Pattern OLS_DATA_PATTERN = Pattern.compile( "^([0-9a-fA-F]+)@(\\d+)$" );
+  /** Denotes how often the progress is reported while writing samples. */
+  private static final int PROGRESS_INTERVAL_MASK = ( 1 << 14 ) - 1;
 
   // METHODS
 
@@ -220,9 +224,8 @@ public final class OlsDataHelper
   /**
    * Writes the data to the given writer.
    * 
-   * @param aProject
-   *          the project to write the settings for, cannot be <code>null</code>
-   *          ;
+   * @param aDataSet
+   *          the data set to write, cannot be <code>null</code>;
    * @param aWriter
    *          the writer to write the data to, cannot be <code>null</code>.
    * @throws IOException
@@ -230,7 +233,36 @@ public final class OlsDataHelper
    */
   public static void write( final DataSet aDataSet, final Writer aWriter ) throws IOException
   {
-    final BufferedWriter bw = new BufferedWriter( aWriter );
+    write( aDataSet, aWriter, null /* aProgressListener */);
+  }
+
+  /**
+   * Writes the data to the given writer, reporting the progress to the given
+   * listener.
+   * <p>
+   * The sample data is formatted directly into a (reusable) buffer, which is
+   * written in large blocks to the given writer. This method honors the
+   * interrupted flag of the calling thread, allowing it to be cancelled when
+   * run as background task.
+   * </p>
+   * 
+   * @param aDataSet
+   *          the data set to write, cannot be <code>null</code>;
+   * @param aWriter
+   *          the writer to write the data to, cannot be <code>null</code>;
+   * @param aProgressListener
+   *          the (optional) listener to report the progress to, can be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems;
+   * @throws InterruptedIOException
+   *           in case the calling thread was interrupted while writing the
+   *           data.
+   */
+  public static void write( final DataSet aDataSet, final Writer aWriter, final TaskProgressListener aProgressListener )
+      throws IOException
+  {
+    final FastBufferedWriter bw = new FastBufferedWriter( aWriter );
 
     final AcquisitionResult capturedData = aDataSet.getCapturedData();
 
@@ -243,25 +275,25 @@ public final class OlsDataHelper
       final long[] timestamps = capturedData.getTimestamps();
 
       bw.write( ";Size: " );
-      bw.write( Integer.toString( values.length ) );
+      bw.writeDecimal( values.length );
       bw.newLine();
 
       bw.write( ";Rate: " );
-      bw.write( Integer.toString( capturedData.getSampleRate() ) );
+      bw.writeDecimal( capturedData.getSampleRate() );
       bw.newLine();
 
       bw.write( ";Channels: " );
-      bw.write( Integer.toString( capturedData.getChannels() ) );
+      bw.writeDecimal( capturedData.getChannels() );
       bw.newLine();
 
       bw.write( ";EnabledChannels: " );
-      bw.write( Integer.toString( capturedData.getEnabledChannels() ) );
+      bw.writeDecimal( capturedData.getEnabledChannels() );
       bw.newLine();
 
       if ( capturedData.hasTriggerData() )
       {
         bw.write( ";TriggerPosition: " );
-        bw.write( Long.toString( capturedData.getTriggerPosition() ) );
+        bw.writeDecimal( capturedData.getTriggerPosition() );
         bw.newLine();
       }
 
@@ -270,7 +302,7 @@ public final class OlsDataHelper
       bw.newLine();
 
       bw.write( ";AbsoluteLength: " );
-      bw.write( Long.toString( capturedData.getAbsoluteLength() ) );
+      bw.writeDecimal( capturedData.getAbsoluteLength() );
       bw.newLine();
 
       bw.write( ";CursorEnabled: " );
@@ -281,38 +313,50 @@ public final class OlsDataHelper
       {
         if ( cursors[i].isDefined() )
         {
-          bw.write( String.format( ";Cursor%d: ", Integer.valueOf( i ) ) );
-          bw.write( Long.toString( cursors[i].getTimestamp() ) );
+          bw.write( ";Cursor" );
+          bw.writeDecimal( i );
+          bw.write( ": " );
+          bw.writeDecimal( cursors[i].getTimestamp() );
           bw.newLine();
         }
       }
-      for ( int i = 0; i < values.length; i++ )
+
+      final int size = values.length;
+      int lastPercentage = -1;
+
+      for ( int i = 0; i < size; i++ )
       {
-        bw.write( formatSample( values[i], timestamps[i] ) );
+        if ( ( i & PROGRESS_INTERVAL_MASK ) == 0 )
+        {
+          if ( Thread.currentThread().isInterrupted() )
+          {
+            throw new InterruptedIOException( "Writing of data interrupted!" );
+          }
+
+          final int percentage = getPercentage( i, size );
+          if ( ( aProgressListener != null ) && ( percentage != lastPercentage ) )
+          {
+            aProgressListener.setProgress( percentage );
+            lastPercentage = percentage;
+          }
+        }
+
+        // values can become negative (full 32-bit is used!), while timestamps
+        // never can be negative (it is a relative timestamp!)...
+        bw.writeHex( values[i], 8 );
+        bw.write( '@' );
+        bw.writeDecimal( timestamps[i] & Long.MAX_VALUE );
         bw.newLine();
       }
+
+      if ( aProgressListener != null )
+      {
+        aProgressListener.setProgress( 100 );
+      }
     }
     finally
     {
       bw.flush();
     }
   }
-
-  /**
-   * Formats the given value and timestamp into a single sample string.
-   * 
-   * @param aValue
-   *          the sample value to format;
-   * @param aTimestamp
-   *          the timestamp to format.
-   * @return the sample string, in the form of
-   *         &lt;value<sub>16</sub>&gt;@&lt;timestamp<sub>10</sub>&gt;.
-   */
-  @SuppressWarnings( "boxing" )
-  static String formatSample( final int aValue, final long aTimestamp )
-  {
-    // values can become negative (full 32-bit is used!), while timestamps never
-    // can be negative (it is a relative timestamp!)...
-    return String.format( "%08x@%d", aValue, ( aTimestamp & Long.MAX_VALUE ) );
-  }
 }
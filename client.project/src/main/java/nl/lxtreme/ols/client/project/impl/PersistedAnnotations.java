@@ -0,0 +1,632 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.client.project.impl;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.tool.base.annotation.*;
+
+
+/**
+ * Provides the (binary) persisted form of the channel annotations of a data
+ * set.
+ * <p>
+ * The annotations are stored per channel, sorted on their start timestamp.
+ * Timestamps are delta-encoded as variable-length integers, and all payloads
+ * are interned in a single table, so repetitive decoder output (like UART
+ * bytes) takes only a couple of bytes per annotation. The annotations of a
+ * channel are only decoded when they are first requested.
+ * </p>
+ * <p>
+ * Each annotation records the type of its payload, so sample data annotations
+ * are restored as such, and numeric, boolean and character payloads are
+ * restored with their original value. Other payloads are restored as text.
+ * </p>
+ * <p>
+ * The persisted annotations are tied to a hash of the captured data they were
+ * created for, allowing stale annotations to be discarded.
+ * </p>
+ */
+public final class PersistedAnnotations
+{
+  // INNER TYPES
+
+  /**
+   * Provides a restored data annotation.
+   */
+  static final class RestoredAnnotation<T> implements DataAnnotation<T>
+  {
+    // VARIABLES
+
+    private final int channelIdx;
+    private final long startTimestamp;
+    private final long endTimestamp;
+    private final T value;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link RestoredAnnotation} instance.
+     */
+    RestoredAnnotation( final int aChannelIdx, final long aStartTimestamp, final long aEndTimestamp, final T aValue )
+    {
+      this.channelIdx = aChannelIdx;
+      this.startTimestamp = aStartTimestamp;
+      this.endTimestamp = aEndTimestamp;
+      this.value = aValue;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo( final Annotation<T> aOther )
+    {
+      int result = ( this.channelIdx - aOther.getChannel() );
+      if ( ( result == 0 ) && ( aOther instanceof DataAnnotation ) )
+      {
+        final DataAnnotation<?> other = ( DataAnnotation<?> )aOther;
+        result = compare( this.startTimestamp, other.getStartTimestamp() );
+        if ( result == 0 )
+        {
+          result = compare( this.endTimestamp, other.getEndTimestamp() );
+        }
+      }
+      if ( result == 0 )
+      {
+        result = String.valueOf( this.value ).compareTo( String.valueOf( aOther.getAnnotation() ) );
+      }
+      return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T getAnnotation()
+    {
+      return this.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannel()
+    {
+      return this.channelIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEndTimestamp()
+    {
+      return this.endTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStartTimestamp()
+    {
+      return this.startTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+      return String.valueOf( this.value );
+    }
+  }
+
+  // CONSTANTS
+
+  /** "OLSA" */
+  private static final int MAGIC = 0x4F4C5341;
+  private static final int VERSION = 1;
+
+  /** The payload of the annotation was a string. */
+  static final int TYPE_TEXT = 0;
+  /** The payload of the annotation was an object, stored as string. */
+  static final int TYPE_OBJECT = 1;
+  /** The annotation was a {@link SampleDataAnnotation}. */
+  static final int TYPE_SAMPLE_DATA = 2;
+  /** The payload of the annotation was an integer. */
+  static final int TYPE_INTEGER = 3;
+  /** The payload of the annotation was a long. */
+  static final int TYPE_LONG = 4;
+  /** The payload of the annotation was a double. */
+  static final int TYPE_DOUBLE = 5;
+  /** The payload of the annotation was a boolean. */
+  static final int TYPE_BOOLEAN = 6;
+  /** The payload of the annotation was a character. */
+  static final int TYPE_CHARACTER = 7;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final Comparator<DataAnnotation<?>> START_TIME_COMPARATOR = new Comparator<DataAnnotation<?>>()
+  {
+    @Override
+    public int compare( final DataAnnotation<?> aO1, final DataAnnotation<?> aO2 )
+    {
+      return PersistedAnnotations.compare( aO1.getStartTimestamp(), aO2.getStartTimestamp() );
+    }
+  };
+
+  // VARIABLES
+
+  private final long captureHash;
+  private final String[] payloads;
+  /** channel index -> {offset, count, length} of its encoded annotations. */
+  private final Map<Integer, int[]> channelRecords;
+  private final byte[] data;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link PersistedAnnotations} instance.
+   */
+  private PersistedAnnotations( final long aCaptureHash, final String[] aPayloads,
+      final Map<Integer, int[]> aChannelRecords, final byte[] aData )
+  {
+    this.captureHash = aCaptureHash;
+    this.payloads = aPayloads;
+    this.channelRecords = aChannelRecords;
+    this.data = aData;
+  }
+
+  // METHODS
+
+  /**
+   * Calculates a hash over the given captured data, used to determine whether
+   * persisted annotations still belong to it.
+   *
+   * @param aCapturedData
+   *          the captured data to calculate the hash for, cannot be
+   *          <code>null</code>.
+   * @return a 64-bit hash value.
+   */
+  public static long getCaptureHash( final AcquisitionResult aCapturedData )
+  {
+    long hash = FNV_OFFSET_BASIS;
+    hash = ( hash ^ aCapturedData.getChannels() ) * FNV_PRIME;
+    hash = ( hash ^ aCapturedData.getEnabledChannels() ) * FNV_PRIME;
+    hash = ( hash ^ aCapturedData.getSampleRate() ) * FNV_PRIME;
+    hash = ( hash ^ aCapturedData.getTriggerPosition() ) * FNV_PRIME;
+    hash = ( hash ^ aCapturedData.getAbsoluteLength() ) * FNV_PRIME;
+
+    final int[] values = aCapturedData.getValues();
+    final long[] timestamps = aCapturedData.getTimestamps();
+    hash = ( hash ^ values.length ) * FNV_PRIME;
+    for ( int i = 0; i < values.length; i++ )
+    {
+      hash = ( hash ^ values[i] ) * FNV_PRIME;
+      hash = ( hash ^ timestamps[i] ) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Returns whether the given data set has any data annotations that can be
+   * persisted.
+   *
+   * @param aDataSet
+   *          the data set to test, cannot be <code>null</code>.
+   * @return <code>true</code> if there is at least one data annotation for a
+   *         captured data set, <code>false</code> otherwise.
+   */
+  public static boolean hasAnnotations( final DataSet aDataSet )
+  {
+    if ( aDataSet.getCapturedData() == null )
+    {
+      return false;
+    }
+    for ( Channel channel : aDataSet.getChannels() )
+    {
+      if ( ( channel != null ) && !getDataAnnotations( channel ).isEmpty() )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads persisted annotations from the given input stream.
+   * <p>
+   * Only the payloads are decoded directly, the annotations itself are decoded
+   * on demand.
+   * </p>
+   *
+   * @param aInput
+   *          the input stream to read from, cannot be <code>null</code>.
+   * @return the persisted annotations, never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems, or in case the input is not a valid
+   *           annotations section.
+   */
+  public static PersistedAnnotations read( final InputStream aInput ) throws IOException
+  {
+    final DataInputStream dis = new DataInputStream( aInput );
+
+    if ( dis.readInt() != MAGIC )
+    {
+      throw new IOException( "Invalid annotations data!" );
+    }
+    final int version = dis.readUnsignedShort();
+    if ( version != VERSION )
+    {
+      throw new IOException( "Unsupported annotations version: " + version );
+    }
+
+    final long captureHash = dis.readLong();
+
+    final String[] payloads = new String[dis.readInt()];
+    for ( int i = 0; i < payloads.length; i++ )
+    {
+      final byte[] text = new byte[dis.readInt()];
+      dis.readFully( text );
+      payloads[i] = new String( text, "UTF-8" );
+    }
+
+    final int channelCount = dis.readInt();
+    final Map<Integer, int[]> records = new HashMap<Integer, int[]>( channelCount );
+    final int[][] recordInfo = new int[channelCount][];
+
+    int totalLength = 0;
+    for ( int i = 0; i < channelCount; i++ )
+    {
+      final int channelIdx = dis.readInt();
+      final int count = dis.readInt();
+      final int length = dis.readInt();
+
+      recordInfo[i] = new int[] { totalLength, count, length };
+      records.put( Integer.valueOf( channelIdx ), recordInfo[i] );
+      totalLength += length;
+    }
+
+    final byte[] data = new byte[totalLength];
+    dis.readFully( data );
+
+    return new PersistedAnnotations( captureHash, payloads, records, data );
+  }
+
+  /**
+   * Writes all data annotations of the given data set to the given output
+   * stream. The given stream is flushed, but not closed.
+   *
+   * @param aDataSet
+   *          the data set whose annotations should be written, cannot be
+   *          <code>null</code> and should contain captured data;
+   * @param aOutput
+   *          the output stream to write to, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public static void write( final DataSet aDataSet, final OutputStream aOutput ) throws IOException
+  {
+    final Map<String, Integer> payloadIndex = new LinkedHashMap<String, Integer>();
+    final List<int[]> channelInfo = new ArrayList<int[]>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    for ( Channel channel : aDataSet.getChannels() )
+    {
+      if ( channel == null )
+      {
+        continue;
+      }
+
+      final List<DataAnnotation<?>> annotations = getDataAnnotations( channel );
+      if ( annotations.isEmpty() )
+      {
+        continue;
+      }
+
+      // Stable sort; retains the original order of equal start times...
+      Collections.sort( annotations, START_TIME_COMPARATOR );
+
+      final int offset = body.size();
+
+      long prevStart = 0L;
+      for ( DataAnnotation<?> annotation : annotations )
+      {
+        final Object payload = annotation.getAnnotation();
+        final String text = String.valueOf( payload );
+
+        Integer idx = payloadIndex.get( text );
+        if ( idx == null )
+        {
+          idx = Integer.valueOf( payloadIndex.size() );
+          payloadIndex.put( text, idx );
+        }
+
+        final long start = annotation.getStartTimestamp();
+        writeVarLong( body, start - prevStart );
+        writeVarLong( body, zigZag( annotation.getEndTimestamp() - start ) );
+        body.write( getType( annotation ) );
+        writeVarLong( body, idx.intValue() );
+
+        prevStart = start;
+      }
+
+      channelInfo.add( new int[] { channel.getIndex(), annotations.size(), body.size() - offset } );
+    }
+
+    final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( aOutput ) );
+    dos.writeInt( MAGIC );
+    dos.writeShort( VERSION );
+    dos.writeLong( getCaptureHash( aDataSet.getCapturedData() ) );
+
+    dos.writeInt( payloadIndex.size() );
+    for ( String payload : payloadIndex.keySet() )
+    {
+      final byte[] text = payload.getBytes( "UTF-8" );
+      dos.writeInt( text.length );
+      dos.write( text );
+    }
+
+    dos.writeInt( channelInfo.size() );
+    for ( int[] info : channelInfo )
+    {
+      dos.writeInt( info[0] );
+      dos.writeInt( info[1] );
+      dos.writeInt( info[2] );
+    }
+
+    body.writeTo( dos );
+    dos.flush();
+  }
+
+  /**
+   * Compares two long values, like <tt>Long.compare</tt> of Java 7.
+   */
+  static int compare( final long aValue1, final long aValue2 )
+  {
+    return ( aValue1 < aValue2 ) ? -1 : ( ( aValue1 == aValue2 ) ? 0 : 1 );
+  }
+
+  /**
+   * Creates an annotation for the given channel, time range, payload type and
+   * textual payload.
+   */
+  static Annotation<?> createAnnotation( final int aChannelIdx, final long aStart, final long aEnd,
+      final int aType, final String aPayload )
+  {
+    try
+    {
+      switch ( aType )
+      {
+        case TYPE_SAMPLE_DATA:
+          return new SampleDataAnnotation( aChannelIdx, aStart, aEnd, aPayload );
+        case TYPE_INTEGER:
+          return new RestoredAnnotation<Integer>( aChannelIdx, aStart, aEnd, Integer.valueOf( aPayload ) );
+        case TYPE_LONG:
+          return new RestoredAnnotation<Long>( aChannelIdx, aStart, aEnd, Long.valueOf( aPayload ) );
+        case TYPE_DOUBLE:
+          return new RestoredAnnotation<Double>( aChannelIdx, aStart, aEnd, Double.valueOf( aPayload ) );
+        case TYPE_BOOLEAN:
+          return new RestoredAnnotation<Boolean>( aChannelIdx, aStart, aEnd, Boolean.valueOf( aPayload ) );
+        case TYPE_CHARACTER:
+          if ( aPayload.length() == 1 )
+          {
+            final Character value = Character.valueOf( aPayload.charAt( 0 ) );
+            return new RestoredAnnotation<Character>( aChannelIdx, aStart, aEnd, value );
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    catch ( NumberFormatException exception )
+    {
+      // Fall back to its textual representation...
+    }
+    return new RestoredAnnotation<String>( aChannelIdx, aStart, aEnd, aPayload );
+  }
+
+  /**
+   * Returns all data annotations of the given channel.
+   */
+  private static List<DataAnnotation<?>> getDataAnnotations( final Channel aChannel )
+  {
+    final List<DataAnnotation<?>> result = new ArrayList<DataAnnotation<?>>();
+    for ( Annotation<?> annotation : aChannel.getAnnotations() )
+    {
+      if ( annotation instanceof DataAnnotation )
+      {
+        result.add( ( DataAnnotation<?> )annotation );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the type of the payload of the given annotation.
+   */
+  static int getType( final DataAnnotation<?> aAnnotation )
+  {
+    final Object payload = aAnnotation.getAnnotation();
+    if ( aAnnotation instanceof SampleDataAnnotation )
+    {
+      return TYPE_SAMPLE_DATA;
+    }
+    else if ( payload instanceof String )
+    {
+      return TYPE_TEXT;
+    }
+    else if ( ( payload instanceof Integer ) || ( payload instanceof Short ) || ( payload instanceof Byte ) )
+    {
+      return TYPE_INTEGER;
+    }
+    else if ( payload instanceof Long )
+    {
+      return TYPE_LONG;
+    }
+    else if ( ( payload instanceof Double ) || ( payload instanceof Float ) )
+    {
+      return TYPE_DOUBLE;
+    }
+    else if ( payload instanceof Boolean )
+    {
+      return TYPE_BOOLEAN;
+    }
+    else if ( payload instanceof Character )
+    {
+      return TYPE_CHARACTER;
+    }
+    return TYPE_OBJECT;
+  }
+
+  /**
+   * Writes the given value as unsigned variable-length integer, 7 bits at a
+   * time.
+   */
+  private static void writeVarLong( final ByteArrayOutputStream aOutput, final long aValue )
+  {
+    long value = aValue;
+    while ( ( value & ~0x7FL ) != 0L )
+    {
+      aOutput.write( ( int )( ( value & 0x7F ) | 0x80 ) );
+      value >>>= 7;
+    }
+    aOutput.write( ( int )value );
+  }
+
+  /**
+   * Maps signed values to unsigned ones, keeping small negative values small.
+   */
+  private static long zigZag( final long aValue )
+  {
+    return ( aValue << 1 ) ^ ( aValue >> 63 );
+  }
+
+  /**
+   * Decodes all annotations for the channel with the given index.
+   *
+   * @param aChannelIdx
+   *          the index of the channel to decode the annotations for.
+   * @return a list with annotations, sorted on their start timestamps, never
+   *         <code>null</code>.
+   */
+  public List<Annotation<?>> getAnnotations( final int aChannelIdx )
+  {
+    final int[] record = this.channelRecords.get( Integer.valueOf( aChannelIdx ) );
+    if ( record == null )
+    {
+      return Collections.emptyList();
+    }
+
+    final byte[] buf = this.data;
+    final int count = record[1];
+    final int end = record[0] + record[2];
+
+    final List<Annotation<?>> result = new ArrayList<Annotation<?>>( count );
+
+    int pos = record[0];
+    long start = 0L;
+    for ( int i = 0; ( i < count ) && ( pos < end ); i++ )
+    {
+      // Decode the delta of the start timestamp...
+      long value = 0L;
+      int shift = 0;
+      int b;
+      do
+      {
+        b = buf[pos++];
+        value |= ( long )( b & 0x7F ) << shift;
+        shift += 7;
+      }
+      while ( ( b & 0x80 ) != 0 );
+      start += value;
+
+      // Decode the (zig-zag encoded) duration...
+      value = 0L;
+      shift = 0;
+      do
+      {
+        b = buf[pos++];
+        value |= ( long )( b & 0x7F ) << shift;
+        shift += 7;
+      }
+      while ( ( b & 0x80 ) != 0 );
+      final long duration = ( value >>> 1 ) ^ -( value & 1L );
+
+      final int type = buf[pos++];
+
+      // Decode the payload index...
+      int idx = 0;
+      shift = 0;
+      do
+      {
+        b = buf[pos++];
+        idx |= ( b & 0x7F ) << shift;
+        shift += 7;
+      }
+      while ( ( b & 0x80 ) != 0 );
+
+      result.add( createAnnotation( aChannelIdx, start, start + duration, type, this.payloads[idx] ) );
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns whether there are persisted annotations for the channel with the
+   * given index.
+   *
+   * @param aChannelIdx
+   *          the index of the channel to test.
+   * @return <code>true</code> if there are annotations for the given channel,
+   *         <code>false</code> otherwise.
+   */
+  public boolean hasAnnotations( final int aChannelIdx )
+  {
+    return this.channelRecords.containsKey( Integer.valueOf( aChannelIdx ) );
+  }
+
+  /**
+   * Returns whether these annotations were persisted for the given captured
+   * data.
+   *
+   * @param aCapturedData
+   *          the captured data to test against, can be <code>null</code>.
+   * @return <code>true</code> if these annotations belong to the given
+   *         captured data, <code>false</code> if they are stale.
+   */
+  public boolean isValidFor( final AcquisitionResult aCapturedData )
+  {
+    return ( aCapturedData != null ) && ( getCaptureHash( aCapturedData ) == this.captureHash );
+  }
+}
@@ -24,6 +24,7 @@ package nl.lxtreme.ols.client.project.impl;
 import java.beans.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
 import javax.swing.*;
@@ -46,6 +47,7 @@ public final class ProjectImpl implements Project, ProjectProperties, PropertyCh
 
   private final PropertyChangeSupport propertyChangeSupport;
   private final Map<String, UserSettings> settings;
+  private final AtomicInteger modificationCount;
 
   private DataSetImpl dataSet;
   private String name;
@@ -63,6 +65,7 @@ public final class ProjectImpl implements Project, ProjectProperties, PropertyCh
   {
     this.propertyChangeSupport = new PropertyChangeSupport( this );
     this.settings = new HashMap<String, UserSettings>();
+    this.modificationCount = new AtomicInteger();
 
     setDataSet( new DataSetImpl() );
 
@@ -209,6 +212,10 @@ public final class ProjectImpl implements Project, ProjectProperties, PropertyCh
   {
     final boolean old = this.changed;
     this.changed = aChanged;
+    if ( aChanged )
+    {
+      this.modificationCount.incrementAndGet();
+    }
 
     this.propertyChangeSupport.firePropertyChange( PROPERTY_CHANGED, old, aChanged );
   }
@@ -323,6 +330,65 @@ public final class ProjectImpl implements Project, ProjectProperties, PropertyCh
     OlsDataHelper.write( this.dataSet, aWriter );
   }
 
+  /**
+   * Records that an annotation is added to this project. Annotations do not
+   * mark this project as changed, but do count as modification.
+   * 
+   * @see #getModificationCount()
+   */
+  final void annotationAdded()
+  {
+    this.modificationCount.incrementAndGet();
+  }
+
+  /**
+   * Creates a snapshot of this project, that can be saved in the background
+   * while this project is modified.
+   * <p>
+   * The captured data itself is immutable, and therefore shared with the
+   * snapshot; the settings, channels, cursors and annotations are copied.
+   * This method should be called on the EDT.
+   * </p>
+   * 
+   * @return a copy of this project, without any listeners, never
+   *         <code>null</code>.
+   */
+  final ProjectImpl createSnapshot()
+  {
+    final ProjectImpl result = new ProjectImpl();
+    result.name = this.name;
+    result.sourceVersion = this.sourceVersion;
+    result.lastModified = this.lastModified;
+    result.filename = this.filename;
+    result.changed = this.changed;
+
+    for ( UserSettings userSettings : this.settings.values() )
+    {
+      final Properties props = new Properties();
+      for ( Map.Entry<String, Object> userSetting : userSettings )
+      {
+        props.put( userSetting.getKey(), userSetting.getValue() );
+      }
+      result.settings.put( userSettings.getName(), new UserSettingsImpl( userSettings.getName(), props ) );
+    }
+
+    result.setDataSet( new DataSetImpl( this.dataSet ) );
+
+    return result;
+  }
+
+  /**
+   * Returns the number of modifications made to this project. As opposed to
+   * the changed flag, this number is never reset, allowing one to determine
+   * whether this project is modified since a certain moment in time.
+   * 
+   * @return the modification count.
+   */
+  final int getModificationCount()
+  {
+    return this.modificationCount.get();
+  }
+
   /**
    * Returns the current set of property change listeners.
    * 
@@ -0,0 +1,1195 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.client.project.impl;
+
+
+import static nl.lxtreme.ols.client.project.impl.ProjectProperties.*;
+
+import java.beans.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import java.util.zip.*;
+
+import javax.swing.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.util.*;
+
+
+/**
+ * Provides an append-only journal of the changes made to the current project,
+ * allowing the project to be recovered after the client crashed.
+ * <p>
+ * The journal starts with a header that denotes what the journal is based
+ * upon: nothing (a new project), the project file or an autosave snapshot.
+ * Each change (a new capture, a cursor move, a label change or an annotation)
+ * is appended as a checksummed record. All I/O is done by a single background
+ * thread, so recording a change never blocks the caller. Captures are written
+ * directly from their sample arrays, without copying them.
+ * </p>
+ * <p>
+ * Once the journal has grown larger than the project (file) it is based upon,
+ * it is compacted by writing a full snapshot of the project and restarting the
+ * journal on top of it. The snapshot is taken on the EDT, which is where the
+ * project is modified, and written by the background thread. Upon a normal
+ * shutdown the journal is removed; upon startup, any remaining journal is moved
+ * aside so it can be recovered.
+ * </p>
+ */
+public final class ProjectJournal implements PropertyChangeListener
+{
+  // INNER TYPES
+
+  /**
+   * Denotes what the records of a journal are based upon.
+   */
+  static enum Base
+  {
+    NONE, PROJECT_FILE, SNAPSHOT;
+  }
+
+  /**
+   * Provides the header of a journal.
+   */
+  static final class Header
+  {
+    // VARIABLES
+
+    final Base base;
+    final File baseFile;
+    final File projectFile;
+    final long size;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Header} instance.
+     */
+    Header( final Base aBase, final File aBaseFile, final File aProjectFile, final long aSize )
+    {
+      this.base = aBase;
+      this.baseFile = aBaseFile;
+      this.projectFile = aProjectFile;
+      this.size = aSize;
+    }
+  }
+
+  /**
+   * Provides a single journal record.
+   */
+  abstract static class Record
+  {
+    // VARIABLES
+
+    final int type;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Record} instance.
+     */
+    Record( final int aType )
+    {
+      this.type = aType;
+    }
+
+    // METHODS
+
+    /**
+     * Writes the payload of this record.
+     */
+    abstract void writePayload( DataOutputStream aOut ) throws IOException;
+  }
+
+  // CONSTANTS
+
+  private static final Logger LOG = Logger.getLogger( ProjectJournal.class.getName() );
+
+  /** "OLSJ" */
+  private static final int MAGIC = 0x4F4C534A;
+  private static final int VERSION = 2;
+
+  static final int REC_CAPTURE = 1;
+  static final int REC_CHANNEL_LABEL = 2;
+  static final int REC_CURSOR = 3;
+  static final int REC_ANNOTATION = 4;
+  static final int REC_CLEAR_ANNOTATIONS = 5;
+
+  /** The minimal size of the journal before it is compacted, in bytes. */
+  private static final long COMPACT_MIN_SIZE = 1024L * 1024L;
+
+  private static final String RECOVERY_SUFFIX = ".recover";
+  private static final String SNAPSHOT_SUFFIX = ".olp";
+
+  // VARIABLES
+
+  private final ProjectManagerImpl projectManager;
+  private final File journalFile;
+  private final File recoveryFile;
+  private final AtomicInteger pendingRecords;
+
+  private volatile ExecutorService executor;
+  private volatile boolean suspended;
+
+  // Only accessed by our executor thread...
+  private DataOutputStream out;
+  private long journalSize;
+  private long compactSize;
+  private boolean compactRequested;
+  private File snapshotFile;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ProjectJournal} instance.
+   *
+   * @param aProjectManager
+   *          the project manager whose current project is to be journaled,
+   *          cannot be <code>null</code>;
+   * @param aJournalFile
+   *          the file to write the journal to, cannot be <code>null</code>.
+   */
+  public ProjectJournal( final ProjectManagerImpl aProjectManager, final File aJournalFile )
+  {
+    this.projectManager = aProjectManager;
+    this.journalFile = aJournalFile;
+    this.recoveryFile = new File( aJournalFile.getPath() + RECOVERY_SUFFIX );
+    this.pendingRecords = new AtomicInteger();
+  }
+
+  // METHODS
+
+  /**
+   * Renames the given source file to the given target file, replacing the
+   * target file if it exists.
+   */
+  private static void replaceFile( final File aSource, final File aTarget ) throws IOException
+  {
+    if ( !aSource.renameTo( aTarget ) )
+    {
+      // Windows does not allow renaming to an existing file...
+      aTarget.delete();
+      if ( !aSource.renameTo( aTarget ) )
+      {
+        throw new IOException( "Failed to rename " + aSource + " to " + aTarget );
+      }
+    }
+  }
+
+  /**
+   * Called upon each annotation that is added to the current project.
+   *
+   * @param aAnnotation
+   *          the added annotation, cannot be <code>null</code>.
+   */
+  public void annotationAdded( final Annotation<?> aAnnotation )
+  {
+    if ( !( aAnnotation instanceof DataAnnotation ) )
+    {
+      // Other annotations end up as channel label...
+      return;
+    }
+
+    final DataAnnotation<?> annotation = ( DataAnnotation<?> )aAnnotation;
+    final int channelIdx = annotation.getChannel();
+    final long start = annotation.getStartTimestamp();
+    final long end = annotation.getEndTimestamp();
+    final int type = PersistedAnnotations.getType( annotation );
+    final String text = String.valueOf( annotation.getAnnotation() );
+
+    append( new Record( REC_ANNOTATION )
+    {
+      @Override
+      void writePayload( final DataOutputStream aOut ) throws IOException
+      {
+        aOut.writeInt( channelIdx );
+        aOut.writeLong( start );
+        aOut.writeLong( end );
+        aOut.writeByte( type );
+        aOut.writeUTF( text );
+      }
+    } );
+  }
+
+  /**
+   * Called when the annotations of one or all channels are cleared.
+   *
+   * @param aChannelIdx
+   *          the index of the channel whose annotations are cleared, or -1 if
+   *          the annotations of all channels are cleared.
+   */
+  public void annotationsCleared( final int aChannelIdx )
+  {
+    append( new Record( REC_CLEAR_ANNOTATIONS )
+    {
+      @Override
+      void writePayload( final DataOutputStream aOut ) throws IOException
+      {
+        aOut.writeInt( aChannelIdx );
+      }
+    } );
+  }
+
+  /**
+   * Discards the recovery journal of a previous session, if any.
+   */
+  public void discardRecovery()
+  {
+    if ( !this.recoveryFile.exists() )
+    {
+      return;
+    }
+
+    try
+    {
+      final Header header = readHeader( this.recoveryFile );
+      if ( header.base == Base.SNAPSHOT )
+      {
+        header.baseFile.delete();
+      }
+    }
+    catch ( IOException exception )
+    {
+      LOG.log( Level.FINE, "Failed to read recovery journal header; ignoring it...", exception );
+    }
+
+    this.recoveryFile.delete();
+  }
+
+  /**
+   * Returns whether the journal of a previous session can be recovered.
+   *
+   * @return <code>true</code> if there is something to recover,
+   *         <code>false</code> otherwise.
+   */
+  public boolean hasRecovery()
+  {
+    if ( !this.recoveryFile.exists() )
+    {
+      return false;
+    }
+
+    try
+    {
+      final Header header = readHeader( this.recoveryFile );
+      return ( header.base == Base.SNAPSHOT ) || ( this.recoveryFile.length() > header.size );
+    }
+    catch ( IOException exception )
+    {
+      LOG.log( Level.FINE, "Failed to read recovery journal header; ignoring it...", exception );
+      return false;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void propertyChange( final PropertyChangeEvent aEvent )
+  {
+    if ( this.suspended )
+    {
+      return;
+    }
+
+    final String name = aEvent.getPropertyName();
+    final ProjectImpl project = this.projectManager.getCurrentProject();
+
+    if ( "project".equals( name ) )
+    {
+      restart();
+    }
+    else if ( PROPERTY_CHANGED.equals( name ) )
+    {
+      // Project is in sync with its file...
+      if ( Boolean.FALSE.equals( aEvent.getNewValue() ) )
+      {
+        restart();
+      }
+    }
+    else if ( PROPERTY_FILENAME.equals( name ) )
+    {
+      if ( !project.isChanged() )
+      {
+        restart();
+      }
+    }
+    else if ( PROPERTY_CAPTURED_DATA.equals( name ) )
+    {
+      // Ignore data sets of projects that are still being loaded...
+      if ( aEvent.getSource() == project )
+      {
+        captureChanged( ( DataSet )aEvent.getNewValue() );
+      }
+    }
+    else if ( "channelLabel".equals( name ) && ( aEvent instanceof IndexedPropertyChangeEvent ) )
+    {
+      channelLabelChanged( ( ( IndexedPropertyChangeEvent )aEvent ).getIndex(), ( String )aEvent.getNewValue() );
+    }
+    else if ( ( "cursorTimestamp".equals( name ) || "cursorLabel".equals( name ) )
+        && ( aEvent instanceof IndexedPropertyChangeEvent ) )
+    {
+      cursorChanged( project.getDataSet().getCursor( ( ( IndexedPropertyChangeEvent )aEvent ).getIndex() ) );
+    }
+  }
+
+  /**
+   * Recovers the project of a previous session by loading the project (or
+   * snapshot) the journal is based upon, and replaying all (intact) records of
+   * the journal. The project is rebuilt by the calling thread, and made the
+   * current project on the EDT.
+   *
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void recover() throws IOException
+  {
+    final Header header = readHeader( this.recoveryFile );
+
+    // Not yet visible to anyone else, so it can be modified by this thread...
+    final ProjectImpl project = new ProjectImpl();
+
+    DataInputStream in = null;
+    try
+    {
+      if ( ( header.baseFile != null ) && header.baseFile.exists() )
+      {
+        readBaseFile( header.baseFile, project );
+      }
+
+      in = new DataInputStream( new BufferedInputStream( new FileInputStream( this.recoveryFile ) ) );
+      in.skipBytes( ( int )header.size );
+
+      final int count = replay( in, this.recoveryFile.length() - header.size, project );
+      LOG.log( Level.INFO, "Recovered project from {0} journal records ...", Integer.valueOf( count ) );
+    }
+    finally
+    {
+      HostUtils.closeResource( in );
+    }
+
+    project.setFilename( header.projectFile );
+    project.setChanged( true );
+
+    final ProjectImpl snapshot = project.createSnapshot();
+    final Future<?>[] compaction = { null };
+
+    runOnEDT( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        ProjectJournal.this.suspended = true;
+        try
+        {
+          ProjectJournal.this.projectManager.setRecoveredProject( project );
+        }
+        finally
+        {
+          ProjectJournal.this.suspended = false;
+        }
+
+        // Persist the recovered state before any new change is journaled...
+        compaction[0] = submitCompaction( snapshot );
+      }
+    } );
+
+    await( compaction[0] );
+
+    discardRecovery();
+  }
+
+  /**
+   * Starts this journal, moving the journal of a previous session aside.
+   */
+  public void start()
+  {
+    if ( this.journalFile.exists() )
+    {
+      // The previous session did not shut down properly...
+      discardRecovery();
+      try
+      {
+        replaceFile( this.journalFile, this.recoveryFile );
+      }
+      catch ( IOException exception )
+      {
+        LOG.log( Level.WARNING, "Failed to move journal of previous session aside!", exception );
+      }
+    }
+
+    this.executor = Executors.newSingleThreadExecutor( new ThreadFactory()
+    {
+      @Override
+      public Thread newThread( final Runnable aRunnable )
+      {
+        final Thread thread = new Thread( aRunnable, "Project journal" );
+        thread.setDaemon( true );
+        thread.setPriority( Thread.MIN_PRIORITY );
+        return thread;
+      }
+    } );
+
+    this.projectManager.addPropertyChangeListener( this );
+
+    restart();
+  }
+
+  /**
+   * Stops this journal, removing the journal and its snapshot.
+   */
+  public void stop()
+  {
+    this.projectManager.removePropertyChangeListener( this );
+
+    final ExecutorService exec = this.executor;
+    if ( exec == null )
+    {
+      return;
+    }
+    this.executor = null;
+
+    exec.execute( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        closeJournal();
+
+        ProjectJournal.this.journalFile.delete();
+        deleteSnapshot();
+      }
+    } );
+    exec.shutdown();
+
+    try
+    {
+      exec.awaitTermination( 5, TimeUnit.SECONDS );
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Waits until all pending records are written to the journal.
+   */
+  final void sync() throws IOException
+  {
+    final ExecutorService exec = this.executor;
+    if ( exec == null )
+    {
+      throw new IOException( "Journal not started!" );
+    }
+
+    await( exec.submit( new Callable<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        if ( ProjectJournal.this.out != null )
+        {
+          ProjectJournal.this.out.flush();
+        }
+        return null;
+      }
+    } ) );
+  }
+
+  /**
+   * Appends the given record to the journal, in the background.
+   */
+  private void append( final Record aRecord )
+  {
+    final ExecutorService exec = this.executor;
+    if ( this.suspended || ( exec == null ) )
+    {
+      return;
+    }
+
+    this.pendingRecords.incrementAndGet();
+
+    exec.execute( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        writeRecord( aRecord );
+      }
+    } );
+  }
+
+  /**
+   * Waits until the given task of our executor is completed.
+   */
+  private void await( final Future<?> aTask ) throws IOException
+  {
+    if ( aTask == null )
+    {
+      throw new IOException( "Journal not started!" );
+    }
+
+    try
+    {
+      aTask.get();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted while waiting for journal!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      final Throwable cause = exception.getCause();
+      if ( cause instanceof IOException )
+      {
+        throw ( IOException )cause;
+      }
+      throw new IOException( "Journal operation failed!", cause );
+    }
+  }
+
+  /**
+   * Records a new capture.
+   */
+  private void captureChanged( final DataSet aDataSet )
+  {
+    final AcquisitionResult data = aDataSet.getCapturedData();
+    if ( ( data == null ) || ( data.getValues().length == 0 ) )
+    {
+      return;
+    }
+
+    final boolean retainAnnotations = UIManager.getBoolean( "ols.retain.annotations.boolean" );
+
+    append( new Record( REC_CAPTURE )
+    {
+      @Override
+      void writePayload( final DataOutputStream aOut ) throws IOException
+      {
+        // The sample arrays are written directly; they are never modified...
+        final int[] values = data.getValues();
+        final long[] timestamps = data.getTimestamps();
+
+        aOut.writeBoolean( retainAnnotations );
+        aOut.writeInt( data.getChannels() );
+        aOut.writeInt( data.getEnabledChannels() );
+        aOut.writeInt( data.getSampleRate() );
+        aOut.writeLong( data.getTriggerPosition() );
+        aOut.writeLong( data.getAbsoluteLength() );
+        aOut.writeInt( values.length );
+        for ( int value : values )
+        {
+          aOut.writeInt( value );
+        }
+        for ( long timestamp : timestamps )
+        {
+          aOut.writeLong( timestamp );
+        }
+      }
+    } );
+  }
+
+  /**
+   * Records a channel label change.
+   */
+  private void channelLabelChanged( final int aChannelIdx, final String aLabel )
+  {
+    append( new Record( REC_CHANNEL_LABEL )
+    {
+      @Override
+      void writePayload( final DataOutputStream aOut ) throws IOException
+      {
+        aOut.writeInt( aChannelIdx );
+        aOut.writeUTF( ( aLabel == null ) ? "" : aLabel );
+      }
+    } );
+  }
+
+  /**
+   * Closes the journal output, if opened.
+   */
+  private void closeJournal()
+  {
+    HostUtils.closeResource( this.out );
+    this.out = null;
+  }
+
+  /**
+   * Compacts the journal by writing the given snapshot of the current project
+   * and restarting the journal on top of it. Should only be called from our
+   * executor thread.
+   */
+  private void compact( final ProjectImpl aSnapshot ) throws IOException
+  {
+    final File snapshot = new File( this.journalFile.getPath() + "." + System.currentTimeMillis() + SNAPSHOT_SUFFIX );
+
+    boolean written = false;
+    try
+    {
+      this.projectManager.writeProject( aSnapshot, new FileOutputStream( snapshot ), null /* aProgressListener */);
+      written = true;
+    }
+    finally
+    {
+      if ( !written )
+      {
+        snapshot.delete();
+      }
+    }
+
+    restartJournal( Base.SNAPSHOT, snapshot, aSnapshot.getFilename() );
+  }
+
+  /**
+   * Records a cursor change.
+   */
+  private void cursorChanged( final Cursor aCursor )
+  {
+    final int index = aCursor.getIndex();
+    final boolean defined = aCursor.isDefined();
+    final long timestamp = defined ? aCursor.getTimestamp() : 0L;
+    final String label = aCursor.hasLabel() ? aCursor.getLabel() : "";
+
+    append( new Record( REC_CURSOR )
+    {
+      @Override
+      void writePayload( final DataOutputStream aOut ) throws IOException
+      {
+        aOut.writeInt( index );
+        aOut.writeBoolean( defined );
+        aOut.writeLong( timestamp );
+        aOut.writeUTF( label );
+      }
+    } );
+  }
+
+  /**
+   * Deletes the current snapshot, if any.
+   */
+  private void deleteSnapshot()
+  {
+    if ( this.snapshotFile != null )
+    {
+      this.snapshotFile.delete();
+      this.snapshotFile = null;
+    }
+  }
+
+  /**
+   * Reads the given project or snapshot file into the given project.
+   */
+  private void readBaseFile( final File aFile, final ProjectImpl aProject ) throws IOException
+  {
+    final InputStream is = new FileInputStream( aFile );
+    try
+    {
+      this.projectManager.readProject( aProject, is );
+    }
+    finally
+    {
+      HostUtils.closeResource( is );
+    }
+  }
+
+  /**
+   * Reads the header of the given journal file.
+   */
+  private Header readHeader( final File aFile ) throws IOException
+  {
+    final CountingInputStream counter = new CountingInputStream( new BufferedInputStream(
+        new FileInputStream( aFile ) ) );
+    final DataInputStream in = new DataInputStream( counter );
+    try
+    {
+      if ( ( in.readInt() != MAGIC ) || ( in.readUnsignedShort() != VERSION ) )
+      {
+        throw new IOException( "Not a valid project journal!" );
+      }
+
+      final int base = in.readUnsignedByte();
+      if ( base >= Base.values().length )
+      {
+        throw new IOException( "Not a valid project journal!" );
+      }
+      final String baseFile = in.readUTF();
+      final String projectFile = in.readUTF();
+
+      return new Header( Base.values()[base], baseFile.isEmpty() ? null : new File( baseFile ),
+          projectFile.isEmpty() ? null : new File( projectFile ), counter.count );
+    }
+    finally
+    {
+      HostUtils.closeResource( in );
+    }
+  }
+
+  /**
+   * Replays all intact records of the given journal on the given project.
+   *
+   * @return the number of replayed records.
+   */
+  private int replay( final DataInputStream aIn, final long aLength, final ProjectImpl aProject )
+      throws IOException
+  {
+    final CRC32 crc = new CRC32();
+
+    long remaining = aLength;
+    int count = 0;
+    try
+    {
+      int type;
+      while ( ( type = aIn.read() ) >= 0 )
+      {
+        final long length = aIn.readLong();
+        remaining -= 1 + 8 + 4;
+        if ( ( length < 0L ) || ( length > remaining ) )
+        {
+          // Truncated record; we're done...
+          break;
+        }
+        remaining -= length;
+
+        crc.reset();
+        final DataInputStream payload = new DataInputStream( new CheckedInputStream( aIn, crc ) );
+        final Runnable action = readRecord( type, payload, aProject );
+        if ( ( aIn.readInt() != ( int )crc.getValue() ) || ( action == null ) )
+        {
+          // Corrupt or unknown record; we're done...
+          break;
+        }
+
+        action.run();
+        count++;
+      }
+    }
+    catch ( EOFException exception )
+    {
+      // Truncated journal; ignore...
+    }
+    return count;
+  }
+
+  /**
+   * Reads the payload of a single record, and returns the action that applies
+   * it to the given project.
+   */
+  private Runnable readRecord( final int aType, final DataInputStream aIn, final ProjectImpl aProject )
+      throws IOException
+  {
+    switch ( aType )
+    {
+      case REC_CAPTURE:
+      {
+        final boolean retainAnnotations = aIn.readBoolean();
+        final int channels = aIn.readInt();
+        final int enabledChannels = aIn.readInt();
+        final int rate = aIn.readInt();
+        final long triggerPos = aIn.readLong();
+        final long absLength = aIn.readLong();
+        final int[] values = new int[aIn.readInt()];
+        final long[] timestamps = new long[values.length];
+        for ( int i = 0; i < values.length; i++ )
+        {
+          values[i] = aIn.readInt();
+        }
+        for ( int i = 0; i < timestamps.length; i++ )
+        {
+          timestamps[i] = aIn.readLong();
+        }
+
+        return new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            final AcquisitionResult data = new CapturedData( values, timestamps, triggerPos, rate, channels,
+                enabledChannels, absLength );
+            aProject.setDataSet( new DataSetImpl( data, aProject.getDataSet(), retainAnnotations ) );
+          }
+        };
+      }
+
+      case REC_CHANNEL_LABEL:
+      {
+        final int channelIdx = aIn.readInt();
+        final String label = aIn.readUTF();
+
+        return new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            for ( Channel channel : aProject.getDataSet().getChannels() )
+            {
+              if ( ( channel != null ) && ( channel.getIndex() == channelIdx ) )
+              {
+                channel.setLabel( label.isEmpty() ? null : label );
+              }
+            }
+          }
+        };
+      }
+
+      case REC_CURSOR:
+      {
+        final int index = aIn.readInt();
+        final boolean defined = aIn.readBoolean();
+        final long timestamp = aIn.readLong();
+        final String label = aIn.readUTF();
+
+        return new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            final Cursor cursor = aProject.getDataSet().getCursor( index );
+            if ( defined )
+            {
+              cursor.setTimestamp( timestamp );
+            }
+            else
+            {
+              cursor.clear();
+            }
+            cursor.setLabel( label.isEmpty() ? null : label );
+          }
+        };
+      }
+
+      case REC_ANNOTATION:
+      {
+        final int channelIdx = aIn.readInt();
+        final long start = aIn.readLong();
+        final long end = aIn.readLong();
+        final int type = aIn.readUnsignedByte();
+        final String text = aIn.readUTF();
+
+        return new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            final Channel channel = aProject.getDataSet().getChannel( channelIdx );
+            channel.addAnnotation( PersistedAnnotations.createAnnotation( channelIdx, start, end, type, text ) );
+          }
+        };
+      }
+
+      case REC_CLEAR_ANNOTATIONS:
+      {
+        final int channelIdx = aIn.readInt();
+
+        return new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            final DataSet dataSet = aProject.getDataSet();
+            if ( channelIdx < 0 )
+            {
+              for ( Channel channel : dataSet.getChannels() )
+              {
+                if ( channel != null )
+                {
+                  channel.clearAnnotations();
+                }
+              }
+            }
+            else
+            {
+              dataSet.getChannel( channelIdx ).clearAnnotations();
+            }
+          }
+        };
+      }
+
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Requests the journal to be compacted, by taking a snapshot of the current
+   * project on the EDT. Should only be called from our executor thread.
+   */
+  private void requestCompaction()
+  {
+    this.compactRequested = true;
+
+    SwingUtilities.invokeLater( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        submitCompaction( ProjectJournal.this.projectManager.getCurrentProject().createSnapshot() );
+      }
+    } );
+  }
+
+  /**
+   * Restarts the journal, in the background, on top of the current project.
+   */
+  private void restart()
+  {
+    final ExecutorService exec = this.executor;
+    if ( exec == null )
+    {
+      return;
+    }
+
+    exec.execute( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        final File filename = ProjectJournal.this.projectManager.getCurrentProject().getFilename();
+        try
+        {
+          restartJournal( ( filename != null ) ? Base.PROJECT_FILE : Base.NONE, filename, filename );
+        }
+        catch ( IOException exception )
+        {
+          LOG.log( Level.WARNING, "Failed to restart project journal!", exception );
+        }
+      }
+    } );
+  }
+
+  /**
+   * (Re)writes the journal with only a header. Should only be called from our
+   * executor thread.
+   */
+  private void restartJournal( final Base aBase, final File aBaseFile, final File aProjectFile ) throws IOException
+  {
+    closeJournal();
+
+    final File tempFile = new File( this.journalFile.getPath() + ".tmp" );
+
+    final DataOutputStream dos = new DataOutputStream( new FileOutputStream( tempFile ) );
+    try
+    {
+      dos.writeInt( MAGIC );
+      dos.writeShort( VERSION );
+      dos.writeByte( aBase.ordinal() );
+      dos.writeUTF( ( aBaseFile == null ) ? "" : aBaseFile.getAbsolutePath() );
+      dos.writeUTF( ( aProjectFile == null ) ? "" : aProjectFile.getAbsolutePath() );
+    }
+    finally
+    {
+      dos.close();
+    }
+
+    replaceFile( tempFile, this.journalFile );
+
+    // The previous snapshot is no longer needed...
+    if ( ( this.snapshotFile != null ) && !this.snapshotFile.equals( aBaseFile ) )
+    {
+      this.snapshotFile.delete();
+    }
+    this.snapshotFile = ( aBase == Base.SNAPSHOT ) ? aBaseFile : null;
+
+    // Compact once replaying the journal takes longer than loading its base...
+    this.journalSize = this.journalFile.length();
+    this.compactSize = Math.max( COMPACT_MIN_SIZE, ( aBaseFile == null ) ? 0L : aBaseFile.length() );
+    this.compactRequested = false;
+
+    this.out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( this.journalFile, true ),
+        64 * 1024 ) );
+  }
+
+  /**
+   * Runs the given task on the EDT and waits until it is completed.
+   */
+  private void runOnEDT( final Runnable aTask ) throws IOException
+  {
+    if ( SwingUtilities.isEventDispatchThread() )
+    {
+      aTask.run();
+      return;
+    }
+
+    try
+    {
+      SwingUtilities.invokeAndWait( aTask );
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted while waiting for EDT!" );
+    }
+    catch ( InvocationTargetException exception )
+    {
+      throw new IOException( "Failed to recover project!", exception.getCause() );
+    }
+  }
+
+  /**
+   * Submits the compaction of the journal on top of the given snapshot to our
+   * executor. Should be called from the EDT, so that all changes made after
+   * the snapshot was taken are journaled after the compaction.
+   *
+   * @return the future of the compaction, or <code>null</code> if this
+   *         journal is not started.
+   */
+  private Future<?> submitCompaction( final ProjectImpl aSnapshot )
+  {
+    final ExecutorService exec = this.executor;
+    if ( exec == null )
+    {
+      return null;
+    }
+
+    return exec.submit( new Callable<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        try
+        {
+          compact( aSnapshot );
+        }
+        catch ( IOException exception )
+        {
+          LOG.log( Level.WARNING, "Failed to compact project journal!", exception );
+          throw exception;
+        }
+        return null;
+      }
+    } );
+  }
+
+  /**
+   * Writes a single record to the journal. Should only be called from our
+   * executor thread.
+   */
+  private void writeRecord( final Record aRecord )
+  {
+    final boolean lastPending = ( this.pendingRecords.decrementAndGet() == 0 );
+    if ( this.out == null )
+    {
+      return;
+    }
+
+    try
+    {
+      // Determine the length of the payload first, without buffering it...
+      final CountingOutputStream counter = new CountingOutputStream();
+      aRecord.writePayload( new DataOutputStream( counter ) );
+
+      final CRC32 crc = new CRC32();
+      final DataOutputStream payload = new DataOutputStream( new CheckedOutputStream( this.out, crc ) );
+
+      this.out.writeByte( aRecord.type );
+      this.out.writeLong( counter.count );
+      aRecord.writePayload( payload );
+      payload.flush();
+      this.out.writeInt( ( int )crc.getValue() );
+
+      this.journalSize += 1 + 8 + counter.count + 4;
+
+      if ( lastPending )
+      {
+        // Nothing more to write for now...
+        this.out.flush();
+      }
+
+      if ( !this.compactRequested && ( this.journalSize > this.compactSize ) )
+      {
+        requestCompaction();
+      }
+    }
+    catch ( IOException exception )
+    {
+      LOG.log( Level.WARNING, "Failed to write project journal; journaling stopped!", exception );
+      closeJournal();
+    }
+  }
+
+  /**
+   * Provides an input stream that counts the bytes read from it.
+   */
+  static final class CountingInputStream extends FilterInputStream
+  {
+    long count;
+
+    CountingInputStream( final InputStream aIn )
+    {
+      super( aIn );
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      final int result = super.read();
+      if ( result >= 0 )
+      {
+        this.count++;
+      }
+      return result;
+    }
+
+    @Override
+    public int read( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+    {
+      final int result = super.read( aBuffer, aOffset, aLength );
+      if ( result > 0 )
+      {
+        this.count += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip( final long aCount ) throws IOException
+    {
+      final long result = super.skip( aCount );
+      this.count += result;
+      return result;
+    }
+  }
+
+  /**
+   * Provides an output stream that only counts the bytes written to it.
+   */
+  static final class CountingOutputStream extends OutputStream
+  {
+    long count;
+
+    @Override
+    public void write( final byte[] aBuffer, final int aOffset, final int aLength )
+    {
+      this.count += aLength;
+    }
+
+    @Override
+    public void write( final int aByte )
+    {
+      this.count++;
+    }
+  }
+}
@@ -24,32 +24,47 @@ package nl.lxtreme.ols.client.project.impl;
 import java.beans.*;
 import java.io.*;
 import java.util.*;
+import java.util.logging.*;
 import java.util.zip.*;
 
+import javax.swing.*;
+
 import nl.lxtreme.ols.api.*;
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
 import nl.lxtreme.ols.api.data.project.*;
+import nl.lxtreme.ols.api.task.*;
 import nl.lxtreme.ols.util.*;
+import nl.lxtreme.ols.util.io.*;
 
 
 /**
  * Provides a simple implementation of a project manager, which writes an entire
- * project as (compressed) ZIP-file.
+ * project as (compressed) ZIP-file. All changes to the current project are
+ * journaled in the background, allowing them to be recovered after a crash.
  */
-public class ProjectManagerImpl implements PropertyChangeListener, ProjectManager, ProjectProperties
+public class ProjectManagerImpl implements PropertyChangeListener, ProjectManager, ProjectProperties,
+    AnnotationListener
 {
   // CONSTANTS
 
+  private static final Logger LOG = Logger.getLogger( ProjectManagerImpl.class.getName() );
+
   private static final String FILENAME_PROJECT_METADATA = "ols.project";
   private static final String FILENAME_CHANNEL_LABELS = "channel.labels";
   private static final String FILENAME_PROJECT_SETTINGS = "settings/";
   private static final String FILENAME_CAPTURE_RESULTS = "data.ols";
+  private static final String FILENAME_ANNOTATIONS = "annotations.bin";
+
+  /** The UIManager key denoting the compression level of project files. */
+  private static final String PROJECT_COMPRESSION_LEVEL = "ols.project.compression.enum";
 
   // VARIABLES
 
   private volatile HostProperties hostProperties;
 
   private final PropertyChangeSupport propertyChangeSupport;
+  private final ProjectJournal journal;
 
   private ProjectImpl project;
 
@@ -59,8 +74,21 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
    * Creates a new SimpleProjectManager instance.
    */
   public ProjectManagerImpl()
+  {
+    this( HostUtils.createLocalDataFile( "nl.lxtreme.ols.autosave", "journal" ) );
+  }
+
+  /**
+   * Creates a new SimpleProjectManager instance.
+   * 
+   * @param aJournalFile
+   *          the file to journal all project changes to, cannot be
+   *          <code>null</code>.
+   */
+  ProjectManagerImpl( final File aJournalFile )
   {
     this.propertyChangeSupport = new PropertyChangeSupport( this );
+    this.journal = new ProjectJournal( this, aJournalFile );
 
     setProject( new ProjectImpl() );
   }
@@ -75,6 +103,24 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
     this.propertyChangeSupport.addPropertyChangeListener( aListener );
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clearAnnotations()
+  {
+    this.journal.annotationsCleared( -1 );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clearAnnotations( final int aChannelIdx )
+  {
+    this.journal.annotationsCleared( aChannelIdx );
+  }
+
   /**
    * @see nl.lxtreme.ols.api.data.project.ProjectManager#createNewProject()
    */
@@ -84,6 +130,57 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
     return this.project;
   }
 
+  /**
+   * @see nl.lxtreme.ols.api.data.project.ProjectManager#createRecoverProjectTask()
+   */
+  @Override
+  public Task<Void> createRecoverProjectTask()
+  {
+    return new Task<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        ProjectManagerImpl.this.journal.recover();
+        return null;
+      }
+    };
+  }
+
+  /**
+   * @see nl.lxtreme.ols.api.data.project.ProjectManager#createSaveProjectTask(java.lang.String,
+   *      java.io.File, nl.lxtreme.ols.api.task.TaskProgressListener)
+   */
+  @Override
+  public Task<Void> createSaveProjectTask( final String aName, final File aFile,
+      final TaskProgressListener aProgressListener )
+  {
+    if ( aFile == null )
+    {
+      throw new IllegalArgumentException( "File cannot be null!" );
+    }
+
+    final ProjectImpl project = this.project;
+    final int modificationCount = project.getModificationCount();
+
+    // The project is modified on the EDT while it is being saved...
+    final ProjectImpl snapshot = project.createSnapshot();
+    snapshot.setName( aName );
+    snapshot.setFilename( aFile );
+
+    return new Task<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        saveProject( snapshot, aFile, aProgressListener );
+
+        markProjectSaved( project, modificationCount, aName, aFile );
+        return null;
+      }
+    };
+  }
+
   /**
    * @see nl.lxtreme.ols.api.data.project.ProjectManager#createTemporaryProject()
    */
@@ -92,15 +189,33 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
     return new ProjectImpl();
   }
 
+  /**
+   * @see nl.lxtreme.ols.api.data.project.ProjectManager#discardRecoverableProject()
+   */
+  @Override
+  public void discardRecoverableProject()
+  {
+    this.journal.discardRecovery();
+  }
+
   /**
    * @see nl.lxtreme.ols.api.data.project.ProjectManager#getCurrentProject()
    */
   @Override
-  public Project getCurrentProject()
+  public ProjectImpl getCurrentProject()
   {
     return this.project;
   }
 
+  /**
+   * @see nl.lxtreme.ols.api.data.project.ProjectManager#hasRecoverableProject()
+   */
+  @Override
+  public boolean hasRecoverableProject()
+  {
+    return this.journal.hasRecovery();
+  }
+
   /**
    * @see nl.lxtreme.ols.api.data.project.ProjectManager#loadProject(java.io.InputStream)
    */
@@ -112,67 +227,25 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
       throw new IllegalArgumentException( "Input stream cannot be null!" );
     }
 
-    final BufferedInputStream in = new BufferedInputStream( aInput );
-    final ZipInputStream zipIS = new ZipInputStream( in );
-
     final ProjectImpl newProject = new ProjectImpl();
     // Make sure listeners retrieve the proper events...
     copyPropertyChangeListeners( this.project, newProject );
 
-    List<String> labels = null;
-
-    try
-    {
-      ZipEntry ze = null;
-      boolean entriesSeen = false;
-      while ( ( ze = zipIS.getNextEntry() ) != null )
-      {
-        final String name = ze.getName();
-        if ( FILENAME_PROJECT_METADATA.equals( name ) )
-        {
-          loadProjectMetadata( newProject, zipIS );
-          entriesSeen = true;
-        }
-        else if ( FILENAME_CHANNEL_LABELS.equals( name ) )
-        {
-          labels = loadChannelLabels( zipIS );
-          entriesSeen = true;
-        }
-        else if ( FILENAME_CAPTURE_RESULTS.equals( name ) )
-        {
-          loadCapturedResults( newProject, zipIS );
-          entriesSeen = true;
-        }
-        else if ( name.startsWith( FILENAME_PROJECT_SETTINGS ) )
-        {
-          final String userSettingsName = name.substring( FILENAME_PROJECT_SETTINGS.length() );
-          loadProjectSettings( newProject, userSettingsName, zipIS );
-          entriesSeen = true;
-        }
-
-        zipIS.closeEntry();
-      }
+    readProject( newProject, aInput );
 
-      if ( !entriesSeen )
-      {
-        throw new IOException( "Invalid project file!" );
-      }
-
-      // Merge the channel labels with the channel-data in the project's data
-      // set; this is not the nicest way of doing this, but we otherwise have to
-      // break our project file-format, which is not done at the moment...
-      newProject.getDataSet().mergeChannelLabels( labels );
+    // Overwrite the main project...
+    setProject( newProject );
+  }
 
-      // Mark the project as no longer changed...
-      newProject.setChanged( false );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onAnnotation( final Annotation<?> aAnnotation )
+  {
+    this.project.annotationAdded();
 
-      // Overwrite the main project...
-      setProject( newProject );
-    }
-    finally
-    {
-      HostUtils.closeResource( zipIS );
-    }
+    this.journal.annotationAdded( aAnnotation );
   }
 
   /**
@@ -204,29 +277,7 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
       throw new IllegalArgumentException( "Output stream cannot be null!" );
     }
 
-    final BufferedOutputStream os = new BufferedOutputStream( aOutput );
-    final ZipOutputStream zipOS = new ZipOutputStream( os );
-
-    zipOS.setComment( this.hostProperties.getFullName().concat( " project file" ) );
-
-    try
-    {
-      storeProjectMetadata( this.project, zipOS );
-      // Store the channel labels...
-      storeChannelLabels( this.project.getDataSet(), zipOS );
-      // Store the settings...
-      storeProjectSettings( this.project, zipOS );
-      // Store the last capture results...
-      storeCapturedResults( this.project, zipOS );
-
-      // Mark the project as no longer changed...
-      this.project.setChanged( false );
-    }
-    finally
-    {
-      HostUtils.closeResource( zipOS );
-      HostUtils.closeResource( os );
-    }
+    saveProject( aOutput, null /* aProgressListener */);
   }
 
   /**
@@ -240,6 +291,54 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
     this.hostProperties = aHostProperties;
   }
 
+  /**
+   * Called by the dependency manager when this component is started.
+   */
+  public void start()
+  {
+    this.journal.start();
+  }
+
+  /**
+   * Called by the dependency manager when this component is stopped.
+   */
+  public void stop()
+  {
+    this.journal.stop();
+  }
+
+  /**
+   * Returns the compression level to use for saving projects.
+   * 
+   * @return the compression level, never <code>null</code>.
+   */
+  protected CompressionLevel getCompressionLevel()
+  {
+    return CompressionLevel.parse( UIManager.getString( PROJECT_COMPRESSION_LEVEL ) );
+  }
+
+  /**
+   * Reads the persisted channel annotations from the given ZIP-input stream.
+   * 
+   * @param aZipIS
+   *          the ZIP input stream to read the annotations from.
+   * @return the persisted annotations, or <code>null</code> if they could not
+   *         be read.
+   */
+  protected PersistedAnnotations loadAnnotations( final ZipInputStream aZipIS )
+  {
+    try
+    {
+      return PersistedAnnotations.read( aZipIS );
+    }
+    catch ( IOException exception )
+    {
+      // Annotations can always be recreated by rerunning the tools...
+      LOG.log( Level.WARNING, "Failed to load annotations; ignoring them...", exception );
+      return null;
+    }
+  }
+
   /**
    * Reads the capture results from the given ZIP-input stream.
    * 
@@ -352,11 +451,14 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
    * @param aProject
    *          the project to write the capture results for;
    * @param aZipOS
-   *          the ZIP output stream to write the capture results to.
+   *          the ZIP output stream to write the capture results to;
+   * @param aProgressListener
+   *          the (optional) progress listener, can be <code>null</code>.
    * @throws IOException
    *           in case of I/O problems.
    */
-  protected void storeCapturedResults( final Project aProject, final ZipOutputStream aZipOS ) throws IOException
+  protected void storeCapturedResults( final Project aProject, final ParallelZipOutputStream aZipOS,
+      final TaskProgressListener aProgressListener ) throws IOException
   {
     final DataSet dataSet = aProject.getDataSet();
     if ( dataSet.getCapturedData() == null )
@@ -364,10 +466,36 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
       return;
     }
 
-    final ZipEntry zipEntry = new ZipEntry( FILENAME_CAPTURE_RESULTS );
-    aZipOS.putNextEntry( zipEntry );
+    putNextEntry( aZipOS, FILENAME_CAPTURE_RESULTS, false /* aCompact */);
 
-    aProject.writeData( new OutputStreamWriter( aZipOS ) );
+    OlsDataHelper.write( dataSet, new OutputStreamWriter( aZipOS ), aProgressListener );
+  }
+
+  /**
+   * Stores the channel annotations to the given ZIP-output stream.
+   * <p>
+   * If the given project does not have any data annotations, this method does
+   * nothing.
+   * </p>
+   * 
+   * @param aProject
+   *          the project to write the annotations for;
+   * @param aZipOS
+   *          the ZIP output stream to write the annotations to.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  protected void storeAnnotations( final Project aProject, final ParallelZipOutputStream aZipOS ) throws IOException
+  {
+    final DataSet dataSet = aProject.getDataSet();
+    if ( !PersistedAnnotations.hasAnnotations( dataSet ) )
+    {
+      return;
+    }
+
+    putNextEntry( aZipOS, FILENAME_ANNOTATIONS, true /* aCompact */);
+
+    PersistedAnnotations.write( dataSet, aZipOS );
   }
 
   /**
@@ -384,12 +512,11 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
    * @throws IOException
    *           in case of I/O problems.
    */
-  protected void storeChannelLabels( final DataSet aDataSet, final ZipOutputStream aZipOS ) throws IOException
+  protected void storeChannelLabels( final DataSet aDataSet, final ParallelZipOutputStream aZipOS ) throws IOException
   {
     final Channel[] channels = aDataSet.getChannels();
 
-    final ZipEntry zipEntry = new ZipEntry( FILENAME_CHANNEL_LABELS );
-    aZipOS.putNextEntry( zipEntry );
+    putNextEntry( aZipOS, FILENAME_CHANNEL_LABELS, false /* aCompact */);
 
     // Write the channel labels
     PrintStream out = new PrintStream( aZipOS );
@@ -422,7 +549,7 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
    * @throws IOException
    *           in case of I/O problems.
    */
-  protected void storeProjectMetadata( final Project aProject, final ZipOutputStream aZipOS ) throws IOException
+  protected void storeProjectMetadata( final Project aProject, final ParallelZipOutputStream aZipOS ) throws IOException
   {
     final String name = aProject.getName();
     if ( ( name == null ) || name.trim().isEmpty() )
@@ -430,8 +557,7 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
       return;
     }
 
-    final ZipEntry zipEntry = new ZipEntry( FILENAME_PROJECT_METADATA );
-    aZipOS.putNextEntry( zipEntry );
+    putNextEntry( aZipOS, FILENAME_PROJECT_METADATA, false /* aCompact */);
 
     // Write the project metadata...
     PrintStream out = new PrintStream( aZipOS );
@@ -463,7 +589,8 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
    * @throws IOException
    *           in case of I/O problems.
    */
-  protected void storeProjectSettings( final ProjectImpl aProject, final ZipOutputStream aZipOS ) throws IOException
+  protected void storeProjectSettings( final ProjectImpl aProject, final ParallelZipOutputStream aZipOS )
+      throws IOException
   {
     try
     {
@@ -474,8 +601,7 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
         {
           final String zipEntryName = FILENAME_PROJECT_SETTINGS.concat( aSettings.getName() );
 
-          final ZipEntry zipEntry = new ZipEntry( zipEntryName );
-          aZipOS.putNextEntry( zipEntry );
+          putNextEntry( aZipOS, zipEntryName, false /* aCompact */);
 
           // Convert to a properties object...
           final Properties props = new Properties();
@@ -495,6 +621,190 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
     }
   }
 
+  /**
+   * Saves the current project to the given output stream, and marks it as no
+   * longer changed.
+   * 
+   * @param aOutput
+   *          the output to write the project to, cannot be <code>null</code>;
+   * @param aProgressListener
+   *          the (optional) progress listener, can be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems during writing of the project.
+   */
+  final void saveProject( final OutputStream aOutput, final TaskProgressListener aProgressListener )
+      throws IOException
+  {
+    writeProject( aOutput, aProgressListener );
+
+    // Mark the project as no longer changed...
+    this.project.setChanged( false );
+  }
+
+  /**
+   * Reads a project from the given input stream into the given project,
+   * without making it the current project.
+   * 
+   * @param aProject
+   *          the project to read into, cannot be <code>null</code>;
+   * @param aInput
+   *          the input stream to read the project from, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems or an invalid project file.
+   */
+  final void readProject( final ProjectImpl aProject, final InputStream aInput ) throws IOException
+  {
+    final BufferedInputStream in = new BufferedInputStream( aInput );
+    final ZipInputStream zipIS = new ZipInputStream( in );
+
+    List<String> labels = null;
+    PersistedAnnotations annotations = null;
+
+    try
+    {
+      ZipEntry ze = null;
+      boolean entriesSeen = false;
+      while ( ( ze = zipIS.getNextEntry() ) != null )
+      {
+        final String name = ze.getName();
+        if ( FILENAME_PROJECT_METADATA.equals( name ) )
+        {
+          loadProjectMetadata( aProject, zipIS );
+          entriesSeen = true;
+        }
+        else if ( FILENAME_CHANNEL_LABELS.equals( name ) )
+        {
+          labels = loadChannelLabels( zipIS );
+          entriesSeen = true;
+        }
+        else if ( FILENAME_CAPTURE_RESULTS.equals( name ) )
+        {
+          loadCapturedResults( aProject, zipIS );
+          entriesSeen = true;
+        }
+        else if ( FILENAME_ANNOTATIONS.equals( name ) )
+        {
+          annotations = loadAnnotations( zipIS );
+        }
+        else if ( name.startsWith( FILENAME_PROJECT_SETTINGS ) )
+        {
+          final String userSettingsName = name.substring( FILENAME_PROJECT_SETTINGS.length() );
+          loadProjectSettings( aProject, userSettingsName, zipIS );
+          entriesSeen = true;
+        }
+
+        zipIS.closeEntry();
+      }
+
+      if ( !entriesSeen )
+      {
+        throw new IOException( "Invalid project file!" );
+      }
+
+      // Merge the channel labels with the channel-data in the project's data
+      // set; this is not the nicest way of doing this, but we otherwise have to
+      // break our project file-format, which is not done at the moment...
+      aProject.getDataSet().mergeChannelLabels( labels );
+      // Annotations are only restored if they belong to the loaded data, and
+      // are decoded lazily...
+      aProject.getDataSet().restoreAnnotations( annotations );
+
+      // Mark the project as no longer changed...
+      aProject.setChanged( false );
+    }
+    finally
+    {
+      HostUtils.closeResource( zipIS );
+    }
+  }
+
+  /**
+   * Returns the journal of this project manager.
+   * 
+   * @return the journal, never <code>null</code>.
+   */
+  final ProjectJournal getJournal()
+  {
+    return this.journal;
+  }
+
+  /**
+   * Makes the given, recovered, project the current project. Should be called
+   * from the EDT.
+   *
+   * @param aProject
+   *          the recovered project, cannot be <code>null</code>.
+   */
+  final void setRecoveredProject( final ProjectImpl aProject )
+  {
+    // Make sure listeners retrieve the proper events...
+    copyPropertyChangeListeners( this.project, aProject );
+
+    setProject( aProject );
+  }
+
+  /**
+   * Writes the current project to the given output stream, without marking it
+   * as saved.
+   * 
+   * @param aOutput
+   *          the output to write the project to, cannot be <code>null</code>;
+   * @param aProgressListener
+   *          the (optional) progress listener, can be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems during writing of the project.
+   */
+  final void writeProject( final OutputStream aOutput, final TaskProgressListener aProgressListener )
+      throws IOException
+  {
+    writeProject( this.project, aOutput, aProgressListener );
+  }
+
+  /**
+   * Writes the given project to the given output stream, without marking it as
+   * saved.
+   * 
+   * @param aProject
+   *          the project to write, cannot be <code>null</code>;
+   * @param aOutput
+   *          the output to write the project to, cannot be <code>null</code>;
+   * @param aProgressListener
+   *          the (optional) progress listener, can be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems during writing of the project.
+   */
+  final void writeProject( final ProjectImpl aProject, final OutputStream aOutput,
+      final TaskProgressListener aProgressListener ) throws IOException
+  {
+    final BufferedOutputStream os = new BufferedOutputStream( aOutput );
+    // Compresses the (large) capture results using all available cores...
+    final ParallelZipOutputStream zipOS = new ParallelZipOutputStream( os );
+    zipOS.setLevel( getCompressionLevel().getDeflaterLevel() );
+
+    zipOS.setComment( this.hostProperties.getFullName().concat( " project file" ) );
+
+    try
+    {
+      storeProjectMetadata( aProject, zipOS );
+      // Store the channel labels...
+      storeChannelLabels( aProject.getDataSet(), zipOS );
+      // Store the settings...
+      storeProjectSettings( aProject, zipOS );
+      // Store the last capture results...
+      storeCapturedResults( aProject, zipOS, aProgressListener );
+      // Store the annotations of the last capture results...
+      storeAnnotations( aProject, zipOS );
+      // Make sure all pending data is written before we claim success...
+      zipOS.finish();
+    }
+    finally
+    {
+      HostUtils.closeResource( zipOS );
+      HostUtils.closeResource( os );
+    }
+  }
+
   /**
    * Copies the current set of {@link PropertyChangeListener}s from a given
    * source project to a given target project.
@@ -514,6 +824,148 @@ public class ProjectManagerImpl implements PropertyChangeListener, ProjectManage
     }
   }
 
+  /**
+   * Marks the given project as saved under the given name and file, on the
+   * EDT. The project is only marked as no longer changed in case it is not
+   * modified after it was snapshotted for saving.
+   * 
+   * @param aProject
+   *          the project that is saved;
+   * @param aModificationCount
+   *          the modification count of the project at the moment it was
+   *          snapshotted;
+   * @param aName
+   *          the name the project is saved under;
+   * @param aFile
+   *          the file the project is saved to.
+   */
+  private void markProjectSaved( final ProjectImpl aProject, final int aModificationCount, final String aName,
+      final File aFile )
+  {
+    SwingUtilities.invokeLater( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        final boolean modified = ( aProject.getModificationCount() != aModificationCount );
+
+        aProject.setFilename( aFile );
+        aProject.setName( aName );
+        // Mark the project as no longer changed, unless it is changed after we
+        // took our snapshot...
+        aProject.setChanged( modified );
+      }
+    } );
+  }
+
+  /**
+   * Begins writing a new entry to the given ZIP-output stream.
+   * <p>
+   * Compact entries, whose data hardly benefits from compression, are written
+   * without compression, as is every entry in case no compression is to be
+   * used at all. These are still deflated entries, as their size is not known
+   * up front, allowing them to be streamed regardless of their size.
+   * </p>
+   * 
+   * @param aZipOS
+   *          the ZIP output stream to write the entry to;
+   * @param aName
+   *          the name of the entry;
+   * @param aCompact
+   *          <code>true</code> if the entry data is already compact,
+   *          <code>false</code> otherwise.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void putNextEntry( final ParallelZipOutputStream aZipOS, final String aName, final boolean aCompact )
+      throws IOException
+  {
+    final CompressionLevel level = getCompressionLevel();
+    if ( aCompact || level.isStoreOnly() )
+    {
+      aZipOS.setLevel( Deflater.NO_COMPRESSION );
+    }
+    else
+    {
+      aZipOS.setLevel( level.getDeflaterLevel() );
+    }
+    aZipOS.putNextEntry( new ZipEntry( aName ) );
+  }
+
+  /**
+   * Replaces the given target file with the given source file.
+   * <p>
+   * In case the target cannot simply be renamed over, as happens on some
+   * platforms, the target is first moved out of the way, and restored in case
+   * the source cannot be renamed either.
+   * </p>
+   * 
+   * @param aSource
+   *          the file to rename;
+   * @param aTarget
+   *          the file to replace.
+   * @throws IOException
+   *           in case the target could not be replaced.
+   */
+  private void replaceFile( final File aSource, final File aTarget ) throws IOException
+  {
+    if ( aSource.renameTo( aTarget ) )
+    {
+      return;
+    }
+
+    final File backup = new File( aTarget.getPath() + ".bak" );
+    backup.delete();
+    if ( aTarget.exists() && !aTarget.renameTo( backup ) )
+    {
+      throw new IOException( "Failed to replace " + aTarget + "!" );
+    }
+    if ( !aSource.renameTo( aTarget ) )
+    {
+      backup.renameTo( aTarget );
+      throw new IOException( "Failed to replace " + aTarget + "!" );
+    }
+    backup.delete();
+  }
+
+  /**
+   * Saves the given project to a temporary file, that replaces the given file
+   * only after the project is completely written. This way, the given file is
+   * left intact in case saving fails or is cancelled.
+   * 
+   * @param aProject
+   *          the project to save;
+   * @param aFile
+   *          the file to save the project to;
+   * @param aProgressListener
+   *          the (optional) progress listener, can be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems during writing of the project.
+   */
+  private void saveProject( final ProjectImpl aProject, final File aFile, final TaskProgressListener aProgressListener )
+      throws IOException
+  {
+    final File dir = aFile.getAbsoluteFile().getParentFile();
+    final File tempFile = File.createTempFile( "ols", ".tmp", dir );
+
+    boolean saved = false;
+    try
+    {
+      // Closes the output stream when done...
+      writeProject( aProject, new FileOutputStream( tempFile ), aProgressListener );
+
+      replaceFile( tempFile, aFile );
+      saved = true;
+    }
+    finally
+    {
+      if ( !saved )
+      {
+        tempFile.delete();
+      }
+    }
+  }
+
   /**
    * Sets the current project to the given project.
    * 
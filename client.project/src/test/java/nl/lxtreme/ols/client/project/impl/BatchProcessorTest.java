@@ -0,0 +1,425 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.client.project.impl;
+
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.data.export.*;
+import nl.lxtreme.ols.api.tools.*;
+
+import org.junit.*;
+import org.mockito.invocation.*;
+import org.mockito.stubbing.*;
+
+
+/**
+ * Test cases for {@link BatchProcessor}.
+ */
+public class BatchProcessorTest
+{
+  // INNER TYPES
+
+  /**
+   * Denotes the mode of {@link StubToolTask}.
+   */
+  public static enum StubMode
+  {
+    LOW, HIGH;
+  }
+
+  /**
+   * Provides a tool task that annotates each sample of a single channel.
+   */
+  public static class StubToolTask implements ToolTask<Void>
+  {
+    // VARIABLES
+
+    private final ToolContext context;
+    private final AnnotationListener listener;
+
+    private int channelIdx = -1;
+    private StubMode mode = StubMode.LOW;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link StubToolTask} instance.
+     */
+    StubToolTask( final ToolContext aContext, final AnnotationListener aListener )
+    {
+      this.context = aContext;
+      this.listener = aListener;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Void call() throws Exception
+    {
+      if ( this.channelIdx < 0 )
+      {
+        throw new IllegalStateException( "Channel not set!" );
+      }
+
+      final long[] timestamps = this.context.getData().getTimestamps();
+      for ( int i = 0; i < timestamps.length; i++ )
+      {
+        this.listener.onAnnotation( new StubAnnotation( this.channelIdx, timestamps[i], this.mode + ",\"" + i ) );
+      }
+      return null;
+    }
+
+    /**
+     * Sets the index of the channel to annotate.
+     */
+    public void setChannelIndex( final int aChannelIdx )
+    {
+      this.channelIdx = aChannelIdx;
+    }
+
+    /**
+     * Sets the mode, which is used as prefix of the annotations.
+     */
+    public void setMode( final StubMode aMode )
+    {
+      this.mode = aMode;
+    }
+  }
+
+  /**
+   * Provides a simple data annotation.
+   */
+  static final class StubAnnotation implements DataAnnotation<String>
+  {
+    // VARIABLES
+
+    private final int channelIdx;
+    private final long timestamp;
+    private final String text;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link StubAnnotation} instance.
+     */
+    StubAnnotation( final int aChannelIdx, final long aTimestamp, final String aText )
+    {
+      this.channelIdx = aChannelIdx;
+      this.timestamp = aTimestamp;
+      this.text = aText;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo( final Annotation<String> aOther )
+    {
+      return this.text.compareTo( aOther.getAnnotation() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getAnnotation()
+    {
+      return this.text;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannel()
+    {
+      return this.channelIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEndTimestamp()
+    {
+      return this.timestamp + 1L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStartTimestamp()
+    {
+      return this.timestamp;
+    }
+  }
+
+  // VARIABLES
+
+  private File inputDir;
+  private File outputDir;
+
+  // METHODS
+
+  /**
+   * Set up for each test.
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.inputDir = createTempDir( "input" );
+    this.outputDir = createTempDir( "output" );
+  }
+
+  /**
+   * Tear down for each test.
+   */
+  @After
+  public void tearDown()
+  {
+    deleteDir( this.inputDir );
+    deleteDir( this.outputDir );
+  }
+
+  /**
+   * Tests that names are matched case-insensitively, ignoring the trailing
+   * ellipsis.
+   */
+  @Test
+  public void testMatches()
+  {
+    assertTrue( BatchProcessor.matches( "UART analyser ...", "uart analyser" ) );
+    assertTrue( BatchProcessor.matches( "UART analyser ...", "UART" ) );
+    assertTrue( BatchProcessor.matches( "CSV File", "csv file" ) );
+    assertFalse( BatchProcessor.matches( "CSV File", "SPI" ) );
+    assertFalse( BatchProcessor.matches( "CSV File", "" ) );
+  }
+
+  /**
+   * Tests that all data files in a directory are exported, and that invalid
+   * files are counted as failures without stopping the batch.
+   */
+  @Test
+  public void testProcessDirectoryOk() throws Exception
+  {
+    writeDataFile( new File( this.inputDir, "first.ols" ) );
+    writeDataFile( new File( this.inputDir, "second.ols" ) );
+    writeFile( new File( this.inputDir, "invalid.olp" ), "hello world!" );
+    writeFile( new File( this.inputDir, "ignored.txt" ), "ignored" );
+
+    final Exporter exporter = mock( Exporter.class );
+    when( exporter.getName() ).thenReturn( "Test exporter" );
+    when( exporter.getFilenameExtentions() ).thenReturn( new String[] { "txt" } );
+    doAnswer( new Answer<Void>()
+    {
+      @Override
+      public Void answer( final InvocationOnMock aInvocation ) throws Throwable
+      {
+        final DataSet dataSet = ( DataSet )aInvocation.getArguments()[0];
+        final OutputStream out = ( OutputStream )aInvocation.getArguments()[2];
+        out.write( Integer.toString( dataSet.getCapturedData().getValues().length ).getBytes() );
+        return null;
+      }
+    } ).when( exporter ).export( any( DataSet.class ), any( javax.swing.JComponent.class ),
+        any( OutputStream.class ) );
+
+    final BatchProcessor processor = new BatchProcessor( Arrays.asList( this.inputDir ), this.outputDir, "test",
+        Collections.<String> emptyList(), new Properties(), 2 );
+    processor.addExporter( exporter );
+
+    assertEquals( 1, processor.process() );
+
+    // Three samples plus the one denoting the absolute length...
+    assertEquals( "4", readFile( new File( this.outputDir, "first.txt" ) ) );
+    assertEquals( "4", readFile( new File( this.outputDir, "second.txt" ) ) );
+    assertEquals( 2, this.outputDir.list().length );
+  }
+
+  /**
+   * Tests that the tool settings are applied to the tool task, and that the
+   * annotations of the tool are written to a CSV file.
+   */
+  @Test
+  public void testRunToolWithSettingsOk() throws Exception
+  {
+    writeDataFile( new File( this.inputDir, "first.ols" ) );
+
+    final BatchProcessor processor = createToolProcessor( "stub.channelIndex", "3", "Mode", "high" );
+    assertEquals( 0, processor.process() );
+
+    final File output = new File( this.outputDir, "first.annotations.csv" );
+    final BufferedReader reader = new BufferedReader( new FileReader( output ) );
+    try
+    {
+      assertEquals( "\"tool\",\"channel\",\"start\",\"end\",\"annotation\"", reader.readLine() );
+      assertEquals( "\"Stub tool ...\",3,0,1,\"HIGH,\"\"0\"", reader.readLine() );
+      assertEquals( "\"Stub tool ...\",3,10,11,\"HIGH,\"\"1\"", reader.readLine() );
+      assertEquals( "\"Stub tool ...\",3,20,21,\"HIGH,\"\"2\"", reader.readLine() );
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * Tests that a file fails to process when the tool cannot run with the given
+   * settings, such as when a setting is missing or unknown.
+   */
+  @Test
+  public void testRunToolWithInvalidSettingsFail() throws Exception
+  {
+    writeDataFile( new File( this.inputDir, "first.ols" ) );
+
+    // Missing channel index...
+    assertEquals( 1, createToolProcessor( "mode", "low" ).process() );
+    // Unknown setting for the stub tool...
+    assertEquals( 1, createToolProcessor( "stub.channelIndex", "1", "stub.baudrate", "9600" ).process() );
+    // Invalid values...
+    assertEquals( 1, createToolProcessor( "channelIndex", "one" ).process() );
+    assertEquals( 1, createToolProcessor( "channelIndex", "1", "mode", "medium" ).process() );
+    // Settings of other tools are ignored...
+    assertEquals( 0, createToolProcessor( "channelIndex", "1", "uart.baudrate", "9600" ).process() );
+  }
+
+  /**
+   * Creates a temporary directory.
+   */
+  private static File createTempDir( final String aPrefix ) throws IOException
+  {
+    final File result = File.createTempFile( aPrefix, "" );
+    result.delete();
+    result.mkdirs();
+    return result;
+  }
+
+  /**
+   * Creates a batch processor that runs a stub tool with the given settings.
+   */
+  @SuppressWarnings( "unchecked" )
+  private BatchProcessor createToolProcessor( final String... aSettings )
+  {
+    final Properties settings = new Properties();
+    for ( int i = 0; i < aSettings.length; i += 2 )
+    {
+      settings.setProperty( aSettings[i], aSettings[i + 1] );
+    }
+
+    final Tool<Void> tool = mock( Tool.class );
+    when( tool.getName() ).thenReturn( "Stub tool ..." );
+    when( tool.createToolTask( any( ToolContext.class ), any( ToolProgressListener.class ),
+        any( AnnotationListener.class ) ) ).thenAnswer( new Answer<ToolTask<Void>>()
+    {
+      @Override
+      public ToolTask<Void> answer( final InvocationOnMock aInvocation ) throws Throwable
+      {
+        final Object[] args = aInvocation.getArguments();
+        return new StubToolTask( ( ToolContext )args[0], ( AnnotationListener )args[2] );
+      }
+    } );
+
+    final BatchProcessor processor = new BatchProcessor( Arrays.asList( this.inputDir ), this.outputDir, null,
+        Arrays.asList( "stub" ), settings, 1 );
+    processor.addTool( tool );
+    return processor;
+  }
+
+  /**
+   * Deletes the given directory and all of its files.
+   */
+  private static void deleteDir( final File aDir )
+  {
+    final File[] files = aDir.listFiles();
+    if ( files != null )
+    {
+      for ( File file : files )
+      {
+        file.delete();
+      }
+    }
+    aDir.delete();
+  }
+
+  /**
+   * Reads the contents of the given file.
+   */
+  private static String readFile( final File aFile ) throws IOException
+  {
+    final BufferedReader reader = new BufferedReader( new FileReader( aFile ) );
+    try
+    {
+      return reader.readLine();
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * Writes a small data file.
+   */
+  private static void writeDataFile( final File aFile ) throws IOException
+  {
+    final CapturedData data = new CapturedData( new int[] { 0, 1, 0 }, new long[] { 0L, 10L, 20L }, -1L, 1000000,
+        8, 0xFF, 30L );
+
+    final Writer writer = new FileWriter( aFile );
+    try
+    {
+      OlsDataHelper.write( new DataSetImpl( data, new DataSetImpl(), false ), writer );
+    }
+    finally
+    {
+      writer.close();
+    }
+  }
+
+  /**
+   * Writes the given text to the given file.
+   */
+  private static void writeFile( final File aFile, final String aText ) throws IOException
+  {
+    final Writer writer = new FileWriter( aFile );
+    try
+    {
+      writer.write( aText );
+    }
+    finally
+    {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.client.project.impl;
+
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.annotation.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link PersistedAnnotations}, which verify that each type of
+ * annotation survives a round trip.
+ */
+public class PersistedAnnotationsTest
+{
+  // INNER TYPES
+
+  /**
+   * Provides a data annotation with an arbitrary payload.
+   */
+  static final class ValueAnnotation implements DataAnnotation<Object>
+  {
+    // VARIABLES
+
+    private final long startTimestamp;
+    private final long endTimestamp;
+    private final Object value;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ValueAnnotation} instance.
+     */
+    ValueAnnotation( final long aStartTimestamp, final long aEndTimestamp, final Object aValue )
+    {
+      this.startTimestamp = aStartTimestamp;
+      this.endTimestamp = aEndTimestamp;
+      this.value = aValue;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo( final Annotation<Object> aOther )
+    {
+      return PersistedAnnotations.compare( this.startTimestamp, ( ( DataAnnotation<?> )aOther ).getStartTimestamp() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getAnnotation()
+    {
+      return this.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannel()
+    {
+      return CHANNEL_IDX;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEndTimestamp()
+    {
+      return this.endTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStartTimestamp()
+    {
+      return this.startTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+      return "value " + this.value;
+    }
+  }
+
+  // CONSTANTS
+
+  private static final int CHANNEL_IDX = 2;
+
+  // VARIABLES
+
+  private AcquisitionResult capturedData;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.capturedData = DataTestUtils.getMockedCapturedData();
+  }
+
+  /**
+   * Tests that annotations of other captured data are considered stale.
+   */
+  @Test
+  public void testAnnotationsOfOtherCaptureAreStale() throws IOException
+  {
+    final PersistedAnnotations persisted = roundTrip( new SampleDataAnnotation( CHANNEL_IDX, 1L, 2L, "x" ) );
+
+    final AcquisitionResult otherData = mock( AcquisitionResult.class );
+    when( otherData.getValues() ).thenReturn( new int[] { 1 } );
+    when( otherData.getTimestamps() ).thenReturn( new long[] { 0L } );
+
+    assertTrue( persisted.isValidFor( this.capturedData ) );
+    assertFalse( persisted.isValidFor( otherData ) );
+    assertFalse( persisted.isValidFor( null ) );
+  }
+
+  /**
+   * Tests that boolean and character payloads are restored with their values.
+   */
+  @Test
+  public void testRoundTripBooleanAndCharacterAnnotationOk() throws IOException
+  {
+    final List<Annotation<?>> restored = getAnnotations( new ValueAnnotation( 1L, 2L, Boolean.TRUE ),
+        new ValueAnnotation( 3L, 4L, Character.valueOf( 'q' ) ) );
+
+    assertAnnotation( restored.get( 0 ), 1L, 2L, Boolean.TRUE );
+    assertAnnotation( restored.get( 1 ), 3L, 4L, Character.valueOf( 'q' ) );
+  }
+
+  /**
+   * Tests that numeric payloads are restored with their values.
+   */
+  @Test
+  public void testRoundTripNumericAnnotationOk() throws IOException
+  {
+    final List<Annotation<?>> restored = getAnnotations( new ValueAnnotation( 10L, 20L, Integer.valueOf( 0x55 ) ),
+        new ValueAnnotation( 20L, 30L, Long.valueOf( Long.MIN_VALUE ) ), //
+        new ValueAnnotation( 30L, 40L, Double.valueOf( -1.5 ) ), //
+        new ValueAnnotation( 40L, 50L, Integer.valueOf( 0x55 ) ) );
+
+    assertEquals( 4, restored.size() );
+    assertAnnotation( restored.get( 0 ), 10L, 20L, Integer.valueOf( 0x55 ) );
+    assertAnnotation( restored.get( 1 ), 20L, 30L, Long.valueOf( Long.MIN_VALUE ) );
+    assertAnnotation( restored.get( 2 ), 30L, 40L, Double.valueOf( -1.5 ) );
+    assertAnnotation( restored.get( 3 ), 40L, 50L, Integer.valueOf( 0x55 ) );
+  }
+
+  /**
+   * Tests that payloads of unknown types are restored as their textual
+   * representation.
+   */
+  @Test
+  public void testRoundTripObjectAnnotationOk() throws IOException
+  {
+    final List<Annotation<?>> restored = getAnnotations( new ValueAnnotation( 5L, 6L, new StringBuilder( "sb" ) ) );
+
+    assertAnnotation( restored.get( 0 ), 5L, 6L, "sb" );
+  }
+
+  /**
+   * Tests that sample data annotations are restored as such, including their
+   * (possibly empty) time range.
+   */
+  @Test
+  public void testRoundTripSampleDataAnnotationOk() throws IOException
+  {
+    final List<Annotation<?>> restored = getAnnotations( new SampleDataAnnotation( CHANNEL_IDX, 100L, 250L, "0x41" ),
+        new SampleDataAnnotation( CHANNEL_IDX, 7L, "START" ), //
+        new SampleDataAnnotation( CHANNEL_IDX, 300L, 300L, "" ) );
+
+    assertEquals( 3, restored.size() );
+    for ( Annotation<?> annotation : restored )
+    {
+      assertTrue( annotation instanceof SampleDataAnnotation );
+    }
+    // Sorted on their start timestamp...
+    assertAnnotation( restored.get( 0 ), 7L, 8L, "START" );
+    assertAnnotation( restored.get( 1 ), 100L, 250L, "0x41" );
+    assertAnnotation( restored.get( 2 ), 300L, 300L, "" );
+  }
+
+  /**
+   * Tests that textual payloads of plain data annotations are restored as
+   * text, including non-ASCII characters and an end before the start.
+   */
+  @Test
+  public void testRoundTripTextAnnotationOk() throws IOException
+  {
+    final List<Annotation<?>> restored = getAnnotations( new ValueAnnotation( 1000L, 990L, "µs → ok" ),
+        new ValueAnnotation( 2000L, 3000L, "123" ) );
+
+    assertAnnotation( restored.get( 0 ), 1000L, 990L, "µs → ok" );
+    // Should not be mistaken for a number...
+    assertAnnotation( restored.get( 1 ), 2000L, 3000L, "123" );
+    assertFalse( restored.get( 1 ) instanceof SampleDataAnnotation );
+  }
+
+  /**
+   * Asserts the channel, time range and payload of the given annotation.
+   */
+  private void assertAnnotation( final Annotation<?> aAnnotation, final long aStart, final long aEnd,
+      final Object aValue )
+  {
+    final DataAnnotation<?> annotation = ( DataAnnotation<?> )aAnnotation;
+    assertEquals( CHANNEL_IDX, annotation.getChannel() );
+    assertEquals( aStart, annotation.getStartTimestamp() );
+    assertEquals( aEnd, annotation.getEndTimestamp() );
+    assertEquals( aValue, annotation.getAnnotation() );
+  }
+
+  /**
+   * Writes and reads back the given annotations, and returns the restored
+   * annotations of their channel.
+   */
+  private List<Annotation<?>> getAnnotations( final Annotation<?>... aAnnotations ) throws IOException
+  {
+    final PersistedAnnotations persisted = roundTrip( aAnnotations );
+    assertFalse( persisted.hasAnnotations( CHANNEL_IDX - 1 ) );
+    assertTrue( persisted.hasAnnotations( CHANNEL_IDX ) );
+    return persisted.getAnnotations( CHANNEL_IDX );
+  }
+
+  /**
+   * Writes the given annotations for a channel of a data set, and reads them
+   * back.
+   */
+  private PersistedAnnotations roundTrip( final Annotation<?>... aAnnotations ) throws IOException
+  {
+    final Channel channel = mock( Channel.class );
+    when( Integer.valueOf( channel.getIndex() ) ).thenReturn( Integer.valueOf( CHANNEL_IDX ) );
+    when( channel.getAnnotations() ).thenReturn( Arrays.asList( aAnnotations ) );
+
+    final DataSet dataSet = mock( DataSet.class );
+    when( dataSet.getCapturedData() ).thenReturn( this.capturedData );
+    when( dataSet.getChannels() ).thenReturn( new Channel[] { null, channel } );
+
+    assertTrue( PersistedAnnotations.hasAnnotations( dataSet ) );
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    PersistedAnnotations.write( dataSet, baos );
+
+    return PersistedAnnotations.read( new ByteArrayInputStream( baos.toByteArray() ) );
+  }
+}
@@ -24,12 +24,18 @@ package nl.lxtreme.ols.client.project.impl;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.beans.*;
 import java.io.*;
+import java.util.*;
+
+import javax.swing.*;
 
 import nl.lxtreme.ols.api.*;
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
 import nl.lxtreme.ols.api.data.project.*;
+import nl.lxtreme.ols.api.task.*;
 import nl.lxtreme.ols.test.data.*;
 import nl.lxtreme.ols.util.*;
 
@@ -43,6 +49,7 @@ public class ProjectManagerImplTest
 {
   // VARIABLES
 
+  private HostProperties hostProperties;
   private ProjectManagerImpl projectManager;
 
   // METHODS
@@ -53,11 +60,11 @@ public class ProjectManagerImplTest
   @Before
   public void setUp() throws Exception
   {
-    HostProperties mockProperties = mock( HostProperties.class );
-    when( mockProperties.getFullName() ).thenReturn( "OLS" );
+    this.hostProperties = mock( HostProperties.class );
+    when( this.hostProperties.getFullName() ).thenReturn( "OLS" );
 
     this.projectManager = new ProjectManagerImpl();
-    this.projectManager.setHostProperties( mockProperties );
+    this.projectManager.setHostProperties( this.hostProperties );
   }
 
   /**
@@ -106,6 +113,198 @@ public class ProjectManagerImplTest
     this.projectManager.loadProject( null );
   }
 
+  /**
+   * Tests that the journaled changes of a project can be recovered after the
+   * project manager was not stopped properly.
+   */
+  @Test
+  public void testRecoverJournaledProjectOk() throws Exception
+  {
+    final File journal = File.createTempFile( "journal", ".tmp" );
+    final File crashedJournal = File.createTempFile( "crashed", ".tmp" );
+    journal.delete();
+
+    final ProjectManagerImpl crashed = new ProjectManagerImpl( journal );
+    crashed.setHostProperties( mock( HostProperties.class ) );
+    crashed.start();
+
+    final AcquisitionResult mockedCapturedData = DataTestUtils.getMockedCapturedData();
+
+    final Project project = crashed.getCurrentProject();
+    project.setCapturedData( mockedCapturedData );
+    project.getDataSet().getChannel( 0 ).setLabel( "label" );
+    crashed.onAnnotation( new PersistedAnnotations.RestoredAnnotation<String>( 1, 10L, 20L, "a" ) );
+
+    // Simulate a crash by taking the journal as-is...
+    crashed.getJournal().sync();
+    copyFile( journal, crashedJournal );
+    crashed.stop();
+    assertFalse( journal.exists() );
+
+    final HostProperties mockProperties = mock( HostProperties.class );
+    when( mockProperties.getFullName() ).thenReturn( "OLS" );
+
+    final ProjectManagerImpl recovered = new ProjectManagerImpl( crashedJournal );
+    recovered.setHostProperties( mockProperties );
+    recovered.start();
+
+    final List<Boolean> projectEvents = new ArrayList<Boolean>();
+    recovered.addPropertyChangeListener( new PropertyChangeListener()
+    {
+      @Override
+      public void propertyChange( final PropertyChangeEvent aEvent )
+      {
+        if ( "project".equals( aEvent.getPropertyName() ) )
+        {
+          projectEvents.add( Boolean.valueOf( SwingUtilities.isEventDispatchThread() ) );
+        }
+      }
+    } );
+
+    try
+    {
+      assertTrue( recovered.hasRecoverableProject() );
+
+      recovered.createRecoverProjectTask().call();
+
+      assertFalse( recovered.hasRecoverableProject() );
+      // The recovered project should only become current on the EDT...
+      assertEquals( Arrays.asList( Boolean.TRUE ), projectEvents );
+
+      final Project recoveredProject = recovered.getCurrentProject();
+      assertTrue( recoveredProject.isChanged() );
+
+      final DataSet dataSet = recoveredProject.getDataSet();
+      assertArrayEquals( mockedCapturedData.getValues(), dataSet.getCapturedData().getValues() );
+      assertArrayEquals( mockedCapturedData.getTimestamps(), dataSet.getCapturedData().getTimestamps() );
+      assertEquals( "label", dataSet.getChannel( 0 ).getLabel() );
+
+      final Iterator<Annotation<?>> iter = dataSet.getChannel( 1 ).getAnnotations().iterator();
+      assertAnnotation( iter.next(), 10L, 20L, "a" );
+      assertFalse( iter.hasNext() );
+    }
+    finally
+    {
+      recovered.stop();
+    }
+    assertFalse( crashedJournal.exists() );
+  }
+
+  /**
+   * Tests that a journal that grew larger than its base is compacted into a
+   * snapshot, and that the snapshot and the records journaled after it are
+   * recovered.
+   */
+  @Test
+  public void testRecoverCompactedJournalOk() throws Exception
+  {
+    final File journal = File.createTempFile( "journal", ".tmp" );
+    final File crashedJournal = File.createTempFile( "crashed", ".tmp" );
+    journal.delete();
+
+    final ProjectManagerImpl crashed = new ProjectManagerImpl( journal );
+    crashed.setHostProperties( this.hostProperties );
+    crashed.start();
+
+    try
+    {
+      final Project project = crashed.getCurrentProject();
+      project.setCapturedData( DataTestUtils.getMockedCapturedData() );
+
+      final char[] text = new char[500];
+      Arrays.fill( text, 'x' );
+
+      // Each annotation takes about 530 bytes, so this exceeds 1 MB...
+      final Channel channel = project.getDataSet().getChannel( 1 );
+      for ( int i = 0; i < 2500; i++ )
+      {
+        final Annotation<?> annotation = new PersistedAnnotations.RestoredAnnotation<String>( 1, i, i + 1,
+            new String( text ) );
+        channel.addAnnotation( annotation );
+        crashed.onAnnotation( annotation );
+      }
+
+      // Wait until the snapshot is taken and written...
+      crashed.getJournal().sync();
+      flushEDT();
+      crashed.getJournal().sync();
+
+      assertTrue( "Journal not compacted?!", journal.length() < 1024L * 1024L );
+
+      final Annotation<?> last = new PersistedAnnotations.RestoredAnnotation<String>( 1, 5000L, 5001L, "last" );
+      channel.addAnnotation( last );
+      crashed.onAnnotation( last );
+
+      // Simulate a crash by taking the journal as-is; its snapshot remains...
+      crashed.getJournal().sync();
+      copyFile( journal, crashedJournal );
+
+      final ProjectManagerImpl recovered = new ProjectManagerImpl( crashedJournal );
+      recovered.setHostProperties( this.hostProperties );
+      recovered.start();
+
+      try
+      {
+        recovered.createRecoverProjectTask().call();
+
+        final DataSet dataSet = recovered.getCurrentProject().getDataSet();
+        assertEquals( 2501, dataSet.getChannel( 1 ).getAnnotations().size() );
+      }
+      finally
+      {
+        recovered.stop();
+      }
+    }
+    finally
+    {
+      crashed.stop();
+    }
+  }
+
+  /**
+   * Tests that a journal whose header contains characters that are encoded
+   * differently in (modified) UTF-8 can be recovered.
+   */
+  @Test
+  public void testRecoverJournalWithNonAsciiFilenameOk() throws Exception
+  {
+    final File journal = File.createTempFile( "journal", ".tmp" );
+    final File crashedJournal = File.createTempFile( "crashed", ".tmp" );
+    journal.delete();
+
+    final ProjectManagerImpl crashed = new ProjectManagerImpl( journal );
+    crashed.setHostProperties( this.hostProperties );
+    crashed.start();
+
+    final File projectFile = new File( createTempDir(), "caf\u00e9 \ud83d\ude00.olp" );
+
+    final Project project = crashed.getCurrentProject();
+    project.setFilename( projectFile );
+    project.setCapturedData( DataTestUtils.getMockedCapturedData() );
+    project.getDataSet().getChannel( 0 ).setLabel( "label" );
+
+    crashed.getJournal().sync();
+    copyFile( journal, crashedJournal );
+    crashed.stop();
+
+    final ProjectManagerImpl recovered = new ProjectManagerImpl( crashedJournal );
+    recovered.setHostProperties( this.hostProperties );
+    recovered.start();
+
+    try
+    {
+      recovered.createRecoverProjectTask().call();
+
+      final Project recoveredProject = recovered.getCurrentProject();
+      assertEquals( projectFile.getAbsoluteFile(), recoveredProject.getFilename() );
+      assertEquals( "label", recoveredProject.getDataSet().getChannel( 0 ).getLabel() );
+    }
+    finally
+    {
+      recovered.stop();
+    }
+  }
+
   /**
    * Test method for
    * {@link SimpleProjectManager#saveProject(java.io.OutputStream)}.
@@ -116,6 +315,42 @@ public class ProjectManagerImplTest
     this.projectManager.saveProject( null );
   }
 
+  /**
+   * Test method for
+   * {@link SimpleProjectManager#saveProject(java.io.OutputStream)}.
+   */
+  @Test
+  public void testSaveProjectStoresAnnotationsOk() throws IOException
+  {
+    final AcquisitionResult mockedCapturedData = DataTestUtils.getMockedCapturedData();
+
+    final Project project = this.projectManager.getCurrentProject();
+    project.setCapturedData( mockedCapturedData );
+
+    final Channel channel = project.getDataSet().getChannel( 1 );
+    channel.addAnnotation( new PersistedAnnotations.RestoredAnnotation<String>( 1, 30L, 40L, "b" ) );
+    channel.addAnnotation( new PersistedAnnotations.RestoredAnnotation<String>( 1, 10L, 20L, "a" ) );
+    channel.addAnnotation( new PersistedAnnotations.RestoredAnnotation<String>( 1, 50L, 50L, "a" ) );
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream( 1024 );
+    this.projectManager.saveProject( baos ); // should succeed...
+
+    // Make sure everything is gone...
+    this.projectManager.createNewProject();
+
+    final ByteArrayInputStream bais = new ByteArrayInputStream( baos.toByteArray() );
+    this.projectManager.loadProject( bais );
+
+    final DataSet loadedDataSet = this.projectManager.getCurrentProject().getDataSet();
+    assertTrue( loadedDataSet.getChannel( 0 ).getAnnotations().isEmpty() );
+
+    final Iterator<Annotation<?>> iter = loadedDataSet.getChannel( 1 ).getAnnotations().iterator();
+    assertAnnotation( iter.next(), 10L, 20L, "a" );
+    assertAnnotation( iter.next(), 30L, 40L, "b" );
+    assertAnnotation( iter.next(), 50L, 50L, "a" );
+    assertFalse( iter.hasNext() );
+  }
+
   /**
    * Test method for
    * {@link SimpleProjectManager#saveProject(java.io.OutputStream)}.
@@ -227,4 +462,210 @@ public class ProjectManagerImplTest
     assertNotSame( settings, this.projectManager.getCurrentProject().getSettings( settingsName ) );
     assertEquals( "value", this.projectManager.getCurrentProject().getSettings( settingsName ).get( "key", "default" ) );
   }
+
+  /**
+   * Tests that a failing save task leaves the original project file intact.
+   */
+  @Test
+  public void testSaveProjectTaskFailureLeavesFileIntact() throws Exception
+  {
+    final File dir = createTempDir();
+    final File file = new File( dir, "project.ols" );
+    writeFile( file, "original" );
+
+    final Project project = this.projectManager.getCurrentProject();
+    project.setCapturedData( DataTestUtils.getMockedCapturedData() );
+
+    final Task<Void> task = this.projectManager.createSaveProjectTask( "name", file, null /* aProgressListener */);
+
+    // Simulate a cancellation of the task...
+    Thread.currentThread().interrupt();
+    try
+    {
+      task.call();
+      fail( "IOException expected!" );
+    }
+    catch ( IOException exception )
+    {
+      // Ok; expected...
+    }
+    finally
+    {
+      Thread.interrupted();
+    }
+    flushEDT();
+
+    assertEquals( "original", readFile( file ) );
+    assertEquals( 1, dir.listFiles().length );
+    assertNull( project.getFilename() );
+    assertTrue( project.isChanged() );
+  }
+
+  /**
+   * Tests that a project modified during a save remains marked as changed.
+   */
+  @Test
+  public void testSaveProjectTaskKeepsModificationsDuringSave() throws Exception
+  {
+    final File file = new File( createTempDir(), "project.ols" );
+
+    final Project project = this.projectManager.getCurrentProject();
+    project.setCapturedData( DataTestUtils.getMockedCapturedData() );
+    project.getDataSet().getChannel( 0 ).setLabel( "before" );
+
+    final Task<Void> task = this.projectManager.createSaveProjectTask( "name", file, null /* aProgressListener */);
+
+    // Modify the project after it is snapshotted, but before it is saved...
+    project.getDataSet().getChannel( 0 ).setLabel( "after" );
+
+    task.call();
+    flushEDT();
+
+    assertEquals( file, project.getFilename() );
+    assertEquals( "name", project.getName() );
+    assertTrue( project.isChanged() );
+
+    final FileInputStream fis = new FileInputStream( file );
+    try
+    {
+      this.projectManager.loadProject( fis );
+    }
+    finally
+    {
+      fis.close();
+    }
+    assertEquals( "before", this.projectManager.getCurrentProject().getDataSet().getChannel( 0 ).getLabel() );
+  }
+
+  /**
+   * Tests that a save task replaces an existing project file, and applies the
+   * new name and filename only after it succeeded.
+   */
+  @Test
+  public void testSaveProjectTaskReplacesFileOk() throws Exception
+  {
+    final File dir = createTempDir();
+    final File file = new File( dir, "project.ols" );
+    writeFile( file, "original" );
+
+    final Project project = this.projectManager.getCurrentProject();
+    project.setCapturedData( DataTestUtils.getMockedCapturedData() );
+
+    final Task<Void> task = this.projectManager.createSaveProjectTask( "name", file, null /* aProgressListener */);
+    assertNull( project.getName() );
+
+    task.call();
+    flushEDT();
+
+    assertEquals( 1, dir.listFiles().length );
+    assertEquals( file, project.getFilename() );
+    assertEquals( "name", project.getName() );
+    assertFalse( project.isChanged() );
+
+    final FileInputStream fis = new FileInputStream( file );
+    try
+    {
+      this.projectManager.loadProject( fis );
+    }
+    finally
+    {
+      fis.close();
+    }
+    assertEquals( "name", this.projectManager.getCurrentProject().getName() );
+  }
+
+  /**
+   * Asserts the given annotation matches the given expectations.
+   */
+  private void assertAnnotation( final Annotation<?> aAnnotation, final long aStart, final long aEnd,
+      final String aText )
+  {
+    final DataAnnotation<?> annotation = ( DataAnnotation<?> )aAnnotation;
+    assertEquals( 1, annotation.getChannel() );
+    assertEquals( aStart, annotation.getStartTimestamp() );
+    assertEquals( aEnd, annotation.getEndTimestamp() );
+    assertEquals( aText, annotation.getAnnotation() );
+  }
+
+  /**
+   * Copies the given source file to the given target file.
+   */
+  private void copyFile( final File aSource, final File aTarget ) throws IOException
+  {
+    final InputStream is = new FileInputStream( aSource );
+    final OutputStream os = new FileOutputStream( aTarget );
+    try
+    {
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ( ( read = is.read( buffer ) ) >= 0 )
+      {
+        os.write( buffer, 0, read );
+      }
+    }
+    finally
+    {
+      HostUtils.closeResource( is );
+      HostUtils.closeResource( os );
+    }
+  }
+
+  /**
+   * Creates a new, empty, temporary directory.
+   */
+  private File createTempDir() throws IOException
+  {
+    final File dir = File.createTempFile( "project", "" );
+    dir.delete();
+    dir.mkdirs();
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  /**
+   * Waits until all pending events on the EDT are processed.
+   */
+  private void flushEDT() throws Exception
+  {
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        // Nop
+      }
+    } );
+  }
+
+  /**
+   * Reads the given file as string.
+   */
+  private String readFile( final File aFile ) throws IOException
+  {
+    final BufferedReader reader = new BufferedReader( new FileReader( aFile ) );
+    try
+    {
+      return reader.readLine();
+    }
+    finally
+    {
+      HostUtils.closeResource( reader );
+    }
+  }
+
+  /**
+   * Writes the given text to the given file.
+   */
+  private void writeFile( final File aFile, final String aText ) throws IOException
+  {
+    final Writer writer = new FileWriter( aFile );
+    try
+    {
+      writer.write( aText );
+    }
+    finally
+    {
+      HostUtils.closeResource( writer );
+    }
+  }
 }
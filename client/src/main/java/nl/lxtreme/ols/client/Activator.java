@@ -30,10 +30,12 @@ import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.data.export.*;
 import nl.lxtreme.ols.api.data.project.*;
 import nl.lxtreme.ols.api.devices.*;
+import nl.lxtreme.ols.api.task.*;
 import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.api.ui.*;
 import nl.lxtreme.ols.client.osgi.*;
 import nl.lxtreme.ols.util.*;
+import nl.lxtreme.ols.util.osgi.*;
 
 import org.apache.felix.dm.*;
 import org.osgi.framework.*;
@@ -227,6 +229,9 @@ public class Activator extends DependencyActivatorBase
         .add( createServiceDependency() //
             .setService( UIColorSchemeManager.class ) //
             .setRequired( true ) ) //
+        .add( createServiceDependency() //
+            .setService( TaskExecutionService.class ) //
+            .setRequired( true ) ) //
         .add( createServiceDependency() //
             .setService( ComponentProvider.class, "(OLS-ComponentProvider=Menu)" ) //
             .setCallbacks( "addMenu", "removeMenu" ) //
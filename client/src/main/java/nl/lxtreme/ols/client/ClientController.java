@@ -40,6 +40,7 @@ import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.data.export.*;
 import nl.lxtreme.ols.api.data.project.*;
 import nl.lxtreme.ols.api.devices.*;
+import nl.lxtreme.ols.api.task.*;
 import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.api.ui.*;
 import nl.lxtreme.ols.api.util.*;
@@ -47,6 +48,7 @@ import nl.lxtreme.ols.client.action.*;
 import nl.lxtreme.ols.client.actionmanager.*;
 import nl.lxtreme.ols.client.osgi.*;
 import nl.lxtreme.ols.client.signaldisplay.*;
+import nl.lxtreme.ols.client.signaldisplay.laf.UIManagerKeys;
 import nl.lxtreme.ols.util.*;
 import nl.lxtreme.ols.util.swing.*;
 import nl.lxtreme.ols.util.swing.component.*;
@@ -83,6 +85,93 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
     }
   }
 
+  /**
+   * Provides a task that runs a (long running) file operation, such as saving a
+   * project, in the background and reports its outcome to the user.
+   */
+  final class BackgroundFileTask implements Task<Void>
+  {
+    // VARIABLES
+
+    private final Task<?> task;
+    private final Closeable resource;
+    private final String failureMessage;
+    private final String successMessage;
+    private final Object[] successMessageArgs;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link BackgroundFileTask} instance.
+     *
+     * @param aTask
+     *          the actual task to run, cannot be <code>null</code>;
+     * @param aResource
+     *          the resource to close after the task is finished, can be
+     *          <code>null</code>;
+     * @param aFailureMessage
+     *          the message to show in case the task fails;
+     * @param aSuccessMessage
+     *          the status message to show in case the task succeeds;
+     * @param aSuccessMessageArgs
+     *          the (optional) arguments of the status message.
+     */
+    public BackgroundFileTask( final Task<?> aTask, final Closeable aResource, final String aFailureMessage,
+        final String aSuccessMessage, final Object... aSuccessMessageArgs )
+    {
+      this.task = aTask;
+      this.resource = aResource;
+      this.failureMessage = aFailureMessage;
+      this.successMessage = aSuccessMessage;
+      this.successMessageArgs = aSuccessMessageArgs;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Void call() throws Exception
+    {
+      try
+      {
+        this.task.call();
+
+        setStatusOnEDT( this.successMessage, this.successMessageArgs );
+      }
+      catch ( final Exception exception )
+      {
+        // Make sure to handle IO-interrupted exceptions properly!
+        if ( HostUtils.handleInterruptedException( exception ) )
+        {
+          setStatusOnEDT( "Operation cancelled ..." );
+        }
+        else
+        {
+          LOG.log( Level.WARNING, this.failureMessage, exception );
+
+          SwingComponentUtils.invokeOnEDT( new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              JErrorDialog.showDialog( getMainFrame(), BackgroundFileTask.this.failureMessage, exception );
+            }
+          } );
+        }
+      }
+      finally
+      {
+        HostUtils.closeResource( this.resource );
+
+        setProgressOnEDT( 0 );
+        updateActionsOnEDT();
+      }
+      return null;
+    }
+  }
+
   /**
    * Provides an {@link Action} for closing a {@link JOptionPane}.
    */
@@ -289,8 +378,10 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
   private volatile MainFrame mainFrame;
   private volatile HostProperties hostProperties;
   private volatile UIColorSchemeManager colorSchemeManager;
+  private volatile TaskExecutionService taskExecutionService;
 
   private volatile long acquisitionStartTime;
+  private volatile Future<?> backgroundFileTask;
 
   // CONSTRUCTORS
 
@@ -640,13 +731,17 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
   /**
    * Exports the current data set to a file using an {@link Exporter} with a
    * given name.
+   * <p>
+   * The actual export is done in the background; its progress is shown in the
+   * status bar of the main frame.
+   * </p>
    *
    * @param aExporterName
    *          the name of the exporter to use, cannot be <code>null</code>;
    * @param aExportFile
    *          the file to export the results to, cannot be <code>null</code>.
    * @throws IOException
-   *           in case of I/O problems during the export.
+   *           in case of errors during opening the file.
    */
   public void exportTo( final String aExporterName, final File aExportFile ) throws IOException
   {
@@ -654,24 +749,36 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
     {
       return;
     }
-
-    OutputStream writer = null;
-
-    try
+    if ( isBackgroundFileTaskRunning() )
     {
-      writer = new FileOutputStream( aExportFile );
+      setStatusOnEDT( "Cannot export: another file operation is still in progress ..." );
+      return;
+    }
 
-      final Exporter exporter = getExporter( aExporterName );
-      exporter.export( getCurrentDataSet(), this.mainFrame.getViewComponent(), writer );
+    final Exporter exporter = getExporter( aExporterName );
+    final ExportContext context = createExportContext();
 
-      setStatusOnEDT( "Export to {0} succesful ...", aExporterName );
-    }
-    finally
+    final OutputStream writer = new FileOutputStream( aExportFile );
+
+    final Task<Void> exportTask = new Task<Void>()
     {
-      HostUtils.closeResource( writer );
+      @Override
+      public Void call() throws Exception
+      {
+        if ( exporter instanceof StreamingExporter )
+        {
+          ( ( StreamingExporter )exporter ).export( context, writer );
+        }
+        else
+        {
+          exportOnEDT( exporter, context, writer );
+        }
+        return null;
+      }
+    };
 
-      updateActionsOnEDT();
-    }
+    this.backgroundFileTask = this.taskExecutionService.execute( new BackgroundFileTask( exportTask, writer,
+        "Export capture data failed!", "Export to {0} succesful ...", aExporterName ) );
   }
 
   /**
@@ -1237,32 +1344,35 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
   /**
    * Stores the current acquisition data to the given file, in the OLS-project
    * file format.
+   * <p>
+   * The actual saving of the project is done in the background; its progress
+   * is shown in the status bar of the main frame. The given file is only
+   * replaced once the project is completely written, so it remains intact in
+   * case saving fails or is cancelled. This method should be called on the
+   * EDT.
+   * </p>
    *
    * @param aName
    *          the name of the project to store, cannot be <code>null</code>;
    * @param aFile
    *          the file to write the data to, cannot be <code>null</code>.
    * @throws IOException
-   *           in case of errors during opening/writing to the file.
+   *           in case of errors during opening the file.
    */
   public void saveProjectFile( final String aName, final File aFile ) throws IOException
   {
-    FileOutputStream out = null;
-    try
+    if ( isBackgroundFileTaskRunning() )
     {
-      final Project project = getCurrentProject();
-      project.setFilename( aFile );
-      project.setName( aName );
+      setStatusOnEDT( "Cannot save project: another file operation is still in progress ..." );
+      return;
+    }
 
-      out = new FileOutputStream( aFile );
-      this.projectManager.saveProject( out );
+    // The project takes the given name and filename once it is saved...
+    final Task<Void> saveTask = this.projectManager.createSaveProjectTask( aName, aFile,
+        createTaskProgressListener() );
 
-      setStatusOnEDT( "Project {0} saved ...", aName );
-    }
-    finally
-    {
-      HostUtils.closeResource( out );
-    }
+    this.backgroundFileTask = this.taskExecutionService.execute( new BackgroundFileTask( saveTask,
+        null /* aResource */, "Saving the project data failed!", "Project {0} saved ...", aName ) );
   }
 
   /**
@@ -1382,6 +1492,9 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
         mf.setStatus( "{0} v{1} ready ...", hostProperties.getShortName(), hostProperties.getVersion() );
         mf.setVisible( true );
 
+        // Offer to recover the work of a previous session that crashed...
+        recoverProject();
+
         LOG.info( "Client started ..." );
       }
     } );
@@ -1393,6 +1506,14 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
    */
   public final void stop()
   {
+    final Future<?> fileTask = this.backgroundFileTask;
+    if ( fileTask != null )
+    {
+      // A cancelled save leaves the original project file intact...
+      fileTask.cancel( true /* mayInterruptIfRunning */);
+      this.backgroundFileTask = null;
+    }
+
     this.devices.clear();
     this.tools.clear();
     this.exporters.clear();
@@ -1763,6 +1884,57 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
     return currentProject.getFilename() == null;
   }
 
+  /**
+   * Runs the given (non-streaming) exporter on the event dispatch thread, as
+   * such exporters expect to be called from the UI.
+   *
+   * @param aExporter
+   *          the exporter to run;
+   * @param aContext
+   *          the export context to take the data set and component from;
+   * @param aStream
+   *          the stream to export to.
+   * @throws Exception
+   *           in case the export failed.
+   */
+  private void exportOnEDT( final Exporter aExporter, final ExportContext aContext, final OutputStream aStream )
+      throws Exception
+  {
+    final IOException[] failure = new IOException[1];
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          aExporter.export( aContext.getDataSet(), aContext.getComponent(), aStream );
+        }
+        catch ( IOException exception )
+        {
+          failure[0] = exception;
+        }
+      }
+    } );
+    if ( failure[0] != null )
+    {
+      throw failure[0];
+    }
+  }
+
+  /**
+   * Returns whether or not a file operation, such as saving a project, is
+   * running in the background.
+   *
+   * @return <code>true</code> if a background file operation is running,
+   *         <code>false</code> otherwise.
+   */
+  protected boolean isBackgroundFileTaskRunning()
+  {
+    final Future<?> fileTask = this.backgroundFileTask;
+    return ( fileTask != null ) && !fileTask.isDone();
+  }
+
   /**
    * Returns whether or not a cursor with the given index is set.
    *
@@ -1781,6 +1953,51 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
     return cursor.isDefined();
   }
 
+  /**
+   * Creates the export context denoting the data that should be exported.
+   * When requested, only the data between cursors A and B is exported.
+   *
+   * @return an export context, never <code>null</code>.
+   */
+  private ExportContext createExportContext()
+  {
+    final DataSet dataSet = getCurrentDataSet();
+
+    long startTime = ExportContext.getFirstTimestamp( dataSet );
+    long endTime = ExportContext.getLastTimestamp( dataSet );
+
+    if ( UIManager.getBoolean( UIManagerKeys.EXPORT_CURSOR_RANGE ) && areCursorsEnabled() && isCursorSet( 0 )
+        && isCursorSet( 1 ) )
+    {
+      final long cursorA = getCursor( 0 ).getTimestamp();
+      final long cursorB = getCursor( 1 ).getTimestamp();
+
+      startTime = Math.max( startTime, Math.min( cursorA, cursorB ) );
+      endTime = Math.max( startTime, Math.min( endTime, Math.max( cursorA, cursorB ) ) );
+    }
+
+    return new ExportContext( dataSet, this.mainFrame.getViewComponent(), startTime, endTime,
+        ExportContext.getEnabledChannelMask( dataSet ), createTaskProgressListener() );
+  }
+
+  /**
+   * Creates a progress listener that shows the progress of a background task
+   * in the status bar of the main frame.
+   *
+   * @return a task progress listener, never <code>null</code>.
+   */
+  private TaskProgressListener createTaskProgressListener()
+  {
+    return new TaskProgressListener()
+    {
+      @Override
+      public void setProgress( final int aPercentage )
+      {
+        ClientController.this.progressAccumulatingRunnable.add( Integer.valueOf( aPercentage ) );
+      }
+    };
+  }
+
   /**
    * Creates the tool context denoting the range of samples that should be
    * analysed by a tool.
@@ -1930,6 +2147,33 @@ AcquisitionDataListener, AnnotationListener, PlatformCallback
     }
   }
 
+  /**
+   * Asks the user whether the project of a previous session, that was not shut
+   * down properly, should be recovered, and if so, recovers it in the
+   * background.
+   */
+  private void recoverProject()
+  {
+    if ( !this.projectManager.hasRecoverableProject() )
+    {
+      return;
+    }
+
+    final int choice = JOptionPane.showConfirmDialog( getMainFrame(),
+        "The client was not shut down properly.\nDo you want to recover your unsaved work?", "Recover project?",
+        JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE );
+    if ( choice != JOptionPane.YES_OPTION )
+    {
+      this.projectManager.discardRecoverableProject();
+      return;
+    }
+
+    final Task<Void> recoverTask = this.projectManager.createRecoverProjectTask();
+
+    this.backgroundFileTask = this.taskExecutionService.execute( new BackgroundFileTask( recoverTask,
+        null /* aResource */, "Recovering the project failed!", "Project recovered ..." ) );
+  }
+
   /**
    * Dispatches a request to repaint the entire main frame.
    */
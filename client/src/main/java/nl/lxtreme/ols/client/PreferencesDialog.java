@@ -36,6 +36,7 @@ import org.osgi.service.cm.*;
 import nl.lxtreme.ols.client.osgi.*;
 import nl.lxtreme.ols.client.signaldisplay.model.SignalDiagramModel.SignalAlignment;
 import nl.lxtreme.ols.util.*;
+import nl.lxtreme.ols.util.io.*;
 import nl.lxtreme.ols.util.swing.*;
 import nl.lxtreme.ols.util.swing.StandardActionFactory.DialogStatus;
 import nl.lxtreme.ols.util.swing.StandardActionFactory.StatusAwareCloseableDialog;
@@ -134,6 +135,35 @@ public class PreferencesDialog extends JDialog implements StatusAwareCloseableDi
     }
   }
 
+  /**
+   * Provides a combobox renderer for CompressionLevel values.
+   */
+  static final class CompressionLevelRenderer extends EnumItemRenderer<CompressionLevel>
+  {
+    // CONSTANTS
+
+    private static final long serialVersionUID = 1L;
+
+    // METHODS
+
+    @Override
+    protected String getDisplayValue( final CompressionLevel aValue )
+    {
+      switch ( aValue )
+      {
+        case NONE:
+          return "None (fastest, largest)";
+        case FASTEST:
+          return "Fast";
+        case DEFAULT:
+          return "Normal";
+        case SMALLEST:
+          return "Best (slowest, smallest)";
+      }
+      return super.getDisplayValue( aValue );
+    }
+  }
+
   // CONSTANTS
 
   private static final long serialVersionUID = 1L;
@@ -152,6 +182,11 @@ public class PreferencesDialog extends JDialog implements StatusAwareCloseableDi
   private final JComboBox annotationAlignment;
   private final JComboBox signalAlignment;
   private final JComboBox colorScheme;
+  private final JComboBox projectCompression;
+  private final JCheckBox exportCursorRange;
+  private final JCheckBox vcdExportVectors;
+  private final JCheckBox csvExportEverySample;
+  private final JCheckBox csvExportTransitionsOnly;
 
   private volatile boolean dialogResult;
   private volatile ConfigurationAdmin configAdmin;
@@ -208,6 +243,22 @@ public class PreferencesDialog extends JDialog implements StatusAwareCloseableDi
 
     this.colorScheme = new JComboBox( new ColorSchemeModel() );
     this.colorScheme.setToolTipText( "What color scheme is to be used. Will be applied immediately." );
+
+    this.projectCompression = createProjectCompressionComboBox();
+    this.projectCompression.setToolTipText( "How much project files are compressed; less compression saves faster. Will be applied immediately." );
+
+    this.exportCursorRange = new JCheckBox();
+    this.exportCursorRange.setToolTipText( "Whether or not to export only the data between cursors A and B, if both are set. Will be applied immediately." );
+
+    this.vcdExportVectors = new JCheckBox();
+    this.vcdExportVectors.setToolTipText( "Whether or not to export each group of 8 channels as a single vector. Will be applied immediately." );
+
+    this.csvExportEverySample = new JCheckBox();
+    this.csvExportEverySample.setToolTipText( "Whether or not to export a row for every sample period, instead of for every sample. Will be applied immediately." );
+
+    this.csvExportTransitionsOnly = new JCheckBox();
+    this.csvExportTransitionsOnly.setToolTipText( "Whether or not to export a row only when one of the exported channels changes, instead of for every sample. Will be applied immediately." );
+
     // @formatter:on
 
     buildDialog();
@@ -285,6 +336,11 @@ public class PreferencesDialog extends JDialog implements StatusAwareCloseableDi
     this.signalAlignment.setSelectedItem( getSignalAlignment( properties.get( SIGNALVIEW_SIGNAL_ALIGNMENT ) ) );
     this.annotationAlignment.setSelectedItem( getSignalAlignment( properties.get( SIGNALVIEW_ANNOTATION_ALIGNMENT ) ) );
     this.colorScheme.setSelectedItem( String.valueOf( properties.get( COLOR_SCHEME ) ) );
+    this.projectCompression.setSelectedItem( CompressionLevel.parse( properties.get( PROJECT_COMPRESSION_LEVEL ) ) );
+    this.exportCursorRange.setSelected( getBoolean( properties.get( EXPORT_CURSOR_RANGE ) ) );
+    this.vcdExportVectors.setSelected( getBoolean( properties.get( VCD_EXPORT_VECTORS ) ) );
+    this.csvExportEverySample.setSelected( getBoolean( properties.get( CSV_EXPORT_EVERY_SAMPLE ) ) );
+    this.csvExportTransitionsOnly.setSelected( getBoolean( properties.get( CSV_EXPORT_TRANSITIONS_ONLY ) ) );
   }
 
   /**
@@ -345,6 +401,11 @@ public class PreferencesDialog extends JDialog implements StatusAwareCloseableDi
 
     properties.put( SIGNALVIEW_SIGNAL_ALIGNMENT, String.valueOf( this.signalAlignment.getSelectedItem() ) );
     properties.put( SIGNALVIEW_ANNOTATION_ALIGNMENT, String.valueOf( this.annotationAlignment.getSelectedItem() ) );
+    properties.put( PROJECT_COMPRESSION_LEVEL, String.valueOf( this.projectCompression.getSelectedItem() ) );
+    properties.put( EXPORT_CURSOR_RANGE, Boolean.toString( this.exportCursorRange.isSelected() ) );
+    properties.put( VCD_EXPORT_VECTORS, Boolean.toString( this.vcdExportVectors.isSelected() ) );
+    properties.put( CSV_EXPORT_EVERY_SAMPLE, Boolean.toString( this.csvExportEverySample.isSelected() ) );
+    properties.put( CSV_EXPORT_TRANSITIONS_ONLY, Boolean.toString( this.csvExportTransitionsOnly.isSelected() ) );
 
     String colorScheme = ( String )this.colorScheme.getSelectedItem();
     if ( colorScheme != null )
@@ -425,10 +486,48 @@ public class PreferencesDialog extends JDialog implements StatusAwareCloseableDi
     pane.add( createRightAlignedLabel( "Default scheme" ) );
     pane.add( this.colorScheme );
 
+    addSeparator( pane, "Project files" );
+
+    pane.add( createRightAlignedLabel( "Compression" ) );
+    pane.add( this.projectCompression );
+
+    addSeparator( pane, "Export" );
+
+    pane.add( createRightAlignedLabel( "Only between cursors?" ) );
+    pane.add( this.exportCursorRange );
+
+    addSeparator( pane, "Value Change Dump export" );
+
+    pane.add( createRightAlignedLabel( "Channel groups as vectors?" ) );
+    pane.add( this.vcdExportVectors );
+
+    addSeparator( pane, "CSV export" );
+
+    pane.add( createRightAlignedLabel( "Row for every sample period?" ) );
+    pane.add( this.csvExportEverySample );
+
+    pane.add( createRightAlignedLabel( "Only rows for changes?" ) );
+    pane.add( this.csvExportTransitionsOnly );
+
     makeEditorGrid( pane, 10, 10 );
     return pane;
   }
 
+  /**
+   * Creates the combobox for choosing the compression level of project files.
+   * <p>
+   * The combobox is a raw type in Java 6, but generic as of Java 7, hence the
+   * suppressed warnings.
+   * </p>
+   */
+  @SuppressWarnings( "unchecked" )
+  private static JComboBox createProjectCompressionComboBox()
+  {
+    final JComboBox result = new JComboBox( CompressionLevel.values() );
+    result.setRenderer( new CompressionLevelRenderer() );
+    return result;
+  }
+
   /**
    * Returns the boolean value for the given value representation.
    *
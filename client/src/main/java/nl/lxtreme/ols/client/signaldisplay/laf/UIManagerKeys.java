@@ -48,6 +48,16 @@ public interface UIManagerKeys
    * recapture.
    */
   String RETAIN_ANNOTATIONS_WITH_RECAPTURE = "ols.retain.annotations.boolean";
+  /** The trade-off between speed and size when saving projects. */
+  String PROJECT_COMPRESSION_LEVEL = "ols.project.compression.enum";
+  /** Whether or not VCD exports should dump channel groups as vectors. */
+  String VCD_EXPORT_VECTORS = "ols.export.vcd.vectors.boolean";
+  /** Whether or not CSV exports should write a row for every sample period. */
+  String CSV_EXPORT_EVERY_SAMPLE = "ols.export.csv.every.sample.boolean";
+  /** Whether or not CSV exports should only write a row when an exported channel changes. */
+  String CSV_EXPORT_TRANSITIONS_ONLY = "ols.export.csv.transitions.only.boolean";
+  /** Whether or not exports should be limited to the range between cursors A and B. */
+  String EXPORT_CURSOR_RANGE = "ols.export.cursor.range.boolean";
   /**
    * Disables the sloppy drawing of scopes (and group summary) when too many
    * transitions are shown.
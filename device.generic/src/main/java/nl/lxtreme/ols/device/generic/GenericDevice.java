@@ -66,6 +66,14 @@ public class GenericDevice implements Device
     {
       return new RawDataAcquisitionTask( this.deviceConfig, aProgressListener );
     }
+    else if ( GenericDeviceConfigDialog.DATA_FORMATS[2].equals( dataFormat ) )
+    {
+      return new VcdDataAcquisitionTask( this.deviceConfig, aProgressListener );
+    }
+    else if ( GenericDeviceConfigDialog.DATA_FORMATS[3].equals( dataFormat ) )
+    {
+      return new MappedRawDataAcquisitionTask( this.deviceConfig, aProgressListener );
+    }
 
     return new OlsDataAcquisitionTask( this.deviceConfig, aProgressListener );
   }
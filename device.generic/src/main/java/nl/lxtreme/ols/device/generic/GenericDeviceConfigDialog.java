@@ -45,7 +45,8 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
 {
   // CONSTANTS
 
-  public static final String[] DATA_FORMATS = { "Raw", "OLS data format" };
+  public static final String[] DATA_FORMATS = { "Raw", "OLS data format", "Value Change Dump (VCD)",
+      "Raw binary file" };
 
   private static final String DEFAULT_DATA_FORMAT = DATA_FORMATS[0];
 
@@ -61,6 +62,9 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
   private JTextField sampleDepth;
   private JTextField sampleWidth;
   private JTextField channelCount;
+  private JTextField channelOffset;
+  private JCheckBox bigEndian;
+  private JTextField signals;
 
   private boolean setupConfirmed;
 
@@ -101,6 +105,16 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
     return NumberUtils.safeParseInt( this.channelCount.getText(), 8 );
   }
 
+  /**
+   * Returns the bit offset of the first channel in each sample.
+   *
+   * @return the channel offset, >= 0.
+   */
+  public int getChannelOffset()
+  {
+    return NumberUtils.safeParseInt( this.channelOffset.getText(), 0 );
+  }
+
   /**
    * @return the selected data format, as string value.
    */
@@ -153,6 +167,17 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
     return Ols.NOT_AVAILABLE;
   }
 
+  /**
+   * Returns the names of the signals to import from a value change dump.
+   *
+   * @return a comma-separated list of signal names, never <code>null</code>,
+   *         but can be empty to import all signals.
+   */
+  public String getSignals()
+  {
+    return this.signals.getText();
+  }
+
   /**
    * Returns the width (in bytes) of each sample.
    *
@@ -163,6 +188,17 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
     return NumberUtils.safeParseInt( this.sampleWidth.getText(), 1 );
   }
 
+  /**
+   * Returns whether multi-byte samples are stored in big-endian order.
+   *
+   * @return <code>true</code> for big-endian samples, <code>false</code> for
+   *         little-endian samples.
+   */
+  public boolean isBigEndian()
+  {
+    return this.bigEndian.isSelected();
+  }
+
   /**
    * Returns the number of channels in each sample.
    *
@@ -186,6 +222,9 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
     this.timeDataPresent.setSelected( aSettings.getBoolean( "timeDataPresent", this.timeDataPresent.isSelected() ) );
     this.sampleRate.setText( aSettings.get( "sampleRate", this.sampleRate.getText() ) );
     this.sampleWidth.setText( aSettings.get( "sampleWidth", this.sampleWidth.getText() ) );
+    this.signals.setText( aSettings.get( "signals", this.signals.getText() ) );
+    this.channelOffset.setText( aSettings.get( "channelOffset", this.channelOffset.getText() ) );
+    this.bigEndian.setSelected( aSettings.getBoolean( "bigEndian", this.bigEndian.isSelected() ) );
   }
 
   /**
@@ -216,6 +255,9 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
     aSettings.getBoolean( "timeDataPresent", this.timeDataPresent.isSelected() );
     aSettings.put( "sampleRate", this.sampleRate.getText() );
     aSettings.put( "sampleWidth", this.sampleWidth.getText() );
+    aSettings.put( "signals", this.signals.getText() );
+    aSettings.put( "channelOffset", this.channelOffset.getText() );
+    aSettings.putBoolean( "bigEndian", this.bigEndian.isSelected() );
   }
 
   /**
@@ -227,12 +269,18 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
   final void updateComponents( final String aDataFormat )
   {
     boolean rawDataSelected = DATA_FORMATS[0].equals( aDataFormat );
+    boolean rawFileSelected = DATA_FORMATS[3].equals( aDataFormat );
     // Raw data: user should enter more data...
-    this.channelCount.setEnabled( rawDataSelected );
+    this.channelCount.setEnabled( rawDataSelected || rawFileSelected );
     this.sampleDepth.setEnabled( rawDataSelected );
-    this.timeDataPresent.setEnabled( rawDataSelected );
-    this.sampleRate.setEnabled( rawDataSelected && this.timeDataPresent.isSelected() );
-    this.sampleWidth.setEnabled( rawDataSelected );
+    this.timeDataPresent.setEnabled( rawDataSelected || rawFileSelected );
+    this.sampleRate.setEnabled( ( rawDataSelected || rawFileSelected ) && this.timeDataPresent.isSelected() );
+    this.sampleWidth.setEnabled( rawDataSelected || rawFileSelected );
+    // Raw files: the entire file is read, and the channels can be mapped...
+    this.channelOffset.setEnabled( rawFileSelected );
+    this.bigEndian.setEnabled( rawFileSelected );
+    // VCD data: user can select the signals to import...
+    this.signals.setEnabled( DATA_FORMATS[2].equals( aDataFormat ) );
   }
 
   /**
@@ -253,6 +301,18 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
       }
     } );
 
+    this.channelOffset = new JTextField( 10 );
+    this.channelOffset.setText( "0" );
+    this.channelOffset.setInputVerifier( JComponentInputVerifier.create( Integer.TYPE, "Invalid channel offset!" ) );
+    this.channelOffset.setToolTipText( "The bit in each sample that is mapped onto the first channel." );
+
+    this.bigEndian = new JCheckBox();
+    this.bigEndian.setToolTipText( "Whether or not multi-byte samples are stored most significant byte first." );
+
+    this.signals = new JTextField( 10 );
+    this.signals.setToolTipText( "The (comma-separated) names of the VCD signals to import, in channel order; "
+        + "leave empty to import all signals." );
+
     this.devicePath = new JTextField( 10 );
     this.devicePath.setToolTipText( "The path to the socket, file or pipe to read data from." );
 
@@ -319,6 +379,17 @@ public class GenericDeviceConfigDialog extends JDialog implements Configurable,
     result.add( createRightAlignedLabel( "Sample width" ) );
     result.add( this.sampleWidth );
 
+    result.add( createRightAlignedLabel( "Big endian?" ) );
+    result.add( this.bigEndian );
+
+    result.add( createRightAlignedLabel( "Channel offset" ) );
+    result.add( this.channelOffset );
+
+    SpringLayoutUtils.addSeparator( result, null );
+
+    result.add( createRightAlignedLabel( "Signals" ) );
+    result.add( this.signals );
+
     SpringLayoutUtils.makeEditorGrid( result, 6, 6 );
 
     return result;
@@ -0,0 +1,390 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.device.generic;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.*;
+import java.util.concurrent.*;
+
+import nl.lxtreme.ols.api.*;
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.devices.*;
+import nl.lxtreme.ols.util.*;
+
+
+/**
+ * Provides a generic acquisition task that reads an entire raw binary file by
+ * memory-mapping it.
+ * <p>
+ * The file is divided into chunks that are compacted in parallel, directly
+ * from the mapped buffers: only the samples in which the mapped channels
+ * change are retained, so no full-length sample array is ever allocated. This
+ * is done in two passes: the first pass counts the transitions of each chunk,
+ * after which the second pass writes the transitions of each chunk directly
+ * into the resulting arrays, at the offset given by the counts of the
+ * preceding chunks.
+ * </p>
+ */
+public final class MappedRawDataAcquisitionTask implements AcquisitionTask
+{
+  // INNER TYPES
+
+  /**
+   * Counts, or writes, the transitions of a single chunk of the file.
+   */
+  static final class ChunkTask implements Callable<Integer>
+  {
+    // VARIABLES
+
+    private final FileChannel channel;
+    private final long firstSample;
+    private final int sampleCount;
+    private final int sampleWidth;
+    private final ByteOrder byteOrder;
+    private final int shift;
+    private final int mask;
+    private final int[] values;
+    private final long[] timestamps;
+    private final int offset;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ChunkTask} instance.
+     *
+     * @param aValues
+     *          the array to write the transitions to, or <code>null</code> to
+     *          only count them;
+     * @param aTimestamps
+     *          the array to write the timestamps of the transitions to, or
+     *          <code>null</code> to only count them;
+     * @param aOffset
+     *          the index in the given arrays of the first transition of this
+     *          chunk.
+     */
+    ChunkTask( final FileChannel aChannel, final long aFirstSample, final int aSampleCount, final int aSampleWidth,
+        final ByteOrder aByteOrder, final int aShift, final int aMask, final int[] aValues,
+        final long[] aTimestamps, final int aOffset )
+    {
+      this.channel = aChannel;
+      this.firstSample = aFirstSample;
+      this.sampleCount = aSampleCount;
+      this.sampleWidth = aSampleWidth;
+      this.byteOrder = aByteOrder;
+      this.shift = aShift;
+      this.mask = aMask;
+      this.values = aValues;
+      this.timestamps = aTimestamps;
+      this.offset = aOffset;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer call() throws IOException
+    {
+      // Also map the last sample of the preceding chunk, to determine whether
+      // our first sample is a transition...
+      final long mapStart = Math.max( 0L, this.firstSample - 1L );
+      final long mapCount = ( this.firstSample + this.sampleCount ) - mapStart;
+
+      final ByteBuffer buffer = this.channel.map( MapMode.READ_ONLY, mapStart * this.sampleWidth, mapCount
+          * this.sampleWidth );
+      buffer.order( this.byteOrder );
+
+      int oldValue = 0;
+      if ( this.firstSample > 0L )
+      {
+        oldValue = ( readSample( buffer ) >>> this.shift ) & this.mask;
+      }
+
+      int idx = this.offset;
+      for ( int i = 0; i < this.sampleCount; i++ )
+      {
+        final int value = ( readSample( buffer ) >>> this.shift ) & this.mask;
+        if ( ( value != oldValue ) || ( ( i == 0 ) && ( this.firstSample == 0L ) ) )
+        {
+          if ( this.values != null )
+          {
+            this.values[idx] = value;
+            this.timestamps[idx] = this.firstSample + i;
+          }
+          idx++;
+          oldValue = value;
+        }
+
+        if ( ( ( i & 0xFFFF ) == 0 ) && Thread.currentThread().isInterrupted() )
+        {
+          throw new InterruptedIOException( "Reading raw data interrupted!" );
+        }
+      }
+
+      return Integer.valueOf( idx - this.offset );
+    }
+
+    /**
+     * Reads a single sample from the given buffer.
+     */
+    private int readSample( final ByteBuffer aBuffer )
+    {
+      switch ( this.sampleWidth )
+      {
+        case 1:
+          return aBuffer.get() & 0xFF;
+        case 2:
+          return aBuffer.getShort() & 0xFFFF;
+        case 4:
+          return aBuffer.getInt();
+        default:
+          int b0 = aBuffer.get() & 0xFF;
+          int b1 = aBuffer.get() & 0xFF;
+          int b2 = aBuffer.get() & 0xFF;
+          if ( this.byteOrder == ByteOrder.BIG_ENDIAN )
+          {
+            return ( b0 << 16 ) | ( b1 << 8 ) | b2;
+          }
+          return ( b2 << 16 ) | ( b1 << 8 ) | b0;
+      }
+    }
+  }
+
+  // CONSTANTS
+
+  /** The (maximum) number of bytes mapped and compacted at once. */
+  static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+  // VARIABLES
+
+  private final AcquisitionProgressListener progressListener;
+  private final GenericDeviceConfigDialog deviceConfig;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link MappedRawDataAcquisitionTask} instance.
+   *
+   * @param aDeviceConfig
+   *          the device configuration to use;
+   * @param aProgressListener
+   *          the progress listener to use.
+   */
+  public MappedRawDataAcquisitionTask( final GenericDeviceConfigDialog aDeviceConfig,
+      final AcquisitionProgressListener aProgressListener )
+  {
+    this.deviceConfig = aDeviceConfig;
+    this.progressListener = aProgressListener;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public AcquisitionResult call() throws IOException
+  {
+    this.progressListener.acquisitionInProgress( 0 );
+
+    final ByteOrder byteOrder = this.deviceConfig.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+    return read( new File( this.deviceConfig.getDevicePath() ), this.deviceConfig.getSampleWidth(), byteOrder,
+        this.deviceConfig.getChannelOffset(), this.deviceConfig.getChannelCount(),
+        this.deviceConfig.getSampleRate(), this.progressListener );
+  }
+
+  /**
+   * Reads all samples of the given file.
+   *
+   * @param aFile
+   *          the file to read, cannot be <code>null</code>;
+   * @param aSampleWidth
+   *          the width of a single sample, in bytes, 1..4;
+   * @param aByteOrder
+   *          the byte order of the samples, cannot be <code>null</code>;
+   * @param aChannelOffset
+   *          the bit offset of the first channel in each sample, >= 0;
+   * @param aChannelCount
+   *          the number of channels to take from each sample, 1..32;
+   * @param aRate
+   *          the sample rate, in Hertz, or {@link Ols#NOT_AVAILABLE};
+   * @param aProgressListener
+   *          the progress listener to report to, can be <code>null</code>.
+   * @return the acquisition result, never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  static AcquisitionResult read( final File aFile, final int aSampleWidth, final ByteOrder aByteOrder,
+      final int aChannelOffset, final int aChannelCount, final int aRate,
+      final AcquisitionProgressListener aProgressListener ) throws IOException
+  {
+    return read( aFile, aSampleWidth, aByteOrder, aChannelOffset, aChannelCount, aRate, aProgressListener,
+        CHUNK_SIZE );
+  }
+
+  /**
+   * Reads all samples of the given file, in chunks of the given size.
+   *
+   * @param aChunkSize
+   *          the (maximum) number of bytes mapped and compacted at once, >=
+   *          the given sample width.
+   * @see #read(File, int, ByteOrder, int, int, int, AcquisitionProgressListener)
+   */
+  static AcquisitionResult read( final File aFile, final int aSampleWidth, final ByteOrder aByteOrder,
+      final int aChannelOffset, final int aChannelCount, final int aRate,
+      final AcquisitionProgressListener aProgressListener, final int aChunkSize ) throws IOException
+  {
+    if ( ( aSampleWidth < 1 ) || ( aSampleWidth > 4 ) )
+    {
+      throw new IOException( "Sample width should be between 1 and 4 bytes!" );
+    }
+    if ( ( aChannelCount < 1 ) || ( ( aChannelOffset + aChannelCount ) > ( 8 * aSampleWidth ) ) )
+    {
+      throw new IOException( "Channels do not fit in a sample of " + aSampleWidth + " bytes!" );
+    }
+
+    final int mask = NumberUtils.getBitMask( aChannelCount );
+    final int threads = Runtime.getRuntime().availableProcessors();
+
+    final RandomAccessFile raf = new RandomAccessFile( aFile, "r" );
+    final ExecutorService executor = Executors.newFixedThreadPool( threads );
+    try
+    {
+      final FileChannel channel = raf.getChannel();
+
+      final long sampleCount = channel.size() / aSampleWidth;
+      if ( sampleCount == 0L )
+      {
+        throw new IOException( "No samples in raw data file!" );
+      }
+
+      final int samplesPerChunk = Math.max( 1, aChunkSize / aSampleWidth );
+      final int chunkCount = ( int )( ( ( sampleCount + samplesPerChunk ) - 1L ) / samplesPerChunk );
+
+      // First pass: count the transitions of each chunk...
+      final List<ChunkTask> counters = new ArrayList<ChunkTask>( chunkCount );
+      for ( int i = 0; i < chunkCount; i++ )
+      {
+        final long first = ( long )i * samplesPerChunk;
+        final int count = ( int )Math.min( samplesPerChunk, sampleCount - first );
+        counters.add( new ChunkTask( channel, first, count, aSampleWidth, aByteOrder, aChannelOffset, mask, null,
+            null, 0 ) );
+      }
+      final int[] counts = runAll( executor, counters, 2 * threads, aProgressListener, 0 );
+
+      long total = 0L;
+      final int[] offsets = new int[chunkCount];
+      for ( int i = 0; i < chunkCount; i++ )
+      {
+        offsets[i] = ( int )total;
+        total += counts[i];
+        if ( total > ( Integer.MAX_VALUE - 8 ) )
+        {
+          throw new IOException( "Too many transitions in raw data file!" );
+        }
+      }
+
+      // Second pass: write the transitions of each chunk at its own offset...
+      final int[] values = new int[( int )total];
+      final long[] timestamps = new long[( int )total];
+
+      final List<ChunkTask> writers = new ArrayList<ChunkTask>( chunkCount );
+      for ( int i = 0; i < chunkCount; i++ )
+      {
+        final ChunkTask counter = counters.get( i );
+        writers.add( new ChunkTask( channel, counter.firstSample, counter.sampleCount, aSampleWidth, aByteOrder,
+            aChannelOffset, mask, values, timestamps, offsets[i] ) );
+      }
+      runAll( executor, writers, 2 * threads, aProgressListener, 50 );
+
+      return new CapturedData( values, timestamps, Ols.NOT_AVAILABLE, aRate, aChannelCount, mask, sampleCount );
+    }
+    finally
+    {
+      executor.shutdownNow();
+      HostUtils.closeResource( raf );
+    }
+  }
+
+  /**
+   * Waits for the given chunk to be processed.
+   */
+  private static Integer get( final Future<Integer> aFuture ) throws IOException
+  {
+    try
+    {
+      return aFuture.get();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Reading raw data interrupted!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      final Throwable cause = exception.getCause();
+      if ( cause instanceof IOException )
+      {
+        throw ( IOException )cause;
+      }
+      throw new IOException( "Reading raw data failed!", cause );
+    }
+  }
+
+  /**
+   * Runs all given chunk tasks, keeping at most the given number of them
+   * submitted at once, so that only a bounded number of chunks is mapped at
+   * any time.
+   *
+   * @return the results of all tasks, in order.
+   */
+  private static int[] runAll( final ExecutorService aExecutor, final List<ChunkTask> aTasks, final int aMaxPending,
+      final AcquisitionProgressListener aProgressListener, final int aProgressOffset ) throws IOException
+  {
+    final int[] result = new int[aTasks.size()];
+    final LinkedList<Future<Integer>> pending = new LinkedList<Future<Integer>>();
+
+    int next = 0;
+    for ( int i = 0; i < result.length; i++ )
+    {
+      while ( ( next < result.length ) && ( ( next - i ) < aMaxPending ) )
+      {
+        pending.addLast( aExecutor.submit( aTasks.get( next++ ) ) );
+      }
+
+      result[i] = get( pending.removeFirst() ).intValue();
+
+      if ( aProgressListener != null )
+      {
+        aProgressListener.acquisitionInProgress( aProgressOffset + ( int )( ( ( i + 1 ) * 50.0 ) / result.length ) );
+      }
+    }
+
+    return result;
+  }
+}
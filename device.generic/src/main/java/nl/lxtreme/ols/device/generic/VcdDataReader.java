@@ -0,0 +1,736 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.device.generic;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.*;
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.util.*;
+
+
+/**
+ * Provides a streaming reader for "value change dump" files, as specified in
+ * IEEE Std 1364-2001, as written by simulators and GTKWave.
+ * <p>
+ * The selected scalar and vector signals are mapped onto consecutive channel
+ * bits. The dump is tokenized in a single pass directly from a byte buffer;
+ * only the samples in which the selected signals change are kept, so the
+ * memory used is bounded by the number of changes, not by the size of the
+ * dump.
+ * </p>
+ */
+public final class VcdDataReader
+{
+  // INNER TYPES
+
+  /**
+   * Provides a signal as declared in the dump.
+   */
+  static final class Signal
+  {
+    // VARIABLES
+
+    final String id;
+    final String reference;
+    final String fullName;
+    final int width;
+
+    int firstChannel = -1;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Signal} instance.
+     */
+    Signal( final String aId, final String aReference, final String aFullName, final int aWidth )
+    {
+      this.id = aId;
+      this.reference = aReference;
+      this.fullName = aFullName;
+      this.width = aWidth;
+    }
+
+    // METHODS
+
+    /**
+     * Returns whether this signal matches the given name.
+     */
+    boolean matches( final String aName )
+    {
+      return aName.equals( this.fullName ) || aName.equals( this.reference ) || aName.equals( this.id );
+    }
+  }
+
+  // CONSTANTS
+
+  /** The maximum number of channels that can be mapped onto. */
+  static final int MAX_CHANNELS = 32;
+  /** The maximum supported sample rate, in Hz. */
+  static final long MAX_SAMPLE_RATE = 1000000000L;
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final int MAX_TOKEN_LENGTH = 1024 * 1024;
+  private static final int INITIAL_CAPACITY = 4096;
+  private static final long FEMTOSECONDS_PER_SECOND = 1000000000000000L;
+
+  // VARIABLES
+
+  private final InputStream input;
+  private final long inputSize;
+  private final List<String> selection;
+
+  private final byte[] buffer;
+  private int position;
+  private int limit;
+  private long consumed;
+
+  private byte[] token;
+  private int tokenLength;
+  private byte[] vectorBits;
+
+  private final List<Signal> signals;
+  // Sorted lookup table of the identifier keys of all selected signals...
+  private long[] selectedKeys;
+  private Signal[] selectedSignals;
+  private Map<String, Signal> selectedLongIds;
+
+  private int[] values;
+  private long[] timestamps;
+  private int size;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link VcdDataReader} instance.
+   *
+   * @param aInput
+   *          the input stream to read the dump from, cannot be
+   *          <code>null</code>;
+   * @param aInputSize
+   *          the size of the input, in bytes, used for progress reporting, or
+   *          -1 if unknown;
+   * @param aSelection
+   *          the names of the signals to map onto channels, in channel order.
+   *          A name is either the full (dotted) name of a signal, its
+   *          reference, or its identifier code. If empty, all signals are
+   *          mapped until all channels are used.
+   */
+  public VcdDataReader( final InputStream aInput, final long aInputSize, final List<String> aSelection )
+  {
+    if ( aInput == null )
+    {
+      throw new IllegalArgumentException( "Input cannot be null!" );
+    }
+
+    this.input = aInput;
+    this.inputSize = aInputSize;
+    this.selection = ( aSelection == null ) ? Collections.<String> emptyList() : aSelection;
+
+    this.buffer = new byte[BUFFER_SIZE];
+    this.token = new byte[256];
+    this.vectorBits = new byte[256];
+    this.signals = new ArrayList<Signal>();
+  }
+
+  // METHODS
+
+  /**
+   * Parses a comma- or whitespace-separated list of signal names.
+   *
+   * @param aText
+   *          the text to parse, can be <code>null</code>.
+   * @return a list of signal names, never <code>null</code>.
+   */
+  public static List<String> parseSelection( final String aText )
+  {
+    final List<String> result = new ArrayList<String>();
+    if ( aText != null )
+    {
+      for ( String name : aText.split( "[,\\s]+" ) )
+      {
+        if ( !name.isEmpty() )
+        {
+          result.add( name );
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the key of the given identifier code.
+   *
+   * @return the (positive) key, or -1 if the identifier is too long to be
+   *         represented as key.
+   */
+  static long getKey( final byte[] aBytes, final int aOffset, final int aLength )
+  {
+    if ( ( aLength < 1 ) || ( aLength > 9 ) )
+    {
+      return -1L;
+    }
+    // Identifiers consist of printable ASCII characters, 94 in total...
+    long key = 0L;
+    for ( int i = aOffset, end = aOffset + aLength; i < end; i++ )
+    {
+      key = ( key * 95L ) + ( ( aBytes[i] & 0xFF ) - 32 );
+    }
+    return key;
+  }
+
+  /**
+   * Reads the entire dump.
+   *
+   * @param aProgressListener
+   *          the progress listener to report progress to, can be
+   *          <code>null</code>.
+   * @return the acquisition result with all changes of the selected signals,
+   *         never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems, or in case the dump is invalid.
+   */
+  public AcquisitionResult read( final AcquisitionProgressListener aProgressListener ) throws IOException
+  {
+    final long timescale = readHeader();
+    final int channels = mapSignals();
+
+    // Determine the sample rate and how to convert times to samples; the
+    // timescale is always a power of ten (times 1, 10 or 100)...
+    final long rate;
+    final long multiplier;
+    final long divisor;
+    if ( timescale > FEMTOSECONDS_PER_SECOND )
+    {
+      rate = 1L;
+      multiplier = timescale / FEMTOSECONDS_PER_SECOND;
+      divisor = 1L;
+    }
+    else
+    {
+      final long unitsPerSecond = FEMTOSECONDS_PER_SECOND / timescale;
+      rate = Math.min( MAX_SAMPLE_RATE, unitsPerSecond );
+      multiplier = 1L;
+      divisor = unitsPerSecond / rate;
+    }
+
+    this.values = new int[INITIAL_CAPACITY];
+    this.timestamps = new long[INITIAL_CAPACITY];
+    this.size = 0;
+
+    int value = 0;
+    int lastValue = 0;
+    long time = Long.MIN_VALUE;
+    int lastProgress = -1;
+
+    while ( nextToken() )
+    {
+      final byte first = this.token[0];
+      if ( first == '#' )
+      {
+        final long newTime = parseLong( 1 );
+        if ( ( time != Long.MIN_VALUE ) && ( ( this.size == 0 ) || ( value != lastValue ) ) )
+        {
+          addSample( ( time * multiplier ) / divisor, value );
+          lastValue = value;
+        }
+        time = newTime;
+
+        final int progress = getProgress();
+        if ( ( aProgressListener != null ) && ( progress != lastProgress ) )
+        {
+          aProgressListener.acquisitionInProgress( progress );
+          lastProgress = progress;
+        }
+      }
+      else if ( ( first == '0' ) || ( first == '1' ) || isUnknown( first ) )
+      {
+        final Signal signal = lookup( this.token, 1, this.tokenLength - 1 );
+        if ( signal != null )
+        {
+          value = setBit( value, signal.firstChannel, first == '1' );
+        }
+      }
+      else if ( ( first == 'b' ) || ( first == 'B' ) )
+      {
+        // Keep the value bits, as the next token is the identifier...
+        final int bitsLength = this.tokenLength - 1;
+        if ( bitsLength > this.vectorBits.length )
+        {
+          this.vectorBits = new byte[this.token.length];
+        }
+        final byte[] bits = this.vectorBits;
+        System.arraycopy( this.token, 1, bits, 0, bitsLength );
+        if ( !nextToken() )
+        {
+          break;
+        }
+        final Signal signal = lookup( this.token, 0, this.tokenLength );
+        if ( signal != null )
+        {
+          for ( int i = 0; i < signal.width; i++ )
+          {
+            final boolean set = ( i < bitsLength ) && ( bits[bitsLength - 1 - i] == '1' );
+            value = setBit( value, signal.firstChannel + i, set );
+          }
+        }
+      }
+      else if ( ( first == 'r' ) || ( first == 'R' ) || ( first == 's' ) || ( first == 'S' ) )
+      {
+        // Real and string values are not supported; skip the identifier...
+        nextToken();
+      }
+      else if ( isKeyword( "$comment" ) )
+      {
+        skipUntilEnd();
+      }
+      // All other keywords, such as $dumpvars and $end, are ignored...
+    }
+
+    if ( time != Long.MIN_VALUE )
+    {
+      if ( ( this.size == 0 ) || ( value != lastValue ) )
+      {
+        addSample( ( time * multiplier ) / divisor, value );
+      }
+    }
+    else
+    {
+      throw new IOException( "Value change dump contains no data!" );
+    }
+
+    if ( aProgressListener != null )
+    {
+      aProgressListener.acquisitionInProgress( 100 );
+    }
+
+    final int[] resultValues = Arrays.copyOf( this.values, this.size );
+    final long[] resultTimestamps = Arrays.copyOf( this.timestamps, this.size );
+    final long absLength = resultTimestamps[this.size - 1] + 1L;
+
+    return new CapturedData( resultValues, resultTimestamps, Ols.NOT_AVAILABLE, ( int )rate, channels,
+        NumberUtils.getBitMask( channels ), absLength );
+  }
+
+  /**
+   * Returns whether the given value character denotes an unknown value.
+   */
+  private static boolean isUnknown( final byte aValue )
+  {
+    return ( aValue == 'x' ) || ( aValue == 'X' ) || ( aValue == 'z' ) || ( aValue == 'Z' );
+  }
+
+  /**
+   * Sets or clears the given bit in the given value.
+   */
+  private static int setBit( final int aValue, final int aBit, final boolean aSet )
+  {
+    return aSet ? ( aValue | ( 1 << aBit ) ) : ( aValue & ~( 1 << aBit ) );
+  }
+
+  /**
+   * Adds a sample, or replaces the last sample in case it has the same
+   * timestamp.
+   */
+  private void addSample( final long aTimestamp, final int aValue )
+  {
+    if ( ( this.size > 0 ) && ( this.timestamps[this.size - 1] == aTimestamp ) )
+    {
+      this.values[this.size - 1] = aValue;
+      return;
+    }
+
+    if ( this.size == this.values.length )
+    {
+      final int newCapacity = this.size + ( this.size >> 1 );
+      this.values = Arrays.copyOf( this.values, newCapacity );
+      this.timestamps = Arrays.copyOf( this.timestamps, newCapacity );
+    }
+    this.values[this.size] = aValue;
+    this.timestamps[this.size] = aTimestamp;
+    this.size++;
+  }
+
+  /**
+   * Refills our buffer.
+   *
+   * @return <code>false</code> if the end of the input is reached,
+   *         <code>true</code> otherwise.
+   */
+  private boolean fill() throws IOException
+  {
+    if ( Thread.currentThread().isInterrupted() )
+    {
+      throw new InterruptedIOException( "Reading value change dump interrupted!" );
+    }
+
+    this.consumed += this.limit;
+    this.position = 0;
+    this.limit = Math.max( 0, this.input.read( this.buffer ) );
+    return this.limit > 0;
+  }
+
+  /**
+   * Returns the progress, in percent.
+   */
+  private int getProgress()
+  {
+    if ( this.inputSize <= 0L )
+    {
+      return 0;
+    }
+    return ( int )( ( ( this.consumed + this.position ) * 100L ) / this.inputSize );
+  }
+
+  /**
+   * Returns whether the current token equals the given keyword.
+   */
+  private boolean isKeyword( final String aKeyword )
+  {
+    if ( this.tokenLength != aKeyword.length() )
+    {
+      return false;
+    }
+    for ( int i = 0; i < this.tokenLength; i++ )
+    {
+      if ( this.token[i] != aKeyword.charAt( i ) )
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks up the selected signal with the given identifier code.
+   *
+   * @return the selected signal, or <code>null</code> if the signal is not
+   *         selected.
+   */
+  private Signal lookup( final byte[] aBytes, final int aOffset, final int aLength )
+  {
+    final long key = getKey( aBytes, aOffset, aLength );
+    if ( key < 0L )
+    {
+      return this.selectedLongIds.get( new String( aBytes, aOffset, aLength ) );
+    }
+    final int idx = Arrays.binarySearch( this.selectedKeys, key );
+    return ( idx < 0 ) ? null : this.selectedSignals[idx];
+  }
+
+  /**
+   * Maps the selected signals onto channels.
+   *
+   * @return the number of used channels, > 0.
+   */
+  private int mapSignals() throws IOException
+  {
+    final List<Signal> selected = new ArrayList<Signal>();
+    if ( this.selection.isEmpty() )
+    {
+      selected.addAll( this.signals );
+    }
+    else
+    {
+      for ( String name : this.selection )
+      {
+        Signal match = null;
+        for ( Signal signal : this.signals )
+        {
+          if ( signal.matches( name ) )
+          {
+            match = signal;
+            break;
+          }
+        }
+        if ( match == null )
+        {
+          throw new IOException( "No such signal in value change dump: " + name );
+        }
+        selected.add( match );
+      }
+    }
+
+    final Map<String, Signal> byId = new LinkedHashMap<String, Signal>();
+    int channel = 0;
+    for ( Signal signal : selected )
+    {
+      if ( byId.containsKey( signal.id ) )
+      {
+        // Aliases of the same signal share their channels...
+        continue;
+      }
+      if ( ( channel + signal.width ) > MAX_CHANNELS )
+      {
+        if ( this.selection.isEmpty() )
+        {
+          continue;
+        }
+        throw new IOException( "Selected signals need more than " + MAX_CHANNELS + " channels!" );
+      }
+      signal.firstChannel = channel;
+      channel += signal.width;
+      byId.put( signal.id, signal );
+    }
+
+    if ( channel == 0 )
+    {
+      throw new IOException( "No signals to import in value change dump!" );
+    }
+
+    final TreeMap<Long, Signal> byKey = new TreeMap<Long, Signal>();
+    this.selectedLongIds = new HashMap<String, Signal>();
+    for ( Signal signal : byId.values() )
+    {
+      final byte[] id = signal.id.getBytes( "US-ASCII" );
+      final long key = getKey( id, 0, id.length );
+      if ( key < 0L )
+      {
+        this.selectedLongIds.put( signal.id, signal );
+      }
+      else
+      {
+        byKey.put( Long.valueOf( key ), signal );
+      }
+    }
+
+    this.selectedKeys = new long[byKey.size()];
+    this.selectedSignals = new Signal[byKey.size()];
+    int i = 0;
+    for ( Map.Entry<Long, Signal> entry : byKey.entrySet() )
+    {
+      this.selectedKeys[i] = entry.getKey().longValue();
+      this.selectedSignals[i] = entry.getValue();
+      i++;
+    }
+
+    return channel;
+  }
+
+  /**
+   * Reads the next whitespace-delimited token into our token buffer.
+   *
+   * @return <code>false</code> if the end of the input is reached,
+   *         <code>true</code> otherwise.
+   */
+  private boolean nextToken() throws IOException
+  {
+    // Skip whitespace...
+    for ( ;; )
+    {
+      if ( ( this.position == this.limit ) && !fill() )
+      {
+        return false;
+      }
+      if ( this.buffer[this.position] > ' ' )
+      {
+        break;
+      }
+      this.position++;
+    }
+
+    this.tokenLength = 0;
+    for ( ;; )
+    {
+      if ( ( this.position == this.limit ) && !fill() )
+      {
+        return true;
+      }
+      final byte b = this.buffer[this.position];
+      if ( b <= ' ' )
+      {
+        return true;
+      }
+      if ( this.tokenLength == this.token.length )
+      {
+        if ( this.tokenLength >= MAX_TOKEN_LENGTH )
+        {
+          throw new IOException( "Invalid value change dump: token too long!" );
+        }
+        this.token = Arrays.copyOf( this.token, this.tokenLength * 2 );
+      }
+      this.token[this.tokenLength++] = b;
+      this.position++;
+    }
+  }
+
+  /**
+   * Parses the current token as long value, starting at the given offset.
+   */
+  private long parseLong( final int aOffset ) throws IOException
+  {
+    if ( aOffset >= this.tokenLength )
+    {
+      throw new IOException( "Invalid value change dump: missing number!" );
+    }
+    long result = 0L;
+    for ( int i = aOffset; i < this.tokenLength; i++ )
+    {
+      final int digit = this.token[i] - '0';
+      if ( ( digit < 0 ) || ( digit > 9 ) )
+      {
+        throw new IOException( "Invalid value change dump: invalid number!" );
+      }
+      result = ( result * 10L ) + digit;
+    }
+    return result;
+  }
+
+  /**
+   * Reads the header (declarations) of the dump, up to and including the
+   * <tt>$enddefinitions</tt> keyword.
+   *
+   * @return the timescale, in femtoseconds.
+   */
+  private long readHeader() throws IOException
+  {
+    final LinkedList<String> scopes = new LinkedList<String>();
+    long timescale = 1000000L; // 1 ns, a common default...
+
+    for ( ;; )
+    {
+      if ( !nextToken() )
+      {
+        throw new IOException( "Invalid value change dump: no $enddefinitions found!" );
+      }
+
+      if ( isKeyword( "$enddefinitions" ) )
+      {
+        skipUntilEnd();
+        return timescale;
+      }
+      else if ( isKeyword( "$timescale" ) )
+      {
+        timescale = parseTimescale( readUntilEnd() );
+      }
+      else if ( isKeyword( "$scope" ) )
+      {
+        final List<String> args = readUntilEnd();
+        scopes.addLast( args.isEmpty() ? "" : args.get( args.size() - 1 ) );
+      }
+      else if ( isKeyword( "$upscope" ) )
+      {
+        skipUntilEnd();
+        if ( !scopes.isEmpty() )
+        {
+          scopes.removeLast();
+        }
+      }
+      else if ( isKeyword( "$var" ) )
+      {
+        final List<String> args = readUntilEnd();
+        if ( args.size() < 4 )
+        {
+          throw new IOException( "Invalid value change dump: invalid $var declaration!" );
+        }
+        final int width = NumberUtils.safeParseInt( args.get( 1 ), 1 );
+        final String reference = args.get( 3 );
+
+        final StringBuilder fullName = new StringBuilder();
+        for ( String scope : scopes )
+        {
+          fullName.append( scope ).append( '.' );
+        }
+        fullName.append( reference );
+
+        if ( !"real".equals( args.get( 0 ) ) && ( width > 0 ) )
+        {
+          this.signals.add( new Signal( args.get( 2 ), reference, fullName.toString(), width ) );
+        }
+      }
+      else if ( ( this.tokenLength > 0 ) && ( this.token[0] == '$' ) )
+      {
+        // $comment, $date, $version and the like...
+        skipUntilEnd();
+      }
+    }
+  }
+
+  /**
+   * Parses the given timescale declaration, such as "1 ns" or "10ps".
+   *
+   * @return the timescale in femtoseconds.
+   */
+  private long parseTimescale( final List<String> aArgs ) throws IOException
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( String arg : aArgs )
+    {
+      sb.append( arg );
+    }
+    final String text = sb.toString().trim();
+
+    int idx = 0;
+    while ( ( idx < text.length() ) && Character.isDigit( text.charAt( idx ) ) )
+    {
+      idx++;
+    }
+
+    final long magnitude = NumberUtils.safeParseInt( text.substring( 0, idx ), -1 );
+    final String unit = text.substring( idx );
+
+    final String[] units = { "fs", "ps", "ns", "us", "ms", "s" };
+    long factor = 1L;
+    for ( String u : units )
+    {
+      if ( u.equals( unit ) )
+      {
+        if ( ( magnitude != 1L ) && ( magnitude != 10L ) && ( magnitude != 100L ) )
+        {
+          break;
+        }
+        return magnitude * factor;
+      }
+      factor *= 1000L;
+    }
+
+    throw new IOException( "Invalid value change dump: unsupported timescale: " + text );
+  }
+
+  /**
+   * Reads all tokens up to the next <tt>$end</tt> keyword.
+   *
+   * @return the read tokens, excluding the <tt>$end</tt> keyword.
+   */
+  private List<String> readUntilEnd() throws IOException
+  {
+    final List<String> result = new ArrayList<String>();
+    while ( nextToken() && !isKeyword( "$end" ) )
+    {
+      result.add( new String( this.token, 0, this.tokenLength, "US-ASCII" ) );
+    }
+    return result;
+  }
+
+  /**
+   * Skips all tokens up to and including the next <tt>$end</tt> keyword.
+   */
+  private void skipUntilEnd() throws IOException
+  {
+    while ( nextToken() && !isKeyword( "$end" ) )
+    {
+      // Skip...
+    }
+  }
+}
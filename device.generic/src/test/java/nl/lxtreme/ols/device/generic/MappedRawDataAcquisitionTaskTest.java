@@ -0,0 +1,157 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.device.generic;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.*;
+import nl.lxtreme.ols.api.acquisition.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link MappedRawDataAcquisitionTask}.
+ */
+public class MappedRawDataAcquisitionTaskTest
+{
+  // METHODS
+
+  /**
+   * Tests that single-byte samples are compacted to their transitions.
+   */
+  @Test
+  public void testReadByteSamplesOk() throws IOException
+  {
+    final File file = createFile( new byte[] { 1, 1, 1, 2, 2, 3, 3, 3 } );
+
+    final AcquisitionResult result = MappedRawDataAcquisitionTask.read( file, 1, ByteOrder.LITTLE_ENDIAN, 0, 8,
+        1000000, null );
+
+    assertEquals( 8, result.getChannels() );
+    assertEquals( 1000000, result.getSampleRate() );
+    assertArrayEquals( new int[] { 1, 2, 3, 3 }, result.getValues() );
+    assertArrayEquals( new long[] { 0L, 3L, 5L, 8L }, result.getTimestamps() );
+    assertEquals( 8L, result.getAbsoluteLength() );
+  }
+
+  /**
+   * Tests that big-endian samples are mapped onto the channels using the
+   * channel offset.
+   */
+  @Test
+  public void testReadBigEndianSamplesWithOffsetOk() throws IOException
+  {
+    // Only bits 8..11 are of interest; changes in the other bits are ignored...
+    final File file = createFile( new byte[] { 0x05, 0x00, 0x05, ( byte )0xFF, 0x0A, 0x00, 0x0A, 0x01 } );
+
+    final AcquisitionResult result = MappedRawDataAcquisitionTask.read( file, 2, ByteOrder.BIG_ENDIAN, 8, 4,
+        Ols.NOT_AVAILABLE, null );
+
+    assertEquals( 4, result.getChannels() );
+    assertEquals( 0x0F, result.getEnabledChannels() );
+    assertArrayEquals( new int[] { 0x05, 0x0A, 0x0A }, result.getValues() );
+    assertArrayEquals( new long[] { 0L, 2L, 4L }, result.getTimestamps() );
+  }
+
+  /**
+   * Tests that reading a file in many small chunks, with transitions on, right
+   * before and right after the chunk boundaries, yields the same transitions as
+   * compacting all samples at once.
+   */
+  @Test
+  public void testReadInManyChunksOk() throws IOException
+  {
+    final byte[] samples = new byte[1000];
+    final Random random = new Random( 1234L );
+    for ( int i = 1; i < samples.length; i++ )
+    {
+      // Runs of 1..4 equal samples...
+      samples[i] = ( random.nextInt( 4 ) == 0 ) ? ( byte )random.nextInt( 4 ) : samples[i - 1];
+    }
+
+    final List<Integer> expectedValues = new ArrayList<Integer>();
+    final List<Long> expectedTimestamps = new ArrayList<Long>();
+    for ( int i = 0; i < samples.length; i++ )
+    {
+      if ( ( i == 0 ) || ( samples[i] != samples[i - 1] ) )
+      {
+        expectedValues.add( Integer.valueOf( samples[i] ) );
+        expectedTimestamps.add( Long.valueOf( i ) );
+      }
+    }
+
+    final File file = createFile( samples );
+    final int[] chunkSizes = { 1, 2, 7, 64, samples.length };
+    for ( int chunkSize : chunkSizes )
+    {
+      final AcquisitionResult result = MappedRawDataAcquisitionTask.read( file, 1, ByteOrder.LITTLE_ENDIAN, 0, 8,
+          Ols.NOT_AVAILABLE, null, chunkSize );
+
+      final int[] values = result.getValues();
+      final long[] timestamps = result.getTimestamps();
+      // The last sample is repeated at the absolute length of the capture...
+      assertEquals( "chunk size " + chunkSize, expectedValues.size() + 1, values.length );
+      for ( int i = 0; i < expectedValues.size(); i++ )
+      {
+        assertEquals( "chunk size " + chunkSize, expectedValues.get( i ).intValue(), values[i] );
+        assertEquals( "chunk size " + chunkSize, expectedTimestamps.get( i ).longValue(), timestamps[i] );
+      }
+      assertEquals( samples.length, timestamps[timestamps.length - 1] );
+    }
+  }
+
+  /**
+   * Tests that channels not fitting in a sample are refused.
+   */
+  @Test( expected = IOException.class )
+  public void testReadTooManyChannelsFail() throws IOException
+  {
+    final File file = createFile( new byte[] { 0, 1 } );
+
+    MappedRawDataAcquisitionTask.read( file, 1, ByteOrder.LITTLE_ENDIAN, 4, 8, Ols.NOT_AVAILABLE, null );
+  }
+
+  /**
+   * Creates a temporary file with the given contents.
+   */
+  private File createFile( final byte[] aContents ) throws IOException
+  {
+    final File result = File.createTempFile( "raw", ".bin" );
+    result.deleteOnExit();
+
+    final FileOutputStream fos = new FileOutputStream( result );
+    try
+    {
+      fos.write( aContents );
+    }
+    finally
+    {
+      fos.close();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.device.generic;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link VcdDataReader}.
+ */
+public class VcdDataReaderTest
+{
+  // CONSTANTS
+
+  private static final String DUMP = "$date today $end\n" //
+      + "$timescale 1ps $end\n" //
+      + "$scope module top $end\n" //
+      + "$var wire 1 ! clk $end\n" //
+      + "$scope module cpu $end\n" //
+      + "$var wire 4 \"# data [3:0] $end\n" //
+      + "$var real 64 $ temp $end\n" //
+      + "$upscope $end\n" //
+      + "$upscope $end\n" //
+      + "$enddefinitions $end\n" //
+      + "#0\n" //
+      + "$dumpvars\n0!\nbx \"#\nr1.5 $\n$end\n" //
+      + "#1000\n1!\nb101 \"#\n" //
+      + "#1500\n$comment ignored 1! $end\n" //
+      + "#2000\n0!\n" //
+      + "#2400\n1!\n" //
+      + "#2600\n0!\n" //
+      + "#3000000000000\nb1111 \"#\n";
+
+  // METHODS
+
+  /**
+   * Tests that all signals are imported when no selection is made.
+   */
+  @Test
+  public void testReadAllSignalsOk() throws IOException
+  {
+    final AcquisitionResult result = read( "" );
+
+    assertEquals( 5, result.getChannels() );
+    assertEquals( 0x1F, result.getEnabledChannels() );
+    // 1 ps timescale is converted to 1 GHz...
+    assertEquals( 1000000000, result.getSampleRate() );
+
+    // The changes at 2.4 and 2.6 ns fall within the same sample; the last
+    // sample denotes the end of the capture...
+    assertArrayEquals( new int[] { 0x00, 0x0B, 0x0A, 0x1E, 0x1E }, result.getValues() );
+    assertArrayEquals( new long[] { 0L, 1L, 2L, 3000000000L, 3000000001L }, result.getTimestamps() );
+    assertEquals( 3000000001L, result.getAbsoluteLength() );
+  }
+
+  /**
+   * Tests that the selected signals are mapped in order of selection.
+   */
+  @Test
+  public void testReadSelectedSignalsOk() throws IOException
+  {
+    final AcquisitionResult result = read( "top.cpu.data, clk" );
+
+    assertEquals( 5, result.getChannels() );
+    assertArrayEquals( new int[] { 0x00, 0x15, 0x05, 0x0F, 0x0F }, result.getValues() );
+  }
+
+  /**
+   * Tests that selecting an unknown signal fails.
+   */
+  @Test( expected = IOException.class )
+  public void testReadUnknownSignalFail() throws IOException
+  {
+    read( "foo" );
+  }
+
+  /**
+   * Reads the test dump with the given signal selection.
+   */
+  private AcquisitionResult read( final String aSelection ) throws IOException
+  {
+    final byte[] dump = DUMP.getBytes( "US-ASCII" );
+    final List<String> selection = VcdDataReader.parseSelection( aSelection );
+
+    return new VcdDataReader( new ByteArrayInputStream( dump ), dump.length, selection ).read( null );
+  }
+}
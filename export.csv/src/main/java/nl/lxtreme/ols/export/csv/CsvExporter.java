@@ -23,6 +23,7 @@ package nl.lxtreme.ols.export.csv;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.swing.*;
 
@@ -34,9 +35,126 @@ import nl.lxtreme.ols.api.data.export.*;
 /**
  * Provides a CSV exporter for exporting the acquisition data in a
  * comma-separated format.
+ * <p>
+ * By default, a row is written for every sample in the exported range, as
+ * stored in the acquired data. Optionally, rows are only written for the
+ * samples in which at least one of the exported channels changes, or a row is
+ * written for every sample period.
+ * </p>
+ * <p>
+ * Rows are formatted per chunk of transitions into reusable byte buffers. All
+ * but the first chunk are formatted in parallel, while the chunks are still
+ * written in order.
+ * </p>
  */
-public class CsvExporter implements Exporter
+public class CsvExporter implements StreamingExporter
 {
+  // INNER TYPES
+
+  /**
+   * Formats the data rows of an export; can be shared between threads.
+   */
+  static final class RowFormatter
+  {
+    // VARIABLES
+
+    private final long triggerPos;
+    private final int sampleRate;
+    private final int[] channelIndices;
+    private final boolean everySample;
+    private final byte separator;
+    private final byte[] lineSeparator;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link RowFormatter} instance.
+     */
+    RowFormatter( final AcquisitionResult aCapturedData, final int[] aChannelIndices, final boolean aEverySample,
+        final char aSeparator, final byte[] aLineSeparator )
+    {
+      this.triggerPos = aCapturedData.getTriggerPosition();
+      this.sampleRate = aCapturedData.getSampleRate();
+      this.channelIndices = aChannelIndices;
+      this.everySample = aEverySample;
+      this.separator = ( byte )aSeparator;
+      this.lineSeparator = aLineSeparator;
+    }
+
+    // METHODS
+
+    /**
+     * Formats the rows of a chunk of transitions into the given buffer.
+     * 
+     * @param aBuffer
+     *          the buffer to format the rows into;
+     * @param aValues
+     *          the values of the transitions;
+     * @param aTimestamps
+     *          the time stamps of the transitions;
+     * @param aCount
+     *          the number of transitions to format;
+     * @param aChunkEnd
+     *          the time up to which the last transition holds, exclusive.
+     */
+    void format( final CsvRowBuffer aBuffer, final int[] aValues, final long[] aTimestamps, final int aCount,
+        final long aChunkEnd )
+    {
+      for ( int i = 0; i < aCount; i++ )
+      {
+        if ( this.everySample )
+        {
+          final long end = ( ( i + 1 ) < aCount ) ? aTimestamps[i + 1] : aChunkEnd;
+          for ( long time = aTimestamps[i]; time < end; time++ )
+          {
+            formatRow( aBuffer, time, aValues[i] );
+          }
+        }
+        else
+        {
+          formatRow( aBuffer, aTimestamps[i], aValues[i] );
+        }
+      }
+    }
+
+    /**
+     * Formats a single data row.
+     */
+    private void formatRow( final CsvRowBuffer aBuffer, final long aAbsTime, final int aValue )
+    {
+      aBuffer.writeDecimal( aAbsTime );
+
+      if ( this.triggerPos > 0 )
+      {
+        aBuffer.write( this.separator );
+        aBuffer.writeDecimal( aAbsTime - this.triggerPos );
+      }
+      if ( this.sampleRate > 0 )
+      {
+        aBuffer.write( this.separator );
+        aBuffer.writeDecimal( this.sampleRate );
+      }
+
+      for ( int i = 0; i < this.channelIndices.length; i++ )
+      {
+        aBuffer.write( this.separator );
+        aBuffer.write( ( ( aValue >>> this.channelIndices[i] ) & 1 ) != 0 ? '1' : '0' );
+      }
+
+      aBuffer.write( this.lineSeparator );
+    }
+  }
+
+  // CONSTANTS
+
+  /** Whether or not a row is written for every sample period. */
+  private static final String EXPORT_EVERY_SAMPLE = "ols.export.csv.every.sample.boolean";
+  /** Whether or not rows are only written when an exported channel changes. */
+  private static final String EXPORT_TRANSITIONS_ONLY = "ols.export.csv.transitions.only.boolean";
+
+  /** The initial capacity of a row buffer, in bytes. */
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
   // VARIABLES
 
   private final char colSeparator;
@@ -60,31 +178,44 @@ public class CsvExporter implements Exporter
   public void export( final DataSet aDataSet, final JComponent aComponent, final OutputStream aStream )
       throws IOException
   {
-    final PrintStream stream = new PrintStream( aStream );
+    export( new ExportContext( aDataSet, aComponent ), aStream );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void export( final ExportContext aContext, final OutputStream aStream ) throws IOException
+  {
+    final byte[] lineSeparator = System.getProperty( "line.separator", "\n" ).getBytes();
 
     try
     {
-      // Write header row...
-      writeHeaderRow( stream, createHeaderRowValues( aDataSet ) );
-
-      final Channel[] channels = aDataSet.getChannels();
+      final DataSet dataSet = aContext.getDataSet();
+      final Channel[] channels = getExportedChannels( dataSet.getChannels(), aContext.getChannelMask() );
 
-      final AcquisitionResult capturedData = aDataSet.getCapturedData();
-      final int sampleRate = capturedData.getSampleRate();
-      final int[] values = capturedData.getValues();
-      final long[] timestamps = capturedData.getTimestamps();
-      final long triggerPos = capturedData.getTriggerPosition();
+      // Write header row...
+      aStream.write( createHeaderRow( createHeaderRowValues( dataSet, channels ) ).getBytes() );
+      aStream.write( lineSeparator );
 
-      // Write data...
-      for ( int i = 0; i < values.length; i++ )
+      // Causes the channels to be listed in "inverse" order, MSB first...
+      final int[] channelIndices = new int[channels.length];
+      for ( int i = 0; i < channels.length; i++ )
       {
-        // Write data row...
-        writeDataRow( stream, timestamps[i], triggerPos, sampleRate, values[i], channels );
+        channelIndices[i] = channels[channels.length - i - 1].getIndex();
       }
+
+      final RowFormatter formatter = new RowFormatter( dataSet.getCapturedData(), channelIndices,
+          isExportEverySample(), this.colSeparator, lineSeparator );
+
+      final TransitionReader reader = isExportTransitionsOnly() ? aContext.createTransitionReader() : aContext
+          .createSampleReader();
+
+      writeDataRows( aStream, reader, formatter );
     }
     finally
     {
-      stream.flush();
+      aStream.flush();
     }
   }
 
@@ -106,6 +237,32 @@ public class CsvExporter implements Exporter
     return "CSV File";
   }
 
+  /**
+   * Returns whether or not a row should be written for every sample period,
+   * instead of for every stored sample (or transition).
+   * 
+   * @return <code>true</code> to write a row for every sample period,
+   *         <code>false</code> otherwise.
+   */
+  protected boolean isExportEverySample()
+  {
+    return UIManager.getBoolean( EXPORT_EVERY_SAMPLE );
+  }
+
+  /**
+   * Returns whether or not a row should only be written for the samples in
+   * which at least one of the exported channels changes, instead of for every
+   * stored sample.
+   * 
+   * @return <code>true</code> to write a row for every transition of the
+   *         exported channels, <code>false</code> to write a row for every
+   *         stored sample.
+   */
+  protected boolean isExportTransitionsOnly()
+  {
+    return UIManager.getBoolean( EXPORT_TRANSITIONS_ONLY );
+  }
+
   /**
    * @param aChannelCount
    * @return
@@ -118,21 +275,39 @@ public class CsvExporter implements Exporter
       String label = aChannels[i].getLabel();
       if ( label == null )
       {
-        label = String.format( "Ch.%d", Integer.valueOf( i ) );
+        label = String.format( "Ch.%d", Integer.valueOf( aChannels[i].getIndex() ) );
       }
       // Causes the channels to be listed in "inverse" order, MSB first...
       aList.add( insertIdx, label );
     }
   }
 
+  /**
+   * @param aHeaders
+   *          the header values to write.
+   * @return the header row, without line separator.
+   */
+  private String createHeaderRow( final String[] aHeaders )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < aHeaders.length; i++ )
+    {
+      if ( i > 0 )
+      {
+        sb.append( this.colSeparator );
+      }
+      sb.append( '"' ).append( aHeaders[i] ).append( '"' );
+    }
+    return sb.toString();
+  }
+
   /**
    * @param aDataSet
+   * @param aChannels
    * @return
    */
-  private String[] createHeaderRowValues( final DataSet aDataSet )
+  private String[] createHeaderRowValues( final DataSet aDataSet, final Channel[] aChannels )
   {
-    final Channel[] channels = aDataSet.getChannels();
-
     final AcquisitionResult capturedData = aDataSet.getCapturedData();
     final long triggerPos = capturedData.getTriggerPosition();
     final int sampleRate = capturedData.getSampleRate();
@@ -164,80 +339,146 @@ public class CsvExporter implements Exporter
       result.add( "sample rate (Hz)" );
     }
 
-    createChannelHeaders( result, channels );
+    createChannelHeaders( result, aChannels );
 
     return result.toArray( new String[result.size()] );
   }
 
   /**
-   * @param aValue
-   * @return
+   * Returns the channels in the given channel mask.
    */
-  private String quote( final String aValue )
+  private Channel[] getExportedChannels( final Channel[] aChannels, final int aChannelMask )
   {
-    return String.format( "\"%s\"", aValue );
+    final List<Channel> result = new ArrayList<Channel>( aChannels.length );
+    for ( Channel channel : aChannels )
+    {
+      if ( ( aChannelMask & ( 1 << channel.getIndex() ) ) != 0 )
+      {
+        result.add( channel );
+      }
+    }
+    return result.toArray( new Channel[result.size()] );
   }
 
   /**
+   * Formats all data rows, and writes them in order. The first chunk of
+   * transitions is formatted in the current thread, all others are formatted
+   * in parallel, if possible.
+   * 
    * @param aStream
-   *          the output stream to write the data values to;
-   * @param aAbsTime
-   * @param aTriggerPos
-   * @param aValue
-   * @param aChannels
+   *          the output stream to write the data rows to;
+   * @param aReader
+   *          the reader producing the transitions to export;
+   * @param aFormatter
+   *          the formatter of the data rows.
    * @throws IOException
    *           in case of I/O problems.
    */
-  private void writeDataRow( final PrintStream aStream, final long aAbsTime, final long aTriggerPos,
-      final int aSampleRate, final int aValue, final Channel[] aChannels ) throws IOException
+  private void writeDataRows( final OutputStream aStream, final TransitionReader aReader,
+      final RowFormatter aFormatter ) throws IOException
   {
-    aStream.print( aAbsTime );
-
-    if ( aTriggerPos > 0 )
+    if ( !aReader.next() )
     {
-      aStream.print( this.colSeparator );
-      aStream.print( aAbsTime - aTriggerPos );
+      return;
     }
-    if ( aSampleRate > 0 )
+
+    final CsvRowBuffer firstBuffer = new CsvRowBuffer( BUFFER_SIZE );
+    aFormatter.format( firstBuffer, aReader.getValues(), aReader.getTimestamps(), aReader.getCount(),
+        aReader.getChunkEnd() );
+    firstBuffer.writeTo( aStream );
+
+    final int threadCount = Runtime.getRuntime().availableProcessors();
+    if ( threadCount < 2 )
     {
-      aStream.print( this.colSeparator );
-      aStream.print( aSampleRate );
+      while ( aReader.next() )
+      {
+        firstBuffer.reset();
+        aFormatter.format( firstBuffer, aReader.getValues(), aReader.getTimestamps(), aReader.getCount(),
+            aReader.getChunkEnd() );
+        firstBuffer.writeTo( aStream );
+      }
+      return;
     }
 
-    if ( aChannels != null )
+    // Limits the number of formatted chunks kept in memory...
+    final int maxPending = 2 * threadCount;
+    final Queue<CsvRowBuffer> buffers = new ConcurrentLinkedQueue<CsvRowBuffer>();
+    final LinkedList<Future<CsvRowBuffer>> pending = new LinkedList<Future<CsvRowBuffer>>();
+    buffers.add( firstBuffer );
+
+    ExecutorService executor = null;
+    try
     {
-      int l = aChannels.length;
-      for ( int i = 0; i < l; i++ )
+      boolean more = aReader.next();
+      while ( more || !pending.isEmpty() )
       {
-        Channel channel = aChannels[l - i - 1];
-        int v = ( aValue & channel.getMask() ) >> channel.getIndex();
-        aStream.print( this.colSeparator );
-        aStream.print( v );
+        while ( more && ( pending.size() < maxPending ) )
+        {
+          if ( executor == null )
+          {
+            executor = Executors.newFixedThreadPool( threadCount );
+          }
+
+          final int[] values = aReader.getValues();
+          final long[] timestamps = aReader.getTimestamps();
+          final int count = aReader.getCount();
+          final long chunkEnd = aReader.getChunkEnd();
+
+          pending.add( executor.submit( new Callable<CsvRowBuffer>()
+          {
+            @Override
+            public CsvRowBuffer call()
+            {
+              CsvRowBuffer buffer = buffers.poll();
+              if ( buffer == null )
+              {
+                buffer = new CsvRowBuffer( BUFFER_SIZE );
+              }
+              buffer.reset();
+              aFormatter.format( buffer, values, timestamps, count, chunkEnd );
+              return buffer;
+            }
+          } ) );
+
+          more = aReader.next();
+        }
+
+        final CsvRowBuffer buffer = getFormattedChunk( pending.removeFirst() );
+        buffer.writeTo( aStream );
+        buffers.add( buffer );
+      }
+    }
+    finally
+    {
+      if ( executor != null )
+      {
+        executor.shutdownNow();
       }
     }
-
-    aStream.println();
   }
 
   /**
-   * @param aStream
-   *          the output stream to write the headers to;
-   * @param aHeaders
-   *          the header values to write.
-   * @throws IOException
-   *           in case of I/O problems.
+   * Waits for the given chunk to be formatted.
    */
-  private void writeHeaderRow( final PrintStream aStream, final String[] aHeaders ) throws IOException
+  private CsvRowBuffer getFormattedChunk( final Future<CsvRowBuffer> aFuture ) throws IOException
   {
-    for ( int i = 0; i < aHeaders.length; i++ )
+    try
     {
-      if ( i > 0 )
+      return aFuture.get();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "CSV export interrupted!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      final Throwable cause = exception.getCause();
+      if ( cause instanceof RuntimeException )
       {
-        aStream.print( this.colSeparator );
+        throw ( RuntimeException )cause;
       }
-      aStream.print( quote( aHeaders[i] ) );
+      throw new IOException( "CSV export failed!", cause );
     }
-
-    aStream.println();
   }
 }
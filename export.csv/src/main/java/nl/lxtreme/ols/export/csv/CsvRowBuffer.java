@@ -0,0 +1,139 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * Copyright (C) 2006-2010 Michael Poppitz, www.sump.org
+ * Copyright (C) 2010-2012 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.export.csv;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.util.*;
+
+
+/**
+ * Provides a growable byte buffer in which CSV rows are formatted, without any
+ * character encoding or intermediary strings.
+ * <p>
+ * A buffer can be reused for multiple chunks of rows by resetting it after its
+ * contents are written.
+ * </p>
+ */
+final class CsvRowBuffer
+{
+  // VARIABLES
+
+  private byte[] buffer;
+  private int size;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link CsvRowBuffer} instance.
+   * 
+   * @param aCapacity
+   *          the initial capacity of this buffer, in bytes, > 0.
+   */
+  public CsvRowBuffer( final int aCapacity )
+  {
+    this.buffer = new byte[aCapacity];
+  }
+
+  // METHODS
+
+  /**
+   * Discards the contents of this buffer, retaining its capacity.
+   */
+  public void reset()
+  {
+    this.size = 0;
+  }
+
+  /**
+   * Returns the number of bytes in this buffer.
+   * 
+   * @return a size, in bytes, >= 0.
+   */
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Appends a single (ASCII) byte.
+   * 
+   * @param aByte
+   *          the byte to append.
+   */
+  public void write( final int aByte )
+  {
+    ensureCapacity( 1 );
+    this.buffer[this.size++] = ( byte )aByte;
+  }
+
+  /**
+   * Appends the given bytes as-is.
+   * 
+   * @param aBytes
+   *          the bytes to append, cannot be <code>null</code>.
+   */
+  public void write( final byte[] aBytes )
+  {
+    ensureCapacity( aBytes.length );
+    System.arraycopy( aBytes, 0, this.buffer, this.size, aBytes.length );
+    this.size += aBytes.length;
+  }
+
+  /**
+   * Appends the decimal representation of the given value.
+   * 
+   * @param aValue
+   *          the value to append.
+   */
+  public void writeDecimal( final long aValue )
+  {
+    ensureCapacity( DecimalFormatter.MAX_LENGTH );
+    this.size += DecimalFormatter.format( aValue, this.buffer, this.size );
+  }
+
+  /**
+   * Writes the contents of this buffer to the given stream.
+   * 
+   * @param aStream
+   *          the stream to write to, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeTo( final OutputStream aStream ) throws IOException
+  {
+    aStream.write( this.buffer, 0, this.size );
+  }
+
+  /**
+   * Grows this buffer, if needed, to fit the given number of additional bytes.
+   */
+  private void ensureCapacity( final int aCount )
+  {
+    if ( ( this.size + aCount ) > this.buffer.length )
+    {
+      final int newCapacity = Math.max( this.size + aCount, this.buffer.length + ( this.buffer.length >> 1 ) );
+      this.buffer = Arrays.copyOf( this.buffer, newCapacity );
+    }
+  }
+}
@@ -30,6 +30,7 @@ import java.util.*;
 import javax.swing.*;
 
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.export.*;
 import nl.lxtreme.ols.test.data.project.*;
 
 import org.junit.*;
@@ -182,6 +183,110 @@ public class CsvExporterTest
     assertCsvDimensions( results, expectedRows, expectedCols );
   }
 
+  /**
+   * Tests that the data rows are formatted correctly, with the channels listed
+   * MSB first.
+   */
+  @Test
+  public void testExportDataRowsOk() throws Exception
+  {
+    final DataSet dataSet = createTestDataSet( CHANNEL_COUNT, 3, SAMPLE_RATE, 1 );
+
+    this.exporter.export( dataSet, this.component, this.outputStream );
+
+    assertArrayEquals( new String[] { "\"timestamp (abs)\",\"timestamp (rel)\",\"sample rate (Hz)\","
+        + "\"Ch.3\",\"Ch.2\",\"Ch.1\",\"Ch.0\"", //
+        "0,-1,100000,0,0,0,0", //
+        "1,0,100000,0,0,0,1", //
+        "2,1,100000,0,0,1,0" }, getCsvData() );
+  }
+
+  /**
+   * Tests that a row is written for every sample period when requested.
+   */
+  @Test
+  public void testExportEverySampleOk() throws Exception
+  {
+    final DataSet dataSet = createTestDataSet( CHANNEL_COUNT, new int[] { 1, 2, 3 }, new long[] { 0L, 3L, 5L } );
+
+    doReturn( Boolean.TRUE ).when( this.exporter ).isExportEverySample();
+
+    this.exporter.export( dataSet, this.component, this.outputStream );
+
+    assertArrayEquals( new String[] { "\"state (abs)\",\"Ch.3\",\"Ch.2\",\"Ch.1\",\"Ch.0\"", //
+        "0,0,0,0,1", "1,0,0,0,1", "2,0,0,0,1", "3,0,0,1,0", "4,0,0,1,0", "5,0,0,1,1" }, getCsvData() );
+  }
+
+  /**
+   * Tests that only the given time range and channels are exported.
+   */
+  @Test
+  public void testExportTimeRangeAndChannelMaskOk() throws Exception
+  {
+    final DataSet dataSet = createTestDataSet( CHANNEL_COUNT, new int[] { 1, 2, 3, 4, 6 }, new long[] { 0L, 3L, 5L,
+        8L, 9L } );
+
+    this.exporter.export( new ExportContext( dataSet, this.component, 2L, 8L, 0x03, null ), this.outputStream );
+
+    // The first row denotes the state at the start of the range; the
+    // transition at 8 does not involve channels 0 and 1...
+    assertArrayEquals( new String[] { "\"state (abs)\",\"Ch.1\",\"Ch.0\"", //
+        "2,0,1", "3,1,0", "5,1,1", "8,0,0" }, getCsvData() );
+  }
+
+  /**
+   * Tests that, by default, a row is written for every stored sample, even if
+   * none of the exported channels changes in it.
+   */
+  @Test
+  public void testExportEveryStoredSampleOk() throws Exception
+  {
+    final DataSet dataSet = createTestDataSet( CHANNEL_COUNT, new int[] { 1, 5, 2, 6 }, new long[] { 0L, 3L, 5L, 8L } );
+
+    this.exporter.export( new ExportContext( dataSet, this.component, 0L, 8L, 0x03, null ), this.outputStream );
+
+    assertArrayEquals( new String[] { "\"state (abs)\",\"Ch.1\",\"Ch.0\"", //
+        "0,0,1", "3,0,1", "5,1,0", "8,1,0" }, getCsvData() );
+  }
+
+  /**
+   * Tests that only the samples in which an exported channel changes are
+   * written when requested.
+   */
+  @Test
+  public void testExportTransitionsOnlyOk() throws Exception
+  {
+    final DataSet dataSet = createTestDataSet( CHANNEL_COUNT, new int[] { 1, 5, 2, 6 }, new long[] { 0L, 3L, 5L, 8L } );
+
+    doReturn( Boolean.TRUE ).when( this.exporter ).isExportTransitionsOnly();
+
+    this.exporter.export( new ExportContext( dataSet, this.component, 0L, 8L, 0x03, null ), this.outputStream );
+
+    assertArrayEquals( new String[] { "\"state (abs)\",\"Ch.1\",\"Ch.0\"", //
+        "0,0,1", "5,1,0" }, getCsvData() );
+  }
+
+  /**
+   * Tests that a large export, formatted in chunks, retains the order of its
+   * rows.
+   */
+  @Test
+  public void testExportLargeDataSetKeepsOrderOk() throws Exception
+  {
+    final int dataSize = ( 5 * TransitionReader.CHUNK_SIZE ) + 3;
+
+    final DataSet dataSet = createTestDataSet( CHANNEL_COUNT, dataSize, SAMPLE_RATE, -1 );
+
+    this.exporter.export( dataSet, this.component, this.outputStream );
+
+    String[] results = getCsvData();
+    assertEquals( 1 + dataSize, results.length );
+    for ( int i = 1; i < results.length; i++ )
+    {
+      assertEquals( Long.toString( i - 1 ), getCsvCols( results[i] )[0] );
+    }
+  }
+
   /**
    * @param aCsvData
    * @param aExpectedRows
@@ -225,6 +330,22 @@ public class CsvExporterTest
     return dataSet;
   }
 
+  /**
+   * Creates a data set with the given values and time stamps, without a
+   * sample rate or trigger.
+   */
+  private DataSet createTestDataSet( final int aChannelCount, final int[] aValues, final long[] aTimestamps )
+  {
+    final int mask = ( 1 << aChannelCount ) - 1;
+    final CapturedData capData = new CapturedData( aValues, aTimestamps, -1, -1, aChannelCount, mask,
+        aTimestamps[aTimestamps.length - 1] );
+
+    StubDataSet dataSet = new StubDataSet();
+    dataSet.setCapturedData( capData );
+    dataSet.setCursorsEnabled( false );
+    return dataSet;
+  }
+
   /**
    * @param aCsvRow
    * @return
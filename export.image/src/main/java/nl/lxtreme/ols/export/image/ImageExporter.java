@@ -24,8 +24,10 @@ package nl.lxtreme.ols.export.image;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.List;
 
-import javax.imageio.*;
 import javax.swing.*;
 import javax.swing.border.*;
 
@@ -35,15 +37,67 @@ import nl.lxtreme.ols.api.data.export.*;
 
 /**
  * Provides a simple export-to-image functionality.
+ * <p>
+ * The entire diagram is painted in tiles, band by band, which are streamed into
+ * a PNG image. This way, the memory needed does hardly depend on the (zoomed)
+ * width of the diagram. As Swing components can only be painted safely on the
+ * event dispatch thread, the tiles are painted on that thread, several tiles at
+ * a time.
+ * </p>
+ * <p>
+ * Diagrams are exported as indexed-color image, unless they have more colors
+ * than fit in a palette, in which case they are exported as truecolor image.
+ * </p>
+ * <p>
+ * Images show the diagram as it is shown on screen, hence the time range and
+ * channel mask of an export are not used.
+ * </p>
  */
-public class ImageExporter implements Exporter
+public class ImageExporter implements StreamingExporter
 {
+  // INNER TYPES
+
+  /**
+   * Denotes a component that is painted at a certain location of the image.
+   */
+  static final class Part
+  {
+    // VARIABLES
+
+    final Component component;
+    final Rectangle bounds;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Part} instance.
+     */
+    Part( final Component aComponent, final Rectangle aBounds )
+    {
+      this.component = aComponent;
+      this.bounds = aBounds;
+    }
+  }
+
   // CONSTANTS
 
   /** The maximum width of the image to export. */
-  private static final int MAX_WIDTH = 8192;
+  private static final int MAX_WIDTH = 1024 * 1024;
   /** The maximum height of the image to export. */
-  private static final int MAX_HEIGHT = 8192;
+  private static final int MAX_HEIGHT = 65536;
+
+  /** The number of pixels in a single tile. */
+  private static final int TILE_PIXELS = 64 * 1024;
+  /** The width of a single tile, in pixels. */
+  private static final int TILE_WIDTH = 1024;
+  /** The height of a single tile, in pixels. */
+  private static final int TILE_HEIGHT = TILE_PIXELS / TILE_WIDTH;
+  /** The number of tiles painted at once on the event dispatch thread. */
+  private static final int TILES_PER_PAINT = 8;
+  /** The minimal height of a band of tiles, in pixels. */
+  private static final int MIN_BAND_HEIGHT = 8;
+  /** The (approximate) maximum size of a band of tiles in the encoder, in bytes. */
+  private static final int MAX_BAND_SIZE = 16 * 1024 * 1024;
 
   // METHODS
 
@@ -54,25 +108,38 @@ public class ImageExporter implements Exporter
   public void export( final DataSet aDataSet, final JComponent aComponent, final OutputStream aStream )
       throws IOException
   {
-    final Dimension dims = getExportSize( aComponent );
-
-    final BufferedImage image = new BufferedImage( dims.width, dims.height, BufferedImage.TYPE_INT_RGB );
+    export( new ExportContext( aDataSet, aComponent ), aStream );
+  }
 
-    // Create a graphics contents on the buffered image
-    Graphics2D g2d = image.createGraphics();
-    try
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void export( final ExportContext aContext, final OutputStream aStream ) throws IOException
+  {
+    final JComponent component = aContext.getComponent();
+    if ( component == null )
     {
-      paintDiagram( g2d, aComponent );
+      throw new IOException( "Export to PNG failed! Nothing to export?" );
     }
-    finally
+
+    final Dimension dims = getExportSize( component );
+    if ( ( dims.width <= 0 ) || ( dims.height <= 0 ) )
     {
-      g2d.dispose();
-      g2d = null;
+      throw new IOException( "Export to PNG failed! Nothing to export?" );
     }
 
-    if ( !ImageIO.write( image, "png", aStream ) )
+    final List<Part> parts = getParts( component );
+
+    try
+    {
+      export( aContext, aStream, component, parts, dims, false /* aTruecolor */);
+    }
+    catch ( PngEncoder.PaletteOverflowException exception )
     {
-      throw new IOException( "Export to PNG failed! Image not supported?" );
+      // Nothing is written to the stream until the indexed image is finished,
+      // so we can simply start over...
+      export( aContext, aStream, component, parts, dims, true /* aTruecolor */);
     }
   }
 
@@ -94,6 +161,67 @@ public class ImageExporter implements Exporter
     return "PNG Image";
   }
 
+  /**
+   * Exports the given diagram as PNG image to the given stream.
+   * 
+   * @param aContext
+   *          the context of the export, cannot be <code>null</code>;
+   * @param aStream
+   *          the stream to write the image to, cannot be <code>null</code>;
+   * @param aComponent
+   *          the diagram to export, cannot be <code>null</code>;
+   * @param aParts
+   *          the parts of the diagram to paint, cannot be <code>null</code>;
+   * @param aDims
+   *          the size of the image, cannot be <code>null</code>;
+   * @param aTruecolor
+   *          <code>true</code> to export a truecolor image, <code>false</code>
+   *          to export an indexed-color image.
+   * @throws PngEncoder.PaletteOverflowException
+   *           in case an indexed-color image is requested, but the diagram has
+   *           too many colors;
+   * @throws IOException
+   *           in case of other I/O problems.
+   */
+  private void export( final ExportContext aContext, final OutputStream aStream, final JComponent aComponent,
+      final List<Part> aParts, final Dimension aDims, final boolean aTruecolor ) throws IOException
+  {
+    final int stride = ( aTruecolor ? 3 : 1 ) * aDims.width;
+    final int bandHeight = Math.max( MIN_BAND_HEIGHT, Math.min( TILE_HEIGHT, MAX_BAND_SIZE / stride ) );
+    final int stripWidth = Math.min( aDims.width, TILES_PER_PAINT * TILE_WIDTH );
+
+    final BufferedImage strip = new BufferedImage( stripWidth, bandHeight, BufferedImage.TYPE_INT_RGB );
+    final int[] pixels = ( ( DataBufferInt )strip.getRaster().getDataBuffer() ).getData();
+
+    final PngEncoder encoder = new PngEncoder( aStream, aDims.width, aDims.height, bandHeight, aTruecolor );
+    try
+    {
+      for ( int y = 0; y < aDims.height; y += bandHeight )
+      {
+        aContext.checkCancelled();
+
+        final int rows = Math.min( bandHeight, aDims.height - y );
+        for ( int x = 0; x < aDims.width; x += stripWidth )
+        {
+          final int cols = Math.min( stripWidth, aDims.width - x );
+
+          paintTilesOnEDT( strip, aComponent.getBackground(), aParts, new Rectangle( x, y, cols, rows ) );
+
+          encoder.writePixels( x, 0, pixels, 0, stripWidth, cols, rows );
+        }
+        encoder.writeBand( rows );
+
+        aContext.setProgress( ( int )( ( ( y + rows ) * 100L ) / aDims.height ) );
+      }
+
+      encoder.finish();
+    }
+    finally
+    {
+      encoder.close();
+    }
+  }
+
   /**
    * Returns the export image size for the given component.
    * 
@@ -126,13 +254,13 @@ public class ImageExporter implements Exporter
     {
       final JScrollPane scrollpane = ( JScrollPane )aDiagram;
 
-      final Dimension visibleViewSize = scrollpane.getViewport().getExtentSize();
       final Dimension viewSize = scrollpane.getViewport().getViewSize();
-      final Dimension rowHeaderSize = scrollpane.getRowHeader().getExtentSize();
-      final Dimension columnHeaderSize = scrollpane.getColumnHeader().getExtentSize();
+      final Dimension rowHeaderSize = getViewSize( scrollpane.getRowHeader() );
+      final Dimension columnHeaderSize = getViewSize( scrollpane.getColumnHeader() );
 
-      final int width = Math.min( viewSize.width, visibleViewSize.width ) + rowHeaderSize.width;
-      final int height = Math.min( viewSize.height, visibleViewSize.height ) + columnHeaderSize.height;
+      // Export the entire view, not only its visible part...
+      final int width = viewSize.width + rowHeaderSize.width;
+      final int height = viewSize.height + columnHeaderSize.height;
 
       return new Dimension( width, height );
     }
@@ -141,25 +269,191 @@ public class ImageExporter implements Exporter
   }
 
   /**
-   * Paints the given component on the given canvas.
+   * Returns the components to paint for the given diagram, with their
+   * locations in the exported image.
    * 
-   * @param aCanvas
-   *          the canvas to paint on, cannot be <code>null</code>;
    * @param aDiagram
    *          the component to paint, cannot be <code>null</code>.
-   * @see #paintScrollPaneContents(Graphics2D, JScrollPane)
+   * @return the parts to paint, never <code>null</code>.
    */
-  private void paintDiagram( final Graphics2D aCanvas, final JComponent aDiagram )
+  private List<Part> getParts( final JComponent aDiagram )
   {
-    final Border border = aDiagram.getBorder();
-    if ( border != null )
+    final List<Part> result = new ArrayList<Part>();
+
+    if ( aDiagram instanceof JScrollPane )
     {
-      final Insets insets = border.getBorderInsets( aDiagram );
-      if ( insets != null )
+      final JScrollPane scrollpane = ( JScrollPane )aDiagram;
+
+      final Dimension viewSize = scrollpane.getViewport().getViewSize();
+      final Dimension rowHeaderSize = getViewSize( scrollpane.getRowHeader() );
+      final Dimension columnHeaderSize = getViewSize( scrollpane.getColumnHeader() );
+
+      final int x = rowHeaderSize.width;
+      final int y = columnHeaderSize.height;
+
+      final Component corner = scrollpane.getCorner( ScrollPaneConstants.UPPER_LEFT_CORNER );
+      if ( corner != null )
+      {
+        result.add( new Part( corner, new Rectangle( 0, 0, x, y ) ) );
+      }
+      if ( scrollpane.getColumnHeader() != null )
+      {
+        result.add( new Part( scrollpane.getColumnHeader().getView(), new Rectangle( x, 0, viewSize.width, y ) ) );
+      }
+      if ( scrollpane.getRowHeader() != null )
+      {
+        result.add( new Part( scrollpane.getRowHeader().getView(), new Rectangle( 0, y, x, viewSize.height ) ) );
+      }
+      result.add( new Part( scrollpane.getViewport().getView(), new Rectangle( x, y, viewSize.width,
+          viewSize.height ) ) );
+    }
+    else
+    {
+      final Rectangle bounds = new Rectangle( aDiagram.getSize() );
+
+      final Border border = aDiagram.getBorder();
+      if ( border != null )
+      {
+        final Insets insets = border.getBorderInsets( aDiagram );
+        if ( insets != null )
+        {
+          bounds.translate( -insets.left, -insets.top );
+        }
+      }
+
+      result.add( new Part( aDiagram, bounds ) );
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the size of the view of the given viewport.
+   * 
+   * @param aViewport
+   *          the viewport to get the view size for, can be <code>null</code>.
+   * @return a view size, never <code>null</code>.
+   */
+  private Dimension getViewSize( final JViewport aViewport )
+  {
+    if ( ( aViewport == null ) || ( aViewport.getView() == null ) )
+    {
+      return new Dimension();
+    }
+    return aViewport.getViewSize();
+  }
+
+  /**
+   * Paints a strip of tiles of the diagram on the given image, on the event
+   * dispatch thread.
+   * 
+   * @param aStrip
+   *          the image to paint on, cannot be <code>null</code>;
+   * @param aBackground
+   *          the background color of the tiles;
+   * @param aParts
+   *          the parts of the diagram to paint, cannot be <code>null</code>;
+   * @param aArea
+   *          the area of the image covered by the strip, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case painting is interrupted or failed.
+   */
+  private void paintTilesOnEDT( final BufferedImage aStrip, final Color aBackground, final List<Part> aParts,
+      final Rectangle aArea ) throws IOException
+  {
+    final Runnable painter = new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        // Create a graphics contents on the strip...
+        Graphics2D g2d = aStrip.createGraphics();
+        try
+        {
+          g2d.setColor( aBackground );
+          g2d.fillRect( 0, 0, aStrip.getWidth(), aStrip.getHeight() );
+
+          for ( int x = 0; x < aArea.width; x += TILE_WIDTH )
+          {
+            final Rectangle tile = new Rectangle( aArea.x + x, aArea.y, Math.min( TILE_WIDTH, aArea.width - x ),
+                aArea.height );
+
+            final Graphics2D canvas = ( Graphics2D )g2d.create();
+            try
+            {
+              canvas.translate( x, 0 );
+              paintTile( canvas, aParts, tile );
+            }
+            finally
+            {
+              canvas.dispose();
+            }
+          }
+        }
+        finally
+        {
+          g2d.dispose();
+          g2d = null;
+        }
+      }
+    };
+
+    if ( SwingUtilities.isEventDispatchThread() )
+    {
+      painter.run();
+      return;
+    }
+
+    try
+    {
+      SwingUtilities.invokeAndWait( painter );
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Image export interrupted!" );
+    }
+    catch ( InvocationTargetException exception )
+    {
+      throw new IOException( "Export to PNG failed!", exception.getCause() );
+    }
+  }
+
+  /**
+   * Paints a single tile of the diagram on the given canvas.
+   * 
+   * @param aCanvas
+   *          the canvas to paint on, cannot be <code>null</code>;
+   * @param aParts
+   *          the parts of the diagram to paint, cannot be <code>null</code>;
+   * @param aTile
+   *          the area of the image covered by the tile, cannot be
+   *          <code>null</code>.
+   */
+  private void paintTile( final Graphics2D aCanvas, final List<Part> aParts, final Rectangle aTile )
+  {
+    for ( Part part : aParts )
+    {
+      final Rectangle area = part.bounds.intersection( aTile );
+      if ( ( part.component == null ) || area.isEmpty() )
+      {
+        continue;
+      }
+
+      final Graphics2D canvas = ( Graphics2D )aCanvas.create();
+      try
+      {
+        // Paint the part in its own coordinates, limited to the tile...
+        canvas.translate( part.bounds.x - aTile.x, part.bounds.y - aTile.y );
+        canvas.clipRect( area.x - part.bounds.x, area.y - part.bounds.y, area.width, area.height );
+
+        part.component.paint( canvas );
+      }
+      finally
       {
-        aCanvas.translate( -insets.left, -insets.top );
+        canvas.dispose();
       }
     }
-    aDiagram.paint( aCanvas );
   }
 }
@@ -0,0 +1,527 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.export.image;
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+
+/**
+ * Provides a PNG encoder for images that are supplied as bands of rows.
+ * <p>
+ * By default, an 8-bit indexed-color image is written, whose palette consists
+ * of the colors in the order they are encountered. As the palette has to
+ * precede the image data, the image data is spooled to a temporary file until
+ * the image is finished. In case the image has more than 256 colors, a
+ * {@link PaletteOverflowException} is thrown, after which the image should be
+ * encoded again as truecolor image. Truecolor images are written directly to
+ * the underlying stream.
+ * </p>
+ * <p>
+ * Bands are compressed on a background thread while the next band is supplied,
+ * and each time the compression buffer fills up, it is emitted as image data
+ * chunk.
+ * </p>
+ */
+final class PngEncoder implements Closeable
+{
+  // INNER TYPES
+
+  /**
+   * Thrown when an indexed-color image has more colors than fit in its
+   * palette.
+   */
+  static final class PaletteOverflowException extends IOException
+  {
+    // CONSTANTS
+
+    private static final long serialVersionUID = 1L;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link PaletteOverflowException} instance.
+     */
+    PaletteOverflowException()
+    {
+      super( "Image has more than " + MAX_COLORS + " colors!" );
+    }
+  }
+
+  // CONSTANTS
+
+  private static final byte[] SIGNATURE = { ( byte )0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+  private static final int MAX_COLORS = 256;
+  /** The size of a single image data chunk. */
+  private static final int IDAT_SIZE = 64 * 1024;
+  /** The maximum number of bands waiting to be compressed. */
+  private static final int MAX_PENDING_BANDS = 2;
+
+  // VARIABLES
+
+  private final OutputStream stream;
+  private final int width;
+  private final int height;
+  private final int bandHeight;
+  private final boolean truecolor;
+  private final int stride;
+
+  private final ExecutorService executor;
+  private final LinkedList<Future<?>> pending;
+  private final Deflater deflater;
+  // Only accessed by the background thread...
+  private final byte[] chunk;
+  private int chunkSize;
+
+  private final File spoolFile;
+  private final DataOutputStream imageData;
+
+  private final int[] palette;
+  private int paletteSize;
+  // Open addressing table that maps RGB colors onto palette indices...
+  private int[] colorKeys;
+  private byte[] colorIndices;
+  private int colorShift;
+  private int lastColor;
+  private byte lastIndex;
+
+  private byte[] band;
+  private int rowsWritten;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link PngEncoder} instance.
+   * 
+   * @param aStream
+   *          the stream to write the PNG image to, cannot be <code>null</code>;
+   * @param aWidth
+   *          the width of the image, in pixels, > 0;
+   * @param aHeight
+   *          the height of the image, in pixels, > 0;
+   * @param aBandHeight
+   *          the maximum number of rows in a single band, > 0;
+   * @param aTruecolor
+   *          <code>true</code> to write a truecolor image, <code>false</code>
+   *          to write an indexed-color image.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public PngEncoder( final OutputStream aStream, final int aWidth, final int aHeight, final int aBandHeight,
+      final boolean aTruecolor ) throws IOException
+  {
+    if ( ( aWidth <= 0 ) || ( aHeight <= 0 ) || ( aBandHeight <= 0 ) )
+    {
+      throw new IllegalArgumentException( "Invalid image dimensions!" );
+    }
+
+    this.stream = aStream;
+    this.width = aWidth;
+    this.height = aHeight;
+    this.bandHeight = aBandHeight;
+    this.truecolor = aTruecolor;
+    // Each row is preceded by its filter type...
+    this.stride = ( aTruecolor ? ( 3 * aWidth ) : aWidth ) + 1;
+
+    this.executor = Executors.newSingleThreadExecutor();
+    this.pending = new LinkedList<Future<?>>();
+    this.deflater = new Deflater( Deflater.DEFAULT_COMPRESSION );
+    this.chunk = new byte[IDAT_SIZE];
+
+    this.palette = new int[MAX_COLORS];
+    this.colorKeys = new int[1024];
+    this.colorIndices = new byte[1024];
+    Arrays.fill( this.colorKeys, -1 );
+    this.colorShift = 32 - 10;
+    this.lastColor = -1;
+
+    if ( aTruecolor )
+    {
+      // Nothing precedes the image data, so it can be written right away...
+      this.spoolFile = null;
+      this.imageData = new DataOutputStream( aStream );
+      writeHeader( this.imageData );
+    }
+    else
+    {
+      this.spoolFile = File.createTempFile( "ols", ".idat" );
+      this.imageData = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( this.spoolFile ) ) );
+    }
+
+    this.band = new byte[this.stride * aBandHeight];
+  }
+
+  // METHODS
+
+  /**
+   * Releases all resources of this encoder. The underlying stream is not
+   * closed.
+   */
+  @Override
+  public void close()
+  {
+    this.executor.shutdownNow();
+    this.deflater.end();
+
+    if ( this.spoolFile != null )
+    {
+      try
+      {
+        this.imageData.close();
+      }
+      catch ( IOException exception )
+      {
+        // Ignore, we're throwing it away anyway...
+      }
+      this.spoolFile.delete();
+    }
+  }
+
+  /**
+   * Finishes the image, writing it entirely to the underlying stream.
+   * 
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void finish() throws IOException
+  {
+    if ( this.rowsWritten != this.height )
+    {
+      throw new IOException( "Image is incomplete!" );
+    }
+    while ( !this.pending.isEmpty() )
+    {
+      waitFor( this.pending.removeFirst() );
+    }
+
+    final DataOutputStream dos = new DataOutputStream( this.stream );
+    if ( this.spoolFile != null )
+    {
+      this.imageData.close();
+
+      writeHeader( dos );
+
+      final byte[] plte = new byte[3 * Math.max( 1, this.paletteSize )];
+      for ( int i = 0; i < this.paletteSize; i++ )
+      {
+        plte[3 * i] = ( byte )( this.palette[i] >> 16 );
+        plte[3 * i + 1] = ( byte )( this.palette[i] >> 8 );
+        plte[3 * i + 2] = ( byte )this.palette[i];
+      }
+      writeChunk( dos, "PLTE", plte, 0, plte.length );
+
+      // The spooled image data chunks are already complete...
+      final InputStream is = new FileInputStream( this.spoolFile );
+      try
+      {
+        final byte[] buf = new byte[IDAT_SIZE];
+        int read;
+        while ( ( read = is.read( buf ) ) >= 0 )
+        {
+          dos.write( buf, 0, read );
+        }
+      }
+      finally
+      {
+        is.close();
+      }
+    }
+
+    writeChunk( dos, "IEND", this.chunk, 0, 0 );
+    dos.flush();
+  }
+
+  /**
+   * Completes the current band, and hands it off for compression.
+   * 
+   * @param aRows
+   *          the number of rows in the current band, > 0 and at most the band
+   *          height given at construction.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBand( final int aRows ) throws IOException
+  {
+    if ( ( aRows <= 0 ) || ( aRows > this.bandHeight ) || ( ( this.rowsWritten + aRows ) > this.height ) )
+    {
+      throw new IllegalArgumentException( "Invalid number of rows!" );
+    }
+
+    final byte[] data = this.band;
+    final int length = aRows * this.stride;
+    this.rowsWritten += aRows;
+    final boolean last = ( this.rowsWritten == this.height );
+
+    // Bound the number of bands kept in memory...
+    while ( this.pending.size() >= MAX_PENDING_BANDS )
+    {
+      waitFor( this.pending.removeFirst() );
+    }
+
+    this.pending.add( this.executor.submit( new Callable<Void>()
+    {
+      @Override
+      public Void call() throws IOException
+      {
+        compress( data, length, last );
+        return null;
+      }
+    } ) );
+
+    if ( !last )
+    {
+      this.band = new byte[this.stride * this.bandHeight];
+    }
+  }
+
+  /**
+   * Maps the given RGB pixels onto the current band.
+   * 
+   * @param aX
+   *          the column of the first pixel, >= 0;
+   * @param aY
+   *          the row in the current band of the first pixel, >= 0;
+   * @param aPixels
+   *          the RGB pixels, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset of the first pixel in the given pixels;
+   * @param aScanSize
+   *          the distance between two rows in the given pixels;
+   * @param aWidth
+   *          the number of pixels per row to map;
+   * @param aHeight
+   *          the number of rows to map.
+   * @throws PaletteOverflowException
+   *           in case an indexed-color image has more colors than fit in its
+   *           palette.
+   */
+  public void writePixels( final int aX, final int aY, final int[] aPixels, final int aOffset, final int aScanSize,
+      final int aWidth, final int aHeight ) throws PaletteOverflowException
+  {
+    for ( int row = 0; row < aHeight; row++ )
+    {
+      int src = aOffset + ( row * aScanSize );
+      if ( this.truecolor )
+      {
+        int dst = ( ( aY + row ) * this.stride ) + 1 + ( 3 * aX );
+        for ( int col = 0; col < aWidth; col++ )
+        {
+          final int color = aPixels[src++];
+          this.band[dst++] = ( byte )( color >> 16 );
+          this.band[dst++] = ( byte )( color >> 8 );
+          this.band[dst++] = ( byte )color;
+        }
+      }
+      else
+      {
+        int dst = ( ( aY + row ) * this.stride ) + 1 + aX;
+        for ( int col = 0; col < aWidth; col++ )
+        {
+          this.band[dst++] = getIndex( aPixels[src++] & 0xFFFFFF );
+        }
+      }
+    }
+  }
+
+  /**
+   * Compresses the given band data, emitting an image data chunk each time the
+   * compression buffer is full; only called on the background thread.
+   */
+  void compress( final byte[] aData, final int aLength, final boolean aLast ) throws IOException
+  {
+    this.deflater.setInput( aData, 0, aLength );
+    while ( !this.deflater.needsInput() )
+    {
+      deflate();
+    }
+
+    if ( aLast )
+    {
+      this.deflater.finish();
+      while ( !this.deflater.finished() )
+      {
+        deflate();
+      }
+      if ( this.chunkSize > 0 )
+      {
+        writeChunk( this.imageData, "IDAT", this.chunk, 0, this.chunkSize );
+        this.chunkSize = 0;
+      }
+      this.imageData.flush();
+    }
+  }
+
+  /**
+   * Deflates the pending input into the compression buffer, emitting it as
+   * image data chunk when it is full.
+   */
+  private void deflate() throws IOException
+  {
+    this.chunkSize += this.deflater.deflate( this.chunk, this.chunkSize, this.chunk.length - this.chunkSize );
+    if ( this.chunkSize == this.chunk.length )
+    {
+      writeChunk( this.imageData, "IDAT", this.chunk, 0, this.chunkSize );
+      this.chunkSize = 0;
+    }
+  }
+
+  /**
+   * Returns the palette index for the given RGB color.
+   */
+  private byte getIndex( final int aColor ) throws PaletteOverflowException
+  {
+    if ( aColor == this.lastColor )
+    {
+      return this.lastIndex;
+    }
+
+    final int mask = this.colorKeys.length - 1;
+    int slot = getSlot( aColor );
+    while ( this.colorKeys[slot] != -1 )
+    {
+      if ( this.colorKeys[slot] == aColor )
+      {
+        this.lastColor = aColor;
+        this.lastIndex = this.colorIndices[slot];
+        return this.lastIndex;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+
+    if ( this.paletteSize == MAX_COLORS )
+    {
+      throw new PaletteOverflowException();
+    }
+
+    final byte index = ( byte )this.paletteSize;
+    this.palette[this.paletteSize++] = aColor;
+
+    this.colorKeys[slot] = aColor;
+    this.colorIndices[slot] = index;
+    if ( this.paletteSize > ( this.colorKeys.length >> 2 ) )
+    {
+      growColorTable();
+    }
+
+    this.lastColor = aColor;
+    this.lastIndex = index;
+    return index;
+  }
+
+  /**
+   * Returns the preferred slot of the given color in the color table.
+   */
+  private int getSlot( final int aColor )
+  {
+    return ( aColor * 0x9E3779B1 ) >>> this.colorShift;
+  }
+
+  /**
+   * Doubles the size of the color table.
+   */
+  private void growColorTable()
+  {
+    final int[] oldKeys = this.colorKeys;
+    final byte[] oldIndices = this.colorIndices;
+
+    this.colorKeys = new int[oldKeys.length << 1];
+    this.colorIndices = new byte[oldKeys.length << 1];
+    Arrays.fill( this.colorKeys, -1 );
+
+    this.colorShift--;
+
+    final int mask = this.colorKeys.length - 1;
+    for ( int i = 0; i < oldKeys.length; i++ )
+    {
+      if ( oldKeys[i] != -1 )
+      {
+        int slot = getSlot( oldKeys[i] );
+        while ( this.colorKeys[slot] != -1 )
+        {
+          slot = ( slot + 1 ) & mask;
+        }
+        this.colorKeys[slot] = oldKeys[i];
+        this.colorIndices[slot] = oldIndices[i];
+      }
+    }
+  }
+
+  /**
+   * Waits until the given compression task is finished.
+   */
+  private void waitFor( final Future<?> aFuture ) throws IOException
+  {
+    try
+    {
+      aFuture.get();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Image export interrupted!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      throw new IOException( "Image compression failed!", exception.getCause() );
+    }
+  }
+
+  /**
+   * Writes a single PNG chunk, including its CRC.
+   */
+  private void writeChunk( final DataOutputStream aStream, final String aType, final byte[] aData, final int aOffset,
+      final int aLength ) throws IOException
+  {
+    final byte[] type = aType.getBytes( "US-ASCII" );
+
+    final CRC32 crc = new CRC32();
+    crc.update( type );
+    crc.update( aData, aOffset, aLength );
+
+    aStream.writeInt( aLength );
+    aStream.write( type );
+    aStream.write( aData, aOffset, aLength );
+    aStream.writeInt( ( int )crc.getValue() );
+  }
+
+  /**
+   * Writes the PNG signature and image header.
+   */
+  private void writeHeader( final DataOutputStream aStream ) throws IOException
+  {
+    aStream.write( SIGNATURE );
+
+    final ByteArrayOutputStream header = new ByteArrayOutputStream( 13 );
+    final DataOutputStream hdos = new DataOutputStream( header );
+    hdos.writeInt( this.width );
+    hdos.writeInt( this.height );
+    hdos.writeByte( 8 ); // bit depth
+    hdos.writeByte( this.truecolor ? 2 : 3 ); // color type: truecolor or indexed
+    hdos.writeByte( 0 ); // compression method: deflate
+    hdos.writeByte( 0 ); // filter method: adaptive
+    hdos.writeByte( 0 ); // interlace method: none
+    writeChunk( aStream, "IHDR", header.toByteArray(), 0, header.size() );
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.export.image;
+
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+import javax.imageio.*;
+import javax.swing.*;
+
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.export.*;
+
+import org.junit.*;
+
+
+/**
+ * Provides test cases for {@link ImageExporter}, which read back the exported
+ * images to verify them.
+ */
+public class ImageExporterTest
+{
+  // INNER TYPES
+
+  /**
+   * Provides a component that simply paints a given image.
+   */
+  static final class ImageComponent extends JComponent
+  {
+    // CONSTANTS
+
+    private static final long serialVersionUID = 1L;
+
+    // VARIABLES
+
+    private final BufferedImage image;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ImageComponent} instance.
+     */
+    ImageComponent( final BufferedImage aImage )
+    {
+      this.image = aImage;
+
+      setBackground( Color.BLACK );
+      setSize( aImage.getWidth(), aImage.getHeight() );
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void paintComponent( final Graphics aCanvas )
+    {
+      aCanvas.drawImage( this.image, 0, 0, null );
+    }
+  }
+
+  // CONSTANTS
+
+  /** Offset of the color type in the image header of a PNG image. */
+  private static final int COLOR_TYPE_OFFSET = 25;
+
+  private static final int COLOR_TYPE_TRUECOLOR = 2;
+  private static final int COLOR_TYPE_INDEXED = 3;
+
+  // VARIABLES
+
+  private ImageExporter exporter;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.exporter = new ImageExporter();
+  }
+
+  /**
+   * Tests that an image with more colors than fit in a palette is exported as
+   * truecolor image.
+   */
+  @Test
+  public void testExportManyColorsAsTruecolorOk() throws Exception
+  {
+    final BufferedImage source = new BufferedImage( 1500, 70, BufferedImage.TYPE_INT_RGB );
+    for ( int x = 0; x < source.getWidth(); x++ )
+    {
+      for ( int y = 0; y < source.getHeight(); y++ )
+      {
+        source.setRGB( x, y, ( ( x & 0xFF ) << 16 ) | ( ( y & 0xFF ) << 8 ) | ( ( x >> 8 ) * 31 ) );
+      }
+    }
+
+    final byte[] png = export( source );
+
+    assertEquals( COLOR_TYPE_TRUECOLOR, png[COLOR_TYPE_OFFSET] );
+    assertImageEquals( source, png );
+  }
+
+  /**
+   * Tests that an image that spans several tiles and bands is exported
+   * correctly, with its image data split over several chunks.
+   */
+  @Test
+  public void testExportMultipleBandsAndTilesOk() throws Exception
+  {
+    final int[] colors = { 0x000000, 0xFFFFFF, 0xFF0000, 0x00FF00 };
+
+    // Random noise does not compress well, causing several chunks to be
+    // emitted...
+    final Random random = new Random( 1234L );
+    final BufferedImage source = new BufferedImage( 9500, 150, BufferedImage.TYPE_INT_RGB );
+    for ( int x = 0; x < source.getWidth(); x++ )
+    {
+      for ( int y = 0; y < source.getHeight(); y++ )
+      {
+        source.setRGB( x, y, colors[random.nextInt( colors.length )] );
+      }
+    }
+
+    final byte[] png = export( source );
+
+    assertEquals( COLOR_TYPE_INDEXED, png[COLOR_TYPE_OFFSET] );
+    assertTrue( countChunks( png, "IDAT" ) > 1 );
+    assertImageEquals( source, png );
+  }
+
+  /**
+   * Tests that an image that is smaller than a single tile is exported
+   * correctly.
+   */
+  @Test
+  public void testExportSingleTileOk() throws Exception
+  {
+    final BufferedImage source = new BufferedImage( 10, 3, BufferedImage.TYPE_INT_RGB );
+    source.setRGB( 0, 0, 0x123456 );
+    source.setRGB( 9, 2, 0xFFFFFF );
+
+    final byte[] png = export( source );
+
+    assertEquals( COLOR_TYPE_INDEXED, png[COLOR_TYPE_OFFSET] );
+    assertEquals( 1, countChunks( png, "IDAT" ) );
+    assertImageEquals( source, png );
+  }
+
+  /**
+   * Asserts that the given PNG image has the same pixels as the given image.
+   */
+  private void assertImageEquals( final BufferedImage aExpected, final byte[] aPNG ) throws IOException
+  {
+    final BufferedImage actual = ImageIO.read( new ByteArrayInputStream( aPNG ) );
+    assertNotNull( actual );
+
+    assertEquals( aExpected.getWidth(), actual.getWidth() );
+    assertEquals( aExpected.getHeight(), actual.getHeight() );
+
+    for ( int y = 0; y < aExpected.getHeight(); y++ )
+    {
+      for ( int x = 0; x < aExpected.getWidth(); x++ )
+      {
+        final int expected = aExpected.getRGB( x, y ) & 0xFFFFFF;
+        final int pixel = actual.getRGB( x, y ) & 0xFFFFFF;
+        if ( expected != pixel )
+        {
+          fail( String.format( "Pixel (%d, %d) differs: expected %06x, got %06x", x, y, expected, pixel ) );
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the chunks of the given type in the given PNG image.
+   */
+  private int countChunks( final byte[] aPNG, final String aType ) throws IOException
+  {
+    final DataInputStream dis = new DataInputStream( new ByteArrayInputStream( aPNG ) );
+    dis.skipBytes( 8 ); // signature
+
+    int result = 0;
+    while ( dis.available() > 0 )
+    {
+      final int length = dis.readInt();
+      final byte[] type = new byte[4];
+      dis.readFully( type );
+      if ( aType.equals( new String( type, "US-ASCII" ) ) )
+      {
+        result++;
+      }
+      dis.skipBytes( length + 4 ); // data + CRC
+    }
+    return result;
+  }
+
+  /**
+   * Exports a component showing the given image.
+   */
+  private byte[] export( final BufferedImage aImage ) throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    final ImageComponent component = new ImageComponent( aImage );
+    this.exporter.export( new ExportContext( mock( DataSet.class ), component, 0L, 10L, 0xFF, null ), baos );
+
+    return baos.toByteArray();
+  }
+}
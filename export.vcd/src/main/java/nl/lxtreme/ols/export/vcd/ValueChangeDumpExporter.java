@@ -24,6 +24,7 @@ package nl.lxtreme.ols.export.vcd;
 import static nl.lxtreme.ols.export.vcd.ValueChangeDumpHelper.*;
 
 import java.io.*;
+import java.nio.charset.*;
 
 import javax.swing.*;
 
@@ -36,13 +37,25 @@ import nl.lxtreme.ols.util.*;
 /**
  * Provides a exporter for the "value change dump" format, as specified in IEEE
  * Std 1364-2001.
+ * <p>
+ * The (small) preamble is formatted as text, while the (large) value changes
+ * are written as raw bytes through a {@link ValueChangeDumpWriter}. Channels
+ * can either be dumped as individual wires, or per group of eight channels as
+ * vector.
+ * </p>
  */
-public class ValueChangeDumpExporter implements Exporter
+public class ValueChangeDumpExporter implements StreamingExporter
 {
   // CONSTANTS
 
   private static final String ID = "OLS Java Client";
-  private static final String VERSION = "VCD exporter v1.1";
+  private static final String VERSION = "VCD exporter v1.2";
+
+  /** The UIManager key denoting whether to dump channel groups as vectors. */
+  private static final String EXPORT_VECTORS = "ols.export.vcd.vectors.boolean";
+
+  /** The number of channels in a channel group. */
+  static final int GROUP_SIZE = 8;
 
   // METHODS
 
@@ -53,20 +66,47 @@ public class ValueChangeDumpExporter implements Exporter
   public void export( final DataSet aDataSet, final JComponent aComponent, final OutputStream aStream )
       throws IOException
   {
-    final PrintWriter writer = new PrintWriter( aStream );
-    try
+    export( new ExportContext( aDataSet, aComponent ), aStream );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void export( final ExportContext aContext, final OutputStream aStream ) throws IOException
+  {
+    final DataSet dataSet = aContext.getDataSet();
+    final AcquisitionResult capturedData = dataSet.getCapturedData();
+
+    final double timescale = getTimebase( capturedData.getSampleRate() );
+    final int channelMask = aContext.getChannelMask();
+    final boolean vectors = isExportVectors();
+
+    final StringWriter preamble = new StringWriter();
+    final PrintWriter writer = new PrintWriter( preamble )
     {
-      final AcquisitionResult capturedData = aDataSet.getCapturedData();
+      @Override
+      public void println()
+      {
+        // Use the same line separator as the value changes, regardless of
+        // the platform...
+        write( '\n' );
+      }
+    };
+    writePreamble( writer, dataSet, channelMask, timescale, vectors );
+    writeVariableDump( writer, dataSet, channelMask, vectors );
+    writer.flush();
 
-      final double timescale = getTimebase( capturedData.getSampleRate() );
+    final ValueChangeDumpWriter dumpWriter = new ValueChangeDumpWriter( aStream );
+    try
+    {
+      dumpWriter.write( preamble.toString().getBytes( Charset.defaultCharset().name() ) );
 
-      writePreamble( writer, aDataSet, timescale );
-      writeVariableDump( writer, aDataSet );
-      writeDataDump( writer, capturedData, timescale );
+      writeDataDump( dumpWriter, aContext, timescale, vectors );
     }
     finally
     {
-      writer.flush();
+      dumpWriter.flush();
     }
   }
 
@@ -89,51 +129,125 @@ public class ValueChangeDumpExporter implements Exporter
   }
 
   /**
+   * Returns whether channel groups should be dumped as vectors instead of
+   * individual wires.
+   * 
+   * @return <code>true</code> to dump vectors, <code>false</code> to dump
+   *         individual wires.
+   */
+  protected boolean isExportVectors()
+  {
+    return UIManager.getBoolean( EXPORT_VECTORS );
+  }
+
+  /**
+   * Writes all value changes of the given export.
+   * 
    * @param aWriter
-   * @param aCapturedData
+   *          the writer to write the value changes to;
+   * @param aContext
+   *          the context describing the data to write;
    * @param aTimebase
+   *          the timebase to express all timestamps in;
+   * @param aVectors
+   *          <code>true</code> to write channel groups as vectors,
+   *          <code>false</code> to write individual channels.
+   * @throws IOException
+   *           in case of I/O problems.
    */
-  protected void writeDataDump( final PrintWriter aWriter, final AcquisitionResult aCapturedData, final double aTimebase )
+  protected void writeDataDump( final ValueChangeDumpWriter aWriter, final ExportContext aContext,
+      final double aTimebase, final boolean aVectors ) throws IOException
   {
-    final int[] values = aCapturedData.getValues();
-    final long[] timestamps = aCapturedData.getTimestamps();
-    final int channelCount = aCapturedData.getChannels();
-    final int channelMask = aCapturedData.getEnabledChannels();
-
-    int oldValue = -1;
-    for ( int i = 0, size = values.length; i < size; i++ )
+    final AcquisitionResult capturedData = aContext.getDataSet().getCapturedData();
+    final int channelCount = capturedData.getChannels();
+    final int channelMask = aContext.getChannelMask() & NumberUtils.getBitMask( channelCount );
+
+    // Determine the conversion of timestamps to time units only once; use an
+    // exact integer multiplication whenever possible...
+    final double samplesPerUnit = capturedData.getSampleRate() * aTimebase;
+    final double unitsPerSample = 1.0 / samplesPerUnit;
+    final long factor = Math.round( unitsPerSample );
+    final boolean exact = ( factor >= 1L ) && ( Math.abs( unitsPerSample - factor ) < ( 1.0e-9 * unitsPerSample ) );
+
+    final byte[][] zeroLines = new byte[channelCount][];
+    final byte[][] oneLines = new byte[channelCount][];
+    final byte[][] groupIds = new byte[( channelCount + GROUP_SIZE - 1 ) / GROUP_SIZE][];
+    for ( int i = 0; i < channelCount; i++ )
     {
-      final int value = values[i];
-      final long timestamp = timestamps[i];
+      final byte[] id = getIdentifier( i ).getBytes( "US-ASCII" );
+      zeroLines[i] = concat( '0', id, '\n' );
+      oneLines[i] = concat( '1', id, '\n' );
+    }
+    for ( int g = 0; g < groupIds.length; g++ )
+    {
+      groupIds[g] = concat( ' ', getIdentifier( g ).getBytes( "US-ASCII" ), '\n' );
+    }
 
-      final int time = ( int )( timestamp / ( aCapturedData.getSampleRate() * aTimebase ) );
+    // The reader only produces (masked) transitions...
+    final TransitionReader reader = aContext.createTransitionReader();
+
+    boolean first = true;
+    int oldValue = 0;
+    long lastTime = Long.MIN_VALUE;
+    while ( reader.next() )
+    {
+      final int[] values = reader.getValues();
+      final long[] timestamps = reader.getTimestamps();
 
-      if ( ( i == 0 ) || ( oldValue != value ) )
+      for ( int i = 0, size = reader.getCount(); i < size; i++ )
       {
-        writeTime( aWriter, time );
-        writeVariableData( aWriter, channelCount, channelMask, value, oldValue, ( i == 0 ) );
+        final int value = values[i];
+
+        final long timestamp = timestamps[i];
+        lastTime = exact ? ( timestamp * factor ) : ( long )( timestamp / samplesPerUnit );
+        writeTime( aWriter, lastTime );
+
+        final int changed = ( first ? -1 : ( value ^ oldValue ) ) & channelMask;
+        if ( aVectors )
+        {
+          writeVectorData( aWriter, groupIds, channelCount, channelMask, changed, value );
+        }
+        else
+        {
+          int bits = changed;
+          while ( bits != 0 )
+          {
+            final int bit = Integer.numberOfTrailingZeros( bits );
+            aWriter.write( ( ( value & ( 1 << bit ) ) != 0 ) ? oneLines[bit] : zeroLines[bit] );
+            bits &= bits - 1;
+          }
+        }
+
+        oldValue = value;
+        first = false;
       }
-
-      oldValue = value;
     }
 
-    final int time = ( int )( aCapturedData.getAbsoluteLength() / ( aCapturedData.getSampleRate() * aTimebase ) );
-    writeTime( aWriter, time );
+    // Mark the end of the dump, unless the last value change already did...
+    final long endTime = aContext.getEndTime();
+    final long endUnits = exact ? ( endTime * factor ) : ( long )( endTime / samplesPerUnit );
+    if ( endUnits > lastTime )
+    {
+      writeTime( aWriter, endUnits );
+    }
   }
 
   /**
    * @param aWriter
    * @param aContainer
+   * @param aChannelMask
    * @param aTimescale
+   * @param aVectors
    */
-  protected void writePreamble( final PrintWriter aWriter, final DataSet aDataSet, final double aTimescale )
+  protected void writePreamble( final PrintWriter aWriter, final DataSet aDataSet, final int aChannelMask,
+      final double aTimescale, final boolean aVectors )
   {
     writeDeclaration( aWriter, "comment", ID );
     writeDate( aWriter );
     writeDeclaration( aWriter, "version", VERSION );
     writeTimescale( aWriter, aTimescale );
     writeDeclaration( aWriter, "scope", "module logic" );
-    writeVariableDefinitions( aWriter, aDataSet );
+    writeVariableDefinitions( aWriter, aDataSet, aChannelMask, aVectors );
     writeDeclaration( aWriter, "upscope" );
     writeDeclaration( aWriter, "enddefinitions" );
   }
@@ -147,51 +261,6 @@ public class ValueChangeDumpExporter implements Exporter
     aWriter.printf( "x%s", getIdentifier( aIndex ) ).println();
   }
 
-  /**
-   * @param aWriter
-   * @param aTimebase
-   */
-  protected void writeTime( final PrintWriter aWriter, final long aTimebase )
-  {
-    ValueChangeDumpHelper.writeTime( aWriter, aTimebase );
-  }
-
-  /**
-   * @param aWriter
-   *          the writer to write the variable data to;
-   * @param aChannelCount
-   *          the total channel count;
-   * @param aChannelMask
-   *          the enabled channel mask;
-   * @param aValue
-   *          the value to write.
-   */
-  protected void writeVariableData( final PrintWriter aWriter, final int aChannelCount, final int aChannelMask,
-      final int aValue, final int aOldValue, final boolean aAllBits )
-  {
-    int value = aValue;
-    int oldValue = aOldValue;
-    int mask = aChannelMask;
-    for ( int i = 0; i < aChannelCount; i++ )
-    {
-      if ( ( mask & ( 1 << i ) ) == 0 )
-      {
-        continue;
-      }
-
-      final int bitValue = ( value & 1 );
-      final int oldBitValue = ( oldValue & 1 );
-
-      if ( aAllBits || ( bitValue != oldBitValue ) )
-      {
-        aWriter.printf( "%d%s", Integer.valueOf( bitValue ), getIdentifier( i ) ).println();
-      }
-
-      value >>= 1;
-      oldValue >>= 1;
-    }
-  }
-
   /**
    * Writes down all variable definitions.
    * 
@@ -199,15 +268,34 @@ public class ValueChangeDumpExporter implements Exporter
    *          the print writer to write to, cannot be <code>null</code>;
    * @param aContainer
    *          the data container to take the channel information from, cannot be
-   *          <code>null</code>.
+   *          <code>null</code>;
+   * @param aChannelMask
+   *          the bit mask of the channels to define;
+   * @param aVectors
+   *          <code>true</code> to define channel groups as vectors,
+   *          <code>false</code> to define individual channels.
    */
-  protected void writeVariableDefinitions( final PrintWriter aWriter, final DataSet aDataSet )
+  protected void writeVariableDefinitions( final PrintWriter aWriter, final DataSet aDataSet, final int aChannelMask,
+      final boolean aVectors )
   {
     final AcquisitionResult capturedData = aDataSet.getCapturedData();
 
-    final int channelMask = capturedData.getEnabledChannels();
+    final int channelMask = aChannelMask;
     final Channel[] channelLabels = aDataSet.getChannels();
 
+    if ( aVectors )
+    {
+      final int channelCount = capturedData.getChannels();
+      for ( int g = 0; ( g * GROUP_SIZE ) < channelCount; g++ )
+      {
+        if ( ( channelMask & getGroupMask( g, channelCount ) ) != 0 )
+        {
+          writeVectorVariable( aWriter, g, getGroupWidth( g, channelCount ), "group" + g );
+        }
+      }
+      return;
+    }
+
     for ( int i = 0; i < channelLabels.length; i++ )
     {
       if ( ( channelMask & ( 1 << i ) ) == 0 )
@@ -228,26 +316,112 @@ public class ValueChangeDumpExporter implements Exporter
   /**
    * @param aWriter
    * @param aContainer
+   * @param aChannelMask
+   * @param aVectors
    */
-  protected void writeVariableDump( final PrintWriter aWriter, final DataSet aDataSet )
+  protected void writeVariableDump( final PrintWriter aWriter, final DataSet aDataSet, final int aChannelMask,
+      final boolean aVectors )
   {
     final AcquisitionResult capturedData = aDataSet.getCapturedData();
 
     final int channelCount = capturedData.getChannels();
-    final int channelMask = capturedData.getEnabledChannels();
+    final int channelMask = aChannelMask;
 
     writeOpenDeclaration( aWriter, "dumpvars" );
 
-    for ( int i = 0; i < channelCount; i++ )
+    if ( aVectors )
     {
-      if ( ( channelMask & ( 1 << i ) ) == 0 )
+      for ( int g = 0; ( g * GROUP_SIZE ) < channelCount; g++ )
       {
-        continue;
+        if ( ( channelMask & getGroupMask( g, channelCount ) ) != 0 )
+        {
+          aWriter.printf( "bx %s", getIdentifier( g ) ).println();
+        }
       }
+    }
+    else
+    {
+      for ( int i = 0; i < channelCount; i++ )
+      {
+        if ( ( channelMask & ( 1 << i ) ) == 0 )
+        {
+          continue;
+        }
 
-      writeSingleVariableDefinition( aWriter, i );
+        writeSingleVariableDefinition( aWriter, i );
+      }
     }
 
     writeCloseDeclaration( aWriter );
   }
+
+  /**
+   * Returns the given identifier surrounded by the given prefix and suffix.
+   */
+  private static byte[] concat( final char aPrefix, final byte[] aId, final char aSuffix )
+  {
+    final byte[] result = new byte[aId.length + 2];
+    result[0] = ( byte )aPrefix;
+    System.arraycopy( aId, 0, result, 1, aId.length );
+    result[result.length - 1] = ( byte )aSuffix;
+    return result;
+  }
+
+  /**
+   * Returns the bit mask of all channels in the given channel group.
+   */
+  private static int getGroupMask( final int aGroup, final int aChannelCount )
+  {
+    return NumberUtils.getBitMask( getGroupWidth( aGroup, aChannelCount ) ) << ( aGroup * GROUP_SIZE );
+  }
+
+  /**
+   * Returns the number of channels in the given channel group.
+   */
+  private static int getGroupWidth( final int aGroup, final int aChannelCount )
+  {
+    return Math.min( GROUP_SIZE, aChannelCount - ( aGroup * GROUP_SIZE ) );
+  }
+
+  /**
+   * Writes a single time stamp.
+   */
+  private static void writeTime( final ValueChangeDumpWriter aWriter, final long aTime ) throws IOException
+  {
+    aWriter.write( '#' );
+    aWriter.writeDecimal( aTime );
+    aWriter.write( '\n' );
+  }
+
+  /**
+   * Writes the values of all changed channel groups as binary vectors; disabled
+   * channels are written as unknown.
+   */
+  private static void writeVectorData( final ValueChangeDumpWriter aWriter, final byte[][] aGroupIds,
+      final int aChannelCount, final int aChannelMask, final int aChanged, final int aValue ) throws IOException
+  {
+    for ( int g = 0; g < aGroupIds.length; g++ )
+    {
+      final int groupMask = getGroupMask( g, aChannelCount );
+      if ( ( aChanged & groupMask ) == 0 )
+      {
+        continue;
+      }
+
+      aWriter.write( 'b' );
+      for ( int bit = ( ( g * GROUP_SIZE ) + getGroupWidth( g, aChannelCount ) ) - 1; bit >= ( g * GROUP_SIZE ); bit-- )
+      {
+        final int mask = ( 1 << bit );
+        if ( ( aChannelMask & mask ) == 0 )
+        {
+          aWriter.write( 'x' );
+        }
+        else
+        {
+          aWriter.write( ( ( aValue & mask ) != 0 ) ? '1' : '0' );
+        }
+      }
+      aWriter.write( aGroupIds[g] );
+    }
+  }
 }
@@ -177,6 +177,26 @@ public class ValueChangeDumpHelper
     aWriter.printf( "$var wire 1 %s %s $end", getIdentifier( aIndex ), aLabel ).println();
   }
 
+  /**
+   * Writes the definition of a vector variable, for example, a group of
+   * channels.
+   * 
+   * @param aWriter
+   *          the print writer to write to, cannot be <code>null</code>;
+   * @param aIndex
+   *          the index of the identifier to use;
+   * @param aWidth
+   *          the width of the vector, in bits, > 0;
+   * @param aLabel
+   *          the name of the variable, cannot be <code>null</code>.
+   */
+  public static final void writeVectorVariable( final PrintWriter aWriter, final int aIndex, final int aWidth,
+      final String aLabel )
+  {
+    aWriter.printf( "$var wire %d %s %s [%d:0] $end", Integer.valueOf( aWidth ), getIdentifier( aIndex ), aLabel,
+        Integer.valueOf( aWidth - 1 ) ).println();
+  }
+
   /**
    * @param aTimebase
    * @return
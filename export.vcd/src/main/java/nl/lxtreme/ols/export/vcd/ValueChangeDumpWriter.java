@@ -0,0 +1,173 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.export.vcd;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+import nl.lxtreme.ols.api.util.*;
+
+
+/**
+ * Provides a writer for the (ASCII) value change dump format that collects all
+ * output in a large byte buffer, which is written to a channel in bulk.
+ * <p>
+ * This writer does not do any character encoding or formatting, making it
+ * suitable for writing the (large) value change section of a dump.
+ * </p>
+ */
+public final class ValueChangeDumpWriter implements Flushable
+{
+  // CONSTANTS
+
+  /** The default buffer size, in bytes. */
+  static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  // VARIABLES
+
+  private final WritableByteChannel channel;
+  private final byte[] buffer;
+  private final ByteBuffer byteBuffer;
+
+  private int position;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ValueChangeDumpWriter} instance.
+   *
+   * @param aStream
+   *          the output stream to write to, cannot be <code>null</code>. When
+   *          this is a file output stream, its file channel is used directly.
+   */
+  public ValueChangeDumpWriter( final OutputStream aStream )
+  {
+    this( ( aStream instanceof FileOutputStream ) ? ( ( FileOutputStream )aStream ).getChannel() : Channels
+        .newChannel( aStream ), DEFAULT_BUFFER_SIZE );
+  }
+
+  /**
+   * Creates a new {@link ValueChangeDumpWriter} instance.
+   *
+   * @param aChannel
+   *          the channel to write to, cannot be <code>null</code>;
+   * @param aBufferSize
+   *          the size of the buffer to use, in bytes, >= 64.
+   */
+  public ValueChangeDumpWriter( final WritableByteChannel aChannel, final int aBufferSize )
+  {
+    if ( aChannel == null )
+    {
+      throw new IllegalArgumentException( "Channel cannot be null!" );
+    }
+    if ( aBufferSize < 64 )
+    {
+      throw new IllegalArgumentException( "Buffer size too small!" );
+    }
+
+    this.channel = aChannel;
+    this.buffer = new byte[aBufferSize];
+    this.byteBuffer = ByteBuffer.wrap( this.buffer );
+  }
+
+  // METHODS
+
+  /**
+   * Writes all pending data to the underlying channel. The channel itself is
+   * not closed.
+   *
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  @Override
+  public void flush() throws IOException
+  {
+    this.byteBuffer.clear();
+    this.byteBuffer.limit( this.position );
+    while ( this.byteBuffer.hasRemaining() )
+    {
+      this.channel.write( this.byteBuffer );
+    }
+    this.position = 0;
+  }
+
+  /**
+   * Writes a single (ASCII) byte.
+   *
+   * @param aByte
+   *          the byte to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void write( final int aByte ) throws IOException
+  {
+    if ( this.position == this.buffer.length )
+    {
+      flush();
+    }
+    this.buffer[this.position++] = ( byte )aByte;
+  }
+
+  /**
+   * Writes the given bytes as-is.
+   *
+   * @param aBytes
+   *          the bytes to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void write( final byte[] aBytes ) throws IOException
+  {
+    int offset = 0;
+    int remaining = aBytes.length;
+    while ( remaining > 0 )
+    {
+      if ( this.position == this.buffer.length )
+      {
+        flush();
+      }
+      final int count = Math.min( remaining, this.buffer.length - this.position );
+      System.arraycopy( aBytes, offset, this.buffer, this.position, count );
+      this.position += count;
+      offset += count;
+      remaining -= count;
+    }
+  }
+
+  /**
+   * Writes the decimal representation of the given value.
+   *
+   * @param aValue
+   *          the value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeDecimal( final long aValue ) throws IOException
+  {
+    if ( ( this.buffer.length - this.position ) < DecimalFormatter.MAX_LENGTH )
+    {
+      flush();
+    }
+    this.position += DecimalFormatter.format( aValue, this.buffer, this.position );
+  }
+}
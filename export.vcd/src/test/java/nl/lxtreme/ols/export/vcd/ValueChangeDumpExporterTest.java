@@ -21,15 +21,19 @@
 package nl.lxtreme.ols.export.vcd;
 
 
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.io.*;
+import java.util.*;
 
 import javax.swing.*;
 
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.export.*;
 import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.test.data.DataTestUtils.TestDataProvider;
 import nl.lxtreme.ols.util.*;
 
 import org.junit.*;
@@ -44,7 +48,7 @@ public class ValueChangeDumpExporterTest
   // VARIABLES
 
   private JComponent component;
-  private OutputStream nullOutputStream;
+  private ByteArrayOutputStream outputStream;
   private ValueChangeDumpExporter exporter;
 
   @Rule
@@ -59,7 +63,7 @@ public class ValueChangeDumpExporterTest
   public void setUp()
   {
     this.component = mock( JComponent.class );
-    this.nullOutputStream = mock( OutputStream.class );
+    this.outputStream = new ByteArrayOutputStream();
     this.exporter = spy( new ValueChangeDumpExporter() );
   }
 
@@ -76,13 +80,12 @@ public class ValueChangeDumpExporterTest
   {
     DataSet dataSet = DataTestUtils.createStubDataSet( 16 );
 
-    this.exporter.export( dataSet, this.component, this.nullOutputStream );
+    this.exporter.export( dataSet, this.component, this.outputStream );
 
-    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ) );
+    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ), anyInt(), eq( false ) );
     verify( this.exporter, times( 16 ) ).writeSingleVariableDefinition( any( PrintWriter.class ), anyInt() );
-    verify( this.exporter, times( 2 ) ).writeVariableData( any( PrintWriter.class ), eq( 16 ), eq( 65535 ), anyInt(),
-        anyInt(), anyBoolean() );
-    verify( this.exporter, times( 3 ) ).writeTime( any( PrintWriter.class ), anyLong() );
+    assertEquals( 3, countLines( "#" ) );
+    assertEquals( 16 + 8, countLines( "0" ) + countLines( "1" ) );
   }
 
   /**
@@ -98,13 +101,39 @@ public class ValueChangeDumpExporterTest
   {
     DataSet dataSet = DataTestUtils.createStubDataSet( 8 );
 
-    this.exporter.export( dataSet, this.component, this.nullOutputStream );
+    this.exporter.export( dataSet, this.component, this.outputStream );
 
-    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ) );
+    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ), anyInt(), eq( false ) );
     verify( this.exporter, times( 8 ) ).writeSingleVariableDefinition( any( PrintWriter.class ), anyInt() );
-    verify( this.exporter, times( 4 ) ).writeVariableData( any( PrintWriter.class ), eq( 8 ), eq( 255 ), anyInt(),
-        anyInt(), anyBoolean() );
-    verify( this.exporter, times( 5 ) ).writeTime( any( PrintWriter.class ), anyLong() );
+    assertEquals( 5, countLines( "#" ) );
+    assertEquals( 8 + ( 3 * 8 ), countLines( "0" ) + countLines( "1" ) );
+  }
+
+  /**
+   * Test method for
+   * {@link ValueChangeDumpExporter#export(DataSet, JComponent, OutputStream)} .
+   * <p>
+   * This method tests that exporting channel groups as vectors works as
+   * expected.
+   * </p>
+   */
+  @Test
+  public void testExportChannelGroupsAsVectorsOk() throws IOException
+  {
+    DataSet dataSet = DataTestUtils.createStubDataSet( 12 );
+    doReturn( Boolean.TRUE ).when( this.exporter ).isExportVectors();
+
+    this.exporter.export( dataSet, this.component, this.outputStream );
+
+    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ), anyInt(), eq( true ) );
+    verify( this.exporter, never() ).writeSingleVariableDefinition( any( PrintWriter.class ), anyInt() );
+
+    assertEquals( 1, countLines( "$var wire 8 ! group0 [7:0] $end" ) );
+    assertEquals( 1, countLines( "$var wire 4 \" group1 [3:0] $end" ) );
+    assertEquals( 4, countLines( "#" ) );
+    assertEquals( 2, countLines( "b01010101 !" ) );
+    assertEquals( 1, countLines( "b10101010 !" ) );
+    assertEquals( 1, countLines( "b0000 \"" ) );
   }
 
   /**
@@ -133,6 +162,68 @@ public class ValueChangeDumpExporterTest
     }
   }
 
+  /**
+   * Test method for
+   * {@link ValueChangeDumpExporter#export(DataSet, JComponent, OutputStream)} .
+   * <p>
+   * This method tests that all lines, including those of the preamble, end
+   * with a single newline, regardless of the platform.
+   * </p>
+   */
+  @Test
+  public void testExportDataDumpWithNewlinesOnlyOk() throws IOException
+  {
+    DataSet dataSet = DataTestUtils.createStubDataSet( 8 );
+
+    final String oldSeparator = System.getProperty( "line.separator" );
+    try
+    {
+      System.setProperty( "line.separator", "\r\n" );
+
+      this.exporter.export( dataSet, this.component, this.outputStream );
+    }
+    finally
+    {
+      System.setProperty( "line.separator", oldSeparator );
+    }
+
+    final String dump = this.outputStream.toString( "US-ASCII" );
+    assertTrue( dump.indexOf( "$enddefinitions" ) > 0 );
+    assertEquals( -1, dump.indexOf( '\r' ) );
+  }
+
+  /**
+   * Test method for
+   * {@link ValueChangeDumpExporter#export(DataSet, JComponent, OutputStream)} .
+   * <p>
+   * This method tests that timestamps beyond 2^31 time units are exported
+   * without overflowing.
+   * </p>
+   */
+  @Test
+  public void testExportLongTimestampsOk() throws IOException
+  {
+    DataSet dataSet = DataTestUtils.createStubDataSet( 4, 1, 1000000, new TestDataProvider()
+    {
+      @Override
+      public void fillData( final int[] aValues, final long[] aTimestamps, final int aDataSize )
+      {
+        for ( int i = 0; i < aDataSize; i++ )
+        {
+          aValues[i] = ( i & 1 );
+          aTimestamps[i] = i * ( 1L << 32 );
+        }
+      }
+    } );
+
+    this.exporter.export( dataSet, this.component, this.outputStream );
+
+    final String[] lines = getLines();
+    assertEquals( "#12884901888", lines[lines.length - 3] );
+    assertEquals( "1!", lines[lines.length - 2] );
+    assertEquals( "#12884901889", lines[lines.length - 1] );
+  }
+
   /**
    * Test method for
    * {@link ValueChangeDumpExporter#export(DataSet, JComponent, OutputStream)} .
@@ -146,12 +237,100 @@ public class ValueChangeDumpExporterTest
   {
     DataSet dataSet = DataTestUtils.createStubDataSet( 1 );
 
-    this.exporter.export( dataSet, this.component, this.nullOutputStream );
+    this.exporter.export( dataSet, this.component, this.outputStream );
 
-    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ) );
+    verify( this.exporter ).writeVariableDump( any( PrintWriter.class ), eq( dataSet ), anyInt(), eq( false ) );
     verify( this.exporter, times( 1 ) ).writeSingleVariableDefinition( any( PrintWriter.class ), anyInt() );
-    verify( this.exporter, times( 16 ) ).writeVariableData( any( PrintWriter.class ), eq( 1 ), eq( 1 ), anyInt(),
-        anyInt(), anyBoolean() );
-    verify( this.exporter, times( 17 ) ).writeTime( any( PrintWriter.class ), anyLong() );
+    assertEquals( 17, countLines( "#" ) );
+    assertEquals( 16, countLines( "0!" ) + countLines( "1!" ) );
+  }
+
+  /**
+   * Test method for
+   * {@link ValueChangeDumpExporter#export(ExportContext, OutputStream)} .
+   * <p>
+   * This method tests that only the requested time range and channels are
+   * exported.
+   * </p>
+   */
+  @Test
+  public void testExportTimeRangeAndChannelMaskOk() throws IOException
+  {
+    DataSet dataSet = DataTestUtils.createStubDataSet( 4, 1, 1000000, new TestDataProvider()
+    {
+      @Override
+      public void fillData( final int[] aValues, final long[] aTimestamps, final int aDataSize )
+      {
+        for ( int i = 0; i < aDataSize; i++ )
+        {
+          aValues[i] = ( i & 3 );
+          aTimestamps[i] = i;
+        }
+      }
+    } );
+
+    this.exporter.export( new ExportContext( dataSet, this.component, 1L, 3L, 0x01, null ), this.outputStream );
+
+    verify( this.exporter, times( 1 ) ).writeSingleVariableDefinition( any( PrintWriter.class ), anyInt() );
+
+    final String[] lines = getLines();
+    // The last value change is at the end time, so no separate end marker...
+    assertArrayEquals( new String[] { "$end", "#1", "1!", "#2", "0!", "#3", "1!" }, //
+        Arrays.copyOfRange( lines, lines.length - 7, lines.length ) );
+  }
+
+  /**
+   * Test method for
+   * {@link ValueChangeDumpExporter#export(ExportContext, OutputStream)} .
+   * <p>
+   * This method tests that the end time is marked when it lies after the last
+   * value change.
+   * </p>
+   */
+  @Test
+  public void testExportWritesEndTimeAfterLastChangeOk() throws IOException
+  {
+    DataSet dataSet = DataTestUtils.createStubDataSet( 8, 1, 1000000, new TestDataProvider()
+    {
+      @Override
+      public void fillData( final int[] aValues, final long[] aTimestamps, final int aDataSize )
+      {
+        for ( int i = 0; i < aDataSize; i++ )
+        {
+          aValues[i] = ( i < 2 ) ? 0 : 1;
+          aTimestamps[i] = i;
+        }
+      }
+    } );
+
+    this.exporter.export( new ExportContext( dataSet, this.component, 0L, 6L, 0x01, null ), this.outputStream );
+
+    final String[] lines = getLines();
+    assertArrayEquals( new String[] { "#0", "0!", "#2", "1!", "#6" }, //
+        Arrays.copyOfRange( lines, lines.length - 5, lines.length ) );
+  }
+
+  /**
+   * Counts the number of exported lines that start with the given prefix.
+   */
+  private int countLines( final String aPrefix ) throws IOException
+  {
+    int count = 0;
+    for ( String line : getLines() )
+    {
+      if ( line.startsWith( aPrefix ) )
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the exported lines.
+   */
+  private String[] getLines() throws IOException
+  {
+    return this.outputStream.toString( "US-ASCII" ).split( "\\r?\\n" );
   }
 }
@@ -49,6 +49,13 @@ public final class Runner
     final File cacheDir;
     final boolean cleanCache;
     final int logLevel;
+    final boolean batch;
+    final List<String> batchInputs;
+    final String batchOutput;
+    final String batchExporter;
+    final List<String> batchTools;
+    final Properties batchSettings;
+    final int batchThreads;
 
     // CONSTRUCTORS
 
@@ -58,6 +65,14 @@ public final class Runner
       String _cacheDir = null;
       boolean _cleanCache = false;
       int _logLevel = 2;
+      boolean _batch = false;
+      List<String> _batchInputs = new ArrayList<String>();
+      String _batchOutput = null;
+      String _batchExporter = null;
+      List<String> _batchTools = new ArrayList<String>();
+      String _batchSettingsFile = null;
+      Properties _batchSettings = new Properties();
+      int _batchThreads = Runtime.getRuntime().availableProcessors();
 
       for ( String cmdLineArg : aCmdLineArgs )
       {
@@ -78,6 +93,67 @@ public final class Runner
         {
           _cacheDir = cmdLineArg.substring( 10 );
         }
+        else if ( "-batch".equals( cmdLineArg ) )
+        {
+          _batch = true;
+        }
+        else if ( cmdLineArg.startsWith( "-output=" ) )
+        {
+          _batchOutput = new File( cmdLineArg.substring( 8 ) ).getCanonicalPath();
+        }
+        else if ( cmdLineArg.startsWith( "-exporter=" ) )
+        {
+          _batchExporter = cmdLineArg.substring( 10 );
+        }
+        else if ( cmdLineArg.startsWith( "-tool=" ) )
+        {
+          _batchTools.add( cmdLineArg.substring( 6 ) );
+        }
+        else if ( cmdLineArg.startsWith( "-settings=" ) )
+        {
+          _batchSettingsFile = cmdLineArg.substring( 10 );
+        }
+        else if ( cmdLineArg.startsWith( "-set=" ) )
+        {
+          String arg = cmdLineArg.substring( 5 );
+          int idx = arg.indexOf( '=' );
+          if ( idx < 1 )
+          {
+            throw new IllegalArgumentException( String.format( "Invalid setting (%s), should be key=value!", arg ) );
+          }
+          _batchSettings.setProperty( arg.substring( 0, idx ).trim(), arg.substring( idx + 1 ) );
+        }
+        else if ( cmdLineArg.startsWith( "-threads=" ) )
+        {
+          _batchThreads = Integer.parseInt( cmdLineArg.substring( 9 ) );
+        }
+        else if ( !cmdLineArg.startsWith( "-" ) )
+        {
+          _batchInputs.add( new File( cmdLineArg ).getCanonicalPath() );
+        }
+      }
+
+      if ( _batch )
+      {
+        if ( _batchInputs.isEmpty() )
+        {
+          throw new IllegalArgumentException( "No input files or directories given for batch mode!" );
+        }
+        if ( _batchThreads < 1 )
+        {
+          throw new IllegalArgumentException( "Invalid number of threads, should be at least 1!" );
+        }
+        if ( ( _batchOutput != null ) && !new File( _batchOutput ).isDirectory() )
+        {
+          throw new IllegalArgumentException( String.format( "Invalid output directory (%s)!", _batchOutput ) );
+        }
+        if ( _batchSettingsFile != null )
+        {
+          // Settings given on the command line override those of the file...
+          Properties settings = loadSettings( new File( _batchSettingsFile ) );
+          settings.putAll( _batchSettings );
+          _batchSettings = settings;
+        }
       }
 
       if ( ( _logLevel < 0 ) || ( _logLevel > 6 ) )
@@ -93,7 +169,9 @@ public final class Runner
 
       if ( _cacheDir == null )
       {
-        _cacheDir = new File( _pluginDir, "/../.fwcache" ).getAbsolutePath();
+        // Batch mode uses its own cache, as it does not start the UI bundles,
+        // which otherwise would no longer be started by the regular client...
+        _cacheDir = new File( _pluginDir, _batch ? "/../.fwcache.batch" : "/../.fwcache" ).getAbsolutePath();
       }
 
       this.cacheDir = new File( _cacheDir ).getCanonicalFile();
@@ -105,6 +183,13 @@ public final class Runner
 
       this.cleanCache = _cleanCache;
       this.logLevel = _logLevel;
+      this.batch = _batch;
+      this.batchInputs = _batchInputs;
+      this.batchOutput = _batchOutput;
+      this.batchExporter = _batchExporter;
+      this.batchTools = _batchTools;
+      this.batchSettings = _batchSettings;
+      this.batchThreads = _batchThreads;
     }
 
     // METHODS
@@ -138,8 +223,40 @@ public final class Runner
 
       return null;
     }
+
+    /**
+     * Loads the tool settings from the given properties file.
+     *
+     * @param aFile
+     *          the file to load, cannot be <code>null</code>.
+     * @return the loaded settings, never <code>null</code>.
+     */
+    private static Properties loadSettings( final File aFile ) throws IOException
+    {
+      if ( !aFile.isFile() )
+      {
+        throw new IllegalArgumentException( String.format( "Invalid settings file (%s)!", aFile ) );
+      }
+
+      Properties result = new Properties();
+      InputStream is = new FileInputStream( aFile );
+      try
+      {
+        result.load( is );
+      }
+      finally
+      {
+        is.close();
+      }
+      return result;
+    }
   }
 
+  // CONSTANTS
+
+  /** The bundles that are not started in batch mode, as they provide the UI. */
+  private static final List<String> UI_BUNDLES = Arrays.asList( "nl.lxtreme.ols.client" );
+
   // VARIABLES
 
   private final CmdLineOptions options;
@@ -170,7 +287,20 @@ public final class Runner
    */
   public static void main( final String[] aArgs ) throws Exception
   {
-    Runner runner = new Runner( new CmdLineOptions( aArgs ) );
+    CmdLineOptions options = new CmdLineOptions( aArgs );
+    if ( options.batch )
+    {
+      // Batch mode does not need any UI...
+      System.setProperty( "java.awt.headless", "true" );
+      // The tools decode on a pool of their own, which should not use more
+      // threads than the files are processed with...
+      if ( System.getProperty( "nl.lxtreme.ols.tool.threads" ) == null )
+      {
+        System.setProperty( "nl.lxtreme.ols.tool.threads", Integer.toString( options.batchThreads ) );
+      }
+    }
+
+    Runner runner = new Runner( options );
     runner.run();
     runner.waitForStop();
   }
@@ -216,7 +346,8 @@ public final class Runner
     switch ( event.getType() )
     {
       case FrameworkEvent.STOPPED:
-        System.exit( 0 );
+        // In batch mode, the exit code tells whether all files are processed...
+        System.exit( this.options.batch ? Integer.getInteger( "nl.lxtreme.ols.batch.exitCode", 0 ).intValue() : 0 );
       case FrameworkEvent.ERROR:
       case FrameworkEvent.WARNING:
         System.exit( 1 );
@@ -285,7 +416,7 @@ public final class Runner
     }
   }
 
-  private Map<String, Object> createConfig()
+  private Map<String, Object> createConfig() throws IOException
   {
     this.fwLogger = new Logger();
 
@@ -310,6 +441,29 @@ public final class Runner
 
     config.put( "nl.lxtreme.ols.config.dir", this.options.pluginDir.getAbsolutePath() );
 
+    if ( this.options.batch )
+    {
+      // Picked up by the project bundle, which runs the batch in the
+      // background and stops the framework when done...
+      config.put( "nl.lxtreme.ols.batch.input", join( this.options.batchInputs ) );
+      config.put( "nl.lxtreme.ols.batch.tools", join( this.options.batchTools ) );
+      config.put( "nl.lxtreme.ols.batch.threads", Integer.toString( this.options.batchThreads ) );
+      if ( this.options.batchOutput != null )
+      {
+        config.put( "nl.lxtreme.ols.batch.output", this.options.batchOutput );
+      }
+      if ( this.options.batchExporter != null )
+      {
+        config.put( "nl.lxtreme.ols.batch.exporter", this.options.batchExporter );
+      }
+      if ( !this.options.batchSettings.isEmpty() )
+      {
+        StringWriter writer = new StringWriter();
+        this.options.batchSettings.store( writer, null /* comments */);
+        config.put( "nl.lxtreme.ols.batch.settings", writer.toString() );
+      }
+    }
+
     return config;
   }
 
@@ -371,6 +525,23 @@ public final class Runner
     return aBundle.getHeaders().get( Constants.FRAGMENT_HOST ) != null;
   }
 
+  /**
+   * Joins the given values with the platform's path separator.
+   */
+  private String join( final List<String> aValues )
+  {
+    StringBuilder sb = new StringBuilder();
+    for ( String value : aValues )
+    {
+      if ( sb.length() > 0 )
+      {
+        sb.append( File.pathSeparatorChar );
+      }
+      sb.append( value );
+    }
+    return sb.toString();
+  }
+
   private void log( final int aLevel, final String aMessage )
   {
     this.fwLogger.log( aLevel, aMessage );
@@ -434,6 +605,12 @@ public final class Runner
 
   private void startBundle( final Bundle aBundle )
   {
+    if ( this.options.batch && UI_BUNDLES.contains( aBundle.getSymbolicName() ) )
+    {
+      log( LogService.LOG_DEBUG, "Not starting UI bundle: " + aBundle.getSymbolicName() + " in batch mode..." );
+      return;
+    }
+
     if ( !isFragment( aBundle ) )
     {
       log( LogService.LOG_DEBUG, "Starting bundle: " + aBundle.getSymbolicName() + "..." );
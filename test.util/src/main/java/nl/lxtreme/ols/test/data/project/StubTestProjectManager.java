@@ -25,6 +25,7 @@ import java.beans.*;
 import java.io.*;
 
 import nl.lxtreme.ols.api.data.project.*;
+import nl.lxtreme.ols.api.task.*;
 
 
 /**
@@ -57,6 +58,25 @@ public class StubTestProjectManager implements ProjectManager
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Task<Void> createRecoverProjectTask()
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Task<Void> createSaveProjectTask( final String aName, final File aFile,
+      final TaskProgressListener aProgressListener )
+  {
+    throw new UnsupportedOperationException();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -66,6 +86,15 @@ public class StubTestProjectManager implements ProjectManager
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void discardRecoverableProject()
+  {
+    // NO-op
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -75,6 +104,15 @@ public class StubTestProjectManager implements ProjectManager
     return this.project;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean hasRecoverableProject()
+  {
+    return false;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -21,23 +21,239 @@
 package nl.lxtreme.ols.tool.onewire;
 
 
-import static nl.lxtreme.ols.util.NumberUtils.*;
-
 import java.util.logging.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
-import nl.lxtreme.ols.api.util.*;
+import nl.lxtreme.ols.tool.base.*;
 import nl.lxtreme.ols.tool.base.annotation.*;
 
 
 /**
  * @author jawi
  */
-public class OneWireAnalyserTask implements ToolTask<OneWireDataSet>
+public class OneWireAnalyserTask implements TransitionDecoderTask<OneWireDataSet>
 {
+  // INNER TYPES
+
+  /**
+   * Decodes the symbols of the 1-wire line from the transitions pushed to it.
+   */
+  private final class OneWireDecoder implements TransitionDecoder
+  {
+    // CONSTANTS
+
+    /** Waiting for the falling edge that starts a symbol. */
+    private static final int WAIT_FOR_FALLING_EDGE = 0;
+    /** Waiting for the rising edge that ends a symbol. */
+    private static final int WAIT_FOR_RISING_EDGE = 1;
+    /** Waiting for the falling edge of a slave presence pulse. */
+    private static final int WAIT_FOR_PRESENCE = 2;
+
+    // VARIABLES
+
+    private final OneWireDataSet dataSet;
+    private final long endOfDecode;
+    private final double timingCorrection;
+
+    private int state;
+    private long time;
+    private long fallingEdge;
+    private long risingEdge;
+
+    private int bitCount;
+    private int byteValue;
+    private long byteStartTime;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link OneWireDecoder} instance.
+     * 
+     * @param aData
+     *          the acquired data to decode, cannot be <code>null</code>;
+     * @param aDataSet
+     *          the decoded data set to add the decoding results to, cannot be
+     *          <code>null</code>.
+     */
+    OneWireDecoder( final AcquisitionResult aData, final OneWireDataSet aDataSet )
+    {
+      this.dataSet = aDataSet;
+      this.endOfDecode = aData.getTimestamps()[aDataSet.getEndOfDecode() - 1];
+      // The timing of the 1-wire bus is done in uS, so determine what scale
+      // we've to use in order to obtain those kind of time values...
+      this.timingCorrection = ( 1.0e6 / aData.getSampleRate() );
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannelMask()
+    {
+      return OneWireAnalyserTask.this.owLineMask;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEnd( final int aSampleIdx, final long aTimestamp )
+    {
+      if ( this.state == WAIT_FOR_RISING_EDGE )
+      {
+        // No rising edge found; let the symbol last until the end...
+        decodeSymbol( this.endOfDecode );
+      }
+      if ( this.state == WAIT_FOR_PRESENCE )
+      {
+        decodeReset( false );
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart( final int aSampleIdx, final long aTimestamp, final int aValue )
+    {
+      this.state = WAIT_FOR_FALLING_EDGE;
+      this.time = Math.max( 0, aTimestamp );
+      this.bitCount = 8;
+      this.byteValue = 0;
+      this.byteStartTime = this.time;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTransition( final int aSampleIdx, final long aTimestamp, final int aOldValue, final int aNewValue )
+    {
+      if ( aTimestamp >= this.endOfDecode )
+      {
+        return;
+      }
+
+      final boolean falling = ( aNewValue & OneWireAnalyserTask.this.owLineMask ) == 0;
+      if ( this.state == WAIT_FOR_PRESENCE )
+      {
+        if ( !falling )
+        {
+          return;
+        }
+        // The difference with the last rising edge should indicate the
+        // presence of a slave or not...
+        decodeReset( ( aTimestamp > 0 )
+            && OneWireAnalyserTask.this.owTiming.isSlavePresencePulse( ( aTimestamp - this.risingEdge )
+                * this.timingCorrection ) );
+        // This falling edge might as well start the next symbol...
+      }
+
+      if ( this.state == WAIT_FOR_FALLING_EDGE )
+      {
+        if ( falling && ( aTimestamp > this.time ) )
+        {
+          this.fallingEdge = aTimestamp;
+          this.state = WAIT_FOR_RISING_EDGE;
+        }
+      }
+      else if ( ( this.state == WAIT_FOR_RISING_EDGE ) && !falling )
+      {
+        decodeSymbol( aTimestamp );
+      }
+    }
+
+    /**
+     * Completes a master bus reset.
+     * 
+     * @param aSlavePresent
+     *          <code>true</code> if a slave presence pulse was found,
+     *          <code>false</code> otherwise.
+     */
+    private void decodeReset( final boolean aSlavePresent )
+    {
+      final OneWireTiming timing = OneWireAnalyserTask.this.owTiming;
+
+      // Advance the time until *after* the reset pulse...
+      this.time = ( long )( this.fallingEdge + ( timing.getResetFrameLength() / this.timingCorrection ) );
+      this.state = WAIT_FOR_FALLING_EDGE;
+
+      LOG.log( Level.FINE, "Master bus reset; slave is {0}present...", ( aSlavePresent ? "" : "NOT " ) );
+
+      reportReset( this.dataSet, this.fallingEdge, this.time, aSlavePresent );
+    }
+
+    /**
+     * Decodes the symbol that ends at the given rising edge.
+     * 
+     * @param aRisingEdge
+     *          the time of the rising edge.
+     */
+    private void decodeSymbol( final long aRisingEdge )
+    {
+      final OneWireTiming timing = OneWireAnalyserTask.this.owTiming;
+
+      this.risingEdge = aRisingEdge;
+      this.state = WAIT_FOR_FALLING_EDGE;
+
+      // Take the difference in time, which should be an indication of what
+      // symbol is transmitted...
+      final double diff = ( ( this.risingEdge - this.fallingEdge ) * this.timingCorrection );
+      if ( timing.isReset( diff ) )
+      {
+        // Wait for the next falling edge...
+        this.state = WAIT_FOR_PRESENCE;
+        return;
+      }
+
+      if ( this.bitCount == 8 )
+      {
+        // Take the falling edge of the most significant bit as start of our
+        // decoded byte value...
+        this.byteStartTime = this.fallingEdge;
+      }
+
+      if ( timing.isZero( diff ) )
+      {
+        // Zero bit: only update timing...
+        this.time = ( long )( this.fallingEdge + ( timing.getBitFrameLength() / this.timingCorrection ) );
+      }
+      else if ( timing.isOne( diff ) )
+      {
+        // Bytes are sent LSB first, so decode the byte as well with LSB
+        // first...
+        this.byteValue |= 0x80;
+        this.time = ( long )( this.fallingEdge + ( timing.getBitFrameLength() / this.timingCorrection ) );
+      }
+      else
+      {
+        // Unknown symbol; report it as bus error and restart our byte...
+        reportBusError( this.dataSet, this.byteStartTime );
+        this.byteValue = 0;
+        this.bitCount = 8;
+        this.time = this.fallingEdge;
+        return;
+      }
+
+      if ( --this.bitCount == 0 )
+      {
+        // Report the complete byte value...
+        reportData( this.dataSet, this.byteStartTime, this.time, this.byteValue );
+        this.byteValue = 0;
+        this.bitCount = 8;
+      }
+      else
+      {
+        this.byteValue >>= 1;
+      }
+    }
+  }
+
   // CONSTANTS
 
   private static final String OW_1_WIRE = "1-Wire";
@@ -53,6 +269,7 @@ public class OneWireAnalyserTask implements ToolTask<OneWireDataSet>
   private int owLineIndex;
   private int owLineMask;
   private OneWireTiming owTiming;
+  private OneWireDataSet decodedData;
 
   // CONSTRUCTORS
 
@@ -80,6 +297,31 @@ public class OneWireAnalyserTask implements ToolTask<OneWireDataSet>
    */
   @Override
   public OneWireDataSet call() throws Exception
+  {
+    final DecoderEngine engine = new DecoderEngine();
+    prepareDecoding( engine );
+
+    this.progressListener.setProgress( 0 );
+    // Decode the actual data...
+    engine.decode( this.context.getData(), this.progressListener );
+
+    return completeDecoding();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public OneWireDataSet completeDecoding()
+  {
+    return this.decodedData;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void prepareDecoding( final DecoderEngine aEngine )
   {
     final AcquisitionResult data = this.context.getData();
     final int[] values = data.getValues();
@@ -113,15 +355,13 @@ public class OneWireAnalyserTask implements ToolTask<OneWireDataSet>
       throw new IllegalStateException( "No IDLE state found!" );
     }
 
-    final OneWireDataSet decodedData = new OneWireDataSet( sampleIdx, sampleCount, data );
+    this.decodedData = new OneWireDataSet( sampleIdx, sampleCount, data );
 
     // Update the channel label and clear any existing annotations on the
     // channel...
     prepareResult( OW_1_WIRE );
-    // Decode the actual data...
-    decodeData( data, decodedData );
 
-    return decodedData;
+    aEngine.addDecoder( new OneWireDecoder( data, this.decodedData ), sampleIdx, sampleCount );
   }
 
   /**
@@ -148,180 +388,6 @@ public class OneWireAnalyserTask implements ToolTask<OneWireDataSet>
     this.owLineMask = ( 1 << aIndex );
   }
 
-  /**
-   * Does the actual decoding of the 1-wire data.
-   * 
-   * @param aDataSet
-   *          the decoded data set to add the decoding results to, cannot be
-   *          <code>null</code>.
-   */
-  private void decodeData( final AcquisitionResult aData, final OneWireDataSet aDataSet )
-  {
-    final long[] timestamps = aData.getTimestamps();
-
-    this.progressListener.setProgress( 0 );
-
-    final long startOfDecode = timestamps[aDataSet.getStartOfDecode()];
-    final long endOfDecode = timestamps[aDataSet.getEndOfDecode() - 1];
-
-    // The timing of the 1-wire bus is done in uS, so determine what scale we've
-    // to use in order to obtain those kind of time values...
-    final double timingCorrection = ( 1.0e6 / aData.getSampleRate() );
-
-    long time = Math.max( 0, startOfDecode );
-
-    int bitCount = 8;
-    int byteValue = 0;
-    long byteStartTime = time;
-
-    while ( ( endOfDecode - time ) > 0 )
-    {
-      long fallingEdge = findEdge( aData, time, endOfDecode, Edge.FALLING );
-      if ( fallingEdge < 0 )
-      {
-        LOG.log( Level.INFO, "Decoding ended at {0}; no falling edge found...",
-            Unit.Time.format( time / ( double )aData.getSampleRate() ) );
-        break;
-      }
-      long risingEdge = findEdge( aData, fallingEdge, endOfDecode, Edge.RISING );
-      if ( risingEdge < 0 )
-      {
-        risingEdge = endOfDecode;
-      }
-
-      // Take the difference in time, which should be an indication of what
-      // symbol is transmitted...
-      final double diff = ( ( risingEdge - fallingEdge ) * timingCorrection );
-      if ( this.owTiming.isReset( diff ) )
-      {
-        // Take the next falling edge, whose difference with the last leading
-        // edge should indicate the presence of a slave or not...
-        final long nextFallingEdge = findEdge( aData, risingEdge, endOfDecode, Edge.FALLING );
-
-        boolean slavePresent = false;
-        if ( nextFallingEdge > 0 )
-        {
-          // Found, lets check whether it is a valid slave presence pulse...
-          slavePresent = this.owTiming.isSlavePresencePulse( ( nextFallingEdge - risingEdge ) * timingCorrection );
-        }
-
-        // Advance the time until *after* the reset pulse...
-        time = ( long )( fallingEdge + ( this.owTiming.getResetFrameLength() / timingCorrection ) );
-
-        LOG.log( Level.FINE, "Master bus reset; slave is {0}present...", ( slavePresent ? "" : "NOT " ) );
-
-        reportReset( aDataSet, fallingEdge, time, slavePresent );
-      }
-      else
-      {
-        if ( bitCount == 8 )
-        {
-          // Take the falling edge of the most significant bit as start of our
-          // decoded byte value...
-          byteStartTime = fallingEdge;
-        }
-
-        if ( this.owTiming.isZero( diff ) )
-        {
-          // Zero bit: only update timing...
-          time = ( long )( fallingEdge + ( this.owTiming.getBitFrameLength() / timingCorrection ) );
-        }
-        else if ( this.owTiming.isOne( diff ) )
-        {
-          // Bytes are sent LSB first, so decode the byte as well with LSB
-          // first...
-          byteValue |= 0x80;
-          time = ( long )( fallingEdge + ( this.owTiming.getBitFrameLength() / timingCorrection ) );
-        }
-        else
-        {
-          // Unknown symbol; report it as bus error and restart our byte...
-          reportBusError( aDataSet, byteStartTime );
-          byteValue = 0;
-          bitCount = 8;
-          time = fallingEdge;
-          // Don't bother continuing; instead start over...
-          continue;
-        }
-
-        if ( --bitCount == 0 )
-        {
-          // Report the complete byte value...
-          reportData( aDataSet, byteStartTime, time, byteValue );
-          byteValue = 0;
-          bitCount = 8;
-        }
-        else
-        {
-          byteValue >>= 1;
-        }
-      }
-
-      // Update progress...
-      this.progressListener.setProgress( getPercentage( time, startOfDecode, endOfDecode ) );
-    }
-
-    this.progressListener.setProgress( 100 );
-  }
-
-  /**
-   * Find first falling edge this is the start of the start bit. If the signal
-   * is inverted, find the first rising edge.
-   * 
-   * @param aStartOfDecode
-   *          the timestamp to start searching;
-   * @param aEndOfDecode
-   *          the timestamp to end the search;
-   * @param aMask
-   *          the bit-value mask to apply for finding the start bit.
-   * @return the time at which the start bit was found, -1 if it is not found.
-   */
-  private long findEdge( final AcquisitionResult aData, final long aStartOfDecode, final long aEndOfDecode,
-      final Edge aEdge )
-  {
-    long result = -1;
-
-    int oldBitValue = getDataValue( aData, aStartOfDecode ) & this.owLineMask;
-    for ( long timeCursor = aStartOfDecode + 1; ( result < 0 ) && ( timeCursor < aEndOfDecode ); timeCursor++ )
-    {
-      final int bitValue = getDataValue( aData, timeCursor ) & this.owLineMask;
-
-      final Edge edge = Edge.toEdge( oldBitValue, bitValue );
-      if ( aEdge == edge )
-      {
-        result = timeCursor;
-      }
-
-      oldBitValue = bitValue;
-    }
-
-    return result;
-  }
-
-  /**
-   * Returns the data value for the given time stamp.
-   * 
-   * @param aTimeValue
-   *          the time stamp to return the data value for.
-   * @return the data value of the sample index right before the given time
-   *         value.
-   */
-  private int getDataValue( final AcquisitionResult aData, final long aTimeValue )
-  {
-    final int[] values = aData.getValues();
-    final long[] timestamps = aData.getTimestamps();
-
-    int i;
-    for ( i = 1; i < timestamps.length; i++ )
-    {
-      if ( aTimeValue < timestamps[i] )
-      {
-        break;
-      }
-    }
-    return values[i - 1];
-  }
-
   /**
    * Determines the resulting channel label and clears any existing annotations.
    * 
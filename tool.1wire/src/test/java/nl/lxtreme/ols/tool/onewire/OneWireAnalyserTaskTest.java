@@ -0,0 +1,108 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.onewire;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.data.*;
+
+import org.junit.*;
+import org.mockito.*;
+
+
+/**
+ * Test cases for {@link OneWireAnalyserTask}.
+ */
+public class OneWireAnalyserTaskTest
+{
+  // CONSTANTS
+
+  /** One sample per microsecond. */
+  private static final int SAMPLE_RATE = 1000000;
+
+  // METHODS
+
+  /**
+   * Tests that bytes that are separated by an (extremely) long idle time are
+   * decoded, without having to step through all idle time.
+   */
+  @Test( timeout = 10000 )
+  public void testDecodeBytesWithLongIdleTimeOk() throws Exception
+  {
+    final List<Integer> values = new ArrayList<Integer>();
+    final List<Long> timestamps = new ArrayList<Long>();
+
+    values.add( Integer.valueOf( 1 ) );
+    timestamps.add( Long.valueOf( 0L ) );
+
+    addByte( values, timestamps, 1000L, 0xA5 );
+    addByte( values, timestamps, 1000000000000L, 0x3C );
+
+    // Idle until the end of the capture...
+    values.add( Integer.valueOf( 1 ) );
+    timestamps.add( Long.valueOf( 2000000000000L ) );
+
+    final AcquisitionResult data = new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 1, 0x01,
+        2000000000001L );
+    final ToolContext context = DataTestUtils.createToolContext( data );
+
+    final OneWireAnalyserTask task = new OneWireAnalyserTask( context, Mockito.mock( ToolProgressListener.class ),
+        Mockito.mock( AnnotationListener.class ) );
+    task.setOneWireLineIndex( 0 );
+    task.setOneWireBusMode( OneWireBusMode.STANDARD );
+
+    final OneWireDataSet result = task.call();
+
+    final List<Integer> bytes = new ArrayList<Integer>();
+    for ( OneWireData owData : result.getData() )
+    {
+      assertFalse( "Unexpected event: " + owData.getEventName(), owData.isEvent() );
+      bytes.add( Integer.valueOf( owData.getValue() ) );
+    }
+    assertEquals( Arrays.asList( Integer.valueOf( 0xA5 ), Integer.valueOf( 0x3C ) ), bytes );
+  }
+
+  /**
+   * Adds the transitions of the eight (LSB first) time slots of a single byte
+   * starting at the given time.
+   */
+  private static void addByte( final List<Integer> aValues, final List<Long> aTimestamps, final long aStartTime,
+      final int aByte )
+  {
+    for ( int i = 0; i < 8; i++ )
+    {
+      final long slotStart = aStartTime + ( i * 70L );
+      final long lowTime = ( ( aByte >> i ) & 1 ) != 0 ? 6L : 60L;
+
+      aValues.add( Integer.valueOf( 0 ) );
+      aTimestamps.add( Long.valueOf( slotStart ) );
+      aValues.add( Integer.valueOf( 1 ) );
+      aTimestamps.add( Long.valueOf( slotStart + lowTime ) );
+    }
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.onewire;
+
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.annotation.*;
+
+import org.junit.*;
+import org.mockito.*;
+
+
+/**
+ * Verifies that {@link OneWireAnalyserTask}, which is driven by the transitions
+ * of the captured data, yields exactly the same results as the reference
+ * decoder below, which searches for each edge in turn like the original 1-Wire
+ * decoder did.
+ */
+public class OneWireParityTest
+{
+  // INNER TYPES
+
+  /**
+   * Collects the data annotations reported to it as text.
+   */
+  static final class RecordingListener implements AnnotationListener
+  {
+    // VARIABLES
+
+    final List<String> annotations = new ArrayList<String>();
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations()
+    {
+      this.annotations.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations( final int aChannelIdx )
+    {
+      this.annotations.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnnotation( final Annotation<?> aAnnotation )
+    {
+      if ( aAnnotation instanceof DataAnnotation )
+      {
+        final DataAnnotation<?> annotation = ( DataAnnotation<?> )aAnnotation;
+        this.annotations.add( annotation.getStartTimestamp() + "-" + annotation.getEndTimestamp() + ": "
+            + annotation.getAnnotation() );
+      }
+    }
+  }
+
+  /**
+   * Provides the reference decoder, which searches the falling and rising
+   * edges of each symbol one after another.
+   */
+  static final class ReferenceDecoder
+  {
+    // VARIABLES
+
+    private final AcquisitionResult data;
+    private final int lineIdx;
+    private final int lineMask;
+    private final OneWireTiming timing;
+    private final AnnotationListener listener;
+
+    private int cursor;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ReferenceDecoder} instance.
+     */
+    ReferenceDecoder( final AcquisitionResult aData, final int aLineIdx, final OneWireBusMode aBusMode,
+        final AnnotationListener aListener )
+    {
+      this.data = aData;
+      this.lineIdx = aLineIdx;
+      this.lineMask = ( 1 << aLineIdx );
+      this.timing = new OneWireTiming( aBusMode );
+      this.listener = aListener;
+    }
+
+    // METHODS
+
+    /**
+     * Decodes the 1-Wire line.
+     */
+    OneWireDataSet decode()
+    {
+      final int[] values = this.data.getValues();
+      final long[] timestamps = this.data.getTimestamps();
+
+      int startIdx = 0;
+      while ( ( startIdx < values.length ) && ( ( values[startIdx] & this.lineMask ) != this.lineMask ) )
+      {
+        startIdx++;
+      }
+      if ( startIdx == values.length )
+      {
+        throw new IllegalStateException( "No IDLE state found!" );
+      }
+
+      final OneWireDataSet dataSet = new OneWireDataSet( startIdx, values.length, this.data );
+
+      final long startOfDecode = timestamps[startIdx];
+      final long endOfDecode = timestamps[values.length - 1];
+      final double timingCorrection = ( 1.0e6 / this.data.getSampleRate() );
+
+      long time = Math.max( 0, startOfDecode );
+      this.cursor = startIdx;
+
+      int bitCount = 8;
+      int byteValue = 0;
+      long byteStartTime = time;
+
+      while ( ( endOfDecode - time ) > 0 )
+      {
+        final long fallingEdge = findEdge( time, endOfDecode, Edge.FALLING );
+        if ( fallingEdge < 0 )
+        {
+          break;
+        }
+        long risingEdge = findEdge( fallingEdge, endOfDecode, Edge.RISING );
+        if ( risingEdge < 0 )
+        {
+          risingEdge = endOfDecode;
+        }
+
+        final double diff = ( ( risingEdge - fallingEdge ) * timingCorrection );
+        if ( this.timing.isReset( diff ) )
+        {
+          final long nextFallingEdge = findEdge( risingEdge, endOfDecode, Edge.FALLING );
+
+          boolean slavePresent = false;
+          if ( nextFallingEdge > 0 )
+          {
+            slavePresent = this.timing.isSlavePresencePulse( ( nextFallingEdge - risingEdge ) * timingCorrection );
+          }
+
+          time = ( long )( fallingEdge + ( this.timing.getResetFrameLength() / timingCorrection ) );
+
+          dataSet.reportReset( this.lineIdx, getStartIndex( fallingEdge ), getEndIndex( time ), slavePresent );
+          report( fallingEdge, time, String.format( "Master reset, slave %s present", slavePresent ? "is"
+              : "is NOT" ) );
+        }
+        else
+        {
+          if ( bitCount == 8 )
+          {
+            byteStartTime = fallingEdge;
+          }
+
+          if ( this.timing.isZero( diff ) )
+          {
+            time = ( long )( fallingEdge + ( this.timing.getBitFrameLength() / timingCorrection ) );
+          }
+          else if ( this.timing.isOne( diff ) )
+          {
+            byteValue |= 0x80;
+            time = ( long )( fallingEdge + ( this.timing.getBitFrameLength() / timingCorrection ) );
+          }
+          else
+          {
+            dataSet.reportBusError( this.lineIdx, getStartIndex( byteStartTime ) );
+            report( byteStartTime, byteStartTime, OneWireDataSet.OW_BUS_ERROR );
+
+            byteValue = 0;
+            bitCount = 8;
+            time = fallingEdge;
+            continue;
+          }
+
+          if ( --bitCount == 0 )
+          {
+            dataSet.reportData( this.lineIdx, getStartIndex( byteStartTime ), getEndIndex( time ), byteValue );
+            report( byteStartTime, time, String.format( "0x%X (%c)", Integer.valueOf( byteValue ),
+                Integer.valueOf( byteValue ) ) );
+
+            byteValue = 0;
+            bitCount = 8;
+          }
+          else
+          {
+            byteValue >>= 1;
+          }
+        }
+      }
+
+      return dataSet;
+    }
+
+    /**
+     * Returns the time of the first given edge after the given time, or -1 if
+     * there is no such edge before the given end time.
+     */
+    private long findEdge( final long aStartTime, final long aEndTime, final Edge aEdge )
+    {
+      final int[] values = this.data.getValues();
+      final long[] timestamps = this.data.getTimestamps();
+
+      int i = Math.min( this.cursor, timestamps.length );
+      while ( ( i < timestamps.length ) && ( timestamps[i] <= aStartTime ) )
+      {
+        i++;
+      }
+      while ( ( i > 0 ) && ( timestamps[i - 1] > aStartTime ) )
+      {
+        i--;
+      }
+
+      for ( i = Math.max( 1, i ); ( i < timestamps.length ) && ( timestamps[i] < aEndTime ); i++ )
+      {
+        if ( Edge.toEdge( values[i - 1] & this.lineMask, values[i] & this.lineMask ) == aEdge )
+        {
+          this.cursor = i;
+          return timestamps[i];
+        }
+      }
+
+      this.cursor = i;
+      return -1;
+    }
+
+    /**
+     * Returns the sample index at which a symbol ending at the given time ends.
+     */
+    private int getEndIndex( final long aTime )
+    {
+      return Math.min( this.data.getSampleIndex( aTime ) - 1, this.data.getTimestamps().length - 1 );
+    }
+
+    /**
+     * Returns the sample index at which a symbol starting at the given time
+     * starts.
+     */
+    private int getStartIndex( final long aTime )
+    {
+      return Math.max( this.data.getSampleIndex( aTime ), 0 );
+    }
+
+    /**
+     * Reports an annotation to the listener.
+     */
+    private void report( final long aStartTime, final long aEndTime, final String aText )
+    {
+      this.listener.onAnnotation( new SampleDataAnnotation( this.lineIdx, aStartTime, aEndTime, aText ) );
+    }
+  }
+
+  // CONSTANTS
+
+  /** One sample per microsecond. */
+  private static final int SAMPLE_RATE = 1000000;
+
+  // METHODS
+
+  /**
+   * Tests that the bundled captures are decoded the same, in both bus modes.
+   */
+  @Test
+  public void testBundledCapturesOk() throws Exception
+  {
+    final Object[][] captures = { { "ds18b20_1.ols", Integer.valueOf( 0 ) },
+        { "ow_minimal.ols", Integer.valueOf( 2 ) } };
+    for ( Object[] capture : captures )
+    {
+      final URL resource = ResourceUtils.getResource( getClass(), ( String )capture[0] );
+      final AcquisitionResult data = DataTestUtils.getCapturedData( resource );
+
+      for ( OneWireBusMode busMode : OneWireBusMode.values() )
+      {
+        assertParity( capture[0] + " " + busMode, data, ( ( Integer )capture[1] ).intValue(), busMode );
+      }
+    }
+  }
+
+  /**
+   * Tests that random pulse trains are decoded the same, in both bus modes.
+   * Random pulses result in all kinds of symbols, bus errors and resets, with
+   * and without presence pulses.
+   */
+  @Test
+  public void testRandomPulsesOk() throws Exception
+  {
+    final Random random = new Random( 5318008L );
+    for ( int run = 0; run < 50; run++ )
+    {
+      final List<Integer> values = new ArrayList<Integer>();
+      final List<Long> timestamps = new ArrayList<Long>();
+
+      long time = 0L;
+      values.add( Integer.valueOf( 1 ) );
+      timestamps.add( Long.valueOf( time ) );
+
+      for ( int pulse = 0; pulse < 500; pulse++ )
+      {
+        // Mostly short pulses, sometimes long ones that are resets...
+        time += 1 + random.nextInt( ( random.nextInt( 4 ) == 0 ) ? 1000 : 100 );
+        values.add( Integer.valueOf( 0 ) );
+        timestamps.add( Long.valueOf( time ) );
+
+        time += 1 + random.nextInt( ( random.nextInt( 8 ) == 0 ) ? 1000 : 80 );
+        values.add( Integer.valueOf( 1 ) );
+        timestamps.add( Long.valueOf( time ) );
+      }
+
+      // Let some captures end halfway a pulse...
+      final long absLength = time + random.nextInt( 100 );
+      final AcquisitionResult data = new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 1, 0x01, absLength );
+
+      for ( OneWireBusMode busMode : OneWireBusMode.values() )
+      {
+        assertParity( "Run " + run + " " + busMode, data, 0, busMode );
+      }
+    }
+  }
+
+  /**
+   * Asserts that the analyser task yields the same decoded data and
+   * annotations as the reference decoder.
+   */
+  private void assertParity( final String aMessage, final AcquisitionResult aData, final int aLineIdx,
+      final OneWireBusMode aBusMode ) throws Exception
+  {
+    final RecordingListener expectedAnnotations = new RecordingListener();
+    final OneWireDataSet expected = new ReferenceDecoder( aData, aLineIdx, aBusMode, expectedAnnotations ).decode();
+
+    final RecordingListener actualAnnotations = new RecordingListener();
+    final ToolContext context = DataTestUtils.createToolContext( aData );
+
+    final OneWireAnalyserTask task = new OneWireAnalyserTask( context, Mockito.mock( ToolProgressListener.class ),
+        actualAnnotations );
+    task.setOneWireLineIndex( aLineIdx );
+    task.setOneWireBusMode( aBusMode );
+
+    final OneWireDataSet actual = task.call();
+
+    assertEquals( aMessage, expectedAnnotations.annotations, actualAnnotations.annotations );
+    assertEquals( aMessage, expected.getData(), actual.getData() );
+    assertEquals( aMessage, expected.getBusErrorCount(), actual.getBusErrorCount() );
+  }
+}
@@ -22,6 +22,9 @@ package nl.lxtreme.ols.tool.asm45;
 
 
 import static nl.lxtreme.ols.util.NumberUtils.*;
+
+import java.util.*;
+
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
@@ -208,6 +211,13 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
       new Asm45OpcodeTable( 0xffff, 0x73c0, "CDC", 0, 11 ), //
       new Asm45OpcodeTable( 0, 0, null, 0, 0 ) };
 
+  /**
+   * Dense lookup table for all 16-bit instruction words, holding the first
+   * matching entry of {@link #hp9845Table}, or <code>null</code> if no entry
+   * matches. Created once, as it does not depend on the acquired data.
+   */
+  private static final Asm45OpcodeTable[] OPCODES = createOpcodeIndex();
+
   // VARIABLES
 
   private final ToolContext context;
@@ -266,10 +276,12 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
 
     final Asm45DataSet asm45DataSet = new Asm45DataSet( startOfDecode, endOfDecode, data );
 
-    int idx = asm45DataSet.getStartOfDecode();
-    int startIdx = 0;
+    final int[] edges = findMemoryCycleEdges( values, asm45DataSet.getStartOfDecode(),
+        asm45DataSet.getEndOfDecode() - 1 );
 
-    int status = 0; // last control lines status
+    int startIdx = 0;
+    int lastReportIdx = asm45DataSet.getStartOfDecode() - 1;
+    int lastPercentage = -1;
 
     int clocks = 0; // system clocks consumed for the last instruction
     int block = 0; // 6-bit block address
@@ -280,15 +292,18 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
     String event = "???"; // event description (mnemonic etc.)
 
     /*
-     * Loop over the acquisition data
+     * Loop over the start and completion of all memory cycles, as nothing is
+     * decoded in between...
      */
-    for ( ; idx < ( asm45DataSet.getEndOfDecode() - 1 ); idx++ )
+    for ( int i = 0; i < edges.length; i++ )
     {
+      final int idx = edges[i];
       final int dataValue = values[idx];
+      // last control lines status
+      final int status = ( idx > asm45DataSet.getStartOfDecode() ) ? ( values[idx - 1] & 0xffff0000 ) : 0;
 
       control = dataValue & 0xffff0000;
       ida = ( ~dataValue & 0x0000ffff );
-      clocks++;
 
       // start memory cycle
       if ( ( ( status & this.lineSTMmask ) != 0 ) && ( ( control & this.lineSTMmask ) == 0 ) )
@@ -321,22 +336,22 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
           {
             if ( address < 32 )
             {
-              event = Asm45AnalyserTask.registers[address] + String.format( "&rarr;$%04x", ida );
+              event = Asm45AnalyserTask.registers[address] + "&rarr;$" + toHex4( ida );
             }
             else
             {
-              event = String.format( "%04x&rarr;$%04x", address, ida );
+              event = toHex4( address ) + "&rarr;$" + toHex4( ida );
             }
           }
           else
           {
             if ( address < 32 )
             {
-              event = Asm45AnalyserTask.registers[address] + String.format( "&larr;$%04x", ida );
+              event = Asm45AnalyserTask.registers[address] + "&larr;$" + toHex4( ida );
             }
             else
             {
-              event = String.format( "%04x&larr;$%04x", address, ida );
+              event = toHex4( address ) + "&larr;$" + toHex4( ida );
             }
           }
         }
@@ -368,22 +383,22 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
             {
               if ( address < 32 )
               {
-                event = Asm45AnalyserTask.registers[address] + String.format( "&rarr;$%04x", ida );
+                event = Asm45AnalyserTask.registers[address] + "&rarr;$" + toHex4( ida );
               }
               else
               {
-                event = String.format( "%04x&rarr;$%04x", address, ida );
+                event = toHex4( address ) + "&rarr;$" + toHex4( ida );
               }
             }
             else
             {
               if ( address < 32 )
               {
-                event = Asm45AnalyserTask.registers[address] + String.format( "&larr;$%04x", ida );
+                event = Asm45AnalyserTask.registers[address] + "&larr;$" + toHex4( ida );
               }
               else
               {
-                event = String.format( "%04x&larr;$%04x", address, ida );
+                event = toHex4( address ) + "&larr;$" + toHex4( ida );
               }
             }
           }
@@ -395,14 +410,19 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
                 && ( ( type == Asm45Data.TYPE_DATA_WORD ) || ( type == Asm45Data.TYPE_DATA_BYTE_LEFT ) || ( type == Asm45Data.TYPE_DATA_BYTE_RIGHT ) ) && this.reportData )
             || ( busGrant && this.reportBusGrants ) )
         {
+          // one clock per sample since the last reported event
+          clocks = idx - lastReportIdx;
           reportEvent( asm45DataSet, startIdx, idx, clocks, block, address, ida, busGrant, type, event );
-          clocks = 0;
+          lastReportIdx = idx;
         }
       }
 
-      status = control;
-
-      this.progressListener.setProgress( getPercentage( idx, startOfDecode, endOfDecode ) );
+      final int percentage = getPercentage( idx, startOfDecode, endOfDecode );
+      if ( percentage != lastPercentage )
+      {
+        this.progressListener.setProgress( percentage );
+        lastPercentage = percentage;
+      }
     }
 
     return asm45DataSet;
@@ -501,23 +521,13 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
     int operand;
     int count;
     int timing = 0;
-    int i = 0;
-    Asm45OpcodeTable op = hp9845Table[0];
     String ret_string = "";
 
-    /* get mnemonic */
-    while ( op.getMnemonic() != null )
-    {
-      if ( ( opcode & op.getMask() ) == op.getOpcode() )
-      {
-        break;
-      }
-      i++;
-      op = hp9845Table[i];
-    }
+    /* get mnemonic, only the lower 16 bits are significant */
+    final Asm45OpcodeTable op = OPCODES[opcode & 0xffff];
 
     /* if match, write mnemonic - else return */
-    if ( op.getMnemonic() == null )
+    if ( op == null )
     {
       return "???";
     }
@@ -545,24 +555,24 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
         if ( ( opcode & 0x0400 ) != 0 )
         {
           /* current page */
-          ret_string += String.format( " %04x", address + operand );
+          ret_string += " " + toHex4( address + operand );
         }
         else
         {
           /* base page */
           if ( operand < 0 )
           {
-            ret_string += String.format( " %04x", 0x10000 + operand );
+            ret_string += " " + toHex4( 0x10000 + operand );
           }
           else
           {
             if ( operand < 32 )
             {
-              ret_string += String.format( " %s", registers[operand] );
+              ret_string += " " + registers[operand];
             }
             else
             {
-              ret_string += String.format( " %04x", operand );
+              ret_string += " " + toHex4( operand );
             }
           }
         }
@@ -586,7 +596,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
 
       case 2: /* 5-bit register (for EXE) */
         operand = opcode & 0x001f;
-        ret_string += String.format( " %s", registers[operand] );
+        ret_string += " " + registers[operand];
         if ( ( opcode & 0x8000 ) != 0 )
         {
           timing += 6;
@@ -600,7 +610,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
         {
           operand -= 0x0040;
         }
-        ret_string += String.format( " *+%d [%04x]", operand, address + operand );
+        ret_string += " *+" + operand + " [" + toHex4( address + operand ) + "]";
         break;
 
       case 4:
@@ -610,7 +620,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
         {
           operand -= 0x0040;
         }
-        ret_string += String.format( " *+%d", operand );
+        ret_string += " *+" + operand;
 
         if ( ( opcode & 0x0080 ) != 0 )
         {
@@ -624,7 +634,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
           }
         }
 
-        ret_string += String.format( " [%04x]", address + operand );
+        ret_string += " [" + toHex4( address + operand ) + "]";
 
         break;
 
@@ -637,7 +647,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
         {
           operand -= 0x0040;
         }
-        ret_string += String.format( " %d", operand );
+        ret_string += " " + operand;
         if ( ( opcode & 0x40 ) != 0 )
         {
           ret_string += ",P";
@@ -647,7 +657,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
       case 6:
         /* 4-bit count */
         count = ( opcode & 0xf ) + 1;
-        ret_string += String.format( " %d", count );
+        ret_string += " " + count;
         if ( ( opcode & 0xfff0 ) == 0x7380 )
         {
           timing += count * 6; /* CLR */
@@ -665,7 +675,7 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
       case 7:
         /* 3-bit register with increment/decrement */
         operand = opcode & 0x7;
-        ret_string += String.format( " %s", Asm45AnalyserTask.registers[operand] );
+        ret_string += " " + Asm45AnalyserTask.registers[operand];
         if ( ( opcode & 0x0080 ) != 0 )
         {
           ret_string += ",D";
@@ -694,6 +704,80 @@ public class Asm45AnalyserTask implements ToolTask<Asm45DataSet>
     aDataSet.reportEvent( this.lineSMCidx, aStartSampleIdx, aEndSampleIdx, aClocks, aBlock, aAddress, aValue,
         aBusGrant, aType, aEvent );
   }
+
+  /**
+   * Creates the dense opcode lookup table, by matching each 16-bit instruction
+   * word against the HP9845 instruction table.
+   * 
+   * @return an array of 65536 entries, never <code>null</code>.
+   */
+  private static Asm45OpcodeTable[] createOpcodeIndex()
+  {
+    final Asm45OpcodeTable[] result = new Asm45OpcodeTable[0x10000];
+    for ( int opcode = 0; opcode < result.length; opcode++ )
+    {
+      for ( int i = 0; hp9845Table[i].getMnemonic() != null; i++ )
+      {
+        final Asm45OpcodeTable op = hp9845Table[i];
+        if ( ( opcode & op.getMask() ) == op.getOpcode() )
+        {
+          result[opcode] = op;
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Formats the given value as (at least) four hexadecimal digits, like
+   * <tt>%04x</tt> does.
+   */
+  private static String toHex4( final int aValue )
+  {
+    final String hex = Integer.toHexString( aValue );
+    if ( hex.length() >= 4 )
+    {
+      return hex;
+    }
+    return "0000".substring( hex.length() ).concat( hex );
+  }
+
+  /**
+   * Finds all samples at which a memory cycle is started (falling STM) or
+   * completed (rising SMC), as these are the only samples that need decoding.
+   * 
+   * @param aValues
+   *          the sample values;
+   * @param aStartIdx
+   *          the first sample index to consider;
+   * @param aEndIdx
+   *          the sample index to stop at (exclusive).
+   * @return the sample indices of all memory cycle edges, in ascending order.
+   */
+  private int[] findMemoryCycleEdges( final int[] aValues, final int aStartIdx, final int aEndIdx )
+  {
+    int[] result = new int[1024];
+    int count = 0;
+
+    int status = 0;
+    for ( int idx = aStartIdx; idx < aEndIdx; idx++ )
+    {
+      final int control = aValues[idx] & 0xffff0000;
+      if ( ( ( ( status & this.lineSTMmask ) != 0 ) && ( ( control & this.lineSTMmask ) == 0 ) )
+          || ( ( ( status & this.lineSMCmask ) == 0 ) && ( ( control & this.lineSMCmask ) != 0 ) ) )
+      {
+        if ( count == result.length )
+        {
+          result = Arrays.copyOf( result, count + ( count >> 1 ) );
+        }
+        result[count++] = idx;
+      }
+      status = control;
+    }
+
+    return Arrays.copyOf( result, count );
+  }
 }
 
 /* EOF */
@@ -21,22 +21,50 @@
 package nl.lxtreme.ols.tool.asm45;
 
 
+import java.util.*;
+
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
 
 
 /**
+ * Provides the decoded bus cycles of an Asm45 analysis.
+ * <p>
+ * The decoded bus cycles are stored column-wise, in a plain array per field,
+ * rather than as one {@link Asm45Data} object per bus cycle. Hence,
+ * {@link #getData()} always returns an empty list; use the row-accessors, such
+ * as {@link #getAddress(int)}, or {@link #getRow(int)} instead.
+ * </p>
+ * 
  * @author Ansgar Kueckes
  */
 public final class Asm45DataSet extends BaseDataSet<Asm45Data>
 {
   // CONSTANTS
 
+  private static final String[] TYPES = { Asm45Data.TYPE_INSTRUCTION, Asm45Data.TYPE_DATA_WORD,
+      Asm45Data.TYPE_DATA_BYTE_LEFT, Asm45Data.TYPE_DATA_BYTE_RIGHT };
+
+  private static final int BUS_GRANT_FLAG = 0x80;
+  private static final int TYPE_MASK = 0x03;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
   // VARIABLES
 
   private int decodedWords;
   private int triggerEvent;
   private double last_timing = -1;
+  private int channelIdx;
+
+  private int[] startSampleIdx;
+  private int[] endSampleIdx;
+  private int[] clocks;
+  private int[] addresses;
+  private char[] values;
+  private byte[] blocks;
+  private byte[] flags;
+  private String[] events;
 
   // CONSTRUCTORS
 
@@ -49,18 +77,107 @@ public final class Asm45DataSet extends BaseDataSet<Asm45Data>
 
     this.decodedWords = 0;
     this.triggerEvent = 0;
+
+    this.startSampleIdx = new int[INITIAL_CAPACITY];
+    this.endSampleIdx = new int[INITIAL_CAPACITY];
+    this.clocks = new int[INITIAL_CAPACITY];
+    this.addresses = new int[INITIAL_CAPACITY];
+    this.values = new char[INITIAL_CAPACITY];
+    this.blocks = new byte[INITIAL_CAPACITY];
+    this.flags = new byte[INITIAL_CAPACITY];
+    this.events = new String[INITIAL_CAPACITY];
   }
 
   // METHODS
 
   /**
-   * @return the number of decoded bytes, >= 0.
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the 16-bit address within the memory block of the given row.
+   */
+  public int getAddress( final int aRow )
+  {
+    return this.addresses[checkRow( aRow )];
+  }
+
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the 6-bit memory block of the given row.
+   */
+  public int getBlock( final int aRow )
+  {
+    return this.blocks[checkRow( aRow )];
+  }
+
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the number of clocks of the given row.
+   */
+  public int getClocks( final int aRow )
+  {
+    return this.clocks[checkRow( aRow )];
+  }
+
+  /**
+   * Returns the number of decoded words, which equals the number of rows in
+   * this data set.
+   * 
+   * @return the number of decoded words, >= 0.
    */
   public int getDecodedWordCount()
   {
     return this.decodedWords;
   }
 
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the end sample index of the given row.
+   */
+  public int getEndSampleIndex( final int aRow )
+  {
+    return this.endSampleIdx[checkRow( aRow )];
+  }
+
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the decoded instruction or data transfer of the given row, never
+   *         <code>null</code>.
+   */
+  public String getEvent( final int aRow )
+  {
+    return this.events[checkRow( aRow )];
+  }
+
+  /**
+   * Returns the given row as {@link Asm45Data} object, which is created on
+   * demand.
+   * 
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the row, never <code>null</code>.
+   */
+  public Asm45Data getRow( final int aRow )
+  {
+    checkRow( aRow );
+    return new Asm45Data( aRow, this.channelIdx, this.startSampleIdx[aRow], this.endSampleIdx[aRow],
+        this.clocks[aRow], this.blocks[aRow], this.addresses[aRow], this.values[aRow], isBusGrant( aRow ),
+        getType( aRow ), this.events[aRow] );
+  }
+
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the start sample index of the given row.
+   */
+  public int getStartSampleIndex( final int aRow )
+  {
+    return this.startSampleIdx[checkRow( aRow )];
+  }
+
   /**
    * @return the total time for all samples.
    */
@@ -79,6 +196,38 @@ public final class Asm45DataSet extends BaseDataSet<Asm45Data>
     return this.triggerEvent;
   }
 
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the type of the given row, one of the <tt>TYPE_*</tt> constants of
+   *         {@link Asm45Data}.
+   */
+  public String getType( final int aRow )
+  {
+    return TYPES[this.flags[checkRow( aRow )] & TYPE_MASK];
+  }
+
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return the 16-bit data value of the given row.
+   */
+  public int getValue( final int aRow )
+  {
+    return this.values[checkRow( aRow )];
+  }
+
+  /**
+   * @param aRow
+   *          the row index, >= 0 && < {@link #getDecodedWordCount()}.
+   * @return <code>true</code> if the external bus grant was active for the
+   *         given row, <code>false</code> otherwise.
+   */
+  public boolean isBusGrant( final int aRow )
+  {
+    return ( this.flags[checkRow( aRow )] & BUS_GRANT_FLAG ) != 0;
+  }
+
   /**
    * @param aTime
    * @param aByteValue
@@ -87,16 +236,75 @@ public final class Asm45DataSet extends BaseDataSet<Asm45Data>
       final int aClocks, final int aBlock, final int aAddress, final int aValue, final boolean aBusGrant,
       final String aType, final String aEvent )
   {
-    final int idx = size();
+    final int row = this.decodedWords;
     final double current_timing = getTime( aStartSampleIdx );
     if ( ( this.last_timing < 0 ) && ( current_timing >= 0 ) )
     {
       this.triggerEvent = this.decodedWords;
     }
     this.last_timing = current_timing;
+
+    if ( row == this.events.length )
+    {
+      grow();
+    }
+
+    this.channelIdx = aChannelIdx;
+    this.startSampleIdx[row] = aStartSampleIdx;
+    this.endSampleIdx[row] = aEndSampleIdx;
+    this.clocks[row] = aClocks;
+    this.addresses[row] = aAddress;
+    this.values[row] = ( char )aValue;
+    this.blocks[row] = ( byte )aBlock;
+    this.flags[row] = ( byte )( typeCode( aType ) | ( aBusGrant ? BUS_GRANT_FLAG : 0 ) );
+    this.events[row] = aEvent;
+
     this.decodedWords++;
-    addData( new Asm45Data( idx, aChannelIdx, aStartSampleIdx, aEndSampleIdx, aClocks, aBlock, aAddress, aValue,
-        aBusGrant, aType, aEvent ) );
+  }
+
+  /**
+   * Returns the type code of the given type.
+   */
+  private static int typeCode( final String aType )
+  {
+    for ( int i = 0; i < TYPES.length; i++ )
+    {
+      if ( TYPES[i].equals( aType ) )
+      {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException( "Invalid type: " + aType );
+  }
+
+  /**
+   * @throws IndexOutOfBoundsException
+   *           in case the given row does not exist.
+   */
+  private int checkRow( final int aRow )
+  {
+    if ( ( aRow < 0 ) || ( aRow >= this.decodedWords ) )
+    {
+      throw new IndexOutOfBoundsException( "No such row: " + aRow );
+    }
+    return aRow;
+  }
+
+  /**
+   * Grows all columns by half their current capacity.
+   */
+  private void grow()
+  {
+    final int capacity = this.events.length + ( this.events.length >> 1 );
+
+    this.startSampleIdx = Arrays.copyOf( this.startSampleIdx, capacity );
+    this.endSampleIdx = Arrays.copyOf( this.endSampleIdx, capacity );
+    this.clocks = Arrays.copyOf( this.clocks, capacity );
+    this.addresses = Arrays.copyOf( this.addresses, capacity );
+    this.values = Arrays.copyOf( this.values, capacity );
+    this.blocks = Arrays.copyOf( this.blocks, capacity );
+    this.flags = Arrays.copyOf( this.flags, capacity );
+    this.events = Arrays.copyOf( this.events, capacity );
   }
 }
 
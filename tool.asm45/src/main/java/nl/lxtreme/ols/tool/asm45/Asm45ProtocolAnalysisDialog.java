@@ -29,7 +29,6 @@ import java.awt.*;
 import java.io.*;
 import java.text.*;
 import java.util.*;
-import java.util.List;
 import java.util.logging.*;
 
 import javax.swing.*;
@@ -64,6 +63,9 @@ ExportAware<Asm45DataSet>
 
   private static final Logger LOG = Logger.getLogger( Asm45ProtocolAnalysisDialog.class.getName() );
 
+  /** The number of bytes taken by a single row in the columns of a data set. */
+  private static final int DECODED_WORD_SIZE = 28;
+
   // VARIABLES
 
   private JLabel idaLinesLabel;
@@ -184,6 +186,16 @@ ExportAware<Asm45DataSet>
     aSettings.putBoolean( "showBusGrants", this.showBusGrants.isSelected() );
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected long getResultSize( final Asm45DataSet aResult )
+  {
+    // The decoded words are kept column-wise, not as data entries...
+    return ( long )aResult.getDecodedWordCount() * DECODED_WORD_SIZE;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -569,13 +581,14 @@ ExportAware<Asm45DataSet>
 
       exporter.setHeaders( "index", "clocks", "block", "address", "value", "bus grant", "type", "event" );
 
-      final List<Asm45Data> dataSet = aAnalysisResult.getData();
-      for ( int i = 0; i < dataSet.size(); i++ )
+      final int rowCount = aAnalysisResult.getDecodedWordCount();
+      for ( int i = 0; i < rowCount; i++ )
       {
-        final Asm45Data ds = dataSet.get( i );
-        exporter.addRow( Integer.valueOf( i ), Integer.valueOf( ds.getClocks() ),
-            integerToHexString( ds.getBlock(), 2 ), StringUtils.integerToHexString( ds.getAddress(), 4 ),
-            integerToHexString( ds.getValue(), 4 ), ds.getBusGrant() ? "X" : "-", ds.getType(), ds.getEvent() );
+        exporter.addRow( Integer.valueOf( i ), Integer.valueOf( aAnalysisResult.getClocks( i ) ),
+            integerToHexString( aAnalysisResult.getBlock( i ), 2 ),
+            StringUtils.integerToHexString( aAnalysisResult.getAddress( i ), 4 ),
+            integerToHexString( aAnalysisResult.getValue( i ), 4 ), aAnalysisResult.isBusGrant( i ) ? "X" : "-",
+            aAnalysisResult.getType( i ), aAnalysisResult.getEvent( i ) );
       }
 
       exporter.close();
@@ -670,12 +683,11 @@ ExportAware<Asm45DataSet>
         }
         else if ( "decoded-data".equals( aMacro ) )
         {
-          final List<Asm45Data> dataSet = aAnalysisResult.getData();
+          final int rowCount = aAnalysisResult.getDecodedWordCount();
           Element tr;
 
-          for ( int i = 0; i < dataSet.size(); i++ )
+          for ( int i = 0; i < rowCount; i++ )
           {
-            final Asm45Data data = dataSet.get( i );
             int index = i - aAnalysisResult.getTriggerEvent();
 
             String bgColor;
@@ -685,7 +697,7 @@ ExportAware<Asm45DataSet>
               // trigger event
               bgColor = "#ffa0ff";
             }
-            else if ( data.getType().equals( Asm45Data.TYPE_INSTRUCTION ) )
+            else if ( aAnalysisResult.getType( i ).equals( Asm45Data.TYPE_INSTRUCTION ) )
             {
               // machine instruction
               bgColor = "#ffffff";
@@ -693,7 +705,7 @@ ExportAware<Asm45DataSet>
             else
             {
               // data transfer (w/ or w/o bus grant)
-              if ( data.getBusGrant() )
+              if ( aAnalysisResult.isBusGrant( i ) )
               {
                 bgColor = "#64ff64";
               }
@@ -706,13 +718,13 @@ ExportAware<Asm45DataSet>
             tr = aParent.addChild( TR )
                 .addAttribute( "style", "background-color: " + bgColor + "; text-align: center;" );
             tr.addChild( TD ).addContent( String.valueOf( index ) );
-            tr.addChild( TD ).addContent( String.valueOf( data.getClocks() ) );
-            tr.addChild( TD ).addContent( integerToHexString( data.getBlock(), 2 ) );
-            tr.addChild( TD ).addContent( integerToHexString( data.getAddress(), 4 ) );
-            tr.addChild( TD ).addContent( integerToHexString( data.getValue(), 4 ) );
-            tr.addChild( TD ).addContent( data.getBusGrant() ? "X" : "-" );
-            tr.addChild( TD ).addContent( data.getType() );
-            tr.addChild( TD ).addAttribute( "style", "text-align: left;" ).addContent( data.getEvent() );
+            tr.addChild( TD ).addContent( String.valueOf( aAnalysisResult.getClocks( i ) ) );
+            tr.addChild( TD ).addContent( integerToHexString( aAnalysisResult.getBlock( i ), 2 ) );
+            tr.addChild( TD ).addContent( integerToHexString( aAnalysisResult.getAddress( i ), 4 ) );
+            tr.addChild( TD ).addContent( integerToHexString( aAnalysisResult.getValue( i ), 4 ) );
+            tr.addChild( TD ).addContent( aAnalysisResult.isBusGrant( i ) ? "X" : "-" );
+            tr.addChild( TD ).addContent( aAnalysisResult.getType( i ) );
+            tr.addChild( TD ).addAttribute( "style", "text-align: left;" ).addContent( aAnalysisResult.getEvent( i ) );
           }
         }
 
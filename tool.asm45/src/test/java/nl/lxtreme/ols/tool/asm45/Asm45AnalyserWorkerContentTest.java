@@ -24,7 +24,6 @@ package nl.lxtreme.ols.tool.asm45;
 import static org.junit.Assert.*;
 
 import java.net.*;
-import java.util.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
@@ -52,13 +51,12 @@ public class Asm45AnalyserWorkerContentTest
    */
   private static void assertAddress( final Asm45DataSet aDataSet, final int... aExpectedAddress )
   {
-    final Iterator<Asm45Data> dataIter = aDataSet.getData().iterator();
+    final int rowCount = aDataSet.getDecodedWordCount();
 
     int i = 0;
-    while ( dataIter.hasNext() && ( i < aExpectedAddress.length ) )
+    while ( ( i < rowCount ) && ( i < aExpectedAddress.length ) )
     {
-      final Asm45Data data = dataIter.next();
-      assertEquals( "Address at index " + i + " not equal, ", aExpectedAddress[i], data.getAddress() );
+      assertEquals( "Address at index " + i + " not equal, ", aExpectedAddress[i], aDataSet.getAddress( i ) );
       i++;
     }
     assertEquals( "Not all events were seen?!", aExpectedAddress.length, i );
@@ -71,13 +69,12 @@ public class Asm45AnalyserWorkerContentTest
    */
   private static void assertBlock( final Asm45DataSet aDataSet, final int... aExpectedBlock )
   {
-    final Iterator<Asm45Data> dataIter = aDataSet.getData().iterator();
+    final int rowCount = aDataSet.getDecodedWordCount();
 
     int i = 0;
-    while ( dataIter.hasNext() && ( i < aExpectedBlock.length ) )
+    while ( ( i < rowCount ) && ( i < aExpectedBlock.length ) )
     {
-      final Asm45Data data = dataIter.next();
-      assertEquals( "Block at index " + i + " not equal, ", aExpectedBlock[i], data.getBlock() );
+      assertEquals( "Block at index " + i + " not equal, ", aExpectedBlock[i], aDataSet.getBlock( i ) );
       i++;
     }
     assertEquals( "Not all events were seen?!", aExpectedBlock.length, i );
@@ -90,13 +87,12 @@ public class Asm45AnalyserWorkerContentTest
    */
   private static void assertValue( final Asm45DataSet aDataSet, final int... aExpectedValue )
   {
-    final Iterator<Asm45Data> dataIter = aDataSet.getData().iterator();
+    final int rowCount = aDataSet.getDecodedWordCount();
 
     int i = 0;
-    while ( dataIter.hasNext() && ( i < aExpectedValue.length ) )
+    while ( ( i < rowCount ) && ( i < aExpectedValue.length ) )
     {
-      final Asm45Data data = dataIter.next();
-      assertEquals( "Value at index " + i + " not equal, ", aExpectedValue[i], data.getValue() );
+      assertEquals( "Value at index " + i + " not equal, ", aExpectedValue[i], aDataSet.getValue( i ) );
       i++;
     }
     assertEquals( "Not all values were seen?!", aExpectedValue.length, i );
@@ -114,7 +114,7 @@ public class Asm45AnalyserWorkerDataFilesTest
    */
   private static void assertDataCount( final Asm45DataSet aDataSet, final int aExpectedDataCount )
   {
-    int count = aDataSet.getData().size();
+    int count = aDataSet.getDecodedWordCount();
     assertEquals( "Not all instructions/data transfers were seen?!", aExpectedDataCount, count );
   }
 
@@ -30,8 +30,10 @@ import javax.swing.*;
 import nl.lxtreme.ols.api.*;
 import nl.lxtreme.ols.api.Configurable;
 import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.BaseDataSet;
 import nl.lxtreme.ols.api.task.*;
 import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.util.osgi.*;
 import nl.lxtreme.ols.util.swing.*;
 import nl.lxtreme.ols.util.swing.StandardActionFactory.CloseAction.Closeable;
 
@@ -53,6 +55,9 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
   /** Provides insets (padding) that can be used for components. */
   protected static final Insets COMP_INSETS = new Insets( 4, 2, 4, 4 );
 
+  /** The estimated number of bytes taken by a single decoded data entry. */
+  private static final int DATA_ENTRY_SIZE = 64;
+
   // VARIABLES
 
   private final ToolContext context;
@@ -62,11 +67,14 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
   private final TaskExecutionServiceTracker taskExecutionService;
   private final AnnotationListenerServiceTracker annotationListener;
   private final ToolProgressListenerServiceTracker toolProgressListener;
+  private final WhiteboardHelper<ToolResultCache> resultCache;
 
   private ServiceRegistration serviceReg;
   private volatile Future<RESULT_TYPE> toolFutureTask;
   private volatile ToolTask<RESULT_TYPE> toolTask;
   private volatile RESULT_TYPE lastResult;
+  private volatile ToolResultCache.Key resultKey;
+  private volatile ToolResultCache.AnnotationRecorder resultAnnotations;
 
   // CONSTRUCTORS
 
@@ -94,6 +102,7 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
     this.taskExecutionService = new TaskExecutionServiceTracker( aBundleContext );
     this.annotationListener = new AnnotationListenerServiceTracker( aBundleContext );
     this.toolProgressListener = new ToolProgressListenerServiceTracker( aBundleContext );
+    this.resultCache = new WhiteboardHelper<ToolResultCache>( aBundleContext, ToolResultCache.class );
   }
 
   // METHODS
@@ -123,6 +132,15 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
     this.annotationListener.close();
     this.toolProgressListener.close();
 
+    try
+    {
+      this.resultCache.close();
+    }
+    catch ( IllegalStateException exception )
+    {
+      // Ignore; bundle context probably is incorrect...
+    }
+
     try
     {
       this.serviceReg.unregister();
@@ -181,8 +199,31 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
     boolean settingsValid = validateToolSettings();
     if ( settingsValid )
     {
-      this.toolTask = this.tool.createToolTask( this.context, this.toolProgressListener, this.annotationListener );
-      prepareToolTask( this.toolTask );
+      final ToolResultCache.Configuration configuration = new ToolResultCache.Configuration( this.tool.getClass()
+          .getName() );
+      writePreferences( configuration );
+
+      final ToolResultCache.Key key = new ToolResultCache.Key( this.context, configuration );
+
+      final ToolResultCache cache = this.resultCache.getService();
+      final ToolResultCache.Entry cachedResult = ( cache == null ) ? null : cache.get( key );
+      if ( cachedResult != null )
+      {
+        // Nothing changed since the last run; reuse its result, which is shown
+        // the same way as the result of the tool itself...
+        this.resultKey = null;
+        this.resultAnnotations = null;
+
+        this.toolTask = cachedResult.createReplayTask( this.annotationListener, this.toolProgressListener );
+      }
+      else
+      {
+        this.resultKey = key;
+        this.resultAnnotations = new ToolResultCache.AnnotationRecorder( this.annotationListener );
+
+        this.toolTask = this.tool.createToolTask( this.context, this.toolProgressListener, this.resultAnnotations );
+        prepareToolTask( this.toolTask );
+      }
 
       this.toolFutureTask = this.taskExecutionService.execute( this.toolTask );
     }
@@ -200,6 +241,7 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
     this.taskExecutionService.open();
     this.annotationListener.open();
     this.toolProgressListener.open();
+    this.resultCache.open();
 
     onBeforeShowDialog();
 
@@ -217,6 +259,12 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
     {
       this.lastResult = ( RESULT_TYPE )aResult;
 
+      final ToolResultCache cache = this.resultCache.getService();
+      if ( ( cache != null ) && ( this.resultKey != null ) && ( aResult instanceof BaseDataSet<?> ) )
+      {
+        cache.put( this.resultKey, aResult, this.resultAnnotations, getResultSize( this.lastResult ) );
+      }
+
       SwingComponentUtils.invokeOnEDT( new Runnable()
       {
         @Override
@@ -304,6 +352,28 @@ public abstract class BaseToolDialog<RESULT_TYPE> extends JFrame implements Tool
     return this.context.getData();
   }
 
+  /**
+   * Returns the estimated number of bytes taken by the given tool result, used
+   * to keep the cached tool results within their budget.
+   * <p>
+   * By default, the number of decoded data entries is taken into account. Tools
+   * whose results do not keep their data as entries should override this
+   * method.
+   * </p>
+   *
+   * @param aResult
+   *          the result of the tool, cannot be <code>null</code>.
+   * @return a size estimate, in bytes, >= 0.
+   */
+  protected long getResultSize( final RESULT_TYPE aResult )
+  {
+    if ( aResult instanceof BaseDataSet<?> )
+    {
+      return ( long )( ( BaseDataSet<?> )aResult ).getData().size() * DATA_ENTRY_SIZE;
+    }
+    return 0L;
+  }
+
   /**
    * Called right before this dialog is made invisible.
    */
@@ -0,0 +1,112 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.tools.*;
+
+
+/**
+ * Runs several {@link TransitionDecoderTask}s on the same acquired data, with
+ * a single walk over the data for all of them.
+ * <p>
+ * Each task prepares its decoding and adds its decoders to a shared
+ * {@link DecoderEngine}; after the engine has walked over the data, each task
+ * completes its results. Running, for example, the I2C, SPI and UART analysers
+ * on the same capture therefore visits each sample once, instead of once per
+ * analyser.
+ * </p>
+ */
+public final class CombinedDecoderTask implements ToolTask<List<Object>>
+{
+  // VARIABLES
+
+  private final ToolContext context;
+  private final ToolProgressListener progressListener;
+  private final List<TransitionDecoderTask<?>> tasks;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link CombinedDecoderTask} instance.
+   * 
+   * @param aContext
+   *          the tool context with the data to decode, cannot be
+   *          <code>null</code>;
+   * @param aProgressListener
+   *          the progress listener to report the overall progress to, can be
+   *          <code>null</code>.
+   */
+  public CombinedDecoderTask( final ToolContext aContext, final ToolProgressListener aProgressListener )
+  {
+    this.context = aContext;
+    this.progressListener = aProgressListener;
+    this.tasks = new ArrayList<TransitionDecoderTask<?>>();
+  }
+
+  // METHODS
+
+  /**
+   * Adds a task to decode along with the other tasks. All tasks should decode
+   * the data of the tool context of this task.
+   * 
+   * @param aTask
+   *          the task to add, cannot be <code>null</code>.
+   */
+  public void addTask( final TransitionDecoderTask<?> aTask )
+  {
+    if ( aTask == null )
+    {
+      throw new IllegalArgumentException( "Task cannot be null!" );
+    }
+    this.tasks.add( aTask );
+  }
+
+  /**
+   * Decodes the data for all tasks in a single walk.
+   * 
+   * @return the results of all tasks, in the order in which the tasks are
+   *         added, never <code>null</code>.
+   * @throws Exception
+   *           in case one of the tasks failed, in which case the results of
+   *           the other tasks are discarded as well.
+   */
+  @Override
+  public List<Object> call() throws Exception
+  {
+    final DecoderEngine engine = new DecoderEngine();
+    for ( TransitionDecoderTask<?> task : this.tasks )
+    {
+      task.prepareDecoding( engine );
+    }
+
+    engine.decode( this.context.getData(), this.progressListener );
+
+    final List<Object> results = new ArrayList<Object>();
+    for ( TransitionDecoderTask<?> task : this.tasks )
+    {
+      results.add( task.completeDecoding() );
+    }
+    return results;
+  }
+}
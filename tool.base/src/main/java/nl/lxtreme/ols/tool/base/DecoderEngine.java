@@ -0,0 +1,397 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import static nl.lxtreme.ols.util.NumberUtils.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.tools.*;
+
+
+/**
+ * Feeds several {@link TransitionDecoder}s from a single walk over the
+ * acquired data.
+ * <p>
+ * Each sample at which a channel changes is only passed on to the decoders
+ * whose channel mask includes that channel, so a decoder only costs time for
+ * the transitions of its own channels, regardless of the number of decoders
+ * that are run along with it.
+ * </p>
+ * <p>
+ * Each decoder can be given its own range of samples, so the decoders of
+ * different tools, each with their own decoding range, can share a single walk
+ * over the same data, see {@link CombinedDecoderTask}. A decoder only sees the
+ * transitions within its own range.
+ * </p>
+ * <p>
+ * A capture can also be decoded in chunks, for example to decode it
+ * concurrently with {@link ParallelDecoding}. As the first sample of a range
+ * only provides the initial line levels, a chunk should start at the last
+ * sample of its preceding chunk, in which case the decoders see exactly the
+ * same transitions as they would in a single walk.
+ * </p>
+ */
+public final class DecoderEngine
+{
+  // INNER TYPES
+
+  /**
+   * Keeps a decoder along with the range of samples it should decode.
+   */
+  private static final class Registration
+  {
+    // VARIABLES
+
+    final TransitionDecoder decoder;
+    final int startIdx;
+    final int endIdx;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Registration} instance.
+     */
+    Registration( final TransitionDecoder aDecoder, final int aStartIdx, final int aEndIdx )
+    {
+      this.decoder = aDecoder;
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+    }
+  }
+
+  // CONSTANTS
+
+  private static final int MAX_CHANNELS = 32;
+
+  /** Denotes a decoder that decodes the range given upon decoding. */
+  private static final int DEFAULT_RANGE = -1;
+
+  // VARIABLES
+
+  private final List<Registration> registrations;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link DecoderEngine} instance.
+   */
+  public DecoderEngine()
+  {
+    this.registrations = new ArrayList<Registration>();
+  }
+
+  // METHODS
+
+  /**
+   * Adds a decoder to this engine, which decodes the range of samples given
+   * upon decoding.
+   *
+   * @param aDecoder
+   *          the decoder to add, cannot be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given decoder was <code>null</code> or has an empty
+   *           channel mask.
+   */
+  public void addDecoder( final TransitionDecoder aDecoder )
+  {
+    addRegistration( aDecoder, DEFAULT_RANGE, DEFAULT_RANGE );
+  }
+
+  /**
+   * Adds a decoder to this engine, which decodes the given range of samples,
+   * regardless of the range given upon decoding.
+   *
+   * @param aDecoder
+   *          the decoder to add, cannot be <code>null</code>;
+   * @param aStartIdx
+   *          the sample index the decoder starts at, >= 0;
+   * @param aEndIdx
+   *          the sample index the decoder stops at (exclusive), >= start
+   *          index.
+   * @throws IllegalArgumentException
+   *           in case the given decoder was <code>null</code>, has an empty
+   *           channel mask, or in case the given range is invalid.
+   */
+  public void addDecoder( final TransitionDecoder aDecoder, final int aStartIdx, final int aEndIdx )
+  {
+    if ( ( aStartIdx < 0 ) || ( aEndIdx < aStartIdx ) )
+    {
+      throw new IllegalArgumentException( "Invalid decoding range!" );
+    }
+    addRegistration( aDecoder, aStartIdx, aEndIdx );
+  }
+
+  /**
+   * Walks once over the samples of all decoders, and passes each transition on
+   * to the decoders of the channels that change. Decoders that are added
+   * without a range decode all samples.
+   *
+   * @param aData
+   *          the acquired data to decode, cannot be <code>null</code>;
+   * @param aProgressListener
+   *          the progress listener to report to, can be <code>null</code>.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted, in which case the
+   *           decoders are not ended.
+   * @see #decode(AcquisitionResult, int, int, ToolProgressListener)
+   */
+  public void decode( final AcquisitionResult aData, final ToolProgressListener aProgressListener )
+      throws InterruptedException
+  {
+    decode( aData, 0, aData.getValues().length, aProgressListener );
+  }
+
+  /**
+   * Walks once over the given range of samples, and passes each transition on
+   * to the decoders of the channels that change. Decoders that are added with
+   * their own range, decode that range instead, in which case the walk covers
+   * all ranges. The walk stops as soon as the calling thread is interrupted.
+   *
+   * @param aData
+   *          the acquired data to decode, cannot be <code>null</code>;
+   * @param aStartIdx
+   *          the sample index to start decoding at;
+   * @param aEndIdx
+   *          the sample index to stop decoding at (exclusive);
+   * @param aProgressListener
+   *          the progress listener to report to, can be <code>null</code>.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted, in which case the
+   *           decoders are not ended.
+   */
+  public void decode( final AcquisitionResult aData, final int aStartIdx, final int aEndIdx,
+      final ToolProgressListener aProgressListener ) throws InterruptedException
+  {
+    final int[] values = aData.getValues();
+    final long[] timestamps = aData.getTimestamps();
+
+    // Determine the actual range of each decoder; decoders with an empty range
+    // are not decoded at all...
+    final List<Registration> ranged = new ArrayList<Registration>();
+    for ( Registration registration : this.registrations )
+    {
+      final Registration actual;
+      if ( registration.startIdx == DEFAULT_RANGE )
+      {
+        actual = new Registration( registration.decoder, aStartIdx, aEndIdx );
+      }
+      else
+      {
+        actual = registration;
+      }
+      if ( actual.startIdx < actual.endIdx )
+      {
+        ranged.add( actual );
+      }
+    }
+
+    if ( ranged.isEmpty() )
+    {
+      return;
+    }
+
+    final Registration[] all = ranged.toArray( new Registration[ranged.size()] );
+
+    // The walk is split into segments at the points where decoders start or
+    // end, so the set of active decoders is fixed within each segment...
+    final SortedSet<Integer> points = new TreeSet<Integer>();
+    int walkStart = Integer.MAX_VALUE;
+    for ( Registration registration : all )
+    {
+      points.add( Integer.valueOf( registration.startIdx + 1 ) );
+      points.add( Integer.valueOf( registration.endIdx ) );
+      walkStart = Math.min( walkStart, registration.startIdx );
+    }
+    final int walkEnd = points.last().intValue();
+
+    // Keeps the last sample index each decoder has seen, to pass a sample only
+    // once to decoders that listen to multiple channels...
+    final int[] lastSeen = new int[all.length];
+    Arrays.fill( lastSeen, -1 );
+
+    // Report the progress, and check for cancellation, about once every
+    // percent, instead of every sample...
+    final long range = walkEnd - walkStart;
+    final int progressStep = ( int )Math.max( 1L, range / 100L );
+    int progressCountdown = progressStep;
+
+    final Integer[] segments = points.toArray( new Integer[points.size()] );
+    for ( int s = 0; s < segments.length; s++ )
+    {
+      final int segmentStart = segments[s].intValue();
+
+      for ( Registration registration : all )
+      {
+        if ( registration.startIdx == ( segmentStart - 1 ) )
+        {
+          final int idx = registration.startIdx;
+          registration.decoder.onStart( idx, timestamps[idx], values[idx] );
+        }
+      }
+      for ( Registration registration : all )
+      {
+        if ( registration.endIdx == segmentStart )
+        {
+          final int idx = registration.endIdx - 1;
+          registration.decoder.onEnd( idx, timestamps[idx] );
+        }
+      }
+
+      if ( ( s + 1 ) == segments.length )
+      {
+        break;
+      }
+      final int segmentEnd = segments[s + 1].intValue();
+
+      // Index the active decoders by channel, so a transition only visits the
+      // decoders of the channels that actually change...
+      final TransitionDecoder[][] byChannel = new TransitionDecoder[MAX_CHANNELS][];
+      final int[][] indexByChannel = new int[MAX_CHANNELS][];
+      final int channelMask = indexByChannel( all, segmentStart, byChannel, indexByChannel );
+
+      if ( channelMask == 0 )
+      {
+        // No decoder is active in between the ranges of the decoders...
+        continue;
+      }
+
+      int oldValue = values[segmentStart - 1];
+      for ( int i = segmentStart; i < segmentEnd; i++ )
+      {
+        final int newValue = values[i];
+
+        int changed = ( oldValue ^ newValue ) & channelMask;
+        while ( changed != 0 )
+        {
+          final int b = Integer.numberOfTrailingZeros( changed );
+          changed &= ~( 1 << b );
+
+          final TransitionDecoder[] decoders = byChannel[b];
+          final int[] indexes = indexByChannel[b];
+          for ( int d = 0; d < decoders.length; d++ )
+          {
+            if ( lastSeen[indexes[d]] != i )
+            {
+              lastSeen[indexes[d]] = i;
+              decoders[d].onTransition( i, timestamps[i], oldValue, newValue );
+            }
+          }
+        }
+        oldValue = newValue;
+
+        if ( --progressCountdown == 0 )
+        {
+          if ( Thread.interrupted() )
+          {
+            throw new InterruptedException( "Decoding interrupted!" );
+          }
+          if ( aProgressListener != null )
+          {
+            aProgressListener.setProgress( getPercentage( i - walkStart, range ) );
+          }
+          progressCountdown = progressStep;
+        }
+      }
+    }
+
+    if ( aProgressListener != null )
+    {
+      aProgressListener.setProgress( 100 );
+    }
+  }
+
+  /**
+   * Indexes the decoders that are active at the given sample index by the
+   * channels they are interested in.
+   *
+   * @param aAll
+   *          all decoders with their ranges;
+   * @param aSampleIdx
+   *          the sample index to determine the active decoders for;
+   * @param aByChannel
+   *          the active decoders per channel, filled by this method;
+   * @param aIndexByChannel
+   *          the indexes in the given array of all decoders of the active
+   *          decoders per channel, filled by this method.
+   * @return the mask of all channels with at least one active decoder.
+   */
+  private static int indexByChannel( final Registration[] aAll, final int aSampleIdx,
+      final TransitionDecoder[][] aByChannel, final int[][] aIndexByChannel )
+  {
+    int channelMask = 0;
+    for ( int b = 0; b < MAX_CHANNELS; b++ )
+    {
+      int count = 0;
+      for ( Registration registration : aAll )
+      {
+        if ( isActive( registration, aSampleIdx ) && ( ( registration.decoder.getChannelMask() & ( 1 << b ) ) != 0 ) )
+        {
+          count++;
+        }
+      }
+      if ( count > 0 )
+      {
+        aByChannel[b] = new TransitionDecoder[count];
+        aIndexByChannel[b] = new int[count];
+        count = 0;
+        for ( int d = 0; d < aAll.length; d++ )
+        {
+          if ( isActive( aAll[d], aSampleIdx ) && ( ( aAll[d].decoder.getChannelMask() & ( 1 << b ) ) != 0 ) )
+          {
+            aByChannel[b][count] = aAll[d].decoder;
+            aIndexByChannel[b][count] = d;
+            count++;
+          }
+        }
+        channelMask |= ( 1 << b );
+      }
+    }
+    return channelMask;
+  }
+
+  /**
+   * Returns whether the given decoder should see a transition at the given
+   * sample index.
+   */
+  private static boolean isActive( final Registration aRegistration, final int aSampleIdx )
+  {
+    return ( aRegistration.startIdx < aSampleIdx ) && ( aSampleIdx < aRegistration.endIdx );
+  }
+
+  /**
+   * Adds the given decoder with the given range.
+   */
+  private void addRegistration( final TransitionDecoder aDecoder, final int aStartIdx, final int aEndIdx )
+  {
+    if ( aDecoder == null )
+    {
+      throw new IllegalArgumentException( "Decoder cannot be null!" );
+    }
+    if ( aDecoder.getChannelMask() == 0 )
+    {
+      throw new IllegalArgumentException( "Decoder should have at least one channel!" );
+    }
+    this.registrations.add( new Registration( aDecoder, aStartIdx, aEndIdx ) );
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+/**
+ * Denotes a decoder that can be resumed at so-called checkpoints, allowing its
+ * results to be reused by {@link IncrementalDecoding}.
+ * <p>
+ * A checkpoint is a sample index at which the state of the decoder does not
+ * depend on any earlier sample, for example, the start of a frame after an
+ * idle bus. Hence, decoding the samples between two checkpoints always yields
+ * the same items, regardless of where the decoding was started.
+ * </p>
+ * <p>
+ * For some protocols, whether the state at a checkpoint is the initial state
+ * depends on the data preceding it. Therefore, the end of a decoded range is
+ * to be reported as checkpoint as well, but only if the decoder ended in the
+ * state a new decoder would start with at that sample index. The results of a
+ * previous run are only appended to samples decoded up to such a checkpoint.
+ * </p>
+ */
+public interface IncrementalDecoder<ITEM_TYPE>
+{
+  // INNER TYPES
+
+  /**
+   * Receives the checkpoints and items of an {@link IncrementalDecoder}.
+   */
+  public static interface Callback<ITEM_TYPE>
+  {
+    // METHODS
+
+    /**
+     * Called for each checkpoint, after all items preceding it are reported.
+     * Checkpoints should be reported in ascending order, and may include the
+     * end of the decoded range.
+     *
+     * @param aSampleIdx
+     *          the sample index of the checkpoint.
+     */
+    void onCheckpoint( int aSampleIdx );
+
+    /**
+     * Called for each decoded item, in order.
+     *
+     * @param aItem
+     *          the decoded item, cannot be <code>null</code>.
+     */
+    void onItem( ITEM_TYPE aItem );
+  }
+
+  // METHODS
+
+  /**
+   * Decodes the given range of samples, starting with a fresh decoder state.
+   *
+   * @param aStartIdx
+   *          the sample index to start decoding at;
+   * @param aEndIdx
+   *          the sample index to stop decoding at (exclusive);
+   * @param aCallback
+   *          the callback to report all checkpoints and items to, cannot be
+   *          <code>null</code>.
+   * @throws Exception
+   *           in case decoding failed.
+   */
+  void decode( int aStartIdx, int aEndIdx, Callback<ITEM_TYPE> aCallback ) throws Exception;
+}
@@ -0,0 +1,323 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+
+
+/**
+ * Keeps the results of the last run of an {@link IncrementalDecoder}, so that
+ * a next run on a different range of samples only needs to decode the part of
+ * the range that was not decoded before.
+ * <p>
+ * The items between the checkpoints that lie within both the previous and the
+ * new range are reused as-is. Only the samples before the first and after the
+ * last of these checkpoints are decoded again. If the acquired data or the
+ * decoder settings have changed, or the decoding of the samples before the
+ * first checkpoint does not end at that checkpoint, the entire range is
+ * decoded.
+ * </p>
+ * <p>
+ * A tool dialog typically keeps a single instance of this class, and passes
+ * it on to each tool task it creates.
+ * </p>
+ */
+public final class IncrementalDecoding<ITEM_TYPE>
+{
+  // INNER TYPES
+
+  /**
+   * Collects the checkpoints and items of a single run.
+   */
+  static final class Recorder<ITEM_TYPE> implements IncrementalDecoder.Callback<ITEM_TYPE>
+  {
+    // VARIABLES
+
+    final List<ITEM_TYPE> items;
+
+    int[] checkpoints;
+    int[] offsets;
+    int count;
+
+    private int startIdx;
+    private int endIdx;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Recorder} instance.
+     */
+    Recorder()
+    {
+      this.items = new ArrayList<ITEM_TYPE>();
+      this.checkpoints = new int[64];
+      this.offsets = new int[64];
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCheckpoint( final int aSampleIdx )
+    {
+      // Ignore checkpoints outside the decoded range...
+      if ( ( aSampleIdx < this.startIdx ) || ( aSampleIdx > this.endIdx ) )
+      {
+        return;
+      }
+      addCheckpoint( aSampleIdx, this.items.size() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onItem( final ITEM_TYPE aItem )
+    {
+      this.items.add( aItem );
+    }
+
+    /**
+     * Adds a checkpoint, unless it does not come after the last checkpoint.
+     *
+     * @param aSampleIdx
+     *          the sample index of the checkpoint;
+     * @param aOffset
+     *          the number of items preceding the checkpoint.
+     */
+    void addCheckpoint( final int aSampleIdx, final int aOffset )
+    {
+      if ( ( this.count > 0 ) && ( aSampleIdx <= this.checkpoints[this.count - 1] ) )
+      {
+        return;
+      }
+
+      if ( this.count == this.checkpoints.length )
+      {
+        this.checkpoints = Arrays.copyOf( this.checkpoints, this.count << 1 );
+        this.offsets = Arrays.copyOf( this.offsets, this.count << 1 );
+      }
+      this.checkpoints[this.count] = aSampleIdx;
+      this.offsets[this.count] = aOffset;
+      this.count++;
+    }
+
+    /**
+     * Returns whether the last checkpoint is the given sample index.
+     */
+    boolean endsAt( final int aSampleIdx )
+    {
+      return ( this.count > 0 ) && ( this.checkpoints[this.count - 1] == aSampleIdx );
+    }
+
+    /**
+     * Sets the range of samples that is to be reported next.
+     */
+    void setRange( final int aStartIdx, final int aEndIdx )
+    {
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+    }
+  }
+
+  // VARIABLES
+
+  private AcquisitionResult data;
+  private Object settings;
+  private Recorder<ITEM_TYPE> last;
+
+  private long decodedLength;
+
+  // METHODS
+
+  /**
+   * Decodes the given range of samples, reusing the results of the previous
+   * run where possible.
+   *
+   * @param aDecoder
+   *          the decoder to use, cannot be <code>null</code>;
+   * @param aData
+   *          the acquired data that is decoded, cannot be <code>null</code>;
+   * @param aSettings
+   *          the settings of the decoder, used to determine whether the
+   *          results of the previous run are still valid. Should implement
+   *          {@link Object#equals(Object)}, can be <code>null</code>;
+   * @param aStartIdx
+   *          the sample index to start decoding at;
+   * @param aEndIdx
+   *          the sample index to stop decoding at (exclusive).
+   * @return the decoded items of the entire range, in order, never
+   *         <code>null</code>.
+   * @throws Exception
+   *           in case decoding failed.
+   */
+  public synchronized List<ITEM_TYPE> decode( final IncrementalDecoder<ITEM_TYPE> aDecoder,
+      final AcquisitionResult aData, final Object aSettings, final int aStartIdx, final int aEndIdx )
+      throws Exception
+  {
+    final Recorder<ITEM_TYPE> previous = isValid( aData, aSettings ) ? this.last : null;
+
+    // Clear our state, in case the decoding fails...
+    invalidate();
+
+    int first = -1;
+    int last = -1;
+    if ( previous != null )
+    {
+      first = indexOfFirst( previous, aStartIdx );
+      last = indexOfLast( previous, aEndIdx );
+    }
+
+    Recorder<ITEM_TYPE> recorder = new Recorder<ITEM_TYPE>();
+
+    long decoded = 0L;
+    boolean reused = false;
+    if ( ( first >= 0 ) && ( last > first ) )
+    {
+      final int checkpoint = previous.checkpoints[first];
+      decoded += decode( aDecoder, recorder, aStartIdx, checkpoint );
+
+      // The previous items can only be appended if the decoder ended in the
+      // state it would start with at the checkpoint...
+      reused = ( aStartIdx == checkpoint ) || recorder.endsAt( checkpoint );
+      if ( reused )
+      {
+        final int base = recorder.items.size() - previous.offsets[first];
+        recorder.items.addAll( previous.items.subList( previous.offsets[first], previous.offsets[last] ) );
+
+        for ( int i = first; i <= last; i++ )
+        {
+          recorder.addCheckpoint( previous.checkpoints[i], base + previous.offsets[i] );
+        }
+
+        decoded += decode( aDecoder, recorder, previous.checkpoints[last], aEndIdx );
+      }
+      else
+      {
+        recorder = new Recorder<ITEM_TYPE>();
+      }
+    }
+
+    if ( !reused )
+    {
+      // Nothing to reuse...
+      decoded += decode( aDecoder, recorder, aStartIdx, aEndIdx );
+    }
+
+    this.data = aData;
+    this.settings = aSettings;
+    this.last = recorder;
+    this.decodedLength = decoded;
+
+    return Collections.unmodifiableList( recorder.items );
+  }
+
+  /**
+   * Returns the number of samples that were actually decoded in the last run.
+   *
+   * @return a sample count, >= 0.
+   */
+  public synchronized long getDecodedLength()
+  {
+    return this.decodedLength;
+  }
+
+  /**
+   * Discards the results of the previous run, causing the next run to decode
+   * its entire range.
+   */
+  public synchronized void invalidate()
+  {
+    this.data = null;
+    this.settings = null;
+    this.last = null;
+    this.decodedLength = 0L;
+  }
+
+  /**
+   * Returns the index of the first checkpoint at or after the given sample
+   * index.
+   *
+   * @return a checkpoint index, or -1 if there is no such checkpoint.
+   */
+  private static int indexOfFirst( final Recorder<?> aRecorder, final int aSampleIdx )
+  {
+    int idx = Arrays.binarySearch( aRecorder.checkpoints, 0, aRecorder.count, aSampleIdx );
+    if ( idx < 0 )
+    {
+      idx = -( idx + 1 );
+    }
+    return ( idx < aRecorder.count ) ? idx : -1;
+  }
+
+  /**
+   * Returns the index of the last checkpoint at or before the given sample
+   * index.
+   *
+   * @return a checkpoint index, or -1 if there is no such checkpoint.
+   */
+  private static int indexOfLast( final Recorder<?> aRecorder, final int aSampleIdx )
+  {
+    int idx = Arrays.binarySearch( aRecorder.checkpoints, 0, aRecorder.count, aSampleIdx );
+    if ( idx < 0 )
+    {
+      idx = -( idx + 1 ) - 1;
+    }
+    return idx;
+  }
+
+  /**
+   * Lets the given decoder decode the given range of samples, if it is not
+   * empty.
+   *
+   * @return the number of decoded samples.
+   */
+  private long decode( final IncrementalDecoder<ITEM_TYPE> aDecoder, final Recorder<ITEM_TYPE> aRecorder,
+      final int aStartIdx, final int aEndIdx ) throws Exception
+  {
+    if ( aStartIdx >= aEndIdx )
+    {
+      return 0L;
+    }
+
+    aRecorder.setRange( aStartIdx, aEndIdx );
+    aDecoder.decode( aStartIdx, aEndIdx, aRecorder );
+    return aEndIdx - aStartIdx;
+  }
+
+  /**
+   * Returns whether the results of the previous run can be used for the given
+   * data and settings.
+   */
+  private boolean isValid( final AcquisitionResult aData, final Object aSettings )
+  {
+    if ( ( this.last == null ) || ( this.data != aData ) )
+    {
+      return false;
+    }
+    return ( this.settings == null ) ? ( aSettings == null ) : this.settings.equals( aSettings );
+  }
+}
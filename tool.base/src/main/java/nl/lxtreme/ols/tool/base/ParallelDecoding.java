@@ -0,0 +1,242 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Provides the means for tools to split their decoding into chunks that are
+ * decoded concurrently.
+ * <p>
+ * All tools share a single pool of worker threads, so running several tools at
+ * once, or running tools on several captures at once (as done in batch mode),
+ * does not result in more decoding threads than there are processors. The
+ * number of threads can be limited further by the system property
+ * {@value #PROPERTY_THREADS}.
+ * </p>
+ * <p>
+ * The calling thread, typically the thread running the tool task, only waits
+ * for the results of the chunks, and merges them in order. The chunks itself
+ * should not wait for other chunks, as this can exhaust the shared pool.
+ * </p>
+ */
+public final class ParallelDecoding
+{
+  // CONSTANTS
+
+  /** The system property with the maximum number of decoding threads. */
+  public static final String PROPERTY_THREADS = "nl.lxtreme.ols.tool.threads";
+
+  // VARIABLES
+
+  private static ExecutorService executor;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ParallelDecoding} instance, never used.
+   */
+  private ParallelDecoding()
+  {
+    // Nop
+  }
+
+  // METHODS
+
+  /**
+   * Cancels all given tasks, interrupting them when they are running. Tasks
+   * that are already completed are left as-is.
+   *
+   * @param aFutures
+   *          the tasks to cancel, cannot be <code>null</code>.
+   */
+  public static void cancelAll( final List<? extends Future<?>> aFutures )
+  {
+    for ( Future<?> future : aFutures )
+    {
+      future.cancel( true /* mayInterruptIfRunning */);
+    }
+  }
+
+  /**
+   * Waits for the result of the given task, rethrowing any exception the task
+   * failed with as-is.
+   *
+   * @param aFuture
+   *          the task to wait for, cannot be <code>null</code>.
+   * @return the result of the given task.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted while waiting;
+   * @throws Exception
+   *           in case the task itself failed.
+   */
+  public static <T> T getResult( final Future<T> aFuture ) throws Exception
+  {
+    try
+    {
+      return aFuture.get();
+    }
+    catch ( ExecutionException exception )
+    {
+      final Throwable cause = exception.getCause();
+      if ( cause instanceof Exception )
+      {
+        throw ( Exception )cause;
+      }
+      throw exception;
+    }
+  }
+
+  /**
+   * Returns the number of threads that is used for decoding.
+   *
+   * @return the number of threads, > 0.
+   */
+  public static int getThreadCount()
+  {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    return Math.max( 1, Math.min( processors, Integer.getInteger( PROPERTY_THREADS, processors ).intValue() ) );
+  }
+
+  /**
+   * Runs all given tasks concurrently, and waits for their results. In case
+   * one of the tasks fails, or the calling thread is interrupted, all other
+   * tasks are cancelled.
+   *
+   * @param aTasks
+   *          the tasks to run, cannot be <code>null</code>.
+   * @return the results of the given tasks, in the same order as the tasks
+   *         themselves, never <code>null</code>.
+   * @throws Exception
+   *           in case one of the tasks failed, or the calling thread was
+   *           interrupted.
+   */
+  public static <T> List<T> invokeAll( final List<? extends Callable<T>> aTasks ) throws Exception
+  {
+    final List<Future<T>> futures = submitAll( aTasks );
+    try
+    {
+      final List<T> result = new ArrayList<T>( futures.size() );
+      for ( Future<T> future : futures )
+      {
+        result.add( getResult( future ) );
+      }
+      return result;
+    }
+    finally
+    {
+      cancelAll( futures );
+    }
+  }
+
+  /**
+   * Splits the given range of sample indexes into chunks of the given size.
+   *
+   * @param aStartIdx
+   *          the first sample index of the range;
+   * @param aEndIdx
+   *          the last sample index of the range, exclusive;
+   * @param aChunkSize
+   *          the (maximum) number of samples in a chunk, > 0.
+   * @return the sample indexes at which the chunks start, followed by the
+   *         given end index, never <code>null</code>. There is always at least
+   *         a single chunk, even if the given range is empty.
+   */
+  public static int[] split( final int aStartIdx, final int aEndIdx, final int aChunkSize )
+  {
+    if ( aChunkSize < 1 )
+    {
+      throw new IllegalArgumentException( "Chunk size must be at least one!" );
+    }
+
+    final int chunks = Math.max( 1, ( int )( ( ( long )aEndIdx - aStartIdx + aChunkSize - 1 ) / aChunkSize ) );
+
+    final int[] result = new int[chunks + 1];
+    for ( int i = 0; i < chunks; i++ )
+    {
+      result[i] = ( int )( aStartIdx + ( ( long )i * aChunkSize ) );
+    }
+    result[chunks] = Math.max( aStartIdx, aEndIdx );
+    return result;
+  }
+
+  /**
+   * Submits a single task to the shared pool of decoding threads.
+   *
+   * @param aTask
+   *          the task to submit, cannot be <code>null</code>.
+   * @return the future result of the given task, never <code>null</code>.
+   */
+  public static <T> Future<T> submit( final Callable<T> aTask )
+  {
+    return getExecutor().submit( aTask );
+  }
+
+  /**
+   * Submits all given tasks to the shared pool of decoding threads. The caller
+   * is responsible for cancelling the tasks in case it stops waiting for their
+   * results, see {@link #cancelAll(List)}.
+   *
+   * @param aTasks
+   *          the tasks to submit, cannot be <code>null</code>.
+   * @return the future results of the given tasks, in the same order as the
+   *         tasks themselves, never <code>null</code>.
+   */
+  public static <T> List<Future<T>> submitAll( final List<? extends Callable<T>> aTasks )
+  {
+    final ExecutorService service = getExecutor();
+
+    final List<Future<T>> result = new ArrayList<Future<T>>( aTasks.size() );
+    for ( Callable<T> task : aTasks )
+    {
+      result.add( service.submit( task ) );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the shared pool of decoding threads, creating it when needed.
+   */
+  private static synchronized ExecutorService getExecutor()
+  {
+    if ( executor == null )
+    {
+      final AtomicInteger threadNo = new AtomicInteger();
+
+      executor = Executors.newFixedThreadPool( getThreadCount(), new ThreadFactory()
+      {
+        @Override
+        public Thread newThread( final Runnable aRunnable )
+        {
+          final Thread thread = new Thread( aRunnable, "OLS decoder " + threadNo.incrementAndGet() );
+          // Should not prevent the VM from exiting...
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    }
+    return executor;
+  }
+}
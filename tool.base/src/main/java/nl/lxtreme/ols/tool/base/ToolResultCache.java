@@ -0,0 +1,675 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import java.lang.ref.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.*;
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.tools.*;
+
+
+/**
+ * Keeps the results of earlier tool runs, so that running a tool again with the
+ * same settings on the same acquired data does not need to decode anything.
+ * <p>
+ * The results are kept in least-recently-used order within a budget of bytes.
+ * As the size of a result can only be estimated, the results are also softly
+ * referenced, allowing them to be cleared when memory runs low. Only the
+ * results for the acquired data that was used last are kept.
+ * </p>
+ * <p>
+ * A single cache is registered as service by this bundle, so it is shared by
+ * all tool dialogs, and lives as long as this bundle is active.
+ * </p>
+ */
+public final class ToolResultCache
+{
+  // INNER TYPES
+
+  /**
+   * Passes all annotations on to another annotation listener, while recording
+   * them to be replayed later on.
+   */
+  static final class AnnotationRecorder implements AnnotationListener
+  {
+    // VARIABLES
+
+    private final AnnotationListener delegate;
+    private final List<Annotation<?>> annotations;
+
+    private volatile boolean clearedAll;
+    private volatile int clearedChannels;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link AnnotationRecorder} instance.
+     *
+     * @param aDelegate
+     *          the annotation listener to pass all annotations on to, cannot
+     *          be <code>null</code>.
+     */
+    AnnotationRecorder( final AnnotationListener aDelegate )
+    {
+      this.delegate = aDelegate;
+      this.annotations = Collections.synchronizedList( new ArrayList<Annotation<?>>() );
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations()
+    {
+      this.clearedAll = true;
+      this.delegate.clearAnnotations();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations( final int aChannelIdx )
+    {
+      this.clearedChannels |= ( 1 << aChannelIdx );
+      this.delegate.clearAnnotations( aChannelIdx );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnnotation( final Annotation<?> aAnnotation )
+    {
+      this.annotations.add( aAnnotation );
+      this.delegate.onAnnotation( aAnnotation );
+    }
+
+    /**
+     * Returns the number of recorded annotations.
+     *
+     * @return an annotation count, >= 0.
+     */
+    int size()
+    {
+      return this.annotations.size();
+    }
+
+    /**
+     * Passes all recorded annotations on to the given annotation listener.
+     *
+     * @param aListener
+     *          the annotation listener to replay the annotations to, cannot
+     *          be <code>null</code>;
+     * @param aProgressListener
+     *          the progress listener to report the replay progress to, cannot
+     *          be <code>null</code>.
+     * @throws InterruptedException
+     *           in case the replay was cancelled.
+     */
+    void replay( final AnnotationListener aListener, final ToolProgressListener aProgressListener )
+        throws InterruptedException
+    {
+      if ( this.clearedAll )
+      {
+        aListener.clearAnnotations();
+      }
+      for ( int i = 0; i < 32; i++ )
+      {
+        if ( ( this.clearedChannels & ( 1 << i ) ) != 0 )
+        {
+          aListener.clearAnnotations( i );
+        }
+      }
+      final Annotation<?>[] recorded;
+      synchronized ( this.annotations )
+      {
+        recorded = this.annotations.toArray( new Annotation<?>[this.annotations.size()] );
+      }
+
+      final int progressStep = Math.max( 1, recorded.length / 100 );
+      for ( int i = 0; i < recorded.length; i++ )
+      {
+        aListener.onAnnotation( recorded[i] );
+
+        if ( ( i % progressStep ) == 0 )
+        {
+          if ( Thread.interrupted() )
+          {
+            throw new InterruptedException( "Replay interrupted!" );
+          }
+          aProgressListener.setProgress( ( int )( ( i * 100L ) / recorded.length ) );
+        }
+      }
+      aProgressListener.setProgress( 100 );
+    }
+  }
+
+  /**
+   * Provides the settings of a tool as part of the key of its result.
+   */
+  static final class Configuration implements UserSettings
+  {
+    // CONSTANTS
+
+    private static final long serialVersionUID = 1L;
+
+    // VARIABLES
+
+    private final String name;
+    private final SortedMap<String, String> properties;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Configuration} instance.
+     *
+     * @param aName
+     *          the name of the tool, cannot be <code>null</code>.
+     */
+    Configuration( final String aName )
+    {
+      this.name = aName;
+      this.properties = new TreeMap<String, String>();
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals( final Object aObject )
+    {
+      if ( this == aObject )
+      {
+        return true;
+      }
+      if ( !( aObject instanceof Configuration ) )
+      {
+        return false;
+      }
+
+      final Configuration other = ( Configuration )aObject;
+      return this.name.equals( other.name ) && this.properties.equals( other.properties );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String get( final String aName, final String aDefaultValue )
+    {
+      final String value = this.properties.get( aName );
+      return ( value == null ) ? aDefaultValue : value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getBoolean( final String aName, final boolean aDefaultValue )
+    {
+      final String value = this.properties.get( aName );
+      return ( value == null ) ? aDefaultValue : Boolean.parseBoolean( value );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt( final String aName, final int aDefaultValue )
+    {
+      final String value = this.properties.get( aName );
+      return ( value == null ) ? aDefaultValue : Integer.parseInt( value );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong( final String aName, final long aDefaultValue )
+    {
+      final String value = this.properties.get( aName );
+      return ( value == null ) ? aDefaultValue : Long.parseLong( value );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+      return this.name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+      return ( 31 * this.name.hashCode() ) + this.properties.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Map.Entry<String, Object>> iterator()
+    {
+      final List<Map.Entry<String, Object>> entries = new ArrayList<Map.Entry<String, Object>>();
+      for ( Map.Entry<String, String> entry : this.properties.entrySet() )
+      {
+        entries.add( new AbstractMap.SimpleImmutableEntry<String, Object>( entry.getKey(), entry.getValue() ) );
+      }
+      return Collections.unmodifiableList( entries ).iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( final String aName, final String aValue )
+    {
+      this.properties.put( aName, aValue );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putAll( final Map<?, ?> aSettings )
+    {
+      for ( Map.Entry<?, ?> entry : aSettings.entrySet() )
+      {
+        this.properties.put( String.valueOf( entry.getKey() ), String.valueOf( entry.getValue() ) );
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putBoolean( final String aName, final boolean aValue )
+    {
+      this.properties.put( aName, Boolean.toString( aValue ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putInt( final String aName, final int aValue )
+    {
+      this.properties.put( aName, Integer.toString( aValue ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putLong( final String aName, final long aValue )
+    {
+      this.properties.put( aName, Long.toString( aValue ) );
+    }
+  }
+
+  /**
+   * Provides a cached tool result along with the annotations it produced.
+   */
+  static final class Entry
+  {
+    // VARIABLES
+
+    private final Object result;
+    private final AnnotationRecorder annotations;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Entry} instance.
+     */
+    Entry( final Object aResult, final AnnotationRecorder aAnnotations )
+    {
+      this.result = aResult;
+      this.annotations = aAnnotations;
+    }
+
+    // METHODS
+
+    /**
+     * Returns the cached tool result.
+     *
+     * @return the tool result, never <code>null</code>.
+     */
+    Object getResult()
+    {
+      return this.result;
+    }
+
+    /**
+     * Creates a task that passes the annotations of the cached tool result on
+     * to the given annotation listener, and then yields the cached tool result.
+     * This way, a cached result is shown the same way as a result of the tool
+     * itself.
+     *
+     * @param aListener
+     *          the annotation listener to replay the annotations to, cannot
+     *          be <code>null</code>;
+     * @param aProgressListener
+     *          the progress listener to report the replay progress to, cannot
+     *          be <code>null</code>.
+     * @return a new tool task, never <code>null</code>.
+     */
+    <RESULT_TYPE> ToolTask<RESULT_TYPE> createReplayTask( final AnnotationListener aListener,
+        final ToolProgressListener aProgressListener )
+    {
+      return new ReplayTask<RESULT_TYPE>( this, aListener, aProgressListener );
+    }
+  }
+
+  /**
+   * Identifies a tool result by the acquired data, the decoded range and the
+   * settings of the tool.
+   */
+  static final class Key
+  {
+    // VARIABLES
+
+    private final Reference<AcquisitionResult> data;
+    private final int dataHash;
+    private final int startIdx;
+    private final int endIdx;
+    private final int enabledChannels;
+    private final Configuration configuration;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Key} instance.
+     *
+     * @param aContext
+     *          the tool context with the acquired data and the range to
+     *          decode, cannot be <code>null</code>;
+     * @param aConfiguration
+     *          the settings of the tool, cannot be <code>null</code>.
+     */
+    Key( final ToolContext aContext, final Configuration aConfiguration )
+    {
+      final AcquisitionResult acquisitionResult = aContext.getData();
+
+      // Acquired data is never changed, but replaced as a whole, so its
+      // identity is as good as its contents...
+      this.data = new WeakReference<AcquisitionResult>( acquisitionResult );
+      this.dataHash = System.identityHashCode( acquisitionResult );
+      this.startIdx = aContext.getStartSampleIndex();
+      this.endIdx = aContext.getEndSampleIndex();
+      this.enabledChannels = aContext.getEnabledChannels();
+      this.configuration = aConfiguration;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals( final Object aObject )
+    {
+      if ( this == aObject )
+      {
+        return true;
+      }
+      if ( !( aObject instanceof Key ) )
+      {
+        return false;
+      }
+
+      final Key other = ( Key )aObject;
+      final AcquisitionResult acquisitionResult = this.data.get();
+      return ( acquisitionResult != null ) && ( acquisitionResult == other.data.get() )
+          && ( this.startIdx == other.startIdx ) && ( this.endIdx == other.endIdx )
+          && ( this.enabledChannels == other.enabledChannels ) && this.configuration.equals( other.configuration );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+      int result = this.dataHash;
+      result = ( 31 * result ) + this.startIdx;
+      result = ( 31 * result ) + this.endIdx;
+      result = ( 31 * result ) + this.enabledChannels;
+      return ( 31 * result ) + this.configuration.hashCode();
+    }
+
+    /**
+     * Returns whether this key belongs to the given acquired data.
+     */
+    boolean isFor( final AcquisitionResult aData )
+    {
+      final AcquisitionResult acquisitionResult = this.data.get();
+      return ( acquisitionResult != null ) && ( acquisitionResult == aData );
+    }
+  }
+
+  /**
+   * Provides a tool task that yields a cached tool result.
+   */
+  static final class ReplayTask<RESULT_TYPE> implements ToolTask<RESULT_TYPE>
+  {
+    // VARIABLES
+
+    private final Entry entry;
+    private final AnnotationListener annotationListener;
+    private final ToolProgressListener progressListener;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ReplayTask} instance.
+     */
+    ReplayTask( final Entry aEntry, final AnnotationListener aListener, final ToolProgressListener aProgressListener )
+    {
+      this.entry = aEntry;
+      this.annotationListener = aListener;
+      this.progressListener = aProgressListener;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public RESULT_TYPE call() throws Exception
+    {
+      this.entry.annotations.replay( this.annotationListener, this.progressListener );
+      return ( RESULT_TYPE )this.entry.result;
+    }
+  }
+
+  /**
+   * Keeps a single cache entry along with its estimated size.
+   */
+  private static final class Slot
+  {
+    // VARIABLES
+
+    final Reference<Entry> entry;
+    final long size;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Slot} instance.
+     */
+    Slot( final Entry aEntry, final long aSize )
+    {
+      this.entry = new SoftReference<Entry>( aEntry );
+      this.size = aSize;
+    }
+  }
+
+  // CONSTANTS
+
+  /** The estimated number of bytes taken by a single annotation. */
+  private static final int ANNOTATION_SIZE = 128;
+
+  // VARIABLES
+
+  private final Map<Key, Slot> slots;
+  private final long budget;
+
+  private long size;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ToolResultCache} instance.
+   *
+   * @param aBudget
+   *          the (estimated) number of bytes all cached results may take, >
+   *          0.
+   */
+  public ToolResultCache( final long aBudget )
+  {
+    this.slots = new LinkedHashMap<Key, Slot>( 16, 0.75f, true /* accessOrder */);
+    this.budget = aBudget;
+  }
+
+  // METHODS
+
+  /**
+   * Removes all cached results.
+   */
+  public synchronized void clear()
+  {
+    this.slots.clear();
+    this.size = 0L;
+  }
+
+  /**
+   * Returns the cached result for the given key.
+   *
+   * @param aKey
+   *          the key of the result to return, cannot be <code>null</code>.
+   * @return the cached result, or <code>null</code> if there is none.
+   */
+  synchronized Entry get( final Key aKey )
+  {
+    removeStale( aKey );
+
+    final Slot slot = this.slots.get( aKey );
+    if ( slot == null )
+    {
+      return null;
+    }
+
+    final Entry entry = slot.entry.get();
+    if ( entry == null )
+    {
+      // Cleared due to memory pressure...
+      remove( aKey );
+    }
+    return entry;
+  }
+
+  /**
+   * Caches the given result, evicting the least recently used results if the
+   * budget is exceeded.
+   *
+   * @param aKey
+   *          the key of the result, cannot be <code>null</code>;
+   * @param aResult
+   *          the result to cache, cannot be <code>null</code>;
+   * @param aAnnotations
+   *          the annotations produced along with the result, cannot be
+   *          <code>null</code>;
+   * @param aResultSize
+   *          the estimated number of bytes taken by the result, >= 0.
+   */
+  synchronized void put( final Key aKey, final Object aResult, final AnnotationRecorder aAnnotations,
+      final long aResultSize )
+  {
+    removeStale( aKey );
+    remove( aKey );
+
+    final long entrySize = aResultSize + ( ( long )aAnnotations.size() * ANNOTATION_SIZE );
+    if ( entrySize > this.budget )
+    {
+      // Would evict everything else, and still not fit...
+      return;
+    }
+
+    this.slots.put( aKey, new Slot( new Entry( aResult, aAnnotations ), entrySize ) );
+    this.size += entrySize;
+
+    final Iterator<Slot> iter = this.slots.values().iterator();
+    while ( ( this.size > this.budget ) && iter.hasNext() )
+    {
+      this.size -= iter.next().size;
+      iter.remove();
+    }
+  }
+
+  /**
+   * Removes the result with the given key, if it is cached.
+   */
+  private void remove( final Key aKey )
+  {
+    final Slot slot = this.slots.remove( aKey );
+    if ( slot != null )
+    {
+      this.size -= slot.size;
+    }
+  }
+
+  /**
+   * Removes all results that do not belong to the acquired data of the given
+   * key, as only the most recently acquired data is analysed.
+   */
+  private void removeStale( final Key aKey )
+  {
+    final AcquisitionResult data = aKey.data.get();
+
+    final Iterator<Map.Entry<Key, Slot>> iter = this.slots.entrySet().iterator();
+    while ( iter.hasNext() )
+    {
+      final Map.Entry<Key, Slot> entry = iter.next();
+      if ( !entry.getKey().isFor( data ) )
+      {
+        this.size -= entry.getValue().size;
+        iter.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+/**
+ * Denotes a decoder that is driven by a {@link DecoderEngine}, which pushes
+ * the transitions of the lines it is interested in to it.
+ * <p>
+ * A transition decoder is a state machine: it keeps its state between calls,
+ * and reports its results by itself, typically to an annotation listener.
+ * </p>
+ */
+public interface TransitionDecoder
+{
+  // METHODS
+
+  /**
+   * Returns the mask of the channels this decoder is interested in.
+   *
+   * @return a channel mask, != 0.
+   */
+  int getChannelMask();
+
+  /**
+   * Called once the engine has walked past the last sample.
+   *
+   * @param aSampleIdx
+   *          the index of the last sample;
+   * @param aTimestamp
+   *          the timestamp of the last sample.
+   */
+  void onEnd( int aSampleIdx, long aTimestamp );
+
+  /**
+   * Called once before any transition is reported.
+   *
+   * @param aSampleIdx
+   *          the index of the first sample;
+   * @param aTimestamp
+   *          the timestamp of the first sample;
+   * @param aValue
+   *          the value of the first sample.
+   */
+  void onStart( int aSampleIdx, long aTimestamp, int aValue );
+
+  /**
+   * Called for each sample at which at least one of the channels in the mask
+   * of this decoder changes.
+   *
+   * @param aSampleIdx
+   *          the index of the sample at which the channels change;
+   * @param aTimestamp
+   *          the timestamp of this sample;
+   * @param aOldValue
+   *          the value of the previous sample;
+   * @param aNewValue
+   *          the value of this sample.
+   */
+  void onTransition( int aSampleIdx, long aTimestamp, int aOldValue, int aNewValue );
+}
@@ -0,0 +1,64 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import nl.lxtreme.ols.api.tools.*;
+
+
+/**
+ * Denotes a tool task that decodes its data with {@link TransitionDecoder}s,
+ * which allows it to share a single walk over the acquired data with other
+ * such tasks, see {@link CombinedDecoderTask}.
+ * <p>
+ * Running such a task by itself should give the same results as preparing it,
+ * walking over the data with a {@link DecoderEngine} and completing it.
+ * </p>
+ * 
+ * @param RESULT_TYPE
+ *          the return type of this task.
+ */
+public interface TransitionDecoderTask<RESULT_TYPE> extends ToolTask<RESULT_TYPE>
+{
+  // METHODS
+
+  /**
+   * Completes the decoding once the engine has walked over all data, and
+   * returns the decoded results.
+   * 
+   * @return the decoded results, never <code>null</code>.
+   * @throws Exception
+   *           in case the decoded results could not be completed.
+   */
+  RESULT_TYPE completeDecoding() throws Exception;
+
+  /**
+   * Prepares the decoding, and adds the decoders of this task to the given
+   * engine, each with the range of samples it should decode.
+   * 
+   * @param aEngine
+   *          the engine to add the decoders to, cannot be <code>null</code>.
+   * @throws Exception
+   *           in case the data cannot be decoded by this task, for example,
+   *           because no valid data is found.
+   */
+  void prepareDecoding( DecoderEngine aEngine ) throws Exception;
+}
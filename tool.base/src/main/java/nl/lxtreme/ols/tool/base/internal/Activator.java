@@ -0,0 +1,67 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base.internal;
+
+
+import nl.lxtreme.ols.tool.base.*;
+
+import org.osgi.framework.*;
+
+
+/**
+ * Provides a bundle activator for the tool base, registering the cache for the
+ * results of all tools.
+ */
+public class Activator implements BundleActivator
+{
+  // CONSTANTS
+
+  /** The estimated number of bytes all cached tool results may take. */
+  private static final long RESULT_CACHE_BUDGET = 64L * 1024L * 1024L;
+
+  // VARIABLES
+
+  private ToolResultCache resultCache;
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void start( final BundleContext aContext ) throws Exception
+  {
+    this.resultCache = new ToolResultCache( RESULT_CACHE_BUDGET );
+
+    aContext.registerService( ToolResultCache.class.getName(), this.resultCache, null );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void stop( final BundleContext aContext ) throws Exception
+  {
+    // The service itself is unregistered by the framework...
+    this.resultCache.clear();
+    this.resultCache = null;
+  }
+}
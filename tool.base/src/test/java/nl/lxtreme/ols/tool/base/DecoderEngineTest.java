@@ -0,0 +1,279 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link DecoderEngine}.
+ */
+public class DecoderEngineTest
+{
+  // INNER TYPES
+
+  /**
+   * Records all calls made to it.
+   */
+  static final class RecordingDecoder implements TransitionDecoder
+  {
+    // VARIABLES
+
+    final List<String> transitions = new ArrayList<String>();
+    private final int mask;
+    int startIdx = -1;
+    int endIdx = -1;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link RecordingDecoder} instance.
+     */
+    RecordingDecoder( final int aMask )
+    {
+      this.mask = aMask;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannelMask()
+    {
+      return this.mask;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEnd( final int aSampleIdx, final long aTimestamp )
+    {
+      this.endIdx = aSampleIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart( final int aSampleIdx, final long aTimestamp, final int aValue )
+    {
+      this.startIdx = aSampleIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTransition( final int aSampleIdx, final long aTimestamp, final int aOldValue, final int aNewValue )
+    {
+      this.transitions.add( aSampleIdx + "@" + aTimestamp + ":" + aOldValue + ">" + aNewValue );
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Tests that a decoder without channels is refused.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testAddDecoderWithoutChannelsFail()
+  {
+    new DecoderEngine().addDecoder( new RecordingDecoder( 0 ) );
+  }
+
+  /**
+   * Tests that an empty range is not decoded at all.
+   */
+  @Test
+  public void testDecodeEmptyRangeOk() throws Exception
+  {
+    final RecordingDecoder decoder = new RecordingDecoder( 0x01 );
+    decode( createData( 0, 1, 0 ), 2, 2, decoder );
+
+    assertEquals( -1, decoder.startIdx );
+    assertEquals( -1, decoder.endIdx );
+    assertTrue( decoder.transitions.isEmpty() );
+  }
+
+  /**
+   * Tests that decoding a capture in chunks, each starting at the last sample
+   * of the preceding chunk, yields the same transitions as a single walk.
+   */
+  @Test
+  public void testDecodeInChunksSeesSameTransitions() throws Exception
+  {
+    final AcquisitionResult data = createRandomData( 5000, 42L );
+
+    final RecordingDecoder expected = new RecordingDecoder( 0x05 );
+    decode( data, 0, 5000, expected );
+    assertFalse( expected.transitions.isEmpty() );
+
+    final int[] chunkSizes = { 1, 2, 7, 100, 4999 };
+    for ( int chunkSize : chunkSizes )
+    {
+      final RecordingDecoder actual = new RecordingDecoder( 0x05 );
+      for ( int start = 0; start < 4999; start += chunkSize )
+      {
+        final int end = Math.min( start + chunkSize + 1, 5000 );
+        decode( data, start, end, actual );
+
+        assertEquals( start, actual.startIdx );
+        assertEquals( end - 1, actual.endIdx );
+      }
+      assertEquals( "Chunk size " + chunkSize, expected.transitions, actual.transitions );
+    }
+  }
+
+  /**
+   * Tests that a transition on the first sample of a range is not reported,
+   * while a transition on its last sample is.
+   */
+  @Test
+  public void testDecodeRangeBoundariesOk() throws Exception
+  {
+    final AcquisitionResult data = createData( 0, 1, 0, 1, 0 );
+
+    final RecordingDecoder decoder = new RecordingDecoder( 0x01 );
+    decode( data, 1, 3, decoder );
+
+    assertEquals( Arrays.asList( "2@20:1>0" ), decoder.transitions );
+    assertEquals( 1, decoder.startIdx );
+    assertEquals( 2, decoder.endIdx );
+  }
+
+  /**
+   * Tests that the decoding stops when the calling thread is interrupted, and
+   * that the decoders are not ended in that case.
+   */
+  @Test
+  public void testDecodeStopsWhenInterrupted() throws Exception
+  {
+    final AcquisitionResult data = createRandomData( 10000, 1L );
+    final RecordingDecoder decoder = new RecordingDecoder( 0x01 );
+
+    Thread.currentThread().interrupt();
+    try
+    {
+      decode( data, 0, 10000, decoder );
+      fail( "Expected InterruptedException!" );
+    }
+    catch ( InterruptedException exception )
+    {
+      // Ok; the interrupt should be consumed...
+      assertFalse( Thread.currentThread().isInterrupted() );
+    }
+    finally
+    {
+      Thread.interrupted();
+    }
+
+    assertEquals( 0, decoder.startIdx );
+    assertEquals( -1, decoder.endIdx );
+    // Stopped after about one percent of the samples...
+    assertTrue( decoder.transitions.size() < 200 );
+  }
+
+  /**
+   * Tests that each decoder only sees the transitions of its own channels, and
+   * sees a sample on which several of its channels change only once.
+   */
+  @Test
+  public void testDecodeTransitionsPerChannelOk() throws Exception
+  {
+    final AcquisitionResult data = createData( 0x0, 0x1, 0x3, 0x5, 0x4, 0x0, 0x8 );
+
+    final RecordingDecoder ch0 = new RecordingDecoder( 0x01 );
+    final RecordingDecoder ch1and2 = new RecordingDecoder( 0x06 );
+    final RecordingDecoder ch4 = new RecordingDecoder( 0x10 );
+
+    final DecoderEngine engine = new DecoderEngine();
+    engine.addDecoder( ch0 );
+    engine.addDecoder( ch1and2 );
+    engine.addDecoder( ch4 );
+    engine.decode( data, 0, 7, null );
+
+    assertEquals( Arrays.asList( "1@10:0>1", "4@40:5>4" ), ch0.transitions );
+    assertEquals( Arrays.asList( "2@20:1>3", "3@30:3>5", "5@50:4>0" ), ch1and2.transitions );
+    assertTrue( ch4.transitions.isEmpty() );
+
+    for ( RecordingDecoder decoder : Arrays.asList( ch0, ch1and2, ch4 ) )
+    {
+      assertEquals( 0, decoder.startIdx );
+      assertEquals( 6, decoder.endIdx );
+    }
+  }
+
+  /**
+   * Creates captured data with the given sample values, ten time units apart.
+   */
+  private static AcquisitionResult createData( final int... aValues )
+  {
+    final long[] timestamps = new long[aValues.length];
+    for ( int i = 0; i < timestamps.length; i++ )
+    {
+      timestamps[i] = i * 10L;
+    }
+    return new CapturedData( aValues, timestamps, -1L, 100, 8, 0xFF, -1L );
+  }
+
+  /**
+   * Creates captured data with random sample values, of which each differs
+   * from its predecessor.
+   */
+  private static AcquisitionResult createRandomData( final int aCount, final long aSeed )
+  {
+    final Random random = new Random( aSeed );
+
+    final int[] values = new int[aCount];
+    for ( int i = 1; i < aCount; i++ )
+    {
+      do
+      {
+        values[i] = random.nextInt( 16 );
+      }
+      while ( values[i] == values[i - 1] );
+    }
+    return createData( values );
+  }
+
+  /**
+   * Decodes the given range with a single decoder.
+   */
+  private static void decode( final AcquisitionResult aData, final int aStartIdx, final int aEndIdx,
+      final TransitionDecoder aDecoder ) throws InterruptedException
+  {
+    final DecoderEngine engine = new DecoderEngine();
+    engine.addDecoder( aDecoder );
+    engine.decode( aData, aStartIdx, aEndIdx, null );
+  }
+}
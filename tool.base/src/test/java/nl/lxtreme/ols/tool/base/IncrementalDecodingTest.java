@@ -0,0 +1,309 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link IncrementalDecoding}.
+ */
+public class IncrementalDecodingTest
+{
+  // INNER TYPES
+
+  /**
+   * Reports an item for each sample, and a checkpoint at every tenth sample,
+   * including the end of the range. Records the ranges it is asked to decode.
+   */
+  static final class RecordingDecoder implements IncrementalDecoder<String>
+  {
+    // VARIABLES
+
+    final List<String> ranges = new ArrayList<String>();
+    private final AcquisitionResult data;
+    private final int failIdx;
+    boolean confirmEnd = true;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link RecordingDecoder} instance.
+     */
+    RecordingDecoder( final AcquisitionResult aData, final int aFailIdx )
+    {
+      this.data = aData;
+      this.failIdx = aFailIdx;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decode( final int aStartIdx, final int aEndIdx, final Callback<String> aCallback ) throws Exception
+    {
+      this.ranges.add( aStartIdx + "-" + aEndIdx );
+
+      final int[] values = this.data.getValues();
+      for ( int i = aStartIdx; i < aEndIdx; i++ )
+      {
+        if ( i == this.failIdx )
+        {
+          throw new IllegalStateException( "Decoding failed!" );
+        }
+        if ( ( i % 10 ) == 0 )
+        {
+          aCallback.onCheckpoint( i );
+        }
+        aCallback.onItem( i + ":" + values[i] );
+      }
+
+      if ( this.confirmEnd && ( ( aEndIdx % 10 ) == 0 ) )
+      {
+        aCallback.onCheckpoint( aEndIdx );
+      }
+    }
+  }
+
+  // CONSTANTS
+
+  private static final Object SETTINGS = Integer.valueOf( 1 );
+
+  // VARIABLES
+
+  private AcquisitionResult data;
+  private IncrementalDecoding<String> decoding;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.data = createData( 100, 1L );
+    this.decoding = new IncrementalDecoding<String>();
+  }
+
+  /**
+   * Tests that a failing run discards the results of the previous run, so the
+   * next run decodes its entire range.
+   */
+  @Test
+  public void testDecodeAfterFailureDecodesEntireRangeOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 100 );
+
+    try
+    {
+      // Only the samples after the last checkpoint are decoded...
+      this.decoding.decode( new RecordingDecoder( this.data, 95 ), this.data, SETTINGS, 0, 99 );
+      fail( "Exception expected!" );
+    }
+    catch ( IllegalStateException exception )
+    {
+      // Ok; expected...
+    }
+    assertEquals( 0L, this.decoding.getDecodedLength() );
+
+    final RecordingDecoder decoder = decode( this.data, SETTINGS, 0, 100 );
+    assertEquals( Arrays.asList( "0-100" ), decoder.ranges );
+    assertEquals( 100L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Tests that a run on different data decodes its entire range.
+   */
+  @Test
+  public void testDecodeChangedDataDecodesEntireRangeOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 100 );
+
+    final AcquisitionResult otherData = createData( 100, 2L );
+
+    final RecordingDecoder decoder = decode( otherData, SETTINGS, 0, 100 );
+    assertEquals( Arrays.asList( "0-100" ), decoder.ranges );
+    assertEquals( 100L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Tests that a run with different settings decodes its entire range.
+   */
+  @Test
+  public void testDecodeChangedSettingsDecodesEntireRangeOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 100 );
+
+    final RecordingDecoder decoder = decode( this.data, Integer.valueOf( 2 ), 0, 100 );
+    assertEquals( Arrays.asList( "0-100" ), decoder.ranges );
+    assertEquals( 100L, this.decoding.getDecodedLength() );
+
+    // The new settings are remembered...
+    final RecordingDecoder nextDecoder = decode( this.data, Integer.valueOf( 2 ), 0, 100 );
+    assertTrue( nextDecoder.ranges.isEmpty() );
+    assertEquals( 0L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Tests that narrowing the window only decodes the samples before the first
+   * and after the last shared checkpoint.
+   */
+  @Test
+  public void testDecodeNarrowedWindowOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 100 );
+
+    final RecordingDecoder decoder = decode( this.data, SETTINGS, 15, 85 );
+    assertEquals( Arrays.asList( "15-20", "80-85" ), decoder.ranges );
+    assertEquals( 10L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Tests that shifting the window such that only a single checkpoint is
+   * shared, decodes its entire range.
+   */
+  @Test
+  public void testDecodeSingleSharedCheckpointDecodesEntireRangeOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 25 );
+
+    final RecordingDecoder decoder = decode( this.data, SETTINGS, 20, 60 );
+    assertEquals( Arrays.asList( "20-60" ), decoder.ranges );
+    assertEquals( 40L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Tests that the items of the previous run are not reused when decoding the
+   * samples before the first shared checkpoint does not end at that
+   * checkpoint, for example, because the decoder ended halfway a frame.
+   */
+  @Test
+  public void testDecodeUnconfirmedCheckpointDecodesEntireRangeOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 100 );
+
+    final RecordingDecoder decoder = new RecordingDecoder( this.data, -1 );
+    decoder.confirmEnd = false;
+
+    final List<String> result = this.decoding.decode( decoder, this.data, SETTINGS, 15, 85 );
+    assertEquals( Arrays.asList( "15-20", "15-85" ), decoder.ranges );
+    assertEquals( 75L, this.decoding.getDecodedLength() );
+    assertEquals( 70, result.size() );
+    assertEquals( "15:" + this.data.getValues()[15], result.get( 0 ) );
+  }
+
+  /**
+   * Tests that widening the window only decodes the samples before the first
+   * and after the last checkpoint of the previous window.
+   */
+  @Test
+  public void testDecodeWidenedWindowOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 25, 75 );
+
+    final RecordingDecoder decoder = decode( this.data, SETTINGS, 5, 95 );
+    assertEquals( Arrays.asList( "5-30", "70-95" ), decoder.ranges );
+    assertEquals( 50L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Tests that a series of windows yields the same items as decoding each
+   * window from scratch.
+   */
+  @Test
+  public void testDecodeWindowsSameAsFullDecodeOk() throws Exception
+  {
+    final int[][] windows = { { 0, 100 }, { 13, 100 }, { 13, 87 }, { 41, 59 }, { 3, 97 }, { 0, 100 }, { 50, 100 },
+        { 0, 50 } };
+
+    for ( int[] window : windows )
+    {
+      final List<String> expected = new IncrementalDecoding<String>().decode(
+          new RecordingDecoder( this.data, -1 ), this.data, SETTINGS, window[0], window[1] );
+      final List<String> result = this.decoding.decode( new RecordingDecoder( this.data, -1 ), this.data,
+          SETTINGS, window[0], window[1] );
+
+      assertEquals( expected, result );
+    }
+  }
+
+  /**
+   * Tests that a window that shares no checkpoints with the previous window
+   * decodes its entire range.
+   */
+  @Test
+  public void testDecodeWithoutSharedCheckpointsDecodesEntireRangeOk() throws Exception
+  {
+    decode( this.data, SETTINGS, 0, 30 );
+
+    final RecordingDecoder decoder = decode( this.data, SETTINGS, 50, 90 );
+    assertEquals( Arrays.asList( "50-90" ), decoder.ranges );
+    assertEquals( 40L, this.decoding.getDecodedLength() );
+  }
+
+  /**
+   * Creates random data with the given number of samples.
+   */
+  private static AcquisitionResult createData( final int aCount, final long aSeed )
+  {
+    final Random random = new Random( aSeed );
+
+    final int[] values = new int[aCount];
+    final long[] timestamps = new long[aCount];
+    for ( int i = 0; i < aCount; i++ )
+    {
+      // Keep the samples distinct, so the data is not compressed...
+      values[i] = ( i << 8 ) | random.nextInt( 256 );
+      timestamps[i] = i;
+    }
+    return new CapturedData( values, timestamps, -1L, 100, 32, 0xFFFFFFFF, -1L );
+  }
+
+  /**
+   * Decodes the given window with the incremental decoding under test, and
+   * asserts that the result equals that of decoding it from scratch.
+   * 
+   * @return the decoder used, never <code>null</code>.
+   */
+  private RecordingDecoder decode( final AcquisitionResult aData, final Object aSettings, final int aStartIdx,
+      final int aEndIdx ) throws Exception
+  {
+    final List<String> expected = new IncrementalDecoding<String>().decode( new RecordingDecoder( aData, -1 ),
+        aData, aSettings, aStartIdx, aEndIdx );
+
+    final RecordingDecoder decoder = new RecordingDecoder( aData, -1 );
+    final List<String> result = this.decoding.decode( decoder, aData, aSettings, aStartIdx, aEndIdx );
+
+    assertEquals( expected, result );
+    return decoder;
+  }
+}
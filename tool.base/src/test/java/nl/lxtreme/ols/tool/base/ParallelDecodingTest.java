@@ -0,0 +1,207 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link ParallelDecoding}.
+ */
+public class ParallelDecodingTest
+{
+  // METHODS
+
+  /**
+   * Tests that a failing task cancels the tasks that are still waiting to run,
+   * and that its exception is rethrown as-is.
+   */
+  @Test
+  public void testInvokeAllFailureCancelsOtherTasks() throws Exception
+  {
+    final AtomicInteger started = new AtomicInteger();
+    final AtomicInteger stopped = new AtomicInteger();
+    final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    tasks.add( new Callable<Integer>()
+    {
+      @Override
+      public Integer call() throws Exception
+      {
+        throw new IOException( "decoding failed" );
+      }
+    } );
+    // Each of these tasks blocks until it is interrupted...
+    for ( int i = 0; i < ParallelDecoding.getThreadCount(); i++ )
+    {
+      tasks.add( new Callable<Integer>()
+      {
+        @Override
+        public Integer call() throws Exception
+        {
+          started.incrementAndGet();
+          try
+          {
+            new CountDownLatch( 1 ).await();
+            return Integer.valueOf( 0 );
+          }
+          finally
+          {
+            stopped.incrementAndGet();
+          }
+        }
+      } );
+    }
+
+    try
+    {
+      ParallelDecoding.invokeAll( tasks );
+      fail( "Expected IOException!" );
+    }
+    catch ( IOException exception )
+    {
+      assertEquals( "decoding failed", exception.getMessage() );
+    }
+
+    // If the blocking tasks were not cancelled, they would occupy the shared
+    // pool forever, and this task would never run...
+    final Future<Boolean> probe = ParallelDecoding.submit( new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call() throws Exception
+      {
+        return Boolean.TRUE;
+      }
+    } );
+    assertEquals( Boolean.TRUE, probe.get( 10, TimeUnit.SECONDS ) );
+
+    // Tasks that were cancelled before they started never run at all, those
+    // that did start should be interrupted...
+    final long deadline = System.currentTimeMillis() + 10000L;
+    while ( ( stopped.get() != started.get() ) && ( System.currentTimeMillis() < deadline ) )
+    {
+      Thread.sleep( 10L );
+    }
+    assertEquals( started.get(), stopped.get() );
+  }
+
+  /**
+   * Tests that the results are returned in the order of the tasks, regardless
+   * of the order in which the tasks complete.
+   */
+  @Test
+  public void testInvokeAllKeepsOrderOfTasks() throws Exception
+  {
+    final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for ( int i = 0; i < 16; i++ )
+    {
+      final int value = i;
+      tasks.add( new Callable<Integer>()
+      {
+        @Override
+        public Integer call() throws Exception
+        {
+          // Let the first tasks finish last...
+          Thread.sleep( 16 - value );
+          return Integer.valueOf( value );
+        }
+      } );
+    }
+
+    final List<Integer> result = ParallelDecoding.invokeAll( tasks );
+    assertEquals( 16, result.size() );
+    for ( int i = 0; i < result.size(); i++ )
+    {
+      assertEquals( i, result.get( i ).intValue() );
+    }
+  }
+
+  /**
+   * Tests that an empty range still yields a single (empty) chunk.
+   */
+  @Test
+  public void testSplitEmptyRange()
+  {
+    assertArrayEquals( new int[] { 5, 5 }, ParallelDecoding.split( 5, 5, 10 ) );
+    assertArrayEquals( new int[] { 5, 5 }, ParallelDecoding.split( 5, 3, 10 ) );
+  }
+
+  /**
+   * Tests that a chunk size less than one is refused.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testSplitInvalidChunkSizeFail()
+  {
+    ParallelDecoding.split( 0, 10, 0 );
+  }
+
+  /**
+   * Tests that the last chunk holds the remainder of the range, and that the
+   * chunk boundaries do not overflow for large chunk sizes.
+   */
+  @Test
+  public void testSplitRangeOk()
+  {
+    assertArrayEquals( new int[] { 2, 6, 10 }, ParallelDecoding.split( 2, 10, 4 ) );
+    assertArrayEquals( new int[] { 2, 6, 10, 11 }, ParallelDecoding.split( 2, 11, 4 ) );
+    assertArrayEquals( new int[] { 1, 1000 }, ParallelDecoding.split( 1, 1000, Integer.MAX_VALUE ) );
+  }
+
+  /**
+   * Tests that the number of threads honours the system property, but never
+   * exceeds the number of processors.
+   */
+  @Test
+  public void testThreadCountHonoursSystemProperty()
+  {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    final String oldValue = System.getProperty( ParallelDecoding.PROPERTY_THREADS );
+    try
+    {
+      System.setProperty( ParallelDecoding.PROPERTY_THREADS, "1" );
+      assertEquals( 1, ParallelDecoding.getThreadCount() );
+
+      System.setProperty( ParallelDecoding.PROPERTY_THREADS, "0" );
+      assertEquals( 1, ParallelDecoding.getThreadCount() );
+
+      System.setProperty( ParallelDecoding.PROPERTY_THREADS, String.valueOf( processors + 1 ) );
+      assertEquals( processors, ParallelDecoding.getThreadCount() );
+    }
+    finally
+    {
+      if ( oldValue == null )
+      {
+        System.clearProperty( ParallelDecoding.PROPERTY_THREADS );
+      }
+      else
+      {
+        System.setProperty( ParallelDecoding.PROPERTY_THREADS, oldValue );
+      }
+    }
+  }
+}
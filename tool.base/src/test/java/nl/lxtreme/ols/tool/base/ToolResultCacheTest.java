@@ -0,0 +1,351 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.base;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.annotation.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link ToolResultCache}.
+ */
+public class ToolResultCacheTest
+{
+  // INNER TYPES
+
+  /**
+   * Records all calls made to it as text.
+   */
+  static final class RecordingListener implements AnnotationListener, ToolProgressListener
+  {
+    // VARIABLES
+
+    final List<String> events = new ArrayList<String>();
+    int progress = -1;
+
+    // METHODS
+
+    @Override
+    public void clearAnnotations()
+    {
+      this.events.add( "clear" );
+    }
+
+    @Override
+    public void clearAnnotations( final int aChannelIdx )
+    {
+      this.events.add( "clear " + aChannelIdx );
+    }
+
+    @Override
+    public void onAnnotation( final Annotation<?> aAnnotation )
+    {
+      this.events.add( String.valueOf( aAnnotation.getAnnotation() ) );
+    }
+
+    @Override
+    public void setProgress( final int aPercentage )
+    {
+      assertTrue( aPercentage >= this.progress );
+      this.progress = aPercentage;
+    }
+  }
+
+  /**
+   * Provides a tool context for a fixed range of the given data.
+   */
+  static final class StubToolContext implements ToolContext
+  {
+    // VARIABLES
+
+    private final AcquisitionResult data;
+    private final int startIdx;
+    private final int endIdx;
+
+    // CONSTRUCTORS
+
+    StubToolContext( final AcquisitionResult aData, final int aStartIdx, final int aEndIdx )
+    {
+      this.data = aData;
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+    }
+
+    // METHODS
+
+    @Override
+    public int getChannels()
+    {
+      return this.data.getChannels();
+    }
+
+    @Override
+    public Cursor getCursor( final int aSelectedIndex )
+    {
+      return null;
+    }
+
+    @Override
+    public AcquisitionResult getData()
+    {
+      return this.data;
+    }
+
+    @Override
+    public int getEnabledChannels()
+    {
+      return this.data.getEnabledChannels();
+    }
+
+    @Override
+    public int getEndSampleIndex()
+    {
+      return this.endIdx;
+    }
+
+    @Override
+    public int getLength()
+    {
+      return this.endIdx - this.startIdx;
+    }
+
+    @Override
+    public int getStartSampleIndex()
+    {
+      return this.startIdx;
+    }
+  }
+
+  // VARIABLES
+
+  private AcquisitionResult data;
+  private RecordingListener listener;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.data = createData();
+    this.listener = new RecordingListener();
+  }
+
+  /**
+   * Tests that changing to other acquired data drops the results of the
+   * previous acquired data, even when the previous data is used again.
+   */
+  @Test
+  public void testChangedCaptureInvalidatesResults()
+  {
+    final ToolResultCache cache = new ToolResultCache( 1000L );
+
+    final ToolResultCache.Key key = createKey( this.data, 0, 10, "value" );
+    cache.put( key, "result", createRecorder(), 10L );
+    assertNotNull( cache.get( key ) );
+
+    final AcquisitionResult otherData = createData();
+    assertNull( cache.get( createKey( otherData, 0, 10, "value" ) ) );
+
+    assertNull( cache.get( key ) );
+  }
+
+  /**
+   * Tests that the least recently used results are evicted once the budget is
+   * exceeded, and that results that exceed the budget on their own are not
+   * cached at all.
+   */
+  @Test
+  public void testEvictLeastRecentlyUsedResults()
+  {
+    final ToolResultCache cache = new ToolResultCache( 1000L );
+
+    final ToolResultCache.Key key1 = createKey( this.data, 0, 10, "1" );
+    final ToolResultCache.Key key2 = createKey( this.data, 0, 10, "2" );
+    final ToolResultCache.Key key3 = createKey( this.data, 0, 10, "3" );
+
+    cache.put( key1, "result1", createRecorder(), 400L );
+    cache.put( key2, "result2", createRecorder(), 400L );
+    // Makes the second result the least recently used one...
+    assertNotNull( cache.get( key1 ) );
+
+    cache.put( key3, "result3", createRecorder(), 400L );
+
+    assertEquals( "result1", cache.get( key1 ).getResult() );
+    assertNull( cache.get( key2 ) );
+    assertEquals( "result3", cache.get( key3 ).getResult() );
+
+    // The annotations count towards the size of a result as well...
+    final ToolResultCache.AnnotationRecorder recorder = createRecorder();
+    for ( int i = 0; i < 5; i++ )
+    {
+      recorder.onAnnotation( new SampleDataAnnotation( 0, i, "a" + i ) );
+    }
+    cache.put( key2, "result2", recorder, 0L );
+    assertNotNull( cache.get( key2 ) );
+    assertNull( cache.get( key1 ) );
+    assertNull( cache.get( key3 ) );
+
+    final ToolResultCache.Key key4 = createKey( this.data, 0, 10, "4" );
+    cache.put( key4, "result4", createRecorder(), 1001L );
+    assertNull( cache.get( key4 ) );
+    assertNotNull( cache.get( key2 ) );
+  }
+
+  /**
+   * Tests that keys are equal for the same tool, range and settings only,
+   * regardless of the order in which the settings are written.
+   */
+  @Test
+  public void testKeyEqualityAcrossSettings()
+  {
+    final ToolResultCache.Configuration config1 = new ToolResultCache.Configuration( "tool" );
+    config1.putInt( "a", 1 );
+    config1.put( "b", "x" );
+
+    final ToolResultCache.Configuration config2 = new ToolResultCache.Configuration( "tool" );
+    config2.put( "b", "x" );
+    config2.putInt( "a", 1 );
+
+    final ToolResultCache.Key key = new ToolResultCache.Key( new StubToolContext( this.data, 0, 10 ), config1 );
+    final ToolResultCache.Key sameKey = new ToolResultCache.Key( new StubToolContext( this.data, 0, 10 ), config2 );
+    assertEquals( key, sameKey );
+    assertEquals( key.hashCode(), sameKey.hashCode() );
+
+    // Other setting value...
+    assertFalse( key.equals( createKey( this.data, 0, 10, "y" ) ) );
+    // Other tool...
+    final ToolResultCache.Configuration config3 = new ToolResultCache.Configuration( "otherTool" );
+    config3.putInt( "a", 1 );
+    config3.put( "b", "x" );
+    assertFalse( key.equals( new ToolResultCache.Key( new StubToolContext( this.data, 0, 10 ), config3 ) ) );
+    // Other range...
+    assertFalse( createKey( this.data, 0, 10, "x" ).equals( createKey( this.data, 1, 10, "x" ) ) );
+    assertFalse( createKey( this.data, 0, 10, "x" ).equals( createKey( this.data, 0, 9, "x" ) ) );
+    // Other acquired data...
+    assertFalse( createKey( this.data, 0, 10, "x" ).equals( createKey( createData(), 0, 10, "x" ) ) );
+  }
+
+  /**
+   * Tests that the replay task passes the recorded annotations on in order,
+   * reports its progress, and yields the cached result.
+   */
+  @Test
+  public void testReplayTaskYieldsResultAndAnnotations() throws Exception
+  {
+    final ToolResultCache cache = new ToolResultCache( 1000000L );
+
+    final ToolResultCache.AnnotationRecorder recorder = createRecorder();
+    recorder.clearAnnotations( 3 );
+    for ( int i = 0; i < 250; i++ )
+    {
+      recorder.onAnnotation( new SampleDataAnnotation( 3, i, "a" + i ) );
+    }
+
+    final ToolResultCache.Key key = createKey( this.data, 0, 10, "x" );
+    cache.put( key, "result", recorder, 0L );
+
+    final ToolTask<String> task = cache.get( key ).createReplayTask( this.listener, this.listener );
+    assertEquals( "result", task.call() );
+
+    assertEquals( 251, this.listener.events.size() );
+    assertEquals( "clear 3", this.listener.events.get( 0 ) );
+    for ( int i = 0; i < 250; i++ )
+    {
+      assertEquals( "a" + i, this.listener.events.get( i + 1 ) );
+    }
+    assertEquals( 100, this.listener.progress );
+  }
+
+  /**
+   * Tests that an interrupted replay task stops replaying.
+   */
+  @Test( expected = InterruptedException.class )
+  public void testReplayTaskStopsWhenInterrupted() throws Exception
+  {
+    final ToolResultCache cache = new ToolResultCache( 1000000L );
+
+    final ToolResultCache.AnnotationRecorder recorder = createRecorder();
+    recorder.onAnnotation( new SampleDataAnnotation( 0, 0, "a" ) );
+
+    final ToolResultCache.Key key = createKey( this.data, 0, 10, "x" );
+    cache.put( key, "result", recorder, 0L );
+
+    Thread.currentThread().interrupt();
+    try
+    {
+      cache.get( key ).createReplayTask( this.listener, this.listener ).call();
+    }
+    finally
+    {
+      // Do not leave the interrupt flag set for other tests...
+      Thread.interrupted();
+    }
+  }
+
+  /**
+   * Creates new acquired data.
+   */
+  private AcquisitionResult createData()
+  {
+    final int[] values = new int[10];
+    final long[] timestamps = new long[10];
+    for ( int i = 0; i < values.length; i++ )
+    {
+      values[i] = i;
+      timestamps[i] = i;
+    }
+    return new CapturedData( values, timestamps, -1L, 100, 8, 0xFF, -1L );
+  }
+
+  /**
+   * Creates a key for the given range of the given data, with a single
+   * setting.
+   */
+  private ToolResultCache.Key createKey( final AcquisitionResult aData, final int aStartIdx, final int aEndIdx,
+      final String aSetting )
+  {
+    final ToolResultCache.Configuration config = new ToolResultCache.Configuration( "tool" );
+    config.putInt( "a", 1 );
+    config.put( "b", aSetting );
+    return new ToolResultCache.Key( new StubToolContext( aData, aStartIdx, aEndIdx ), config );
+  }
+
+  /**
+   * Creates an annotation recorder without annotations.
+   */
+  private ToolResultCache.AnnotationRecorder createRecorder()
+  {
+    return new ToolResultCache.AnnotationRecorder( new RecordingListener() );
+  }
+}
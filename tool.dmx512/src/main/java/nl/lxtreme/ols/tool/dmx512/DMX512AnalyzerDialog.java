@@ -63,6 +63,8 @@ public final class DMX512AnalyzerDialog extends BaseToolDialog<DMX512DataSet> im
 
   // VARIABLES
 
+  private final IncrementalDecoding<DMX512AnalyzerTask.FrameDecoder> incrementalDecoding;
+
   private JComboBox dataLine;
   private JEditorPane outText;
 
@@ -89,6 +91,8 @@ public final class DMX512AnalyzerDialog extends BaseToolDialog<DMX512DataSet> im
   {
     super( aOwner, aToolContext, aContext, aTool );
 
+    this.incrementalDecoding = new IncrementalDecoding<DMX512AnalyzerTask.FrameDecoder>();
+
     initDialog();
 
     setLocationRelativeTo( getOwner() );
@@ -202,6 +206,8 @@ public final class DMX512AnalyzerDialog extends BaseToolDialog<DMX512DataSet> im
     // causes all "unused" values to be equivalent to -1, which is interpreted
     // as not used...
     toolTask.setDataLine( this.dataLine.getSelectedIndex() - 1 );
+    // Reuse the frames of the previous run...
+    toolTask.setIncrementalDecoding( this.incrementalDecoding );
   }
 
   /**
@@ -401,18 +407,39 @@ public final class DMX512AnalyzerDialog extends BaseToolDialog<DMX512DataSet> im
       exporter.setHeaders( "index", "start-time", "end-time", "event?", "event-type", "RxD event", "TxD event",
           "RxD data", "TxD data" );
 
-      final List<DMX512Data> decodedData = aDataSet.getData();
-      for ( int i = 0; i < decodedData.size(); i++ )
+      final List<DMX512Data> events = aDataSet.getData();
+      final List<DMX512Frame> frames = aDataSet.getFrames();
+
+      int i = 0;
+      int eventIdx = 0;
+      for ( int frameIdx = 0; frameIdx <= frames.size(); frameIdx++ )
       {
-        final DMX512Data ds = decodedData.get( i );
+        final DMX512Frame frame = ( frameIdx < frames.size() ) ? frames.get( frameIdx ) : null;
 
-        final String startTime = Unit.Time.format( aDataSet.getTime( ds.getStartSampleIndex() ) );
-        final String endTime = Unit.Time.format( aDataSet.getTime( ds.getEndSampleIndex() ) );
+        // Events and errors preceding the frame...
+        while ( ( eventIdx < events.size() )
+            && ( ( frame == null ) || ( events.get( eventIdx ).getStartSampleIndex() < frame.getStartSampleIndex() ) ) )
+        {
+          final DMX512Data ds = events.get( eventIdx++ );
+
+          final String startTime = Unit.Time.format( aDataSet.getTime( ds.getStartSampleIndex() ) );
+          final String endTime = Unit.Time.format( aDataSet.getTime( ds.getEndSampleIndex() ) );
 
-        String eventType = ds.getEventName();
-        String dataValue = Integer.toString( ds.getData() );
+          exporter.addRow( Integer.valueOf( i++ ), startTime, endTime, ds.getEventName(), "-1" );
+        }
 
-        exporter.addRow( Integer.valueOf( i ), startTime, endTime, eventType, dataValue );
+        if ( frame != null )
+        {
+          final String startTime = Unit.Time.format( aDataSet.getTime( frame.getStartSampleIndex() ) );
+          final String endTime = Unit.Time.format( aDataSet.getTime( frame.getEndSampleIndex() ) );
+
+          for ( int slot = 0; slot < frame.getSlotCount(); slot++ )
+          {
+            final String dataValue = Integer.toString( frame.getSlot( slot ) );
+
+            exporter.addRow( Integer.valueOf( i++ ), startTime, endTime, null, dataValue );
+          }
+        }
       }
 
       exporter.close();
@@ -485,54 +512,73 @@ public final class DMX512AnalyzerDialog extends BaseToolDialog<DMX512DataSet> im
         }
         else if ( "decoded-data".equals( aMacro ) )
         {
-          final List<DMX512Data> decodedData = aDataSet.getData();
+          final List<DMX512Data> events = aDataSet.getData();
+          final List<DMX512Frame> frames = aDataSet.getFrames();
           Element tr;
 
-          for ( int i = 0; i < decodedData.size(); i++ )
+          int i = 0;
+          int eventIdx = 0;
+          for ( int frameIdx = 0; frameIdx <= frames.size(); frameIdx++ )
           {
-            final DMX512Data ds = decodedData.get( i );
+            final DMX512Frame frame = ( frameIdx < frames.size() ) ? frames.get( frameIdx ) : null;
 
-            String eventName = ds.getEventName();
-            String bgColor;
-            if ( "FRAME".equals( eventName ) )
-            {
-              eventName = "Frame error";
-              bgColor = "#ff6600";
-            }
-            else if ( "PARITY".equals( eventName ) )
+            // Events and errors preceding the frame...
+            while ( ( eventIdx < events.size() )
+                && ( ( frame == null ) || ( events.get( eventIdx ).getStartSampleIndex() < frame
+                    .getStartSampleIndex() ) ) )
             {
-              eventName = "Parity error";
-              bgColor = "#ff9900";
-            }
-            else if ( "START".equals( eventName ) )
-            {
-              eventName = "Start error";
-              bgColor = "#ffcc00";
+              final DMX512Data ds = events.get( eventIdx++ );
+
+              String eventName = ds.getEventName();
+              String bgColor;
+              if ( "FRAME".equals( eventName ) )
+              {
+                eventName = "Frame error";
+                bgColor = "#ff6600";
+              }
+              else if ( "PARITY".equals( eventName ) )
+              {
+                eventName = "Parity error";
+                bgColor = "#ff9900";
+              }
+              else if ( "START".equals( eventName ) )
+              {
+                eventName = "Start error";
+                bgColor = "#ffcc00";
+              }
+              else
+              {
+                bgColor = ( i % 2 ) == 0 ? "#ffffff" : "#eeeeee";
+              }
+
+              tr = aParent.addChild( TR ).addAttribute( "style", "background-color: " + bgColor + ";" );
+              tr.addChild( TD ).addContent( String.valueOf( i++ ) );
+              tr.addChild( TD ).addContent( Unit.Time.format( aDataSet.getTime( ds.getStartSampleIndex() ) ) );
+              tr.addChild( TD ).addAttribute( "colspan", "4" ).addContent( eventName );
             }
-            else
+
+            if ( frame == null )
             {
-              // symbol
-              bgColor = ( i % 2 ) == 0 ? "#ffffff" : "#eeeeee";
+              continue;
             }
 
-            tr = aParent.addChild( TR ).addAttribute( "style", "background-color: " + bgColor + ";" );
-            tr.addChild( TD ).addContent( String.valueOf( i ) );
-            tr.addChild( TD ).addContent( Unit.Time.format( aDataSet.getTime( ds.getStartSampleIndex() ) ) );
-            if ( eventName == null )
+            // The slots only carry the time of the frame...
+            for ( int slot = 0; slot < frame.getSlotCount(); slot++ )
             {
-              // normal symbol...
-              int data = ds.getData();
+              final int data = frame.getSlot( slot );
+              final String time = ( slot == 0 ) ? Unit.Time.format( aDataSet.getTime( frame
+                  .getStartSampleIndex() ) ) : "";
+
+              final String bgColor = ( i % 2 ) == 0 ? "#ffffff" : "#eeeeee";
 
+              tr = aParent.addChild( TR ).addAttribute( "style", "background-color: " + bgColor + ";" );
+              tr.addChild( TD ).addContent( String.valueOf( i++ ) );
+              tr.addChild( TD ).addContent( time );
               tr.addChild( TD ).addContent( "0x", integerToHexString( data, ( bitCount / 4 ) + bitAdder ) );
               tr.addChild( TD ).addContent( "0b", integerToBinString( data, bitCount ) );
               tr.addChild( TD ).addContent( String.valueOf( data ) );
               tr.addChild( TD ).addContent( toASCII( data ) );
             }
-            else
-            {
-              // error event...
-              tr.addChild( TD ).addAttribute( "colspan", "4" ).addContent( eventName );
-            }
           }
         }
         return null;
@@ -21,9 +21,15 @@
 package nl.lxtreme.ols.tool.dmx512;
 
 
+import java.util.*;
+import java.util.concurrent.*;
+
 import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.Annotation;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.*;
 import nl.lxtreme.ols.tool.base.annotation.*;
 import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
 import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
@@ -36,10 +42,201 @@ import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
 
 
 /**
- * 
+ * Analyses DMX512 data.
+ * <p>
+ * As each DMX512 frame starts with a break, which is far longer than any slot,
+ * the breaks are located first. The frames between these breaks are then
+ * decoded concurrently, each into a data set of their own, and merged in
+ * order.
+ * </p>
  */
 public class DMX512AnalyzerTask implements ToolTask<DMX512DataSet>
 {
+  // INNER TYPES
+
+  /**
+   * Provides a tool context for a consecutive range of frames.
+   */
+  static final class FrameRangeContext implements ToolContext
+  {
+    // VARIABLES
+
+    private final ToolContext context;
+    private final int startIdx;
+    private final int endIdx;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link FrameRangeContext} instance.
+     */
+    FrameRangeContext( final ToolContext aContext, final int aStartIdx, final int aEndIdx )
+    {
+      this.context = aContext;
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannels()
+    {
+      return this.context.getChannels();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor getCursor( final int aSelectedIndex )
+    {
+      return this.context.getCursor( aSelectedIndex );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AcquisitionResult getData()
+    {
+      return this.context.getData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEnabledChannels()
+    {
+      return this.context.getEnabledChannels();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndSampleIndex()
+    {
+      return this.endIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLength()
+    {
+      return this.endIdx - this.startIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStartSampleIndex()
+    {
+      return this.startIdx;
+    }
+  }
+
+  /**
+   * Decodes a run of consecutive DMX512 frames, from one break up to a later
+   * break. As every frame starts with a break, a frame decoder never depends
+   * on the state of the preceding one, and its results are simply appended to
+   * the others.
+   */
+  final class FrameDecoder implements Callable<FrameDecoder>, SerialDecoderCallback
+  {
+    // VARIABLES
+
+    final DMX512DataSet dataSet;
+    final List<Annotation<?>> annotations;
+
+    private final SerialConfiguration config;
+    private final ToolContext rangeContext;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link FrameDecoder} instance.
+     * 
+     * @param aConfig
+     *          the serial configuration to use;
+     * @param aStartIdx
+     *          the sample index of the first frame;
+     * @param aEndIdx
+     *          the sample index to stop decoding at.
+     */
+    FrameDecoder( final SerialConfiguration aConfig, final int aStartIdx, final int aEndIdx )
+    {
+      final ToolContext context = DMX512AnalyzerTask.this.context;
+
+      this.dataSet = new DMX512DataSet( aStartIdx, aEndIdx, context.getData() );
+      this.annotations = new ArrayList<Annotation<?>>();
+      this.config = aConfig;
+      this.rangeContext = new FrameRangeContext( context, aStartIdx, aEndIdx );
+    }
+
+    // METHODS
+
+    /**
+     * Decodes all frames of this range.
+     * 
+     * @return this decoder, never <code>null</code>.
+     */
+    @Override
+    public FrameDecoder call()
+    {
+      final DMX512SerialDataDecoder decoder = new DMX512SerialDataDecoder( this.config, this.rangeContext );
+      decoder.setCallback( this );
+      decoder.decodeDataLine( DMX512AnalyzerTask.this.dataLine );
+      return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError( final int aChannelIdx, final ErrorType aType, final long aTime )
+    {
+      this.dataSet.reportError( aChannelIdx, aType, getSampleIndex( aTime ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent( final int aChannelIdx, final String aEvent, final long aStartTime, final long aEndTime )
+    {
+      this.dataSet.reportEvent( aChannelIdx, aEvent, getSampleIndex( aStartTime ), getSampleIndex( aEndTime ) );
+
+      this.annotations.add( new SampleDataAnnotation( aChannelIdx, aStartTime, aEndTime, aEvent ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSymbol( final int aChannelIdx, final int aSymbol, final long aStartTime, final long aEndTime )
+    {
+      this.dataSet.reportData( aChannelIdx, getSampleIndex( aStartTime ), getSampleIndex( aEndTime ), aSymbol );
+
+      this.annotations.add( new SampleDataAnnotation( aChannelIdx, aStartTime, aEndTime, String.format(
+          "0x%1$X (%1$c)", Integer.valueOf( aSymbol ) ) ) );
+    }
+
+    /**
+     * Returns the sample index of the given time stamp.
+     */
+    private int getSampleIndex( final long aTime )
+    {
+      return this.rangeContext.getData().getSampleIndex( aTime );
+    }
+  }
 
   // CONSTANTS
 
@@ -50,6 +247,9 @@ public class DMX512AnalyzerTask implements ToolTask<DMX512DataSet>
   private static final Parity PARITY = Parity.NONE;
   private static final StopBits STOPBITS = StopBits.TWO;
 
+  /** The number of consecutive frames decoded by a single subtask. */
+  static final int DEFAULT_FRAMES_PER_TASK = 16;
+
   // VARIABLES
 
   private final ToolContext context;
@@ -57,6 +257,8 @@ public class DMX512AnalyzerTask implements ToolTask<DMX512DataSet>
   private final AnnotationListener annotationListener;
 
   private int dataLine;
+  private int framesPerTask;
+  private IncrementalDecoding<FrameDecoder> incrementalDecoding;
 
   // CONSTRUCTORS
 
@@ -71,6 +273,7 @@ public class DMX512AnalyzerTask implements ToolTask<DMX512DataSet>
     this.annotationListener = aAnnotationListener;
 
     this.dataLine = -1;
+    this.framesPerTask = DEFAULT_FRAMES_PER_TASK;
   }
 
   // METHODS
@@ -116,74 +319,37 @@ public class DMX512AnalyzerTask implements ToolTask<DMX512DataSet>
     final SerialConfiguration config = new SerialConfiguration( BAUDRATE, DATABITS, STOPBITS, PARITY,
         BitEncoding.HIGH_IS_MARK, BitOrder.MSB_FIRST, BitLevel.HIGH);
 
-    final DMX512SerialDataDecoder decoder = new DMX512SerialDataDecoder( config, this.context );
-    decoder.setProgressListener( this.progressListener );
-    decoder.setCallback( new SerialDecoderCallback()
+    final IncrementalDecoder<FrameDecoder> decoder = new IncrementalDecoder<FrameDecoder>()
     {
-      /**
-       * {@inheritDoc}
-       */
       @Override
-      public void onError( final int aChannelIdx, final ErrorType aType, final long aTime )
+      public void decode( final int aStartIdx, final int aEndIdx, final Callback<FrameDecoder> aCallback )
+          throws Exception
       {
-        dataSet.reportError( aChannelIdx, aType, data.getSampleIndex( aTime ) );
-      }
-
-      @Override
-      public void onEvent( final int aChannelIdx, final String aEvent, final long aStartTime, final long aEndTime )
-      {
-        dataSet.reportEvent( aChannelIdx, aEvent, data.getSampleIndex( aStartTime ), data.getSampleIndex( aEndTime ) );
-
-        addEventAnnotation( aChannelIdx, aEvent, aStartTime, aEndTime );
+        decodeFrames( config, aStartIdx, aEndIdx, aCallback );
       }
+    };
 
-      /**
-       * {@inheritDoc}
-       */
-      @Override
-      public void onSymbol( final int aChannelIdx, final int aSymbol, final long aStartTime, final long aEndTime )
-      {
-        dataSet.reportData( aChannelIdx, data.getSampleIndex( aStartTime ), data.getSampleIndex( aEndTime ), aSymbol );
-
-        addSymbolAnnotation( aChannelIdx, aSymbol, aStartTime, aEndTime );
-      }
+    IncrementalDecoding<FrameDecoder> decoding = this.incrementalDecoding;
+    if ( decoding == null )
+    {
+      decoding = new IncrementalDecoding<FrameDecoder>();
+    }
 
-      /**
-       * Emits a new symbol annotation to the interested listener(s).
-       * 
-       * @param aSymbol
-       *          the symbol itself;
-       * @param aStartSampleIdx
-       *          the start sample index of the symbol;
-       * @param aEndSampleIdx
-       *          the end sample index of the symbol.
-       */
-      private void addEventAnnotation( final int aChannelIdx, final String aEvent, final long aStartTimestamp,
-          final long aEndTimestamp )
-      {
-        DMX512AnalyzerTask.this.annotationListener.onAnnotation( new SampleDataAnnotation( aChannelIdx,
-            aStartTimestamp, aEndTimestamp, aEvent ) );
-      }
+    // The serial decoder starts at the start of the context, not at the first
+    // state change...
+    final List<FrameDecoder> decoders = decoding.decode( decoder, data, Integer.valueOf( this.dataLine ),
+        this.context.getStartSampleIndex(), endOfDecode );
 
-      /**
-       * Emits a new symbol annotation to the interested listener(s).
-       * 
-       * @param aSymbol
-       *          the symbol itself;
-       * @param aStartSampleIdx
-       *          the start sample index of the symbol;
-       * @param aEndSampleIdx
-       *          the end sample index of the symbol.
-       */
-      private void addSymbolAnnotation( final int aChannelIdx, final int aSymbol, final long aStartTimestamp,
-          final long aEndTimestamp )
+    for ( FrameDecoder frameDecoder : decoders )
+    {
+      dataSet.merge( frameDecoder.dataSet );
+      for ( Annotation<?> annotation : frameDecoder.annotations )
       {
-        DMX512AnalyzerTask.this.annotationListener.onAnnotation( new SampleDataAnnotation( aChannelIdx,
-            aStartTimestamp, aEndTimestamp, String.format( "0x%1$X (%1$c)", Integer.valueOf( aSymbol ) ) ) );
+        this.annotationListener.onAnnotation( annotation );
       }
-    } );
+    }
 
-    decoder.decodeDataLine( this.dataLine );
+    dataSet.endFrame();
 
     return dataSet;
   }
@@ -208,4 +374,179 @@ public class DMX512AnalyzerTask implements ToolTask<DMX512DataSet>
   {
     this.dataLine = aDataLine;
   }
+
+  /**
+   * Sets the incremental decoding to use, allowing the frames decoded by a
+   * previous task to be reused.
+   * 
+   * @param aIncrementalDecoding
+   *          the incremental decoding to use, can be <code>null</code> to
+   *          always decode all frames.
+   */
+  final void setIncrementalDecoding( final IncrementalDecoding<FrameDecoder> aIncrementalDecoding )
+  {
+    this.incrementalDecoding = aIncrementalDecoding;
+  }
+
+  /**
+   * Sets the number of consecutive frames that is decoded by a single subtask.
+   * 
+   * @param aFramesPerTask
+   *          the number of frames, > 0.
+   */
+  final void setFramesPerTask( final int aFramesPerTask )
+  {
+    if ( aFramesPerTask < 1 )
+    {
+      throw new IllegalArgumentException( "Frames per task must be at least one!" );
+    }
+    this.framesPerTask = aFramesPerTask;
+  }
+
+  /**
+   * Decodes all frames in the given range concurrently. The breaks at which
+   * the subtasks start are reported as checkpoints, as the decoding of a frame
+   * does not depend on any sample preceding its break. The same holds for the
+   * end of the range, in case a break starts there.
+   * 
+   * @param aConfig
+   *          the serial configuration to use;
+   * @param aStartIdx
+   *          the sample index to start decoding at;
+   * @param aEndIdx
+   *          the sample index to stop decoding at;
+   * @param aCallback
+   *          the callback to report the decoded frames to.
+   */
+  private void decodeFrames( final SerialConfiguration aConfig, final int aStartIdx, final int aEndIdx,
+      final IncrementalDecoder.Callback<FrameDecoder> aCallback ) throws Exception
+  {
+    final int frameSize = aConfig.getFrameSize( this.context.getData().getSampleRate() );
+    final int[] splitPoints = findFrameStarts( aStartIdx, aEndIdx, frameSize );
+
+    final List<FrameDecoder> decoders = new ArrayList<FrameDecoder>();
+    for ( int i = 1; i < splitPoints.length; i++ )
+    {
+      decoders.add( new FrameDecoder( aConfig, splitPoints[i - 1], splitPoints[i] ) );
+    }
+
+    final List<Future<FrameDecoder>> results = ParallelDecoding.submitAll( decoders );
+    try
+    {
+      for ( int i = 0; i < results.size(); i++ )
+      {
+        final FrameDecoder decoder = ParallelDecoding.getResult( results.get( i ) );
+
+        if ( i > 0 )
+        {
+          aCallback.onCheckpoint( splitPoints[i] );
+        }
+        aCallback.onItem( decoder );
+
+        this.progressListener.setProgress( ( int )( ( ( i + 1 ) * 100.0 ) / results.size() ) );
+      }
+
+      if ( isBreakAt( aEndIdx, frameSize ) )
+      {
+        // The next frame does not depend on any of the decoded frames...
+        aCallback.onCheckpoint( aEndIdx );
+      }
+    }
+    finally
+    {
+      ParallelDecoding.cancelAll( results );
+    }
+  }
+
+  /**
+   * Locates the breaks preceding the frames, by looking for low periods that
+   * are longer than a single slot. Only the transitions of the data line are
+   * visited.
+   * 
+   * @param aStartIdx
+   *          the sample index to start searching;
+   * @param aEndIdx
+   *          the sample index to end the search;
+   * @param aFrameSize
+   *          the length of a single slot, in samples.
+   * @return the sample indexes at which the ranges of frames, as decoded by a
+   *         single subtask, start, followed by the given end index, never
+   *         <code>null</code>.
+   */
+  private int[] findFrameStarts( final int aStartIdx, final int aEndIdx, final int aFrameSize )
+  {
+    final AcquisitionResult data = this.context.getData();
+    final int[] values = data.getValues();
+    final long[] timestamps = data.getTimestamps();
+    final int mask = ( 1 << this.dataLine );
+
+    int[] result = new int[64];
+    int count = 0;
+    result[count++] = aStartIdx;
+
+    int frames = 0;
+    int breakIdx = -1;
+    for ( int idx = aStartIdx + 1; idx <= aEndIdx; idx++ )
+    {
+      final int oldLevel = values[idx - 1] & mask;
+      final int level = values[idx] & mask;
+      if ( oldLevel == level )
+      {
+        continue;
+      }
+
+      if ( level == 0 )
+      {
+        breakIdx = idx;
+      }
+      else if ( ( breakIdx >= 0 ) && ( ( timestamps[idx] - timestamps[breakIdx] ) > aFrameSize ) )
+      {
+        if ( ( ++frames % this.framesPerTask ) == 0 )
+        {
+          if ( count == result.length - 1 )
+          {
+            result = Arrays.copyOf( result, count << 1 );
+          }
+          result[count++] = breakIdx;
+        }
+      }
+    }
+
+    result[count++] = aEndIdx;
+    return Arrays.copyOf( result, count );
+  }
+
+  /**
+   * Returns whether a break starts at the given sample index, that is, the
+   * data line goes low and stays low for longer than a single slot.
+   * 
+   * @param aSampleIdx
+   *          the sample index to test;
+   * @param aFrameSize
+   *          the length of a single slot, in samples.
+   * @return <code>true</code> if a break starts at the given sample index,
+   *         <code>false</code> otherwise.
+   */
+  private boolean isBreakAt( final int aSampleIdx, final int aFrameSize )
+  {
+    final AcquisitionResult data = this.context.getData();
+    final int[] values = data.getValues();
+    final long[] timestamps = data.getTimestamps();
+    final int mask = ( 1 << this.dataLine );
+
+    if ( ( aSampleIdx < 1 ) || ( aSampleIdx >= values.length ) || ( ( values[aSampleIdx - 1] & mask ) == 0 )
+        || ( ( values[aSampleIdx] & mask ) != 0 ) )
+    {
+      return false;
+    }
+
+    for ( int idx = aSampleIdx + 1; idx < values.length; idx++ )
+    {
+      if ( ( values[idx] & mask ) != 0 )
+      {
+        return ( timestamps[idx] - timestamps[aSampleIdx] ) > aFrameSize;
+      }
+    }
+    return false;
+  }
 }
@@ -26,14 +26,11 @@ import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
 
 
 /**
- * 
+ * Provides a DMX512 event, such as a break, or error. The decoded slots are
+ * kept in {@link DMX512Frame}s.
  */
 public class DMX512Data extends BaseData<DMX512Data>
 {
-  // VARIABLES
-
-  private final int data;
-
   // CONSTRUCTORS
 
   /**
@@ -47,22 +44,6 @@ public class DMX512Data extends BaseData<DMX512Data>
   public DMX512Data( final int aIdx, final int aChannelIdx, final int aStartSampleIdx, final ErrorType aType )
   {
     super( aIdx, aChannelIdx, aStartSampleIdx, aType.name() );
-    this.data = -1;
-  }
-
-  /**
-   * Creates a new {@link DMX512Data} instance.
-   * 
-   * @param aIdx
-   * @param aChannelIdx
-   * @param aStartSampleIdx
-   * @param aEndSampleIdx
-   */
-  public DMX512Data( final int aIdx, final int aChannelIdx, final int aStartSampleIdx, final int aEndSampleIdx,
-      final int aData )
-  {
-    super( aIdx, aChannelIdx, aStartSampleIdx, aEndSampleIdx );
-    this.data = aData;
   }
 
   /**
@@ -77,18 +58,14 @@ public class DMX512Data extends BaseData<DMX512Data>
       final String aEventName )
   {
     super( aIdx, aChannelIdx, aStartSampleIdx, aEndSampleIdx, aEventName );
-    this.data = -1;
   }
 
-  // METHODS
-
-  /**
-   * Returns the current value of data.
-   * 
-   * @return the data
+  /*
+   * copy with another index
    */
-  public int getData()
+  DMX512Data( final int aIdx, final DMX512Data aData )
   {
-    return this.data;
+    super( aIdx, aData.getChannelIdx(), aData.getStartSampleIndex(), aData.getEndSampleIndex(), aData
+        .getEventName() );
   }
 }
@@ -21,13 +21,19 @@
 package nl.lxtreme.ols.tool.dmx512;
 
 
+import java.util.*;
+
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
 import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
 
 
 /**
- * 
+ * Provides the results of a DMX512 analysis.
+ * <p>
+ * The decoded slots are kept per frame, as {@link DMX512Frame}s, while the
+ * events (breaks) and errors are kept as {@link DMX512Data}.
+ * </p>
  */
 public class DMX512DataSet extends BaseDataSet<DMX512Data>
 {
@@ -44,10 +50,12 @@ public class DMX512DataSet extends BaseDataSet<DMX512Data>
 
   // VARIABLES
 
+  private final List<DMX512Frame> frames;
+
   private int decodedSymbols;
   private int detectedErrors;
-  private int symbolsBetweenMaB;
-  private Boolean inMaB = Boolean.FALSE;
+  private DMX512Frame currentFrame;
+  private boolean breakSeen;
 
   // CONSTRUCTORS
 
@@ -61,6 +69,8 @@ public class DMX512DataSet extends BaseDataSet<DMX512Data>
   public DMX512DataSet( final int aStartOfDecodeIdx, final int aEndOfDecodeIdx, final AcquisitionResult aData )
   {
     super( aStartOfDecodeIdx, aEndOfDecodeIdx, aData );
+
+    this.frames = new ArrayList<DMX512Frame>();
   }
 
   // METHODS
@@ -85,13 +95,52 @@ public class DMX512DataSet extends BaseDataSet<DMX512Data>
     return this.detectedErrors;
   }
 
+  /**
+   * Returns the decoded frames.
+   * 
+   * @return the frames, in order of appearance, never <code>null</code>.
+   */
+  public List<DMX512Frame> getFrames()
+  {
+    return Collections.unmodifiableList( this.frames );
+  }
+
   /**
    * @return the number of slots in a DMX512-packet, or -1 if this could not be
    *         determined.
    */
   public int getSlotCount()
   {
-    return this.symbolsBetweenMaB - 1;
+    for ( DMX512Frame frame : this.frames )
+    {
+      if ( frame.isAfterBreak() )
+      {
+        // Do not count the start code...
+        return frame.getSlotCount() - 1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Merges the results of the given data set, which follows this data set in
+   * time, into this data set.
+   * 
+   * @param aDataSet
+   *          the data set to merge, cannot be <code>null</code>.
+   */
+  public void merge( final DMX512DataSet aDataSet )
+  {
+    endFrame();
+    aDataSet.endFrame();
+
+    for ( DMX512Data data : aDataSet.getData() )
+    {
+      addData( new DMX512Data( size(), data ) );
+    }
+    this.frames.addAll( aDataSet.frames );
+    this.decodedSymbols += aDataSet.decodedSymbols;
+    this.detectedErrors += aDataSet.detectedErrors;
   }
 
   /**
@@ -102,13 +151,14 @@ public class DMX512DataSet extends BaseDataSet<DMX512Data>
    */
   public void reportData( final int aChannelIdx, final int aStartSampleIdx, final int aEndSampleIdx, final int aSymbol )
   {
-    final int idx = size();
-    this.decodedSymbols++;
-    if ( Boolean.TRUE.equals( this.inMaB ) )
+    if ( this.currentFrame == null )
     {
-      this.symbolsBetweenMaB++;
+      this.currentFrame = new DMX512Frame( aChannelIdx, this.breakSeen );
+      this.frames.add( this.currentFrame );
+      this.breakSeen = false;
     }
-    addData( new DMX512Data( idx, aChannelIdx, aStartSampleIdx, aEndSampleIdx, aSymbol ) );
+    this.decodedSymbols++;
+    this.currentFrame.addSlot( aStartSampleIdx, aEndSampleIdx, aSymbol );
   }
 
   /**
@@ -134,15 +184,22 @@ public class DMX512DataSet extends BaseDataSet<DMX512Data>
     final int idx = size();
     if ( EVENT_MAB.equals( aEvent ) )
     {
-      if ( Boolean.FALSE.equals( this.inMaB ) )
-      {
-        this.inMaB = Boolean.TRUE;
-      }
-      else if ( Boolean.TRUE.equals( this.inMaB ) )
-      {
-        this.inMaB = null;
-      }
+      // Each mark-after-break starts a new frame...
+      endFrame();
+      this.breakSeen = true;
     }
     addData( new DMX512Data( idx, aChannelIdx, aStartSampleIdx, aEndSampleIdx, aEvent ) );
   }
+
+  /**
+   * Ends the current frame, if any.
+   */
+  final void endFrame()
+  {
+    if ( this.currentFrame != null )
+    {
+      this.currentFrame.trim();
+      this.currentFrame = null;
+    }
+  }
 }
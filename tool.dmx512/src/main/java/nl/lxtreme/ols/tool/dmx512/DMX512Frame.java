@@ -0,0 +1,179 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * Copyright (C) 2006-2010 Michael Poppitz, www.sump.org
+ * Copyright (C) 2010-2012 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.dmx512;
+
+
+import java.util.*;
+
+
+/**
+ * Provides the slots of a single DMX512-frame (or packet).
+ * <p>
+ * The slots are kept as plain bytes, so a frame of 512 channels takes little
+ * more than 512 bytes, regardless of the number of frames in a capture.
+ * </p>
+ */
+public final class DMX512Frame
+{
+  // CONSTANTS
+
+  /** The number of slots in a full frame, including the start code. */
+  public static final int MAX_SLOTS = 513;
+
+  // VARIABLES
+
+  private final int channelIdx;
+  private final boolean afterBreak;
+
+  private byte[] slots;
+  private int slotCount;
+  private int startSampleIdx;
+  private int endSampleIdx;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link DMX512Frame} instance.
+   *
+   * @param aChannelIdx
+   *          the channel index of the data line;
+   * @param aAfterBreak
+   *          <code>true</code> if this frame is preceded by a break and
+   *          mark-after-break, <code>false</code> if this frame starts halfway.
+   */
+  DMX512Frame( final int aChannelIdx, final boolean aAfterBreak )
+  {
+    this.channelIdx = aChannelIdx;
+    this.afterBreak = aAfterBreak;
+    this.slots = new byte[MAX_SLOTS];
+    this.startSampleIdx = -1;
+    this.endSampleIdx = -1;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the channel index of the data line.
+   *
+   * @return a channel index, >= 0.
+   */
+  public int getChannelIdx()
+  {
+    return this.channelIdx;
+  }
+
+  /**
+   * Returns the sample index at which the last slot of this frame ends.
+   *
+   * @return a sample index, or -1 if this frame has no slots.
+   */
+  public int getEndSampleIndex()
+  {
+    return this.endSampleIdx;
+  }
+
+  /**
+   * Returns the value of the slot with the given index. Slot 0 holds the start
+   * code, slots 1 and onwards hold the channel values.
+   *
+   * @param aSlotIdx
+   *          the index of the slot to return, >= 0 && < {@link #getSlotCount()}
+   *          .
+   * @return the slot value, 0..255.
+   * @throws IndexOutOfBoundsException
+   *           in case the given slot index was invalid.
+   */
+  public int getSlot( final int aSlotIdx )
+  {
+    if ( ( aSlotIdx < 0 ) || ( aSlotIdx >= this.slotCount ) )
+    {
+      throw new IndexOutOfBoundsException( "No such slot: " + aSlotIdx );
+    }
+    return this.slots[aSlotIdx] & 0xFF;
+  }
+
+  /**
+   * Returns the number of slots in this frame, including the start code.
+   *
+   * @return a slot count, >= 0.
+   */
+  public int getSlotCount()
+  {
+    return this.slotCount;
+  }
+
+  /**
+   * Returns the sample index at which the first slot of this frame starts.
+   *
+   * @return a sample index, or -1 if this frame has no slots.
+   */
+  public int getStartSampleIndex()
+  {
+    return this.startSampleIdx;
+  }
+
+  /**
+   * Returns whether this frame is preceded by a break and mark-after-break.
+   *
+   * @return <code>true</code> if this frame is complete at its start,
+   *         <code>false</code> if the capture started halfway this frame.
+   */
+  public boolean isAfterBreak()
+  {
+    return this.afterBreak;
+  }
+
+  /**
+   * Adds a slot to this frame.
+   *
+   * @param aStartSampleIdx
+   *          the sample index at which the slot starts;
+   * @param aEndSampleIdx
+   *          the sample index at which the slot ends;
+   * @param aValue
+   *          the slot value, 0..255.
+   */
+  void addSlot( final int aStartSampleIdx, final int aEndSampleIdx, final int aValue )
+  {
+    if ( this.slotCount == this.slots.length )
+    {
+      // Not a valid frame, but still keep all slots...
+      this.slots = Arrays.copyOf( this.slots, this.slotCount << 1 );
+    }
+    if ( this.slotCount == 0 )
+    {
+      this.startSampleIdx = aStartSampleIdx;
+    }
+    this.slots[this.slotCount++] = ( byte )aValue;
+    this.endSampleIdx = aEndSampleIdx;
+  }
+
+  /**
+   * Releases the slots that are not used by this frame.
+   */
+  void trim()
+  {
+    if ( this.slotCount < this.slots.length )
+    {
+      this.slots = Arrays.copyOf( this.slots, this.slotCount );
+    }
+  }
+}
@@ -31,6 +31,8 @@ import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.test.*;
 import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
+
 import org.junit.*;
 import org.junit.runner.*;
 import org.junit.runners.*;
@@ -88,33 +90,133 @@ public class DMX512AnalyzerDataFilesTest
   @Test
   public void testDMX512AnalysisOk() throws Exception
   {
-    DMX512DataSet result = analyseDataFile( this.resourceName );
+    DMX512DataSet result = analyseDataFile( this.resourceName, DMX512AnalyzerTask.DEFAULT_FRAMES_PER_TASK );
 
     assertEquals( this.expectedErrorCount, result.getDetectedErrors() );
     assertEquals( this.expectedSymbolCount, result.getDecodedSymbols() );
   }
 
+  /**
+   * Tests that the number of frames decoded by each subtask does not affect
+   * the results, as every frame starts with a break of its own.
+   */
+  @Test
+  public void testDMX512AnalysisFramesPerTaskOk() throws Exception
+  {
+    DMX512DataSet expected = analyseDataFile( this.resourceName, DMX512AnalyzerTask.DEFAULT_FRAMES_PER_TASK );
+
+    final int[] framesPerTask = { 1, 2, 5 };
+    for ( int frames : framesPerTask )
+    {
+      assertDataSetEquals( expected, analyseDataFile( this.resourceName, frames ) );
+    }
+  }
+
+  /**
+   * Tests that moving the decoding window reuses the frames of the previous
+   * run, while yielding the same results as decoding the window from scratch.
+   */
+  @Test
+  public void testDMX512IncrementalAnalysisOk() throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), this.resourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+
+    final int length = container.getValues().length;
+    final int[][] windows = { { 0, length - 1 }, { length / 8, length - 1 }, { length / 8, length - length / 8 },
+        { 0, length - length / 8 }, { 0, length - 1 } };
+
+    IncrementalDecoding<DMX512AnalyzerTask.FrameDecoder> decoding;
+    decoding = new IncrementalDecoding<DMX512AnalyzerTask.FrameDecoder>();
+    for ( int i = 0; i < windows.length; i++ )
+    {
+      ToolContext toolContext = DataTestUtils.createToolContext( container, windows[i][0], windows[i][1] );
+
+      DMX512DataSet expected = analyseData( toolContext, 1, null );
+      DMX512DataSet result = analyseData( toolContext, 1, decoding );
+
+      assertDataSetEquals( expected, result );
+      if ( i > 0 )
+      {
+        assertTrue( "Nothing reused at window #" + i, decoding.getDecodedLength() < toolContext.getLength() );
+      }
+    }
+  }
+
+  /**
+   * Asserts that the given data sets have the same contents.
+   */
+  private void assertDataSetEquals( final DMX512DataSet aExpected, final DMX512DataSet aResult )
+  {
+    assertEquals( aExpected.getDetectedErrors(), aResult.getDetectedErrors() );
+    assertEquals( aExpected.getDecodedSymbols(), aResult.getDecodedSymbols() );
+    assertEquals( aExpected.getSlotCount(), aResult.getSlotCount() );
+
+    assertEquals( aExpected.getData(), aResult.getData() );
+
+    List<DMX512Frame> expectedFrames = aExpected.getFrames();
+    List<DMX512Frame> frames = aResult.getFrames();
+    assertEquals( expectedFrames.size(), frames.size() );
+    for ( int i = 0; i < frames.size(); i++ )
+    {
+      DMX512Frame expectedFrame = expectedFrames.get( i );
+      DMX512Frame frame = frames.get( i );
+
+      assertEquals( expectedFrame.isAfterBreak(), frame.isAfterBreak() );
+      assertEquals( expectedFrame.getStartSampleIndex(), frame.getStartSampleIndex() );
+      assertEquals( expectedFrame.getEndSampleIndex(), frame.getEndSampleIndex() );
+      assertEquals( expectedFrame.getSlotCount(), frame.getSlotCount() );
+      for ( int slot = 0; slot < frame.getSlotCount(); slot++ )
+      {
+        assertEquals( expectedFrame.getSlot( slot ), frame.getSlot( slot ) );
+      }
+    }
+  }
+
   /**
    * Analyses the data file identified by the given resource name.
    * 
    * @param aResourceName
    *          the name of the resource (= data file) to analyse, cannot be
-   *          <code>null</code>.
+   *          <code>null</code>;
+   * @param aFramesPerTask
+   *          the number of frames decoded by a single subtask.
    * @return the analysis results, never <code>null</code>.
    * @throws Exception
    *           in case of exceptions.
    */
-  private DMX512DataSet analyseDataFile( final String aResourceName ) throws Exception
+  private DMX512DataSet analyseDataFile( final String aResourceName, final int aFramesPerTask ) throws Exception
   {
     URL resource = ResourceUtils.getResource( getClass(), aResourceName );
     AcquisitionResult container = DataTestUtils.getCapturedData( resource );
     ToolContext toolContext = DataTestUtils.createToolContext( container );
 
+    return analyseData( toolContext, aFramesPerTask, null );
+  }
+
+  /**
+   * Analyses the data of the given tool context.
+   * 
+   * @param aToolContext
+   *          the tool context to analyse, cannot be <code>null</code>;
+   * @param aFramesPerTask
+   *          the number of frames decoded by a single subtask;
+   * @param aDecoding
+   *          the incremental decoding to use, can be <code>null</code>.
+   * @return the analysis results, never <code>null</code>.
+   * @throws Exception
+   *           in case of exceptions.
+   */
+  private DMX512DataSet analyseData( final ToolContext aToolContext, final int aFramesPerTask,
+      final IncrementalDecoding<DMX512AnalyzerTask.FrameDecoder> aDecoding ) throws Exception
+  {
     ToolProgressListener tpl = Mockito.mock( ToolProgressListener.class );
     AnnotationListener al = Mockito.mock( AnnotationListener.class );
 
-    DMX512AnalyzerTask worker = new DMX512AnalyzerTask( toolContext, tpl, al );
+    DMX512AnalyzerTask worker = new DMX512AnalyzerTask( aToolContext, tpl, al );
     worker.setDataLine( this.channelIdx );
+    worker.setFramesPerTask( aFramesPerTask );
+    worker.setIncrementalDecoding( aDecoding );
 
     DMX512DataSet result = worker.call();
     assertNotNull( result );
@@ -24,251 +24,335 @@ package nl.lxtreme.ols.tool.i2c;
 import static nl.lxtreme.ols.util.NumberUtils.*;
 
 import java.beans.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.annotation.Annotation;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.*;
 import nl.lxtreme.ols.tool.base.annotation.*;
 
 
 /**
  * Performs the actual I2C analysis.
  */
-public class I2CAnalyserTask implements ToolTask<I2CDataSet>
+public class I2CAnalyserTask implements TransitionDecoderTask<I2CDataSet>
 {
-  // CONSTANTS
-
-  public static final String LINE_A = "LineA";
-  public static final String LINE_B = "LineB";
+  // INNER TYPES
 
-  public static final String PROPERTY_AUTO_DETECT_SCL = "AutoDetectSCL";
-  public static final String PROPERTY_AUTO_DETECT_SDA = "AutoDetectSDA";
+  /**
+   * Scans a window of samples for the first START condition that follows a
+   * STOP condition, which marks the start of an independent transaction.
+   */
+  final class BoundaryScanner implements Callable<Integer>
+  {
+    // VARIABLES
 
-  private static final String CHANNEL_SCL_NAME = "SCL";
-  private static final String CHANNEL_SDA_NAME = "SDA";
+    private final int fromIdx;
+    private final int toIdx;
 
-  private static final int I2C_BITCOUNT = 8;
+    // CONSTRUCTORS
 
-  private static final Logger LOG = Logger.getLogger( I2CAnalyserTask.class.getName() );
+    /**
+     * Creates a new {@link BoundaryScanner} instance.
+     * 
+     * @param aFromIdx
+     *          the first sample index to scan, > 0;
+     * @param aToIdx
+     *          the sample index to stop scanning at.
+     */
+    BoundaryScanner( final int aFromIdx, final int aToIdx )
+    {
+      this.fromIdx = aFromIdx;
+      this.toIdx = aToIdx;
+    }
 
-  // VARIABLES
+    // METHODS
 
-  private final ToolContext context;
-  private final ToolProgressListener progressListener;
-  private final AnnotationListener annotationListener;
-  private final PropertyChangeSupport pcs;
-
-  private boolean detectSDA_SCL;
-  private boolean reportACK;
-  private boolean reportNACK;
-  private boolean reportStart;
-  private boolean reportStop;
-  private int lineAmask;
-  private int lineAidx;
-  private int lineBmask;
-  private int lineBidx;
-  private int sdaIdx;
-  private int sclIdx;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer call() throws Exception
+    {
+      final int[] values = I2CAnalyserTask.this.context.getData().getValues();
+      final int sdaMask = ( 1 << I2CAnalyserTask.this.sdaIdx );
+      final int sclMask = ( 1 << I2CAnalyserTask.this.sclIdx );
 
-  // CONSTRUCTORS
+      boolean stopFound = false;
 
-  /**
-   * Creates a new I2CAnalyserTask instance.
-   * 
-   * @param aContext
-   * @param aProgressListener
-   */
-  public I2CAnalyserTask( final ToolContext aContext, final ToolProgressListener aProgressListener,
-      final AnnotationListener aAnnotationListener )
-  {
-    this.context = aContext;
-    this.progressListener = aProgressListener;
-    this.annotationListener = aAnnotationListener;
+      int oldSDA = values[this.fromIdx - 1] & sdaMask;
+      for ( int idx = this.fromIdx; idx < this.toIdx; idx++ )
+      {
+        final int dataValue = values[idx];
 
-    this.pcs = new PropertyChangeSupport( this );
+        final int sda = ( dataValue & sdaMask );
+        final int scl = ( dataValue & sclMask );
 
-    // the default behaviour is remained as-is...
-    this.detectSDA_SCL = true;
-  }
+        // SDA changes when SCL high: either a START or STOP condition...
+        if ( ( scl != 0 ) && ( sda != oldSDA ) )
+        {
+          if ( sda != 0 )
+          {
+            stopFound = true;
+          }
+          else if ( stopFound && ( ( values[idx - 1] & sclMask ) != 0 ) )
+          {
+            return Integer.valueOf( idx );
+          }
+        }
 
-  // METHODS
+        oldSDA = sda;
+      }
 
-  /**
-   * Adds the given property change listener.
-   * 
-   * @param aListener
-   *          the listener to add, cannot be <code>null</code>.
-   */
-  public void addPropertyChangeListener( final PropertyChangeListener aListener )
-  {
-    this.pcs.addPropertyChangeListener( aListener );
+      return Integer.valueOf( -1 );
+    }
   }
 
   /**
-   * This is the I2C protocol decoder core The decoder scans for a decode start
-   * event when one of the two lines is going low (start condition). After this
-   * the decoder starts to decode the data.
-   * 
-   * @see javax.swing.SwingWorker#doInBackground()
+   * Decodes the I2C transactions within a chunk of samples, which normally
+   * starts at a START condition following a STOP condition. In case the
+   * preceding chunk ends halfway a transaction, this chunk is decoded once
+   * more, continuing with the bus state of the preceding chunk.
+   * <p>
+   * The chunk is walked by a {@link DecoderEngine}, which only passes the
+   * samples on which SCL or SDA changes.
+   * </p>
    */
-  @Override
-  public I2CDataSet call() throws Exception
+  final class ChunkDecoder implements Callable<ChunkDecoder>, TransitionDecoder
   {
-    final AcquisitionResult data = this.context.getData();
-
-    final int[] values = data.getValues();
-    final long[] timestamps = data.getTimestamps();
-
-    // process the captured data and write to output
-    int oldSCL, oldSDA, bitCount;
-    int byteValue;
+    // VARIABLES
+
+    final int startIdx;
+    final int endIdx;
+    final int previousIdx;
+    final I2CDataSet decodedData;
+    final List<Annotation<?>> annotations;
+
+    private int oldSCL;
+    private int oldSDA;
+    private int bitCount;
+    private int byteValue;
+    private int prevIdx;
+    private boolean startCondFound;
+    private boolean tenBitAddress;
+    private int slaveAddress;
+    private int direction;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ChunkDecoder} instance that starts decoding afresh.
+     * 
+     * @param aStartIdx
+     *          the first sample index to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding at;
+     * @param aPreviousIdx
+     *          the sample index holding the line levels before the first
+     *          sample.
+     */
+    ChunkDecoder( final int aStartIdx, final int aEndIdx, final int aPreviousIdx )
+    {
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+      this.previousIdx = aPreviousIdx;
+      this.decodedData = new I2CDataSet( aStartIdx, aEndIdx, I2CAnalyserTask.this.context.getData() );
+      this.annotations = new ArrayList<Annotation<?>>();
+
+      final int value = I2CAnalyserTask.this.context.getData().getValues()[aPreviousIdx];
+
+      this.oldSCL = value & ( 1 << I2CAnalyserTask.this.sclIdx );
+      this.oldSDA = value & ( 1 << I2CAnalyserTask.this.sdaIdx );
+      this.bitCount = I2C_BITCOUNT;
+      this.byteValue = 0;
+      this.prevIdx = -1;
+      this.startCondFound = false;
+      this.tenBitAddress = false;
+      this.slaveAddress = 0x00;
+      this.direction = -1;
+    }
 
-    if ( LOG.isLoggable( Level.FINE ) )
+    /**
+     * Creates a new {@link ChunkDecoder} instance that continues decoding with
+     * the state in which the given decoder ended.
+     * 
+     * @param aStartIdx
+     *          the first sample index to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding at;
+     * @param aPrevious
+     *          the decoder of the preceding chunk, cannot be <code>null</code>.
+     */
+    ChunkDecoder( final int aStartIdx, final int aEndIdx, final ChunkDecoder aPrevious )
     {
-      LOG.log( Level.FINE, "Line A mask = 0x{0}", Integer.toHexString( this.lineAmask ) );
-      LOG.log( Level.FINE, "Line B mask = 0x{0}", Integer.toHexString( this.lineBmask ) );
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+      this.previousIdx = aStartIdx - 1;
+      this.decodedData = new I2CDataSet( aStartIdx, aEndIdx, I2CAnalyserTask.this.context.getData() );
+      this.annotations = new ArrayList<Annotation<?>>();
+
+      this.oldSCL = aPrevious.oldSCL;
+      this.oldSDA = aPrevious.oldSDA;
+      this.bitCount = aPrevious.bitCount;
+      this.byteValue = aPrevious.byteValue;
+      this.prevIdx = aPrevious.prevIdx;
+      this.startCondFound = aPrevious.startCondFound;
+      this.tenBitAddress = aPrevious.tenBitAddress;
+      this.slaveAddress = aPrevious.slaveAddress;
+      this.direction = aPrevious.direction;
     }
 
-    int startOfDecode = this.context.getStartSampleIndex();
-    int endOfDecode = this.context.getEndSampleIndex();
+    // METHODS
 
-    if ( this.detectSDA_SCL )
+    /**
+     * Decodes all samples of this chunk.
+     * 
+     * @return this decoder, never <code>null</code>.
+     */
+    @Override
+    public ChunkDecoder call() throws Exception
     {
-      startOfDecode = autodetectDataAndClock( data, startOfDecode, endOfDecode );
+      final DecoderEngine engine = new DecoderEngine();
+      engine.addDecoder( this );
+      // The first sample only provides the line levels before this chunk...
+      engine.decode( I2CAnalyserTask.this.context.getData(), this.previousIdx, this.endIdx, null );
+      return this;
     }
-    else
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannelMask()
     {
-      //
-      this.sclIdx = this.lineAidx;
-      this.sdaIdx = this.lineBidx;
+      return ( 1 << I2CAnalyserTask.this.sdaIdx ) | ( 1 << I2CAnalyserTask.this.sclIdx );
     }
 
-    final int sdaMask = ( 1 << this.sdaIdx );
-    final int sclMask = ( 1 << this.sclIdx );
-
-    final I2CDataSet i2cDataSet = new I2CDataSet( startOfDecode, endOfDecode, data );
-
-    // Prepare everything for the decoding results...
-    prepareResults();
-
-    /*
-     * Now decode the bytes, SDA may only change when SCL is low. Otherwise it
-     * may be a repeated start condition or stop condition. If the start/stop
-     * condition is not at a byte boundary a bus error is detected. So we have
-     * to scan for SCL rises and for SDA changes during SCL is high. Each byte
-     * is followed by a 9th bit (ACK/NACK).
+    /**
+     * {@inheritDoc}
      */
-    int idx = i2cDataSet.getStartOfDecode();
-    int prevIdx = -1;
-
-    oldSCL = values[idx] & sclMask;
-    oldSDA = values[idx] & sdaMask;
-
-    bitCount = I2C_BITCOUNT;
-    byteValue = 0;
-
-    boolean startCondFound = false;
-    boolean tenBitAddress = false;
-    int slaveAddress = 0x00;
-    int direction = -1;
-
-    if ( this.detectSDA_SCL )
+    @Override
+    public void onEnd( final int aSampleIdx, final long aTimestamp )
     {
-      // We've just found our start condition, start the report with that...
-      reportStartCondition( i2cDataSet, startOfDecode );
-
-      this.annotationListener.onAnnotation( new SampleDataAnnotation( this.sdaIdx, timestamps[startOfDecode],
-          I2CDataSet.I2C_START ) );
+      // Nop; a transaction that is halfway is continued by the next chunk...
+    }
 
-      startCondFound = true;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart( final int aSampleIdx, final long aTimestamp, final int aValue )
+    {
+      // Nop; the initial bus state is set upon construction...
     }
 
-    for ( ; idx < i2cDataSet.getEndOfDecode(); idx++ )
+    /**
+     * Decodes a single transition of SCL and/or SDA.
+     * <p>
+     * SDA may only change when SCL is low. Otherwise it may be a repeated start
+     * condition or stop condition. If the start/stop condition is not at a
+     * byte boundary a bus error is detected. So we have to scan for SCL rises
+     * and for SDA changes during SCL is high. Each byte is followed by a 9th
+     * bit (ACK/NACK).
+     * </p>
+     */
+    @Override
+    public void onTransition( final int aSampleIdx, final long aTimestamp, final int aOldValue, final int aNewValue )
     {
-      final int dataValue = values[idx];
+      final long[] timestamps = I2CAnalyserTask.this.context.getData().getTimestamps();
+
+      final int sdaIdx = I2CAnalyserTask.this.sdaIdx;
+      final int sdaMask = ( 1 << sdaIdx );
+      final int sclMask = ( 1 << I2CAnalyserTask.this.sclIdx );
+
+      final I2CDataSet i2cDataSet = this.decodedData;
 
-      final int sda = ( dataValue & sdaMask );
-      final int scl = ( dataValue & sclMask );
+      final int sda = ( aNewValue & sdaMask );
+      final int scl = ( aNewValue & sclMask );
 
       // detect SCL fall/rise
-      if ( oldSCL > scl )
+      if ( this.oldSCL > scl )
       {
         // SCL falls
-        if ( ( prevIdx < 0 ) || ( bitCount == I2C_BITCOUNT ) )
+        if ( ( this.prevIdx < 0 ) || ( this.bitCount == I2C_BITCOUNT ) )
         {
-          prevIdx = idx;
+          this.prevIdx = aSampleIdx;
         }
 
-        if ( bitCount == 0 )
+        if ( this.bitCount == 0 )
         {
           // store decoded byte
-          reportData( i2cDataSet, prevIdx, idx, byteValue );
+          reportData( i2cDataSet, this.prevIdx, aSampleIdx, this.byteValue );
 
           final String annotation;
-          if ( startCondFound )
+          if ( this.startCondFound )
           {
             // This is the (7- or 10-bit) address part...
-            direction = ( byteValue & 0x01 );
+            this.direction = ( this.byteValue & 0x01 );
 
-            if ( ( byteValue & 0xf8 ) == 0xf0 )
+            if ( ( this.byteValue & 0xf8 ) == 0xf0 )
             {
               // 10-bit address part...
-              slaveAddress = ( byteValue & 0x06 ) << 6;
-              tenBitAddress = true;
+              this.slaveAddress = ( this.byteValue & 0x06 ) << 6;
+              this.tenBitAddress = true;
 
-              annotation = String.format( "Setup %s 10-bit slave", ( direction == 1 ) ? "read from" : "write to" );
+              annotation = String.format( "Setup %s 10-bit slave", ( this.direction == 1 ) ? "read from"
+                  : "write to" );
             }
             else
             {
-              if ( tenBitAddress )
+              if ( this.tenBitAddress )
               {
-                // 10-bit address needs the first few bits of the previous slave
-                // address, so OR-ing is needed here...
-                slaveAddress |= ( byteValue & 0xFF );
+                // 10-bit address needs the first few bits of the previous
+                // slave address, so OR-ing is needed here...
+                this.slaveAddress |= ( this.byteValue & 0xFF );
               }
               else
               {
                 // 7-bit address, directly available. See issue #51
-                slaveAddress = ( ( byteValue >> 1 ) & 0xFF );
+                this.slaveAddress = ( ( this.byteValue >> 1 ) & 0xFF );
               }
-              startCondFound = false;
+              this.startCondFound = false;
 
-              annotation = String.format( tenBitAddress ? "Setup %s slave: 0x%X " : "Setup %s slave: 0x%X [0x%X]",
-                  ( direction == 1 ) ? "read from" : "write to", Integer.valueOf( slaveAddress ),
-                  Integer.valueOf( byteValue ) );
+              annotation = String.format( this.tenBitAddress ? "Setup %s slave: 0x%X "
+                  : "Setup %s slave: 0x%X [0x%X]", ( this.direction == 1 ) ? "read from" : "write to",
+                  Integer.valueOf( this.slaveAddress ), Integer.valueOf( this.byteValue ) );
 
-              tenBitAddress = false;
+              this.tenBitAddress = false;
             }
           }
           else
           {
-            annotation = String.format( "%s data: 0x%X (%c)", ( direction == 1 ) ? "Read" : "Write",
-                Integer.valueOf( byteValue ), Integer.valueOf( byteValue ) );
+            annotation = String.format( "%s data: 0x%X (%c)", ( this.direction == 1 ) ? "Read" : "Write",
+                Integer.valueOf( this.byteValue ), Integer.valueOf( this.byteValue ) );
           }
 
-          this.annotationListener.onAnnotation( new SampleDataAnnotation( this.sdaIdx, timestamps[prevIdx],
-              timestamps[idx], annotation ) );
+          this.annotations.add( new SampleDataAnnotation( sdaIdx, timestamps[this.prevIdx], aTimestamp,
+              annotation ) );
 
-          byteValue = 0;
+          this.byteValue = 0;
         }
       }
-      else if ( scl > oldSCL )
+      else if ( scl > this.oldSCL )
       {
         // SCL rises
-        if ( sda != oldSDA )
+        if ( sda != this.oldSDA )
         {
-          reportBusError( i2cDataSet, idx );
+          reportBusError( i2cDataSet, aSampleIdx );
         }
         else
         {
           // read SDA
-          if ( bitCount != 0 )
+          if ( this.bitCount != 0 )
           {
-            bitCount--;
+            this.bitCount--;
             if ( sda != 0 )
             {
-              byteValue |= ( 1 << bitCount );
+              this.byteValue |= ( 1 << this.bitCount );
             }
           }
           else
@@ -277,76 +361,260 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
             if ( sda != 0 )
             {
               // NACK
-              reportNACK( i2cDataSet, idx );
+              reportNACK( i2cDataSet, aSampleIdx );
 
-              this.annotationListener.onAnnotation( new SampleDataAnnotation( this.sdaIdx, timestamps[idx],
-                  I2CDataSet.I2C_NACK ) );
+              this.annotations.add( new SampleDataAnnotation( sdaIdx, aTimestamp, I2CDataSet.I2C_NACK ) );
             }
             else
             {
               // ACK
-              reportACK( i2cDataSet, idx );
+              reportACK( i2cDataSet, aSampleIdx );
 
-              this.annotationListener.onAnnotation( new SampleDataAnnotation( this.sdaIdx, timestamps[idx],
-                  I2CDataSet.I2C_ACK ) );
+              this.annotations.add( new SampleDataAnnotation( sdaIdx, aTimestamp, I2CDataSet.I2C_ACK ) );
             }
 
             // next byte
-            bitCount = I2C_BITCOUNT;
-            byteValue = 0;
+            this.bitCount = I2C_BITCOUNT;
+            this.byteValue = 0;
           }
         }
       }
 
       // detect SDA change when SCL high
-      if ( ( scl == sclMask ) && ( sda != oldSDA ) )
+      if ( ( scl == sclMask ) && ( sda != this.oldSDA ) )
       {
         // SDA changes here
-        if ( ( bitCount > 0 ) && ( bitCount < ( I2C_BITCOUNT - 1 ) ) )
+        if ( ( this.bitCount > 0 ) && ( this.bitCount < ( I2C_BITCOUNT - 1 ) ) )
         {
           // bus error, no complete byte detected
-          reportBusError( i2cDataSet, idx );
+          reportBusError( i2cDataSet, aSampleIdx );
         }
         else
         {
-          if ( sda > oldSDA )
+          if ( sda > this.oldSDA )
           {
             // SDA rises, this is a stop condition
-            reportStopCondition( i2cDataSet, idx );
+            reportStopCondition( i2cDataSet, aSampleIdx );
 
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.sdaIdx, timestamps[idx],
-                I2CDataSet.I2C_STOP ) );
+            this.annotations.add( new SampleDataAnnotation( sdaIdx, aTimestamp, I2CDataSet.I2C_STOP ) );
 
-            slaveAddress = 0x00;
-            direction = -1;
+            this.slaveAddress = 0x00;
+            this.direction = -1;
           }
           else
           {
             // SDA falls, this is a start condition
-            reportStartCondition( i2cDataSet, idx );
-
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.sdaIdx, timestamps[idx],
-                I2CDataSet.I2C_START ) );
-
-            startCondFound = true;
+            startCondition( aSampleIdx, aTimestamp );
           }
 
           // new byte
-          bitCount = I2C_BITCOUNT;
-          byteValue = 0;
+          this.bitCount = I2C_BITCOUNT;
+          this.byteValue = 0;
         }
       }
 
-      oldSCL = scl;
-      oldSDA = sda;
+      this.oldSCL = scl;
+      this.oldSDA = sda;
+    }
 
-      this.progressListener
-          .setProgress( getPercentage( idx, i2cDataSet.getStartOfDecode(), i2cDataSet.getEndOfDecode() ) );
+    /**
+     * Returns whether the next chunk, starting with a START condition, can be
+     * decoded independently of this chunk. This is the case when this chunk
+     * did not end halfway a byte (which would make the START condition a bus
+     * error), nor halfway a 10-bit slave address.
+     * 
+     * @return <code>true</code> if the next chunk can be decoded afresh,
+     *         <code>false</code> otherwise.
+     */
+    boolean isAtTransactionBoundary()
+    {
+      final boolean halfwayByte = ( this.bitCount > 0 ) && ( this.bitCount < ( I2C_BITCOUNT - 1 ) );
+      return !halfwayByte && !this.tenBitAddress;
+    }
+
+    /**
+     * Reports a START condition at the given sample index.
+     * 
+     * @param aSampleIdx
+     *          the sample index of the START condition;
+     * @param aTimestamp
+     *          the timestamp of the START condition.
+     */
+    void startCondition( final int aSampleIdx, final long aTimestamp )
+    {
+      reportStartCondition( this.decodedData, aSampleIdx );
+
+      this.annotations.add( new SampleDataAnnotation( I2CAnalyserTask.this.sdaIdx, aTimestamp,
+          I2CDataSet.I2C_START ) );
+
+      this.startCondFound = true;
+    }
+  }
+
+  // CONSTANTS
+
+  public static final String LINE_A = "LineA";
+  public static final String LINE_B = "LineB";
+
+  public static final String PROPERTY_AUTO_DETECT_SCL = "AutoDetectSCL";
+  public static final String PROPERTY_AUTO_DETECT_SDA = "AutoDetectSDA";
+
+  private static final String CHANNEL_SCL_NAME = "SCL";
+  private static final String CHANNEL_SDA_NAME = "SDA";
+
+  private static final int I2C_BITCOUNT = 8;
+
+  /** The default number of samples in each chunk that is decoded. */
+  static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+  private static final Logger LOG = Logger.getLogger( I2CAnalyserTask.class.getName() );
+
+  // VARIABLES
+
+  private final ToolContext context;
+  private final ToolProgressListener progressListener;
+  private final AnnotationListener annotationListener;
+  private final PropertyChangeSupport pcs;
+
+  private boolean detectSDA_SCL;
+  private boolean reportACK;
+  private boolean reportNACK;
+  private boolean reportStart;
+  private boolean reportStop;
+  private int lineAmask;
+  private int lineAidx;
+  private int lineBmask;
+  private int lineBidx;
+  private int sdaIdx;
+  private int sclIdx;
+  private int chunkSize;
+  private I2CDataSet decodedData;
+  private ChunkDecoder chunkDecoder;
+  private IncrementalDecoding<ChunkDecoder> incrementalDecoding;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new I2CAnalyserTask instance.
+   * 
+   * @param aContext
+   * @param aProgressListener
+   */
+  public I2CAnalyserTask( final ToolContext aContext, final ToolProgressListener aProgressListener,
+      final AnnotationListener aAnnotationListener )
+  {
+    this.context = aContext;
+    this.progressListener = aProgressListener;
+    this.annotationListener = aAnnotationListener;
+
+    this.pcs = new PropertyChangeSupport( this );
+
+    // the default behaviour is remained as-is...
+    this.detectSDA_SCL = true;
+    this.chunkSize = DEFAULT_CHUNK_SIZE;
+  }
+
+  // METHODS
+
+  /**
+   * Adds the given property change listener.
+   * 
+   * @param aListener
+   *          the listener to add, cannot be <code>null</code>.
+   */
+  public void addPropertyChangeListener( final PropertyChangeListener aListener )
+  {
+    this.pcs.addPropertyChangeListener( aListener );
+  }
+
+  /**
+   * This is the I2C protocol decoder core The decoder scans for a decode start
+   * event when one of the two lines is going low (start condition). After this
+   * the decoder starts to decode the data.
+   * <p>
+   * The chunks of the previous run are reused where possible, see
+   * {@link #decodeChunks(int, int, int, IncrementalDecoder.Callback)}.
+   * </p>
+   * 
+   * @see javax.swing.SwingWorker#doInBackground()
+   */
+  @Override
+  public I2CDataSet call() throws Exception
+  {
+    final I2CDataSet i2cDataSet = prepareDecodedData();
+
+    final int first = i2cDataSet.getStartOfDecode();
+    final int last = i2cDataSet.getEndOfDecode();
+
+    final IncrementalDecoder<ChunkDecoder> decoder = new IncrementalDecoder<ChunkDecoder>()
+    {
+      @Override
+      public void decode( final int aStartIdx, final int aEndIdx, final Callback<ChunkDecoder> aCallback )
+          throws Exception
+      {
+        decodeChunks( first, aStartIdx, aEndIdx, aCallback );
+      }
+    };
+
+    IncrementalDecoding<ChunkDecoder> decoding = this.incrementalDecoding;
+    if ( decoding == null )
+    {
+      decoding = new IncrementalDecoding<ChunkDecoder>();
+    }
+
+    // The line levels before the first chunk are those at the start of the
+    // decoding...
+    final List<ChunkDecoder> chunks = decoding.decode( decoder, this.context.getData(), getSettings(), first + 1,
+        last );
+
+    for ( ChunkDecoder chunk : chunks )
+    {
+      i2cDataSet.merge( chunk.decodedData );
+      for ( Annotation<?> annotation : chunk.annotations )
+      {
+        this.annotationListener.onAnnotation( annotation );
+      }
     }
 
     return i2cDataSet;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public I2CDataSet completeDecoding()
+  {
+    this.decodedData.merge( this.chunkDecoder.decodedData );
+    for ( Annotation<?> annotation : this.chunkDecoder.annotations )
+    {
+      this.annotationListener.onAnnotation( annotation );
+    }
+    return this.decodedData;
+  }
+
+  /**
+   * Prepares the decoding, and adds a single chunk decoder for all data to the
+   * given engine; as the engine walks over all data anyway, the data is not
+   * split into chunks at the transaction boundaries.
+   */
+  @Override
+  public void prepareDecoding( final DecoderEngine aEngine ) throws Exception
+  {
+    this.decodedData = prepareDecodedData();
+
+    final int first = this.decodedData.getStartOfDecode();
+    final int last = this.decodedData.getEndOfDecode();
+
+    this.chunkDecoder = new ChunkDecoder( first, last, first );
+    if ( this.detectSDA_SCL )
+    {
+      // We've just found our start condition, start the report with that...
+      this.chunkDecoder.startCondition( first, this.context.getData().getTimestamps()[first] );
+    }
+    aEngine.addDecoder( this.chunkDecoder, first, last );
+  }
+
   /**
    * Removes the given property change listener.
    * 
@@ -358,6 +626,21 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
     this.pcs.removePropertyChangeListener( aListener );
   }
 
+  /**
+   * Sets the number of samples in each chunk that is decoded concurrently.
+   * 
+   * @param aChunkSize
+   *          the chunk size to set, > 0.
+   */
+  final void setChunkSize( final int aChunkSize )
+  {
+    if ( aChunkSize < 1 )
+    {
+      throw new IllegalArgumentException( "Chunk size must be at least one!" );
+    }
+    this.chunkSize = aChunkSize;
+  }
+
   /**
    * @param aDetectSDA_SCL
    *          the detectSDA_SCL to set
@@ -367,6 +650,19 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
     this.detectSDA_SCL = aDetectSDA_SCL;
   }
 
+  /**
+   * Sets the incremental decoding to use, allowing the chunks decoded by a
+   * previous task to be reused.
+   * 
+   * @param aIncrementalDecoding
+   *          the incremental decoding to use, can be <code>null</code> to
+   *          always decode all chunks.
+   */
+  final void setIncrementalDecoding( final IncrementalDecoding<ChunkDecoder> aIncrementalDecoding )
+  {
+    this.incrementalDecoding = aIncrementalDecoding;
+  }
+
   /**
    * @param aLineAmask
    */
@@ -443,13 +739,21 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
    *          the ending sample index.
    * @return the (new) starting sample index at which the START condition
    *         occurred.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted.
    */
   private int autodetectDataAndClock( final AcquisitionResult aData, final int aStartOfDecode, final int aEndOfDecode )
+      throws InterruptedException
   {
     final int dataMask = this.lineAmask | this.lineBmask;
 
     final int[] values = aData.getValues();
 
+    // Report the progress, and check for cancellation, about once every
+    // percent, instead of every sample...
+    final int progressStep = Math.max( 1, ( aEndOfDecode - aStartOfDecode ) / 100 );
+    int progressCountdown = progressStep;
+
     int sampleIdx;
     /*
      * first of all scan both lines until they are high (IDLE), then the first
@@ -465,7 +769,11 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
         break;
       }
 
-      this.progressListener.setProgress( getPercentage( sampleIdx, aStartOfDecode, aEndOfDecode ) );
+      if ( --progressCountdown == 0 )
+      {
+        reportProgress( sampleIdx, aStartOfDecode, aEndOfDecode );
+        progressCountdown = progressStep;
+      }
     }
 
     if ( sampleIdx == aEndOfDecode )
@@ -505,7 +813,11 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
         }
       }
 
-      this.progressListener.setProgress( getPercentage( sampleIdx, aStartOfDecode, aEndOfDecode ) );
+      if ( --progressCountdown == 0 )
+      {
+        reportProgress( sampleIdx, aStartOfDecode, aEndOfDecode );
+        progressCountdown = progressStep;
+      }
     }
 
     if ( sampleIdx == aEndOfDecode )
@@ -518,6 +830,174 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
     return sampleIdx;
   }
 
+  /**
+   * Decodes the chunks in the given range.
+   * <p>
+   * Decoding is done in two phases: first, the range is split into chunks at
+   * START conditions that follow a STOP condition, by scanning windows of the
+   * data concurrently. Then, the chunks are decoded concurrently, and their
+   * results are stitched together in order. The START conditions at which the
+   * preceding chunks ended at a transaction boundary are reported as
+   * checkpoints, as the chunks following them do not depend on any earlier
+   * sample. The same goes for the end of the range.
+   * </p>
+   * 
+   * @param aStartOfDecode
+   *          the sample index of the START condition at which the decoding
+   *          starts;
+   * @param aStartIdx
+   *          the first sample index to decode, > 0;
+   * @param aEndIdx
+   *          the sample index to stop decoding at;
+   * @param aCallback
+   *          the callback to report the decoded chunks to.
+   */
+  private void decodeChunks( final int aStartOfDecode, final int aStartIdx, final int aEndIdx,
+      final IncrementalDecoder.Callback<ChunkDecoder> aCallback ) throws Exception
+  {
+    // Phase one: find the transaction boundaries in all but the first window...
+    final int[] windows = ParallelDecoding.split( aStartIdx - 1, aEndIdx, this.chunkSize );
+
+    final List<BoundaryScanner> scanners = new ArrayList<BoundaryScanner>();
+    for ( int i = 1; i < ( windows.length - 1 ); i++ )
+    {
+      scanners.add( new BoundaryScanner( windows[i], windows[i + 1] ) );
+    }
+
+    final List<ChunkDecoder> decoders = new ArrayList<ChunkDecoder>();
+
+    // The line levels before the first chunk are those of the preceding
+    // sample; all other chunks start with a START condition...
+    int chunkStart = aStartIdx;
+    int previousIdx = aStartIdx - 1;
+    for ( Integer scan : ParallelDecoding.invokeAll( scanners ) )
+    {
+      final int boundary = scan.intValue();
+      if ( boundary > chunkStart )
+      {
+        decoders.add( new ChunkDecoder( chunkStart, boundary, previousIdx ) );
+        chunkStart = boundary;
+        previousIdx = boundary - 1;
+      }
+    }
+    decoders.add( new ChunkDecoder( chunkStart, aEndIdx, previousIdx ) );
+
+    if ( this.detectSDA_SCL && ( ( aStartIdx - 1 ) == aStartOfDecode ) )
+    {
+      // We've just found our start condition, start the report with that...
+      decoders.get( 0 ).startCondition( aStartOfDecode, this.context.getData().getTimestamps()[aStartOfDecode] );
+    }
+
+    // Phase two: decode all chunks, and report them in order...
+    final List<Future<ChunkDecoder>> results = ParallelDecoding.submitAll( decoders );
+    try
+    {
+      ChunkDecoder previous = null;
+      for ( int i = 0; i < results.size(); i++ )
+      {
+        ChunkDecoder chunk = ParallelDecoding.getResult( results.get( i ) );
+        if ( ( previous != null ) && !previous.isAtTransactionBoundary() )
+        {
+          // The previous chunk did not end cleanly, so this chunk should be
+          // decoded again, continuing with the state of the previous chunk...
+          chunk = new ChunkDecoder( chunk.startIdx, chunk.endIdx, previous ).call();
+        }
+        else if ( previous != null )
+        {
+          aCallback.onCheckpoint( chunk.startIdx );
+        }
+        aCallback.onItem( chunk );
+
+        this.progressListener.setProgress( ( int )( ( ( i + 1 ) * 100.0 ) / results.size() ) );
+        previous = chunk;
+      }
+
+      if ( ( previous != null ) && ( aEndIdx < this.context.getData().getValues().length )
+          && previous.isAtTransactionBoundary() && isStartCondition( aEndIdx ) )
+      {
+        aCallback.onCheckpoint( aEndIdx );
+      }
+    }
+    finally
+    {
+      ParallelDecoding.cancelAll( results );
+    }
+  }
+
+  /**
+   * Returns the settings that determine the outcome of decoding the chunks,
+   * used to determine whether the chunks of a previous run can be reused.
+   * 
+   * @return the settings, never <code>null</code>.
+   */
+  private Object getSettings()
+  {
+    return Arrays.<Object> asList( Integer.valueOf( this.sdaIdx ), Integer.valueOf( this.sclIdx ),
+        Boolean.valueOf( this.detectSDA_SCL ), Boolean.valueOf( this.reportACK ), Boolean.valueOf( this.reportNACK ),
+        Boolean.valueOf( this.reportStart ), Boolean.valueOf( this.reportStop ) );
+  }
+
+  /**
+   * Returns whether there is a START condition on the given sample index.
+   * 
+   * @param aSampleIdx
+   *          the sample index to test, > 0.
+   * @return <code>true</code> if SDA falls on the given sample index while SCL
+   *         is high, <code>false</code> otherwise.
+   */
+  private boolean isStartCondition( final int aSampleIdx )
+  {
+    final int[] values = this.context.getData().getValues();
+    final int sdaMask = ( 1 << this.sdaIdx );
+    final int sclMask = ( 1 << this.sclIdx );
+
+    final int oldValue = values[aSampleIdx - 1];
+    final int newValue = values[aSampleIdx];
+    return ( ( oldValue & sclMask ) != 0 ) && ( ( newValue & sclMask ) != 0 ) && ( ( oldValue & sdaMask ) != 0 )
+        && ( ( newValue & sdaMask ) == 0 );
+  }
+
+  /**
+   * Determines the SDA and SCL lines and where the decoding starts, prepares
+   * everything for the upcoming results, and creates the data set for the
+   * decoded data.
+   * 
+   * @return the data set for the decoded data, never <code>null</code>.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted.
+   */
+  private I2CDataSet prepareDecodedData() throws InterruptedException
+  {
+    final AcquisitionResult data = this.context.getData();
+
+    if ( LOG.isLoggable( Level.FINE ) )
+    {
+      LOG.log( Level.FINE, "Line A mask = 0x{0}", Integer.toHexString( this.lineAmask ) );
+      LOG.log( Level.FINE, "Line B mask = 0x{0}", Integer.toHexString( this.lineBmask ) );
+    }
+
+    int startOfDecode = this.context.getStartSampleIndex();
+    int endOfDecode = this.context.getEndSampleIndex();
+
+    if ( this.detectSDA_SCL )
+    {
+      startOfDecode = autodetectDataAndClock( data, startOfDecode, endOfDecode );
+    }
+    else
+    {
+      //
+      this.sclIdx = this.lineAidx;
+      this.sdaIdx = this.lineBidx;
+    }
+
+    final I2CDataSet i2cDataSet = new I2CDataSet( startOfDecode, endOfDecode, data );
+
+    // Prepare everything for the decoding results...
+    prepareResults();
+
+    return i2cDataSet;
+  }
+
   /**
    * Prepares everything for the upcoming results.
    */
@@ -576,6 +1056,20 @@ public class I2CAnalyserTask implements ToolTask<I2CDataSet>
     }
   }
 
+  /**
+   * Reports the progress of decoding the given sample index, after checking
+   * whether the calling thread is interrupted.
+   */
+  private void reportProgress( final int aSampleIdx, final int aStartOfDecode, final int aEndOfDecode )
+      throws InterruptedException
+  {
+    if ( Thread.interrupted() )
+    {
+      throw new InterruptedException( "Decoding interrupted!" );
+    }
+    this.progressListener.setProgress( getPercentage( aSampleIdx, aStartOfDecode, aEndOfDecode ) );
+  }
+
   /**
    * @param aTime
    */
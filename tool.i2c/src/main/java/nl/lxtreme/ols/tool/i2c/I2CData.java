@@ -60,6 +60,16 @@ public final class I2CData extends BaseData<I2CData>
     this.value = 0;
   }
 
+  /*
+   * copy with another index
+   */
+  I2CData( final int aIdx, final I2CData aData )
+  {
+    super( aIdx, aData.getChannelIdx(), aData.getStartSampleIndex(), aData.getEndSampleIndex(), aData
+        .getEventName() );
+    this.value = aData.value;
+  }
+
   // METHODS
 
   /**
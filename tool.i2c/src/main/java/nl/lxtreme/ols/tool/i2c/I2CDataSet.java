@@ -78,6 +78,23 @@ public final class I2CDataSet extends BaseDataSet<I2CData>
     return this.decodedBytes;
   }
 
+  /**
+   * Appends all data decoded from another chunk to this data set. The data is
+   * renumbered, as each chunk is decoded in a data set of its own.
+   * 
+   * @param aDataSet
+   *          the data set to merge, cannot be <code>null</code>.
+   */
+  public void merge( final I2CDataSet aDataSet )
+  {
+    for ( I2CData data : aDataSet.getData() )
+    {
+      addData( new I2CData( size(), data ) );
+    }
+    this.busErrors += aDataSet.busErrors;
+    this.decodedBytes += aDataSet.decodedBytes;
+  }
+
   /**
    * @param aTime
    */
@@ -69,6 +69,8 @@ public final class I2CProtocolAnalysisDialog extends BaseToolDialog<I2CDataSet>
 
   // VARIABLES
 
+  private final IncrementalDecoding<I2CAnalyserTask.ChunkDecoder> incrementalDecoding;
+
   private JLabel lineALabel;
   private JComboBox lineA;
   private JLabel lineBLabel;
@@ -104,6 +106,8 @@ public final class I2CProtocolAnalysisDialog extends BaseToolDialog<I2CDataSet>
   {
     super( aOwner, aToolContext, aContext, aTool );
 
+    this.incrementalDecoding = new IncrementalDecoding<I2CAnalyserTask.ChunkDecoder>();
+
     initDialog();
 
     setLocationRelativeTo( getOwner() );
@@ -310,6 +314,8 @@ public final class I2CProtocolAnalysisDialog extends BaseToolDialog<I2CDataSet>
     toolTask.setReportNACK( this.detectNACK.isSelected() );
     toolTask.setReportStart( this.detectSTART.isSelected() );
     toolTask.setReportStop( this.detectSTOP.isSelected() );
+    // Reuse the chunks of the previous run...
+    toolTask.setIncrementalDecoding( this.incrementalDecoding );
 
     // Register ourselves as property change listener...
     toolTask.addPropertyChangeListener( this );
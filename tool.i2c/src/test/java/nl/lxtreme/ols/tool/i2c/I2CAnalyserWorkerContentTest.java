@@ -27,6 +27,7 @@ import java.net.*;
 import java.util.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.test.*;
@@ -65,6 +66,47 @@ public class I2CAnalyserWorkerContentTest
     assertEquals( "Not all data events were seen?!", aExpectedData.length, i );
   }
 
+  /**
+   * Tests that auto detecting SDA and SCL on a bus that is never idle reports
+   * its progress about once every percent, instead of for every sample.
+   */
+  @Test
+  public void testAutodetectOnBusyBusReportsProgressSparsely() throws Exception
+  {
+    final int size = 100000;
+    final int[] values = new int[size];
+    final long[] timestamps = new long[size];
+    for ( int i = 0; i < size; i++ )
+    {
+      // Never both lines high, so no IDLE state...
+      values[i] = 1 + ( i & 1 );
+      timestamps[i] = i;
+    }
+
+    final AcquisitionResult container = new CapturedData( values, timestamps, -1L, 1000000, 2, 0x03, size );
+    final ToolContext toolContext = DataTestUtils.createToolContext( container, 0, size - 1 );
+
+    final ToolProgressListener progressListener = Mockito.mock( ToolProgressListener.class );
+    final AnnotationListener annotationListener = Mockito.mock( AnnotationListener.class );
+
+    final I2CAnalyserTask worker = new I2CAnalyserTask( toolContext, progressListener, annotationListener );
+    worker.setLineAIndex( 0 );
+    worker.setLineBIndex( 1 );
+    worker.setDetectSDA_SCL( true );
+
+    try
+    {
+      worker.call();
+      fail( "Expected IllegalStateException!" );
+    }
+    catch ( IllegalStateException exception )
+    {
+      assertEquals( "No IDLE state found!", exception.getMessage() );
+    }
+
+    Mockito.verify( progressListener, Mockito.atMost( 101 ) ).setProgress( Mockito.anyInt() );
+  }
+
   /**
    * Test method for
    * {@link nl.lxtreme.ols.tool.i2c.I2CAnalyserTask#doInBackground()}.
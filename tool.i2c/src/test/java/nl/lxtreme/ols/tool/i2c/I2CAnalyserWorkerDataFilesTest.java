@@ -31,6 +31,7 @@ import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.test.*;
 import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
 
 import org.junit.*;
 import org.junit.runner.*;
@@ -130,6 +131,24 @@ public class I2CAnalyserWorkerDataFilesTest
     assertEquals( "Not all data datagrams were seen?!", aExpectedDataCount, count );
   }
 
+  /**
+   * @param aDataSet
+   * @return the names of all events in the given data set, in order of
+   *         occurrence.
+   */
+  private static List<String> getEventNames( final I2CDataSet aDataSet )
+  {
+    final List<String> result = new ArrayList<String>();
+    for ( I2CData data : aDataSet.getData() )
+    {
+      if ( data.isEvent() )
+      {
+        result.add( data.getEventName() );
+      }
+    }
+    return result;
+  }
+
   /**
    * Test method for
    * {@link nl.lxtreme.ols.tool.i2c.I2CAnalyserTask#doInBackground()}.
@@ -137,7 +156,7 @@ public class I2CAnalyserWorkerDataFilesTest
   @Test
   public void testAnalyzeDataFile() throws Exception
   {
-    I2CDataSet result = analyseDataFile( this.resourceName );
+    I2CDataSet result = analyseDataFile( this.resourceName, I2CAnalyserTask.DEFAULT_CHUNK_SIZE, false );
     if ( this.autoDetectSDA )
     {
       assertEquals( "SCL not correctly detected?!", this.lineAidx, this.sclIdx );
@@ -148,32 +167,92 @@ public class I2CAnalyserWorkerDataFilesTest
   }
 
   /**
-   * Analyses the data file identified by the given resource name.
+   * Tests that splitting the data file in a handful of chunks, whose
+   * boundaries lie somewhere within the I2C transactions, still detects the
+   * bus lines, and yields the same START/STOP conditions in the same order.
+   */
+  @Test
+  public void testAnalyzeDataFileInChunksOk() throws Exception
+  {
+    I2CDataSet expected = analyseDataFile( this.resourceName, I2CAnalyserTask.DEFAULT_CHUNK_SIZE, true );
+    I2CDataSet result = analyseDataFile( this.resourceName, 64, true );
+
+    if ( this.autoDetectSDA )
+    {
+      assertEquals( "SCL not correctly detected?!", this.lineAidx, this.sclIdx );
+      assertEquals( "SDA not correctly detected?!", this.lineBidx, this.sdaIdx );
+    }
+    assertBusErrorCount( result, this.expectedBusErrorCount );
+    assertDataCount( result, this.expectedDatagramCount );
+
+    assertEquals( getEventNames( expected ), getEventNames( result ) );
+  }
+
+  /**
+   * Tests that decoding a series of windows of the data file yields the same
+   * results as decoding each window from scratch, and that the chunks of the
+   * previous run are reused when the window keeps its start.
+   */
+  @Test
+  public void testAnalyzeDataFileIncrementallyOk() throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), this.resourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+
+    final int length = container.getValues().length;
+    final int[][] windows = { { 0, length - 1 }, { 0, length - length / 8 }, { length / 8, length - length / 8 },
+        { length / 8, length - 1 }, { 0, length - 1 } };
+
+    IncrementalDecoding<I2CAnalyserTask.ChunkDecoder> decoding;
+    decoding = new IncrementalDecoding<I2CAnalyserTask.ChunkDecoder>();
+    for ( int i = 0; i < windows.length; i++ )
+    {
+      ToolContext toolContext = DataTestUtils.createToolContext( container, windows[i][0], windows[i][1] );
+
+      I2CDataSet expected = analyseData( toolContext, 64, true, null );
+      I2CDataSet result = analyseData( toolContext, 64, true, decoding );
+
+      assertEquals( expected.getData(), result.getData() );
+      if ( ( i > 0 ) && ( windows[i][0] == windows[i - 1][0] ) )
+      {
+        assertTrue( "Nothing reused at window #" + i, decoding.getDecodedLength() < toolContext.getLength() );
+      }
+    }
+  }
+
+  /**
+   * Analyses the data of the given tool context.
    * 
-   * @param aResourceName
-   *          the name of the resource (= data file) to analyse, cannot be
-   *          <code>null</code>.
+   * @param aToolContext
+   *          the tool context with the data to analyse, cannot be
+   *          <code>null</code>;
+   * @param aChunkSize
+   *          the number of samples to decode in each chunk;
+   * @param aReportEvents
+   *          <code>true</code> to report the ACK/NACK/START/STOP events,
+   *          <code>false</code> otherwise;
+   * @param aDecoding
+   *          the incremental decoding to use, can be <code>null</code>.
    * @return the analysis results, never <code>null</code>.
    * @throws Exception
    *           in case of exceptions.
    */
-  private I2CDataSet analyseDataFile( final String aResourceName ) throws Exception
+  private I2CDataSet analyseData( final ToolContext aToolContext, final int aChunkSize, final boolean aReportEvents,
+      final IncrementalDecoding<I2CAnalyserTask.ChunkDecoder> aDecoding ) throws Exception
   {
-    URL resource = ResourceUtils.getResource( getClass(), aResourceName );
-    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
-    ToolContext toolContext = DataTestUtils.createToolContext( container );
-
     ToolProgressListener progressListener = Mockito.mock( ToolProgressListener.class );
     AnnotationListener annotationListener = Mockito.mock( AnnotationListener.class );
 
-    I2CAnalyserTask worker = new I2CAnalyserTask( toolContext, progressListener, annotationListener );
+    I2CAnalyserTask worker = new I2CAnalyserTask( aToolContext, progressListener, annotationListener );
     worker.setLineAIndex( this.lineAidx );
     worker.setLineBIndex( this.lineBidx );
     worker.setDetectSDA_SCL( this.autoDetectSDA );
-    worker.setReportACK( false );
-    worker.setReportNACK( false );
-    worker.setReportStart( false );
-    worker.setReportStop( false );
+    worker.setReportACK( aReportEvents );
+    worker.setReportNACK( aReportEvents );
+    worker.setReportStart( aReportEvents );
+    worker.setReportStop( aReportEvents );
+    worker.setChunkSize( aChunkSize );
+    worker.setIncrementalDecoding( aDecoding );
 
     // Simulate we're running in a separate thread by directly calling the main
     // working routine...
@@ -185,4 +264,29 @@ public class I2CAnalyserWorkerDataFilesTest
 
     return result;
   }
+
+  /**
+   * Analyses the data file identified by the given resource name.
+   * 
+   * @param aResourceName
+   *          the name of the resource (= data file) to analyse, cannot be
+   *          <code>null</code>;
+   * @param aChunkSize
+   *          the number of samples to decode in each chunk;
+   * @param aReportEvents
+   *          <code>true</code> to report the ACK/NACK/START/STOP events,
+   *          <code>false</code> otherwise.
+   * @return the analysis results, never <code>null</code>.
+   * @throws Exception
+   *           in case of exceptions.
+   */
+  private I2CDataSet analyseDataFile( final String aResourceName, final int aChunkSize,
+      final boolean aReportEvents ) throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), aResourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+    ToolContext toolContext = DataTestUtils.createToolContext( container );
+
+    return analyseData( toolContext, aChunkSize, aReportEvents, null );
+  }
 }
@@ -21,24 +21,10 @@
 package nl.lxtreme.ols.tool.jtag;
 
 
-import static nl.lxtreme.ols.tool.jtag.JTAGState.CAPTURE_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.CAPTURE_IR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.EXIT1_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.EXIT1_IR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.EXIT2_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.EXIT2_IR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.PAUSE_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.PAUSE_IR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.RUN_TEST_IDLE;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.SELECT_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.SELECT_IR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.SHIFT_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.SHIFT_IR;
 import static nl.lxtreme.ols.tool.jtag.JTAGState.TEST_LOGIC_RESET;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.UPDATE_DR;
-import static nl.lxtreme.ols.tool.jtag.JTAGState.UPDATE_IR;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,10 +62,6 @@ public class JTAGAnalyserTask implements ToolTask<JTAGDataSet>
   private int tdiIdx;
   private int tdoIdx;
 
-  private JTAGState currentState;
-  private JTAGState oldState;
-  private int startIdx;
-
   // CONSTRUCTORS
 
   /**
@@ -178,6 +160,10 @@ public class JTAGAnalyserTask implements ToolTask<JTAGDataSet>
 
   /**
    * Decodes the JTAG-data on a given clock edge.
+   * <p>
+   * First, the rising TCK edges are indexed; then the TAP state machine is
+   * advanced, by means of its transition table, on these edges only.
+   * </p>
    * 
    * @param aDataSet
    *          the decoded data to fill;
@@ -200,320 +186,144 @@ public class JTAGAnalyserTask implements ToolTask<JTAGDataSet>
     final int tckMask = ( 1 << this.tckIdx );
     final int tmsMask = ( 1 << this.tmsIdx );
 
-    // scanning for falling/rising clk edges
-    int oldTckValue = ( values[startOfDecode] & tckMask );
+    final int[] risingEdges = findRisingEdges( values, startOfDecode, endOfDecode, tckMask );
 
-    String state;
+    final ShiftRegister tdiData = new ShiftRegister();
+    final ShiftRegister tdoData = new ShiftRegister();
     int startTdiDataIdx = 0;
     int endTdiDataIdx = 0;
-    
-    String tdiData = null;
-    String tdoData = null;
 
-    this.currentState = TEST_LOGIC_RESET;
-    this.oldState = TEST_LOGIC_RESET;
-    this.startIdx = startOfDecode;
+    JTAGState currentState = TEST_LOGIC_RESET;
+    JTAGState oldState = TEST_LOGIC_RESET;
+    int startIdx = startOfDecode;
 
     LOG.log( Level.INFO, "clockDataOnEdge: " + startOfDecode + " to " + endOfDecode );
 
-    final double length = endOfDecode - startOfDecode;
-    for ( int idx = startOfDecode + 1; idx < endOfDecode; idx++ )
+    int progress = -1;
+    for ( int i = 0; i < risingEdges.length; i++ )
     {
+      final int idx = risingEdges[i];
       final int dataSample = values[idx];
-      final int tckValue = ( dataSample & tckMask );
-      final int tmsValue = ( dataSample & tmsMask );
-      final int tdiValue = ( dataSample & tdiMask );
-      final int tdoValue = ( dataSample & tdoMask );
 
-      if ( oldTckValue != tckValue )
+      switch ( currentState )
       {
-        oldTckValue = tckValue;
-
-        if ( tckValue != 0 )
-        {
-          if ( this.currentState == TEST_LOGIC_RESET )
-          { // state 0: Test Logic Reset
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = RUN_TEST_IDLE;
-            }
-          }
-          else if ( this.currentState == RUN_TEST_IDLE )
-          { // state 1: Run Test Idle
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = RUN_TEST_IDLE;
-            }
-            else
-            {
-              this.currentState = SELECT_DR;
-            }
-          }
-          else if ( this.currentState == SELECT_DR )
-          { // state 2: Select DR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = CAPTURE_DR;
-            }
-            else
-            {
-              this.currentState = SELECT_IR;
-            }
-          }
-          else if ( this.currentState == CAPTURE_DR )
-          { // state 3: Capture DR
-            state = this.currentState.getDisplayText();
-            
-            tdiData = null;
-            tdoData = null;
-            
-            if ( tmsValue == 0 )
-            {
-              this.currentState = SHIFT_DR;
-            }
-            else
-            {
-              this.currentState = EXIT1_DR;
-            }
-          }
-          else if ( this.currentState == SHIFT_DR )
-          { // state 4: Shift DR
-            state = this.currentState.getDisplayText();
-            
-            if ( tdiData == null )
-            {
-              startTdiDataIdx = idx;
-              
-              tdiData = "";
-              tdoData = "";
-            }
-            endTdiDataIdx = idx;
-
-            if ( tdiValue == 0 )
-            {
-              tdiData = "0" + tdiData;
-            }
-            else
-            {
-              tdiData = "1" + tdiData;
-            }
-
-            if ( tdoValue == 0 )
-            {
-              tdoData = "0" + tdoData;
-            }
-            else
-            {
-              tdoData = "1" + tdoData;
-            }
-
-            if ( tmsValue != 0 )
-            {
-              this.currentState = EXIT1_DR;
-            }
-          }
-          else if ( this.currentState == EXIT1_DR )
-          { // state 5: Exit1 DR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = PAUSE_DR;
-            }
-            else
-            {
-              this.currentState = UPDATE_DR;
-            }
-          }
-          else if ( this.currentState == PAUSE_DR )
-          { // state 6: Pause DR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = PAUSE_DR;
-            }
-            else
-            {
-              this.currentState = EXIT2_DR;
-            }
-          }
-          else if ( this.currentState == EXIT2_DR )
-          { // state 7: Exit2 DR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = SHIFT_DR;
-            }
-            else
-            {
-              this.currentState = UPDATE_DR;
-            }
-          }
-          else if ( this.currentState == UPDATE_DR )
-          { // state 8: Update DR
-            state = this.currentState.getDisplayText();
-
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tdiIdx, timestamps[startTdiDataIdx],
-                timestamps[endTdiDataIdx], String.format( "0x%x", new BigInteger( tdiData, 2 ) ) ) );
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tdoIdx, timestamps[startTdiDataIdx],
-                timestamps[endTdiDataIdx], String.format( "0x%x", new BigInteger( tdoData, 2 ) ) ) );
-
-            aDataSet.reportJTAGTdiData( tdiIdx, startTdiDataIdx, endTdiDataIdx, currentState, tdiData );
-            aDataSet.reportJTAGTdoData( tdoIdx, startTdiDataIdx, endTdiDataIdx, currentState, tdoData );
-
-            if ( tmsValue == 0 )
-            {
-              this.currentState = RUN_TEST_IDLE;
-            }
-            else
-            {
-              this.currentState = SELECT_DR;
-            }
-          }
-          else if ( this.currentState == SELECT_IR )
-          { // state 9: Select IR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = CAPTURE_IR;
-            }
-            else
-            {
-              this.currentState = TEST_LOGIC_RESET;
-            }
-          }
-          else if ( this.currentState == CAPTURE_IR )
-          { // state 10: Capture IR
-            state = this.currentState.getDisplayText();
-            
-            tdiData = null;
-            tdoData = null;
-            
-            if ( tmsValue == 0 )
-            {
-              this.currentState = SHIFT_IR;
-            }
-            else
-            {
-              this.currentState = EXIT1_IR;
-            }
-          }
-          else if ( this.currentState == SHIFT_IR )
-          { // state 11: Shift IR
-            state = this.currentState.getDisplayText();
-
-            if ( tdiData == null )
-            {
-              startTdiDataIdx = idx;
-              
-              tdiData = "";
-              tdoData = "";
-            }
-            endTdiDataIdx = idx;
-
-            if ( tdiValue == 0 )
-            {
-              tdiData = "0" + tdiData;
-            }
-            else
-            {
-              tdiData = "1" + tdiData;
-            }
-
-            if ( tdoValue == 0 )
-            {
-              tdoData = "0" + tdoData;
-            }
-            else
-            {
-              tdoData = "1" + tdoData;
-            }
-
-            if ( tmsValue != 0 )
-            {
-              this.currentState = EXIT1_IR;
-            }
-          }
-          else if ( this.currentState == EXIT1_IR )
-          { // state 12: Exit1 IR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = PAUSE_IR;
-            }
-            else
-            {
-              this.currentState = UPDATE_IR;
-            }
-          }
-          else if ( this.currentState == PAUSE_IR )
-          { // state 13: Pause IR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = PAUSE_IR;
-            }
-            else
-            {
-              this.currentState = EXIT2_IR;
-            }
-          }
-          else if ( this.currentState == EXIT2_IR )
-          { // state 14: Exit2 IR
-            state = this.currentState.getDisplayText();
-            if ( tmsValue == 0 )
-            {
-              this.currentState = SHIFT_IR;
-            }
-            else
-            {
-              this.currentState = UPDATE_IR;
-            }
-          }
-          else if ( this.currentState == UPDATE_IR )
-          { // state 15: Update IR
-            state = this.currentState.getDisplayText();
-
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tdiIdx, timestamps[startTdiDataIdx],
-                timestamps[endTdiDataIdx], String.format( "0x%x", new BigInteger( tdiData, 2 ) ) ) );
-
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tdoIdx, timestamps[startTdiDataIdx],
-                timestamps[endTdiDataIdx], String.format( "0x%x", new BigInteger( tdoData, 2 ) ) ) );
-
-            aDataSet.reportJTAGTdiData( tdiIdx, startTdiDataIdx, endTdiDataIdx, currentState, tdiData );
-            aDataSet.reportJTAGTdoData( tdoIdx, startTdiDataIdx, endTdiDataIdx, currentState, tdoData );
-
-            if ( tmsValue == 0 )
-            {
-              this.currentState = RUN_TEST_IDLE;
-            }
-            else
-            {
-              this.currentState = SELECT_DR;
-            }
-          }
-          else
+        case CAPTURE_DR:
+        case CAPTURE_IR:
+          tdiData.clear();
+          tdoData.clear();
+          break;
+
+        case SHIFT_DR:
+        case SHIFT_IR:
+          if ( tdiData.isEmpty() )
           {
-            state = "ERROR";
+            startTdiDataIdx = idx;
           }
+          endTdiDataIdx = idx;
+
+          tdiData.shift( ( dataSample & tdiMask ) != 0 );
+          tdoData.shift( ( dataSample & tdoMask ) != 0 );
+          break;
 
-          if ( this.oldState != this.currentState )
+        case UPDATE_DR:
+        case UPDATE_IR:
+          if ( !tdiData.isEmpty() )
           {
-            this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tmsIdx, timestamps[this.startIdx],
-                timestamps[idx], state ) );
+            reportScan( aDataSet, startTdiDataIdx, endTdiDataIdx, currentState, tdiData.toBigInteger(),
+                tdoData.toBigInteger() );
+          }
+          break;
 
-            aDataSet.reportJTAGState( this.tmsIdx, this.startIdx, idx, this.oldState );
+        default:
+          break;
+      }
 
-            this.startIdx = idx + 1;
-            this.oldState = this.currentState;
-          }
+      currentState = currentState.getNextState( ( dataSample & tmsMask ) != 0 );
+
+      if ( oldState != currentState )
+      {
+        this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tmsIdx, timestamps[startIdx],
+            timestamps[idx], oldState.getDisplayText() ) );
+
+        aDataSet.reportJTAGState( this.tmsIdx, startIdx, idx, oldState );
 
-          this.progressListener.setProgress( ( int )( ( ( idx - startOfDecode ) * 100.0 ) / length ) );
+        startIdx = idx + 1;
+        oldState = currentState;
+      }
+
+      final int percentage = ( int )( ( ( i + 1 ) * 100.0 ) / risingEdges.length );
+      if ( percentage != progress )
+      {
+        progress = percentage;
+        this.progressListener.setProgress( percentage );
+      }
+    }
+  }
+
+  /**
+   * Finds all rising edges of the clock line.
+   * 
+   * @param aValues
+   *          the sample values to search;
+   * @param aStartIdx
+   *          the sample index holding the initial clock level;
+   * @param aEndIdx
+   *          the sample index to stop searching at;
+   * @param aTckMask
+   *          the mask of the clock line.
+   * @return the sample indexes of all rising edges, in ascending order, never
+   *         <code>null</code>.
+   */
+  private static int[] findRisingEdges( final int[] aValues, final int aStartIdx, final int aEndIdx,
+      final int aTckMask )
+  {
+    int[] result = new int[1024];
+    int count = 0;
+
+    for ( int idx = aStartIdx + 1; idx < aEndIdx; idx++ )
+    {
+      final int sample = aValues[idx];
+      if ( ( ( ( sample ^ aValues[idx - 1] ) & aTckMask ) != 0 ) && ( ( sample & aTckMask ) != 0 ) )
+      {
+        if ( count == result.length )
+        {
+          result = Arrays.copyOf( result, count + ( count >> 1 ) );
         }
+        result[count++] = idx;
       }
     }
+
+    return Arrays.copyOf( result, count );
+  }
+
+  /**
+   * Reports the data shifted through TDI and TDO during an IR/DR scan.
+   * 
+   * @param aDataSet
+   *          the decoded data to fill;
+   * @param aStartIdx
+   *          the sample index of the first shifted bit;
+   * @param aEndIdx
+   *          the sample index of the last shifted bit;
+   * @param aState
+   *          the update state ending the scan;
+   * @param aTdiData
+   *          the data shifted in through TDI;
+   * @param aTdoData
+   *          the data shifted out through TDO.
+   */
+  private void reportScan( final JTAGDataSet aDataSet, final int aStartIdx, final int aEndIdx,
+      final JTAGState aState, final BigInteger aTdiData, final BigInteger aTdoData )
+  {
+    final long[] timestamps = this.context.getData().getTimestamps();
+
+    this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tdiIdx, timestamps[aStartIdx],
+        timestamps[aEndIdx], String.format( "0x%x", aTdiData ) ) );
+    this.annotationListener.onAnnotation( new SampleDataAnnotation( this.tdoIdx, timestamps[aStartIdx],
+        timestamps[aEndIdx], String.format( "0x%x", aTdoData ) ) );
+
+    aDataSet.reportJTAGTdiData( this.tdiIdx, aStartIdx, aEndIdx, aState, aTdiData );
+    aDataSet.reportJTAGTdoData( this.tdoIdx, aStartIdx, aEndIdx, aState, aTdoData );
   }
 
   /**
@@ -65,18 +65,36 @@ public final class JTAGDataSet extends BaseDataSet<JTAGData>
    * @param aTimeValue
    */
   public void reportJTAGTdiData( final int aChannelIdx, final int aStartIdx, final int aEndIdx, final JTAGState aState, final String aTdiData )
+  {
+    reportJTAGTdiData( aChannelIdx, aStartIdx, aEndIdx, aState, new BigInteger( aTdiData, 2 ) );
+  }
+
+  /**
+   * @param aTimeValue
+   */
+  public void reportJTAGTdiData( final int aChannelIdx, final int aStartIdx, final int aEndIdx,
+      final JTAGState aState, final BigInteger aTdiData )
   {
     final int idx = size();
-    addData( new JTAGData( idx, aChannelIdx, JTAG_TDI, new BigInteger( aTdiData, 2 ), aStartIdx, aEndIdx ) );
+    addData( new JTAGData( idx, aChannelIdx, JTAG_TDI, aTdiData, aStartIdx, aEndIdx ) );
   }
 
   /**
    * @param aTimeValue
    */
   public void reportJTAGTdoData( final int aChannelIdx, final int aStartIdx, final int aEndIdx, final JTAGState aState, final String aTdoData )
+  {
+    reportJTAGTdoData( aChannelIdx, aStartIdx, aEndIdx, aState, new BigInteger( aTdoData, 2 ) );
+  }
+
+  /**
+   * @param aTimeValue
+   */
+  public void reportJTAGTdoData( final int aChannelIdx, final int aStartIdx, final int aEndIdx,
+      final JTAGState aState, final BigInteger aTdoData )
   {
     final int idx = size();
-    addData( new JTAGData( idx, aChannelIdx, JTAG_TDO, new BigInteger( aTdoData, 2 ), aStartIdx, aEndIdx ) );
+    addData( new JTAGData( idx, aChannelIdx, JTAG_TDO, aTdoData, aStartIdx, aEndIdx ) );
   }
 
   /**
@@ -43,6 +43,31 @@ public enum JTAGState
   EXIT2_IR( "Exit 2 IR" ), // State 14
   UPDATE_IR( "Update IR" ); // State 15
 
+  /**
+   * The TAP state transition table: for each state, the ordinal of the next
+   * state when TMS is low, followed by the one when TMS is high.
+   */
+  private static final int[] TRANSITIONS = { //
+      1, 0, // TEST_LOGIC_RESET
+      1, 2, // RUN_TEST_IDLE
+      3, 9, // SELECT_DR
+      4, 5, // CAPTURE_DR
+      4, 5, // SHIFT_DR
+      6, 8, // EXIT1_DR
+      6, 7, // PAUSE_DR
+      4, 8, // EXIT2_DR
+      1, 2, // UPDATE_DR
+      10, 0, // SELECT_IR
+      11, 12, // CAPTURE_IR
+      11, 12, // SHIFT_IR
+      13, 15, // EXIT1_IR
+      13, 14, // PAUSE_IR
+      11, 15, // EXIT2_IR
+      1, 2, // UPDATE_IR
+  };
+
+  private static final JTAGState[] STATES = values();
+
   private final String displayText;
 
   /**
@@ -56,6 +81,18 @@ public enum JTAGState
     this.displayText = aDisplayText;
   }
 
+  /**
+   * Returns the state the TAP controller moves to on a rising TCK edge.
+   * 
+   * @param aTMS
+   *          the value of TMS at the rising TCK edge.
+   * @return the next state, never <code>null</code>.
+   */
+  public JTAGState getNextState( final boolean aTMS )
+  {
+    return STATES[TRANSITIONS[( ordinal() << 1 ) | ( aTMS ? 1 : 0 )]];
+  }
+
   /**
    * Returns the display text of this state.
    * 
@@ -0,0 +1,117 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.jtag;
+
+
+import java.math.*;
+import java.util.*;
+
+
+/**
+ * Accumulates the bits shifted through TDI or TDO during an IR/DR scan. The
+ * first bit shifted is the least significant bit of the resulting value.
+ */
+final class ShiftRegister
+{
+  // VARIABLES
+
+  private long[] words;
+  private int length;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, empty, {@link ShiftRegister} instance.
+   */
+  ShiftRegister()
+  {
+    this.words = new long[1];
+    this.length = 0;
+  }
+
+  // METHODS
+
+  /**
+   * Removes all shifted bits.
+   */
+  void clear()
+  {
+    Arrays.fill( this.words, 0L );
+    this.length = 0;
+  }
+
+  /**
+   * Returns whether any bits are shifted.
+   * 
+   * @return <code>true</code> if no bits are shifted, <code>false</code>
+   *         otherwise.
+   */
+  boolean isEmpty()
+  {
+    return this.length == 0;
+  }
+
+  /**
+   * Shifts a single bit into this register.
+   * 
+   * @param aBit
+   *          the value of the bit to shift.
+   */
+  void shift( final boolean aBit )
+  {
+    final int word = this.length >>> 6;
+    if ( word == this.words.length )
+    {
+      this.words = Arrays.copyOf( this.words, word << 1 );
+    }
+    if ( aBit )
+    {
+      this.words[word] |= ( 1L << ( this.length & 63 ) );
+    }
+    this.length++;
+  }
+
+  /**
+   * Returns the value of all shifted bits.
+   * 
+   * @return the value of this register, never <code>null</code>.
+   */
+  BigInteger toBigInteger()
+  {
+    if ( this.length < 64 )
+    {
+      return BigInteger.valueOf( this.words[0] );
+    }
+
+    // Big-endian, with a leading zero byte to keep the value positive...
+    final int wordCount = ( this.length + 63 ) >>> 6;
+    final byte[] bytes = new byte[( wordCount << 3 ) + 1];
+    for ( int i = 0; i < wordCount; i++ )
+    {
+      final long word = this.words[i];
+      for ( int j = 0; j < 8; j++ )
+      {
+        bytes[bytes.length - 1 - ( i << 3 ) - j] = ( byte )( word >>> ( j << 3 ) );
+      }
+    }
+    return new BigInteger( bytes );
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.jtag;
+
+
+import static nl.lxtreme.ols.tool.jtag.JTAGState.*;
+import static org.junit.Assert.*;
+
+import java.math.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.data.*;
+
+import org.junit.*;
+import org.mockito.*;
+
+
+/**
+ * Test cases for {@link JTAGAnalyserTask}.
+ */
+public class JTAGAnalyserTaskTest
+{
+  // CONSTANTS
+
+  private static final int TCK = 0;
+  private static final int TMS = 1;
+  private static final int TDI = 2;
+  private static final int TDO = 3;
+
+  // VARIABLES
+
+  private List<Integer> clocks;
+
+  // METHODS
+
+  /**
+   * Sets up an empty synthetic capture.
+   */
+  @Before
+  public void setUp()
+  {
+    this.clocks = new ArrayList<Integer>();
+  }
+
+  /**
+   * Tests that an IR scan followed by a DR scan of more than 64 bits are
+   * decoded into the shifted TDI/TDO values, and that all visited TAP states
+   * are reported in order.
+   */
+  @Test
+  public void testDecodeIrAndDrScanOk() throws Exception
+  {
+    final BigInteger irTdi = BigInteger.valueOf( 0x0A );
+    final BigInteger irTdo = BigInteger.valueOf( 0x05 );
+    final BigInteger drTdi = new BigInteger( 70, new Random( 1149L ) ).setBit( 69 );
+    final BigInteger drTdo = new BigInteger( 70, new Random( 1150L ) );
+
+    // Test-Logic-Reset -> Run-Test/Idle -> Select-DR -> Select-IR...
+    clock( false );
+    clock( true );
+    clock( true );
+    // Capture-IR -> Shift-IR...
+    clock( false );
+    clock( false );
+    final int irStart = this.clocks.size();
+    shift( irTdi, irTdo, 4 );
+    final int irEnd = this.clocks.size() - 1;
+    // Exit1-IR -> Update-IR -> Run-Test/Idle...
+    clock( true );
+    clock( false );
+    // Select-DR -> Capture-DR -> Shift-DR...
+    clock( true );
+    clock( false );
+    clock( false );
+    final int drStart = this.clocks.size();
+    shift( drTdi, drTdo, 70 );
+    final int drEnd = this.clocks.size() - 1;
+    // Exit1-DR -> Update-DR -> Run-Test/Idle...
+    clock( true );
+    clock( false );
+
+    final JTAGDataSet dataSet = decode();
+
+    final List<JTAGState> states = new ArrayList<JTAGState>();
+    final List<JTAGData> scans = new ArrayList<JTAGData>();
+    for ( JTAGData data : dataSet.getData() )
+    {
+      if ( data.isTdiData() || data.isTdoData() )
+      {
+        scans.add( data );
+      }
+      else
+      {
+        states.add( ( JTAGState )data.getDataValue() );
+      }
+    }
+
+    assertEquals( Arrays.asList( TEST_LOGIC_RESET, RUN_TEST_IDLE, SELECT_DR, SELECT_IR, CAPTURE_IR, SHIFT_IR,
+        EXIT1_IR, UPDATE_IR, RUN_TEST_IDLE, SELECT_DR, CAPTURE_DR, SHIFT_DR, EXIT1_DR, UPDATE_DR ), states );
+
+    assertEquals( 4, scans.size() );
+    assertScan( scans, JTAGDataSet.JTAG_TDI, TDI, irTdi, irStart, irEnd );
+    assertScan( scans, JTAGDataSet.JTAG_TDO, TDO, irTdo, irStart, irEnd );
+    assertScan( scans, JTAGDataSet.JTAG_TDI, TDI, drTdi, drStart, drEnd );
+    assertScan( scans, JTAGDataSet.JTAG_TDO, TDO, drTdo, drStart, drEnd );
+  }
+
+  /**
+   * Asserts that the given scans contain the given value, shifted between the
+   * rising edges of the given clocks.
+   */
+  private static void assertScan( final List<JTAGData> aScans, final String aName, final int aChannelIdx,
+      final BigInteger aValue, final int aStartClock, final int aEndClock )
+  {
+    for ( JTAGData scan : aScans )
+    {
+      if ( aName.equals( scan.getDataName() ) && aValue.equals( scan.getDataValue() ) )
+      {
+        assertEquals( aChannelIdx, scan.getChannelIdx() );
+        assertEquals( getRisingEdgeIdx( aStartClock ), scan.getStartSampleIndex() );
+        assertEquals( getRisingEdgeIdx( aEndClock ), scan.getEndSampleIndex() );
+        return;
+      }
+    }
+    fail( "No " + aName + " scan of 0x" + aValue.toString( 16 ) + " found in " + aScans );
+  }
+
+  /**
+   * Returns the sample index of the rising TCK edge of the given clock.
+   */
+  private static int getRisingEdgeIdx( final int aClock )
+  {
+    return ( 2 * aClock ) + 1;
+  }
+
+  /**
+   * Adds a single clock with the given TMS value, and TDI/TDO low.
+   */
+  private void clock( final boolean aTMS )
+  {
+    clock( aTMS, false, false );
+  }
+
+  /**
+   * Adds a single clock with the given TMS, TDI and TDO values.
+   */
+  private void clock( final boolean aTMS, final boolean aTDI, final boolean aTDO )
+  {
+    int value = 0;
+    if ( aTMS )
+    {
+      value |= ( 1 << TMS );
+    }
+    if ( aTDI )
+    {
+      value |= ( 1 << TDI );
+    }
+    if ( aTDO )
+    {
+      value |= ( 1 << TDO );
+    }
+    this.clocks.add( Integer.valueOf( value ) );
+  }
+
+  /**
+   * Decodes the synthetic capture, in which each clock consists of a sample
+   * with TCK low, followed by one with TCK high.
+   */
+  private JTAGDataSet decode() throws Exception
+  {
+    final int size = ( 2 * this.clocks.size() ) + 1;
+    final int[] values = new int[size];
+    final long[] timestamps = new long[size];
+    for ( int i = 0; i < this.clocks.size(); i++ )
+    {
+      final int value = this.clocks.get( i ).intValue();
+      values[2 * i] = value;
+      values[( 2 * i ) + 1] = value | ( 1 << TCK );
+    }
+    for ( int i = 0; i < size; i++ )
+    {
+      timestamps[i] = i;
+    }
+
+    final AcquisitionResult data = new CapturedData( values, timestamps, -1L, 1000000, 4, 0x0F, size - 1 );
+    final ToolContext context = DataTestUtils.createToolContext( data, 0, size - 1 );
+
+    final JTAGAnalyserTask task = new JTAGAnalyserTask( context, Mockito.mock( ToolProgressListener.class ),
+        Mockito.mock( AnnotationListener.class ) );
+    task.setTckIndex( TCK );
+    task.setTmsIndex( TMS );
+    task.setTdiIndex( TDI );
+    task.setTdoIndex( TDO );
+
+    return task.call();
+  }
+
+  /**
+   * Adds the clocks of shifting the given TDI and TDO values, least significant
+   * bit first, leaving the shift state on the last bit.
+   */
+  private void shift( final BigInteger aTdi, final BigInteger aTdo, final int aLength )
+  {
+    for ( int i = 0; i < aLength; i++ )
+    {
+      clock( i == ( aLength - 1 ), aTdi.testBit( i ), aTdo.testBit( i ) );
+    }
+  }
+}
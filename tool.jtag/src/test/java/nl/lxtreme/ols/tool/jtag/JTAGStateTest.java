@@ -0,0 +1,95 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.jtag;
+
+
+import static nl.lxtreme.ols.tool.jtag.JTAGState.*;
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link JTAGState}.
+ */
+public class JTAGStateTest
+{
+  // CONSTANTS
+
+  /**
+   * All edges of the TAP controller state diagram of IEEE 1149.1: the current
+   * state, followed by the next state for TMS low and TMS high.
+   */
+  private static final JTAGState[][] EDGES = { //
+      { TEST_LOGIC_RESET, RUN_TEST_IDLE, TEST_LOGIC_RESET }, //
+      { RUN_TEST_IDLE, RUN_TEST_IDLE, SELECT_DR }, //
+      { SELECT_DR, CAPTURE_DR, SELECT_IR }, //
+      { CAPTURE_DR, SHIFT_DR, EXIT1_DR }, //
+      { SHIFT_DR, SHIFT_DR, EXIT1_DR }, //
+      { EXIT1_DR, PAUSE_DR, UPDATE_DR }, //
+      { PAUSE_DR, PAUSE_DR, EXIT2_DR }, //
+      { EXIT2_DR, SHIFT_DR, UPDATE_DR }, //
+      { UPDATE_DR, RUN_TEST_IDLE, SELECT_DR }, //
+      { SELECT_IR, CAPTURE_IR, TEST_LOGIC_RESET }, //
+      { CAPTURE_IR, SHIFT_IR, EXIT1_IR }, //
+      { SHIFT_IR, SHIFT_IR, EXIT1_IR }, //
+      { EXIT1_IR, PAUSE_IR, UPDATE_IR }, //
+      { PAUSE_IR, PAUSE_IR, EXIT2_IR }, //
+      { EXIT2_IR, SHIFT_IR, UPDATE_IR }, //
+      { UPDATE_IR, RUN_TEST_IDLE, SELECT_DR }, //
+  };
+
+  // METHODS
+
+  /**
+   * Tests that each state moves along all edges of the state diagram, for both
+   * values of TMS.
+   */
+  @Test
+  public void testGetNextStateOk()
+  {
+    assertEquals( JTAGState.values().length, EDGES.length );
+
+    for ( JTAGState[] edge : EDGES )
+    {
+      assertEquals( edge[0] + " with TMS low", edge[1], edge[0].getNextState( false ) );
+      assertEquals( edge[0] + " with TMS high", edge[2], edge[0].getNextState( true ) );
+    }
+  }
+
+  /**
+   * Tests that five clocks with TMS high reset the TAP controller from any
+   * state.
+   */
+  @Test
+  public void testTmsHighResetsFromAnyStateOk()
+  {
+    for ( JTAGState state : JTAGState.values() )
+    {
+      JTAGState current = state;
+      for ( int i = 0; i < 5; i++ )
+      {
+        current = current.getNextState( true );
+      }
+      assertEquals( "Reset from " + state, TEST_LOGIC_RESET, current );
+    }
+  }
+}
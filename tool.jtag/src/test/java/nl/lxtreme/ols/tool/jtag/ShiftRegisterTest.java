@@ -0,0 +1,116 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * 
+ * Copyright (C) 2010-2011 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.jtag;
+
+
+import static org.junit.Assert.*;
+
+import java.math.*;
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link ShiftRegister}.
+ */
+public class ShiftRegisterTest
+{
+  // METHODS
+
+  /**
+   * Tests that a cleared register can be reused for a shorter scan.
+   */
+  @Test
+  public void testClearOk()
+  {
+    final ShiftRegister register = new ShiftRegister();
+    assertTrue( register.isEmpty() );
+
+    shiftAll( register, createBits( new Random( 1L ), 130 ) );
+    assertFalse( register.isEmpty() );
+
+    register.clear();
+    assertTrue( register.isEmpty() );
+    assertEquals( BigInteger.ZERO, register.toBigInteger() );
+
+    final String bits = createBits( new Random( 2L ), 7 );
+    shiftAll( register, bits );
+    assertEquals( new BigInteger( bits, 2 ), register.toBigInteger() );
+  }
+
+  /**
+   * Tests that the value of a register equals the shifted bits, first bit as
+   * least significant bit, for scans shorter than, equal to and longer than a
+   * single word.
+   */
+  @Test
+  public void testToBigIntegerOk()
+  {
+    final Random rnd = new Random( 43L );
+    for ( int length : new int[] { 1, 63, 64, 65, 130 } )
+    {
+      // Random bits, and all ones to test the sign handling...
+      for ( String bits : new String[] { createBits( rnd, length ), createOnes( length ) } )
+      {
+        final ShiftRegister register = new ShiftRegister();
+        shiftAll( register, bits );
+
+        assertEquals( length + " bits: " + bits, new BigInteger( bits, 2 ), register.toBigInteger() );
+      }
+    }
+  }
+
+  /**
+   * Creates a string of the given number of random bits.
+   */
+  private static String createBits( final Random aRandom, final int aLength )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < aLength; i++ )
+    {
+      sb.append( aRandom.nextBoolean() ? '1' : '0' );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Creates a string of the given number of one bits.
+   */
+  private static String createOnes( final int aLength )
+  {
+    final char[] ones = new char[aLength];
+    Arrays.fill( ones, '1' );
+    return new String( ones );
+  }
+
+  /**
+   * Shifts the given bits into the given register, starting at the least
+   * significant (= last) bit.
+   */
+  private static void shiftAll( final ShiftRegister aRegister, final String aBits )
+  {
+    for ( int i = aBits.length() - 1; i >= 0; i-- )
+    {
+      aRegister.shift( aBits.charAt( i ) == '1' );
+    }
+  }
+}
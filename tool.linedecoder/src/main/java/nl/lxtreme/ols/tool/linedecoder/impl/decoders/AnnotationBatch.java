@@ -0,0 +1,105 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * Copyright (C) 2006-2010 Michael Poppitz, www.sump.org
+ * Copyright (C) 2010-2012 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.linedecoder.impl.decoders;
+
+
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.tools.*;
+
+
+/**
+ * Collects the annotations of a line decoder and passes them on to the
+ * annotation listener in batches of a fixed size, reporting the progress of
+ * the decoder along with each batch.
+ */
+final class AnnotationBatch
+{
+  // CONSTANTS
+
+  /** The number of annotations collected before they are passed on. */
+  static final int BATCH_SIZE = 256;
+
+  // VARIABLES
+
+  private final AnnotationListener annotationListener;
+  private final ToolProgressListener progressListener;
+  private final Annotation<?>[] annotations;
+
+  private int size;
+  private int progress;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AnnotationBatch} instance.
+   *
+   * @param aAnnotationListener
+   *          the annotation listener to pass the annotations to, cannot be
+   *          <code>null</code>;
+   * @param aProgressListener
+   *          the progress listener to report to, can be <code>null</code>.
+   */
+  AnnotationBatch( final AnnotationListener aAnnotationListener, final ToolProgressListener aProgressListener )
+  {
+    this.annotationListener = aAnnotationListener;
+    this.progressListener = aProgressListener;
+    this.annotations = new Annotation<?>[BATCH_SIZE];
+  }
+
+  // METHODS
+
+  /**
+   * Adds an annotation, passing on the current batch if it is full.
+   *
+   * @param aAnnotation
+   *          the annotation to add, cannot be <code>null</code>;
+   * @param aProgress
+   *          the progress of the decoder, 0..100.
+   */
+  void add( final Annotation<?> aAnnotation, final int aProgress )
+  {
+    this.annotations[this.size++] = aAnnotation;
+    this.progress = aProgress;
+
+    if ( this.size == this.annotations.length )
+    {
+      flush();
+    }
+  }
+
+  /**
+   * Passes on all collected annotations.
+   */
+  void flush()
+  {
+    for ( int i = 0; i < this.size; i++ )
+    {
+      this.annotationListener.onAnnotation( this.annotations[i] );
+      this.annotations[i] = null;
+    }
+    this.size = 0;
+
+    if ( this.progressListener != null )
+    {
+      this.progressListener.setProgress( this.progress );
+    }
+  }
+}
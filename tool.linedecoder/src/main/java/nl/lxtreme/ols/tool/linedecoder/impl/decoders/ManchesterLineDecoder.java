@@ -59,8 +59,17 @@ public class ManchesterLineDecoder implements LineDecoder
 
   /**
    * {@inheritDoc}
+   * <p>
+   * The clock is recovered in a single pass over the transitions of the data
+   * line, by tracking the (half) clock cycle as it is seen between consecutive
+   * transitions. The data is then resampled on this recovered clock, by merging
+   * the clock edges with the original samples into plain arrays.
+   * </p>
+   * 
+   * @throws LineDecoderException
+   *           in case the data line has too few transitions to recover the
+   *           clock from.
    */
-  @SuppressWarnings( "boxing" )
   @Override
   public AcquisitionResult decode( final LineDecoderToolContext aContext, final AnnotationListener aAnnotationListener,
       final ToolProgressListener aListener ) throws Exception
@@ -79,8 +88,15 @@ public class ManchesterLineDecoder implements LineDecoder
     aAnnotationListener.clearAnnotations( dataIdx );
     aAnnotationListener.clearAnnotations( clockIdx );
 
+    final AnnotationBatch annotations = new AnnotationBatch( aAnnotationListener, aListener );
+
     int startIdx = aContext.getStartSampleIndex();
     int endIdx = aContext.getEndSampleIndex();
+    if ( ( endIdx - startIdx ) < 2 )
+    {
+      throw new LineDecoderException( "Not enough transitions found to recover the clock!" );
+    }
+
     int lastValue = values[startIdx] & dataMask;
 
     long symbolStartTime = -1L;
@@ -94,75 +110,80 @@ public class ManchesterLineDecoder implements LineDecoder
     int bitCount = 0;
     int symbol = 0;
 
+    // All lookups of the data value move forward in time...
+    int cursor = startIdx;
+
     for ( int i = startIdx; i < endIdx; i++ )
     {
       int value = values[i] & dataMask;
+      if ( value == lastValue )
+      {
+        continue;
+      }
 
       long clockEdge = -1L;
 
       final Edge edge = Edge.toEdge( lastValue, value );
-      if ( !edge.isNone() )
+      if ( lastTimestamp < 0L )
       {
-        if ( lastTimestamp < 0L )
+        // First rising or falling edge; take its timestamp and do not do
+        // anything yet, we need another edge to fully start the decoding
+        // process...
+        lastTimestamp = timestamps[i];
+        symbolStartTime = lastTimestamp;
+        firstSignalEdge = lastTimestamp;
+      }
+      else
+      {
+        // Either a falling or rising edge; take the time between the former
+        // edge and this edge.
+        long diff = timestamps[i] - lastTimestamp;
+
+        if ( halfCycle < 0L )
         {
-          // First rising or falling edge; take its timestamp and do not do
-          // anything yet, we need another edge to fully start the decoding
-          // process...
-          lastTimestamp = timestamps[i];
-          symbolStartTime = lastTimestamp;
-          firstSignalEdge = lastTimestamp;
+          // Initialization: we've not calculated a half-cycle before, so lets
+          // presume the current difference is an indication for it. We divide
+          // the timestamp by two to ensure we always start with T...
+          halfCycle = edge.isFalling() ? diff / 2 : diff;
+          // Assume an initial value for our jitter coefficient...
+          jitter = diff / 2;
         }
         else
         {
-          // Either a falling or rising edge; take the time between the former
-          // edge and this edge.
-          long diff = timestamps[i] - lastTimestamp;
-
-          if ( halfCycle < 0L )
-          {
-            // Initialization: we've not calculated a half-cycle before, so lets
-            // presume the current difference is an indication for it. We divide
-            // the timestamp by two to ensure we always start with T...
-            halfCycle = edge.isFalling() ? diff / 2 : diff;
-            // Assume an initial value for our jitter coefficient...
-            jitter = diff / 2;
-          }
-          else
+          // The difference should either be T (+/- jitter) or 2*T (+/-
+          // jitter)...
+          if ( ( diff >= ( halfCycle - jitter ) ) && ( diff <= ( halfCycle + jitter ) ) )
           {
-            // The difference should either be T (+/- jitter) or 2*T (+/-
-            // jitter)...
-            if ( ( diff >= ( halfCycle - jitter ) ) && ( diff <= ( halfCycle + jitter ) ) )
-            {
-              halfCycle = diff;
-              jitter = diff / 8;
-
-              // Only the even edges are considered a clock edge...
-              if ( ( edgeCounter % 2 ) == 0 )
-              {
-                clockEdge = timestamps[i];
-              }
-              edgeCounter++;
-            }
-            else if ( ( diff >= ( 2 * ( halfCycle - jitter ) ) ) && ( diff <= ( 2 * ( halfCycle + jitter ) ) ) )
+            halfCycle = diff;
+            jitter = diff / 8;
+
+            // Only the even edges are considered a clock edge...
+            if ( ( edgeCounter % 2 ) == 0 )
             {
-              halfCycle = diff / 2;
-              jitter = diff / 16;
-
-              // The clock edge should have appeared halfCycle before the
-              // current timestamp...
-              clockEdge = timestamps[i] - halfCycle;
-              // We've missed a clock edge, so increase the counter by 2...
-              edgeCounter += 2;
+              clockEdge = timestamps[i];
             }
+            edgeCounter++;
+          }
+          else if ( ( diff >= ( 2 * ( halfCycle - jitter ) ) ) && ( diff <= ( 2 * ( halfCycle + jitter ) ) ) )
+          {
+            halfCycle = diff / 2;
+            jitter = diff / 16;
+
+            // The clock edge should have appeared halfCycle before the
+            // current timestamp...
+            clockEdge = timestamps[i] - halfCycle;
+            // We've missed a clock edge, so increase the counter by 2...
+            edgeCounter += 2;
           }
-
-          lastTimestamp = timestamps[i];
         }
+
+        lastTimestamp = timestamps[i];
       }
 
       if ( clockEdge >= 0L )
       {
-        int sampleValue = getDataValue( aContext, clockEdge );
+        cursor = indexOf( timestamps, cursor, clockEdge );
+        int sampleValue = getDataValue( values, cursor );
 
         symbol <<= 1;
         bitCount++;
@@ -173,7 +194,8 @@ public class ManchesterLineDecoder implements LineDecoder
 
         if ( bitCount == symbolSize )
         {
-          aAnnotationListener.onAnnotation( createAnnotation( dataIdx, symbolStartTime, clockEdge, symbol ) );
+          annotations.add( createAnnotation( dataIdx, symbolStartTime, clockEdge, symbol ),
+              getPercentage( i, startIdx, endIdx ) );
 
           symbol = 0;
           bitCount = 0;
@@ -184,13 +206,19 @@ public class ManchesterLineDecoder implements LineDecoder
       lastValue = value;
     }
 
+    if ( halfCycle <= 0L )
+    {
+      throw new LineDecoderException( "Not enough transitions found to recover the clock!" );
+    }
+
     // No more edges; we need to check whether we've missed the very last bit...
     if ( bitCount < symbolSize )
     {
       lastTimestamp += halfCycle;
       // Since there's no more signal transitions; we simply determine the last
       // bit value and use that for the missing bits...
-      int sampleValue = getDataValue( aContext, lastTimestamp );
+      cursor = indexOf( timestamps, cursor, lastTimestamp );
+      int sampleValue = getDataValue( values, cursor );
       while ( bitCount++ < symbolSize )
       {
         // To determine where the symbol ends...
@@ -203,46 +231,65 @@ public class ManchesterLineDecoder implements LineDecoder
         }
       }
 
-      aAnnotationListener.onAnnotation( createAnnotation( dataIdx, symbolStartTime, lastTimestamp, symbol ) );
+      annotations.add( createAnnotation( dataIdx, symbolStartTime, lastTimestamp, symbol ), 100 );
     }
 
+    annotations.flush();
+
     lastTimestamp += halfCycle;
 
     String format = Unit.Frequency.format( inputData.getSampleRate() / ( 2.0 * halfCycle ) );
     System.out.println( "Clock signal = " + format );
 
-    SortedMap<Long, Integer> newSamples = new TreeMap<Long, Integer>();
-    for ( int i = 0; i < values.length; i++ )
+    // Merge the recovered clock edges with the original samples, in which a
+    // clock edge takes the place of a sample with the same time stamp...
+    final long firstClockEdge = firstSignalEdge + halfCycle;
+    final long clockEdges = Math.max( 0L, ( ( lastTimestamp - firstClockEdge ) + halfCycle - 1L ) / halfCycle );
+    if ( ( clockEdges + values.length ) > Integer.MAX_VALUE )
     {
-      newSamples.put( timestamps[i], values[i] );
+      throw new LineDecoderException( "Recovered clock has too many edges!" );
     }
 
+    final int capacity = ( int )( clockEdges + values.length );
+    int[] newValues = new int[capacity];
+    long[] newTimestamps = new long[capacity];
+    int size = 0;
+
     boolean clockLow = false;
-    for ( long time = firstSignalEdge + halfCycle; time < lastTimestamp; time += halfCycle )
+    long time = firstClockEdge;
+    int i = 0;
+    while ( ( i < values.length ) || ( time < lastTimestamp ) )
     {
-      int sampleValue = getDataValue( aContext, time );
-      if ( clockLow )
+      int sampleValue;
+      if ( ( time < lastTimestamp ) && ( ( i == values.length ) || ( time <= timestamps[i] ) ) )
       {
-        sampleValue &= ~clockMask;
+        // The data value is that of the sample right before the clock edge...
+        sampleValue = getDataValue( values, i );
+        if ( clockLow )
+        {
+          sampleValue &= ~clockMask;
+        }
+        else
+        {
+          sampleValue |= clockMask;
+        }
+        clockLow = !clockLow;
+
+        newTimestamps[size] = time;
+        if ( ( i < values.length ) && ( timestamps[i] == time ) )
+        {
+          i++;
+        }
+        time += halfCycle;
       }
       else
       {
-        sampleValue |= clockMask;
+        sampleValue = values[i];
+        newTimestamps[size] = timestamps[i++];
       }
-      clockLow = !clockLow;
-
-      newSamples.put( time, sampleValue );
-    }
-
-    // 2nd pass: XOR data with clock...
-    for ( Long time : newSamples.keySet() )
-    {
-      int sampleValue = newSamples.get( time );
 
-      int clockValue = sampleValue & clockMask;
-      int dataValue = sampleValue & dataMask;
-
-      if ( ( ( clockValue != 0 ) && ( dataValue == 0 ) ) || ( ( clockValue == 0 ) && ( dataValue != 0 ) ) )
+      // XOR data with clock...
+      if ( ( ( sampleValue & clockMask ) != 0 ) != ( ( sampleValue & dataMask ) != 0 ) )
       {
         sampleValue |= 1;
       }
@@ -250,26 +297,16 @@ public class ManchesterLineDecoder implements LineDecoder
       {
         sampleValue &= 0xFE;
       }
-
-      newSamples.put( time, sampleValue );
+      newValues[size++] = sampleValue;
     }
 
-    List<Integer> newValues = new ArrayList<Integer>();
-    List<Long> newTimestamps = new ArrayList<Long>();
-
-    for ( Map.Entry<Long, Integer> entry : newSamples.entrySet() )
+    if ( size < capacity )
     {
-      newValues.add( entry.getValue() );
-      newTimestamps.add( entry.getKey() );
+      newValues = Arrays.copyOf( newValues, size );
+      newTimestamps = Arrays.copyOf( newTimestamps, size );
     }
 
-    for ( int i = endIdx; i < values.length; i++ )
-    {
-      newValues.add( values[i] );
-      newTimestamps.add( timestamps[i] );
-    }
-
-    long absoluteLength = newTimestamps.get( newTimestamps.size() - 1 );
+    long absoluteLength = newTimestamps[size - 1];
 
     return new CapturedData( newValues, newTimestamps, firstSignalEdge, inputData.getSampleRate(),
         inputData.getChannels(), inputData.getEnabledChannels(), absoluteLength );
@@ -294,26 +331,54 @@ public class ManchesterLineDecoder implements LineDecoder
   }
 
   /**
-   * Returns the data value for the given time stamp.
+   * Returns the data value right before the sample with the given index.
    * 
-   * @param aTimeValue
-   *          the time stamp to return the data value for.
-   * @return the data value of the sample index right before the given time
-   *         value.
+   * @param aValues
+   *          the sample values;
+   * @param aIdx
+   *          the index of the first sample at or after the time to return the
+   *          data value for, as returned by
+   *          {@link #indexOf(long[], int, long)}.
+   * @return the data value of the sample index right before the given index.
    */
-  protected final int getDataValue( final LineDecoderToolContext aContext, final long aTimeValue )
+  private static int getDataValue( final int[] aValues, final int aIdx )
   {
-    final AcquisitionResult inputData = aContext.getData();
-    final int[] values = inputData.getValues();
-    final long[] timestamps = inputData.getTimestamps();
+    return ( ( aIdx == 0 ) ? aValues[0] : aValues[aIdx - 1] );
+  }
 
-    int k = Arrays.binarySearch( timestamps, aTimeValue );
-    if ( k < 0 )
+  /**
+   * Returns the index of the first sample at or after the given time stamp, by
+   * walking from the index of a previous lookup, rather than searching all time
+   * stamps.
+   * 
+   * @param aTimestamps
+   *          the time stamps of all samples;
+   * @param aCursor
+   *          the index of a previous lookup;
+   * @param aTimeValue
+   *          the time stamp to find the sample index for.
+   * @return a sample index, >= 0.
+   */
+  private static int indexOf( final long[] aTimestamps, final int aCursor, final long aTimeValue )
+  {
+    int k = Math.min( aCursor, aTimestamps.length );
+    while ( ( k < aTimestamps.length ) && ( aTimestamps[k] < aTimeValue ) )
+    {
+      k++;
+    }
+    while ( ( k > 0 ) && ( aTimestamps[k - 1] >= aTimeValue ) )
     {
-      k = -( k + 1 );
+      k--;
     }
+    return k;
+  }
 
-    return ( ( k == 0 ) ? values[0] : values[k - 1] );
+  /**
+   * Returns the progress of decoding the given sample index, as percentage.
+   */
+  private static int getPercentage( final int aIdx, final int aStartIdx, final int aEndIdx )
+  {
+    return ( int )( ( ( aIdx - aStartIdx ) * 100.0 ) / Math.max( 1, aEndIdx - aStartIdx ) );
   }
 
   /**
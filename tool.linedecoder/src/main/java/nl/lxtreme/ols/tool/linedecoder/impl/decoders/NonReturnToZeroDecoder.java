@@ -74,6 +74,8 @@ public class NonReturnToZeroDecoder implements LineDecoder
 
     aAnnotationListener.clearAnnotations( dataIdx );
 
+    final AnnotationBatch annotations = new AnnotationBatch( aAnnotationListener, aListener );
+
     int startIdx = aContext.getStartSampleIndex();
     int endIdx = aContext.getEndSampleIndex();
 
@@ -104,8 +106,8 @@ public class NonReturnToZeroDecoder implements LineDecoder
 
         if ( bitCount == symbolSize )
         {
-          aAnnotationListener.onAnnotation( createAnnotation( dataIdx, timestamps[symbolStartIdx], timestamps[i],
-              symbol ) );
+          annotations.add( createAnnotation( dataIdx, timestamps[symbolStartIdx], timestamps[i], symbol ),
+              ( int )( ( ( i - startIdx ) * 100.0 ) / ( endIdx - startIdx ) ) );
 
           symbol = 0;
           bitCount = 0;
@@ -114,6 +116,8 @@ public class NonReturnToZeroDecoder implements LineDecoder
       }
     }
 
+    annotations.flush();
+
     return null;
   }
 
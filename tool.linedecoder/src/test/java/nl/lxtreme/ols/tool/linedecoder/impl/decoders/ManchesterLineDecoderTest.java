@@ -0,0 +1,216 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * Copyright (C) 2006-2010 Michael Poppitz, www.sump.org
+ * Copyright (C) 2010-2012 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.linedecoder.impl.decoders;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.annotation.*;
+import nl.lxtreme.ols.tool.linedecoder.*;
+import nl.lxtreme.ols.tool.linedecoder.impl.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link ManchesterLineDecoder}.
+ */
+public class ManchesterLineDecoderTest
+{
+  // CONSTANTS
+
+  /** The duration of half a bit, in samples. */
+  private static final long HALF_CYCLE = 10L;
+
+  // VARIABLES
+
+  private List<SampleDataAnnotation> annotations;
+  private AnnotationListener annotationListener;
+
+  // METHODS
+
+  /**
+   * Sets up the annotation listener that records all decoded symbols.
+   */
+  @Before
+  public void setUp()
+  {
+    this.annotations = new ArrayList<SampleDataAnnotation>();
+    this.annotationListener = new AnnotationListener()
+    {
+      @Override
+      public void clearAnnotations()
+      {
+        // Nothing to do...
+      }
+
+      @Override
+      public void clearAnnotations( final int aChannelIdx )
+      {
+        // Nothing to do...
+      }
+
+      @Override
+      public void onAnnotation( final Annotation<?> aAnnotation )
+      {
+        ManchesterLineDecoderTest.this.annotations.add( ( SampleDataAnnotation )aAnnotation );
+      }
+    };
+  }
+
+  /**
+   * Tests that a Manchester encoded waveform is decoded into its original
+   * symbols, using the recovered clock.
+   */
+  @Test
+  public void testDecodeKnownWaveformOk() throws Exception
+  {
+    final AcquisitionResult data = createWaveform( 'O', 'L', 'S' );
+
+    decode( data );
+
+    assertEquals( 3, this.annotations.size() );
+    assertAnnotation( "O (4f)", 5L, 165L, this.annotations.get( 0 ) );
+    assertAnnotation( "L (4c)", 165L, 325L, this.annotations.get( 1 ) );
+    // The last symbol is completed using the recovered clock, which places its
+    // end half a cycle after the end of its last bit...
+    assertAnnotation( "S (53)", 325L, 495L, this.annotations.get( 2 ) );
+  }
+
+  /**
+   * Tests that the resampled data contains every original sample exactly once,
+   * merged in time with the recovered clock edges, and ends at its absolute
+   * length.
+   */
+  @Test
+  public void testDecodeResamplesEachSampleOnceOk() throws Exception
+  {
+    final AcquisitionResult data = createWaveform( 'O', 'L', 'S' );
+
+    final AcquisitionResult result = decode( data );
+
+    final long[] timestamps = result.getTimestamps();
+    assertEquals( timestamps.length, result.getValues().length );
+    for ( int i = 1; i < timestamps.length; i++ )
+    {
+      assertTrue( "Timestamps not increasing at " + i, timestamps[i - 1] < timestamps[i] );
+    }
+    for ( long timestamp : data.getTimestamps() )
+    {
+      assertTrue( "Sample " + timestamp + " missing", Arrays.binarySearch( timestamps, timestamp ) >= 0 );
+    }
+    // One clock edge per half cycle, from the first edge of the data line up
+    // to the end of the last symbol...
+    for ( long time = 5L + HALF_CYCLE; time < ( 485L + HALF_CYCLE ); time += HALF_CYCLE )
+    {
+      assertTrue( "Clock edge " + time + " missing", Arrays.binarySearch( timestamps, time ) >= 0 );
+    }
+    assertEquals( timestamps[timestamps.length - 1], result.getAbsoluteLength() );
+  }
+
+  /**
+   * Tests that a capture with too few transitions to recover the clock from
+   * fails with a {@link LineDecoderException}.
+   */
+  @Test
+  public void testDecodeTooFewTransitionsFail() throws Exception
+  {
+    final AcquisitionResult data = new CapturedData( new int[] { 0, 1, 1 }, new long[] { 0L, 5L, 100L }, -1L,
+        1000000, 2, 0x03, 100L );
+
+    try
+    {
+      decode( data );
+      fail( "Expected LineDecoderException!" );
+    }
+    catch ( LineDecoderException exception )
+    {
+      assertEquals( "Not enough transitions found to recover the clock!", exception.getMessage() );
+    }
+    assertTrue( this.annotations.isEmpty() );
+  }
+
+  /**
+   * Asserts that the given annotation has the given text and time range.
+   */
+  private static void assertAnnotation( final String aText, final long aStartTime, final long aEndTime,
+      final SampleDataAnnotation aAnnotation )
+  {
+    assertEquals( 0, aAnnotation.getChannel() );
+    assertEquals( aText, aAnnotation.getAnnotation() );
+    assertEquals( aStartTime, aAnnotation.getStartTimestamp() );
+    assertEquals( aEndTime, aAnnotation.getEndTimestamp() );
+  }
+
+  /**
+   * Creates a waveform on channel 0 that encodes the given symbols, MSB first,
+   * in which a one is encoded as a rising edge halfway the bit, and a zero as a
+   * falling edge. The first bit starts at time stamp 5.
+   */
+  private static AcquisitionResult createWaveform( final int... aSymbols )
+  {
+    final List<Integer> values = new ArrayList<Integer>();
+    final List<Long> timestamps = new ArrayList<Long>();
+
+    values.add( Integer.valueOf( 0 ) );
+    timestamps.add( Long.valueOf( 0L ) );
+
+    int lastLevel = 0;
+    long time = 5L;
+    for ( int symbol : aSymbols )
+    {
+      for ( int bit = 7; bit >= 0; bit-- )
+      {
+        final int firstLevel = ( ( symbol >> bit ) & 1 ) != 0 ? 0 : 1;
+        for ( int level : new int[] { firstLevel, 1 - firstLevel } )
+        {
+          if ( level != lastLevel )
+          {
+            values.add( Integer.valueOf( level ) );
+            timestamps.add( Long.valueOf( time ) );
+            lastLevel = level;
+          }
+          time += HALF_CYCLE;
+        }
+      }
+    }
+
+    return new CapturedData( values, timestamps, -1L, 1000000, 2, 0x03, time );
+  }
+
+  /**
+   * Decodes the data line on channel 0 of the given data.
+   */
+  private AcquisitionResult decode( final AcquisitionResult aData ) throws Exception
+  {
+    final int[] values = aData.getValues();
+    final LineDecoderToolContextImpl context = new LineDecoderToolContextImpl( DataTestUtils.createToolContext(
+        aData, 0, values.length ), new int[] { 0 }, false /* aInverted */, true /* aRecoverClock */, 0 );
+
+    return new ManchesterLineDecoder().decode( context, this.annotationListener, null );
+  }
+}
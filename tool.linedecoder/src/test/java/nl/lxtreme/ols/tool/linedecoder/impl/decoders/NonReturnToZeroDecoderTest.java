@@ -0,0 +1,163 @@
+/*
+ * OpenBench LogicSniffer / SUMP project 
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ * Copyright (C) 2006-2010 Michael Poppitz, www.sump.org
+ * Copyright (C) 2010-2012 J.W. Janssen, www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.linedecoder.impl.decoders;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.annotation.*;
+import nl.lxtreme.ols.tool.linedecoder.impl.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link NonReturnToZeroDecoder}.
+ */
+public class NonReturnToZeroDecoderTest
+{
+  // CONSTANTS
+
+  private static final int DATA_MASK = 0x01;
+  private static final int CLOCK_MASK = 0x02;
+
+  // VARIABLES
+
+  private List<SampleDataAnnotation> annotations;
+  private AnnotationListener annotationListener;
+
+  // METHODS
+
+  /**
+   * Sets up the annotation listener that records all decoded symbols.
+   */
+  @Before
+  public void setUp()
+  {
+    this.annotations = new ArrayList<SampleDataAnnotation>();
+    this.annotationListener = new AnnotationListener()
+    {
+      @Override
+      public void clearAnnotations()
+      {
+        // Nothing to do...
+      }
+
+      @Override
+      public void clearAnnotations( final int aChannelIdx )
+      {
+        // Nothing to do...
+      }
+
+      @Override
+      public void onAnnotation( final Annotation<?> aAnnotation )
+      {
+        NonReturnToZeroDecoderTest.this.annotations.add( ( SampleDataAnnotation )aAnnotation );
+      }
+    };
+  }
+
+  /**
+   * Tests that a clocked waveform is decoded into symbols of eight bits, MSB
+   * first, each spanning the clock pulses of its bits.
+   */
+  @Test
+  public void testDecodeClockedSymbolsOk() throws Exception
+  {
+    final int[] values = new int[33];
+    final long[] timestamps = new long[33];
+
+    int i = 0;
+    for ( int symbol : new int[] { 'O', 'L' } )
+    {
+      for ( int bit = 7; bit >= 0; bit-- )
+      {
+        final int data = ( ( symbol >> bit ) & 1 ) != 0 ? DATA_MASK : 0;
+        // Clock low, followed by clock high...
+        values[i] = data;
+        timestamps[i] = i;
+        i++;
+        values[i] = data | CLOCK_MASK;
+        timestamps[i] = i;
+        i++;
+      }
+    }
+    // The last sample is not decoded...
+    values[i] = 0;
+    timestamps[i] = i;
+
+    decode( values, timestamps );
+
+    assertEquals( 2, this.annotations.size() );
+    assertAnnotation( "O (4f)", 1L, 15L, this.annotations.get( 0 ) );
+    assertAnnotation( "L (4c)", 17L, 31L, this.annotations.get( 1 ) );
+  }
+
+  /**
+   * Tests that the data is sampled on every sample in which the clock is high,
+   * not only on the rising edges of the clock.
+   */
+  @Test
+  public void testDecodeSamplesEveryHighClockSampleOk() throws Exception
+  {
+    // The clock goes high once, and stays high while the data changes...
+    final int[] values = { 0, CLOCK_MASK, CLOCK_MASK | DATA_MASK, CLOCK_MASK, CLOCK_MASK | DATA_MASK, CLOCK_MASK,
+        CLOCK_MASK | DATA_MASK, CLOCK_MASK, CLOCK_MASK | DATA_MASK, 0 };
+    final long[] timestamps = { 0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L };
+
+    decode( values, timestamps );
+
+    assertEquals( 1, this.annotations.size() );
+    assertAnnotation( "U (55)", 1L, 8L, this.annotations.get( 0 ) );
+  }
+
+  /**
+   * Asserts that the given annotation has the given text and time range.
+   */
+  private static void assertAnnotation( final String aText, final long aStartTime, final long aEndTime,
+      final SampleDataAnnotation aAnnotation )
+  {
+    assertEquals( 0, aAnnotation.getChannel() );
+    assertEquals( aText, aAnnotation.getAnnotation() );
+    assertEquals( aStartTime, aAnnotation.getStartTimestamp() );
+    assertEquals( aEndTime, aAnnotation.getEndTimestamp() );
+  }
+
+  /**
+   * Decodes the given samples with the data on channel 0 and the clock on
+   * channel 1.
+   */
+  private void decode( final int[] aValues, final long[] aTimestamps ) throws Exception
+  {
+    final AcquisitionResult data = new CapturedData( aValues, aTimestamps, -1L, 1000000, 2, 0x03,
+        aTimestamps[aTimestamps.length - 1] );
+    final LineDecoderToolContextImpl context = new LineDecoderToolContextImpl( DataTestUtils.createToolContext( data,
+        0, aValues.length - 1 ), new int[] { 0, 1 }, false /* aInverted */, false /* aRecoverClock */, 0 );
+
+    assertNull( new NonReturnToZeroDecoder().decode( context, this.annotationListener, null ) );
+  }
+}
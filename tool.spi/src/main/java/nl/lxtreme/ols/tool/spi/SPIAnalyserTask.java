@@ -21,15 +21,17 @@
 package nl.lxtreme.ols.tool.spi;
 
 
-import static nl.lxtreme.ols.util.NumberUtils.*;
-
 import java.beans.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.Annotation;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.*;
 import nl.lxtreme.ols.tool.base.annotation.*;
 import nl.lxtreme.ols.util.*;
 import nl.lxtreme.ols.util.NumberUtils.BitOrder;
@@ -39,14 +41,445 @@ import nl.lxtreme.ols.util.analysis.*;
 /**
  * Provides a task for analyzing SPI traces.
  */
-public class SPIAnalyserTask implements ToolTask<SPIDataSet>
+public class SPIAnalyserTask implements TransitionDecoderTask<SPIDataSet>
 {
+  // INNER TYPES
+
+  /**
+   * Scans a window of samples for the first edge on which the slave is
+   * selected, which marks the start of an independent frame.
+   */
+  final class SlaveSelectScanner implements Callable<Integer>
+  {
+    // VARIABLES
+
+    private final int fromIdx;
+    private final int toIdx;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link SlaveSelectScanner} instance.
+     * 
+     * @param aFromIdx
+     *          the first sample index to scan, > 0;
+     * @param aToIdx
+     *          the sample index to stop scanning at.
+     */
+    SlaveSelectScanner( final int aFromIdx, final int aToIdx )
+    {
+      this.fromIdx = aFromIdx;
+      this.toIdx = aToIdx;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer call() throws Exception
+    {
+      final int[] values = SPIAnalyserTask.this.context.getData().getValues();
+      final int csMask = ( 1 << SPIAnalyserTask.this.csIdx );
+      final boolean invert = SPIAnalyserTask.this.invertCS;
+
+      int oldCsValue = values[this.fromIdx - 1] & csMask;
+      for ( int idx = this.fromIdx; idx < this.toIdx; idx++ )
+      {
+        final int csValue = values[idx] & csMask;
+        if ( csValue != oldCsValue )
+        {
+          final Edge edge = Edge.toEdge( oldCsValue, csValue );
+          if ( invert ? edge.isRising() : edge.isFalling() )
+          {
+            return Integer.valueOf( idx );
+          }
+          oldCsValue = csValue;
+        }
+      }
+
+      return Integer.valueOf( -1 );
+    }
+  }
+
+  /**
+   * Decodes the SPI datagrams between two slave-select edges, keeping its
+   * decoded data and annotations until they are merged. A frame decoder
+   * assumes it starts at a clean datagram boundary; in case the preceding
+   * frames ended halfway a datagram, the frames are decoded again, continuing
+   * with the state of the preceding decoder.
+   * <p>
+   * The frames are walked by a {@link DecoderEngine}, which only passes the
+   * samples on which the clock or chip-select line changes.
+   * </p>
+   */
+  final class FrameDecoder implements Callable<FrameDecoder>, TransitionDecoder
+  {
+    // VARIABLES
+
+    final int startIdx;
+    final int endIdx;
+    final int previousIdx;
+    final SPIDataSet decodedData;
+    final List<Annotation<?>> annotations;
+
+    private final SPIMode mode;
+
+    private int oldSckValue;
+    private int oldCsValue;
+    private boolean slaveSelected;
+    private int dataStartIdx;
+    private int bitIdx;
+    private int clockEdgeIdx;
+    private int misovalue;
+    private int mosivalue;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link FrameDecoder} instance that starts decoding afresh.
+     * 
+     * @param aStartIdx
+     *          the first sample index to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding at;
+     * @param aPreviousIdx
+     *          the sample index holding the line levels before the first
+     *          sample;
+     * @param aMode
+     *          the SPI mode to use, cannot be <code>null</code>.
+     */
+    FrameDecoder( final int aStartIdx, final int aEndIdx, final int aPreviousIdx, final SPIMode aMode )
+    {
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+      this.previousIdx = aPreviousIdx;
+      this.decodedData = new SPIDataSet( aStartIdx, aEndIdx, SPIAnalyserTask.this.context.getData() );
+      this.annotations = new ArrayList<Annotation<?>>();
+      this.mode = aMode;
+
+      final int value = SPIAnalyserTask.this.context.getData().getValues()[aPreviousIdx];
+
+      this.oldSckValue = value & ( 1 << SPIAnalyserTask.this.sckIdx );
+      this.oldCsValue = value & ( 1 << SPIAnalyserTask.this.csIdx );
+      this.slaveSelected = true;
+      this.dataStartIdx = aPreviousIdx;
+      this.bitIdx = SPIAnalyserTask.this.bitCount;
+      this.clockEdgeIdx = 0;
+      this.misovalue = 0;
+      this.mosivalue = 0;
+    }
+
+    /**
+     * Creates a new {@link FrameDecoder} instance that continues decoding with
+     * the state in which the given decoder ended.
+     * 
+     * @param aStartIdx
+     *          the first sample index to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding at;
+     * @param aPrevious
+     *          the decoder of the preceding frames, cannot be <code>null</code>.
+     */
+    FrameDecoder( final int aStartIdx, final int aEndIdx, final FrameDecoder aPrevious )
+    {
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+      this.previousIdx = aStartIdx - 1;
+      this.decodedData = new SPIDataSet( aStartIdx, aEndIdx, SPIAnalyserTask.this.context.getData() );
+      this.annotations = new ArrayList<Annotation<?>>();
+      this.mode = aPrevious.mode;
+
+      this.oldSckValue = aPrevious.oldSckValue;
+      this.oldCsValue = aPrevious.oldCsValue;
+      this.slaveSelected = aPrevious.slaveSelected;
+      this.dataStartIdx = aPrevious.dataStartIdx;
+      this.bitIdx = aPrevious.bitIdx;
+      this.clockEdgeIdx = aPrevious.clockEdgeIdx;
+      this.misovalue = aPrevious.misovalue;
+      this.mosivalue = aPrevious.mosivalue;
+    }
+
+    // METHODS
+
+    /**
+     * Decodes all samples of this range of frames. Samples on which neither the
+     * clock nor the chip-select line change, are skipped.
+     * 
+     * @return this decoder, never <code>null</code>.
+     */
+    @Override
+    public FrameDecoder call() throws Exception
+    {
+      final DecoderEngine engine = new DecoderEngine();
+      engine.addDecoder( this );
+      // The first sample only provides the line levels before this range...
+      engine.decode( SPIAnalyserTask.this.context.getData(), this.previousIdx, this.endIdx, null );
+      return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannelMask()
+    {
+      return ( 1 << SPIAnalyserTask.this.sckIdx ) | ( 1 << SPIAnalyserTask.this.csIdx );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEnd( final int aSampleIdx, final long aTimestamp )
+    {
+      // Nop; a datagram that is halfway is continued by the next frames...
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart( final int aSampleIdx, final long aTimestamp, final int aValue )
+    {
+      // Nop; the initial state is set upon construction...
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTransition( final int aSampleIdx, final long aTimestamp, final int aOldValue, final int aNewValue )
+    {
+      final SPIAnalyserTask task = SPIAnalyserTask.this;
+
+      final int mosiMask = ( 1 << task.mosiIdx ); // IO0
+      final int misoMask = ( 1 << task.misoIdx ); // IO1
+      final int io2Mask = ( 1 << task.io2Idx );
+      final int io3Mask = ( 1 << task.io3Idx );
+      final int sckMask = ( 1 << task.sckIdx );
+      final int csMask = ( 1 << task.csIdx );
+
+      final SPIDataSet dataSet = this.decodedData;
+      final int clockEdgeCount = ( task.bitCount + 1 ) * 2;
+
+      /* CLK edge detection */
+      final int sckValue = ( aNewValue & sckMask );
+      /* CS edge detection */
+      final int csValue = ( aNewValue & csMask );
+
+      final Edge slaveSelectEdge = Edge.toEdge( this.oldCsValue, csValue );
+      this.oldCsValue = csValue;
+
+      if ( slaveSelectEdge.isFalling() )
+      {
+        reportCsLow( dataSet, aSampleIdx );
+
+        this.slaveSelected = !task.invertCS;
+      }
+      else if ( slaveSelectEdge.isRising() )
+      {
+        reportCsHigh( dataSet, aSampleIdx );
+
+        this.slaveSelected = task.invertCS;
+        // it could be that we're waiting until a next clock cycle comes
+        // along; however, the /CS signal might be going up before that cycle
+        // actually comes...
+        if ( this.bitIdx <= 0 )
+        {
+          // Full datagram decoded...
+          reportData( dataSet, this.annotations, this.dataStartIdx, aSampleIdx, this.mosivalue, this.misovalue );
+
+          this.bitIdx = task.bitCount;
+          this.misovalue = 0;
+          this.mosivalue = 0;
+        }
+      }
+
+      if ( task.honourCS && !this.slaveSelected )
+      {
+        // We should honour the slave-select, but the slave isn't
+        // currently selected...
+        return;
+      }
+
+      final Edge clockEdge = Edge.toEdge( this.oldSckValue, sckValue );
+      this.oldSckValue = sckValue;
+
+      final boolean sampleEdgeSeen;
+      if ( clockEdge.isRising() || clockEdge.isFalling() )
+      {
+        this.clockEdgeIdx = ( this.clockEdgeIdx + 1 ) % clockEdgeCount;
+        // When CPHA is '1', we should sample at the even numbered clock
+        // edges, when CPHA is '0' we should sample at the odd numbered clock
+        // edges...
+        sampleEdgeSeen = ( ( this.clockEdgeIdx + this.mode.getCPHA() ) % 2 ) != 0;
+
+        // First clock edge we've seen? If so, we should keep this index as
+        // our start of data index...
+        if ( sampleEdgeSeen && ( this.bitIdx == task.bitCount ) )
+        {
+          this.dataStartIdx = aSampleIdx;
+        }
+
+        if ( LOG.isLoggable( Level.FINE ) )
+        {
+          LOG.log( Level.FINE, "Clock edge: {0}, aSampleIdx: {1}, sample? {2}", //
+              new Object[] { clockEdge, Integer.valueOf( this.clockEdgeIdx ), Boolean.valueOf( sampleEdgeSeen ) } );
+        }
+      }
+      else
+      {
+        // Only actual clock edges should be taken into account...
+        sampleEdgeSeen = false;
+      }
+
+      if ( sampleEdgeSeen )
+      {
+        if ( SPIFIMode.STANDARD.equals( task.protocol ) )
+        {
+          // sample MiSo here; always MSB first, perform conversion later
+          // on...
+          if ( ( task.misoIdx >= 0 ) && ( ( aNewValue & misoMask ) != 0 ) )
+          {
+            this.misovalue |= ( 1 << this.bitIdx );
+          }
+          // sample MoSi here; always MSB first, perform conversion later
+          // on...
+          if ( ( task.mosiIdx >= 0 ) && ( ( aNewValue & mosiMask ) != 0 ) )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+
+          if ( this.bitIdx >= 0 )
+          {
+            this.bitIdx--;
+          }
+        }
+        else if ( SPIFIMode.DUAL.equals( task.protocol ) )
+        {
+          // Sample both MOSI/IO0 & MISO/IO1 here; they form two bits of our
+          // symbol; we do MSB first, as the decoded symbol will be corrected
+          // later on...
+          if ( ( aNewValue & misoMask ) != 0 )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+          this.bitIdx--;
+          if ( ( aNewValue & mosiMask ) != 0 )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+          this.bitIdx--;
+        }
+        else if ( SPIFIMode.QUAD.equals( task.protocol ) )
+        {
+          // Sample both MOSI/IO0, MISO/IO1, IO2 & IO3 here; they form four
+          // bits of our symbol; we do MSB first, as the decoded symbol will
+          // be corrected later on...
+          if ( ( aNewValue & io3Mask ) != 0 )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+          this.bitIdx--;
+          if ( ( aNewValue & io2Mask ) != 0 )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+          this.bitIdx--;
+          if ( ( aNewValue & misoMask ) != 0 )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+          this.bitIdx--;
+          if ( ( aNewValue & mosiMask ) != 0 )
+          {
+            this.mosivalue |= ( 1 << this.bitIdx );
+          }
+          this.bitIdx--;
+        }
+
+        if ( this.bitIdx < 0 )
+        {
+          // Full datagram decoded...
+          reportData( dataSet, this.annotations, this.dataStartIdx, aSampleIdx, this.mosivalue, this.misovalue );
+
+          this.bitIdx = task.bitCount;
+          this.misovalue = 0;
+          this.mosivalue = 0;
+        }
+      }
+    }
+
+    /**
+     * Returns whether this decoder ended in the state in which a decoder
+     * starting at the given sample index starts, that is, no datagram is
+     * halfway and the clock phase and level are the same.
+     * 
+     * @param aSampleIdx
+     *          the sample index at which the next decoder starts, > 0.
+     * @return <code>true</code> if the next decoder can decode afresh,
+     *         <code>false</code> if it should decode using the state of this
+     *         decoder.
+     */
+    boolean endsCleanlyAt( final int aSampleIdx )
+    {
+      final int sckMask = ( 1 << SPIAnalyserTask.this.sckIdx );
+      final int sckValue = SPIAnalyserTask.this.context.getData().getValues()[aSampleIdx - 1] & sckMask;
+
+      return ( this.bitIdx == SPIAnalyserTask.this.bitCount ) && ( this.misovalue == 0 ) && ( this.mosivalue == 0 )
+          && ( ( this.clockEdgeIdx % 2 ) == 0 ) && ( this.oldSckValue == sckValue );
+    }
+
+    /**
+     * Returns whether the state in which the given decoder ended equals the
+     * state in which this decoder started.
+     * 
+     * @param aPrevious
+     *          the decoder of the preceding frames, cannot be <code>null</code>.
+     * @return <code>true</code> if the results of this decoder are valid,
+     *         <code>false</code> if this decoder should decode again using the
+     *         state of the given decoder.
+     */
+    boolean isIndependentOf( final FrameDecoder aPrevious )
+    {
+      return aPrevious.endsCleanlyAt( this.startIdx );
+    }
+
+    /**
+     * Returns whether this decoder ended in the state in which a decoder
+     * starting at the given sample index starts, when that sample index is not
+     * necessarily an edge on which the slave is selected.
+     * 
+     * @param aSampleIdx
+     *          the sample index at which the next decoder starts, > 0.
+     * @return <code>true</code> if the next decoder can decode afresh,
+     *         <code>false</code> otherwise.
+     */
+    boolean endsAt( final int aSampleIdx )
+    {
+      // A new decoder assumes the slave is selected, which only holds when the
+      // slave is either selected already, or selected at the given sample...
+      return endsCleanlyAt( aSampleIdx ) && ( this.slaveSelected || isSlaveSelectEdge( aSampleIdx ) );
+    }
+  }
+
   // CONSTANTS
 
   private static final Logger LOG = Logger.getLogger( SPIAnalyserTask.class.getName() );
 
   public static final String PROPERTY_AUTO_DETECT_MODE = "AutoDetectSPIMode";
 
+  /**
+   * The maximum number of samples used to detect the SPI mode; on larger
+   * captures, the mode is estimated from the first samples only.
+   */
+  static final int MODE_DETECTION_LIMIT = 1000000;
+
+  /** The default number of samples in each range of frames that is decoded. */
+  static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
   // VARIABLES
 
   private final ToolContext context;
@@ -67,6 +500,11 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
   private int misoIdx;
   private int io2Idx;
   private int io3Idx;
+  private int chunkSize;
+  private int slaveSelectedIdx;
+  private SPIDataSet decodedData;
+  private FrameDecoder frameDecoder;
+  private IncrementalDecoding<FrameDecoder> incrementalDecoding;
 
   // CONSTRUCTORS
 
@@ -89,6 +527,7 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
     this.mosiIdx = -1;
     this.protocol = SPIFIMode.STANDARD;
     this.invertCS = false; // high-to-low
+    this.chunkSize = DEFAULT_CHUNK_SIZE;
   }
 
   // METHODS
@@ -115,48 +554,44 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
   @Override
   public SPIDataSet call() throws Exception
   {
-    if ( LOG.isLoggable( Level.FINE ) )
-    {
-      LOG.fine( "csmask   = 0x" + Integer.toHexString( 1 << this.csIdx ) );
-      LOG.fine( "sckmask  = 0x" + Integer.toHexString( 1 << this.sckIdx ) );
-      LOG.fine( "misomask = 0x" + Integer.toHexString( 1 << this.misoIdx ) );
-      LOG.fine( "mosimask = 0x" + Integer.toHexString( 1 << this.mosiIdx ) );
-    }
-
-    final int startOfDecode = this.context.getStartSampleIndex();
-    final int endOfDecode = this.context.getEndSampleIndex();
-    final int slaveSelected = slaveSelected( startOfDecode, endOfDecode );
+    final SPIDataSet decodedData = prepareDecodedData();
 
-    if ( ( this.honourCS && ( slaveSelected < 0 ) ) || ( startOfDecode >= endOfDecode ) )
-    {
-      // no CS edge found, look for trigger
-      LOG.log( Level.WARNING, "No CS start-condition found! Analysis aborted..." );
-      throw new IllegalStateException( "No CS start-condition found!" );
-    }
+    // Perform the actual decoding of the data line(s)...
+    clockDataOnEdge( decodedData, this.spiMode, this.slaveSelectedIdx );
 
-    // Initialize the channel labels + clear any existing annotations...
-    prepareResults();
+    return decodedData;
+  }
 
-    if ( ( this.spiMode == null ) || ( this.spiMode == SPIMode.AUTODETECT ) )
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SPIDataSet completeDecoding()
+  {
+    this.decodedData.merge( this.frameDecoder.decodedData );
+    for ( Annotation<?> annotation : this.frameDecoder.annotations )
     {
-      LOG.log( Level.INFO, "Detecting which SPI mode is most probably used..." );
-      this.spiMode = detectSPIMode( startOfDecode, endOfDecode );
+      this.annotationListener.onAnnotation( annotation );
     }
+    return this.decodedData;
+  }
 
-    // Notify any listeners of the detected mode...
-    this.pcs.firePropertyChange( PROPERTY_AUTO_DETECT_MODE, null, this.spiMode );
-
-    final SPIDataSet decodedData = new SPIDataSet( startOfDecode, endOfDecode, this.context.getData() );
-    if ( slaveSelected >= 0 )
-    {
-      // now the trigger is in b, add trigger event to table
-      reportCsLow( decodedData, slaveSelected );
-    }
+  /**
+   * Prepares the decoding, and adds a single frame decoder for all data to the
+   * given engine; as the engine walks over all data anyway, the frames are
+   * not split at the slave-select edges.
+   */
+  @Override
+  public void prepareDecoding( final DecoderEngine aEngine ) throws Exception
+  {
+    this.decodedData = prepareDecodedData();
 
-    // Perform the actual decoding of the data line(s)...
-    clockDataOnEdge( decodedData, this.spiMode, slaveSelected );
+    final int startOfDecode = Math.max( this.slaveSelectedIdx, this.decodedData.getStartOfDecode() );
+    final int endOfDecode = this.decodedData.getEndOfDecode();
 
-    return decodedData;
+    this.frameDecoder = new FrameDecoder( startOfDecode + 1, endOfDecode, startOfDecode, this.spiMode );
+    // The first sample only provides the line levels before the frames...
+    aEngine.addDecoder( this.frameDecoder, startOfDecode, endOfDecode );
   }
 
   /**
@@ -192,6 +627,22 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
     this.csIdx = aCsIndex;
   }
 
+  /**
+   * Sets the number of samples in each range of frames that is decoded
+   * concurrently.
+   * 
+   * @param aChunkSize
+   *          the chunk size to set, > 0.
+   */
+  final void setChunkSize( final int aChunkSize )
+  {
+    if ( aChunkSize < 1 )
+    {
+      throw new IllegalArgumentException( "Chunk size must be at least one!" );
+    }
+    this.chunkSize = aChunkSize;
+  }
+
   /**
    * Sets whether or not chip-select should be honoured in the analysis.
    * 
@@ -204,6 +655,19 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
     this.honourCS = aHonourCS;
   }
 
+  /**
+   * Sets the incremental decoding to use, allowing the frames decoded by a
+   * previous task to be reused.
+   * 
+   * @param aIncrementalDecoding
+   *          the incremental decoding to use, can be <code>null</code> to
+   *          always decode all frames.
+   */
+  final void setIncrementalDecoding( final IncrementalDecoding<FrameDecoder> aIncrementalDecoding )
+  {
+    this.incrementalDecoding = aIncrementalDecoding;
+  }
+
   /**
    * Sets whether CS is default high, or default low.
    * 
@@ -319,6 +783,10 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
 
   /**
    * Decodes the SPI-data on a given clock edge.
+   * <p>
+   * The frames of the previous run are reused where possible, see
+   * {@link #decodeFrames(SPIMode, int, int, IncrementalDecoder.Callback)}.
+   * </p>
    * 
    * @param aDataSet
    *          the decoded data to fill;
@@ -327,181 +795,125 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
    *          on which edges data can change.
    */
   private void clockDataOnEdge( final SPIDataSet aDataSet, final SPIMode aMode, final int aSlaveSelectedIdx )
+      throws Exception
   {
-    final AcquisitionResult data = this.context.getData();
-
-    final int[] values = data.getValues();
-
     final int startOfDecode = Math.max( aSlaveSelectedIdx, aDataSet.getStartOfDecode() );
     final int endOfDecode = aDataSet.getEndOfDecode();
 
-    final int mosiMask = ( 1 << this.mosiIdx ); // IO0
-    final int misoMask = ( 1 << this.misoIdx ); // IO1
-    final int io2Mask = ( 1 << this.io2Idx );
-    final int io3Mask = ( 1 << this.io3Idx );
-    final int sckMask = ( 1 << this.sckIdx );
-    final int csMask = ( 1 << this.csIdx );
-
-    // scanning for falling/rising clk edges
-    int oldSckValue = ( values[startOfDecode] & sckMask );
-    int oldCsValue = ( values[startOfDecode] & csMask );
-
-    boolean slaveSelected = true;
-    int dataStartIdx = startOfDecode;
-
-    int bitIdx = this.bitCount;
-
-    final int clockEdgeCount = ( this.bitCount + 1 ) * 2;
-    int clockEdgeIdx = 0;
-
-    int misovalue = 0;
-    int mosivalue = 0;
-
-    for ( int idx = startOfDecode + 1; idx < endOfDecode; idx++ )
+    final IncrementalDecoder<FrameDecoder> decoder = new IncrementalDecoder<FrameDecoder>()
     {
-      final int dataSample = values[idx];
-      /* CLK edge detection */
-      final int sckValue = ( dataSample & sckMask );
-      /* CS edge detection */
-      final int csValue = ( dataSample & csMask );
-
-      final Edge slaveSelectEdge = Edge.toEdge( oldCsValue, csValue );
-      oldCsValue = csValue;
-
-      if ( slaveSelectEdge.isFalling() )
+      @Override
+      public void decode( final int aStartIdx, final int aEndIdx, final Callback<FrameDecoder> aCallback )
+          throws Exception
       {
-        reportCsLow( aDataSet, idx );
-
-        slaveSelected = !this.invertCS;
+        decodeFrames( aMode, aStartIdx, aEndIdx, aCallback );
       }
-      else if ( slaveSelectEdge.isRising() )
-      {
-        reportCsHigh( aDataSet, idx );
+    };
 
-        slaveSelected = this.invertCS;
-        // it could be that we're waiting until a next clock cycle comes along;
-        // however, the /CS signal might be going up before that cycle actually
-        // comes...
-        if ( bitIdx <= 0 )
-        {
-          // Full datagram decoded...
-          reportData( aDataSet, dataStartIdx, idx, mosivalue, misovalue );
+    IncrementalDecoding<FrameDecoder> decoding = this.incrementalDecoding;
+    if ( decoding == null )
+    {
+      decoding = new IncrementalDecoding<FrameDecoder>();
+    }
 
-          bitIdx = this.bitCount;
-          misovalue = 0;
-          mosivalue = 0;
-        }
-      }
+    // The line levels before the first frame are those at the start of the
+    // decoding...
+    final List<FrameDecoder> frames = decoding.decode( decoder, this.context.getData(), getSettings( aMode ),
+        startOfDecode + 1, endOfDecode );
 
-      if ( this.honourCS && !slaveSelected )
+    for ( FrameDecoder frame : frames )
+    {
+      aDataSet.merge( frame.decodedData );
+      for ( Annotation<?> annotation : frame.annotations )
       {
-        // We should honour the slave-select, but the slave isn't
-        // currently selected...
-        continue;
+        this.annotationListener.onAnnotation( annotation );
       }
+    }
+  }
 
-      final Edge clockEdge = Edge.toEdge( oldSckValue, sckValue );
-      oldSckValue = sckValue;
+  /**
+   * Decodes the frames in the given range.
+   * <p>
+   * The decoding is done in two phases: first, the edges on which the slave
+   * is selected are indexed by scanning windows of the data concurrently.
+   * Then, the frames between these edges are decoded concurrently. The edges
+   * at which the preceding frames ended cleanly are reported as checkpoints,
+   * as the frames following them do not depend on any earlier sample. The
+   * same goes for the end of the range.
+   * </p>
+   * 
+   * @param aMode
+   *          the SPI mode to use;
+   * @param aStartIdx
+   *          the first sample index to decode, > 0;
+   * @param aEndIdx
+   *          the sample index to stop decoding at;
+   * @param aCallback
+   *          the callback to report the decoded frames to.
+   */
+  private void decodeFrames( final SPIMode aMode, final int aStartIdx, final int aEndIdx,
+      final IncrementalDecoder.Callback<FrameDecoder> aCallback ) throws Exception
+  {
+    // Phase one: index the slave-select edges in all but the first window...
+    final int[] windows = ParallelDecoding.split( aStartIdx - 1, aEndIdx, this.chunkSize );
 
-      final boolean sampleEdgeSeen;
-      if ( clockEdge.isRising() || clockEdge.isFalling() )
-      {
-        clockEdgeIdx = ( clockEdgeIdx + 1 ) % clockEdgeCount;
-        // When CPHA is '1', we should sample at the even numbered clock edges,
-        // when CPHA is '0' we should sample at the odd numbered clock edges...
-        sampleEdgeSeen = ( ( clockEdgeIdx + aMode.getCPHA() ) % 2 ) != 0;
-
-        // First clock edge we've seen? If so, we should keep this index as our
-        // start of data index...
-        if ( sampleEdgeSeen && ( bitIdx == this.bitCount ) )
-        {
-          dataStartIdx = idx;
-        }
+    final List<SlaveSelectScanner> scanners = new ArrayList<SlaveSelectScanner>();
+    for ( int i = 1; i < ( windows.length - 1 ); i++ )
+    {
+      scanners.add( new SlaveSelectScanner( windows[i], windows[i + 1] ) );
+    }
 
-        LOG.log( Level.FINE, "Clock edge: {0}, idx: {1}, sample? {2}", //
-            new Object[] { clockEdge, Integer.valueOf( clockEdgeIdx ), Boolean.valueOf( sampleEdgeSeen ) } );
-      }
-      else
+    // The line levels before the first frame are those of the preceding
+    // sample; all other frames start with the slave being selected...
+    final List<FrameDecoder> decoders = new ArrayList<FrameDecoder>();
+
+    int frameStart = aStartIdx;
+    int previousIdx = aStartIdx - 1;
+    for ( Integer scan : ParallelDecoding.invokeAll( scanners ) )
+    {
+      final int boundary = scan.intValue();
+      if ( boundary > frameStart )
       {
-        // Only actual clock edges should be taken into account...
-        sampleEdgeSeen = false;
+        decoders.add( new FrameDecoder( frameStart, boundary, previousIdx, aMode ) );
+        frameStart = boundary;
+        previousIdx = boundary - 1;
       }
+    }
+    decoders.add( new FrameDecoder( frameStart, aEndIdx, previousIdx, aMode ) );
 
-      if ( sampleEdgeSeen )
+    // Phase two: decode all frames, and report them in order...
+    final List<Future<FrameDecoder>> results = ParallelDecoding.submitAll( decoders );
+    try
+    {
+      FrameDecoder previous = null;
+      for ( int i = 0; i < results.size(); i++ )
       {
-        if ( SPIFIMode.STANDARD.equals( this.protocol ) )
-        {
-          // sample MiSo here; always MSB first, perform conversion later on...
-          if ( ( this.misoIdx >= 0 ) && ( ( dataSample & misoMask ) != 0 ) )
-          {
-            misovalue |= ( 1 << bitIdx );
-          }
-          // sample MoSi here; always MSB first, perform conversion later on...
-          if ( ( this.mosiIdx >= 0 ) && ( ( dataSample & mosiMask ) != 0 ) )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-
-          if ( bitIdx >= 0 )
-          {
-            bitIdx--;
-          }
-        }
-        else if ( SPIFIMode.DUAL.equals( this.protocol ) )
+        FrameDecoder frame = ParallelDecoding.getResult( results.get( i ) );
+        if ( ( previous != null ) && !frame.isIndependentOf( previous ) )
         {
-          // Sample both MOSI/IO0 & MISO/IO1 here; they form two bits of our
-          // symbol; we do MSB first, as the decoded symbol will be corrected
-          // later on...
-          if ( ( dataSample & misoMask ) != 0 )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-          bitIdx--;
-          if ( ( dataSample & mosiMask ) != 0 )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-          bitIdx--;
+          // The previous frames did not end cleanly, so these frames should be
+          // decoded again, continuing with the state of the previous frames...
+          frame = new FrameDecoder( frame.startIdx, frame.endIdx, previous ).call();
         }
-        else if ( SPIFIMode.QUAD.equals( this.protocol ) )
+        else if ( previous != null )
         {
-          // Sample both MOSI/IO0, MISO/IO1, IO2 & IO3 here; they form four bits
-          // of our symbol; we do MSB first, as the decoded symbol will be
-          // corrected later on...
-          if ( ( dataSample & io3Mask ) != 0 )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-          bitIdx--;
-          if ( ( dataSample & io2Mask ) != 0 )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-          bitIdx--;
-          if ( ( dataSample & misoMask ) != 0 )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-          bitIdx--;
-          if ( ( dataSample & mosiMask ) != 0 )
-          {
-            mosivalue |= ( 1 << bitIdx );
-          }
-          bitIdx--;
+          aCallback.onCheckpoint( frame.startIdx );
         }
+        aCallback.onItem( frame );
 
-        if ( bitIdx < 0 )
-        {
-          // Full datagram decoded...
-          reportData( aDataSet, dataStartIdx, idx, mosivalue, misovalue );
-
-          bitIdx = this.bitCount;
-          misovalue = 0;
-          mosivalue = 0;
-        }
+        this.progressListener.setProgress( ( int )( ( ( i + 1 ) * 100.0 ) / results.size() ) );
+        previous = frame;
       }
 
-      this.progressListener.setProgress( getPercentage( idx, startOfDecode, endOfDecode ) );
+      if ( ( previous != null ) && ( aEndIdx < this.context.getData().getValues().length )
+          && previous.endsAt( aEndIdx ) )
+      {
+        aCallback.onCheckpoint( aEndIdx );
+      }
+    }
+    finally
+    {
+      ParallelDecoding.cancelAll( results );
     }
   }
 
@@ -524,24 +936,24 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
   private SPIMode detectSPIMode( final int aStartIndex, final int aEndIndex )
   {
     final AcquisitionResult data = this.context.getData();
-    final Frequency<Integer> valueStats = new Frequency<Integer>();
+    final Histogram valueStats = new Histogram( MODE_DETECTION_LIMIT );
 
     final int[] values = data.getValues();
     final int sckMask = 1 << this.sckIdx;
 
     // Determine the value of the clock line of each sample; the value that
     // occurs the most is probably the default polarity...
-    for ( int i = aStartIndex; i < aEndIndex; i++ )
+    for ( int i = aStartIndex; ( i < aEndIndex ) && !valueStats.isSaturated(); i++ )
     {
       final int newValue = ( values[i] & sckMask ) >> this.sckIdx;
-      valueStats.addValue( Integer.valueOf( newValue ) );
+      valueStats.addValue( newValue );
     }
 
     SPIMode result;
 
     // If the clock line's most occurring value is one, then
     // we're fairly sure that CPOL == 1...
-    if ( valueStats.getHighestRanked().intValue() == 1 )
+    if ( !valueStats.isEmpty() && ( valueStats.getHighestRanked() == 1L ) )
     {
       LOG.log( Level.INFO, "SPI mode is probably mode 2 or 3 (CPOL == 1). Assuming mode 2 ..." );
       result = SPIMode.MODE_2;
@@ -555,6 +967,89 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
     return result;
   }
 
+  /**
+   * Returns the settings that determine the outcome of decoding the frames,
+   * used to determine whether the frames of a previous run can be reused.
+   * 
+   * @param aMode
+   *          the SPI mode used for decoding.
+   * @return the settings, never <code>null</code>.
+   */
+  private Object getSettings( final SPIMode aMode )
+  {
+    return Arrays.<Object> asList( Integer.valueOf( this.csIdx ), Integer.valueOf( this.sckIdx ), this.protocol,
+        aMode, Integer.valueOf( this.bitCount ), this.bitOrder, Boolean.valueOf( this.reportCS ),
+        Boolean.valueOf( this.honourCS ), Boolean.valueOf( this.invertCS ), Integer.valueOf( this.mosiIdx ),
+        Integer.valueOf( this.misoIdx ), Integer.valueOf( this.io2Idx ), Integer.valueOf( this.io3Idx ) );
+  }
+
+  /**
+   * Returns whether the slave is selected on the given sample index.
+   * 
+   * @param aSampleIdx
+   *          the sample index to test, > 0.
+   * @return <code>true</code> if the chip-select line changes to its active
+   *         level on the given sample index, <code>false</code> otherwise.
+   */
+  private boolean isSlaveSelectEdge( final int aSampleIdx )
+  {
+    final int[] values = this.context.getData().getValues();
+    final int csMask = ( 1 << this.csIdx );
+
+    final Edge edge = Edge.toEdge( values[aSampleIdx - 1] & csMask, values[aSampleIdx] & csMask );
+    return this.invertCS ? edge.isRising() : edge.isFalling();
+  }
+
+  /**
+   * Determines where the decoding starts, the SPI mode to use and the channel
+   * labels, and creates the data set for the decoded data.
+   * 
+   * @return the data set for the decoded data, never <code>null</code>.
+   */
+  private SPIDataSet prepareDecodedData()
+  {
+    if ( LOG.isLoggable( Level.FINE ) )
+    {
+      LOG.fine( "csmask   = 0x" + Integer.toHexString( 1 << this.csIdx ) );
+      LOG.fine( "sckmask  = 0x" + Integer.toHexString( 1 << this.sckIdx ) );
+      LOG.fine( "misomask = 0x" + Integer.toHexString( 1 << this.misoIdx ) );
+      LOG.fine( "mosimask = 0x" + Integer.toHexString( 1 << this.mosiIdx ) );
+    }
+
+    final int startOfDecode = this.context.getStartSampleIndex();
+    final int endOfDecode = this.context.getEndSampleIndex();
+    final int slaveSelected = slaveSelected( startOfDecode, endOfDecode );
+
+    if ( ( this.honourCS && ( slaveSelected < 0 ) ) || ( startOfDecode >= endOfDecode ) )
+    {
+      // no CS edge found, look for trigger
+      LOG.log( Level.WARNING, "No CS start-condition found! Analysis aborted..." );
+      throw new IllegalStateException( "No CS start-condition found!" );
+    }
+
+    // Initialize the channel labels + clear any existing annotations...
+    prepareResults();
+
+    if ( ( this.spiMode == null ) || ( this.spiMode == SPIMode.AUTODETECT ) )
+    {
+      LOG.log( Level.INFO, "Detecting which SPI mode is most probably used..." );
+      this.spiMode = detectSPIMode( startOfDecode, endOfDecode );
+    }
+
+    // Notify any listeners of the detected mode...
+    this.pcs.firePropertyChange( PROPERTY_AUTO_DETECT_MODE, null, this.spiMode );
+
+    final SPIDataSet decodedData = new SPIDataSet( startOfDecode, endOfDecode, this.context.getData() );
+    if ( slaveSelected >= 0 )
+    {
+      // now the trigger is in b, add trigger event to table
+      reportCsLow( decodedData, slaveSelected );
+    }
+
+    this.slaveSelectedIdx = slaveSelected;
+    return decodedData;
+  }
+
   /**
    * Determines the channel labels that are used in the annotations and reports
    * and clears any existing annotations on the decoded channels.
@@ -634,6 +1129,8 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
    * 
    * @param aDecodedData
    *          the data set to add the data event(s) to;
+   * @param aAnnotations
+   *          the list to add the annotation(s) to;
    * @param aStartIdx
    *          the starting sample index on which the data started;
    * @param aEndIdx
@@ -643,8 +1140,8 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
    * @param aMisoValue
    *          the MISO data value.
    */
-  private void reportData( final SPIDataSet aDecodedData, final int aStartIdx, final int aEndIdx, final int aMosiValue,
-      final int aMisoValue )
+  private void reportData( final SPIDataSet aDecodedData, final List<Annotation<?>> aAnnotations,
+      final int aStartIdx, final int aEndIdx, final int aMosiValue, final int aMisoValue )
   {
     long[] timestamps = this.context.getData().getTimestamps();
 
@@ -661,7 +1158,7 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
           formatSpec = formatSpec.concat( " (%1$c)" );
         }
 
-        this.annotationListener.onAnnotation( new SampleDataAnnotation( this.mosiIdx, timestamps[aStartIdx],
+        aAnnotations.add( new SampleDataAnnotation( this.mosiIdx, timestamps[aStartIdx],
             timestamps[aEndIdx], String.format( formatSpec, Integer.valueOf( mosivalue ) ) ) );
 
         aDecodedData.reportMosiData( this.mosiIdx, aStartIdx, aEndIdx, mosivalue );
@@ -678,7 +1175,7 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
           formatSpec = formatSpec.concat( " (%1$c)" );
         }
 
-        this.annotationListener.onAnnotation( new SampleDataAnnotation( this.misoIdx, timestamps[aStartIdx],
+        aAnnotations.add( new SampleDataAnnotation( this.misoIdx, timestamps[aStartIdx],
             timestamps[aEndIdx], String.format( formatSpec, Integer.valueOf( misovalue ) ) ) );
 
         aDecodedData.reportMisoData( this.misoIdx, aStartIdx, aEndIdx, misovalue );
@@ -695,7 +1192,7 @@ public class SPIAnalyserTask implements ToolTask<SPIDataSet>
         formatSpec = formatSpec.concat( " (%1$c)" );
       }
 
-      this.annotationListener.onAnnotation( new SampleDataAnnotation( this.mosiIdx, timestamps[aStartIdx],
+      aAnnotations.add( new SampleDataAnnotation( this.mosiIdx, timestamps[aStartIdx],
           timestamps[aEndIdx], String.format( formatSpec, Integer.valueOf( mosivalue ) ) ) );
 
       aDecodedData.reportMosiData( this.mosiIdx, aStartIdx, aEndIdx, mosivalue );
@@ -67,6 +67,17 @@ public final class SPIData extends BaseData<SPIData>
     this.dataValue = aDataValue;
   }
 
+  /*
+   * copy with another index
+   */
+  SPIData( final int aIdx, final SPIData aData )
+  {
+    super( aIdx, aData.getChannelIdx(), aData.getStartSampleIndex(), aData.getEndSampleIndex(), aData
+        .getEventName() );
+    this.dataName = aData.dataName;
+    this.dataValue = aData.dataValue;
+  }
+
   // METHODS
 
   /**
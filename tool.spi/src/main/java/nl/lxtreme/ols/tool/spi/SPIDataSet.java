@@ -51,6 +51,21 @@ public final class SPIDataSet extends BaseDataSet<SPIData>
 
   // METHODS
 
+  /**
+   * Appends all data decoded from another range of frames to this data set.
+   * The data is renumbered, as each range is decoded in a data set of its own.
+   * 
+   * @param aDataSet
+   *          the data set to merge, cannot be <code>null</code>.
+   */
+  public void merge( final SPIDataSet aDataSet )
+  {
+    for ( SPIData data : aDataSet.getData() )
+    {
+      addData( new SPIData( size(), data ) );
+    }
+  }
+
   /**
    * @param aTimeValue
    */
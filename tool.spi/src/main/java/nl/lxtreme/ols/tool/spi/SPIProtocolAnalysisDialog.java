@@ -189,6 +189,8 @@ public final class SPIProtocolAnalysisDialog extends BaseToolDialog<SPIDataSet>
 
   // VARIABLES
 
+  private final IncrementalDecoding<SPIAnalyserTask.FrameDecoder> incrementalDecoding;
+
   private JLabel misoLabel;
   private JLabel mosiLabel;
   private JLabel io2Label;
@@ -234,6 +236,8 @@ public final class SPIProtocolAnalysisDialog extends BaseToolDialog<SPIDataSet>
   {
     super( aOwner, aToolContext, aContext, aTool );
 
+    this.incrementalDecoding = new IncrementalDecoding<SPIAnalyserTask.FrameDecoder>();
+
     initDialog();
 
     setLocationRelativeTo( getOwner() );
@@ -448,6 +452,8 @@ public final class SPIProtocolAnalysisDialog extends BaseToolDialog<SPIDataSet>
     toolTask.setInvertCS( this.invertCS.isSelected() );
     toolTask.setOrder( ( BitOrder )this.order.getSelectedItem() );
     toolTask.setSPIMode( ( SPIMode )this.mode.getSelectedItem() );
+    // Reuse the frames of the previous run...
+    toolTask.setIncrementalDecoding( this.incrementalDecoding );
 
     // Register ourselves as property change listener...
     toolTask.addPropertyChangeListener( this );
@@ -31,6 +31,7 @@ import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
 import nl.lxtreme.ols.test.*;
 import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
 import nl.lxtreme.ols.util.NumberUtils.BitOrder;
 
 import org.junit.*;
@@ -121,34 +122,91 @@ public class SPIAnalyserWorkerDataFilesTest
   @Test
   public void testAnalyzeDataFile() throws Exception
   {
-    SPIDataSet result = analyseDataFile( this.resourceName );
+    SPIDataSet result = analyseDataFile( this.resourceName, SPIAnalyserTask.DEFAULT_CHUNK_SIZE, false );
     assertEventCount( result, SPIDataSet.SPI_MISO, this.expectedMisoSymbolCount );
     assertEventCount( result, SPIDataSet.SPI_MOSI, this.expectedMosiSymbolCount );
   }
 
   /**
-   * Analyses the data file identified by the given resource name.
+   * Tests that decoding a series of windows of the data file yields the same
+   * results as decoding each window from scratch. As the datagrams in these
+   * captures do not always line up with the chip-select edges, the frames of
+   * the previous run are only known to be reused when the window keeps its
+   * start.
+   */
+  @Test
+  public void testAnalyzeDataFileIncrementallyOk() throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), this.resourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+
+    final int length = container.getValues().length;
+    final int[][] windows = { { 0, length - 1 }, { 0, length - length / 8 }, { length / 8, length - length / 8 },
+        { length / 8, length - 1 }, { 0, length - 1 } };
+
+    IncrementalDecoding<SPIAnalyserTask.FrameDecoder> decoding;
+    decoding = new IncrementalDecoding<SPIAnalyserTask.FrameDecoder>();
+    for ( int i = 0; i < windows.length; i++ )
+    {
+      ToolContext toolContext = DataTestUtils.createToolContext( container, windows[i][0], windows[i][1] );
+
+      SPIDataSet expected = analyseData( toolContext, 61, true, null );
+      SPIDataSet result = analyseData( toolContext, 61, true, decoding );
+
+      assertEquals( expected.getData(), result.getData() );
+      if ( ( i > 0 ) && ( windows[i][0] == windows[i - 1][0] ) )
+      {
+        assertTrue( "Nothing reused at window #" + i, decoding.getDecodedLength() < toolContext.getLength() );
+      }
+    }
+  }
+
+  /**
+   * Tests that the frames are decoded correctly when the decoding ranges end
+   * halfway through a datagram, for several (odd) numbers of samples per
+   * range.
+   */
+  @Test
+  public void testAnalyzeDataFileWithUnalignedRangesOk() throws Exception
+  {
+    final int[] chunkSizes = { 7, 61, 509 };
+    for ( int chunkSize : chunkSizes )
+    {
+      SPIDataSet result = analyseDataFile( this.resourceName, chunkSize, false );
+
+      assertEventCount( result, SPIDataSet.SPI_MISO, this.expectedMisoSymbolCount );
+      assertEventCount( result, SPIDataSet.SPI_MOSI, this.expectedMosiSymbolCount );
+    }
+  }
+
+  /**
+   * Analyses the data of the given tool context.
    * 
-   * @param aResourceName
-   *          the name of the resource (= data file) to analyse, cannot be
-   *          <code>null</code>.
+   * @param aToolContext
+   *          the tool context with the data to analyse, cannot be
+   *          <code>null</code>;
+   * @param aChunkSize
+   *          the number of samples to decode in each range of frames;
+   * @param aReportCS
+   *          <code>true</code> to report the chip-select events,
+   *          <code>false</code> otherwise;
+   * @param aDecoding
+   *          the incremental decoding to use, can be <code>null</code>.
    * @return the analysis results, never <code>null</code>.
    * @throws Exception
    *           in case of exceptions.
    */
-  private SPIDataSet analyseDataFile( final String aResourceName ) throws Exception
+  private SPIDataSet analyseData( final ToolContext aToolContext, final int aChunkSize, final boolean aReportCS,
+      final IncrementalDecoding<SPIAnalyserTask.FrameDecoder> aDecoding ) throws Exception
   {
-    URL resource = ResourceUtils.getResource( getClass(), aResourceName );
-    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
-    ToolContext toolContext = DataTestUtils.createToolContext( container );
-
     ToolProgressListener tpl = Mockito.mock( ToolProgressListener.class );
     AnnotationListener al = Mockito.mock( AnnotationListener.class );
 
-    SPIAnalyserTask worker = new SPIAnalyserTask( toolContext, tpl, al );
+    SPIAnalyserTask worker = new SPIAnalyserTask( aToolContext, tpl, al );
     worker.setBitCount( this.bitCount - 1 );
     worker.setHonourCS( this.honourCS );
-    worker.setReportCS( false );
+    worker.setReportCS( aReportCS );
+    worker.setChunkSize( aChunkSize );
     worker.setProtocol( SPIFIMode.STANDARD );
     worker.setSPIMode( this.spiMode );
     worker.setOrder( this.bitOrder );
@@ -156,10 +214,36 @@ public class SPIAnalyserWorkerDataFilesTest
     worker.setIO1Index( this.channels[0] );
     worker.setCSIndex( this.channels[2] );
     worker.setSCKIndex( this.channels[3] );
+    worker.setIncrementalDecoding( aDecoding );
 
     SPIDataSet result = worker.call();
     assertNotNull( result );
     return result;
   }
 
+  /**
+   * Analyses the data file identified by the given resource name.
+   * 
+   * @param aResourceName
+   *          the name of the resource (= data file) to analyse, cannot be
+   *          <code>null</code>;
+   * @param aChunkSize
+   *          the number of samples to decode in each range of frames;
+   * @param aReportCS
+   *          <code>true</code> to report the chip-select events,
+   *          <code>false</code> otherwise.
+   * @return the analysis results, never <code>null</code>.
+   * @throws Exception
+   *           in case of exceptions.
+   */
+  private SPIDataSet analyseDataFile( final String aResourceName, final int aChunkSize, final boolean aReportCS )
+      throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), aResourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+    ToolContext toolContext = DataTestUtils.createToolContext( container );
+
+    return analyseData( toolContext, aChunkSize, aReportCS, null );
+  }
+
 }
@@ -85,6 +85,7 @@ public final class StateAnalysisDialog extends BaseToolDialog<AcquisitionResult>
 
   private JComboBox edgeSelect;
   private JComboBox channelSelect;
+  private JCheckBox keepTimestamps;
   private RestorableAction runAction;
 
   // CONSTRUCTORS
@@ -126,6 +127,7 @@ public final class StateAnalysisDialog extends BaseToolDialog<AcquisitionResult>
     setComboBoxIndex( this.channelSelect, aSettings, "channel" );
 
     this.edgeSelect.setSelectedIndex( aSettings.getInt( "edge", this.edgeSelect.getSelectedIndex() ) );
+    this.keepTimestamps.setSelected( aSettings.getBoolean( "keepTimestamps", this.keepTimestamps.isSelected() ) );
   }
 
   /**
@@ -145,6 +147,7 @@ public final class StateAnalysisDialog extends BaseToolDialog<AcquisitionResult>
   {
     aSettings.putInt( "channel", this.channelSelect.getSelectedIndex() );
     aSettings.putInt( "edge", this.edgeSelect.getSelectedIndex() );
+    aSettings.putBoolean( "keepTimestamps", this.keepTimestamps.isSelected() );
   }
 
   /**
@@ -211,6 +214,8 @@ public final class StateAnalysisDialog extends BaseToolDialog<AcquisitionResult>
     {
       toolTask.setLevel( 1 );
     }
+
+    toolTask.setKeepTimestamps( this.keepTimestamps.isSelected() );
   }
 
   /**
@@ -235,7 +240,10 @@ public final class StateAnalysisDialog extends BaseToolDialog<AcquisitionResult>
     this.edgeSelect.setSelectedIndex( 0 );
     this.edgeSelect.setRenderer( new EdgeItemRenderer() );
 
-    final JPanel pane = new JPanel( new GridLayout( 2, 2, 5, 5 ) );
+    this.keepTimestamps = new JCheckBox();
+    this.keepTimestamps.setSelected( false );
+
+    final JPanel pane = new JPanel( new GridLayout( 3, 2, 5, 5 ) );
     pane.setBorder( BorderFactory.createEmptyBorder( 5, 5, 5, 0 ) );
 
     pane.add( new JLabel( "Clock Channel" ) );
@@ -243,6 +251,9 @@ public final class StateAnalysisDialog extends BaseToolDialog<AcquisitionResult>
 
     pane.add( new JLabel( "Clock Edge" ) );
     pane.add( this.edgeSelect );
+
+    pane.add( new JLabel( "Keep Timestamps" ) );
+    pane.add( this.keepTimestamps );
     return pane;
   }
 
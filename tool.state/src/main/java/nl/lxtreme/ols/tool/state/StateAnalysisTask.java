@@ -21,29 +21,106 @@
 package nl.lxtreme.ols.tool.state;
 
 
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import nl.lxtreme.ols.api.*;
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
 import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.*;
 
 
 /**
- * 
+ * Converts timing data to state data, using one of the channels as clock.
+ * <p>
+ * The clock edges are found in a single pass, in which large captures are
+ * scanned in chunks concurrently. Only then the states are copied, straight
+ * into the arrays of the resulting data.
+ * </p>
  */
 public class StateAnalysisTask implements ToolTask<AcquisitionResult>
 {
+  // INNER TYPES
+
+  /**
+   * Finds all clock edges in a range of samples.
+   */
+  final class ClockEdgeFinder implements Callable<int[]>
+  {
+    // VARIABLES
+
+    private final int[] values;
+    private final int startIdx;
+    private final int endIdx;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ClockEdgeFinder} instance.
+     *
+     * @param aValues
+     *          the sample values to scan;
+     * @param aStartIdx
+     *          the first sample index to scan, > 0;
+     * @param aEndIdx
+     *          the sample index to stop at (exclusive).
+     */
+    ClockEdgeFinder( final int[] aValues, final int aStartIdx, final int aEndIdx )
+    {
+      this.values = aValues;
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int[] call() throws Exception
+    {
+      final int number = StateAnalysisTask.this.number;
+      final int level = StateAnalysisTask.this.level;
+
+      int[] result = new int[1024];
+      int count = 0;
+
+      int last = ( this.values[this.startIdx - 1] >> number ) & 1;
+      for ( int i = this.startIdx; i < this.endIdx; i++ )
+      {
+        final int current = ( this.values[i] >> number ) & 1;
+        if ( ( last == level ) && ( current != level ) )
+        {
+          if ( count == result.length )
+          {
+            result = Arrays.copyOf( result, count + ( count >> 1 ) );
+          }
+          result[count++] = i;
+        }
+        last = current;
+      }
+
+      return Arrays.copyOf( result, count );
+    }
+  }
+
   // CONSTANTS
 
   private static final Logger LOG = Logger.getLogger( StateAnalysisTask.class.getName() );
 
+  /** The number of samples scanned by a single subtask. */
+  private static final int CHUNK_SIZE = 1 << 20;
+
   // VARIABLES
 
   private final ToolContext context;
 
   private int number;
   private int level;
+  private boolean keepTimestamps;
 
   // CONSTRUCTORS
 
@@ -72,52 +149,58 @@ public class StateAnalysisTask implements ToolTask<AcquisitionResult>
     final int[] values = data.getValues();
     final long triggerPosition = data.getTriggerPosition();
 
-    final int maskValue = 1 << this.number;
-
-    int size = 0;
-    int last = ( values[0] & maskValue ) >> this.number;
-
-    // calculate new sample array size
-    for ( final int value : values )
-    {
-      final int current = ( value & maskValue ) >> this.number;
-      if ( ( last == this.level ) && ( current != this.level ) )
-      {
-        size++;
-      }
-      last = current;
-    }
-
-    if ( size <= 0 )
+    final int[] clockEdges = findClockEdges( values );
+    if ( clockEdges.length <= 0 )
     {
       LOG.log( Level.WARNING, "No state changes found in data; aborting analysis..." );
       throw new IllegalStateException( "No state changes found!" );
     }
 
-    // convert captured data
-    last = values[0] & maskValue;
-    int pos = 0;
+    // the trigger is at the state following the last clock edge up to and
+    // including the trigger position...
     int newTrigger = -1;
+    if ( ( triggerPosition >= 0 ) && ( triggerPosition < values.length ) )
+    {
+      final int idx = Arrays.binarySearch( clockEdges, ( int )triggerPosition );
+      newTrigger = ( idx >= 0 ) ? ( idx + 1 ) : -( idx + 1 );
+    }
 
-    final int[] newValues = new int[size];
-    for ( int i = 0; i < values.length; i++ )
+    // each state is the sample value right before its clock edge...
+    final int[] newValues = new int[clockEdges.length];
+    for ( int i = 0; i < clockEdges.length; i++ )
     {
-      final int current = ( values[i] & maskValue ) >> this.number;
-      if ( ( last == this.level ) && ( current != this.level ) )
-      {
-        newValues[pos++] = values[i - 1];
-      }
-      if ( triggerPosition == i )
+      newValues[i] = values[clockEdges[i] - 1];
+    }
+
+    if ( this.keepTimestamps )
+    {
+      // each state is placed at the time of its clock edge...
+      final long[] timestamps = data.getTimestamps();
+
+      final long[] newTimestamps = new long[clockEdges.length];
+      for ( int i = 0; i < clockEdges.length; i++ )
       {
-        newTrigger = pos;
+        newTimestamps[i] = timestamps[clockEdges[i]];
       }
-      last = current;
+
+      return new CapturedData( newValues, newTimestamps, triggerPosition, data.getSampleRate(), data.getChannels(),
+          data.getEnabledChannels(), data.getAbsoluteLength() );
     }
 
-    final CapturedData newCapturedData = new CapturedData( newValues, newTrigger, Ols.NOT_AVAILABLE,
-        data.getChannels(), data.getEnabledChannels() );
+    return new CapturedData( newValues, newTrigger, Ols.NOT_AVAILABLE, data.getChannels(),
+        data.getEnabledChannels() );
+  }
 
-    return newCapturedData;
+  /**
+   * Sets whether or not the original timestamps of the states should be kept.
+   * 
+   * @param aKeepTimestamps
+   *          <code>true</code> to keep the original timestamps,
+   *          <code>false</code> to number the states consecutively.
+   */
+  public void setKeepTimestamps( final boolean aKeepTimestamps )
+  {
+    this.keepTimestamps = aKeepTimestamps;
   }
 
   /**
@@ -141,4 +224,45 @@ public class StateAnalysisTask implements ToolTask<AcquisitionResult>
   {
     this.number = aNumber;
   }
+
+  /**
+   * Finds the sample indexes of all clock edges, which are the samples at which
+   * the clock leaves the selected level.
+   * 
+   * @param aValues
+   *          the sample values to scan.
+   * @return the sample indexes of all clock edges, in ascending order.
+   */
+  private int[] findClockEdges( final int[] aValues ) throws Exception
+  {
+    if ( aValues.length < 2 )
+    {
+      return new int[0];
+    }
+
+    final int[] chunks = ParallelDecoding.split( 1, aValues.length, CHUNK_SIZE );
+
+    final List<ClockEdgeFinder> finders = new ArrayList<ClockEdgeFinder>();
+    for ( int i = 1; i < chunks.length; i++ )
+    {
+      finders.add( new ClockEdgeFinder( aValues, chunks[i - 1], chunks[i] ) );
+    }
+
+    final List<int[]> edges = ParallelDecoding.invokeAll( finders );
+
+    int count = 0;
+    for ( int[] chunk : edges )
+    {
+      count += chunk.length;
+    }
+
+    final int[] clockEdges = new int[count];
+    int pos = 0;
+    for ( int[] chunk : edges )
+    {
+      System.arraycopy( chunk, 0, clockEdges, pos, chunk.length );
+      pos += chunk.length;
+    }
+    return clockEdges;
+  }
 }
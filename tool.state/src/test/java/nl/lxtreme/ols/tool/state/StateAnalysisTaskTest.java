@@ -0,0 +1,248 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.state;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.*;
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.test.data.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link StateAnalysisTask}.
+ */
+public class StateAnalysisTaskTest
+{
+  // METHODS
+
+  /**
+   * Converts the given data the way the state analysis did before it scanned
+   * the clock edges in chunks.
+   */
+  private static CapturedData convertReference( final AcquisitionResult aData, final int aNumber, final int aLevel )
+  {
+    final int[] values = aData.getValues();
+    final long triggerPosition = aData.getTriggerPosition();
+
+    final int maskValue = 1 << aNumber;
+
+    int size = 0;
+    int last = ( values[0] & maskValue ) >> aNumber;
+
+    for ( final int value : values )
+    {
+      final int current = ( value & maskValue ) >> aNumber;
+      if ( ( last == aLevel ) && ( current != aLevel ) )
+      {
+        size++;
+      }
+      last = current;
+    }
+
+    if ( size <= 0 )
+    {
+      throw new IllegalStateException( "No state changes found!" );
+    }
+
+    last = values[0] & maskValue;
+    int pos = 0;
+    int newTrigger = -1;
+
+    final int[] newValues = new int[size];
+    for ( int i = 0; i < values.length; i++ )
+    {
+      final int current = ( values[i] & maskValue ) >> aNumber;
+      if ( ( last == aLevel ) && ( current != aLevel ) )
+      {
+        newValues[pos++] = values[i - 1];
+      }
+      if ( triggerPosition == i )
+      {
+        newTrigger = pos;
+      }
+      last = current;
+    }
+
+    return new CapturedData( newValues, newTrigger, Ols.NOT_AVAILABLE, aData.getChannels(),
+        aData.getEnabledChannels() );
+  }
+
+  /**
+   * Tests that channel 31 can be used as clock, on both edges.
+   */
+  @Test
+  public void testChannel31AsClockOk() throws Exception
+  {
+    final int clk = 0x80000000;
+    final AcquisitionResult data = createData( -1L, 0, clk | 1, 2, clk | 3, 4, clk | 5, 6 );
+
+    // Falling edges at samples 2, 4 and 6...
+    final AcquisitionResult falling = analyse( data, 31, 1, false );
+    assertArrayEquals( new int[] { clk | 1, clk | 3, clk | 5 }, falling.getValues() );
+
+    // Rising edges at samples 1, 3 and 5...
+    final AcquisitionResult rising = analyse( data, 31, 0, false );
+    assertArrayEquals( new int[] { 0, 2, 4 }, rising.getValues() );
+  }
+
+  /**
+   * Tests that clock edges right at and around the chunk boundaries are found
+   * exactly once, and that the result equals that of the previous algorithm.
+   */
+  @Test
+  public void testChunkedEdgeDetectionOk() throws Exception
+  {
+    final int chunkSize = 1 << 20;
+    final int[] values = new int[( 2 * chunkSize ) + 100];
+
+    // Chunks start at sample 1, so put the clock edges right before, at and
+    // right after the start of each chunk...
+    final Set<Integer> edges = new TreeSet<Integer>();
+    for ( int chunk = 1; chunk <= 2; chunk++ )
+    {
+      final int start = ( chunk * chunkSize ) + 1;
+      edges.add( Integer.valueOf( start - 2 ) );
+      edges.add( Integer.valueOf( start ) );
+      edges.add( Integer.valueOf( start + 2 ) );
+    }
+    edges.add( Integer.valueOf( 1 ) );
+
+    int clock = 0;
+    int counter = 0;
+    for ( int i = 0; i < values.length; i++ )
+    {
+      if ( edges.contains( Integer.valueOf( i ) ) )
+      {
+        clock ^= 1;
+      }
+      // Let the other channels count, so each state is distinct...
+      values[i] = clock | ( ( counter++ >> 8 ) << 1 );
+    }
+
+    final AcquisitionResult data = new CapturedData( values, chunkSize, Ols.NOT_AVAILABLE, 32, 0xFFFFFFFF );
+
+    for ( int level = 0; level <= 1; level++ )
+    {
+      final AcquisitionResult result = analyse( data, 0, level, false );
+      assertResultEquals( convertReference( data, 0, level ), result );
+    }
+  }
+
+  /**
+   * Tests that keeping the timestamps places each state at the time of its
+   * clock edge, and keeps the sample rate and trigger of the original data.
+   */
+  @Test
+  public void testKeepTimestampsOk() throws Exception
+  {
+    final int[] values = { 0, 1, 2, 3, 4, 5 };
+    final long[] timestamps = { 0L, 10L, 25L, 30L, 42L, 50L };
+    final AcquisitionResult data = new CapturedData( values, timestamps, 30L, 1000, 8, 0xFF, 60L );
+
+    // Falling edges of channel 0 at samples 2 and 4; the last state lasts
+    // until the end of the original data...
+    final AcquisitionResult result = analyse( data, 0, 1, true );
+    assertArrayEquals( new int[] { 1, 3, 3 }, result.getValues() );
+    assertArrayEquals( new long[] { 25L, 42L, 60L }, result.getTimestamps() );
+    assertEquals( 1000, result.getSampleRate() );
+    assertEquals( 30L, result.getTriggerPosition() );
+    assertEquals( 60L, result.getAbsoluteLength() );
+  }
+
+  /**
+   * Tests that data without any clock edge is refused.
+   */
+  @Test( expected = IllegalStateException.class )
+  public void testNoClockEdgesFail() throws Exception
+  {
+    analyse( createData( -1L, 0, 2, 4, 6 ), 0, 1, false );
+  }
+
+  /**
+   * Tests that random data yields the same result as the previous algorithm,
+   * for all clock channels it supported, both edges and various triggers.
+   */
+  @Test
+  public void testRandomDataMatchesPreviousAlgorithm() throws Exception
+  {
+    final Random random = new Random( 47L );
+    for ( int run = 0; run < 20; run++ )
+    {
+      final int[] values = new int[1000 + random.nextInt( 1000 )];
+      for ( int i = 0; i < values.length; i++ )
+      {
+        // Keep some samples equal, to have the data compacted...
+        values[i] = ( random.nextInt( 4 ) == 0 ) && ( i > 0 ) ? values[i - 1] : random.nextInt();
+      }
+
+      final long trigger = ( run % 4 == 0 ) ? Ols.NOT_AVAILABLE : random.nextInt( values.length );
+      final AcquisitionResult data = new CapturedData( values, trigger, Ols.NOT_AVAILABLE, 32, 0xFFFFFFFF );
+
+      for ( int channel = 0; channel < 31; channel++ )
+      {
+        for ( int level = 0; level <= 1; level++ )
+        {
+          assertResultEquals( convertReference( data, channel, level ), analyse( data, channel, level, false ) );
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the state analysis on the given data.
+   */
+  private AcquisitionResult analyse( final AcquisitionResult aData, final int aNumber, final int aLevel,
+      final boolean aKeepTimestamps ) throws Exception
+  {
+    final StateAnalysisTask task = new StateAnalysisTask( DataTestUtils.createToolContext( aData, 0 ) );
+    task.setNumber( aNumber );
+    task.setLevel( aLevel );
+    task.setKeepTimestamps( aKeepTimestamps );
+    return task.call();
+  }
+
+  /**
+   * Asserts that the given results are equal.
+   */
+  private void assertResultEquals( final AcquisitionResult aExpected, final AcquisitionResult aActual )
+  {
+    assertArrayEquals( aExpected.getValues(), aActual.getValues() );
+    assertArrayEquals( aExpected.getTimestamps(), aActual.getTimestamps() );
+    assertEquals( aExpected.getTriggerPosition(), aActual.getTriggerPosition() );
+    assertEquals( aExpected.getSampleRate(), aActual.getSampleRate() );
+    assertEquals( aExpected.getAbsoluteLength(), aActual.getAbsoluteLength() );
+  }
+
+  /**
+   * Creates data with a single sample per value.
+   */
+  private AcquisitionResult createData( final long aTrigger, final int... aValues )
+  {
+    return new CapturedData( aValues, aTrigger, Ols.NOT_AVAILABLE, 32, 0xFFFFFFFF );
+  }
+}
@@ -518,6 +518,8 @@ public class AsyncSerialDataDecoder
 
   private SerialDecoderCallback callback;
   private ToolProgressListener progressListener;
+  /** The sample index of the last lookup, see {@link #indexOf(long)}. */
+  private int cursor;
 
   // CONSTRUCTORS
 
@@ -584,6 +586,9 @@ public class AsyncSerialDataDecoder
     DataBitExtractor extractor = new DataBitExtractor( aChannelIndex );
     setProgress( 0 );
 
+    // All lookups walk forward from here...
+    this.cursor = findSampleIndex( timestamps, startOfDecode );
+
     long start = findStartBit( aChannelIndex, idleLevel.nextEdge(), startOfDecode, endOfDecode );
     while ( ( start >= 0 ) && ( ( endOfDecode - start ) > frameSize ) )
     {
@@ -697,6 +702,11 @@ public class AsyncSerialDataDecoder
 
   /**
    * Finds a certain type of edge on a channel between the two given timestamps.
+   * <p>
+   * Only the transitions of the captured data are visited, so the time this
+   * takes depends on the number of transitions, not on the time between the
+   * two given timestamps.
+   * </p>
    * 
    * @param aChannelIndex
    *          the index of the channel to find the start bit on;
@@ -711,29 +721,33 @@ public class AsyncSerialDataDecoder
   protected final long findEdge( final int aChannelIndex, final Edge aSampleEdge, final long aStartOfDecode,
       final long aEndOfDecode )
   {
+    final int[] values = this.dataSet.getValues();
+    final long[] timestamps = this.dataSet.getTimestamps();
     final int mask = ( 1 << aChannelIndex );
-    long result = -1;
 
-    int oldBitValue = getDataValue( aStartOfDecode, mask );
-    for ( long timeCursor = aStartOfDecode + 1; ( result < 0 ) && ( timeCursor < aEndOfDecode ); timeCursor++ )
+    // The value at a given time is that of the sample *before* that time (see
+    // getDataValue), hence a transition at timestamps[i] is seen one time unit
+    // later...
+    int i = Math.max( 1, indexOf( aStartOfDecode ) );
+    for ( ; ( i < timestamps.length ) && ( ( timestamps[i] + 1 ) < aEndOfDecode ); i++ )
     {
-      final int bitValue = getDataValue( timeCursor, mask );
-
-      Edge edge = Edge.toEdge( oldBitValue, bitValue );
-      if ( aSampleEdge.isNone() && !edge.isNone() )
+      final int oldBitValue = values[i - 1] & mask;
+      final int bitValue = values[i] & mask;
+      if ( oldBitValue == bitValue )
       {
-        /* No edge given, so any edge will do */
-        result = timeCursor;
+        continue;
       }
-      else if ( !aSampleEdge.isNone() && ( aSampleEdge == edge ) )
+
+      final Edge edge = Edge.toEdge( oldBitValue, bitValue );
+      if ( aSampleEdge.isNone() || ( aSampleEdge == edge ) )
       {
-        result = timeCursor;
+        this.cursor = i;
+        return timestamps[i] + 1;
       }
-
-      oldBitValue = bitValue;
     }
 
-    return result;
+    this.cursor = Math.min( i, timestamps.length );
+    return -1;
   }
 
   /**
@@ -777,14 +791,41 @@ public class AsyncSerialDataDecoder
   protected final int getDataValue( final long aTimeValue, final int aMask )
   {
     final int[] values = this.dataSet.getValues();
-    final long[] timestamps = this.dataSet.getTimestamps();
-    int k = findSampleIndex( timestamps, aTimeValue );
+    int k = indexOf( aTimeValue );
 
     int value = ( ( k == 0 ) ? values[0] : values[k - 1] );
 
     return value & aMask;
   }
 
+  /**
+   * Returns the index of the first sample at or after the given time stamp,
+   * like {@link #findSampleIndex(long[], long)}, but walks from the index of
+   * the previous lookup instead of searching all time stamps. As the decoder
+   * moves forward in time, this visits each sample only once.
+   * 
+   * @param aTimeValue
+   *          the time stamp to find the sample index for.
+   * @return a sample index, >= 0.
+   */
+  private int indexOf( final long aTimeValue )
+  {
+    final long[] timestamps = this.dataSet.getTimestamps();
+
+    int k = Math.min( this.cursor, timestamps.length );
+    while ( ( k < timestamps.length ) && ( timestamps[k] < aTimeValue ) )
+    {
+      k++;
+    }
+    while ( ( k > 0 ) && ( timestamps[k - 1] >= aTimeValue ) )
+    {
+      k--;
+    }
+
+    this.cursor = k;
+    return k;
+  }
+
   /**
    * @param aProgress
    */
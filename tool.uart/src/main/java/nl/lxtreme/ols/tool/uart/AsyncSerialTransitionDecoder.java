@@ -0,0 +1,689 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.uart;
+
+
+import static nl.lxtreme.ols.util.NumberUtils.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.*;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitEncoding;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitOrder;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitValue;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.SerialConfiguration;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.SerialDecoderCallback;
+
+
+/**
+ * Provides a decoder for a single line of asynchronous serial data that is
+ * driven by a {@link DecoderEngine}, so it can share a single walk over the
+ * acquired data with other decoders.
+ * <p>
+ * This decoder yields the same symbols and errors as
+ * {@link AsyncSerialDataDecoder#decodeDataLine(int)}. As the engine only
+ * pushes the transitions of the line, the edges are buffered until the bit
+ * that is decoded can be determined, that is, until the line changes after the
+ * time at which the bit is sampled, or until all data is decoded.
+ * </p>
+ */
+public class AsyncSerialTransitionDecoder implements TransitionDecoder
+{
+  // CONSTANTS
+
+  private static final int FIND_START_BIT = 0;
+  private static final int START_BIT = 1;
+  private static final int NEXT_BIT = 2;
+  private static final int DATA_BIT = 3;
+  private static final int PARITY_BIT = 4;
+  private static final int STOP_BIT = 5;
+  private static final int DONE = 6;
+
+  /** Denotes that an edge cannot be found (yet) with the edges seen so far. */
+  private static final long UNKNOWN = -2L;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // VARIABLES
+
+  private final SerialConfiguration configuration;
+  private final int channelIndex;
+  private final int mask;
+  private final double bitLength;
+  private final int frameSize;
+  private final long startOfDecode;
+  private final long endOfDecode;
+  private final int startIdx;
+  private final int endIdx;
+
+  private SerialDecoderCallback callback;
+
+  /** The times of the buffered edges, as seen by a sample right after them. */
+  private long[] edgeTimes;
+  /** The levels of the line right after each of the buffered edges. */
+  private int[] edgeLevels;
+  private int head;
+  private int tail;
+  /** The level of the line before the first buffered edge. */
+  private int baseLevel;
+  private long lastEdgeTime;
+  private boolean ended;
+
+  private int step;
+  private int nextStep;
+  private long searchFrom;
+  private boolean frameEnded;
+  private long windowStart;
+  private long windowEnd;
+
+  private double time;
+  /** The timestamp of the last edge we've seen */
+  private double lastEdge;
+  /** The number of bits we've processed since the last edge */
+  private int bitsSinceEdge;
+  /** The number of samples that we've seen between two confirmed edges */
+  private double confirmedSamples;
+  /** The number of bits that we've seen between two confirmed edges */
+  private long confirmedBits;
+
+  private long symbolStartTime;
+  private int bitIdx;
+  private int symbol;
+  private int marks;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsyncSerialTransitionDecoder} instance.
+   * 
+   * @param aConfiguration
+   *          the configuration to use, cannot be <code>null</code>;
+   * @param aContext
+   *          the tool context to use, cannot be <code>null</code>;
+   * @param aChannelIndex
+   *          the channel index to decode, >= 0.
+   */
+  public AsyncSerialTransitionDecoder( final SerialConfiguration aConfiguration, final ToolContext aContext,
+      final int aChannelIndex )
+  {
+    final AcquisitionResult data = aContext.getData();
+    final long[] timestamps = data.getTimestamps();
+
+    this.configuration = aConfiguration;
+    this.channelIndex = aChannelIndex;
+    this.mask = ( 1 << aChannelIndex );
+    this.bitLength = aConfiguration.getBitLength( data.getSampleRate() );
+    this.frameSize = aConfiguration.getFrameSize( data.getSampleRate() );
+
+    this.startOfDecode = timestamps[aContext.getStartSampleIndex()];
+    this.endOfDecode = timestamps[aContext.getEndSampleIndex()];
+
+    // A transition on the first sample of the context is a potential start
+    // bit, so the preceding sample should provide the initial line level...
+    this.startIdx = Math.max( 0, aContext.getStartSampleIndex() - 1 );
+    // A frame that starts before the end of decoding is decoded completely,
+    // for which the transitions after the end of decoding are needed; even
+    // when resynchronised on each bit, such a frame ends before this time...
+    final long lastTime = this.endOfDecode + this.frameSize + ( long )Math.ceil( 2.0 * this.bitLength )
+        + aConfiguration.getDataBits() + 8L;
+    this.endIdx = Math.min( timestamps.length, AsyncSerialDataDecoder.findSampleIndex( timestamps, lastTime ) + 1 );
+
+    this.edgeTimes = new long[INITIAL_CAPACITY];
+    this.edgeLevels = new int[INITIAL_CAPACITY];
+  }
+
+  // METHODS
+
+  /**
+   * Returns the average bit length for sequences of bits found between two
+   * edges, which is only known after decoding.
+   * 
+   * @return the bit length used in decoding, in number of samples.
+   */
+  public double getAverageBitLength()
+  {
+    return ( this.confirmedSamples / this.confirmedBits );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getChannelMask()
+  {
+    return this.mask;
+  }
+
+  /**
+   * Returns the number of bits found between two edges, which is only known
+   * after decoding.
+   * 
+   * @return a bit count, >= 0.
+   * @see #getAverageBitLength()
+   */
+  public long getConfirmedBitCount()
+  {
+    return this.confirmedBits;
+  }
+
+  /**
+   * Returns the number of samples spanned by the bits found between two edges,
+   * which is only known after decoding.
+   * 
+   * @return a sample count, >= 0.
+   * @see #getAverageBitLength()
+   */
+  public double getConfirmedSampleCount()
+  {
+    return this.confirmedSamples;
+  }
+
+  /**
+   * Returns the sample index this decoder should stop decoding at, which lies
+   * after the end of the tool context, as a frame that starts before its end
+   * is decoded completely.
+   * 
+   * @return a sample index (exclusive), > 0.
+   */
+  public int getEndIndex()
+  {
+    return this.endIdx;
+  }
+
+  /**
+   * Returns the sample index this decoder should start decoding at.
+   * 
+   * @return a sample index, >= 0.
+   */
+  public int getStartIndex()
+  {
+    return this.startIdx;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onEnd( final int aSampleIdx, final long aTimestamp )
+  {
+    // No more edges will come, so all remaining bits can be decoded...
+    this.ended = true;
+    decode();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onStart( final int aSampleIdx, final long aTimestamp, final int aValue )
+  {
+    this.head = 0;
+    this.tail = 0;
+    this.baseLevel = aValue & this.mask;
+    this.lastEdgeTime = Long.MIN_VALUE;
+    this.ended = false;
+
+    this.step = FIND_START_BIT;
+    this.searchFrom = this.startOfDecode;
+    this.frameEnded = false;
+
+    this.time = 0;
+    this.lastEdge = 0;
+    this.bitsSinceEdge = 0;
+    this.confirmedSamples = 0;
+    this.confirmedBits = 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onTransition( final int aSampleIdx, final long aTimestamp, final int aOldValue, final int aNewValue )
+  {
+    if ( this.step == DONE )
+    {
+      return;
+    }
+
+    if ( this.tail == this.edgeTimes.length )
+    {
+      compactEdges();
+    }
+
+    // The value at a given time is that of the sample *before* that time, hence
+    // a transition at a timestamp is seen one time unit later...
+    this.lastEdgeTime = aTimestamp + 1;
+    this.edgeTimes[this.tail] = this.lastEdgeTime;
+    this.edgeLevels[this.tail] = aNewValue & this.mask;
+    this.tail++;
+
+    decode();
+  }
+
+  /**
+   * Sets the decoder callback.
+   * 
+   * @param aCallback
+   *          the callback to set, can be <code>null</code> in case no callbacks
+   *          are needed.
+   */
+  public void setCallback( final SerialDecoderCallback aCallback )
+  {
+    this.callback = aCallback;
+  }
+
+  /**
+   * Starts skipping over the current bit to the next one, which is completed
+   * once it is known whether there is an edge near the start of the next bit.
+   * 
+   * @param aNextStep
+   *          the step to continue with after the next bit is found.
+   */
+  private void beginNextBit( final int aNextStep )
+  {
+    this.time += this.bitLength;
+    this.bitsSinceEdge++;
+    this.windowStart = ( long )( this.time - ( this.bitLength * 0.25 ) - 1 );
+    this.windowEnd = ( long )( this.time + ( this.bitLength * 0.25 ) + 1 );
+    this.nextStep = aNextStep;
+    this.step = NEXT_BIT;
+  }
+
+  /**
+   * Returns the raw level of the current bit.
+   * 
+   * @return the bit level, or <code>null</code> if not known yet.
+   */
+  private BitLevel bitLevel()
+  {
+    final long halfTime = ( long )( this.time + ( this.bitLength / 2 ) );
+    if ( !this.ended && ( this.lastEdgeTime < halfTime ) )
+    {
+      // The line might still change before this time...
+      return null;
+    }
+
+    int level = this.baseLevel;
+    for ( int i = this.head; ( i < this.tail ) && ( this.edgeTimes[i] <= halfTime ); i++ )
+    {
+      level = this.edgeLevels[i];
+    }
+    return ( level == 0 ? BitLevel.LOW : BitLevel.HIGH );
+  }
+
+  /**
+   * Returns the value of the current bit, depending on the bit encoding.
+   * 
+   * @return the bit value, or <code>null</code> if not known yet.
+   */
+  private BitValue bitValue()
+  {
+    final BitLevel level = bitLevel();
+    if ( level == null )
+    {
+      return null;
+    }
+    if ( this.configuration.getBitEncoding() == BitEncoding.HIGH_IS_SPACE )
+    {
+      return ( level == BitLevel.HIGH ? BitValue.SPACE : BitValue.MARK );
+    }
+    return ( level == BitLevel.HIGH ? BitValue.MARK : BitValue.SPACE );
+  }
+
+  /**
+   * Checks the parity bit of the current symbol.
+   */
+  private boolean checkParityBit()
+  {
+    final Parity parity = this.configuration.getParity();
+
+    final BitValue value = bitValue();
+    if ( value == null )
+    {
+      return false;
+    }
+    if ( value == BitValue.MARK )
+    {
+      this.marks++;
+    }
+
+    // Even parity means total number of marks (including the parity bit)
+    // should be even, odd means they should be odd.
+    if ( ( parity.isOdd() && ( ( this.marks % 2 ) == 0 ) ) || ( parity.isEven() && ( ( this.marks % 2 ) == 1 ) ) )
+    {
+      reportError( ErrorType.PARITY );
+    }
+
+    beginNextBit( STOP_BIT );
+    return true;
+  }
+
+  /**
+   * Checks the start bit of a new frame.
+   */
+  private boolean checkStartBit()
+  {
+    final BitLevel level = bitLevel();
+    if ( level == null )
+    {
+      return false;
+    }
+    if ( level != this.configuration.getIdleLevel().invert() )
+    {
+      // this is not a start bit !
+      reportError( ErrorType.START );
+    }
+
+    this.bitIdx = -1;
+    beginNextBit( DATA_BIT );
+    return true;
+  }
+
+  /**
+   * Checks the stop bit of the current frame.
+   */
+  private boolean checkStopBit()
+  {
+    final BitLevel level = bitLevel();
+    if ( level == null )
+    {
+      return false;
+    }
+    if ( level != this.configuration.getIdleLevel() )
+    {
+      reportError( ErrorType.FRAME );
+    }
+
+    // Find start bit after the stop bit...
+    this.searchFrom = ( long )( this.time + ( this.bitLength / 2 ) );
+    this.frameEnded = true;
+    this.step = FIND_START_BIT;
+    return true;
+  }
+
+  /**
+   * Makes room for more edges, by dropping the edges that are no longer
+   * needed, or growing the buffers.
+   */
+  private void compactEdges()
+  {
+    final int count = this.tail - this.head;
+    if ( this.head == 0 )
+    {
+      final long[] times = new long[this.edgeTimes.length * 2];
+      final int[] levels = new int[times.length];
+      System.arraycopy( this.edgeTimes, 0, times, 0, count );
+      System.arraycopy( this.edgeLevels, 0, levels, 0, count );
+      this.edgeTimes = times;
+      this.edgeLevels = levels;
+    }
+    else
+    {
+      System.arraycopy( this.edgeTimes, this.head, this.edgeTimes, 0, count );
+      System.arraycopy( this.edgeLevels, this.head, this.edgeLevels, 0, count );
+    }
+    this.head = 0;
+    this.tail = count;
+  }
+
+  /**
+   * Decodes as far as the edges seen so far allow.
+   */
+  private void decode()
+  {
+    boolean advanced;
+    do
+    {
+      switch ( this.step )
+      {
+        case FIND_START_BIT:
+          advanced = findStartBit();
+          break;
+        case START_BIT:
+          advanced = checkStartBit();
+          break;
+        case NEXT_BIT:
+          advanced = nextBit();
+          break;
+        case DATA_BIT:
+          advanced = sampleDataBit();
+          break;
+        case PARITY_BIT:
+          advanced = checkParityBit();
+          break;
+        case STOP_BIT:
+          advanced = checkStopBit();
+          break;
+        default:
+          advanced = false;
+          break;
+      }
+    }
+    while ( advanced );
+  }
+
+  /**
+   * Drops the buffered edges before the given time, as no bit before that time
+   * will be decoded anymore.
+   * 
+   * @param aTime
+   *          the time before which edges can be dropped.
+   */
+  private void dropEdgesBefore( final long aTime )
+  {
+    while ( ( this.head < this.tail ) && ( this.edgeTimes[this.head] < aTime ) )
+    {
+      this.baseLevel = this.edgeLevels[this.head];
+      this.head++;
+    }
+  }
+
+  /**
+   * Finds a certain type of edge between the two given timestamps.
+   * 
+   * @param aEdge
+   *          the edge to find, Edge.NONE for any edge;
+   * @param aStartTime
+   *          the timestamp to start searching (exclusive);
+   * @param aEndTime
+   *          the timestamp to end the search (exclusive);
+   * @return the time at which the edge was found, -1 if it is not found, or
+   *         {@link #UNKNOWN} if it cannot be determined yet.
+   */
+  private long findEdge( final Edge aEdge, final long aStartTime, final long aEndTime )
+  {
+    for ( int i = this.head; i < this.tail; i++ )
+    {
+      final long edgeTime = this.edgeTimes[i];
+      if ( edgeTime >= aEndTime )
+      {
+        return -1L;
+      }
+      if ( edgeTime > aStartTime )
+      {
+        final Edge edge = ( this.edgeLevels[i] != 0 ) ? Edge.RISING : Edge.FALLING;
+        if ( aEdge.isNone() || ( aEdge == edge ) )
+        {
+          return edgeTime;
+        }
+      }
+    }
+    // The next edge comes at least one time unit after the last one...
+    if ( this.ended || ( this.lastEdgeTime >= ( aEndTime - 1 ) ) )
+    {
+      return -1L;
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Finds the start bit of the next frame, and checks the length of the stop
+   * bit of the previous frame.
+   */
+  private boolean findStartBit()
+  {
+    final long start = findEdge( this.configuration.getIdleLevel().nextEdge(), this.searchFrom, this.endOfDecode );
+    if ( start == UNKNOWN )
+    {
+      return false;
+    }
+
+    if ( this.frameEnded )
+    {
+      // Check length of stopbit
+      final long endOfStopbit = time() + ( long )( this.configuration.getStopBits().getValue() * this.bitLength );
+      if ( ( start >= 0 ) && ( endOfStopbit > start ) )
+      {
+        reportError( ErrorType.FRAME );
+      }
+      this.frameEnded = false;
+    }
+
+    if ( ( start >= 0 ) && ( ( this.endOfDecode - start ) > this.frameSize ) )
+    {
+      this.time = start;
+      // Assume we're jumping here because we found an edge...
+      this.lastEdge = start;
+      this.bitsSinceEdge = 0;
+      dropEdgesBefore( start - 1 );
+
+      this.step = START_BIT;
+    }
+    else
+    {
+      this.head = 0;
+      this.tail = 0;
+      this.step = DONE;
+    }
+    return true;
+  }
+
+  /**
+   * Completes skipping to the next bit, resynchronising on an edge near its
+   * start, if any.
+   */
+  private boolean nextBit()
+  {
+    final long edge = findEdge( Edge.NONE, this.windowStart, this.windowEnd );
+    if ( edge == UNKNOWN )
+    {
+      return false;
+    }
+    if ( edge >= 0 )
+    {
+      // Found an edge, skip to that timestamp instead.
+      this.time = edge;
+
+      // Add the bits since the last edge to the average
+      this.confirmedSamples += ( this.time - this.lastEdge );
+      this.confirmedBits += this.bitsSinceEdge;
+      // And reset the last edge
+      this.lastEdge = this.time;
+      this.bitsSinceEdge = 0;
+    }
+    // Later bits are never sampled before the start of this bit...
+    dropEdgesBefore( time() - ( long )this.bitLength - 2 );
+
+    this.step = this.nextStep;
+    return true;
+  }
+
+  /**
+   * Reports an error at the current time.
+   * 
+   * @param aType
+   *          the type of error to report.
+   */
+  private void reportError( final ErrorType aType )
+  {
+    if ( this.callback != null )
+    {
+      this.callback.onError( this.channelIndex, aType, time() );
+    }
+  }
+
+  /**
+   * Samples the next data bit of the current symbol, and reports the symbol
+   * once all its data bits are sampled.
+   */
+  private boolean sampleDataBit()
+  {
+    final int bitCount = this.configuration.getDataBits();
+
+    if ( this.bitIdx < 0 )
+    {
+      // Keep track of where the symbol originally started...
+      this.symbolStartTime = time();
+      this.bitIdx = 0;
+      this.symbol = 0;
+      this.marks = 0;
+    }
+
+    if ( this.bitIdx < bitCount )
+    {
+      final BitValue value = bitValue();
+      if ( value == null )
+      {
+        return false;
+      }
+      if ( value == BitValue.MARK )
+      {
+        this.symbol |= ( 1 << this.bitIdx );
+        this.marks++;
+      }
+      this.bitIdx++;
+
+      beginNextBit( DATA_BIT );
+      return true;
+    }
+
+    final long endTime = time() - 1;
+
+    // If the most significant bit is first, we need to swap bit-order, as we
+    // normally represent the bits with the least significant bit first...
+    int value = this.symbol;
+    if ( this.configuration.getBitOrder() == BitOrder.MSB_FIRST )
+    {
+      value = reverseBits( value, bitCount );
+    }
+
+    // fully decoded a single symbol...
+    if ( this.callback != null )
+    {
+      this.callback.onSymbol( this.channelIndex, value, this.symbolStartTime, endTime );
+    }
+
+    this.step = this.configuration.getParity().isNone() ? STOP_BIT : PARITY_BIT;
+    return true;
+  }
+
+  /**
+   * The sample time of the start of the current bit.
+   */
+  private long time()
+  {
+    return ( long )this.time;
+  }
+}
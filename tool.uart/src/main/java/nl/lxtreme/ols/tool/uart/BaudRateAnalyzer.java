@@ -31,10 +31,18 @@ import nl.lxtreme.ols.util.analysis.*;
  */
 public final class BaudRateAnalyzer
 {
+  // CONSTANTS
+
+  /**
+   * The default number of bit lengths that are analysed; on larger captures,
+   * the baudrate is estimated from the first bit lengths only.
+   */
+  public static final int DEFAULT_PULSE_LIMIT = 1000000;
+
   // VARIABLES
 
   private final double sampleRate;
-  private final Frequency<Integer> statData;
+  private final Histogram statData;
 
   // CONSTRUCTORS
 
@@ -49,12 +57,12 @@ public final class BaudRateAnalyzer
   public BaudRateAnalyzer( final int aSampleRate, final int aFixedBaudRate )
   {
     this.sampleRate = aSampleRate;
-    this.statData = new Frequency<Integer>();
+    this.statData = new Histogram();
 
     // We already know our baudrate, so lets put a single value for the
     // corresponding bitlength in our frequency mapping to let it be used...
     final int bitLength = ( int )Math.round( aSampleRate / ( double )aFixedBaudRate );
-    this.statData.addValue( Integer.valueOf( bitLength ) );
+    this.statData.addValue( bitLength );
   }
 
   /**
@@ -70,21 +78,40 @@ public final class BaudRateAnalyzer
    *          the value mask to isolate the data.
    */
   public BaudRateAnalyzer( final int aSampleRate, final int[] aValues, final long[] aTimestamps, final int aMask )
+  {
+    this( aSampleRate, aValues, aTimestamps, aMask, DEFAULT_PULSE_LIMIT );
+  }
+
+  /**
+   * Creates a new {@link BaudRateAnalyzer} instance.
+   * 
+   * @param aSampleRate
+   *          the sample rate at which the incoming data was sampled;
+   * @param aValues
+   *          the values to determine the baudrate for;
+   * @param aTimestamps
+   *          the timestamps to use when determining the bit lengths;
+   * @param aMask
+   *          the value mask to isolate the data;
+   * @param aPulseLimit
+   *          the maximum number of bit lengths to analyse, > 0.
+   */
+  public BaudRateAnalyzer( final int aSampleRate, final int[] aValues, final long[] aTimestamps, final int aMask,
+      final int aPulseLimit )
   {
     this.sampleRate = aSampleRate;
-    this.statData = new Frequency<Integer>();
+    this.statData = new Histogram( aPulseLimit );
 
     long lastTransition = 0;
     int lastBitValue = aValues[0] & aMask;
 
-    for ( int i = 0; i < aValues.length; i++ )
+    for ( int i = 0; ( i < aValues.length ) && !this.statData.isSaturated(); i++ )
     {
       final int bitValue = aValues[i] & aMask;
 
       if ( lastBitValue != bitValue )
       {
-        final int bitLength = ( int )( aTimestamps[i] - lastTransition );
-        this.statData.addValue( Integer.valueOf( bitLength ) );
+        this.statData.addValue( aTimestamps[i] - lastTransition );
 
         lastTransition = aTimestamps[i];
       }
@@ -151,27 +178,28 @@ public final class BaudRateAnalyzer
   public double getBestBitLength()
   {
     // Assume that the one-bit transitions are the most frequent.
-    final Integer highestRanked = this.statData.getHighestRanked();
+    if ( this.statData.isEmpty() )
+    {
+      return -1;
+    }
+
+    final long highestRanked = this.statData.getHighestRanked();
     long sum = 0, count = 0;
 
-    if ( highestRanked != null )
-    {
-      double min = highestRanked.doubleValue() * 0.75;
-      double max = highestRanked.doubleValue() * 1.25;
+    double min = highestRanked * 0.75;
+    double max = highestRanked * 1.25;
 
-      for ( final Integer length : this.statData.values() )
+    for ( final long length : this.statData.values() )
+    {
+      if ( min < length && length < max )
       {
-        double bitlength = length.doubleValue();
-        if ( min < bitlength && bitlength < max )
-        {
-          final long rank = this.statData.getCount( length );
-          sum += bitlength * rank;
-          count += rank;
-        }
+        final long rank = this.statData.getCount( length );
+        sum += length * rank;
+        count += rank;
       }
     }
 
     // Return the average of all bit lengths near the most frequent one
-    return ( highestRanked == null ) ? -1 : ( ( ( double )sum ) / count );
+    return ( ( double )sum ) / count;
   }
 }
@@ -21,14 +21,16 @@
 package nl.lxtreme.ols.tool.uart.impl;
 
 
-import static nl.lxtreme.ols.util.NumberUtils.*;
-
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import nl.lxtreme.ols.api.acquisition.*;
 import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.Annotation;
 import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
 import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.tool.base.*;
 import nl.lxtreme.ols.tool.base.annotation.*;
 import nl.lxtreme.ols.tool.uart.*;
 import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
@@ -44,8 +46,393 @@ import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.StopBits;
 /**
  * @author jajans
  */
-public class UARTAnalyserTask implements ToolTask<UARTDataSet>
+public class UARTAnalyserTask implements TransitionDecoderTask<UARTDataSet>
 {
+  // INNER TYPES
+
+  /**
+   * Provides a tool context for a range of samples.
+   */
+  static final class RangeContext implements ToolContext
+  {
+    // VARIABLES
+
+    private final ToolContext context;
+    private final int startIdx;
+    private final int endIdx;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link RangeContext} instance.
+     */
+    RangeContext( final ToolContext aContext, final int aStartIdx, final int aEndIdx )
+    {
+      this.context = aContext;
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannels()
+    {
+      return this.context.getChannels();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor getCursor( final int aSelectedIndex )
+    {
+      return this.context.getCursor( aSelectedIndex );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AcquisitionResult getData()
+    {
+      return this.context.getData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEnabledChannels()
+    {
+      return this.context.getEnabledChannels();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndSampleIndex()
+    {
+      return this.endIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLength()
+    {
+      return this.endIdx - this.startIdx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStartSampleIndex()
+    {
+      return this.startIdx;
+    }
+  }
+
+  /**
+   * Describes one of the RxD, TxD or control lines, including the serial
+   * configuration with which a data line is decoded.
+   */
+  static final class Line
+  {
+    // VARIABLES
+
+    final int channelIndex;
+    final int eventType;
+    final String label;
+    /** The nominal baud rate of a data line. */
+    final int baudRate;
+    /** The configuration of a data line, if it has a usable baud rate. */
+    final SerialConfiguration configuration;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Line} instance.
+     * 
+     * @param aChannelIndex
+     *          the channel index of the line;
+     * @param aEventType
+     *          the event type of the decoded data, or
+     *          {@link UARTData#UART_TYPE_EVENT} for control lines;
+     * @param aLabel
+     *          the default label to use for the decoded channel;
+     * @param aBaudRate
+     *          the nominal baud rate of a data line;
+     * @param aConfiguration
+     *          the serial configuration of a data line, or <code>null</code>
+     *          if the line is not to be decoded as data line.
+     */
+    Line( final int aChannelIndex, final int aEventType, final String aLabel, final int aBaudRate,
+        final SerialConfiguration aConfiguration )
+    {
+      this.channelIndex = aChannelIndex;
+      this.eventType = aEventType;
+      this.label = aLabel;
+      this.baudRate = aBaudRate;
+      this.configuration = aConfiguration;
+    }
+
+    // METHODS
+
+    /**
+     * Returns whether this is a control line.
+     */
+    boolean isControlLine()
+    {
+      return this.eventType == UARTData.UART_TYPE_EVENT;
+    }
+  }
+
+  /**
+   * Decodes all lines within a range of samples, in a single walk over that
+   * range. A range that does not start at the start of the decoding, starts
+   * at a point at which all data lines are idle long enough for any preceding
+   * frame to be complete, so it can be decoded independently of the samples
+   * before it.
+   */
+  final class ChunkDecoder implements Callable<ChunkDecoder>
+  {
+    // VARIABLES
+
+    final int startIdx;
+    final int endIdx;
+    final List<LineDecoder> lineDecoders;
+
+    private final ToolContext dataContext;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link ChunkDecoder} instance.
+     * 
+     * @param aDataStartIdx
+     *          the sample index at which the data lines are decoded;
+     * @param aStartIdx
+     *          the first sample index to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding at.
+     */
+    ChunkDecoder( final int aDataStartIdx, final int aStartIdx, final int aEndIdx )
+    {
+      this.startIdx = aStartIdx;
+      this.endIdx = aEndIdx;
+      this.lineDecoders = new ArrayList<LineDecoder>();
+      this.dataContext = new RangeContext( UARTAnalyserTask.this.context, aDataStartIdx, aEndIdx );
+
+      for ( Line line : UARTAnalyserTask.this.lines )
+      {
+        this.lineDecoders.add( new LineDecoder( line, aStartIdx, aEndIdx ) );
+      }
+    }
+
+    // METHODS
+
+    /**
+     * Decodes all lines of this chunk.
+     * 
+     * @return this decoder, never <code>null</code>.
+     */
+    @Override
+    public ChunkDecoder call() throws Exception
+    {
+      final DecoderEngine engine = new DecoderEngine();
+      prepare( engine );
+      engine.decode( UARTAnalyserTask.this.context.getData(), this.startIdx - 1, this.endIdx, null );
+      return this;
+    }
+
+    /**
+     * Adds the decoders of all lines to the given engine.
+     * 
+     * @param aEngine
+     *          the engine to add the decoders to.
+     */
+    void prepare( final DecoderEngine aEngine )
+    {
+      for ( LineDecoder lineDecoder : this.lineDecoders )
+      {
+        // The first sample only provides the line levels before this chunk...
+        lineDecoder.prepare( aEngine, this.dataContext, this.startIdx - 1, this.endIdx );
+      }
+    }
+  }
+
+  /**
+   * Decodes one of the RxD, TxD or control lines within a range of samples.
+   * The lines of a serial port are independent of each other, so each line has
+   * its own decoder; its decoded data and annotations are kept aside until all
+   * lines are decoded, and then merged in the order of the lines.
+   * <p>
+   * Data lines are decoded by an {@link AsyncSerialTransitionDecoder}, while
+   * control lines only report their edges.
+   * </p>
+   */
+  final class LineDecoder implements TransitionDecoder
+  {
+    // VARIABLES
+
+    final Line line;
+    final UARTDataSet lineData;
+    final List<Annotation<?>> annotations;
+
+    private AsyncSerialTransitionDecoder serialDecoder;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link LineDecoder} instance.
+     * 
+     * @param aLine
+     *          the line to decode;
+     * @param aStartIdx
+     *          the first sample index to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding at.
+     */
+    LineDecoder( final Line aLine, final int aStartIdx, final int aEndIdx )
+    {
+      this.line = aLine;
+      this.lineData = new UARTDataSet( aStartIdx, aEndIdx, UARTAnalyserTask.this.context.getData() );
+      this.annotations = new ArrayList<Annotation<?>>();
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getChannelMask()
+    {
+      return ( 1 << this.line.channelIndex );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEnd( final int aSampleIdx, final long aTimestamp )
+    {
+      // Nop
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStart( final int aSampleIdx, final long aTimestamp, final int aValue )
+    {
+      // Nop
+    }
+
+    /**
+     * Reports the edges of a control line.
+     */
+    @Override
+    public void onTransition( final int aSampleIdx, final long aTimestamp, final int aOldValue, final int aNewValue )
+    {
+      final int mask = getChannelMask();
+
+      final Edge edge = Edge.toEdge( aOldValue & mask, aNewValue & mask );
+      if ( edge.isRising() )
+      {
+        this.lineData.reportControlHigh( this.line.channelIndex, aSampleIdx, this.line.label );
+      }
+      if ( edge.isFalling() )
+      {
+        this.lineData.reportControlLow( this.line.channelIndex, aSampleIdx, this.line.label );
+      }
+    }
+
+    /**
+     * Adds the decoder of this line to the given engine.
+     * 
+     * @param aEngine
+     *          the engine to add the decoder to;
+     * @param aDataContext
+     *          the context of the samples a data line is decoded in;
+     * @param aStartIdx
+     *          the first sample index of a control line to decode;
+     * @param aEndIdx
+     *          the sample index to stop decoding a control line at.
+     */
+    void prepare( final DecoderEngine aEngine, final ToolContext aDataContext, final int aStartIdx,
+        final int aEndIdx )
+    {
+      if ( this.line.isControlLine() )
+      {
+        aEngine.addDecoder( this, aStartIdx, aEndIdx );
+      }
+      else if ( this.line.configuration != null )
+      {
+        prepareDataLine( aEngine, aDataContext );
+      }
+    }
+
+    /**
+     * Adds a serial decoder for a RxD or TxD data line to the given engine.
+     * 
+     * @param aEngine
+     *          the engine to add the serial decoder to;
+     * @param aDataContext
+     *          the context of the samples to decode.
+     */
+    private void prepareDataLine( final DecoderEngine aEngine, final ToolContext aDataContext )
+    {
+      final AcquisitionResult data = aDataContext.getData();
+      final UARTDataSet dataSet = this.lineData;
+      final int channel = this.line.channelIndex;
+      final int type = this.line.eventType;
+
+      final AsyncSerialTransitionDecoder decoder = new AsyncSerialTransitionDecoder( this.line.configuration,
+          aDataContext, channel );
+      decoder.setCallback( new SerialDecoderCallback()
+      {
+        @Override
+        public void onError( final int aChannelIdx, final ErrorType aType, final long aTime )
+        {
+          final int sampleIdx = data.getSampleIndex( aTime );
+          final int errorType = ( type == UARTData.UART_TYPE_RXDATA ) ? UARTData.UART_TYPE_RXEVENT
+              : UARTData.UART_TYPE_TXEVENT;
+
+          dataSet.reportError( aType, aChannelIdx, sampleIdx, errorType );
+        }
+
+        @Override
+        public void onEvent( final int aChannelIdx, final String aEvent, final long aStartTime, final long aEndTime )
+        {
+          // Nop
+        }
+
+        @Override
+        public void onSymbol( final int aChannelIdx, final int aSymbol, final long aStartTime, final long aEndTime )
+        {
+          final int startSampleIdx = Math.max( data.getSampleIndex( aStartTime ), 0 );
+          final int endSampleIdx = Math.min( data.getSampleIndex( aEndTime ), data.getTimestamps().length - 1 );
+
+          dataSet.reportData( channel, startSampleIdx, endSampleIdx, aSymbol, type );
+
+          LineDecoder.this.annotations.add( new SampleDataAnnotation( channel, aStartTime, aEndTime, String.format(
+              "0x%1$X (%1$c)", Integer.valueOf( aSymbol ) ) ) );
+        }
+      } );
+
+      aEngine.addDecoder( decoder, decoder.getStartIndex(), decoder.getEndIndex() );
+      this.serialDecoder = decoder;
+    }
+  }
+
   // CONSTANTS
 
   private static final Logger LOG = Logger.getLogger( UARTAnalyserTask.class.getName() );
@@ -56,6 +443,9 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
    */
   public static final int AUTO_DETECT_BAUDRATE = -1;
 
+  /** The default number of samples in each chunk that is decoded. */
+  static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
   // VARIABLES
 
   private final ToolContext context;
@@ -77,6 +467,11 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
   private Parity parity;
   private int bitCount;
   private int baudRate;
+  private int chunkSize;
+  private UARTDataSet decodedData;
+  private List<Line> lines;
+  private ChunkDecoder chunkDecoder;
+  private IncrementalDecoding<ChunkDecoder> incrementalDecoding;
 
   // CONSTRUCTORS
 
@@ -100,95 +495,75 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
     this.dsrIndex = -1;
     this.dtrIndex = -1;
     this.baudRate = -1;
+    this.chunkSize = DEFAULT_CHUNK_SIZE;
   }
 
   // METHODS
 
   /**
+   * Decodes all lines, in chunks that are decoded concurrently. The chunks of
+   * the previous run are reused where possible, see
+   * {@link #decodeChunks(int, int, int, IncrementalDecoder.Callback)}.
+   * 
    * @see javax.swing.SwingWorker#doInBackground()
    */
   @Override
   public UARTDataSet call() throws Exception
   {
-    final AcquisitionResult data = this.context.getData();
-
-    /*
-     * Start decode from trigger or if no trigger is available from the first
-     * falling edge. The decoder works with two independant decoder runs. First
-     * for RxD and then for TxD, after this CTS, RTS, etc. is detected if
-     * enabled. After decoding all the decoded data are unsortet before the data
-     * is displayed it must be sortet by time.
-     */
-
-    final int[] values = data.getValues();
+    final UARTDataSet dataSet = prepareDecodedData();
 
-    int startOfDecode = this.context.getStartSampleIndex();
-    final int endOfDecode = this.context.getEndSampleIndex();
+    // The line levels before the first chunk are those at the start of the
+    // decoding, but its data lines are decoded from the start of the
+    // context...
+    final int first = dataSet.getStartOfDecode() + 1;
+    final int dataStart = this.context.getStartSampleIndex();
 
-    // find first state change on the selected lines
-    final int mask = getBitMask();
-
-    final int value = values[startOfDecode] & mask;
-    for ( int i = startOfDecode + 1; i < endOfDecode; i++ )
+    final IncrementalDecoder<ChunkDecoder> decoder = new IncrementalDecoder<ChunkDecoder>()
     {
-      if ( value != ( values[i] & mask ) )
+      @Override
+      public void decode( final int aStartIdx, final int aEndIdx, final Callback<ChunkDecoder> aCallback )
+          throws Exception
       {
-        startOfDecode = i;
-        break;
+        decodeChunks( ( aStartIdx == first ) ? dataStart : aStartIdx, aStartIdx, aEndIdx, aCallback );
       }
-    }
+    };
 
-    startOfDecode = Math.max( 0, startOfDecode - 10 );
-
-    // Make sure we've got a valid range to decode..
-    if ( startOfDecode >= endOfDecode )
+    IncrementalDecoding<ChunkDecoder> decoding = this.incrementalDecoding;
+    if ( decoding == null )
     {
-      LOG.log( Level.WARNING, "No valid data range found for UART analysis! Analysis aborted..." );
-      throw new IllegalStateException( "No valid data range found for UART analysis!" );
+      decoding = new IncrementalDecoding<ChunkDecoder>();
     }
 
-    final UARTDataSet decodedData = new UARTDataSet( startOfDecode, endOfDecode, data );
+    this.progressListener.setProgress( 0 );
 
-    // decode RxD/TxD data lines...
-    if ( this.rxdIndex >= 0 )
-    {
-      prepareAndDecodeData( decodedData, this.rxdIndex, UARTData.UART_TYPE_RXDATA, UARTDataSet.UART_RXD );
-    }
-    if ( this.txdIndex >= 0 )
-    {
-      prepareAndDecodeData( decodedData, this.txdIndex, UARTData.UART_TYPE_TXDATA, UARTDataSet.UART_TXD );
-    }
+    final List<ChunkDecoder> chunks = decoding.decode( decoder, this.context.getData(), getSettings(), first,
+        dataSet.getEndOfDecode() );
 
-    // decode control lines...
-    if ( this.ctsIndex >= 0 )
-    {
-      prepareAndDecodeControl( decodedData, this.ctsIndex, UARTDataSet.UART_CTS );
-    }
-    if ( this.rtsIndex >= 0 )
-    {
-      prepareAndDecodeControl( decodedData, this.rtsIndex, UARTDataSet.UART_RTS );
-    }
-    if ( this.dcdIndex >= 0 )
-    {
-      prepareAndDecodeControl( decodedData, this.dcdIndex, UARTDataSet.UART_DCD );
-    }
-    if ( this.riIndex >= 0 )
-    {
-      prepareAndDecodeControl( decodedData, this.riIndex, UARTDataSet.UART_RI );
-    }
-    if ( this.dsrIndex >= 0 )
-    {
-      prepareAndDecodeControl( decodedData, this.dsrIndex, UARTDataSet.UART_DSR );
-    }
-    if ( this.dtrIndex >= 0 )
-    {
-      prepareAndDecodeControl( decodedData, this.dtrIndex, UARTDataSet.UART_DTR );
-    }
+    return mergeChunks( chunks );
+  }
 
-    // sort the results by time
-    decodedData.sort();
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public UARTDataSet completeDecoding()
+  {
+    return mergeChunks( Collections.singletonList( this.chunkDecoder ) );
+  }
 
-    return decodedData;
+  /**
+   * Prepares the decoding, and adds the decoders of all lines to the given
+   * engine; as the engine walks over all data anyway, the data is not split
+   * into chunks.
+   */
+  @Override
+  public void prepareDecoding( final DecoderEngine aEngine )
+  {
+    final UARTDataSet dataSet = prepareDecodedData();
+
+    this.chunkDecoder = new ChunkDecoder( this.context.getStartSampleIndex(), dataSet.getStartOfDecode() + 1,
+        dataSet.getEndOfDecode() );
+    this.chunkDecoder.prepare( aEngine );
   }
 
   /**
@@ -210,6 +585,21 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
     this.bitCount = aBitCount;
   }
 
+  /**
+   * Sets the number of samples in each chunk that is decoded concurrently.
+   * 
+   * @param aChunkSize
+   *          the chunk size to set, > 0.
+   */
+  final void setChunkSize( final int aChunkSize )
+  {
+    if ( aChunkSize < 1 )
+    {
+      throw new IllegalArgumentException( "Chunk size must be at least one!" );
+    }
+    this.chunkSize = aChunkSize;
+  }
+
   /**
    * @param aCtsIndex
    *          the ctsMask to set
@@ -270,6 +660,19 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
     this.idleLevel = aIdleLevel;
   }
 
+  /**
+   * Sets the incremental decoding to use, allowing the chunks decoded by a
+   * previous task to be reused.
+   * 
+   * @param aIncrementalDecoding
+   *          the incremental decoding to use, can be <code>null</code> to
+   *          always decode all chunks.
+   */
+  final void setIncrementalDecoding( final IncrementalDecoding<ChunkDecoder> aIncrementalDecoding )
+  {
+    this.incrementalDecoding = aIncrementalDecoding;
+  }
+
   /**
    * @param aParity
    */
@@ -323,150 +726,177 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
   }
 
   /**
-   * Emits a new symbol annotation to the interested listener(s).
+   * Creates the description of the given line, and determines the baud rate
+   * of a RxD or TxD data line.
    * 
    * @param aChannelIndex
-   *          the channel index on which the symbol was found;
-   * @param aSymbol
-   *          the symbol itself;
-   * @param aStartSampleIdx
-   *          the start sample index of the symbol;
-   * @param aEndSampleIdx
-   *          the end sample index of the symbol.
-   */
-  private void addSymbolAnnotation( final int aChannelIndex, final int aSymbol, final long aStartTimestamp,
-      final long aEndTimestamp )
-  {
-    this.annotationListener.onAnnotation( new SampleDataAnnotation( aChannelIndex, aStartTimestamp, aEndTimestamp,
-        String.format( "0x%1$X (%1$c)", Integer.valueOf( aSymbol ) ) ) );
-  }
-
-  /**
-   * Decodes a control line.
-   * 
-   * @param aDataSet
-   *          the data set to add the decoded data to;
-   * @param aChannelIndex
-   *          the channel index of the control-line to decode;
-   * @param aName
-   *          the name of the control line to decode.
+   *          the channel index of the line;
+   * @param aEventType
+   *          the event type of the decoded data, or
+   *          {@link UARTData#UART_TYPE_EVENT} for control lines;
+   * @param aLabel
+   *          the default label to use for the decoded channel.
+   * @return the line description, never <code>null</code>.
    */
-  private void decodeControl( final UARTDataSet aDataSet, final int aChannelIndex, final String aName )
+  private Line createLine( final int aChannelIndex, final int aEventType, final String aLabel )
   {
-    final AcquisitionResult data = this.context.getData();
-
-    if ( LOG.isLoggable( Level.FINE ) )
-    {
-      LOG.log( Level.FINE, "Decoding control: {0} ...", aName );
-    }
-
-    final int mask = ( 1 << aChannelIndex );
-
-    final int startSampleIdx = aDataSet.getStartOfDecode();
-    final int endSampleIdx = aDataSet.getEndOfDecode();
-
-    final int[] values = data.getValues();
-    this.progressListener.setProgress( 0 );
-
-    int oldValue = values[startSampleIdx] & mask;
-    for ( int i = startSampleIdx + 1; i < endSampleIdx; i++ )
+    if ( aEventType == UARTData.UART_TYPE_EVENT )
     {
-      final int value = values[i] & mask;
-
-      final Edge edge = Edge.toEdge( oldValue, value );
-      if ( edge.isRising() )
-      {
-        aDataSet.reportControlHigh( aChannelIndex, i, aName );
-      }
-      if ( edge.isFalling() )
-      {
-        aDataSet.reportControlLow( aChannelIndex, i, aName );
-      }
-      oldValue = value;
-
-      // update progress
-      this.progressListener.setProgress( getPercentage( i, startSampleIdx, endSampleIdx ) );
+      return new Line( aChannelIndex, aEventType, aLabel, 0, null );
     }
-  }
 
-  /**
-   * @param aDataSet
-   *          the data set to add the decoded data to;
-   * @param aChannelIndex
-   *          the channel index to decode;
-   * @param aType
-   *          type of the data (rx or tx)
-   */
-  private void decodeData( final UARTDataSet aDataSet, final int aChannelIndex, final int aEventType )
-  {
     final AcquisitionResult data = this.context.getData();
 
+    final int nominalBaudRate;
     final int baudRate;
 
     if ( this.baudRate == AUTO_DETECT_BAUDRATE )
     {
-      // Auto detect the baud rate...
+      // Auto detect the baud rate; this needs the pulse widths of the entire
+      // line before decoding...
       final int mask = ( 1 << aChannelIndex );
-      final BaudRateAnalyzer baudRateAnalyzer = new BaudRateAnalyzer( data.getSampleRate(), data.getValues(), data.getTimestamps(), mask );
+      final BaudRateAnalyzer baudRateAnalyzer = new BaudRateAnalyzer( data.getSampleRate(), data.getValues(),
+          data.getTimestamps(), mask );
       baudRate = baudRateAnalyzer.getBaudRateExact();
       // Set nominal (normalized) baud rate
-      aDataSet.setBaudRate( baudRateAnalyzer.getBaudRate() );
-    } else {
+      nominalBaudRate = baudRateAnalyzer.getBaudRate();
+    }
+    else
+    {
       baudRate = this.baudRate;
       // Set nominal baud rate
-      aDataSet.setBaudRate( baudRate );
+      nominalBaudRate = baudRate;
     }
 
     LOG.log( Level.FINE, "Baudrate = {0}bps", Integer.valueOf( baudRate ) );
 
     if ( baudRate <= 0 )
     {
-      LOG.log( Level.INFO, "No (usable) {0}-data found for determining bitlength/baudrate ...",
-          aChannelIndex == this.rxdIndex ? UARTDataSet.UART_RXD : UARTDataSet.UART_TXD );
+      LOG.log( Level.INFO, "No (usable) {0}-data found for determining bitlength/baudrate ...", aLabel );
+      return new Line( aChannelIndex, aEventType, aLabel, nominalBaudRate, null );
     }
-    else
-    {
 
-      SerialConfiguration config = new SerialConfiguration( baudRate, this.bitCount,
-          this.stopBits, this.parity, this.bitEncoding, this.bitOrder, this.idleLevel );
+    final SerialConfiguration config = new SerialConfiguration( baudRate, this.bitCount, this.stopBits, this.parity,
+        this.bitEncoding, this.bitOrder, this.idleLevel );
 
-      AsyncSerialDataDecoder decoder = new AsyncSerialDataDecoder( config, this.context );
-      decoder.setProgressListener( this.progressListener );
-      decoder.setCallback( new SerialDecoderCallback()
-      {
-        @Override
-        public void onError( final int aChannelIdx, final ErrorType aType, final long aTime )
-        {
-          final int sampleIdx = data.getSampleIndex( aTime );
-          final int eventType = ( aEventType == UARTData.UART_TYPE_RXDATA ) ? UARTData.UART_TYPE_RXEVENT
-              : UARTData.UART_TYPE_TXEVENT;
+    return new Line( aChannelIndex, aEventType, aLabel, nominalBaudRate, config );
+  }
 
-          aDataSet.reportError( aType, aChannelIdx, sampleIdx, eventType );
-        }
+  /**
+   * Decodes the chunks in the given range concurrently. The points at which
+   * the chunks are split are reported as checkpoints, as the chunks following
+   * them do not depend on any earlier sample. The same goes for the end of the
+   * range, in case all data lines are idle there.
+   * 
+   * @param aDataStartIdx
+   *          the sample index at which the data lines of the first chunk are
+   *          decoded;
+   * @param aStartIdx
+   *          the first sample index to decode, > 0;
+   * @param aEndIdx
+   *          the sample index to stop decoding at;
+   * @param aCallback
+   *          the callback to report the decoded chunks to.
+   */
+  private void decodeChunks( final int aDataStartIdx, final int aStartIdx, final int aEndIdx,
+      final IncrementalDecoder.Callback<ChunkDecoder> aCallback ) throws Exception
+  {
+    final int idleGap = getIdleGap();
+    final int[] splitPoints = findChunkStarts( aStartIdx, aEndIdx, idleGap );
 
-        @Override
-        public void onEvent( final int aChannelIdx, final String aEvent, final long aStartTime, final long aEndTime )
+    final List<ChunkDecoder> decoders = new ArrayList<ChunkDecoder>();
+    for ( int i = 1; i < splitPoints.length; i++ )
+    {
+      final int dataStartIdx = ( i == 1 ) ? aDataStartIdx : splitPoints[i - 1];
+      decoders.add( new ChunkDecoder( dataStartIdx, splitPoints[i - 1], splitPoints[i] ) );
+    }
+
+    final List<Future<ChunkDecoder>> results = ParallelDecoding.submitAll( decoders );
+    try
+    {
+      for ( int i = 0; i < results.size(); i++ )
+      {
+        final ChunkDecoder decoder = ParallelDecoding.getResult( results.get( i ) );
+
+        if ( i > 0 )
         {
-          // Nop
+          aCallback.onCheckpoint( splitPoints[i] );
         }
+        aCallback.onItem( decoder );
 
-        @Override
-        public void onSymbol( final int aChannelIdx, final int aSymbol, final long aStartTime, final long aEndTime )
-        {
-          final int startSampleIdx = Math.max( data.getSampleIndex( aStartTime ), 0 );
-          final int endSampleIdx = Math.min( data.getSampleIndex( aEndTime ), data.getTimestamps().length - 1 );
+        this.progressListener.setProgress( ( int )( ( ( i + 1 ) * 100.0 ) / results.size() ) );
+      }
+
+      if ( isIdleAt( aEndIdx, idleGap ) )
+      {
+        // The next chunk does not depend on any of the decoded chunks...
+        aCallback.onCheckpoint( aEndIdx );
+      }
+    }
+    finally
+    {
+      ParallelDecoding.cancelAll( results );
+    }
+  }
+
+  /**
+   * Locates the points at which the given range is split into chunks, being
+   * the first sample index after each chunk size samples at which all data
+   * lines are idle, see {@link #isIdleAt(int, int)}.
+   * 
+   * @param aStartIdx
+   *          the sample index to start searching;
+   * @param aEndIdx
+   *          the sample index to end the search;
+   * @param aIdleGap
+   *          the number of samples the data lines should not change.
+   * @return the sample indexes at which the chunks start, followed by the
+   *         given end index, never <code>null</code>.
+   */
+  private int[] findChunkStarts( final int aStartIdx, final int aEndIdx, final int aIdleGap )
+  {
+    final AcquisitionResult data = this.context.getData();
+    final int[] values = data.getValues();
+    final long[] timestamps = data.getTimestamps();
+    final int mask = getDataMask();
+    final int idleValue = ( this.idleLevel == BitLevel.HIGH ) ? mask : 0;
+
+    int[] result = new int[64];
+    int count = 0;
+    result[count++] = aStartIdx;
 
-          aDataSet.reportData( aChannelIndex, startSampleIdx, endSampleIdx, aSymbol, aEventType );
+    // The changes just before the start of the range are relevant as well...
+    int idx = aStartIdx;
+    while ( ( idx > 1 ) && ( timestamps[idx - 1] >= ( timestamps[aStartIdx] - aIdleGap ) ) )
+    {
+      idx--;
+    }
 
-          addSymbolAnnotation( aChannelIndex, aSymbol, aStartTime, aEndTime );
+    // The data lines are decoded from the start of the context, so no chunk
+    // can start before it...
+    int nextIdx = Math.max( aStartIdx + this.chunkSize, this.context.getStartSampleIndex() + 1 );
+    long lastChange = Long.MIN_VALUE;
+    for ( ; idx < aEndIdx; idx++ )
+    {
+      if ( ( idx >= nextIdx ) && ( ( values[idx - 1] & mask ) == idleValue )
+          && ( lastChange <= ( timestamps[idx] - aIdleGap ) ) )
+      {
+        if ( count == result.length - 1 )
+        {
+          result = Arrays.copyOf( result, count << 1 );
         }
-      } );
+        result[count++] = idx;
+        nextIdx = idx + this.chunkSize;
+      }
 
-      final double sampledBitLength = decoder.decodeDataLine( aChannelIndex );
-      // Set the actual bit length used, so UARTDataSet can calculate
-      // the actual baud rate used.
-      aDataSet.setSampledBitLength( sampledBitLength );
+      if ( ( idx > 0 ) && ( ( values[idx - 1] & mask ) != ( values[idx] & mask ) ) )
+      {
+        lastChange = timestamps[idx];
+      }
     }
+
+    result[count++] = aEndIdx;
+    return Arrays.copyOf( result, count );
   }
 
   /**
@@ -530,51 +960,251 @@ public class UARTAnalyserTask implements ToolTask<UARTDataSet>
   }
 
   /**
-   * Prepares and decoded the control line indicated by the given channel index.
+   * Builds a bit mask of the data lines that are decoded.
    * 
-   * @param aDataSet
-   *          the dataset to add the decoding results to;
-   * @param aChannelIndex
-   *          the channel index of the channel to decode;
-   * @param aDefaultLabel
-   *          the default label to use for the decoded channel.
+   * @return a bit mask, >= 0.
    */
-  private void prepareAndDecodeControl( final UARTDataSet aDataSet, final int aChannelIndex, final String aDefaultLabel )
+  private int getDataMask()
   {
-    prepareResult( aChannelIndex, aDefaultLabel );
-    decodeControl( aDataSet, aChannelIndex, aDefaultLabel );
+    int result = 0x00;
+    for ( Line line : this.lines )
+    {
+      if ( line.configuration != null )
+      {
+        result |= ( 1 << line.channelIndex );
+      }
+    }
+    return result;
   }
 
   /**
-   * Prepares and decoded the data line indicated by the given channel index.
+   * Returns the number of samples the data lines should not change before a
+   * chunk starts. A frame that starts before this gap is decoded completely
+   * before the chunk starts, even when resynchronised on each bit.
    * 
-   * @param aDataSet
-   *          the dataset to add the decoding results to;
-   * @param aChannelIndex
-   *          the channel index of the channel to decode;
-   * @param aEventType
-   *          the event type to use for the decoded data;
-   * @param aDefaultLabel
-   *          the default label to use for the decoded channel.
+   * @return a number of samples, >= 0.
    */
-  private void prepareAndDecodeData( final UARTDataSet aDataSet, final int aChannelIndex, final int aEventType,
-      final String aDefaultLabel )
+  private int getIdleGap()
   {
-    prepareResult( aChannelIndex, aDefaultLabel );
-    decodeData( aDataSet, aChannelIndex, aEventType );
+    final int sampleRate = this.context.getData().getSampleRate();
+
+    long result = 0L;
+    for ( Line line : this.lines )
+    {
+      final SerialConfiguration config = line.configuration;
+      if ( config != null )
+      {
+        final double bitLength = config.getBitLength( sampleRate );
+        final long gap = config.getFrameSize( sampleRate ) + ( long )Math.ceil( 2.0 * bitLength )
+            + config.getDataBits() + 8L;
+        result = Math.max( result, gap );
+      }
+    }
+    return ( int )result;
   }
 
   /**
-   * Determines the resulting channel label and clears any existing annotations.
+   * Returns the settings that determine the outcome of decoding the chunks,
+   * used to determine whether the chunks of a previous run can be reused.
    * 
-   * @param aChannelIndex
-   *          the channel index of the channel to prepare;
-   * @param aLabel
-   *          the default label to use for the channel (in case none is set).
+   * @return the settings, never <code>null</code>.
    */
-  private void prepareResult( final int aChannelIndex, final String aLabel )
+  private Object getSettings()
   {
-    this.annotationListener.clearAnnotations( aChannelIndex );
-    this.annotationListener.onAnnotation( new ChannelLabelAnnotation( aChannelIndex, aLabel ) );
+    // The data lines are decoded from the start of the context...
+    final List<Object> result = new ArrayList<Object>( Arrays.<Object> asList(
+        Integer.valueOf( this.context.getStartSampleIndex() ), Integer.valueOf( this.bitCount ), this.stopBits,
+        this.parity, this.bitEncoding, this.bitOrder, this.idleLevel ) );
+
+    for ( Line line : this.lines )
+    {
+      result.add( Integer.valueOf( line.channelIndex ) );
+      result.add( line.label );
+      result.add( Integer.valueOf( line.baudRate ) );
+      result.add( ( line.configuration != null ) ? Integer.valueOf( line.configuration.getBaudRate() ) : null );
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether all data lines are idle at the given sample index, and did
+   * not change during the given number of samples before it. As any frame
+   * preceding it is complete by then, the samples from there on can be
+   * decoded independently of the samples before it.
+   * 
+   * @param aSampleIdx
+   *          the sample index to test;
+   * @param aIdleGap
+   *          the number of samples the data lines should not change.
+   * @return <code>true</code> if the data lines are idle at the given sample
+   *         index, <code>false</code> otherwise.
+   */
+  private boolean isIdleAt( final int aSampleIdx, final int aIdleGap )
+  {
+    final AcquisitionResult data = this.context.getData();
+    final int[] values = data.getValues();
+    final long[] timestamps = data.getTimestamps();
+    final int mask = getDataMask();
+    final int idleValue = ( this.idleLevel == BitLevel.HIGH ) ? mask : 0;
+
+    if ( ( aSampleIdx <= this.context.getStartSampleIndex() ) || ( aSampleIdx >= values.length )
+        || ( ( values[aSampleIdx - 1] & mask ) != idleValue ) )
+    {
+      return false;
+    }
+
+    final long gapStart = timestamps[aSampleIdx] - aIdleGap;
+    for ( int idx = aSampleIdx - 1; ( idx > 0 ) && ( timestamps[idx] > gapStart ); idx-- )
+    {
+      if ( ( values[idx - 1] & mask ) != ( values[idx] & mask ) )
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Merges the decoded results of the given chunks into the overall results,
+   * line by line, and emits the buffered annotations of each line.
+   * 
+   * @param aChunks
+   *          the decoded chunks, in order.
+   * @return the overall results, never <code>null</code>.
+   */
+  private UARTDataSet mergeChunks( final List<ChunkDecoder> aChunks )
+  {
+    // The results are merged in a fixed order, so the outcome does not depend
+    // on the order in which the lines and chunks are decoded...
+    for ( int i = 0; i < this.lines.size(); i++ )
+    {
+      final Line line = this.lines.get( i );
+
+      this.annotationListener.clearAnnotations( line.channelIndex );
+      this.annotationListener.onAnnotation( new ChannelLabelAnnotation( line.channelIndex, line.label ) );
+
+      double confirmedSamples = 0.0;
+      long confirmedBits = 0L;
+      for ( ChunkDecoder chunk : aChunks )
+      {
+        final LineDecoder lineDecoder = chunk.lineDecoders.get( i );
+
+        this.decodedData.merge( lineDecoder.lineData );
+        for ( Annotation<?> annotation : lineDecoder.annotations )
+        {
+          this.annotationListener.onAnnotation( annotation );
+        }
+
+        if ( lineDecoder.serialDecoder != null )
+        {
+          confirmedSamples += lineDecoder.serialDecoder.getConfirmedSampleCount();
+          confirmedBits += lineDecoder.serialDecoder.getConfirmedBitCount();
+        }
+      }
+
+      if ( !line.isControlLine() )
+      {
+        this.decodedData.setBaudRate( line.baudRate );
+        if ( line.configuration != null )
+        {
+          // Keep the actual bit length used, so UARTDataSet can calculate the
+          // actual baud rate used...
+          this.decodedData.setSampledBitLength( confirmedSamples / confirmedBits );
+        }
+      }
+    }
+
+    // sort the results by time
+    this.decodedData.sort();
+
+    return this.decodedData;
+  }
+
+  /**
+   * Determines where the decoding starts and the baud rates of the data lines,
+   * and creates the data set for the decoded data.
+   * 
+   * @return the data set for the decoded data, never <code>null</code>.
+   */
+  private UARTDataSet prepareDecodedData()
+  {
+    final AcquisitionResult data = this.context.getData();
+
+    /*
+     * Start decode from trigger or if no trigger is available from the first
+     * falling edge. RxD, TxD, CTS, RTS, etc. are decoded by independent line
+     * decoders. After decoding all the decoded data are unsorted; before the
+     * data is displayed it must be sorted by time.
+     */
+
+    final int[] values = data.getValues();
+
+    int startOfDecode = this.context.getStartSampleIndex();
+    final int endOfDecode = this.context.getEndSampleIndex();
+
+    // find first state change on the selected lines
+    final int mask = getBitMask();
+
+    final int value = values[startOfDecode] & mask;
+    for ( int i = startOfDecode + 1; i < endOfDecode; i++ )
+    {
+      if ( value != ( values[i] & mask ) )
+      {
+        startOfDecode = i;
+        break;
+      }
+    }
+
+    startOfDecode = Math.max( 0, startOfDecode - 10 );
+
+    // Make sure we've got a valid range to decode..
+    if ( startOfDecode >= endOfDecode )
+    {
+      LOG.log( Level.WARNING, "No valid data range found for UART analysis! Analysis aborted..." );
+      throw new IllegalStateException( "No valid data range found for UART analysis!" );
+    }
+
+    final List<Line> result = new ArrayList<Line>();
+
+    // decode RxD/TxD data lines...
+    if ( this.rxdIndex >= 0 )
+    {
+      result.add( createLine( this.rxdIndex, UARTData.UART_TYPE_RXDATA, UARTDataSet.UART_RXD ) );
+    }
+    if ( this.txdIndex >= 0 )
+    {
+      result.add( createLine( this.txdIndex, UARTData.UART_TYPE_TXDATA, UARTDataSet.UART_TXD ) );
+    }
+
+    // decode control lines...
+    if ( this.ctsIndex >= 0 )
+    {
+      result.add( createLine( this.ctsIndex, UARTData.UART_TYPE_EVENT, UARTDataSet.UART_CTS ) );
+    }
+    if ( this.rtsIndex >= 0 )
+    {
+      result.add( createLine( this.rtsIndex, UARTData.UART_TYPE_EVENT, UARTDataSet.UART_RTS ) );
+    }
+    if ( this.dcdIndex >= 0 )
+    {
+      result.add( createLine( this.dcdIndex, UARTData.UART_TYPE_EVENT, UARTDataSet.UART_DCD ) );
+    }
+    if ( this.riIndex >= 0 )
+    {
+      result.add( createLine( this.riIndex, UARTData.UART_TYPE_EVENT, UARTDataSet.UART_RI ) );
+    }
+    if ( this.dsrIndex >= 0 )
+    {
+      result.add( createLine( this.dsrIndex, UARTData.UART_TYPE_EVENT, UARTDataSet.UART_DSR ) );
+    }
+    if ( this.dtrIndex >= 0 )
+    {
+      result.add( createLine( this.dtrIndex, UARTData.UART_TYPE_EVENT, UARTDataSet.UART_DTR ) );
+    }
+
+    this.decodedData = new UARTDataSet( startOfDecode, endOfDecode, data );
+    this.lines = result;
+
+    return this.decodedData;
   }
 }
@@ -75,6 +75,17 @@ public final class UARTData extends BaseData<UARTData>
     this.type = aType;
   }
 
+  /*
+   * copy with another index
+   */
+  UARTData( final int aIndex, final UARTData aData )
+  {
+    super( aIndex, aData.getChannelIdx(), aData.getStartSampleIndex(), aData.getEndSampleIndex(), aData
+        .getEventName() );
+    this.data = aData.data;
+    this.type = aData.type;
+  }
+
   // METHODS
 
   /**
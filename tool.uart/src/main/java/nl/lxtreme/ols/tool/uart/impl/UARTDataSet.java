@@ -120,6 +120,23 @@ public final class UARTDataSet extends BaseDataSet<UARTData>
     return this.detectedErrors;
   }
 
+  /**
+   * Appends all data decoded from another line to this data set. The data is
+   * renumbered, as each line is decoded in a data set of its own.
+   * 
+   * @param aDataSet
+   *          the data set to merge, cannot be <code>null</code>.
+   */
+  public void merge( final UARTDataSet aDataSet )
+  {
+    for ( UARTData data : aDataSet.getData() )
+    {
+      addData( new UARTData( size(), data ) );
+    }
+    this.decodedSymbols += aDataSet.decodedSymbols;
+    this.detectedErrors += aDataSet.detectedErrors;
+  }
+
   /**
    * Returns whether or not the bitlength is usable.
    * 
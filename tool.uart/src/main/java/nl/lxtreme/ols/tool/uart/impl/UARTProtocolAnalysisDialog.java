@@ -235,6 +235,8 @@ public final class UARTProtocolAnalysisDialog extends BaseToolDialog<UARTDataSet
 
   // VARIABLES
 
+  private final IncrementalDecoding<UARTAnalyserTask.ChunkDecoder> incrementalDecoding;
+
   private JComboBox rxd;
   private JComboBox txd;
   private JComboBox cts;
@@ -276,6 +278,8 @@ public final class UARTProtocolAnalysisDialog extends BaseToolDialog<UARTDataSet
   {
     super( aOwner, aToolContext, aContext, aTool );
 
+    this.incrementalDecoding = new IncrementalDecoding<UARTAnalyserTask.ChunkDecoder>();
+
     initDialog();
 
     setLocationRelativeTo( getOwner() );
@@ -445,6 +449,8 @@ public final class UARTProtocolAnalysisDialog extends BaseToolDialog<UARTDataSet
     toolTask.setParity( ( Parity )this.parity.getSelectedItem() );
     toolTask.setStopBits( ( StopBits )this.stop.getSelectedItem() );
     toolTask.setBitCount( NumberUtils.smartParseInt( ( String )this.bits.getSelectedItem(), 8 ) );
+    // Reuse the chunks of the previous run...
+    toolTask.setIncrementalDecoding( this.incrementalDecoding );
   }
 
   /**
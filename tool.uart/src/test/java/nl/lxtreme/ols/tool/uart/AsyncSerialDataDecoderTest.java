@@ -0,0 +1,135 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.uart;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitEncoding;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitOrder;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.SerialConfiguration;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.SerialDecoderCallback;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.StopBits;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link AsyncSerialDataDecoder}.
+ */
+public class AsyncSerialDataDecoderTest
+{
+  // CONSTANTS
+
+  private static final int SAMPLE_RATE = 1000000;
+  private static final int BAUD_RATE = 9600;
+
+  // METHODS
+
+  /**
+   * Tests that symbols that are separated by an (extremely) long idle time are
+   * decoded, without having to step through all idle time.
+   */
+  @Test( timeout = 10000 )
+  public void testDecodeSymbolsWithLongIdleTimeOk()
+  {
+    final List<Integer> values = new ArrayList<Integer>();
+    final List<Long> timestamps = new ArrayList<Long>();
+
+    values.add( Integer.valueOf( 1 ) );
+    timestamps.add( Long.valueOf( 0L ) );
+
+    addSymbol( values, timestamps, 1000000L, 0x55 );
+    addSymbol( values, timestamps, 1000000000000L, 0xA3 );
+    addSymbol( values, timestamps, 2000000000000L, 0x0F );
+
+    // Idle until the end of the capture...
+    values.add( Integer.valueOf( 1 ) );
+    timestamps.add( Long.valueOf( 3000000000000L ) );
+
+    final AcquisitionResult data = new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 1, 0x01,
+        3000000000001L );
+    final ToolContext context = DataTestUtils.createToolContext( data );
+
+    final List<Integer> symbols = new ArrayList<Integer>();
+    final List<ErrorType> errors = new ArrayList<ErrorType>();
+
+    final AsyncSerialDataDecoder decoder = new AsyncSerialDataDecoder( new SerialConfiguration( BAUD_RATE, 8,
+        StopBits.ONE, Parity.NONE, BitEncoding.HIGH_IS_MARK, BitOrder.LSB_FIRST, BitLevel.HIGH ), context );
+    decoder.setCallback( new SerialDecoderCallback()
+    {
+      @Override
+      public void onError( final int aChannelIdx, final ErrorType aType, final long aTime )
+      {
+        errors.add( aType );
+      }
+
+      @Override
+      public void onEvent( final int aChannelIdx, final String aEvent, final long aStartTime, final long aEndTime )
+      {
+        // Nothing to do...
+      }
+
+      @Override
+      public void onSymbol( final int aChannelIdx, final int aSymbol, final long aStartTime, final long aEndTime )
+      {
+        symbols.add( Integer.valueOf( aSymbol ) );
+      }
+    } );
+
+    decoder.decodeDataLine( 0 );
+
+    assertEquals( Arrays.asList( Integer.valueOf( 0x55 ), Integer.valueOf( 0xA3 ), Integer.valueOf( 0x0F ) ),
+        symbols );
+    assertTrue( "Unexpected errors: " + errors, errors.isEmpty() );
+  }
+
+  /**
+   * Adds the transitions of a single 8N1-symbol starting at the given time.
+   */
+  private static void addSymbol( final List<Integer> aValues, final List<Long> aTimestamps, final long aStartTime,
+      final int aSymbol )
+  {
+    final double bitLength = ( double )SAMPLE_RATE / BAUD_RATE;
+
+    // start bit, 8 data bits (LSB first) and a stop bit...
+    final int frame = 0x200 | ( ( aSymbol & 0xFF ) << 1 );
+    for ( int i = 0; i < 10; i++ )
+    {
+      final int level = ( frame >> i ) & 1;
+      final int lastLevel = aValues.get( aValues.size() - 1 ).intValue();
+      if ( level != lastLevel )
+      {
+        aValues.add( Integer.valueOf( level ) );
+        aTimestamps.add( Long.valueOf( aStartTime + Math.round( i * bitLength ) ) );
+      }
+    }
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.uart;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitEncoding;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitOrder;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.ErrorType;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.SerialConfiguration;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.SerialDecoderCallback;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.StopBits;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link AsyncSerialTransitionDecoder}.
+ */
+public class AsyncSerialTransitionDecoderTest
+{
+  // INNER TYPES
+
+  /**
+   * Records all symbols and errors reported to it.
+   */
+  static final class RecordingCallback implements SerialDecoderCallback
+  {
+    // VARIABLES
+
+    final List<String> events = new ArrayList<String>();
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError( final int aChannelIdx, final ErrorType aType, final long aTime )
+    {
+      this.events.add( aType + "@" + aTime );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent( final int aChannelIdx, final String aEvent, final long aStartTime, final long aEndTime )
+    {
+      this.events.add( aEvent + "@" + aStartTime + "-" + aEndTime );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSymbol( final int aChannelIdx, final int aSymbol, final long aStartTime, final long aEndTime )
+    {
+      this.events.add( Integer.toHexString( aSymbol ) + "@" + aStartTime + "-" + aEndTime );
+    }
+  }
+
+  // CONSTANTS
+
+  private static final int SAMPLE_RATE = 1000000;
+  private static final int BAUD_RATE = 9600;
+
+  // METHODS
+
+  /**
+   * Tests that noisy serial data, with glitches and framing errors, on a line
+   * along with another, unrelated line yields the same symbols and errors as
+   * the {@link AsyncSerialDataDecoder}, for various configurations and
+   * decoding ranges.
+   */
+  @Test
+  public void testDecodeNoisyDataSameAsDataDecoderOk() throws Exception
+  {
+    final SerialConfiguration[] configs = {
+        new SerialConfiguration( BAUD_RATE, 8, StopBits.ONE, Parity.NONE, BitEncoding.HIGH_IS_MARK,
+            BitOrder.LSB_FIRST, BitLevel.HIGH ),
+        new SerialConfiguration( BAUD_RATE, 7, StopBits.TWO, Parity.EVEN, BitEncoding.HIGH_IS_MARK,
+            BitOrder.MSB_FIRST, BitLevel.HIGH ),
+        new SerialConfiguration( BAUD_RATE, 9, StopBits.ONE_HALF, Parity.ODD, BitEncoding.HIGH_IS_SPACE,
+            BitOrder.LSB_FIRST, BitLevel.LOW ) };
+
+    final Random random = new Random( 7L );
+    for ( int c = 0; c < configs.length; c++ )
+    {
+      final SerialConfiguration config = configs[c];
+      final AcquisitionResult data = createNoisyData( random, config, 300 );
+      final int sampleCount = data.getValues().length;
+
+      final int[][] ranges = { { 0, sampleCount - 1 }, { 1, sampleCount - 1 },
+          { random.nextInt( sampleCount / 4 ), sampleCount / 2 + random.nextInt( sampleCount / 4 ) },
+          { sampleCount / 3, sampleCount / 3 + 40 } };
+      for ( int[] range : ranges )
+      {
+        final ToolContext context = DataTestUtils.createToolContext( data, range[0], range[1] );
+
+        final RecordingCallback expected = new RecordingCallback();
+        final AsyncSerialDataDecoder dataDecoder = new AsyncSerialDataDecoder( config, context );
+        dataDecoder.setCallback( expected );
+        final double expectedBitLength = dataDecoder.decodeDataLine( 0 );
+
+        final RecordingCallback actual = new RecordingCallback();
+        final AsyncSerialTransitionDecoder decoder = decode( config, context, actual );
+
+        final String message = "Config " + c + ", range " + range[0] + "-" + range[1];
+        assertEquals( message, expected.events, actual.events );
+        assertEquals( message, expectedBitLength, decoder.getAverageBitLength(), 1.0e-9 );
+      }
+    }
+  }
+
+  /**
+   * Tests that symbols that are separated by an (extremely) long idle time are
+   * decoded, without having to step through all idle time.
+   */
+  @Test( timeout = 10000 )
+  public void testDecodeSymbolsWithLongIdleTimeOk() throws Exception
+  {
+    final List<Integer> values = new ArrayList<Integer>();
+    final List<Long> timestamps = new ArrayList<Long>();
+
+    values.add( Integer.valueOf( 1 ) );
+    timestamps.add( Long.valueOf( 0L ) );
+
+    addSymbol( values, timestamps, 1000000L, 0x55 );
+    addSymbol( values, timestamps, 1000000000000L, 0xA3 );
+    addSymbol( values, timestamps, 2000000000000L, 0x0F );
+
+    // Idle until the end of the capture...
+    values.add( Integer.valueOf( 1 ) );
+    timestamps.add( Long.valueOf( 3000000000000L ) );
+
+    final AcquisitionResult data = new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 1, 0x01,
+        3000000000001L );
+
+    final RecordingCallback callback = new RecordingCallback();
+    decode( new SerialConfiguration( BAUD_RATE, 8, StopBits.ONE, Parity.NONE, BitEncoding.HIGH_IS_MARK,
+        BitOrder.LSB_FIRST, BitLevel.HIGH ), DataTestUtils.createToolContext( data ), callback );
+
+    assertEquals( 3, callback.events.size() );
+    assertTrue( callback.events.get( 0 ).startsWith( "55@" ) );
+    assertTrue( callback.events.get( 1 ).startsWith( "a3@" ) );
+    assertTrue( callback.events.get( 2 ).startsWith( "f@" ) );
+  }
+
+  /**
+   * Adds the transitions of a single 8N1-symbol starting at the given time.
+   */
+  private static void addSymbol( final List<Integer> aValues, final List<Long> aTimestamps, final long aStartTime,
+      final int aSymbol )
+  {
+    final double bitLength = ( double )SAMPLE_RATE / BAUD_RATE;
+
+    // start bit, 8 data bits (LSB first) and a stop bit...
+    final int frame = 0x200 | ( ( aSymbol & 0xFF ) << 1 );
+    for ( int i = 0; i < 10; i++ )
+    {
+      final int level = ( frame >> i ) & 1;
+      final int lastLevel = aValues.get( aValues.size() - 1 ).intValue();
+      if ( level != lastLevel )
+      {
+        aValues.add( Integer.valueOf( level ) );
+        aTimestamps.add( Long.valueOf( aStartTime + Math.round( i * bitLength ) ) );
+      }
+    }
+  }
+
+  /**
+   * Creates captured data with random frames on channel 0, with jittering bit
+   * lengths, glitches, and random parity and stop bits, and random toggles on
+   * channel 1.
+   */
+  private static AcquisitionResult createNoisyData( final Random aRandom, final SerialConfiguration aConfig,
+      final int aFrameCount )
+  {
+    final double bitLength = aConfig.getBitLength( SAMPLE_RATE );
+    final int idle = ( aConfig.getIdleLevel() == BitLevel.HIGH ) ? 1 : 0;
+    final int frameBits = 1 + aConfig.getDataBits() + ( aConfig.getParity().isNone() ? 0 : 1 ) + 2;
+
+    // The levels of channel 0 by time...
+    final TreeMap<Long, Integer> line = new TreeMap<Long, Integer>();
+    line.put( Long.valueOf( 0L ), Integer.valueOf( idle ) );
+
+    double time = 50.0;
+    for ( int f = 0; f < aFrameCount; f++ )
+    {
+      for ( int b = 0; b < frameBits; b++ )
+      {
+        final int level;
+        if ( b == 0 )
+        {
+          level = 1 - idle;
+        }
+        else if ( b == ( frameBits - 1 ) )
+        {
+          level = ( aRandom.nextInt( 10 ) == 0 ) ? ( 1 - idle ) : idle;
+        }
+        else
+        {
+          level = aRandom.nextInt( 2 );
+        }
+        line.put( Long.valueOf( ( long )time ), Integer.valueOf( level ) );
+
+        if ( aRandom.nextInt( 20 ) == 0 )
+        {
+          // Glitch halfway the bit...
+          final long glitch = ( long )( time + ( aRandom.nextDouble() * bitLength * 0.8 ) ) + 1;
+          line.put( Long.valueOf( glitch ), Integer.valueOf( 1 - level ) );
+          line.put( Long.valueOf( glitch + 1 + aRandom.nextInt( 3 ) ), Integer.valueOf( level ) );
+        }
+
+        time += bitLength * ( 0.9 + ( aRandom.nextDouble() * 0.2 ) );
+      }
+      // Idle for a random time, or none at all...
+      line.put( Long.valueOf( ( long )time ), Integer.valueOf( idle ) );
+      time += aRandom.nextInt( 4 ) * bitLength * aRandom.nextDouble();
+    }
+
+    // Sample all changes of channel 0, along with random toggles of channel 1...
+    final List<Integer> values = new ArrayList<Integer>();
+    final List<Long> timestamps = new ArrayList<Long>();
+
+    int other = 0;
+    int level = idle;
+    for ( long t = 0; t < ( long )time; t++ )
+    {
+      final Integer change = line.get( Long.valueOf( t ) );
+      boolean changed = ( change != null ) && ( change.intValue() != level );
+      if ( change != null )
+      {
+        level = change.intValue();
+      }
+      if ( aRandom.nextInt( 50 ) == 0 )
+      {
+        other ^= 0x02;
+        changed = true;
+      }
+      if ( changed || ( t == 0 ) )
+      {
+        values.add( Integer.valueOf( other | level ) );
+        timestamps.add( Long.valueOf( t ) );
+      }
+    }
+
+    return new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 2, 0x03, ( long )time );
+  }
+
+  /**
+   * Decodes the given context with a single transition decoder.
+   */
+  private static AsyncSerialTransitionDecoder decode( final SerialConfiguration aConfig, final ToolContext aContext,
+      final SerialDecoderCallback aCallback ) throws InterruptedException
+  {
+    final AsyncSerialTransitionDecoder decoder = new AsyncSerialTransitionDecoder( aConfig, aContext, 0 );
+    decoder.setCallback( aCallback );
+
+    final DecoderEngine engine = new DecoderEngine();
+    engine.addDecoder( decoder, decoder.getStartIndex(), decoder.getEndIndex() );
+    engine.decode( aContext.getData(), null );
+    return decoder;
+  }
+}
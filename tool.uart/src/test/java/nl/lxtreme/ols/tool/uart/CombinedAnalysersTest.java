@@ -0,0 +1,369 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.uart;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.*;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
+import nl.lxtreme.ols.tool.i2c.*;
+import nl.lxtreme.ols.tool.spi.*;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitEncoding;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.StopBits;
+import nl.lxtreme.ols.tool.uart.impl.*;
+import nl.lxtreme.ols.util.*;
+
+import org.junit.*;
+import org.mockito.*;
+
+
+/**
+ * Test cases for running the I2C, SPI and UART analysers on the same capture in
+ * a single walk, using a {@link CombinedDecoderTask}.
+ */
+public class CombinedAnalysersTest
+{
+  // INNER TYPES
+
+  /**
+   * Records all annotations reported to it.
+   */
+  static final class RecordingAnnotationListener implements AnnotationListener
+  {
+    // VARIABLES
+
+    final List<String> annotations = new ArrayList<String>();
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations()
+    {
+      this.annotations.add( "clear" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearAnnotations( final int aChannelIdx )
+    {
+      this.annotations.add( "clear " + aChannelIdx );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAnnotation( final Annotation<?> aAnnotation )
+    {
+      String text = aAnnotation.getChannel() + ": " + aAnnotation.getAnnotation();
+      if ( aAnnotation instanceof DataAnnotation<?> )
+      {
+        final DataAnnotation<?> annotation = ( DataAnnotation<?> )aAnnotation;
+        text = text + " @ " + annotation.getStartTimestamp() + "-" + annotation.getEndTimestamp();
+      }
+      this.annotations.add( text );
+    }
+  }
+
+  // CONSTANTS
+
+  private static final int SAMPLE_RATE = 1000000;
+  private static final int SAMPLE_COUNT = 60000;
+
+  private static final int SCL = 0;
+  private static final int SDA = 1;
+  private static final int SCK = 2;
+  private static final int MOSI = 3;
+  private static final int MISO = 4;
+  private static final int CS = 5;
+  private static final int RXD = 6;
+
+  private static final int BAUD_RATE = 115200;
+  private static final int I2C_HALF_CLOCK = 5;
+
+  // VARIABLES
+
+  private AcquisitionResult data;
+
+  // METHODS
+
+  /**
+   * Creates a capture with I2C transactions, SPI datagrams and UART symbols
+   * interleaved on separate channels.
+   */
+  @Before
+  public void setUp()
+  {
+    final Random random = new Random( 3L );
+
+    // The level each channel changes to at a sample, or -1 if it keeps its
+    // level...
+    final int[][] changes = new int[RXD + 1][SAMPLE_COUNT];
+    for ( int[] channel : changes )
+    {
+      Arrays.fill( channel, -1 );
+    }
+
+    for ( int t = 100; t < ( SAMPLE_COUNT - 1000 ); t += 1500 )
+    {
+      addI2CTransaction( changes, t, random );
+    }
+    for ( int t = 137; t < ( SAMPLE_COUNT - 100 ); t += 250 )
+    {
+      addSPIDatagram( changes, t, random.nextInt( 256 ), random.nextInt( 256 ) );
+    }
+    for ( int t = 111; t < ( SAMPLE_COUNT - 200 ); t += 120 )
+    {
+      addUARTSymbol( changes, t, random.nextInt( 256 ) );
+    }
+
+    final int[] levels = { 1, 1, 0, 0, 0, 1, 1 };
+    final int[] values = new int[SAMPLE_COUNT];
+    final long[] timestamps = new long[SAMPLE_COUNT];
+    for ( int t = 0; t < SAMPLE_COUNT; t++ )
+    {
+      int value = 0;
+      for ( int ch = 0; ch < changes.length; ch++ )
+      {
+        if ( changes[ch][t] >= 0 )
+        {
+          levels[ch] = changes[ch][t];
+        }
+        value |= ( levels[ch] << ch );
+      }
+      values[t] = value;
+      timestamps[t] = t;
+    }
+
+    this.data = new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 8, 0xFF, SAMPLE_COUNT );
+  }
+
+  /**
+   * Tests that decoding I2C, SPI and UART in a single walk yields the same
+   * results and annotations as decoding them one by one.
+   */
+  @Test
+  public void testCombinedDecodingSameAsSeparateOk() throws Exception
+  {
+    assertCombinedDecodingSameAsSeparate( DataTestUtils.createToolContext( this.data ) );
+  }
+
+  /**
+   * Tests that decoding I2C, SPI and UART in a single walk over a part of the
+   * capture yields the same results and annotations as decoding them one by
+   * one, even though each analyser decodes a different range.
+   */
+  @Test
+  public void testCombinedDecodingWithinRangeSameAsSeparateOk() throws Exception
+  {
+    assertCombinedDecodingSameAsSeparate( DataTestUtils.createToolContext( this.data, 20123L, 41234L ) );
+  }
+
+  /**
+   * Adds an I2C transaction of three bytes, each acknowledged, starting at the
+   * given sample.
+   */
+  private static void addI2CTransaction( final int[][] aChanges, final int aTime, final Random aRandom )
+  {
+    int t = aTime;
+    // START condition...
+    aChanges[SDA][t] = 0;
+    t += I2C_HALF_CLOCK;
+    aChanges[SCL][t] = 0;
+
+    for ( int b = 0; b < 3; b++ )
+    {
+      // Eight data bits (MSB first), followed by an ACK...
+      final int frame = aRandom.nextInt( 256 ) << 1;
+      for ( int i = 8; i >= 0; i-- )
+      {
+        t += 1;
+        aChanges[SDA][t] = ( frame >> i ) & 1;
+        t += I2C_HALF_CLOCK;
+        aChanges[SCL][t] = 1;
+        t += I2C_HALF_CLOCK;
+        aChanges[SCL][t] = 0;
+      }
+    }
+
+    // STOP condition...
+    t += 1;
+    aChanges[SDA][t] = 0;
+    t += I2C_HALF_CLOCK;
+    aChanges[SCL][t] = 1;
+    t += I2C_HALF_CLOCK;
+    aChanges[SDA][t] = 1;
+  }
+
+  /**
+   * Adds a mode 0 SPI datagram starting at the given sample.
+   */
+  private static void addSPIDatagram( final int[][] aChanges, final int aTime, final int aMosi, final int aMiso )
+  {
+    int t = aTime;
+    aChanges[CS][t] = 0;
+    for ( int i = 7; i >= 0; i-- )
+    {
+      t += 2;
+      aChanges[MOSI][t] = ( aMosi >> i ) & 1;
+      aChanges[MISO][t] = ( aMiso >> i ) & 1;
+      t += 2;
+      aChanges[SCK][t] = 1;
+      t += 2;
+      aChanges[SCK][t] = 0;
+    }
+    t += 2;
+    aChanges[CS][t] = 1;
+  }
+
+  /**
+   * Adds an 8N1 UART symbol starting at the given sample.
+   */
+  private static void addUARTSymbol( final int[][] aChanges, final int aTime, final int aSymbol )
+  {
+    final double bitLength = ( double )SAMPLE_RATE / BAUD_RATE;
+
+    // start bit, 8 data bits (LSB first) and a stop bit...
+    final int frame = 0x200 | ( aSymbol << 1 );
+    for ( int i = 0; i < 10; i++ )
+    {
+      aChanges[RXD][aTime + ( int )Math.round( i * bitLength )] = ( frame >> i ) & 1;
+    }
+  }
+
+  /**
+   * Asserts that the analysers yield the same results when run in a single walk
+   * as when run one by one.
+   */
+  private void assertCombinedDecodingSameAsSeparate( final ToolContext aContext ) throws Exception
+  {
+    final RecordingAnnotationListener i2cAnnotations = new RecordingAnnotationListener();
+    final RecordingAnnotationListener spiAnnotations = new RecordingAnnotationListener();
+    final RecordingAnnotationListener uartAnnotations = new RecordingAnnotationListener();
+
+    final I2CDataSet i2cData = createI2CTask( aContext, i2cAnnotations ).call();
+    final SPIDataSet spiData = createSPITask( aContext, spiAnnotations ).call();
+    final UARTDataSet uartData = createUARTTask( aContext, uartAnnotations ).call();
+
+    assertFalse( i2cData.isEmpty() );
+    assertFalse( spiData.isEmpty() );
+    assertFalse( uartData.isEmpty() );
+
+    final RecordingAnnotationListener combinedI2CAnnotations = new RecordingAnnotationListener();
+    final RecordingAnnotationListener combinedSPIAnnotations = new RecordingAnnotationListener();
+    final RecordingAnnotationListener combinedUARTAnnotations = new RecordingAnnotationListener();
+
+    final CombinedDecoderTask combined = new CombinedDecoderTask( aContext, null );
+    combined.addTask( createI2CTask( aContext, combinedI2CAnnotations ) );
+    combined.addTask( createSPITask( aContext, combinedSPIAnnotations ) );
+    combined.addTask( createUARTTask( aContext, combinedUARTAnnotations ) );
+
+    final List<Object> results = combined.call();
+    assertEquals( 3, results.size() );
+
+    final I2CDataSet combinedI2CData = ( I2CDataSet )results.get( 0 );
+    assertEquals( i2cData.getStartOfDecode(), combinedI2CData.getStartOfDecode() );
+    assertEquals( i2cData.getData(), combinedI2CData.getData() );
+    assertEquals( i2cAnnotations.annotations, combinedI2CAnnotations.annotations );
+
+    final SPIDataSet combinedSPIData = ( SPIDataSet )results.get( 1 );
+    assertEquals( spiData.getStartOfDecode(), combinedSPIData.getStartOfDecode() );
+    assertEquals( spiData.getData(), combinedSPIData.getData() );
+    assertEquals( spiAnnotations.annotations, combinedSPIAnnotations.annotations );
+
+    final UARTDataSet combinedUARTData = ( UARTDataSet )results.get( 2 );
+    assertEquals( uartData.getStartOfDecode(), combinedUARTData.getStartOfDecode() );
+    assertEquals( uartData.getData(), combinedUARTData.getData() );
+    assertEquals( uartData.getBitLength(), combinedUARTData.getBitLength(), 1.0e-9 );
+    assertEquals( uartAnnotations.annotations, combinedUARTAnnotations.annotations );
+  }
+
+  /**
+   * Creates an I2C analyser task for the test capture.
+   */
+  private I2CAnalyserTask createI2CTask( final ToolContext aContext, final AnnotationListener aListener )
+  {
+    final I2CAnalyserTask task = new I2CAnalyserTask( aContext, Mockito.mock( ToolProgressListener.class ),
+        aListener );
+    task.setLineAIndex( SCL );
+    task.setLineBIndex( SDA );
+    task.setDetectSDA_SCL( true );
+    task.setReportACK( true );
+    task.setReportNACK( true );
+    task.setReportStart( true );
+    task.setReportStop( true );
+    return task;
+  }
+
+  /**
+   * Creates a SPI analyser task for the test capture.
+   */
+  private SPIAnalyserTask createSPITask( final ToolContext aContext, final AnnotationListener aListener )
+  {
+    final SPIAnalyserTask task = new SPIAnalyserTask( aContext, Mockito.mock( ToolProgressListener.class ),
+        aListener );
+    task.setBitCount( 7 );
+    task.setHonourCS( true );
+    task.setReportCS( true );
+    task.setProtocol( SPIFIMode.STANDARD );
+    task.setSPIMode( SPIMode.MODE_0 );
+    task.setOrder( NumberUtils.BitOrder.MSB_FIRST );
+    task.setIO0Index( MOSI );
+    task.setIO1Index( MISO );
+    task.setIO2Index( -1 );
+    task.setIO3Index( -1 );
+    task.setCSIndex( CS );
+    task.setSCKIndex( SCK );
+    return task;
+  }
+
+  /**
+   * Creates an UART analyser task for the test capture.
+   */
+  private UARTAnalyserTask createUARTTask( final ToolContext aContext, final AnnotationListener aListener )
+  {
+    final UARTAnalyserTask task = new UARTAnalyserTask( aContext, Mockito.mock( ToolProgressListener.class ),
+        aListener );
+    task.setStopBits( StopBits.ONE );
+    task.setBitCount( 8 );
+    task.setParity( Parity.NONE );
+    task.setBaudRate( BAUD_RATE );
+    task.setRxdIndex( RXD );
+    task.setBitOrder( AsyncSerialDataDecoder.BitOrder.LSB_FIRST );
+    task.setBitEncoding( BitEncoding.HIGH_IS_MARK );
+    task.setIdleLevel( BitLevel.HIGH );
+    return task;
+  }
+}
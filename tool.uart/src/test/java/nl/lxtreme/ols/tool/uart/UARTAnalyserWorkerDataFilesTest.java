@@ -109,6 +109,14 @@ public class UARTAnalyserWorkerDataFilesTest
     assertEquals( this.expectedErrorCount, result.getDetectedErrors() );
     assertEquals( this.expectedSymbolCount, result.getDecodedSymbols() );
     assertEquals( this.expectedBaudrate, result.getBaudRate() );
+
+    // The results of all lines should be merged in timestamp order...
+    int lastSampleIdx = -1;
+    for ( UARTData data : result.getData() )
+    {
+      assertTrue( data.getStartSampleIndex() >= lastSampleIdx );
+      lastSampleIdx = data.getStartSampleIndex();
+    }
   }
 
   /**
@@ -0,0 +1,178 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.uart.impl;
+
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitEncoding;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitOrder;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.StopBits;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+import org.junit.runners.Parameterized.Parameters;
+import org.mockito.*;
+
+
+/**
+ * (Parameterized) tests cases for decoding the data files by
+ * {@link UARTAnalyserTask} in chunks.
+ */
+@RunWith( Parameterized.class )
+public class UARTAnalyserTaskDataFilesTest
+{
+  // VARIABLES
+
+  private final String resourceName;
+  private final int baudrate;
+  private final int[] channels;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new UARTAnalyserTaskDataFilesTest instance.
+   */
+  public UARTAnalyserTaskDataFilesTest( final String aResourceName, final int aBaudrate, final int... aChannels )
+  {
+    this.resourceName = aResourceName;
+    this.baudrate = aBaudrate;
+    this.channels = aChannels;
+  }
+
+  // METHODS
+
+  /**
+   * @return a collection of test data.
+   */
+  @Parameters
+  @SuppressWarnings( "boxing" )
+  public static Collection<Object[]> getTestData()
+  {
+    return Arrays.asList( new Object[][] { //
+        // { filename, baudrate, (rxd, txd) }
+            { "uart_8bit_1.ols", -1, new int[] { 0, -1 } }, // 0
+            { "uart_8bit_2.ols", -1, new int[] { 2, -1 } }, // 1
+            { "uart_8bit_3.ols", -1, new int[] { 1, 0 } }, // 2
+            { "uart_8bit_4_38400bps.ols", -1, new int[] { 0, -1 } }, // 3
+            { "uart_8bit_5_115200bps.ols", 115200, new int[] { 0, -1 } }, // 4
+        } );
+  }
+
+  /**
+   * Tests that decoding the data file in small chunks yields the same results
+   * as decoding it in a single chunk.
+   */
+  @Test
+  public void testAnalyzeDataFileInChunksOk() throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), this.resourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+    ToolContext toolContext = DataTestUtils.createToolContext( container );
+
+    UARTDataSet expected = analyseData( toolContext, UARTAnalyserTask.DEFAULT_CHUNK_SIZE, null );
+    UARTDataSet result = analyseData( toolContext, 8, null );
+
+    assertEquals( expected.getData(), result.getData() );
+    assertEquals( expected.getDecodedSymbols(), result.getDecodedSymbols() );
+    assertEquals( expected.getDetectedErrors(), result.getDetectedErrors() );
+    assertEquals( expected.getBaudRate(), result.getBaudRate() );
+    assertEquals( expected.getBitLength(), result.getBitLength(), 1.0e-9 );
+  }
+
+  /**
+   * Tests that decoding a series of windows of the data file yields the same
+   * results as decoding each window from scratch.
+   */
+  @Test
+  public void testAnalyzeDataFileIncrementallyOk() throws Exception
+  {
+    URL resource = ResourceUtils.getResource( getClass(), this.resourceName );
+    AcquisitionResult container = DataTestUtils.getCapturedData( resource );
+
+    final int length = container.getValues().length;
+    final int[][] windows = { { 0, length - 1 }, { 0, length - length / 8 }, { length / 8, length - length / 8 },
+        { length / 8, length - 1 }, { 0, length - 1 } };
+
+    IncrementalDecoding<UARTAnalyserTask.ChunkDecoder> decoding;
+    decoding = new IncrementalDecoding<UARTAnalyserTask.ChunkDecoder>();
+    for ( int i = 0; i < windows.length; i++ )
+    {
+      ToolContext toolContext = DataTestUtils.createToolContext( container, windows[i][0], windows[i][1] );
+
+      UARTDataSet expected = analyseData( toolContext, 8, null );
+      UARTDataSet result = analyseData( toolContext, 8, decoding );
+
+      assertEquals( expected.getData(), result.getData() );
+      assertEquals( expected.getBitLength(), result.getBitLength(), 1.0e-9 );
+    }
+  }
+
+  /**
+   * Analyses the data of the given tool context.
+   * 
+   * @param aToolContext
+   *          the tool context with the data to analyse, cannot be
+   *          <code>null</code>;
+   * @param aChunkSize
+   *          the number of samples to decode in each chunk;
+   * @param aDecoding
+   *          the incremental decoding to use, can be <code>null</code>.
+   * @return the analysis results, never <code>null</code>.
+   * @throws Exception
+   *           in case of exceptions.
+   */
+  private UARTDataSet analyseData( final ToolContext aToolContext, final int aChunkSize,
+      final IncrementalDecoding<UARTAnalyserTask.ChunkDecoder> aDecoding ) throws Exception
+  {
+    ToolProgressListener tpl = Mockito.mock( ToolProgressListener.class );
+    AnnotationListener al = Mockito.mock( AnnotationListener.class );
+
+    UARTAnalyserTask worker = new UARTAnalyserTask( aToolContext, tpl, al );
+    worker.setStopBits( StopBits.ONE );
+    worker.setBitCount( 8 );
+    worker.setParity( Parity.NONE );
+    worker.setBaudRate( this.baudrate );
+    worker.setRxdIndex( this.channels[0] );
+    worker.setTxdIndex( this.channels[1] );
+    worker.setBitOrder( BitOrder.LSB_FIRST );
+    worker.setBitEncoding( BitEncoding.HIGH_IS_MARK );
+    worker.setIdleLevel( BitLevel.HIGH );
+    worker.setChunkSize( aChunkSize );
+    worker.setIncrementalDecoding( aDecoding );
+
+    UARTDataSet result = worker.call();
+    assertNotNull( result );
+    return result;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.tool.uart.impl;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.ols.api.acquisition.*;
+import nl.lxtreme.ols.api.data.*;
+import nl.lxtreme.ols.api.data.annotation.AnnotationListener;
+import nl.lxtreme.ols.api.tools.*;
+import nl.lxtreme.ols.test.data.*;
+import nl.lxtreme.ols.tool.base.*;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitEncoding;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitLevel;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.BitOrder;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.Parity;
+import nl.lxtreme.ols.tool.uart.AsyncSerialDataDecoder.StopBits;
+
+import org.junit.*;
+import org.mockito.*;
+
+
+/**
+ * Test cases for decoding a capture with bursts of UART symbols, separated by
+ * idle time, by {@link UARTAnalyserTask} in chunks.
+ */
+public class UARTAnalyserTaskTest
+{
+  // CONSTANTS
+
+  private static final int SAMPLE_RATE = 1000000;
+  private static final int SAMPLE_COUNT = 60000;
+  private static final int BAUD_RATE = 115200;
+
+  private static final int RXD = 0;
+  private static final int TXD = 1;
+
+  // VARIABLES
+
+  private AcquisitionResult data;
+
+  // METHODS
+
+  /**
+   * Creates a capture with bursts of three 8N1 symbols on both RxD and TxD,
+   * each burst followed by several frames of idle time.
+   */
+  @Before
+  public void setUp()
+  {
+    final Random random = new Random( 5L );
+
+    // The level each channel changes to at a sample, or -1 if it keeps its
+    // level...
+    final int[][] changes = new int[TXD + 1][SAMPLE_COUNT];
+    for ( int[] channel : changes )
+    {
+      Arrays.fill( channel, -1 );
+    }
+
+    for ( int t = 50; t < ( SAMPLE_COUNT - 1000 ); t += 700 )
+    {
+      for ( int i = 0; i < 3; i++ )
+      {
+        addUARTSymbol( changes[RXD], t + ( i * 90 ), random.nextInt( 256 ) );
+        addUARTSymbol( changes[TXD], t + 333 + ( i * 90 ), random.nextInt( 256 ) );
+      }
+    }
+
+    final int[] levels = { 1, 1 };
+    final int[] values = new int[SAMPLE_COUNT];
+    final long[] timestamps = new long[SAMPLE_COUNT];
+    for ( int t = 0; t < SAMPLE_COUNT; t++ )
+    {
+      int value = 0;
+      for ( int ch = 0; ch < changes.length; ch++ )
+      {
+        if ( changes[ch][t] >= 0 )
+        {
+          levels[ch] = changes[ch][t];
+        }
+        value |= ( levels[ch] << ch );
+      }
+      values[t] = value;
+      timestamps[t] = t;
+    }
+
+    this.data = new CapturedData( values, timestamps, -1L, SAMPLE_RATE, 2, 0x03, SAMPLE_COUNT );
+  }
+
+  /**
+   * Tests that decoding the capture in small chunks yields the same results as
+   * decoding it in a single chunk.
+   */
+  @Test
+  public void testAnalyzeInChunksOk() throws Exception
+  {
+    ToolContext toolContext = DataTestUtils.createToolContext( this.data );
+
+    UARTDataSet expected = analyseData( toolContext, UARTAnalyserTask.DEFAULT_CHUNK_SIZE, null );
+    UARTDataSet result = analyseData( toolContext, 64, null );
+
+    assertEquals( 2 * 3 * 85, expected.getDecodedSymbols() );
+    assertEquals( expected.getData(), result.getData() );
+    assertEquals( expected.getDecodedSymbols(), result.getDecodedSymbols() );
+    assertEquals( expected.getDetectedErrors(), result.getDetectedErrors() );
+    assertEquals( expected.getBitLength(), result.getBitLength(), 1.0e-9 );
+  }
+
+  /**
+   * Tests that decoding a series of windows of the capture yields the same
+   * results as decoding each window from scratch, and that the chunks of the
+   * previous run are reused when a window keeps its start.
+   */
+  @Test
+  public void testAnalyzeIncrementallyOk() throws Exception
+  {
+    final long[][] windows = { { 0L, SAMPLE_COUNT - 1L }, { 0L, 51234L }, { 8765L, 51234L },
+        { 8765L, SAMPLE_COUNT - 1L }, { 0L, SAMPLE_COUNT - 1L } };
+
+    IncrementalDecoding<UARTAnalyserTask.ChunkDecoder> decoding;
+    decoding = new IncrementalDecoding<UARTAnalyserTask.ChunkDecoder>();
+    for ( int i = 0; i < windows.length; i++ )
+    {
+      ToolContext toolContext = DataTestUtils.createToolContext( this.data, windows[i][0], windows[i][1] );
+
+      UARTDataSet expected = analyseData( toolContext, 64, null );
+      UARTDataSet result = analyseData( toolContext, 64, decoding );
+
+      assertEquals( expected.getData(), result.getData() );
+      assertEquals( expected.getDecodedSymbols(), result.getDecodedSymbols() );
+      assertEquals( expected.getBitLength(), result.getBitLength(), 1.0e-9 );
+      if ( ( i > 0 ) && ( windows[i][0] == windows[i - 1][0] ) )
+      {
+        // The decoding starts at the sample following the start of decode...
+        final int decodeLength = result.getEndOfDecode() - result.getStartOfDecode() - 1;
+        assertTrue( "Nothing reused at window #" + i, decoding.getDecodedLength() < decodeLength );
+      }
+    }
+  }
+
+  /**
+   * Adds an 8N1 UART symbol starting at the given sample.
+   */
+  private static void addUARTSymbol( final int[] aChanges, final int aTime, final int aSymbol )
+  {
+    final double bitLength = ( double )SAMPLE_RATE / BAUD_RATE;
+
+    // start bit, 8 data bits (LSB first) and a stop bit...
+    final int frame = 0x200 | ( aSymbol << 1 );
+    for ( int i = 0; i < 10; i++ )
+    {
+      aChanges[aTime + ( int )Math.round( i * bitLength )] = ( frame >> i ) & 1;
+    }
+  }
+
+  /**
+   * Analyses the data of the given tool context.
+   * 
+   * @param aToolContext
+   *          the tool context with the data to analyse, cannot be
+   *          <code>null</code>;
+   * @param aChunkSize
+   *          the number of samples to decode in each chunk;
+   * @param aDecoding
+   *          the incremental decoding to use, can be <code>null</code>.
+   * @return the analysis results, never <code>null</code>.
+   * @throws Exception
+   *           in case of exceptions.
+   */
+  private UARTDataSet analyseData( final ToolContext aToolContext, final int aChunkSize,
+      final IncrementalDecoding<UARTAnalyserTask.ChunkDecoder> aDecoding ) throws Exception
+  {
+    ToolProgressListener tpl = Mockito.mock( ToolProgressListener.class );
+    AnnotationListener al = Mockito.mock( AnnotationListener.class );
+
+    UARTAnalyserTask worker = new UARTAnalyserTask( aToolContext, tpl, al );
+    worker.setStopBits( StopBits.ONE );
+    worker.setBitCount( 8 );
+    worker.setParity( Parity.NONE );
+    worker.setBaudRate( BAUD_RATE );
+    worker.setRxdIndex( RXD );
+    worker.setTxdIndex( TXD );
+    worker.setBitOrder( BitOrder.LSB_FIRST );
+    worker.setBitEncoding( BitEncoding.HIGH_IS_MARK );
+    worker.setIdleLevel( BitLevel.HIGH );
+    worker.setChunkSize( aChunkSize );
+    worker.setIncrementalDecoding( aDecoding );
+
+    UARTDataSet result = worker.call();
+    assertNotNull( result );
+    return result;
+  }
+}
@@ -27,7 +27,11 @@ import java.util.concurrent.*;
 
 /**
  * Provides a frequency distribution.
+ * 
+ * @deprecated this class boxes each value it counts, use {@link Histogram} for
+ *             primitive values instead.
  */
+@Deprecated
 public final class Frequency<TYPE extends Comparable<TYPE>>
 {
   // VARIABLES
@@ -0,0 +1,365 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.util.analysis;
+
+
+import java.util.*;
+
+
+/**
+ * Provides a frequency distribution of primitive <code>long</code> values.
+ * <p>
+ * In contrast to {@link Frequency}, the counts are kept in an open-addressing
+ * hash table of primitive arrays, so adding a value never allocates an object.
+ * Optionally, a sample limit can be given, in which case only the first values
+ * are counted and all later values are ignored. This allows large captures to
+ * be analysed by estimation.
+ * </p>
+ * <p>
+ * This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public final class Histogram
+{
+  // CONSTANTS
+
+  /** Denotes that no sample limit is used. */
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // VARIABLES
+
+  private final long sampleLimit;
+
+  private long[] keys;
+  private long[] counts;
+  private boolean[] used;
+  private int size;
+  private long totalCount;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link Histogram} instance without a sample limit.
+   */
+  public Histogram()
+  {
+    this( UNLIMITED );
+  }
+
+  /**
+   * Creates a new {@link Histogram} instance that counts at most the given
+   * number of values.
+   *
+   * @param aSampleLimit
+   *          the maximum number of values to count, > 0, or {@link #UNLIMITED}.
+   * @throws IllegalArgumentException
+   *           in case the given sample limit was less than one.
+   */
+  public Histogram( final long aSampleLimit )
+  {
+    if ( aSampleLimit < 1L )
+    {
+      throw new IllegalArgumentException( "Sample limit must be at least one!" );
+    }
+    this.sampleLimit = aSampleLimit;
+
+    clear();
+  }
+
+  // METHODS
+
+  /**
+   * Adds a given value to this histogram.
+   *
+   * @param aValue
+   *          the value to add.
+   * @return <code>true</code> if the value is counted, <code>false</code> if
+   *         the sample limit is reached and the value is ignored.
+   * @see #isSaturated()
+   */
+  public boolean addValue( final long aValue )
+  {
+    if ( this.totalCount >= this.sampleLimit )
+    {
+      return false;
+    }
+
+    int idx = indexOf( aValue );
+    if ( !this.used[idx] )
+    {
+      if ( ( this.size + 1 ) > ( this.keys.length >> 1 ) )
+      {
+        rehash( this.keys.length << 1 );
+        idx = indexOf( aValue );
+      }
+
+      this.used[idx] = true;
+      this.keys[idx] = aValue;
+      this.size++;
+    }
+
+    this.counts[idx]++;
+    this.totalCount++;
+    return true;
+  }
+
+  /**
+   * Clears all values from this histogram.
+   */
+  public void clear()
+  {
+    this.keys = new long[INITIAL_CAPACITY];
+    this.counts = new long[INITIAL_CAPACITY];
+    this.used = new boolean[INITIAL_CAPACITY];
+    this.size = 0;
+    this.totalCount = 0L;
+  }
+
+  /**
+   * Counts the number of occurrences of the given value.
+   *
+   * @param aValue
+   *          the value to count.
+   * @return the number of occurrences, >= 0.
+   */
+  public long getCount( final long aValue )
+  {
+    final int idx = indexOf( aValue );
+    return this.used[idx] ? this.counts[idx] : 0L;
+  }
+
+  /**
+   * Returns the value with the highest count or rank. In case multiple values
+   * share the highest rank, the smallest of these values is returned.
+   *
+   * @return the value with the highest rank.
+   * @throws IllegalStateException
+   *           in case this histogram is empty.
+   */
+  public long getHighestRanked()
+  {
+    assertNotEmpty();
+
+    long result = 0L;
+    long rank = -1L;
+    for ( int i = 0; i < this.keys.length; i++ )
+    {
+      if ( this.used[i] )
+      {
+        final long count = this.counts[i];
+        if ( ( count > rank ) || ( ( count == rank ) && ( this.keys[i] < result ) ) )
+        {
+          rank = count;
+          result = this.keys[i];
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value with the lowest count or rank. In case multiple values
+   * share the lowest rank, the smallest of these values is returned.
+   *
+   * @return the value with the lowest rank.
+   * @throws IllegalStateException
+   *           in case this histogram is empty.
+   */
+  public long getLowestRanked()
+  {
+    assertNotEmpty();
+
+    long result = 0L;
+    long rank = Long.MAX_VALUE;
+    for ( int i = 0; i < this.keys.length; i++ )
+    {
+      if ( this.used[i] )
+      {
+        final long count = this.counts[i];
+        if ( ( count < rank ) || ( ( count == rank ) && ( this.keys[i] < result ) ) )
+        {
+          rank = count;
+          result = this.keys[i];
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value below which the given percentage of all counted values
+   * fall, using the nearest-rank method.
+   *
+   * @param aPercentage
+   *          the percentage to return the value for, 0.0..100.0.
+   * @return the smallest value for which at least the given percentage of all
+   *         counted values are less than or equal to it.
+   * @throws IllegalArgumentException
+   *           in case the given percentage was not within 0.0..100.0;
+   * @throws IllegalStateException
+   *           in case this histogram is empty.
+   */
+  public long getPercentile( final double aPercentage )
+  {
+    if ( !( ( aPercentage >= 0.0 ) && ( aPercentage <= 100.0 ) ) )
+    {
+      throw new IllegalArgumentException( "Percentage must be between 0 and 100!" );
+    }
+    assertNotEmpty();
+
+    final long rank = Math.max( 1L, ( long )Math.ceil( ( aPercentage / 100.0 ) * this.totalCount ) );
+
+    final long[] values = values();
+
+    long cumulative = 0L;
+    for ( int i = 0; i < values.length - 1; i++ )
+    {
+      cumulative += getCount( values[i] );
+      if ( cumulative >= rank )
+      {
+        return values[i];
+      }
+    }
+    return values[values.length - 1];
+  }
+
+  /**
+   * Returns the number of values counted in this histogram.
+   *
+   * @return a count, >= 0.
+   */
+  public long getTotalCount()
+  {
+    return this.totalCount;
+  }
+
+  /**
+   * Returns the number of unique values in this histogram.
+   *
+   * @return a unique value count, >= 0.
+   */
+  public int getUniqueValueCount()
+  {
+    return this.size;
+  }
+
+  /**
+   * Returns whether or not this histogram is empty.
+   *
+   * @return <code>true</code> if no values are counted, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isEmpty()
+  {
+    return this.totalCount == 0L;
+  }
+
+  /**
+   * Returns whether or not the sample limit of this histogram is reached.
+   *
+   * @return <code>true</code> if any further values are ignored,
+   *         <code>false</code> otherwise.
+   */
+  public boolean isSaturated()
+  {
+    return this.totalCount >= this.sampleLimit;
+  }
+
+  /**
+   * Returns the unique values in this histogram.
+   *
+   * @return an array with all unique values, sorted in natural order, never
+   *         <code>null</code>.
+   */
+  public long[] values()
+  {
+    final long[] result = new long[this.size];
+
+    int j = 0;
+    for ( int i = 0; i < this.keys.length; i++ )
+    {
+      if ( this.used[i] )
+      {
+        result[j++] = this.keys[i];
+      }
+    }
+
+    Arrays.sort( result );
+    return result;
+  }
+
+  /**
+   * @throws IllegalStateException
+   *           in case this histogram is empty.
+   */
+  private void assertNotEmpty()
+  {
+    if ( isEmpty() )
+    {
+      throw new IllegalStateException( "Histogram is empty!" );
+    }
+  }
+
+  /**
+   * Returns the slot of the given value, which is either the slot the value
+   * occupies, or the (free) slot the value should be placed in.
+   */
+  private int indexOf( final long aValue )
+  {
+    final int mask = this.keys.length - 1;
+
+    // Spread the bits of the key, as pulse lengths tend to be clustered...
+    long hash = aValue * 0x9E3779B97F4A7C15L;
+    int idx = ( int )( hash ^ ( hash >>> 32 ) ) & mask;
+    while ( this.used[idx] && ( this.keys[idx] != aValue ) )
+    {
+      idx = ( idx + 1 ) & mask;
+    }
+    return idx;
+  }
+
+  /**
+   * Grows the hash table to the given capacity, which must be a power of two.
+   */
+  private void rehash( final int aCapacity )
+  {
+    final long[] oldKeys = this.keys;
+    final long[] oldCounts = this.counts;
+    final boolean[] oldUsed = this.used;
+
+    this.keys = new long[aCapacity];
+    this.counts = new long[aCapacity];
+    this.used = new boolean[aCapacity];
+
+    for ( int i = 0; i < oldKeys.length; i++ )
+    {
+      if ( oldUsed[i] )
+      {
+        final int idx = indexOf( oldKeys[i] );
+        this.used[idx] = true;
+        this.keys[idx] = oldKeys[i];
+        this.counts[idx] = oldCounts[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.util.io;
+
+
+import java.util.zip.*;
+
+
+/**
+ * Denotes the trade-off between speed and size when compressing data.
+ */
+public enum CompressionLevel
+{
+  // CONSTANTS
+
+  /** Do not compress at all, only store the data. */
+  NONE( Deflater.NO_COMPRESSION ),
+  /** Compress as fast as possible. */
+  FASTEST( Deflater.BEST_SPEED ),
+  /** Use the default balance between speed and size. */
+  DEFAULT( Deflater.DEFAULT_COMPRESSION ),
+  /** Compress as small as possible. */
+  SMALLEST( Deflater.BEST_COMPRESSION );
+
+  // VARIABLES
+
+  private final int deflaterLevel;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link CompressionLevel} instance.
+   */
+  private CompressionLevel( final int aDeflaterLevel )
+  {
+    this.deflaterLevel = aDeflaterLevel;
+  }
+
+  // METHODS
+
+  /**
+   * Parses the given value as compression level.
+   *
+   * @param aValue
+   *          the value to parse, can be <code>null</code>.
+   * @return the compression level, defaults to {@link #DEFAULT} in case the
+   *         given value could not be parsed.
+   */
+  public static CompressionLevel parse( final Object aValue )
+  {
+    if ( aValue != null )
+    {
+      final String value = String.valueOf( aValue ).trim().toUpperCase();
+      for ( CompressionLevel level : values() )
+      {
+        if ( level.name().equals( value ) )
+        {
+          return level;
+        }
+      }
+    }
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the compression level as used by {@link Deflater}.
+   *
+   * @return a deflater compression level.
+   */
+  public int getDeflaterLevel()
+  {
+    return this.deflaterLevel;
+  }
+
+  /**
+   * Returns whether or not data should be stored without any compression.
+   *
+   * @return <code>true</code> if data should only be stored,
+   *         <code>false</code> otherwise.
+   */
+  public boolean isStoreOnly()
+  {
+    return this == NONE;
+  }
+}
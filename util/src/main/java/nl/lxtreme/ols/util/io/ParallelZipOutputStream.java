@@ -0,0 +1,942 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.util.io;
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+
+/**
+ * Provides a ZIP output stream that compresses its (deflated) entries using
+ * multiple threads.
+ * <p>
+ * The data of a deflated entry is split into fixed-size blocks, which are
+ * compressed independently of each other, in the same way as <tt>pigz</tt>
+ * does. Each block uses the last 32KB of its predecessor as dictionary and is
+ * terminated by a sync-flush, so the concatenation of all compressed blocks is
+ * a single valid deflate stream that can be read by any ZIP implementation.
+ * </p>
+ * <p>
+ * Entries whose method is set to {@link ZipEntry#STORED} are written as-is,
+ * provided that their size and CRC are set up front, as these are to be
+ * written in the local header. Otherwise, they are written as deflated entry
+ * without any compression, which costs only a few bytes per 64KB of data. In
+ * both cases, the data is streamed; no entry is held in memory as a whole.
+ * </p>
+ * <p>
+ * In case the running JVM does not support sync-flushing of deflate streams
+ * (Java 6), or only a single thread is to be used, all entries are compressed
+ * sequentially on the calling thread.
+ * </p>
+ * <p>
+ * Entries and archives of 4GB or more, and archives with more than 65535
+ * entries, are written in the ZIP64 format. Instances of this class are
+ * <b>not</b> thread-safe!
+ * </p>
+ */
+public class ParallelZipOutputStream extends OutputStream
+{
+  // INNER TYPES
+
+  /**
+   * Compresses a single block of data as part of a larger deflate stream.
+   */
+  static final class DeflateBlockTask implements Callable<byte[]>
+  {
+    // VARIABLES
+
+    private final int level;
+    private final byte[] data;
+    private final int length;
+    private final byte[] previous;
+    private final int previousLength;
+    private final boolean last;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link DeflateBlockTask} instance.
+     */
+    DeflateBlockTask( final int aLevel, final byte[] aData, final int aLength, final byte[] aPrevious,
+        final int aPreviousLength, final boolean aLast )
+    {
+      this.level = aLevel;
+      this.data = aData;
+      this.length = aLength;
+      this.previous = aPrevious;
+      this.previousLength = aPreviousLength;
+      this.last = aLast;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] call() throws Exception
+    {
+      final Deflater deflater = new Deflater( this.level, true /* nowrap */);
+      final ByteArrayOutputStream result = new ByteArrayOutputStream( ( this.length >> 1 ) + 64 );
+      final byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+
+      try
+      {
+        if ( ( this.previous != null ) && ( this.previousLength > 0 ) )
+        {
+          final int dictLength = Math.min( DICTIONARY_SIZE, this.previousLength );
+          deflater.setDictionary( this.previous, this.previousLength - dictLength, dictLength );
+        }
+
+        deflater.setInput( this.data, 0, this.length );
+
+        if ( this.last )
+        {
+          deflater.finish();
+          while ( !deflater.finished() )
+          {
+            final int count = deflater.deflate( buffer, 0, buffer.length );
+            result.write( buffer, 0, count );
+          }
+        }
+        else
+        {
+          // Sync-flush ends the block on a byte boundary, without marking it
+          // as final block, allowing it to be concatenated to its successor...
+          int count;
+          do
+          {
+            count = deflater.deflate( buffer, 0, buffer.length, Deflater.SYNC_FLUSH );
+            result.write( buffer, 0, count );
+          }
+          while ( count == buffer.length );
+        }
+      }
+      finally
+      {
+        deflater.end();
+      }
+
+      return result.toByteArray();
+    }
+  }
+
+  /**
+   * Keeps the administration of a single written entry.
+   */
+  static final class EntryInfo
+  {
+    // VARIABLES
+
+    final byte[] name;
+    final int method;
+    final int flags;
+    final long dosTime;
+    final long offset;
+
+    long crc;
+    long size;
+    long compressedSize;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link EntryInfo} instance.
+     */
+    EntryInfo( final byte[] aName, final int aMethod, final int aFlags, final long aDosTime, final long aOffset )
+    {
+      this.name = aName;
+      this.method = aMethod;
+      this.flags = aFlags;
+      this.dosTime = aDosTime;
+      this.offset = aOffset;
+    }
+  }
+
+  // CONSTANTS
+
+  /** The size of a single block that is compressed independently. */
+  public static final int BLOCK_SIZE = 128 * 1024;
+
+  static final int DICTIONARY_SIZE = 32 * 1024;
+  static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+  private static final boolean SYNC_FLUSH_SUPPORTED = isSyncFlushSupported();
+
+  private static final long LOCSIG = 0x04034b50L;
+  private static final long EXTSIG = 0x08074b50L;
+  private static final long CENSIG = 0x02014b50L;
+  private static final long ENDSIG = 0x06054b50L;
+  private static final long ZIP64_ENDSIG = 0x06064b50L;
+  private static final long ZIP64_LOCSIG = 0x07064b50L;
+
+  private static final int VERSION = 20;
+  private static final int VERSION_ZIP64 = 45;
+  /** The header ID of the ZIP64 extended information extra field. */
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  /** The size of the ZIP64 extra field with original & compressed size and offset. */
+  private static final int ZIP64_EXTRA_SIZE = 24;
+  /** Sizes and CRC are written in a data descriptor after the data. */
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+  /** Names (and comments) are encoded in UTF-8. */
+  private static final int FLAG_UTF8 = 0x0800;
+
+  /** The largest value that fits in a size or offset field without ZIP64. */
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+  /** The largest number of entries that fits in the end record without ZIP64. */
+  private static final int MAX_ENTRIES = 0xFFFF;
+
+  // VARIABLES
+
+  private final OutputStream out;
+  private final int threadCount;
+  private final List<EntryInfo> entries;
+  private final LinkedList<Future<byte[]>> pending;
+  private final CRC32 crc;
+  private final byte[] scratch;
+
+  private ExecutorService executor;
+  private Deflater deflater;
+  private byte[] outputBuffer;
+
+  private int level;
+  private byte[] comment;
+  private long written;
+  private boolean forceZip64;
+
+  private EntryInfo current;
+  private int entryLevel;
+  private byte[] block;
+  private int blockLength;
+  private byte[] previousBlock;
+  private int previousBlockLength;
+
+  private boolean finished;
+  private boolean closed;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ParallelZipOutputStream} instance that uses as many
+   * threads as there are processors available.
+   *
+   * @param aOut
+   *          the output stream to write the ZIP data to, cannot be
+   *          <code>null</code>.
+   */
+  public ParallelZipOutputStream( final OutputStream aOut )
+  {
+    this( aOut, Runtime.getRuntime().availableProcessors() );
+  }
+
+  /**
+   * Creates a new {@link ParallelZipOutputStream} instance.
+   *
+   * @param aOut
+   *          the output stream to write the ZIP data to, cannot be
+   *          <code>null</code>;
+   * @param aThreadCount
+   *          the number of threads to use for compressing, >= 1.
+   */
+  public ParallelZipOutputStream( final OutputStream aOut, final int aThreadCount )
+  {
+    if ( aOut == null )
+    {
+      throw new IllegalArgumentException( "Output stream cannot be null!" );
+    }
+    if ( aThreadCount < 1 )
+    {
+      throw new IllegalArgumentException( "Thread count should be at least one!" );
+    }
+
+    this.out = aOut;
+    this.threadCount = aThreadCount;
+    this.entries = new ArrayList<EntryInfo>();
+    this.pending = new LinkedList<Future<byte[]>>();
+    this.crc = new CRC32();
+    this.scratch = new byte[46];
+
+    this.level = Deflater.DEFAULT_COMPRESSION;
+    this.comment = new byte[0];
+  }
+
+  // METHODS
+
+  /**
+   * Returns whether or not this JVM supports compressing data in parallel.
+   *
+   * @return <code>true</code> if parallel compression is supported,
+   *         <code>false</code> if all data will be compressed sequentially.
+   */
+  public static boolean isParallelCompressionSupported()
+  {
+    return SYNC_FLUSH_SUPPORTED;
+  }
+
+  /**
+   * Converts the given Java time to a MS-DOS date/time value.
+   *
+   * @param aTime
+   *          the time to convert, in milliseconds since the epoch.
+   * @return a MS-DOS date/time value.
+   */
+  static long toDosTime( final long aTime )
+  {
+    final Calendar cal = Calendar.getInstance();
+    cal.setTimeInMillis( aTime );
+
+    final int year = cal.get( Calendar.YEAR );
+    if ( year < 1980 )
+    {
+      return ( 1 << 21 ) | ( 1 << 16 );
+    }
+    return ( ( year - 1980 ) << 25 ) | ( ( cal.get( Calendar.MONTH ) + 1 ) << 21 )
+        | ( cal.get( Calendar.DAY_OF_MONTH ) << 16 ) | ( cal.get( Calendar.HOUR_OF_DAY ) << 11 )
+        | ( cal.get( Calendar.MINUTE ) << 5 ) | ( cal.get( Calendar.SECOND ) >> 1 );
+  }
+
+  /**
+   * Determines whether the {@link Deflater} of this JVM supports the
+   * {@link Deflater#SYNC_FLUSH} mode, which is only available as of Java 7.
+   */
+  private static boolean isSyncFlushSupported()
+  {
+    try
+    {
+      Deflater.class.getMethod( "deflate", byte[].class, Integer.TYPE, Integer.TYPE, Integer.TYPE );
+      return true;
+    }
+    catch ( NoSuchMethodException exception )
+    {
+      return false;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+
+    try
+    {
+      finish();
+    }
+    finally
+    {
+      this.closed = true;
+
+      cancelPendingBlocks();
+
+      if ( this.executor != null )
+      {
+        this.executor.shutdownNow();
+        this.executor = null;
+      }
+      if ( this.deflater != null )
+      {
+        this.deflater.end();
+        this.deflater = null;
+      }
+
+      this.out.close();
+    }
+  }
+
+  /**
+   * Closes the current entry, if any, and positions the stream for writing the
+   * next entry.
+   *
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void closeEntry() throws IOException
+  {
+    final EntryInfo entry = this.current;
+    if ( entry == null )
+    {
+      return;
+    }
+
+    if ( entry.method == ZipEntry.STORED )
+    {
+      // The local header already promised a size and CRC...
+      if ( entry.size != entry.compressedSize )
+      {
+        throw new ZipException( "Invalid size for stored entry " + getName( entry ) + ": " + entry.size
+            + ", expected " + entry.compressedSize + "!" );
+      }
+      if ( entry.crc != this.crc.getValue() )
+      {
+        throw new ZipException( "Invalid CRC for stored entry " + getName( entry ) + "!" );
+      }
+    }
+    else
+    {
+      compressBlock( true /* aLast */);
+      writeCompressedBlocks( 0 );
+
+      entry.crc = this.crc.getValue();
+      entry.compressedSize = this.written - entry.offset - getLocalHeaderSize( entry );
+
+      writeInt( EXTSIG );
+      writeInt( entry.crc );
+      if ( ( entry.size >= MAX_SIZE ) || ( entry.compressedSize >= MAX_SIZE ) )
+      {
+        // ZIP64 data descriptor, as written by java.util.zip as well...
+        writeLong( entry.compressedSize );
+        writeLong( entry.size );
+      }
+      else
+      {
+        writeInt( entry.compressedSize );
+        writeInt( entry.size );
+      }
+
+      this.block = null;
+      this.previousBlock = null;
+    }
+
+    this.entries.add( entry );
+    this.current = null;
+  }
+
+  /**
+   * Finishes writing the contents of the ZIP file without closing the
+   * underlying stream.
+   *
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void finish() throws IOException
+  {
+    ensureOpen();
+    if ( this.finished )
+    {
+      return;
+    }
+
+    closeEntry();
+
+    final long cenOffset = this.written;
+    for ( EntryInfo entry : this.entries )
+    {
+      writeCentralHeader( entry );
+    }
+    final long cenSize = this.written - cenOffset;
+
+    final int count = this.entries.size();
+    final boolean zip64 = this.forceZip64 || ( count >= MAX_ENTRIES ) || ( cenSize >= MAX_SIZE )
+        || ( cenOffset >= MAX_SIZE );
+    if ( zip64 )
+    {
+      final long zip64EndOffset = this.written;
+
+      writeInt( ZIP64_ENDSIG );
+      writeLong( 44L ); // size of the remainder of this record
+      writeShort( VERSION_ZIP64 ); // version made by
+      writeShort( VERSION_ZIP64 ); // version needed to extract
+      writeInt( 0 ); // number of this disk
+      writeInt( 0 ); // disk with central directory
+      writeLong( count );
+      writeLong( count );
+      writeLong( cenSize );
+      writeLong( cenOffset );
+
+      writeInt( ZIP64_LOCSIG );
+      writeInt( 0 ); // disk with ZIP64 end record
+      writeLong( zip64EndOffset );
+      writeInt( 1 ); // total number of disks
+    }
+
+    writeInt( ENDSIG );
+    writeShort( 0 ); // number of this disk
+    writeShort( 0 ); // disk with central directory
+    writeShort( zip64 ? MAX_ENTRIES : count );
+    writeShort( zip64 ? MAX_ENTRIES : count );
+    writeInt( zip64 ? MAX_SIZE : cenSize );
+    writeInt( zip64 ? MAX_SIZE : cenOffset );
+    writeShort( this.comment.length );
+    writeBytes( this.comment, 0, this.comment.length );
+
+    this.out.flush();
+
+    this.finished = true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void flush() throws IOException
+  {
+    this.out.flush();
+  }
+
+  /**
+   * Begins writing a new ZIP entry and positions the stream to the start of
+   * the entry data. Closes the current entry if still active.
+   * <p>
+   * Only the name, time and method of the given entry are used, and for
+   * {@link ZipEntry#STORED} entries, the size and CRC. In case no method is
+   * set, {@link ZipEntry#DEFLATED} is assumed. A stored entry without size or
+   * CRC is written as deflated entry without any compression.
+   * </p>
+   *
+   * @param aEntry
+   *          the ZIP entry to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void putNextEntry( final ZipEntry aEntry ) throws IOException
+  {
+    if ( aEntry == null )
+    {
+      throw new IllegalArgumentException( "Entry cannot be null!" );
+    }
+    ensureOpen();
+    if ( this.finished )
+    {
+      throw new ZipException( "ZIP stream already finished!" );
+    }
+
+    closeEntry();
+
+    int method = ZipEntry.DEFLATED;
+    this.entryLevel = this.level;
+    if ( aEntry.getMethod() == ZipEntry.STORED )
+    {
+      if ( ( aEntry.getSize() >= 0L ) && ( aEntry.getSize() < MAX_SIZE ) && ( aEntry.getCrc() >= 0L ) )
+      {
+        method = ZipEntry.STORED;
+      }
+      else
+      {
+        // Sizes and CRC are not known up front, and a stored entry cannot be
+        // followed by a data descriptor, so deflate it without compression...
+        this.entryLevel = Deflater.NO_COMPRESSION;
+      }
+    }
+
+    final int flags = FLAG_UTF8 | ( ( method == ZipEntry.DEFLATED ) ? FLAG_DATA_DESCRIPTOR : 0 );
+    final long time = ( aEntry.getTime() < 0L ) ? System.currentTimeMillis() : aEntry.getTime();
+    final byte[] name = aEntry.getName().getBytes( "UTF-8" );
+
+    this.current = new EntryInfo( name, method, flags, toDosTime( time ), this.written );
+    this.crc.reset();
+
+    if ( method == ZipEntry.STORED )
+    {
+      this.current.crc = aEntry.getCrc();
+      this.current.compressedSize = aEntry.getSize();
+      this.current.size = aEntry.getSize();
+
+      writeLocalHeader( this.current );
+
+      // Count the actual size, to be verified when closing the entry...
+      this.current.size = 0L;
+    }
+    else
+    {
+      // The header can be written directly, sizes and CRC are to follow in the
+      // data descriptor...
+      writeLocalHeader( this.current );
+
+      if ( this.deflater != null )
+      {
+        this.deflater.setLevel( this.entryLevel );
+      }
+
+      this.block = new byte[BLOCK_SIZE];
+      this.blockLength = 0;
+      this.previousBlock = null;
+      this.previousBlockLength = 0;
+    }
+  }
+
+  /**
+   * Sets the ZIP file comment.
+   *
+   * @param aComment
+   *          the comment to set, can be <code>null</code>.
+   */
+  public void setComment( final String aComment )
+  {
+    try
+    {
+      this.comment = ( aComment == null ) ? new byte[0] : aComment.getBytes( "UTF-8" );
+    }
+    catch ( UnsupportedEncodingException exception )
+    {
+      throw new RuntimeException( "UTF-8 not supported?!" );
+    }
+    if ( this.comment.length > 0xFFFF )
+    {
+      throw new IllegalArgumentException( "ZIP file comment too long!" );
+    }
+  }
+
+  /**
+   * Sets the compression level for subsequent entries which are deflated.
+   *
+   * @param aLevel
+   *          the compression level (0-9), or
+   *          {@link Deflater#DEFAULT_COMPRESSION} to use the default level.
+   */
+  public void setLevel( final int aLevel )
+  {
+    if ( ( aLevel != Deflater.DEFAULT_COMPRESSION ) && ( ( aLevel < 0 ) || ( aLevel > 9 ) ) )
+    {
+      throw new IllegalArgumentException( "Invalid compression level!" );
+    }
+    this.level = aLevel;
+  }
+
+  /**
+   * Forces the ZIP64 format for the central directory, regardless of the sizes
+   * of the archive, which allows the ZIP64 records to be tested without
+   * writing gigabytes of data.
+   *
+   * @param aForceZip64
+   *          <code>true</code> to always write ZIP64 records,
+   *          <code>false</code> to only write them when needed.
+   */
+  final void setForceZip64( final boolean aForceZip64 )
+  {
+    this.forceZip64 = aForceZip64;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    ensureOpen();
+    if ( this.current == null )
+    {
+      throw new ZipException( "No current ZIP entry!" );
+    }
+    if ( aLength <= 0 )
+    {
+      return;
+    }
+
+    this.crc.update( aBuffer, aOffset, aLength );
+    this.current.size += aLength;
+
+    if ( this.current.method == ZipEntry.STORED )
+    {
+      writeBytes( aBuffer, aOffset, aLength );
+      return;
+    }
+
+    int offset = aOffset;
+    int remaining = aLength;
+    while ( remaining > 0 )
+    {
+      if ( this.blockLength == this.block.length )
+      {
+        compressBlock( false /* aLast */);
+      }
+
+      final int count = Math.min( remaining, this.block.length - this.blockLength );
+      System.arraycopy( aBuffer, offset, this.block, this.blockLength, count );
+      this.blockLength += count;
+
+      offset += count;
+      remaining -= count;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final int aByte ) throws IOException
+  {
+    write( new byte[] { ( byte )aByte }, 0, 1 );
+  }
+
+  /**
+   * Cancels all blocks that are still pending for compression.
+   */
+  private void cancelPendingBlocks()
+  {
+    for ( Future<byte[]> future : this.pending )
+    {
+      future.cancel( true /* mayInterruptIfRunning */);
+    }
+    this.pending.clear();
+  }
+
+  /**
+   * Compresses the current block, either in the background or directly.
+   *
+   * @param aLast
+   *          <code>true</code> if this is the last block of the current entry,
+   *          <code>false</code> otherwise.
+   */
+  private void compressBlock( final boolean aLast ) throws IOException
+  {
+    if ( !SYNC_FLUSH_SUPPORTED || ( this.threadCount < 2 ) )
+    {
+      deflateSequentially( aLast );
+      return;
+    }
+
+    final DeflateBlockTask task = new DeflateBlockTask( this.entryLevel, this.block, this.blockLength,
+        this.previousBlock, this.previousBlockLength, aLast );
+    this.pending.addLast( getExecutor().submit( task ) );
+
+    // The block is now owned by the task, and serves as dictionary for the
+    // next block...
+    this.previousBlock = this.block;
+    this.previousBlockLength = this.blockLength;
+
+    this.block = aLast ? null : new byte[BLOCK_SIZE];
+    this.blockLength = 0;
+
+    // Bound the amount of memory in use by writing the oldest blocks...
+    writeCompressedBlocks( 2 * this.threadCount );
+  }
+
+  /**
+   * Compresses the current block on the calling thread, using a single
+   * deflater for the entire entry.
+   */
+  private void deflateSequentially( final boolean aLast ) throws IOException
+  {
+    if ( this.deflater == null )
+    {
+      this.deflater = new Deflater( this.entryLevel, true /* nowrap */);
+      this.outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+    }
+
+    final Deflater def = this.deflater;
+    def.setInput( this.block, 0, this.blockLength );
+    if ( aLast )
+    {
+      def.finish();
+    }
+
+    while ( aLast ? !def.finished() : !def.needsInput() )
+    {
+      final int count = def.deflate( this.outputBuffer, 0, this.outputBuffer.length );
+      writeBytes( this.outputBuffer, 0, count );
+    }
+
+    this.blockLength = 0;
+
+    if ( aLast )
+    {
+      // Prepare for the next entry...
+      def.reset();
+    }
+  }
+
+  /**
+   * Throws an exception in case this stream is already closed.
+   */
+  private void ensureOpen() throws IOException
+  {
+    if ( this.closed )
+    {
+      throw new IOException( "Stream closed!" );
+    }
+  }
+
+  /**
+   * Lazily creates the executor used for compressing blocks.
+   */
+  private ExecutorService getExecutor()
+  {
+    if ( this.executor == null )
+    {
+      final AtomicInteger counter = new AtomicInteger();
+      this.executor = Executors.newFixedThreadPool( this.threadCount, new ThreadFactory()
+      {
+        @Override
+        public Thread newThread( final Runnable aRunnable )
+        {
+          final Thread thread = new Thread( aRunnable, "ParallelZipOutputStream-" + counter.incrementAndGet() );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    }
+    return this.executor;
+  }
+
+  /**
+   * @return the name of the given entry, for use in messages.
+   */
+  private String getName( final EntryInfo aEntry ) throws IOException
+  {
+    return new String( aEntry.name, "UTF-8" );
+  }
+
+  /**
+   * @return the size of the local header of the given entry, in bytes.
+   */
+  private int getLocalHeaderSize( final EntryInfo aEntry )
+  {
+    return 30 + aEntry.name.length;
+  }
+
+  /**
+   * Writes the given bytes to the underlying stream.
+   */
+  private void writeBytes( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    this.out.write( aBuffer, aOffset, aLength );
+    this.written += aLength;
+  }
+
+  /**
+   * Writes the central directory header for the given entry.
+   */
+  private void writeCentralHeader( final EntryInfo aEntry ) throws IOException
+  {
+    final boolean zip64 = this.forceZip64 || ( aEntry.size >= MAX_SIZE ) || ( aEntry.compressedSize >= MAX_SIZE )
+        || ( aEntry.offset >= MAX_SIZE );
+    final int version = zip64 ? VERSION_ZIP64 : VERSION;
+
+    writeInt( CENSIG );
+    writeShort( version ); // version made by
+    writeShort( version ); // version needed to extract
+    writeShort( aEntry.flags );
+    writeShort( aEntry.method );
+    writeInt( aEntry.dosTime );
+    writeInt( aEntry.crc );
+    writeInt( zip64 ? MAX_SIZE : aEntry.compressedSize );
+    writeInt( zip64 ? MAX_SIZE : aEntry.size );
+    writeShort( aEntry.name.length );
+    writeShort( zip64 ? ( 4 + ZIP64_EXTRA_SIZE ) : 0 ); // extra field length
+    writeShort( 0 ); // comment length
+    writeShort( 0 ); // disk number start
+    writeShort( 0 ); // internal attributes
+    writeInt( 0 ); // external attributes
+    writeInt( zip64 ? MAX_SIZE : aEntry.offset );
+    writeBytes( aEntry.name, 0, aEntry.name.length );
+
+    if ( zip64 )
+    {
+      // The actual values of all fields that are set to their maximum...
+      writeShort( ZIP64_EXTRA_ID );
+      writeShort( ZIP64_EXTRA_SIZE );
+      writeLong( aEntry.size );
+      writeLong( aEntry.compressedSize );
+      writeLong( aEntry.offset );
+    }
+  }
+
+  /**
+   * Writes compressed blocks, in order, until at most the given number of
+   * blocks is pending.
+   *
+   * @param aMaxPending
+   *          the maximum number of blocks that may remain pending.
+   */
+  private void writeCompressedBlocks( final int aMaxPending ) throws IOException
+  {
+    while ( this.pending.size() > aMaxPending )
+    {
+      final Future<byte[]> future = this.pending.removeFirst();
+      try
+      {
+        final byte[] data = future.get();
+        writeBytes( data, 0, data.length );
+      }
+      catch ( InterruptedException exception )
+      {
+        cancelPendingBlocks();
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException( "Interrupted while compressing data!" );
+      }
+      catch ( ExecutionException exception )
+      {
+        cancelPendingBlocks();
+        throw new IOException( "Failed to compress data!", exception.getCause() );
+      }
+    }
+  }
+
+  /**
+   * Writes a 32-bit value in little-endian order.
+   */
+  private void writeInt( final long aValue ) throws IOException
+  {
+    this.scratch[0] = ( byte )( aValue & 0xFF );
+    this.scratch[1] = ( byte )( ( aValue >> 8 ) & 0xFF );
+    this.scratch[2] = ( byte )( ( aValue >> 16 ) & 0xFF );
+    this.scratch[3] = ( byte )( ( aValue >> 24 ) & 0xFF );
+    writeBytes( this.scratch, 0, 4 );
+  }
+
+  /**
+   * Writes a 64-bit value in little-endian order.
+   */
+  private void writeLong( final long aValue ) throws IOException
+  {
+    writeInt( aValue & MAX_SIZE );
+    writeInt( aValue >>> 32 );
+  }
+
+  /**
+   * Writes the local file header for the given entry.
+   */
+  private void writeLocalHeader( final EntryInfo aEntry ) throws IOException
+  {
+    final boolean descriptor = ( aEntry.flags & FLAG_DATA_DESCRIPTOR ) != 0;
+
+    writeInt( LOCSIG );
+    writeShort( VERSION );
+    writeShort( aEntry.flags );
+    writeShort( aEntry.method );
+    writeInt( aEntry.dosTime );
+    writeInt( descriptor ? 0L : aEntry.crc );
+    writeInt( descriptor ? 0L : aEntry.compressedSize );
+    writeInt( descriptor ? 0L : aEntry.size );
+    writeShort( aEntry.name.length );
+    writeShort( 0 ); // extra field length
+    writeBytes( aEntry.name, 0, aEntry.name.length );
+  }
+
+  /**
+   * Writes a 16-bit value in little-endian order.
+   */
+  private void writeShort( final int aValue ) throws IOException
+  {
+    this.scratch[0] = ( byte )( aValue & 0xFF );
+    this.scratch[1] = ( byte )( ( aValue >> 8 ) & 0xFF );
+    writeBytes( this.scratch, 0, 2 );
+  }
+}
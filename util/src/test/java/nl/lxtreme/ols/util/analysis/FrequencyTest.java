@@ -28,7 +28,7 @@ import org.junit.*;
 /**
  *
  */
-@SuppressWarnings( "boxing" )
+@SuppressWarnings( { "boxing", "deprecation" } )
 public class FrequencyTest
 {
   // METHODS
@@ -0,0 +1,155 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.util.analysis;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link Histogram}.
+ */
+public class HistogramTest
+{
+  // VARIABLES
+
+  private Histogram histogram;
+
+  // METHODS
+
+  /**
+   * Set up for each test.
+   */
+  @Before
+  public void setUp()
+  {
+    this.histogram = new Histogram();
+
+    // Value i is added i times...
+    for ( int i = 0; i <= 10; i++ )
+    {
+      for ( int j = 0; j < i; j++ )
+      {
+        this.histogram.addValue( i );
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link Histogram#getCount(long)}.
+   */
+  @Test
+  public void testGetCount()
+  {
+    for ( int i = 0; i <= 10; i++ )
+    {
+      assertEquals( i, this.histogram.getCount( i ) );
+    }
+    assertEquals( 0, this.histogram.getCount( 11 ) );
+    assertEquals( 55, this.histogram.getTotalCount() );
+    assertEquals( 10, this.histogram.getUniqueValueCount() );
+  }
+
+  /**
+   * Tests that many unique values, including negative ones, are counted
+   * correctly when the hash table grows.
+   */
+  @Test
+  public void testGrowOk()
+  {
+    final Histogram h = new Histogram();
+    for ( long i = -5000L; i < 5000L; i++ )
+    {
+      h.addValue( i * 1024L );
+      h.addValue( i * 1024L );
+    }
+
+    assertEquals( 10000, h.getUniqueValueCount() );
+    assertEquals( 2, h.getCount( -4096L ) );
+    assertEquals( 0, h.getCount( 1L ) );
+
+    final long[] values = h.values();
+    assertEquals( -5000L * 1024L, values[0] );
+    assertEquals( 4999L * 1024L, values[values.length - 1] );
+  }
+
+  /**
+   * Test method for {@link Histogram#getHighestRanked()}.
+   */
+  @Test
+  public void testGetHighestRanked()
+  {
+    assertEquals( 10L, this.histogram.getHighestRanked() );
+  }
+
+  /**
+   * Test method for {@link Histogram#getLowestRanked()}.
+   */
+  @Test
+  public void testGetLowestRanked()
+  {
+    assertEquals( 1L, this.histogram.getLowestRanked() );
+  }
+
+  /**
+   * Test method for {@link Histogram#getPercentile(double)}.
+   */
+  @Test
+  public void testGetPercentile()
+  {
+    assertEquals( 1L, this.histogram.getPercentile( 0.0 ) );
+    // 1 + 2 + ... + 7 = 28 values are less than or equal to 7...
+    assertEquals( 7L, this.histogram.getPercentile( 50.0 ) );
+    assertEquals( 8L, this.histogram.getPercentile( 51.0 ) );
+    assertEquals( 10L, this.histogram.getPercentile( 100.0 ) );
+  }
+
+  /**
+   * Tests that querying an empty histogram fails.
+   */
+  @Test( expected = IllegalStateException.class )
+  public void testGetHighestRankedOnEmptyHistogramFail()
+  {
+    new Histogram().getHighestRanked();
+  }
+
+  /**
+   * Tests that only the first values are counted when a sample limit is given.
+   */
+  @Test
+  public void testSampleLimitOk()
+  {
+    final Histogram h = new Histogram( 3 );
+
+    assertTrue( h.addValue( 1L ) );
+    assertTrue( h.addValue( 1L ) );
+    assertFalse( h.isSaturated() );
+    assertTrue( h.addValue( 2L ) );
+    assertTrue( h.isSaturated() );
+    assertFalse( h.addValue( 2L ) );
+    assertFalse( h.addValue( 2L ) );
+
+    assertEquals( 3, h.getTotalCount() );
+    assertEquals( 1L, h.getHighestRanked() );
+  }
+}
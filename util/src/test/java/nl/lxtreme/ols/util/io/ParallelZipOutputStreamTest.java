@@ -0,0 +1,314 @@
+/*
+ * OpenBench LogicSniffer / SUMP project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110, USA
+ *
+ *
+ * Copyright (C) 2010-2011 - J.W. Janssen, http://www.lxtreme.nl
+ */
+package nl.lxtreme.ols.util.io;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link ParallelZipOutputStream}.
+ */
+public class ParallelZipOutputStreamTest
+{
+  // METHODS
+
+  /**
+   * Tests that a multi-block entry compressed with multiple threads can be read
+   * back by {@link ZipInputStream}.
+   */
+  @Test
+  public void testWriteDeflatedEntryInParallel() throws IOException
+  {
+    final byte[] data = createData( ( 5 * ParallelZipOutputStream.BLOCK_SIZE ) + 123 );
+
+    final byte[] zip = writeZip( 4, Deflater.DEFAULT_COMPRESSION, ZipEntry.DEFLATED, data );
+
+    assertArrayEquals( data, readSingleEntry( zip, "data.bin" ) );
+    assertTrue( zip.length < data.length );
+  }
+
+  /**
+   * Tests that a multi-block entry compressed with a single thread can be read
+   * back by {@link ZipInputStream}.
+   */
+  @Test
+  public void testWriteDeflatedEntrySequentially() throws IOException
+  {
+    final byte[] data = createData( ( 3 * ParallelZipOutputStream.BLOCK_SIZE ) + 7 );
+
+    final byte[] zip = writeZip( 1, Deflater.BEST_SPEED, ZipEntry.DEFLATED, data );
+
+    assertArrayEquals( data, readSingleEntry( zip, "data.bin" ) );
+  }
+
+  /**
+   * Tests that entries of both methods, including empty ones, can be mixed.
+   */
+  @Test
+  public void testWriteMixedEntries() throws IOException
+  {
+    final byte[] data = createData( 1000 );
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final ParallelZipOutputStream zos = new ParallelZipOutputStream( baos, 2 );
+    zos.setComment( "test" );
+
+    zos.putNextEntry( new ZipEntry( "empty" ) );
+
+    final CRC32 crc = new CRC32();
+    crc.update( data );
+
+    final ZipEntry stored = new ZipEntry( "stored" );
+    stored.setMethod( ZipEntry.STORED );
+    stored.setSize( data.length );
+    stored.setCrc( crc.getValue() );
+    zos.putNextEntry( stored );
+    zos.write( data );
+
+    zos.putNextEntry( new ZipEntry( "deflated" ) );
+    zos.write( data );
+    zos.close();
+
+    final ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( baos.toByteArray() ) );
+    assertEquals( "empty", zis.getNextEntry().getName() );
+    assertEquals( 0, readFully( zis ).length );
+
+    final ZipEntry storedEntry = zis.getNextEntry();
+    assertEquals( "stored", storedEntry.getName() );
+    assertEquals( ZipEntry.STORED, storedEntry.getMethod() );
+    assertArrayEquals( data, readFully( zis ) );
+
+    final ZipEntry deflatedEntry = zis.getNextEntry();
+    assertEquals( "deflated", deflatedEntry.getName() );
+    assertEquals( ZipEntry.DEFLATED, deflatedEntry.getMethod() );
+    assertArrayEquals( data, readFully( zis ) );
+
+    assertNull( zis.getNextEntry() );
+  }
+
+  /**
+   * Tests that a large entry, spanning many blocks, can be read back by
+   * {@link ZipFile} for every compression level, both compressed in parallel
+   * and sequentially.
+   */
+  @Test
+  public void testWriteLargeEntryAtEveryLevel() throws IOException
+  {
+    final byte[] data = createData( ( 32 * ParallelZipOutputStream.BLOCK_SIZE ) + 4321 );
+
+    for ( CompressionLevel level : CompressionLevel.values() )
+    {
+      for ( int threads : new int[] { 1, 4 } )
+      {
+        final File file = File.createTempFile( "pzos", ".zip" );
+        try
+        {
+          writeZip( new FileOutputStream( file ), threads, level.getDeflaterLevel(), ZipEntry.DEFLATED, data );
+
+          final ZipFile zipFile = new ZipFile( file );
+          try
+          {
+            final ZipEntry entry = zipFile.getEntry( "data.bin" );
+            assertEquals( level + "/" + threads, data.length, entry.getSize() );
+            if ( level.isStoreOnly() )
+            {
+              assertTrue( entry.getCompressedSize() >= data.length );
+            }
+            else
+            {
+              assertTrue( entry.getCompressedSize() < data.length );
+            }
+            assertArrayEquals( level + "/" + threads, data, readFully( zipFile.getInputStream( entry ) ) );
+          }
+          finally
+          {
+            zipFile.close();
+          }
+        }
+        finally
+        {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that a stored entry without size or CRC is streamed as deflated
+   * entry without compression, instead of being kept in memory.
+   */
+  @Test
+  public void testWriteStoredEntryWithoutSize() throws IOException
+  {
+    final byte[] data = createData( ( 3 * ParallelZipOutputStream.BLOCK_SIZE ) + 11 );
+
+    final byte[] zip = writeZip( 2, Deflater.BEST_COMPRESSION, ZipEntry.STORED, data );
+
+    final ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( zip ) );
+    final ZipEntry entry = zis.getNextEntry();
+    assertEquals( ZipEntry.DEFLATED, entry.getMethod() );
+    assertArrayEquals( data, readFully( zis ) );
+    assertTrue( zip.length > data.length );
+  }
+
+  /**
+   * Tests that a stored entry whose size does not match the announced size is
+   * refused.
+   */
+  @Test( expected = ZipException.class )
+  public void testWriteStoredEntryWithWrongSizeFails() throws IOException
+  {
+    final ParallelZipOutputStream zos = new ParallelZipOutputStream( new ByteArrayOutputStream(), 1 );
+
+    final ZipEntry stored = new ZipEntry( "stored" );
+    stored.setMethod( ZipEntry.STORED );
+    stored.setSize( 10 );
+    stored.setCrc( 0 );
+    zos.putNextEntry( stored );
+    zos.write( new byte[5] );
+    zos.closeEntry();
+  }
+
+  /**
+   * Tests that the ZIP64 records of the central directory can be read back by
+   * {@link ZipFile}.
+   */
+  @Test
+  public void testWriteZip64Records() throws IOException
+  {
+    final byte[] data = createData( ( 2 * ParallelZipOutputStream.BLOCK_SIZE ) + 3 );
+
+    final File file = File.createTempFile( "pzos", ".zip" );
+    try
+    {
+      final ParallelZipOutputStream zos = new ParallelZipOutputStream( new FileOutputStream( file ), 2 );
+      zos.setForceZip64( true );
+      for ( int i = 0; i < 3; i++ )
+      {
+        zos.putNextEntry( new ZipEntry( "entry" + i ) );
+        zos.write( data, 0, data.length - i );
+      }
+      zos.close();
+
+      final ZipFile zipFile = new ZipFile( file );
+      try
+      {
+        assertEquals( 3, zipFile.size() );
+        for ( int i = 0; i < 3; i++ )
+        {
+          final ZipEntry entry = zipFile.getEntry( "entry" + i );
+          assertEquals( data.length - i, entry.getSize() );
+          assertArrayEquals( Arrays.copyOf( data, data.length - i ), readFully( zipFile.getInputStream( entry ) ) );
+        }
+      }
+      finally
+      {
+        zipFile.close();
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+  /**
+   * Creates some semi-random, compressible, data.
+   */
+  private byte[] createData( final int aLength )
+  {
+    final Random rnd = new Random( aLength );
+    final byte[] result = new byte[aLength];
+    for ( int i = 0; i < aLength; i++ )
+    {
+      result[i] = ( byte )( ( i % 64 ) < 48 ? ( i % 13 ) : rnd.nextInt( 256 ) );
+    }
+    return result;
+  }
+
+  /**
+   * Reads the remainder of the current entry.
+   */
+  private byte[] readFully( final InputStream aZis ) throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ( ( read = aZis.read( buffer ) ) >= 0 )
+    {
+      baos.write( buffer, 0, read );
+    }
+    return baos.toByteArray();
+  }
+
+  /**
+   * Reads a ZIP file with a single entry, and returns its contents.
+   */
+  private byte[] readSingleEntry( final byte[] aZip, final String aName ) throws IOException
+  {
+    final ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( aZip ) );
+    final ZipEntry entry = zis.getNextEntry();
+    assertNotNull( entry );
+    assertEquals( aName, entry.getName() );
+
+    final byte[] result = readFully( zis );
+    assertNull( zis.getNextEntry() );
+    return result;
+  }
+
+  /**
+   * Writes a ZIP file with a single entry.
+   */
+  private byte[] writeZip( final int aThreads, final int aLevel, final int aMethod, final byte[] aData )
+      throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    writeZip( baos, aThreads, aLevel, aMethod, aData );
+    return baos.toByteArray();
+  }
+
+  /**
+   * Writes a ZIP file with a single entry to the given output stream.
+   */
+  private void writeZip( final OutputStream aOut, final int aThreads, final int aLevel, final int aMethod,
+      final byte[] aData ) throws IOException
+  {
+    final ParallelZipOutputStream zos = new ParallelZipOutputStream( aOut, aThreads );
+    zos.setLevel( aLevel );
+
+    final ZipEntry entry = new ZipEntry( "data.bin" );
+    entry.setMethod( aMethod );
+    zos.putNextEntry( entry );
+    // Write in odd-sized chunks to exercise the block boundaries...
+    for ( int offset = 0; offset < aData.length; offset += 10007 )
+    {
+      zos.write( aData, offset, Math.min( 10007, aData.length - offset ) );
+    }
+    zos.close();
+  }
+}